@@ -8,6 +8,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.util.Collection;
+import java.util.Collections;
 
 public class IotHubCertificateManager
 {
@@ -84,6 +85,8 @@ public class IotHubCertificateManager
                     "R9I4LtD+gdwyah617jzV/OeBHRnDJELqYzmp\r\n" +
                     "-----END CERTIFICATE-----\r\n";
 
+    private static Collection<? extends Certificate> defaultCertificates;
+
     private Collection<? extends Certificate> certificates;
     private CertificateFactory certificateFactory;
 
@@ -96,10 +99,30 @@ public class IotHubCertificateManager
         certificateFactory = CertificateFactory.getInstance("X.509");
 
         //Codes_SRS_IOTHUBCERTIFICATEMANAGER_34_002: [**This function shall generate the default certificates.**]**
-        try (InputStream inputStream = new ByteArrayInputStream(DEFAULT_CERT.getBytes()))
+        certificates = getDefaultCertificates(certificateFactory);
+    }
+
+    /**
+     * Getter for the default certificates, parsed only the first time they are needed and shared by all the
+     * certificate managers of the process. Certificates are immutable, so sharing them is safe.
+     * @param certificateFactory the factory to parse the default certificates with.
+     * @return A read only collection of the default Certificates
+     * @throws CertificateException If the default certificates could not be parsed.
+     * @throws IOException If the default certificates could not be read.
+     */
+    private static synchronized Collection<? extends Certificate> getDefaultCertificates(CertificateFactory certificateFactory)
+            throws CertificateException, IOException
+    {
+        //Codes_SRS_IOTHUBCERTIFICATEMANAGER_34_009: [**The default certificates shall be parsed only once per process, and shared by all the certificate managers.**]**
+        if (defaultCertificates == null)
         {
-            certificates = certificateFactory.generateCertificates(inputStream);
+            try (InputStream inputStream = new ByteArrayInputStream(DEFAULT_CERT.getBytes()))
+            {
+                defaultCertificates = Collections.unmodifiableCollection(certificateFactory.generateCertificates(inputStream));
+            }
         }
+
+        return defaultCertificates;
     }
 
     /**
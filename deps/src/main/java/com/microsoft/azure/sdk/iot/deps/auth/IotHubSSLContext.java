@@ -15,6 +15,7 @@ import org.bouncycastle.util.io.pem.PemReader;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -40,6 +41,10 @@ public class IotHubSSLContext
 
     private static final String TRUSTED_IOT_HUB_CERT_PREFIX = "trustedIotHubCert-";
 
+    // Sessions kept by each context to resume a connection with an abbreviated handshake.
+    private static final int SESSION_CACHE_SIZE = 256;
+    private static final int SESSION_TIMEOUT_IN_SECONDS = 24 * 60 * 60;
+
     /**
      * Creates a SSLContext for the IotHub.
      *
@@ -221,6 +226,8 @@ public class IotHubSSLContext
 
         //Codes_SRS_IOTHUBSSLCONTEXT_34_024: [The constructor shall initialize SSL context with its initialized keystore, its initialized TrustManagerFactory and a new secure random.]
         this.sslContext.init(kmf.getKeyManagers(), trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+        configureSessionCache(this.sslContext);
     }
 
     /**
@@ -246,6 +253,25 @@ public class IotHubSSLContext
         TrustManagerFactory trustManagerFactory = generateTrustManagerFactory(certificateManager, null);
 
         this.sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+        configureSessionCache(this.sslContext);
+    }
+
+    /**
+     * Keeps the client sessions of the provided context, so a connection reopened with it resumes its previous
+     * session with an abbreviated handshake instead of a full one. Sessions are only resumed by connections
+     * that share the context, see {@link IotHubSSLContextCache}.
+     * @param sslContext the initialized context to configure
+     */
+    private static void configureSessionCache(SSLContext sslContext)
+    {
+        //Codes_SRS_IOTHUBSSLCONTEXT_34_047: [The constructor shall keep up to SESSION_CACHE_SIZE client sessions for SESSION_TIMEOUT_IN_SECONDS in the generated SSL context.]
+        SSLSessionContext clientSessionContext = sslContext.getClientSessionContext();
+        if (clientSessionContext != null)
+        {
+            clientSessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            clientSessionContext.setSessionTimeout(SESSION_TIMEOUT_IN_SECONDS);
+        }
     }
 
     /**
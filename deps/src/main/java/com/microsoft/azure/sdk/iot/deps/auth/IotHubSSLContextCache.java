@@ -0,0 +1,295 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.deps.auth;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process wide cache of the {@link IotHubSSLContext}, keyed by trust configuration.
+ *
+ * <p>
+ *     Building an SSL context parses the trusted certificates and builds a key store and a trust manager
+ *     factory from them. Clients with the same trust configuration, like the devices of a gateway that
+ *     all trust the default certificates, share the same context, so it is built only once. Sharing the
+ *     context also shares its session cache, so a connection opened after another one to the same host
+ *     resumes its session with an abbreviated handshake, which keeps a reconnection of many clients cheap.
+ * </p>
+ * <p>
+ *     A context built from a certificate path is rebuilt if the file changes. Up to
+ *     {@link #MAX_CACHED_CONTEXTS} contexts are kept, the least recently used one being dropped first.
+ * </p>
+ */
+public final class IotHubSSLContextCache
+{
+    /** The number of SSL contexts kept by the cache. */
+    public static final int MAX_CACHED_CONTEXTS = 1024;
+
+    private static final String KEY_DIGEST_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Map<String, FutureTask<IotHubSSLContext>> CONTEXTS =
+            new LinkedHashMap<String, FutureTask<IotHubSSLContext>>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, FutureTask<IotHubSSLContext>> eldest)
+                {
+                    return size() > MAX_CACHED_CONTEXTS;
+                }
+            };
+
+    private IotHubSSLContextCache()
+    {
+    }
+
+    /**
+     * Getter for the SSL context that trusts the default IotHub certificates.
+     *
+     * @return the shared SSL context.
+     * @throws KeyStoreException if the key store of the context cannot be created.
+     * @throws KeyManagementException if the context cannot be initialized.
+     * @throws IOException if the certificates cannot be read.
+     * @throws CertificateException if the certificates cannot be parsed.
+     * @throws NoSuchAlgorithmException if the context cannot be created.
+     */
+    public static IotHubSSLContext getIotHubSSLContext()
+            throws KeyStoreException, KeyManagementException, IOException, CertificateException, NoSuchAlgorithmException
+    {
+        try
+        {
+            /* Codes_SRS_IOTHUBSSLCONTEXTCACHE_34_001: [The getIotHubSSLContext shall return the context built by the default constructor of IotHubSSLContext, building it only once per trust configuration.] */
+            return getOrBuild(createKey("default"), new Callable<IotHubSSLContext>()
+            {
+                @Override
+                public IotHubSSLContext call() throws Exception
+                {
+                    return new IotHubSSLContext();
+                }
+            });
+        }
+        catch (UnrecoverableKeyException e)
+        {
+            // no private key in this configuration.
+            throw new KeyStoreException(e);
+        }
+    }
+
+    /**
+     * Getter for the SSL context that trusts the provided certificate.
+     *
+     * @param trustedCert the certificate to trust, or the path to it.
+     * @param isPath if the trustedCert is a path to the certificate, or the certificate itself.
+     * @return the shared SSL context.
+     * @throws KeyStoreException if the key store of the context cannot be created.
+     * @throws KeyManagementException if the context cannot be initialized.
+     * @throws IOException if the certificate cannot be read.
+     * @throws CertificateException if the certificate cannot be parsed.
+     * @throws NoSuchAlgorithmException if the context cannot be created.
+     */
+    public static IotHubSSLContext getIotHubSSLContext(final String trustedCert, final boolean isPath)
+            throws KeyStoreException, KeyManagementException, IOException, CertificateException, NoSuchAlgorithmException
+    {
+        try
+        {
+            /* Codes_SRS_IOTHUBSSLCONTEXTCACHE_34_002: [The getIotHubSSLContext shall return the context built by IotHubSSLContext with the provided `trustedCert` and `isPath`, building it only once per trust configuration.] */
+            return getOrBuild(createKey("trusted", trustConfiguration(trustedCert, isPath)), new Callable<IotHubSSLContext>()
+            {
+                @Override
+                public IotHubSSLContext call() throws Exception
+                {
+                    return new IotHubSSLContext(trustedCert, isPath);
+                }
+            });
+        }
+        catch (UnrecoverableKeyException e)
+        {
+            // no private key in this configuration.
+            throw new KeyStoreException(e);
+        }
+    }
+
+    /**
+     * Getter for the SSL context that authenticates with the provided x509 certificate and private key.
+     *
+     * @param publicKeyCertificateString the PEM formatted public key certificate.
+     * @param privateKeyString the PEM formatted private key.
+     * @param trustedCert the certificate to trust, or the path to it. Can be {@code null}, in which case the
+     *                    default IotHub certificates are trusted.
+     * @param isPath if the trustedCert is a path to the certificate, or the certificate itself.
+     * @return the shared SSL context.
+     * @throws KeyStoreException if the key store of the context cannot be created.
+     * @throws KeyManagementException if the context cannot be initialized.
+     * @throws IOException if the certificates cannot be read.
+     * @throws CertificateException if the certificates or the key cannot be parsed.
+     * @throws NoSuchAlgorithmException if the context cannot be created.
+     * @throws UnrecoverableKeyException if the private key cannot be stored in the key store.
+     */
+    public static IotHubSSLContext getIotHubSSLContext(final String publicKeyCertificateString, final String privateKeyString, final String trustedCert, final boolean isPath)
+            throws KeyStoreException, KeyManagementException, IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException
+    {
+        /* Codes_SRS_IOTHUBSSLCONTEXTCACHE_34_003: [The getIotHubSSLContext shall return the context built by IotHubSSLContext with the provided keys and, if not null, `trustedCert`, building it only once per configuration.] */
+        String key = createKey("x509", publicKeyCertificateString, privateKeyString, trustConfiguration(trustedCert, isPath));
+        return getOrBuild(key, new Callable<IotHubSSLContext>()
+        {
+            @Override
+            public IotHubSSLContext call() throws Exception
+            {
+                if (trustedCert == null)
+                {
+                    return new IotHubSSLContext(publicKeyCertificateString, privateKeyString);
+                }
+
+                return new IotHubSSLContext(publicKeyCertificateString, privateKeyString, trustedCert, isPath);
+            }
+        });
+    }
+
+    /**
+     * Drops all the cached SSL contexts, so the next clients build new ones. The clients already connected
+     * keep using their context.
+     */
+    public static void clear()
+    {
+        /* Codes_SRS_IOTHUBSSLCONTEXTCACHE_34_004: [The clear shall drop all the cached contexts.] */
+        synchronized (CONTEXTS)
+        {
+            CONTEXTS.clear();
+        }
+    }
+
+    private static IotHubSSLContext getOrBuild(String key, Callable<IotHubSSLContext> builder)
+            throws KeyStoreException, KeyManagementException, IOException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException
+    {
+        FutureTask<IotHubSSLContext> task;
+        boolean isOwner = false;
+        synchronized (CONTEXTS)
+        {
+            task = CONTEXTS.get(key);
+            if (task == null)
+            {
+                task = new FutureTask<>(builder);
+                CONTEXTS.put(key, task);
+                isOwner = true;
+            }
+        }
+
+        if (isOwner)
+        {
+            // Build outside of the lock, the clients with the same configuration wait for this task only.
+            task.run();
+        }
+
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the SSL context", e);
+        }
+        catch (ExecutionException e)
+        {
+            /* Codes_SRS_IOTHUBSSLCONTEXTCACHE_34_005: [If the context cannot be built, the getIotHubSSLContext shall not cache it, and shall throw the exception thrown by IotHubSSLContext.] */
+            synchronized (CONTEXTS)
+            {
+                if (CONTEXTS.get(key) == task)
+                {
+                    CONTEXTS.remove(key);
+                }
+            }
+
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static IOException rethrow(Throwable cause)
+            throws KeyStoreException, KeyManagementException, CertificateException, NoSuchAlgorithmException, UnrecoverableKeyException
+    {
+        if (cause instanceof KeyStoreException)
+        {
+            throw (KeyStoreException) cause;
+        }
+        if (cause instanceof KeyManagementException)
+        {
+            throw (KeyManagementException) cause;
+        }
+        if (cause instanceof CertificateException)
+        {
+            throw (CertificateException) cause;
+        }
+        if (cause instanceof NoSuchAlgorithmException)
+        {
+            throw (NoSuchAlgorithmException) cause;
+        }
+        if (cause instanceof UnrecoverableKeyException)
+        {
+            throw (UnrecoverableKeyException) cause;
+        }
+        if (cause instanceof RuntimeException)
+        {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof IOException)
+        {
+            return (IOException) cause;
+        }
+
+        return new IOException(cause);
+    }
+
+    private static String trustConfiguration(String trustedCert, boolean isPath)
+    {
+        if (trustedCert == null)
+        {
+            return "default";
+        }
+
+        if (isPath)
+        {
+            // Rebuild the context if the certificate file was replaced.
+            File file = new File(trustedCert);
+            return "path:" + file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+        }
+
+        return "cert:" + trustedCert;
+    }
+
+    /*
+     * The key is a digest of the configuration, so the cache does not keep the private keys in clear.
+     */
+    private static String createKey(String... parts) throws NoSuchAlgorithmException
+    {
+        MessageDigest digest = MessageDigest.getInstance(KEY_DIGEST_ALGORITHM);
+        for (String part : parts)
+        {
+            byte[] bytes = (part == null ? "" : part).getBytes(StandardCharsets.UTF_8);
+            digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ':');
+            digest.update(bytes);
+        }
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++)
+        {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+
+        return new String(hex);
+    }
+}
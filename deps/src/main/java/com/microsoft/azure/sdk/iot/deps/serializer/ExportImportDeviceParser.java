@@ -16,6 +16,11 @@ public class ExportImportDeviceParser
     @SerializedName(ID_NAME)
     private String id;
 
+    private static final String MODULE_ID_NAME = "moduleId";
+    @Expose(serialize = true, deserialize = true)
+    @SerializedName(MODULE_ID_NAME)
+    private String moduleId;
+
     private static final String E_TAG_NAME = "eTag";
     @Expose(serialize = true, deserialize = true)
     @SerializedName(E_TAG_NAME)
@@ -104,6 +109,7 @@ public class ExportImportDeviceParser
         //Codes_SRS_EXPORTIMPORTDEVICE_PARSER_34_002: [The parser shall look for the authentication Type of the serialized export import device and save it to the returned ExportImportDeviceParser instance]
         this.authentication = deviceParser.authentication;
         this.id = deviceParser.id;
+        this.moduleId = deviceParser.moduleId;
         this.importMode = deviceParser.importMode;
         this.eTag = deviceParser.eTag;
         this.statusReason = deviceParser.statusReason;
@@ -154,6 +160,28 @@ public class ExportImportDeviceParser
         this.id = id;
     }
 
+    /**
+     * Getter for moduleId
+     *
+     * @return The value of moduleId, or null if this describes a device
+     */
+    public String getModuleId()
+    {
+        //Codes_SRS_EXPORTIMPORTDEVICE_PARSER_34_024: [This method shall return the value of this object's moduleId.]
+        return moduleId;
+    }
+
+    /**
+     * Setter for moduleId
+     *
+     * @param moduleId the value to set moduleId to, or null if this describes a device
+     */
+    public void setModuleId(String moduleId)
+    {
+        //Codes_SRS_EXPORTIMPORTDEVICE_PARSER_34_025: [This method shall set the value of this object's moduleId equal to the provided value.]
+        this.moduleId = moduleId;
+    }
+
     /**
      * Getter for eTag
      *
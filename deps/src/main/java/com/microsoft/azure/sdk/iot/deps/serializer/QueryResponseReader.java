@@ -0,0 +1,150 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Pull parser for the json array of a query response page.
+ *
+ * <p>Unlike the {@link QueryResponseParser}, which parses the whole page into json objects and then into strings before
+ * returning its first item, this reader parses one item each time {@link #next()} is called. The page itself is read
+ * from the bytes of the response body, which are already in memory, so the reader saves the parsed copies of the page,
+ * not the body.</p>
+ *
+ * <p>The memory used by a page is therefore not bounded by this reader: the whole body is held by the caller for as
+ * long as the page is iterated.</p>
+ *
+ * <p>A malformed page is only detected once the reader gets to the malformed part, so the items before it may
+ * already have been returned. It is then reported by an unchecked IllegalArgumentException thrown from
+ * {@link #hasNext()} or {@link #next()}, which callers that report errors by a checked exception need to convert.</p>
+ */
+public class QueryResponseReader implements Iterator<String>
+{
+    private final transient Gson gson;
+    private final JsonReader jsonReader;
+    private final JsonParser jsonParser;
+    private boolean isEndOfArray;
+
+    /**
+     * CONSTRUCTOR
+     * Create a reader for the query response page in the provided UTF-8 json.
+     *
+     * @param json is the array of bytes that contains a json array with the QueryResponse.
+     * @throws IllegalArgumentException if the json is null, empty, or does not start with an array.
+     */
+    public QueryResponseReader(byte[] json) throws IllegalArgumentException
+    {
+        if ((json == null) || (json.length == 0))
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_34_001: [If the provided json is null or empty, the constructor shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("parameter is null or empty");
+        }
+
+        //Codes_SRS_QUERY_RESPONSE_READER_34_002: [The constructor shall read the beginning of the json array, and throw IllegalArgumentException if the json does not start with an array.]
+        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this.jsonParser = new JsonParser();
+        this.jsonReader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+        try
+        {
+            this.jsonReader.beginArray();
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+    }
+
+    /**
+     * Returns the availability of the next item of the page.
+     *
+     * @return true if the page has another item.
+     * @throws IllegalArgumentException if the json is malformed.
+     */
+    @Override
+    public boolean hasNext() throws IllegalArgumentException
+    {
+        if (this.isEndOfArray)
+        {
+            return false;
+        }
+
+        //Codes_SRS_QUERY_RESPONSE_READER_34_003: [The hasNext shall return true if the json array has another item, and false once its end was read.]
+        try
+        {
+            if (this.jsonReader.hasNext())
+            {
+                return true;
+            }
+            this.jsonReader.endArray();
+            this.isEndOfArray = true;
+            return false;
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_34_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+    }
+
+    /**
+     * Parses the next item of the page.
+     *
+     * @return the next item of the page as a json string.
+     * @throws NoSuchElementException if the page has no more items.
+     * @throws IllegalArgumentException if the json is malformed or the item is not a json object.
+     */
+    @Override
+    public String next() throws NoSuchElementException, IllegalArgumentException
+    {
+        if (!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        //Codes_SRS_QUERY_RESPONSE_READER_34_004: [The next shall parse only the next item of the json array and return it as a json string, formatted as the QueryResponseParser does.]
+        JsonElement item;
+        try
+        {
+            if (this.jsonReader.peek() != JsonToken.BEGIN_OBJECT)
+            {
+                throw new IllegalArgumentException("Malformed json: the query response items shall be json objects");
+            }
+            item = this.jsonParser.parse(this.jsonReader);
+        }
+        catch (IOException | JsonParseException e)
+        {
+            //Codes_SRS_QUERY_RESPONSE_READER_34_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Malformed json:" + e);
+        }
+
+        return this.gson.toJson(item);
+    }
+
+    /**
+     * Not supported.
+     *
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -11,7 +11,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -213,7 +212,7 @@ public class HttpConnection
         try (InputStream inputStream = this.connection.getInputStream())
         {
             // Codes_SRS_HTTPCONNECTION_25_016: [The function shall close the input stream after it has been completely read.]
-            input = readInputStream(inputStream);
+            input = readInputStream(inputStream, this.connection.getContentLength());
         }
 
         return input;
@@ -240,7 +239,7 @@ public class HttpConnection
             // if there is no error reason, getErrorStream() returns null.
             if (errorStream != null)
             {
-                error = readInputStream(errorStream);
+                error = readInputStream(errorStream, this.connection.getContentLength());
             }
         }
 
@@ -281,31 +280,17 @@ public class HttpConnection
      * Reads the input stream until the stream is empty.
      *
      * @param stream The input stream.
+     * @param expectedLength The expected length of the content, or a negative value if it is unknown.
      *
      * @return The content of the input stream.
      *
      * @throws IOException This exception thrown if the input stream could not be read from.
      */
-    protected static byte[] readInputStream(InputStream stream)
+    protected static byte[] readInputStream(InputStream stream, int expectedLength)
             throws IOException
     {
-        ArrayList<Byte> byteBuffer = new ArrayList<>();
-        int nextByte = -1;
-        // read(byte[]) reads the byte into the buffer and returns the number
-        // of bytes read, or -1 if the end of the stream has been reached.
-        while ((nextByte = stream.read()) > -1)
-        {
-            byteBuffer.add((byte) nextByte);
-        }
-
-        int bufferSize = byteBuffer.size();
-        byte[] byteArray = new byte[bufferSize];
-        for (int i = 0; i < bufferSize; ++i)
-        {
-            byteArray[i] = byteBuffer.get(i);
-        }
-
-        return byteArray;
+        // Codes_SRS_HTTPCONNECTION_34_031: [The function shall read the stream in chunks, presizing the buffer from the content length when it is known.]
+        return HttpStreamReader.readFully(stream, expectedLength);
     }
 
     void setSSLContext(SSLContext sslContext) throws IllegalArgumentException
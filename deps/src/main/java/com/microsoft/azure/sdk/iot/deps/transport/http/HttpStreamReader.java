@@ -0,0 +1,153 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.deps.transport.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads HTTP response and error streams in chunks. When the length of the body is known, for example from the
+ * Content-Length header, the result buffer is allocated once with that size. Otherwise the body is read into a
+ * growable buffer which, when pooled buffers are enabled, is a per thread scratch buffer that is reused across reads
+ * so that only the returned array is allocated.
+ */
+public final class HttpStreamReader
+{
+    private static final int CHUNK_SIZE_BYTES = 8 * 1024;
+
+    // Upper bound on the buffer allocated up front from the expected length, in case the expected length is bogus
+    private static final int MAX_PRESIZED_BUFFER_BYTES = 16 * 1024 * 1024;
+
+    // Scratch buffers that grow beyond this size are not kept for reuse, so a single large response does not pin memory
+    private static final int MAX_POOLED_BUFFER_BYTES = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> POOLED_BUFFER = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[CHUNK_SIZE_BYTES];
+        }
+    };
+
+    private static volatile boolean pooledBuffersEnabled = false;
+
+    private HttpStreamReader()
+    {
+    }
+
+    /**
+     * Enables or disables reusing a per thread scratch buffer when reading bodies of unknown length. Disabled by
+     * default.
+     *
+     * @param enabled true to reuse per thread buffers, false to allocate a new buffer for every read.
+     */
+    public static void setPooledBuffersEnabled(boolean enabled)
+    {
+        // Codes_SRS_HTTPSTREAMREADER_34_001: [This function shall save if pooled buffers are enabled.]
+        pooledBuffersEnabled = enabled;
+    }
+
+    /**
+     * @return true if a per thread scratch buffer is reused when reading bodies of unknown length.
+     */
+    public static boolean isPooledBuffersEnabled()
+    {
+        // Codes_SRS_HTTPSTREAMREADER_34_002: [This function shall return if pooled buffers are enabled.]
+        return pooledBuffersEnabled;
+    }
+
+    /**
+     * Reads the stream until it is empty. The stream is not closed.
+     *
+     * @param stream the stream to read.
+     * @param expectedLength the expected number of bytes in the stream, or a negative value if it is unknown.
+     * @return the content of the stream.
+     * @throws IOException if the stream could not be read from.
+     * @throws IllegalArgumentException if the stream is null.
+     */
+    public static byte[] readFully(InputStream stream, int expectedLength) throws IOException, IllegalArgumentException
+    {
+        if (stream == null)
+        {
+            // Codes_SRS_HTTPSTREAMREADER_34_003: [If the provided stream is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("stream cannot be null");
+        }
+
+        boolean usePooledBuffer = false;
+        byte[] buffer;
+        if (expectedLength > 0)
+        {
+            // Codes_SRS_HTTPSTREAMREADER_34_004: [If the expected length is positive, this function shall read into a buffer of that size.]
+            buffer = new byte[Math.min(expectedLength, MAX_PRESIZED_BUFFER_BYTES)];
+        }
+        else if (pooledBuffersEnabled)
+        {
+            // Codes_SRS_HTTPSTREAMREADER_34_005: [If the expected length is unknown and pooled buffers are enabled, this function shall read into the calling thread's scratch buffer.]
+            buffer = POOLED_BUFFER.get();
+            usePooledBuffer = true;
+        }
+        else
+        {
+            buffer = new byte[CHUNK_SIZE_BYTES];
+        }
+
+        // Codes_SRS_HTTPSTREAMREADER_34_006: [This function shall read the stream in chunks until the end of the stream is reached.]
+        int length = 0;
+        while (true)
+        {
+            if (length == buffer.length)
+            {
+                // the buffer is full; only grow it if the stream actually has more data
+                int nextByte = stream.read();
+                if (nextByte < 0)
+                {
+                    break;
+                }
+
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, CHUNK_SIZE_BYTES));
+                buffer[length++] = (byte) nextByte;
+                continue;
+            }
+
+            int bytesRead = stream.read(buffer, length, buffer.length - length);
+            if (bytesRead < 0)
+            {
+                break;
+            }
+            else if (bytesRead == 0)
+            {
+                // Codes_SRS_HTTPSTREAMREADER_34_007: [If the stream does not return any bytes for a chunked read, this function shall fall back to reading a single byte.]
+                int nextByte = stream.read();
+                if (nextByte < 0)
+                {
+                    break;
+                }
+
+                buffer[length++] = (byte) nextByte;
+            }
+            else
+            {
+                length += bytesRead;
+            }
+        }
+
+        if (usePooledBuffer)
+        {
+            if (buffer.length <= MAX_POOLED_BUFFER_BYTES)
+            {
+                POOLED_BUFFER.set(buffer);
+            }
+
+            // Codes_SRS_HTTPSTREAMREADER_34_008: [This function shall never return the pooled scratch buffer itself.]
+            return Arrays.copyOf(buffer, length);
+        }
+
+        // Codes_SRS_HTTPSTREAMREADER_34_009: [If the buffer was filled exactly, this function shall return it without copying.]
+        return (length == buffer.length) ? buffer : Arrays.copyOf(buffer, length);
+    }
+}
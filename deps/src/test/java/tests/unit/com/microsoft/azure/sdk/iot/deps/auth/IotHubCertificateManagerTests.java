@@ -15,6 +15,7 @@ import java.util.Collection;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -161,6 +162,20 @@ public class IotHubCertificateManagerTests
         assertNotNull(certificateFactory);
     }
 
+    //Tests_SRS_IOTHUBCERTIFICATEMANAGER_34_009: [**The default certificates shall be parsed only once per process, and shared by all the certificate managers.**]**
+    @Test
+    public void constructorSharesDefaultCertificates()
+    {
+        //act
+        IotHubCertificateManager firstCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+        IotHubCertificateManager secondCertManager = Deencapsulation.newInstance(IotHubCertificateManager.class);
+
+        //assert
+        Collection<? extends Certificate> firstCerts = Deencapsulation.getField(firstCertManager, "certificates");
+        Collection<? extends Certificate> secondCerts = Deencapsulation.getField(secondCertManager, "certificates");
+        assertSame(firstCerts, secondCerts);
+    }
+
     //Tests_SRS_IOTHUBCERTIFICATEMANAGER_34_003: [**This function shall return the saved certificates.**]**
     @Test
     public void getCertificatesReturnsSavedCertificates()
@@ -0,0 +1,277 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.auth;
+
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContextCache;
+import mockit.Mock;
+import mockit.MockUp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for IotHubSSLContextCache
+ */
+public class IotHubSSLContextCacheTest
+{
+    private static final String PUBLIC_KEY_CERTIFICATE = "somePublicKeyCertificate";
+    private static final String PRIVATE_KEY = "somePrivateKey";
+    private static final String TRUSTED_CERT = "someTrustedCert";
+
+    /*
+     * Counts the contexts built by each constructor of IotHubSSLContext, without parsing any certificate.
+     */
+    private static class IotHubSSLContextMock extends MockUp<IotHubSSLContext>
+    {
+        final AtomicInteger defaultBuilt = new AtomicInteger();
+        final AtomicInteger trustedBuilt = new AtomicInteger();
+        final AtomicInteger keysBuilt = new AtomicInteger();
+        final AtomicInteger keysAndTrustedBuilt = new AtomicInteger();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Mock
+        void $init() throws CertificateException
+        {
+            failIfRequested();
+            defaultBuilt.incrementAndGet();
+        }
+
+        @Mock
+        void $init(String trustedCert, boolean isPath) throws CertificateException
+        {
+            failIfRequested();
+            trustedBuilt.incrementAndGet();
+        }
+
+        @Mock
+        void $init(String publicKeyCertificateString, String privateKeyString) throws CertificateException
+        {
+            failIfRequested();
+            keysBuilt.incrementAndGet();
+        }
+
+        @Mock
+        void $init(String publicKeyCertificateString, String privateKeyString, String cert, boolean isPath) throws CertificateException
+        {
+            failIfRequested();
+            keysAndTrustedBuilt.incrementAndGet();
+        }
+
+        private void failIfRequested() throws CertificateException
+        {
+            if (failuresLeft.getAndDecrement() > 0)
+            {
+                throw new CertificateException("invalid certificate");
+            }
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        IotHubSSLContextCache.clear();
+    }
+
+    @After
+    public void tearDown()
+    {
+        IotHubSSLContextCache.clear();
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_001: [The getIotHubSSLContext shall return the context built by the default constructor of IotHubSSLContext, building it only once per trust configuration.] */
+    @Test
+    public void getIotHubSSLContextBuildsDefaultContextOnceForManyClients() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+        final int clients = 1000;
+
+        //act
+        IotHubSSLContext first = IotHubSSLContextCache.getIotHubSSLContext();
+        for (int i = 1; i < clients; i++)
+        {
+            assertSame(first, IotHubSSLContextCache.getIotHubSSLContext());
+        }
+
+        //assert
+        assertEquals(1, contextMock.defaultBuilt.get());
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_001: [The getIotHubSSLContext shall return the context built by the default constructor of IotHubSSLContext, building it only once per trust configuration.] */
+    @Test
+    public void getIotHubSSLContextBuildsOnceForConcurrentClients() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+        final int clients = 32;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<IotHubSSLContext>> results = new ArrayList<>();
+
+        try
+        {
+            for (int i = 0; i < clients; i++)
+            {
+                results.add(executor.submit(new Callable<IotHubSSLContext>()
+                {
+                    @Override
+                    public IotHubSSLContext call() throws Exception
+                    {
+                        start.await();
+                        return IotHubSSLContextCache.getIotHubSSLContext(TRUSTED_CERT, false);
+                    }
+                }));
+            }
+
+            //act
+            start.countDown();
+
+            //assert
+            IotHubSSLContext first = results.get(0).get();
+            for (Future<IotHubSSLContext> result : results)
+            {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, contextMock.trustedBuilt.get());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_002: [The getIotHubSSLContext shall return the context built by IotHubSSLContext with the provided `trustedCert` and `isPath`, building it only once per trust configuration.] */
+    @Test
+    public void getIotHubSSLContextBuildsOneContextPerTrustedCert() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+
+        //act
+        IotHubSSLContext first = IotHubSSLContextCache.getIotHubSSLContext(TRUSTED_CERT, false);
+        IotHubSSLContext second = IotHubSSLContextCache.getIotHubSSLContext("someOtherTrustedCert", false);
+        IotHubSSLContext third = IotHubSSLContextCache.getIotHubSSLContext(TRUSTED_CERT, false);
+
+        //assert
+        assertNotSame(first, second);
+        assertSame(first, third);
+        assertEquals(2, contextMock.trustedBuilt.get());
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_002: [The getIotHubSSLContext shall return the context built by IotHubSSLContext with the provided `trustedCert` and `isPath`, building it only once per trust configuration.] */
+    @Test
+    public void getIotHubSSLContextRebuildsContextIfTrustedCertFileChanges() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+        File certFile = File.createTempFile("trustedCert", ".pem");
+        try
+        {
+            writeFile(certFile, "first");
+            IotHubSSLContext first = IotHubSSLContextCache.getIotHubSSLContext(certFile.getPath(), true);
+            IotHubSSLContext same = IotHubSSLContextCache.getIotHubSSLContext(certFile.getPath(), true);
+
+            //act
+            writeFile(certFile, "second certificate");
+            IotHubSSLContext second = IotHubSSLContextCache.getIotHubSSLContext(certFile.getPath(), true);
+
+            //assert
+            assertSame(first, same);
+            assertNotSame(first, second);
+            assertEquals(2, contextMock.trustedBuilt.get());
+        }
+        finally
+        {
+            certFile.delete();
+        }
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_003: [The getIotHubSSLContext shall return the context built by IotHubSSLContext with the provided keys and, if not null, `trustedCert`, building it only once per configuration.] */
+    @Test
+    public void getIotHubSSLContextBuildsOneContextPerKeys() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+
+        //act
+        IotHubSSLContext first = IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, PRIVATE_KEY, null, false);
+        IotHubSSLContext same = IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, PRIVATE_KEY, null, false);
+        IotHubSSLContext otherKey = IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, "someOtherPrivateKey", null, false);
+        IotHubSSLContext trusted = IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, PRIVATE_KEY, TRUSTED_CERT, false);
+
+        //assert
+        assertSame(first, same);
+        assertNotSame(first, otherKey);
+        assertNotSame(first, trusted);
+        assertEquals(2, contextMock.keysBuilt.get());
+        assertEquals(1, contextMock.keysAndTrustedBuilt.get());
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_004: [The clear shall drop all the cached contexts.] */
+    @Test
+    public void clearDropsContexts() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+        IotHubSSLContext first = IotHubSSLContextCache.getIotHubSSLContext();
+
+        //act
+        IotHubSSLContextCache.clear();
+
+        //assert
+        assertNotSame(first, IotHubSSLContextCache.getIotHubSSLContext());
+        assertEquals(2, contextMock.defaultBuilt.get());
+    }
+
+    /* Tests_SRS_IOTHUBSSLCONTEXTCACHE_34_005: [If the context cannot be built, the getIotHubSSLContext shall not cache it, and shall throw the exception thrown by IotHubSSLContext.] */
+    @Test
+    public void getIotHubSSLContextDoesNotCacheFailures() throws Exception
+    {
+        //arrange
+        IotHubSSLContextMock contextMock = new IotHubSSLContextMock();
+        contextMock.failuresLeft.set(1);
+
+        //act
+        try
+        {
+            IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, PRIVATE_KEY, TRUSTED_CERT, false);
+            fail("expected CertificateException");
+        }
+        catch (CertificateException expected)
+        {
+            // expected
+        }
+        IotHubSSLContextCache.getIotHubSSLContext(PUBLIC_KEY_CERTIFICATE, PRIVATE_KEY, TRUSTED_CERT, false);
+
+        //assert
+        assertEquals(1, contextMock.keysAndTrustedBuilt.get());
+    }
+
+    private static void writeFile(File file, String content) throws IOException
+    {
+        try (FileWriter writer = new FileWriter(file))
+        {
+            writer.write(content);
+        }
+    }
+}
@@ -127,6 +127,37 @@ public class IotHubSSLContextTest
 
     }
 
+    //Tests_SRS_IOTHUBSSLCONTEXT_34_047: [The constructor shall keep up to SESSION_CACHE_SIZE client sessions for SESSION_TIMEOUT_IN_SECONDS in the generated SSL context.]
+    @Test
+    public void constructorKeepsClientSessions(@Mocked final SSLSessionContext mockedSSLSessionContext) throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
+    {
+        //arrange
+        testCollection.add(mockedX509Certificate);
+        generateSSLContextExpectations();
+        new NonStrictExpectations()
+        {
+            {
+                mockedSSLContext.getClientSessionContext();
+                result = mockedSSLSessionContext;
+            }
+        };
+
+        //act
+        Deencapsulation.newInstance(IotHubSSLContext.class);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedSSLSessionContext.setSessionCacheSize(256);
+                times = 1;
+                mockedSSLSessionContext.setSessionTimeout(24 * 60 * 60);
+                times = 1;
+            }
+        };
+        testCollection.remove(mockedX509Certificate);
+    }
+
     //Tests_SRS_IOTHUBSSLCONTEXT_25_017: [*This method shall return the value of sslContext.**]**
     @Test
     public void getterGetsContext() throws NoSuchAlgorithmException, KeyStoreException, KeyManagementException, IOException, CertificateException
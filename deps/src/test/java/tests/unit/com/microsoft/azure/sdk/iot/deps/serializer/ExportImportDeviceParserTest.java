@@ -487,4 +487,41 @@ public class ExportImportDeviceParserTest
         //act
         new ExportImportDeviceParser(json);
     }
+
+    //Tests_SRS_EXPORTIMPORTDEVICE_PARSER_34_024: [This method shall return the value of this object's moduleId.]
+    //Tests_SRS_EXPORTIMPORTDEVICE_PARSER_34_025: [This method shall set the value of this object's moduleId equal to the provided value.]
+    @Test
+    public void moduleIdRoundTripsThroughJson()
+    {
+        // arrange
+        ExportImportDeviceParser parser = new ExportImportDeviceParser();
+        parser.setId("test");
+        parser.setModuleId("module");
+        parser.setAuthentication(new AuthenticationParser());
+        parser.getAuthenticationFinal().setType(AuthenticationTypeParser.CERTIFICATE_AUTHORITY);
+
+        // act
+        String serializedModule = parser.toJson();
+        ExportImportDeviceParser deserializedParser = new ExportImportDeviceParser(serializedModule);
+
+        // assert
+        assertTrue(serializedModule.contains("\"moduleId\":\"module\""));
+        assertEquals("module", deserializedParser.getModuleId());
+    }
+
+    //Tests_SRS_EXPORTIMPORTDEVICE_PARSER_34_024: [This method shall return the value of this object's moduleId.]
+    @Test
+    public void moduleIdIsNotSerializedForDevices()
+    {
+        // arrange
+        ExportImportDeviceParser parser = new ExportImportDeviceParser();
+        parser.setId("test");
+
+        // act
+        String serializedDevice = parser.toJson();
+
+        // assert
+        assertNull(parser.getModuleId());
+        assertTrue(!serializedDevice.contains("moduleId"));
+    }
 }
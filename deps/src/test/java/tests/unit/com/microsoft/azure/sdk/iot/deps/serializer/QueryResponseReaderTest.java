@@ -0,0 +1,189 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.serializer;
+
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseReader;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Unit tests for QueryResponseReader
+    Coverage result : method - 100%, line - 100%
+ */
+public class QueryResponseReaderTest
+{
+    private static final String VALID_JSON = "{\"deviceId\":\"devA\",\"tags\":{\"building\":\"43\",\"url\":\"<a>&b=c\"},\"version\":2}";
+    private static final String VALID_JSON_ARRAY_2 = "[" + VALID_JSON + ",\n\t" + VALID_JSON + "]";
+    private static final String MALFORMED_JSON = "abc : abc}";
+
+    private static String buildPage(int size)
+    {
+        StringBuilder page = new StringBuilder(size + VALID_JSON.length() * 2);
+        page.append('[');
+        for (int i = 0; page.length() < size; i++)
+        {
+            if (i > 0)
+            {
+                page.append(',');
+            }
+            page.append("{\"deviceId\":\"device").append(i).append("\",\"tags\":{\"building\":\"43\",\"floor\":\"").append(i % 10).append("\"}}");
+        }
+        return page.append(']').toString();
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_001: [If the provided json is null or empty, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullBytes() throws IllegalArgumentException
+    {
+        //act
+        new QueryResponseReader((byte[]) null);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_001: [If the provided json is null or empty, the constructor shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnEmptyBytes() throws IllegalArgumentException
+    {
+        //act
+        new QueryResponseReader(new byte[0]);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_002: [The constructor shall read the beginning of the json array, and throw IllegalArgumentException if the json does not start with an array.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnMalformedJson() throws IllegalArgumentException
+    {
+        //act
+        new QueryResponseReader(MALFORMED_JSON.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_002: [The constructor shall read the beginning of the json array, and throw IllegalArgumentException if the json does not start with an array.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnJsonObject() throws IllegalArgumentException
+    {
+        //act
+        new QueryResponseReader(VALID_JSON.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_003: [The hasNext shall return true if the json array has another item, and false once its end was read.]
+    //Tests_SRS_QUERY_RESPONSE_READER_34_004: [The next shall parse only the next item of the json array and return it as a json string, formatted as the QueryResponseParser does.]
+    @Test
+    public void nextReturnsTheItemsAsTheParserDoes() throws IllegalArgumentException
+    {
+        //arrange
+        List<String> expectedItems = new QueryResponseParser(VALID_JSON_ARRAY_2).getJsonItems();
+        QueryResponseReader testReader = new QueryResponseReader(VALID_JSON_ARRAY_2.getBytes(StandardCharsets.UTF_8));
+
+        //act
+        List<String> items = new LinkedList<>();
+        while (testReader.hasNext())
+        {
+            items.add(testReader.next());
+        }
+
+        //assert
+        assertEquals(expectedItems, items);
+        assertFalse(testReader.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_003: [The hasNext shall return true if the json array has another item, and false once its end was read.]
+    @Test
+    public void hasNextReturnsFalseOnEmptyArray() throws IllegalArgumentException
+    {
+        //arrange
+        QueryResponseReader testReader = new QueryResponseReader("[]".getBytes(StandardCharsets.UTF_8));
+
+        //act - assert
+        assertFalse(testReader.hasNext());
+        assertFalse(testReader.hasNext());
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_003: [The hasNext shall return true if the json array has another item, and false once its end was read.]
+    @Test (expected = NoSuchElementException.class)
+    public void nextThrowsAfterTheLastItem() throws IllegalArgumentException
+    {
+        //arrange
+        QueryResponseReader testReader = new QueryResponseReader(("[" + VALID_JSON + "]").getBytes(StandardCharsets.UTF_8));
+        testReader.next();
+
+        //act
+        testReader.next();
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_004: [The next shall parse only the next item of the json array and return it as a json string, formatted as the QueryResponseParser does.]
+    @Test
+    public void nextReturnsEveryItemOfALargePage() throws IllegalArgumentException
+    {
+        //arrange
+        String page = buildPage(10 * 1024 * 1024);
+        QueryResponseReader testReader = new QueryResponseReader(page.getBytes(StandardCharsets.UTF_8));
+
+        //act
+        String firstItem = testReader.next();
+        int count = 1;
+        while (testReader.hasNext())
+        {
+            testReader.next();
+            count++;
+        }
+
+        //assert
+        assertTrue(firstItem.contains("\"device0\""));
+        assertEquals(new QueryResponseParser(page).getJsonItems().size(), count);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+    @Test
+    public void nextThrowsOnMalformedItemAfterTheValidOnes() throws IllegalArgumentException
+    {
+        //arrange
+        QueryResponseReader testReader = new QueryResponseReader(("[" + VALID_JSON + ",{\"deviceId\":}]").getBytes(StandardCharsets.UTF_8));
+
+        //act
+        testReader.next();
+        try
+        {
+            testReader.next();
+        }
+        catch (IllegalArgumentException e)
+        {
+            return;
+        }
+
+        //assert
+        throw new AssertionError("the malformed item shall throw IllegalArgumentException");
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void nextThrowsOnItemThatIsNotAnObject() throws IllegalArgumentException
+    {
+        //arrange
+        QueryResponseReader testReader = new QueryResponseReader("[1]".getBytes(StandardCharsets.UTF_8));
+
+        //act
+        testReader.next();
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_READER_34_005: [If the json is malformed, the hasNext and next shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void hasNextThrowsOnTruncatedArray() throws IllegalArgumentException
+    {
+        //arrange
+        QueryResponseReader testReader = new QueryResponseReader(("[" + VALID_JSON).getBytes(StandardCharsets.UTF_8));
+        testReader.next();
+
+        //act
+        testReader.hasNext();
+    }
+}
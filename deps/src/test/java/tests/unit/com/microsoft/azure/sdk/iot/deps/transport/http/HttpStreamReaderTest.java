@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) Microsoft. All rights reserved.
+ *  Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.deps.transport.http;
+
+import com.microsoft.azure.sdk.iot.deps.transport.http.HttpStreamReader;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for HttpStreamReader. */
+public class HttpStreamReaderTest
+{
+    private static byte[] buildBody(int length)
+    {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            body[i] = (byte) i;
+        }
+
+        return body;
+    }
+
+    @After
+    public void tearDown()
+    {
+        HttpStreamReader.setPooledBuffersEnabled(false);
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_001: [This function shall save if pooled buffers are enabled.]
+    // Tests_SRS_HTTPSTREAMREADER_34_002: [This function shall return if pooled buffers are enabled.]
+    @Test
+    public void setPooledBuffersEnabledSavesValue()
+    {
+        assertFalse(HttpStreamReader.isPooledBuffersEnabled());
+
+        HttpStreamReader.setPooledBuffersEnabled(true);
+
+        assertTrue(HttpStreamReader.isPooledBuffersEnabled());
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_003: [If the provided stream is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void readFullyThrowsForNullStream() throws IOException
+    {
+        HttpStreamReader.readFully(null, 10);
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_004: [If the expected length is positive, this function shall read into a buffer of that size.]
+    // Tests_SRS_HTTPSTREAMREADER_34_009: [If the buffer was filled exactly, this function shall return it without copying.]
+    @Test
+    public void readFullyWithExactExpectedLengthReturnsBody() throws IOException
+    {
+        byte[] body = buildBody(20000);
+
+        byte[] result = HttpStreamReader.readFully(new ByteArrayInputStream(body), body.length);
+
+        assertArrayEquals(body, result);
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_004: [If the expected length is positive, this function shall read into a buffer of that size.]
+    @Test
+    public void readFullyWithWrongExpectedLengthReturnsWholeBody() throws IOException
+    {
+        byte[] body = buildBody(1000);
+
+        assertArrayEquals(body, HttpStreamReader.readFully(new ByteArrayInputStream(body), 10));
+        assertArrayEquals(body, HttpStreamReader.readFully(new ByteArrayInputStream(body), 5000));
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_006: [This function shall read the stream in chunks until the end of the stream is reached.]
+    @Test
+    public void readFullyWithUnknownLengthReturnsBody() throws IOException
+    {
+        byte[] body = buildBody(100000);
+
+        assertArrayEquals(body, HttpStreamReader.readFully(new ByteArrayInputStream(body), -1));
+        assertArrayEquals(new byte[0], HttpStreamReader.readFully(new ByteArrayInputStream(new byte[0]), -1));
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_005: [If the expected length is unknown and pooled buffers are enabled, this function shall read into the calling thread's scratch buffer.]
+    // Tests_SRS_HTTPSTREAMREADER_34_008: [This function shall never return the pooled scratch buffer itself.]
+    @Test
+    public void readFullyWithPooledBuffersReturnsIndependentCopies() throws IOException
+    {
+        HttpStreamReader.setPooledBuffersEnabled(true);
+        byte[] firstBody = buildBody(300);
+        byte[] secondBody = new byte[] {9, 8, 7};
+
+        byte[] first = HttpStreamReader.readFully(new ByteArrayInputStream(firstBody), -1);
+        byte[] second = HttpStreamReader.readFully(new ByteArrayInputStream(secondBody), -1);
+
+        assertArrayEquals(firstBody, first);
+        assertArrayEquals(secondBody, second);
+    }
+
+    // Tests_SRS_HTTPSTREAMREADER_34_007: [If the stream does not return any bytes for a chunked read, this function shall fall back to reading a single byte.]
+    @Test
+    public void readFullyFallsBackToSingleByteReads() throws IOException
+    {
+        final byte[] body = buildBody(5);
+        InputStream singleByteStream = new InputStream()
+        {
+            private int position = 0;
+
+            @Override
+            public int read()
+            {
+                return position < body.length ? body[position++] : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                return 0;
+            }
+        };
+
+        assertArrayEquals(body, HttpStreamReader.readFully(singleByteStream, -1));
+    }
+}
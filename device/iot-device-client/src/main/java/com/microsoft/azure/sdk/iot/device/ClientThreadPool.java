@@ -0,0 +1,468 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads that any number of clients can share. By default every client starts its own schedulers
+ * for sending, receiving, retries, reconnection and AMQP token renewal, so the number of threads in a process grows
+ * with the number of clients. Clients configured with the same pool run all of those tasks on its fixed set of
+ * scheduler threads instead.
+ *
+ * <p>
+ * Work that blocks for the lifetime of a connection, like the AMQP reactor or the event driven send task, cannot
+ * share the scheduler threads and runs on a dedicated thread per client. Shorter work that may still block for a
+ * while, like reconnecting a client, runs on dedicated threads that are started on demand and stop once they have been
+ * idle for a minute. In virtual thread mode, which needs a Java
+ * runtime that supports virtual threads, both the scheduler threads and the dedicated threads are virtual threads.
+ * Threads started by the MQTT library are not affected by this pool.
+ * </p>
+ *
+ * <p>
+ * The pool is owned by the caller; it must outlive every client that uses it and be closed once they are all closed.
+ * </p>
+ */
+public final class ClientThreadPool implements Closeable
+{
+    private static final String SCHEDULER_THREAD_NAME_PREFIX = "azure-iot-sdk-ClientThreadPool-scheduler-";
+    private static final String DEDICATED_THREAD_NAME_PREFIX = "azure-iot-sdk-ClientThreadPool-dedicated-";
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ThreadFactory dedicatedThreadFactory;
+    private final ThreadPoolExecutor blockingExecutor;
+    private final boolean useVirtualThreads;
+
+    private static final long BLOCKING_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private final AtomicInteger dedicatedThreadCount = new AtomicInteger();
+
+    /**
+     * Creates a pool with the provided number of platform scheduler threads.
+     * @param threadCount the number of scheduler threads shared by all clients using this pool.
+     * @throws IllegalArgumentException if threadCount is less than 1.
+     */
+    public ClientThreadPool(int threadCount) throws IllegalArgumentException
+    {
+        this(threadCount, false);
+    }
+
+    /**
+     * Creates a pool with the provided number of scheduler threads.
+     * @param threadCount the number of scheduler threads shared by all clients using this pool.
+     * @param useVirtualThreads true to run the scheduler and the dedicated threads on virtual threads.
+     * @throws IllegalArgumentException if threadCount is less than 1.
+     * @throws UnsupportedOperationException if useVirtualThreads is true and the Java runtime does not support
+     * virtual threads.
+     */
+    public ClientThreadPool(int threadCount, boolean useVirtualThreads) throws IllegalArgumentException, UnsupportedOperationException
+    {
+        if (threadCount < 1)
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_001: [If the provided thread count is less than 1, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+
+        if (useVirtualThreads && !isVirtualThreadSupported())
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_002: [If virtual threads are requested and the Java runtime does not support them, the constructor shall throw an UnsupportedOperationException.]
+            throw new UnsupportedOperationException("Virtual threads are not supported by this Java runtime");
+        }
+
+        // Codes_SRS_CLIENTTHREADPOOL_34_003: [The constructor shall create a scheduler with the provided number of threads that removes cancelled tasks from its queue.]
+        this.useVirtualThreads = useVirtualThreads;
+        ThreadFactory baseThreadFactory = useVirtualThreads ? VIRTUAL_THREAD_FACTORY : Executors.defaultThreadFactory();
+        this.scheduler = new ScheduledThreadPoolExecutor(threadCount, new NamedThreadFactory(baseThreadFactory, SCHEDULER_THREAD_NAME_PREFIX));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.dedicatedThreadFactory = new CountingThreadFactory(new NamedThreadFactory(baseThreadFactory, DEDICATED_THREAD_NAME_PREFIX));
+        this.blockingExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, BLOCKING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), this.dedicatedThreadFactory);
+    }
+
+    /**
+     * @return true if the Java runtime supports virtual threads, false otherwise.
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        // Codes_SRS_CLIENTTHREADPOOL_34_004: [This function shall return true if the Java runtime supports virtual threads.]
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Creates a scheduler for one client component that runs its tasks on the shared scheduler threads. Shutting the
+     * returned scheduler down only cancels the tasks that were submitted through it; the shared threads keep running
+     * for the other clients.
+     * @return a scheduler backed by this pool.
+     * @throws IllegalStateException if this pool has been closed.
+     */
+    public ScheduledExecutorService newScheduler() throws IllegalStateException
+    {
+        if (this.scheduler.isShutdown())
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The client thread pool has been closed");
+        }
+
+        // Codes_SRS_CLIENTTHREADPOOL_34_006: [This function shall return a scheduler that runs its tasks on the shared scheduler threads.]
+        return new SharedScheduler(this.scheduler);
+    }
+
+    /**
+     * Creates an executor with a single dedicated thread, for work that blocks for the lifetime of a connection.
+     * @return a single thread executor whose thread is counted by {@link #getDedicatedThreadCount()}.
+     * @throws IllegalStateException if this pool has been closed.
+     */
+    public ExecutorService newDedicatedThreadExecutor() throws IllegalStateException
+    {
+        if (this.scheduler.isShutdown())
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The client thread pool has been closed");
+        }
+
+        // Codes_SRS_CLIENTTHREADPOOL_34_007: [This function shall return a single thread executor whose thread is created by this pool.]
+        return Executors.newSingleThreadExecutor(this.dedicatedThreadFactory);
+    }
+
+    /**
+     * Runs a task that may block, like a reconnection with its backoff, on a dedicated thread so that it never holds
+     * one of the shared scheduler threads. Idle dedicated threads are reused, and new ones are started when none is
+     * idle.
+     * @param task the task to run.
+     * @throws IllegalArgumentException if task is null.
+     * @throws IllegalStateException if this pool has been closed.
+     */
+    public void executeBlocking(Runnable task) throws IllegalArgumentException, IllegalStateException
+    {
+        if (task == null)
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_011: [If the provided task is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("task cannot be null");
+        }
+
+        if (this.scheduler.isShutdown())
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The client thread pool has been closed");
+        }
+
+        try
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_012: [This function shall run the task on an idle dedicated thread of this pool, or on a new one if none is idle.]
+            this.blockingExecutor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Codes_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The client thread pool has been closed");
+        }
+    }
+
+    /**
+     * @return true if this pool runs on virtual threads.
+     */
+    public boolean isUsingVirtualThreads()
+    {
+        return this.useVirtualThreads;
+    }
+
+    /**
+     * @return the number of live threads started by this pool, scheduler and dedicated threads together.
+     */
+    public int getThreadCount()
+    {
+        // Codes_SRS_CLIENTTHREADPOOL_34_008: [This function shall return the number of scheduler threads plus the number of dedicated threads.]
+        return this.scheduler.getPoolSize() + this.dedicatedThreadCount.get();
+    }
+
+    /**
+     * @return the maximum number of scheduler threads of this pool.
+     */
+    public int getMaxSchedulerThreadCount()
+    {
+        return this.scheduler.getCorePoolSize();
+    }
+
+    /**
+     * @return the number of scheduler threads that are currently running a task.
+     */
+    public int getActiveSchedulerThreadCount()
+    {
+        return this.scheduler.getActiveCount();
+    }
+
+    /**
+     * @return the number of dedicated threads that are currently running.
+     */
+    public int getDedicatedThreadCount()
+    {
+        return this.dedicatedThreadCount.get();
+    }
+
+    /**
+     * @return the number of tasks waiting in the scheduler queue, including delayed and periodic tasks that are not
+     * due yet.
+     */
+    public int getQueueDepth()
+    {
+        // Codes_SRS_CLIENTTHREADPOOL_34_009: [This function shall return the number of tasks in the scheduler queue.]
+        return this.scheduler.getQueue().size();
+    }
+
+    /**
+     * @return the approximate number of task executions completed by the scheduler threads.
+     */
+    public long getCompletedTaskCount()
+    {
+        return this.scheduler.getCompletedTaskCount();
+    }
+
+    /**
+     * Stops the scheduler threads of this pool. Tasks still scheduled are cancelled, and running tasks are interrupted.
+     * Dedicated threads stop when the client that owns them is closed, and threads running tasks passed to
+     * {@link #executeBlocking(Runnable)} stop once their task completes.
+     */
+    @Override
+    public void close()
+    {
+        // Codes_SRS_CLIENTTHREADPOOL_34_010: [This function shall shut the scheduler down and interrupt the running tasks.]
+        this.scheduler.shutdownNow();
+
+        // Codes_SRS_CLIENTTHREADPOOL_34_013: [This function shall stop accepting blocking tasks and let the running ones complete.]
+        this.blockingExecutor.shutdown();
+    }
+
+    private static ThreadFactory createVirtualThreadFactory()
+    {
+        // Thread.ofVirtual() only exists from Java 21 on, so it is looked up at runtime
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory
+    {
+        private final ThreadFactory threadFactory;
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        NamedThreadFactory(ThreadFactory threadFactory, String namePrefix)
+        {
+            this.threadFactory = threadFactory;
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = this.threadFactory.newThread(runnable);
+            thread.setName(this.namePrefix + this.threadNumber.incrementAndGet());
+            return thread;
+        }
+    }
+
+    private final class CountingThreadFactory implements ThreadFactory
+    {
+        private final ThreadFactory threadFactory;
+
+        CountingThreadFactory(ThreadFactory threadFactory)
+        {
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            return this.threadFactory.newThread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dedicatedThreadCount.incrementAndGet();
+                    try
+                    {
+                        runnable.run();
+                    }
+                    finally
+                    {
+                        dedicatedThreadCount.decrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A view of the shared scheduler for a single client component. It keeps track of the tasks submitted through it
+     * so that shutting it down cancels them without stopping the shared threads. Like a
+     * {@link ScheduledThreadPoolExecutor}, {@link #shutdown()} cancels periodic tasks and lets delayed tasks run, and
+     * {@link #shutdownNow()} cancels every task.
+     */
+    private static final class SharedScheduler extends AbstractExecutorService implements ScheduledExecutorService
+    {
+        // Completed one shot tasks are dropped from the tracked set once it grows past this size
+        private static final int PRUNE_THRESHOLD = 64;
+
+        private final ScheduledExecutorService scheduler;
+        private final Set<Future<?>> futures = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+        private final Set<Future<?>> periodicFutures = Collections.newSetFromMap(new ConcurrentHashMap<Future<?>, Boolean>());
+        private volatile boolean shutdown;
+
+        SharedScheduler(ScheduledExecutorService scheduler)
+        {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+        {
+            checkNotShutdown();
+            return track(this.scheduler.schedule(command, delay, unit), false);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit)
+        {
+            checkNotShutdown();
+            return track(this.scheduler.schedule(callable, delay, unit), false);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit)
+        {
+            checkNotShutdown();
+            return track(this.scheduler.scheduleAtFixedRate(command, initialDelay, period, unit), true);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit)
+        {
+            checkNotShutdown();
+            return track(this.scheduler.scheduleWithFixedDelay(command, initialDelay, delay, unit), true);
+        }
+
+        @Override
+        public void execute(Runnable command)
+        {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            this.shutdown = true;
+            for (Future<?> future : this.periodicFutures)
+            {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            // The shared scheduler does not hand back the runnables of cancelled tasks, so none are returned
+            this.shutdown = true;
+            for (Future<?> future : this.futures)
+            {
+                future.cancel(true);
+            }
+
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return this.shutdown;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            if (!this.shutdown)
+            {
+                return false;
+            }
+
+            prune();
+            return this.futures.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (Future<?> future : this.futures)
+            {
+                try
+                {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+                catch (CancellationException | ExecutionException e)
+                {
+                    // the task is done either way
+                }
+                catch (TimeoutException e)
+                {
+                    return false;
+                }
+            }
+
+            return isTerminated();
+        }
+
+        private <T extends Future<?>> T track(T future, boolean periodic)
+        {
+            this.futures.add(future);
+            if (periodic)
+            {
+                this.periodicFutures.add(future);
+            }
+
+            if (this.futures.size() > PRUNE_THRESHOLD)
+            {
+                prune();
+            }
+
+            if (this.shutdown)
+            {
+                // shutdown raced with this call and may have missed the new task
+                future.cancel(false);
+            }
+
+            return future;
+        }
+
+        private void prune()
+        {
+            for (Future<?> future : this.futures)
+            {
+                if (future.isDone())
+                {
+                    this.futures.remove(future);
+                    this.periodicFutures.remove(future);
+                }
+            }
+        }
+
+        private void checkNotShutdown()
+        {
+            if (this.shutdown)
+            {
+                throw new RejectedExecutionException("This scheduler has been shut down");
+            }
+        }
+    }
+}
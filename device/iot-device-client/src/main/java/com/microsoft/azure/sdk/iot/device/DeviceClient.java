@@ -5,6 +5,7 @@ package com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.deps.serializer.ParserUtility;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.*;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUpload;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
@@ -16,6 +17,7 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 /**
  * <p>
@@ -434,6 +436,108 @@ public final class DeviceClient extends InternalClient implements Closeable
         this.fileUpload.uploadToBlobAsync(destinationBlobName, inputStream, streamLength, callback, callbackContext);
     }
 
+    /**
+     * Asynchronously upload a stream to the IoT Hub, block by block.
+     *
+     * The stream is sent to the storage in blocks of the configured size, several of them in parallel, reporting
+     * the progress of each block. If the options have a checkpoint file, an interrupted upload of the same stream
+     * to the same blob resumes from the blocks already stored.
+     *
+     * NOTE: IotHub does not currently support CA signed devices using file upload. Please use SAS based authentication or
+     * self signed certificates.
+     *
+     * @param destinationBlobName is a string with the name of the file in the storage.
+     * @param inputStream is a InputStream with the stream to upload in the blob.
+     * @param streamLength is a long with the number of bytes in the stream to upload.
+     * @param blockUploadOptions is the set of options of the block upload. Cannot be {@code null}.
+     * @param callback the callback to be invoked when a file is uploaded.
+     * @param callbackContext a context to be passed to the callback. Can be {@code null}.
+     *
+     * @throws IllegalArgumentException if the provided blob name, or the file path is {@code null},
+     *          empty or not valid, or if the options or the callback are {@code null}.
+     * @throws IOException if the client cannot create a instance of the FileUpload or the transport.
+     */
+    public void uploadToBlobAsync(String destinationBlobName, InputStream inputStream, long streamLength, BlockUploadOptions blockUploadOptions,
+                                  IotHubEventCallback callback, Object callbackContext) throws IllegalArgumentException, IOException
+    {
+        // Codes_SRS_DEVICECLIENT_34_076: [If the `blockUploadOptions` is null, the function shall throw IllegalArgumentException.]
+        if (blockUploadOptions == null)
+        {
+            throw new IllegalArgumentException("Block upload options cannot be null.");
+        }
+
+        if (callback == null)
+        {
+            throw new IllegalArgumentException("Callback is null");
+        }
+
+        if (inputStream == null)
+        {
+            throw new IllegalArgumentException("The input stream cannot be null.");
+        }
+
+        if (streamLength < 0)
+        {
+            throw new IllegalArgumentException("Invalid stream size.");
+        }
+
+        ParserUtility.validateBlobName(destinationBlobName);
+
+        if (this.fileUpload == null)
+        {
+            this.fileUpload = new FileUpload(this.config);
+        }
+
+        // Codes_SRS_DEVICECLIENT_34_077: [The function shall start the upload of the stream block by block with the provided `blockUploadOptions`, using the FileUpload.]
+        this.fileUpload.uploadToBlobAsync(destinationBlobName, inputStream, streamLength, blockUploadOptions, callback, callbackContext);
+    }
+
+    /**
+     * Asynchronously upload a file to the IoT Hub, block by block.
+     *
+     * The blocks are read as memory mapped slices of the file and sent to the storage without being copied in the
+     * heap. If the options have a checkpoint file, an interrupted upload of the same file to the same blob resumes
+     * from the blocks already stored.
+     *
+     * NOTE: IotHub does not currently support CA signed devices using file upload. Please use SAS based authentication or
+     * self signed certificates.
+     *
+     * @param destinationBlobName is a string with the name of the file in the storage.
+     * @param path is the file to upload in the blob.
+     * @param blockUploadOptions is the set of options of the block upload. Can be {@code null}, in which case the
+     *                           default options are used.
+     * @param callback the callback to be invoked when a file is uploaded.
+     * @param callbackContext a context to be passed to the callback. Can be {@code null}.
+     *
+     * @throws IllegalArgumentException if the provided blob name is {@code null}, empty or not valid, if the path
+     *          is {@code null} or not a regular file, or if the callback is {@code null}.
+     * @throws IOException if the client cannot create a instance of the FileUpload or the transport.
+     */
+    public void uploadToBlobAsync(String destinationBlobName, Path path, BlockUploadOptions blockUploadOptions,
+                                  IotHubEventCallback callback, Object callbackContext) throws IllegalArgumentException, IOException
+    {
+        // Codes_SRS_DEVICECLIENT_34_078: [If the `path` or the `callback` is null, the function shall throw IllegalArgumentException.]
+        if (callback == null)
+        {
+            throw new IllegalArgumentException("Callback is null");
+        }
+
+        if (path == null)
+        {
+            throw new IllegalArgumentException("The path cannot be null.");
+        }
+
+        ParserUtility.validateBlobName(destinationBlobName);
+
+        if (this.fileUpload == null)
+        {
+            this.fileUpload = new FileUpload(this.config);
+        }
+
+        // Codes_SRS_DEVICECLIENT_34_079: [The function shall start the upload of the file in the `path` block by block with the provided `blockUploadOptions`, using the FileUpload.]
+        this.fileUpload.uploadToBlobAsync(destinationBlobName, path, blockUploadOptions, callback, callbackContext);
+    }
+
     /**
      * Retrieves the twin's latest desired properties
      * @throws IOException if the iothub cannot be reached
@@ -7,6 +7,7 @@ import com.microsoft.azure.sdk.iot.device.DeviceTwin.Pair;
 import com.microsoft.azure.sdk.iot.device.auth.*;
 import com.microsoft.azure.sdk.iot.device.transport.ExponentialBackoffWithJitter;
 import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttInFlightWindow;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderSymmetricKey;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderTpm;
@@ -29,6 +30,10 @@ public final class DeviceClientConfig
 
     private static final long DEFAULT_OPERATION_TIMEOUT = 4 * 60 * 1000; //4 minutes
 
+    private static final int DEFAULT_RECEIVE_CALLBACK_PARALLELISM = 1;
+
+    private static final int DEFAULT_MQTT_MAX_IN_FLIGHT_COUNT = 10;
+
     private boolean useWebsocket;
 
     private IotHubAuthenticationProvider authenticationProvider;
@@ -69,6 +74,17 @@ public final class DeviceClientConfig
     private long operationTimeout = DEFAULT_OPERATION_TIMEOUT;
     private IotHubClientProtocol protocol;
 
+    private boolean eventDrivenSend = false;
+    private boolean httpsBatchSend = false;
+    private long httpsBatchLingerMillis = 0;
+
+    private boolean eventDrivenReceive = false;
+    private int receiveCallbackParallelism = DEFAULT_RECEIVE_CALLBACK_PARALLELISM;
+    private MqttInFlightWindow mqttInFlightWindow = new MqttInFlightWindow(DEFAULT_MQTT_MAX_IN_FLIGHT_COUNT);
+    private ClientThreadPool clientThreadPool;
+    private ReconnectionCoordinator reconnectionCoordinator;
+    private PersistentQueueOptions persistentQueueOptions;
+
     // Codes_SRS_DEVICECLIENTCONFIG_28_001: [The class shall have ExponentialBackOff as the default retryPolicy.]
     private RetryPolicy retryPolicy = new ExponentialBackoffWithJitter();
 
@@ -604,6 +620,191 @@ public final class DeviceClientConfig
         return this.operationTimeout;
     }
 
+    /**
+     * Sets if queued messages are sent as soon as they are added, instead of on every send period
+     * @param eventDrivenSend true to wake up the sender whenever a message is queued, false to poll the queue on
+     *                        every send period
+     */
+    void setEventDrivenSend(boolean eventDrivenSend)
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_090: [This function shall save the provided event driven send flag.]
+        this.eventDrivenSend = eventDrivenSend;
+    }
+
+    /**
+     * Getter for the event driven send flag
+     * @return true if queued messages are sent as soon as they are added, false if they are sent on every send period
+     */
+    public boolean isEventDrivenSend()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_091: [This function shall return the saved event driven send flag.]
+        return this.eventDrivenSend;
+    }
+
+    /**
+     * Sets if received messages are handed to their message callback as soon as they arrive, instead of on every
+     * receive period
+     * @param eventDrivenReceive true to dispatch received messages as soon as they arrive
+     * @param receiveCallbackParallelism the number of threads that may run message callbacks at the same time. Messages
+     *                                   for the same device are always delivered in order on the same thread.
+     * @throws IllegalArgumentException if receiveCallbackParallelism is less than 1
+     */
+    void setEventDrivenReceive(boolean eventDrivenReceive, int receiveCallbackParallelism) throws IllegalArgumentException
+    {
+        if (receiveCallbackParallelism < 1)
+        {
+            //Codes_SRS_DEVICECLIENTCONFIG_34_092: [If the provided parallelism is less than 1, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("Receive callback parallelism must be at least 1");
+        }
+
+        //Codes_SRS_DEVICECLIENTCONFIG_34_093: [This function shall save the provided event driven receive flag and parallelism.]
+        this.eventDrivenReceive = eventDrivenReceive;
+        this.receiveCallbackParallelism = receiveCallbackParallelism;
+    }
+
+    /**
+     * Getter for the event driven receive flag
+     * @return true if received messages are dispatched to their message callback as soon as they arrive
+     */
+    public boolean isEventDrivenReceive()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_094: [This function shall return the saved event driven receive flag.]
+        return this.eventDrivenReceive;
+    }
+
+    /**
+     * Getter for the receive callback parallelism
+     * @return the number of threads that may run message callbacks at the same time when event driven receive is enabled
+     */
+    public int getReceiveCallbackParallelism()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_095: [This function shall return the saved receive callback parallelism.]
+        return this.receiveCallbackParallelism;
+    }
+
+    /**
+     * Sets the maximum number of MQTT publishes that may wait for an acknowledgement from the service at the same time
+     * @param maxInFlightCount the size of the MQTT in flight window
+     * @throws IllegalArgumentException if maxInFlightCount is less than 1
+     */
+    void setMqttMaxInFlightCount(int maxInFlightCount) throws IllegalArgumentException
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_096: [If the provided count is less than 1, this function shall throw an IllegalArgumentException.]
+        //Codes_SRS_DEVICECLIENTCONFIG_34_097: [This function shall replace the saved MQTT in flight window with a window of the provided size.]
+        this.mqttInFlightWindow = new MqttInFlightWindow(maxInFlightCount);
+    }
+
+    /**
+     * Getter for the MQTT in flight window
+     * @return the window that limits the number of MQTT publishes waiting for an acknowledgement, and its metrics
+     */
+    public MqttInFlightWindow getMqttInFlightWindow()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_098: [This function shall return the saved MQTT in flight window.]
+        return this.mqttInFlightWindow;
+    }
+
+    /**
+     * Sets the thread pool shared with other clients
+     * @param clientThreadPool the pool to run this client's scheduled tasks on, or null to give this client its own
+     *                         threads
+     */
+    void setClientThreadPool(ClientThreadPool clientThreadPool)
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_099: [This function shall save the provided client thread pool.]
+        this.clientThreadPool = clientThreadPool;
+    }
+
+    /**
+     * Getter for the thread pool shared with other clients
+     * @return the pool this client's scheduled tasks run on, or null if this client uses its own threads
+     */
+    public ClientThreadPool getClientThreadPool()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_100: [This function shall return the saved client thread pool.]
+        return this.clientThreadPool;
+    }
+
+    /**
+     * Sets the coordinator that admits this client's reconnection attempts together with those of other clients
+     * @param reconnectionCoordinator the coordinator to wait for before each reconnection attempt, or null to
+     *                                reconnect as soon as the retry policy allows
+     */
+    void setReconnectionCoordinator(ReconnectionCoordinator reconnectionCoordinator)
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_105: [This function shall save the provided reconnection coordinator.]
+        this.reconnectionCoordinator = reconnectionCoordinator;
+    }
+
+    /**
+     * Getter for the coordinator that admits this client's reconnection attempts
+     * @return the coordinator to wait for before each reconnection attempt, or null if there is none
+     */
+    public ReconnectionCoordinator getReconnectionCoordinator()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_106: [This function shall return the saved reconnection coordinator.]
+        return this.reconnectionCoordinator;
+    }
+
+    /**
+     * Sets the options of the persistent queue that keeps this client's telemetry on disk until IoT Hub accepts it
+     * @param persistentQueueOptions the options of the queue, or null to keep the telemetry in memory only
+     */
+    void setPersistentQueueOptions(PersistentQueueOptions persistentQueueOptions)
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_107: [This function shall save the provided persistent queue options.]
+        this.persistentQueueOptions = persistentQueueOptions;
+    }
+
+    /**
+     * Getter for the options of the persistent queue
+     * @return the options of the queue that keeps this client's telemetry on disk, or null if there is none
+     */
+    public PersistentQueueOptions getPersistentQueueOptions()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_108: [This function shall return the saved persistent queue options.]
+        return this.persistentQueueOptions;
+    }
+
+    /**
+     * Sets if queued messages are sent over HTTPS in batches, and how long a message may wait for others to join its batch
+     * @param httpsBatchSend true to send queued messages in batches of up to 256 kb, false to send one request per message
+     * @param lingerMillis the time, in milliseconds, a queued message may wait for the batch to fill before it is sent
+     * @throws IllegalArgumentException if lingerMillis is negative
+     */
+    void setHttpsBatchSend(boolean httpsBatchSend, long lingerMillis) throws IllegalArgumentException
+    {
+        if (lingerMillis < 0)
+        {
+            //Codes_SRS_DEVICECLIENTCONFIG_34_101: [If the provided linger time is negative, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("HTTPS batch linger time cannot be negative");
+        }
+
+        //Codes_SRS_DEVICECLIENTCONFIG_34_102: [This function shall save the provided HTTPS batch send flag and linger time.]
+        this.httpsBatchSend = httpsBatchSend;
+        this.httpsBatchLingerMillis = lingerMillis;
+    }
+
+    /**
+     * Getter for the HTTPS batch send flag
+     * @return true if queued messages are sent over HTTPS in batches
+     */
+    public boolean isHttpsBatchSend()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_103: [This function shall return the saved HTTPS batch send flag.]
+        return this.httpsBatchSend;
+    }
+
+    /**
+     * Getter for the HTTPS batch linger time
+     * @return the time, in milliseconds, a queued message may wait for its batch to fill before it is sent
+     */
+    public long getHttpsBatchLingerMillis()
+    {
+        //Codes_SRS_DEVICECLIENTCONFIG_34_104: [This function shall return the saved HTTPS batch linger time.]
+        return this.httpsBatchLingerMillis;
+    }
+
     public ProductInfo getProductInfo()
     {
         //Codes_SRS_DEVICECLIENTCONFIG_34_040: [This function shall return the saved product info.]
@@ -4,13 +4,17 @@
 package com.microsoft.azure.sdk.iot.device;
 
 import com.microsoft.azure.sdk.iot.device.exceptions.DeviceClientException;
+import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
+import com.microsoft.azure.sdk.iot.device.transport.LatencyHistogram;
 
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -81,10 +85,12 @@ public final class DeviceIO
     private IotHubTransport transport;
     private DeviceClientConfig config;
     private IotHubSendTask sendTask = null;
+    private IotHubEventDrivenSendTask eventDrivenSendTask = null;
     private IotHubReceiveTask receiveTask = null;
     private IotHubClientProtocol protocol = null;
 
     private ScheduledExecutorService taskScheduler;
+    private ExecutorService eventDrivenSendExecutor;
     private IotHubClientState state;
 
     private List<DeviceClientConfig> deviceClientConfigs = new LinkedList<>();
@@ -170,20 +176,59 @@ public final class DeviceIO
     }
 
     /**
-     * Adds a device client config to the saved list. Each device client config will be used in multiplexing
+     * Adds a device client config to the saved list. Each device client config will be used in multiplexing. If this
+     * object is open, the device is added to the open connection without reconnecting.
      * @param config the config tied to the device client to multiplex with
+     * @throws IOException if the device could not be added to the open connection
      */
-    void addClient(DeviceClientConfig config)
+    void addClient(DeviceClientConfig config) throws IOException
     {
         if (config == null)
         {
             throw new IllegalArgumentException("Config cannot be null");
         }
 
+        if (this.state == IotHubClientState.OPEN)
+        {
+            try
+            {
+                /* Codes_SRS_DEVICE_IO_34_044: [If the client is open, the function shall add the config to the open transport.] */
+                this.transport.addDeviceClientConfig(config);
+            }
+            catch (TransportException e)
+            {
+                /* Codes_SRS_DEVICE_IO_34_045: [If the transport fails to add the config, the function shall throw an IOException.] */
+                throw new IOException("Could not add the device to the open connection", e);
+            }
+        }
+
         // add client to transport
         deviceClientConfigs.add(config);
     }
 
+    /**
+     * Removes a device client config from the saved list. If this object is open, the device is removed from the open
+     * connection, which stays open for the other devices.
+     * @param config the config tied to the device client to remove
+     * @return true if the config was in the saved list, false otherwise
+     */
+    boolean removeClient(DeviceClientConfig config)
+    {
+        if (config == null)
+        {
+            throw new IllegalArgumentException("Config cannot be null");
+        }
+
+        if (this.state == IotHubClientState.OPEN)
+        {
+            /* Codes_SRS_DEVICE_IO_34_046: [If the client is open, the function shall remove the device from the open transport.] */
+            this.transport.removeDeviceClientConfig(config.getDeviceId());
+        }
+
+        /* Codes_SRS_DEVICE_IO_34_047: [The function shall remove the config from the saved list and return true if it was in it.] */
+        return deviceClientConfigs.remove(config);
+    }
+
     /**
      * Handles logic common to all open functions.
      */
@@ -192,13 +237,45 @@ public final class DeviceIO
         this.sendTask = new IotHubSendTask(this.transport);
         this.receiveTask = new IotHubReceiveTask(this.transport);
 
-        this.taskScheduler = Executors.newScheduledThreadPool(2);
-        // the scheduler waits until each execution is finished before
-        // scheduling the next one, so executions of a given task
-        // will never overlap.
-        /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
-        this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
-                sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        ClientThreadPool clientThreadPool = this.config.getClientThreadPool();
+        if (clientThreadPool != null)
+        {
+            /* Codes_SRS_DEVICE_IO_34_048: [If the config has a client thread pool, the open shall schedule the send and
+             * receive tasks on a scheduler from that pool.] */
+            this.taskScheduler = clientThreadPool.newScheduler();
+        }
+        else
+        {
+            this.taskScheduler = Executors.newScheduledThreadPool(2);
+        }
+
+        if (this.config.isEventDrivenSend())
+        {
+            /* Codes_SRS_DEVICE_IO_34_040: [If the config enables event driven send, the open shall start a single
+             * event driven send task instead of scheduling send tasks.] */
+            this.eventDrivenSendTask = new IotHubEventDrivenSendTask(this.transport);
+            if (clientThreadPool != null)
+            {
+                // the event driven send task never returns, so it would take a shared thread away from other clients
+                /* Codes_SRS_DEVICE_IO_34_049: [If the config has a client thread pool, the open shall run the event
+                 * driven send task on a dedicated thread from that pool.] */
+                this.eventDrivenSendExecutor = clientThreadPool.newDedicatedThreadExecutor();
+                this.eventDrivenSendExecutor.execute(this.eventDrivenSendTask);
+            }
+            else
+            {
+                this.taskScheduler.execute(this.eventDrivenSendTask);
+            }
+        }
+        else
+        {
+            // the scheduler waits until each execution is finished before
+            // scheduling the next one, so executions of a given task
+            // will never overlap.
+            /* Codes_SRS_DEVICE_IO_21_013: [The open shall schedule send tasks to run every SEND_PERIOD_MILLIS milliseconds.] */
+            this.taskScheduler.scheduleAtFixedRate(this.sendTask, 0,
+                    sendPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+        }
         /* Codes_SRS_DEVICE_IO_21_014: [The open shall schedule receive tasks to run every receivePeriodInMilliseconds milliseconds.] */
         this.taskScheduler.scheduleAtFixedRate(this.receiveTask, 0,
                 receivePeriodInMilliseconds, TimeUnit.MILLISECONDS);
@@ -219,6 +296,19 @@ public final class DeviceIO
     {
         /* Codes_SRS_DEVICE_IO_21_017: [The close shall finish all ongoing tasks.] */
         /* Codes_SRS_DEVICE_IO_21_018: [The close shall cancel all recurring tasks.] */
+        if (this.eventDrivenSendTask != null)
+        {
+            /* Codes_SRS_DEVICE_IO_34_041: [The close shall stop the event driven send task, if any.] */
+            this.eventDrivenSendTask.stop();
+            this.eventDrivenSendTask = null;
+        }
+
+        if (this.eventDrivenSendExecutor != null)
+        {
+            this.eventDrivenSendExecutor.shutdown();
+            this.eventDrivenSendExecutor = null;
+        }
+
         if (taskScheduler != null)
         {
             this.taskScheduler.shutdown();
@@ -369,7 +459,8 @@ public final class DeviceIO
         this.sendPeriodInMilliseconds = newIntervalInMilliseconds;
 
         /* Codes_SRS_DEVICE_IO_21_034: [If the task scheduler already exists, the setSendPeriodInMilliseconds shall change the `scheduleAtFixedRate` for the sendTask to the new value.] */
-        if(this.taskScheduler != null)
+        /* Codes_SRS_DEVICE_IO_34_042: [If the event driven send task is running, the setSendPeriodInMilliseconds shall not schedule send tasks.] */
+        if(this.taskScheduler != null && this.eventDrivenSendTask == null)
         {
             /* Codes_SRS_DEVICE_IO_21_035: [If the `sendTask` is null, the setSendPeriodInMilliseconds shall throw IOException.] */
             if(this.sendTask == null)
@@ -414,6 +505,16 @@ public final class DeviceIO
         return this.transport.isEmpty();
     }
 
+    /**
+     * Getter for the histogram of the time between a message arriving on the transport and its callback being invoked.
+     * @return the receive latency histogram of the transport.
+     */
+    public LatencyHistogram getReceiveLatencyHistogram()
+    {
+        /* Codes_SRS_DEVICE_IO_34_043: [The getReceiveLatencyHistogram shall return the receive latency histogram of the transport.] */
+        return this.transport.getReceiveLatencyHistogram();
+    }
+
     /**
      * Registers a callback with the configured transport to be executed whenever the connection to the device is lost or established.
      *
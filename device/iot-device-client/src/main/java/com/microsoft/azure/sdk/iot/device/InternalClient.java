@@ -8,6 +8,8 @@ package com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.DeviceTwin.*;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
+import com.microsoft.azure.sdk.iot.device.transport.LatencyHistogram;
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttInFlightWindow;
 import com.microsoft.azure.sdk.iot.device.transport.RetryPolicy;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 
@@ -158,7 +160,7 @@ public class InternalClient
      *
      * @throws IllegalArgumentException if the message provided is {@code null}.
      * @throws IllegalStateException if the client has not been opened yet or is
-     * already closed.
+     * already closed, or if the message cannot be persisted in the persistent queue.
      */
     public void sendEventAsync(Message message, IotHubEventCallback callback, Object callbackContext)
     {
@@ -321,6 +323,169 @@ public class InternalClient
         this.config.setOperationTimeout(timeout);
     }
 
+    /**
+     * Sets if messages are sent as soon as they are queued instead of on every send interval. When enabled, a
+     * dedicated sender sleeps until a message is queued and then sends every queued message, so idle clients do not
+     * wake up on every send interval. Must be set while the client is closed.
+     * @param eventDrivenSend true to send messages as soon as they are queued, false to send them on every send interval
+     * @throws IllegalStateException if the client is open
+     */
+    public void setEventDrivenSend(boolean eventDrivenSend) throws IllegalStateException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_088: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("Event driven send can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_089: [The function shall set the device config's event driven send flag.]
+        this.config.setEventDrivenSend(eventDrivenSend);
+    }
+
+    /**
+     * Sets if received messages, twin updates and method invocations are handed to their callbacks as soon as they
+     * arrive, instead of on every receive interval. Callbacks run on a bounded pool of threads; messages for the same
+     * device are always delivered in order. Has no effect on HTTPS, which must poll for messages. Must be set while the
+     * client is closed.
+     * @param eventDrivenReceive true to dispatch received messages as soon as they arrive
+     * @param callbackParallelism the number of threads that may run callbacks at the same time
+     * @throws IllegalStateException if the client is open
+     * @throws IllegalArgumentException if callbackParallelism is less than 1
+     */
+    public void setEventDrivenReceive(boolean eventDrivenReceive, int callbackParallelism) throws IllegalStateException, IllegalArgumentException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_090: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("Event driven receive can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_091: [The function shall set the device config's event driven receive flag and parallelism.]
+        this.config.setEventDrivenReceive(eventDrivenReceive, callbackParallelism);
+    }
+
+    /**
+     * Sets the maximum number of MQTT publishes that may wait for an acknowledgement from the service at the same time.
+     * A larger window keeps throughput up on links with a long round trip time. Has no effect on other protocols. Must
+     * be set while the client is closed.
+     * @param maxInFlightCount the size of the MQTT in flight window
+     * @throws IllegalStateException if the client is open
+     * @throws IllegalArgumentException if maxInFlightCount is less than 1
+     */
+    public void setMqttMaxInFlightCount(int maxInFlightCount) throws IllegalStateException, IllegalArgumentException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_093: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The MQTT in flight window can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_094: [The function shall set the device config's MQTT max in flight count.]
+        this.config.setMqttMaxInFlightCount(maxInFlightCount);
+    }
+
+    /**
+     * Sets if telemetry is sent over HTTPS in batches. Queued messages are packed into a single request of up to 256 kb,
+     * which is sent once it is full or once its oldest message has waited for the linger time, instead of sending one
+     * request per message. The callback of each message is still invoked with the result of its batch. With event
+     * driven send, a batch is sent as soon as the sender wakes up and the linger time is not used. Has no effect on
+     * other protocols. Must be set while the client is closed.
+     * @param httpsBatchSend true to send messages in batches, false to send one request per message
+     * @param lingerMillis the time, in milliseconds, a queued message may wait for its batch to fill
+     * @throws IllegalStateException if the client is open
+     * @throws IllegalArgumentException if lingerMillis is negative
+     */
+    public void setHttpsBatchSend(boolean httpsBatchSend, long lingerMillis) throws IllegalStateException, IllegalArgumentException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_098: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("HTTPS batch send can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_099: [The function shall set the device config's HTTPS batch send flag and linger time.]
+        this.config.setHttpsBatchSend(httpsBatchSend, lingerMillis);
+    }
+
+    /**
+     * Sets a thread pool to share with other clients. By default every client starts its own threads to send, receive,
+     * retry and reconnect; clients given the same pool run all of that work on the pool's bounded set of threads. The
+     * pool must stay open for as long as this client uses it. Must be set while the client is closed.
+     * @param clientThreadPool the pool to use, or null to let this client start its own threads
+     * @throws IllegalStateException if the client is open
+     */
+    public void setClientThreadPool(ClientThreadPool clientThreadPool) throws IllegalStateException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_096: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The client thread pool can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_097: [The function shall set the device config's client thread pool.]
+        this.config.setClientThreadPool(clientThreadPool);
+    }
+
+    /**
+     * Sets a reconnection coordinator to share with other clients. By default every client reconnects as soon as its
+     * retry policy allows, so a connection loss of the whole process starts every client's handshake at once; clients
+     * given the same coordinator are admitted at its rate and concurrency limits, those with messages waiting to be
+     * sent first. Must be set while the client is closed.
+     * @param reconnectionCoordinator the coordinator to use, or null to reconnect without waiting for admission
+     * @throws IllegalStateException if the client is open
+     */
+    public void setReconnectionCoordinator(ReconnectionCoordinator reconnectionCoordinator) throws IllegalStateException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_100: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The reconnection coordinator can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_101: [The function shall set the device config's reconnection coordinator.]
+        this.config.setReconnectionCoordinator(reconnectionCoordinator);
+    }
+
+    /**
+     * Keeps the telemetry of this client on disk until IoT Hub accepts it. By default the messages waiting to be sent
+     * are only kept in memory; with a persistent queue they survive a restart of the process and a long outage does
+     * not fill the heap. See {@link PersistentQueueOptions}. Must be set while the client is closed.
+     * @param persistentQueueOptions the options of the queue, or null to keep the telemetry in memory only
+     * @throws IllegalStateException if the client is open
+     */
+    public void setPersistentQueueOptions(PersistentQueueOptions persistentQueueOptions) throws IllegalStateException
+    {
+        if (this.deviceIO != null && this.deviceIO.isOpen())
+        {
+            // Codes_SRS_INTERNALCLIENT_34_102: [If the client is open, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The persistent queue can only be changed while the client is closed");
+        }
+
+        // Codes_SRS_INTERNALCLIENT_34_103: [The function shall set the device config's persistent queue options.]
+        this.config.setPersistentQueueOptions(persistentQueueOptions);
+    }
+
+    /**
+     * Getter for the MQTT in flight window, whose counters show how full the window runs and how long publishes wait
+     * for it.
+     * @return the MQTT in flight window
+     */
+    public MqttInFlightWindow getMqttInFlightWindow()
+    {
+        // Codes_SRS_INTERNALCLIENT_34_095: [This function shall return the MQTT in flight window of the device config.]
+        return this.config.getMqttInFlightWindow();
+    }
+
+    /**
+     * Getter for the histogram of the time between a message arriving from the service and its callback being invoked.
+     * @return the receive latency histogram
+     */
+    public LatencyHistogram getReceiveLatencyHistogram()
+    {
+        // Codes_SRS_INTERNALCLIENT_34_092: [This function shall return the receive latency histogram of its device IO instance.]
+        return this.deviceIO.getReceiveLatencyHistogram();
+    }
+
     public ProductInfo getProductInfo()
     {
         // Codes_SRS_INTERNALCLIENT_34_071: [This function shall return the product info saved in config.]
@@ -430,6 +430,16 @@ public class Message
         logger.LogInfo("The message with messageid %s has expiry time as %s milliseconds and the message will expire on %s, method name is %s ", this.getMessageId(), absoluteTimeout, new Date(this.expiryTime), logger.getMethodName());
     }
 
+    /**
+     * Getter for the expiryTime property
+     * @return the number of milliseconds since the epoch after which the message expires, or 0 if it never expires
+     */
+    public long getExpiryTime()
+    {
+        // Codes_SRS_MESSAGE_34_066: [The function shall return the message's absolute expiry time.]
+        return this.expiryTime;
+    }
+
     /**
      * Getter for the Message type
      * @return the Message type value
@@ -0,0 +1,279 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.io.File;
+
+/**
+ * Options of the persistent queue that keeps the telemetry of a client on disk until IoT Hub accepts it.
+ *
+ * <p>
+ *     By default the messages waiting to be sent are only kept in memory, so they are lost if the process stops,
+ *     and a long outage fills the heap. With a persistent queue, every message sent with
+ *     {@link InternalClient#sendEventAsync(Message, IotHubEventCallback, Object)} is first appended to memory
+ *     mapped segment files in {@code directory}, and it stays there until IoT Hub accepts it, or until it can never
+ *     be delivered because it expired or was rejected as malformed. Only the oldest {@code inMemoryWindowSize}
+ *     messages are held in memory, the others are read back from the disk as the window drains. The messages left
+ *     on disk when the client closes, or when the process stops, are sent again the next time the client opens,
+  *     with the {@code replayCallback}, so a message may be delivered more than once. So is a message whose sending
+ *     failed for another reason, like a retry policy that gave up, a minute after its callback reports the failure.
+ * </p>
+ * <p>
+ *     The segments take at most {@code diskQuotaInBytes} on disk; a message that does not fit is refused with an
+ *     {@link IllegalStateException}. A segment is deleted once all of its messages left it. The
+ *     {@code syncMode} chooses when the segments are flushed to the storage device, which trades the throughput of
+ *     the queue against the number of messages lost if the operating system stops.
+ * </p>
+ * <p>
+ *     Only telemetry is persisted; twin and method messages are kept in memory as before. A directory shall be used
+ *     by only one client at a time.
+ * </p>
+ */
+public final class PersistentQueueOptions
+{
+    /**
+     * When the segments are flushed to the storage device.
+     */
+    public enum SyncMode
+    {
+        /** After every message appended or acknowledged. The slowest, but no message is lost. */
+        EVERY_WRITE,
+
+        /** Once every {@code syncIntervalMillis} while the client is open, and on close. */
+        PERIODIC,
+
+        /** Only when the client closes; the operating system writes the segments back in the meantime. */
+        ON_CLOSE
+    }
+
+    /** The size of the segment files, if not set, in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
+    /** The smallest segment size accepted, in bytes. */
+    public static final int MIN_SEGMENT_SIZE_IN_BYTES = 4 * 1024;
+
+    /** The space the segments may take on disk, if not set, in bytes. */
+    public static final long DEFAULT_DISK_QUOTA_IN_BYTES = 1024L * 1024 * 1024;
+
+    /** The number of messages held in memory, if not set. */
+    public static final int DEFAULT_IN_MEMORY_WINDOW_SIZE = 1000;
+
+    /** The time between two flushes of the {@link SyncMode#PERIODIC} mode, if not set, in milliseconds. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    private final File directory;
+    private int segmentSizeInBytes = DEFAULT_SEGMENT_SIZE_IN_BYTES;
+    private long diskQuotaInBytes = DEFAULT_DISK_QUOTA_IN_BYTES;
+    private int inMemoryWindowSize = DEFAULT_IN_MEMORY_WINDOW_SIZE;
+    private SyncMode syncMode = SyncMode.PERIODIC;
+    private long syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+    private IotHubEventCallback replayCallback;
+    private Object replayCallbackContext;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the directory of the segment files. It is created if it does not exist.
+     * @throws IllegalArgumentException if the directory is null.
+     */
+    public PersistentQueueOptions(File directory) throws IllegalArgumentException
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_001: [If the `directory` is null, the constructor shall throw IllegalArgumentException.] */
+        if (directory == null)
+        {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_002: [The constructor shall store the provided `directory`.] */
+        this.directory = directory;
+    }
+
+    /**
+     * Getter for the directory.
+     *
+     * @return the directory of the segment files.
+     */
+    public File getDirectory()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_002: [The constructor shall store the provided `directory`.] */
+        return this.directory;
+    }
+
+    /**
+     * Setter for the segment size.
+     *
+     * @param segmentSizeInBytes is the size of each segment file. It shall be at least
+     *                           {@link #MIN_SEGMENT_SIZE_IN_BYTES}. A message bigger than a segment gets a segment of
+     *                           its own.
+     * @throws IllegalArgumentException if the segment size is too small.
+     */
+    public void setSegmentSizeInBytes(int segmentSizeInBytes) throws IllegalArgumentException
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_003: [If the `segmentSizeInBytes` is smaller than MIN_SEGMENT_SIZE_IN_BYTES, the setSegmentSizeInBytes shall throw IllegalArgumentException.] */
+        if (segmentSizeInBytes < MIN_SEGMENT_SIZE_IN_BYTES)
+        {
+            throw new IllegalArgumentException("segmentSizeInBytes shall be at least " + MIN_SEGMENT_SIZE_IN_BYTES);
+        }
+
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_004: [The setSegmentSizeInBytes shall store the provided `segmentSizeInBytes`.] */
+        this.segmentSizeInBytes = segmentSizeInBytes;
+    }
+
+    /**
+     * Getter for the segment size.
+     *
+     * @return the size of each segment file, {@link #DEFAULT_SEGMENT_SIZE_IN_BYTES} if not set.
+     */
+    public int getSegmentSizeInBytes()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_004: [The setSegmentSizeInBytes shall store the provided `segmentSizeInBytes`.] */
+        return this.segmentSizeInBytes;
+    }
+
+    /**
+     * Setter for the disk quota.
+     *
+     * @param diskQuotaInBytes is the space all the segment files may take. It shall be positive.
+     * @throws IllegalArgumentException if the quota is not positive.
+     */
+    public void setDiskQuotaInBytes(long diskQuotaInBytes) throws IllegalArgumentException
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_005: [If the `diskQuotaInBytes` is not positive, the setDiskQuotaInBytes shall throw IllegalArgumentException.] */
+        if (diskQuotaInBytes <= 0)
+        {
+            throw new IllegalArgumentException("diskQuotaInBytes shall be positive");
+        }
+
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_006: [The setDiskQuotaInBytes shall store the provided `diskQuotaInBytes`.] */
+        this.diskQuotaInBytes = diskQuotaInBytes;
+    }
+
+    /**
+     * Getter for the disk quota.
+     *
+     * @return the space all the segment files may take, {@link #DEFAULT_DISK_QUOTA_IN_BYTES} if not set.
+     */
+    public long getDiskQuotaInBytes()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_006: [The setDiskQuotaInBytes shall store the provided `diskQuotaInBytes`.] */
+        return this.diskQuotaInBytes;
+    }
+
+    /**
+     * Setter for the in memory window size.
+     *
+     * @param inMemoryWindowSize is the maximum number of persisted messages held in memory, waiting to be sent or
+     *                           waiting for their acknowledgement. It shall be positive.
+     * @throws IllegalArgumentException if the window size is not positive.
+     */
+    public void setInMemoryWindowSize(int inMemoryWindowSize) throws IllegalArgumentException
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_007: [If the `inMemoryWindowSize` is not positive, the setInMemoryWindowSize shall throw IllegalArgumentException.] */
+        if (inMemoryWindowSize <= 0)
+        {
+            throw new IllegalArgumentException("inMemoryWindowSize shall be positive");
+        }
+
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_008: [The setInMemoryWindowSize shall store the provided `inMemoryWindowSize`.] */
+        this.inMemoryWindowSize = inMemoryWindowSize;
+    }
+
+    /**
+     * Getter for the in memory window size.
+     *
+     * @return the maximum number of persisted messages held in memory, {@link #DEFAULT_IN_MEMORY_WINDOW_SIZE} if
+     * not set.
+     */
+    public int getInMemoryWindowSize()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_008: [The setInMemoryWindowSize shall store the provided `inMemoryWindowSize`.] */
+        return this.inMemoryWindowSize;
+    }
+
+    /**
+     * Setter for the sync mode.
+     *
+     * @param syncMode is when the segments are flushed to the storage device.
+     * @param syncIntervalMillis is the time between two flushes of the {@link SyncMode#PERIODIC} mode, in
+     *                           milliseconds. It shall be positive, and is ignored by the other modes.
+     * @throws IllegalArgumentException if the sync mode is null or the interval is not positive.
+     */
+    public void setSyncMode(SyncMode syncMode, long syncIntervalMillis) throws IllegalArgumentException
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_009: [If the `syncMode` is null or the `syncIntervalMillis` is not positive, the setSyncMode shall throw IllegalArgumentException.] */
+        if (syncMode == null)
+        {
+            throw new IllegalArgumentException("syncMode cannot be null");
+        }
+
+        if (syncIntervalMillis <= 0)
+        {
+            throw new IllegalArgumentException("syncIntervalMillis shall be positive");
+        }
+
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_010: [The setSyncMode shall store the provided `syncMode` and `syncIntervalMillis`.] */
+        this.syncMode = syncMode;
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Getter for the sync mode.
+     *
+     * @return when the segments are flushed to the storage device, {@link SyncMode#PERIODIC} if not set.
+     */
+    public SyncMode getSyncMode()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_010: [The setSyncMode shall store the provided `syncMode` and `syncIntervalMillis`.] */
+        return this.syncMode;
+    }
+
+    /**
+     * Getter for the sync interval.
+     *
+     * @return the time between two flushes of the {@link SyncMode#PERIODIC} mode, in milliseconds,
+     * {@link #DEFAULT_SYNC_INTERVAL_MILLIS} if not set.
+     */
+    public long getSyncIntervalMillis()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_010: [The setSyncMode shall store the provided `syncMode` and `syncIntervalMillis`.] */
+        return this.syncIntervalMillis;
+    }
+
+    /**
+     * Setter for the callback of the replayed messages.
+     *
+     * @param replayCallback is the callback invoked with the result of the messages read back from the disk when
+     *                       the client opens, whose own callbacks were lost with the previous session. Can be
+     *                       {@code null}.
+     * @param replayCallbackContext is the context passed to the callback. Can be {@code null}.
+     */
+    public void setReplayCallback(IotHubEventCallback replayCallback, Object replayCallbackContext)
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_011: [The setReplayCallback shall store the provided `replayCallback`, that can be null, and `replayCallbackContext`.] */
+        this.replayCallback = replayCallback;
+        this.replayCallbackContext = replayCallbackContext;
+    }
+
+    /**
+     * Getter for the callback of the replayed messages.
+     *
+     * @return the callback of the replayed messages, {@code null} if not set.
+     */
+    public IotHubEventCallback getReplayCallback()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_011: [The setReplayCallback shall store the provided `replayCallback`, that can be null, and `replayCallbackContext`.] */
+        return this.replayCallback;
+    }
+
+    /**
+     * Getter for the context of the replay callback.
+     *
+     * @return the context passed to the replay callback.
+     */
+    public Object getReplayCallbackContext()
+    {
+        /* Codes_SRS_PERSISTENTQUEUEOPTIONS_34_011: [The setReplayCallback shall store the provided `replayCallback`, that can be null, and `replayCallbackContext`.] */
+        return this.replayCallbackContext;
+    }
+}
@@ -0,0 +1,549 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for the reconnections of any number of clients. By default every client reconnects as soon as
+ * its retry policy allows, so when a network or hub outage drops every connection of a process, all of its clients
+ * run their TLS handshakes at once, saturating the CPU and tripping the hub throttling. Clients configured with the
+ * same coordinator wait for its admission before each reconnection attempt instead.
+ *
+ * <p>
+ * The coordinator admits reconnection attempts at a steady rate from a token bucket, which spreads a reconnection
+ * storm over time while still letting the first {@code burstSize} attempts through immediately, and it caps the
+ * number of handshakes in progress at the same time. Clients with messages waiting to be sent are admitted before
+ * the clients that have nothing to send. A client waiting for admission keeps its retry policy and its operation
+ * timeout; the wait counts as part of the reconnection time.
+ * </p>
+ *
+ * <p>
+ * A client can wait for admission with {@link Handshake#awaitStart(long)}, or register a callback with
+ * {@link Handshake#whenAdmitted(Runnable, ScheduledExecutorService)} so that no thread is parked while it waits.
+ * </p>
+ *
+ * <p>
+ * The coordinator is owned by the caller and holds no threads, so it does not need to be closed. Callbacks, and the
+ * checks that admit attempts once the next token is available, run on the schedulers given with the callbacks.
+ * </p>
+ */
+public final class ReconnectionCoordinator
+{
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Longest time a waiting client sleeps before checking again, in case a signal was missed
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Source of the time used to refill the token bucket. Simulations replace it to run reconnection storms without
+     * waiting for real time to pass.
+     */
+    public interface Ticker
+    {
+        /**
+         * @return the current time, in nanoseconds, from an arbitrary origin.
+         */
+        long nanoTime();
+    }
+
+    private static final Ticker SYSTEM_TICKER = new Ticker()
+    {
+        @Override
+        public long nanoTime()
+        {
+            return System.nanoTime();
+        }
+    };
+
+    private final int maxConcurrentHandshakes;
+    private final double admissionsPerNano;
+    private final int burstSize;
+    private final Ticker ticker;
+
+    private final Object lock = new Object();
+    private final Deque<Handshake> priorityWaiters = new ArrayDeque<>();
+    private final Deque<Handshake> waiters = new ArrayDeque<>();
+
+    private double tokens;
+    private long lastRefillNanos;
+    private int activeHandshakeCount;
+    private int registeredClientCount;
+
+    private long admittedCount;
+    private long priorityAdmittedCount;
+    private long totalAdmissionDelayNanos;
+    private long maxAdmissionDelayNanos;
+    private int peakWaitingCount;
+
+    /**
+     * Creates a coordinator.
+     * @param maxConcurrentHandshakes the maximum number of reconnection attempts in progress at the same time.
+     * @param admissionsPerSecond the rate at which reconnection attempts are admitted once the burst is spent.
+     * @param burstSize the number of reconnection attempts that can be admitted at once after a quiet period.
+     * @throws IllegalArgumentException if any of the parameters is not positive.
+     */
+    public ReconnectionCoordinator(int maxConcurrentHandshakes, double admissionsPerSecond, int burstSize) throws IllegalArgumentException
+    {
+        this(maxConcurrentHandshakes, admissionsPerSecond, burstSize, SYSTEM_TICKER);
+    }
+
+    ReconnectionCoordinator(int maxConcurrentHandshakes, double admissionsPerSecond, int burstSize, Ticker ticker) throws IllegalArgumentException
+    {
+        if (maxConcurrentHandshakes < 1 || burstSize < 1 || !(admissionsPerSecond > 0))
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_001: [If the maximum number of concurrent handshakes, the admission rate or the burst size is not positive, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("maxConcurrentHandshakes, admissionsPerSecond and burstSize must be positive");
+        }
+
+        if (ticker == null)
+        {
+            throw new IllegalArgumentException("ticker cannot be null");
+        }
+
+        // Codes_SRS_RECONNECTIONCOORDINATOR_34_002: [The constructor shall start with a full token bucket of burstSize tokens.]
+        this.maxConcurrentHandshakes = maxConcurrentHandshakes;
+        this.admissionsPerNano = admissionsPerSecond / NANOS_PER_SECOND;
+        this.burstSize = burstSize;
+        this.ticker = ticker;
+        this.tokens = burstSize;
+        this.lastRefillNanos = ticker.nanoTime();
+    }
+
+    /**
+     * Records that a client uses this coordinator, for {@link #getRegisteredClientCount()}.
+     */
+    public void register()
+    {
+        synchronized (this.lock)
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_003: [The register and unregister functions shall count the clients that use this coordinator.]
+            this.registeredClientCount++;
+        }
+    }
+
+    /**
+     * Records that a client no longer uses this coordinator.
+     */
+    public void unregister()
+    {
+        synchronized (this.lock)
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_003: [The register and unregister functions shall count the clients that use this coordinator.]
+            if (this.registeredClientCount > 0)
+            {
+                this.registeredClientCount--;
+            }
+        }
+    }
+
+    /**
+     * Queues a reconnection attempt for admission. The attempt may start once {@link Handshake#tryStart()} or
+     * {@link Handshake#awaitStart(long)} reports it as admitted, and it must be closed once it is done, admitted or
+     * not.
+     * @param hasQueuedMessages true if the client has messages waiting to be sent, which admits it before the clients
+     *                          that have nothing to send.
+     * @return the queued reconnection attempt.
+     */
+    public Handshake enqueue(boolean hasQueuedMessages)
+    {
+        Handshake handshake = new Handshake(hasQueuedMessages, this.ticker.nanoTime());
+        synchronized (this.lock)
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_004: [This function shall queue the attempt behind the attempts of the same priority, attempts with queued messages being admitted first.]
+            if (hasQueuedMessages)
+            {
+                this.priorityWaiters.addLast(handshake);
+            }
+            else
+            {
+                this.waiters.addLast(handshake);
+            }
+
+            this.peakWaitingCount = Math.max(this.peakWaitingCount, this.priorityWaiters.size() + this.waiters.size());
+            admitWaiters();
+        }
+
+        return handshake;
+    }
+
+    /**
+     * Admits as many queued attempts as the handshake limit and the token bucket allow. Called with the lock held.
+     * @return the time, in nanoseconds, until the next token is available, or 0 if a token is available.
+     */
+    private long admitWaiters()
+    {
+        long now = this.ticker.nanoTime();
+        long elapsed = now - this.lastRefillNanos;
+        if (elapsed > 0)
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_005: [The token bucket shall be refilled at admissionsPerSecond, up to burstSize tokens.]
+            this.tokens = Math.min(this.burstSize, this.tokens + elapsed * this.admissionsPerNano);
+            this.lastRefillNanos = now;
+        }
+
+        // Codes_SRS_RECONNECTIONCOORDINATOR_34_006: [An attempt shall only be admitted while fewer than maxConcurrentHandshakes attempts are in progress, and it shall take one token from the bucket.]
+        boolean admittedAny = false;
+        while (this.activeHandshakeCount < this.maxConcurrentHandshakes && this.tokens >= 1
+                && !(this.priorityWaiters.isEmpty() && this.waiters.isEmpty()))
+        {
+            Handshake handshake = this.priorityWaiters.isEmpty() ? this.waiters.pollFirst() : this.priorityWaiters.pollFirst();
+            this.tokens -= 1;
+            this.activeHandshakeCount++;
+            handshake.admitted = true;
+
+            long delay = now - handshake.enqueuedNanos;
+            this.admittedCount++;
+            if (handshake.hasQueuedMessages)
+            {
+                this.priorityAdmittedCount++;
+            }
+            this.totalAdmissionDelayNanos += delay;
+            this.maxAdmissionDelayNanos = Math.max(this.maxAdmissionDelayNanos, delay);
+
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_012: [Once an attempt with an admission callback is admitted, its callback shall be run on the scheduler given with it.]
+            handshake.runAdmissionCallback();
+            admittedAny = true;
+        }
+
+        if (admittedAny)
+        {
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_011: [Admitting an attempt shall wake the threads waiting for admission.]
+            this.lock.notifyAll();
+        }
+
+        if (this.tokens >= 1)
+        {
+            return 0;
+        }
+
+        return (long) Math.ceil((1 - this.tokens) / this.admissionsPerNano);
+    }
+
+    private void release(Handshake handshake)
+    {
+        synchronized (this.lock)
+        {
+            if (handshake.admitted)
+            {
+                // Codes_SRS_RECONNECTIONCOORDINATOR_34_009: [Closing an admitted attempt shall free its handshake slot for the queued attempts.]
+                this.activeHandshakeCount--;
+            }
+            else
+            {
+                // Codes_SRS_RECONNECTIONCOORDINATOR_34_010: [Closing an attempt that was not admitted shall remove it from the queue.]
+                this.priorityWaiters.remove(handshake);
+                this.waiters.remove(handshake);
+            }
+
+            admitWaiters();
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the number of clients that registered with this coordinator and did not unregister.
+     */
+    public int getRegisteredClientCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.registeredClientCount;
+        }
+    }
+
+    /**
+     * @return the number of reconnection attempts waiting for admission.
+     */
+    public int getWaitingCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.priorityWaiters.size() + this.waiters.size();
+        }
+    }
+
+    /**
+     * @return the highest number of reconnection attempts that waited for admission at the same time.
+     */
+    public int getPeakWaitingCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.peakWaitingCount;
+        }
+    }
+
+    /**
+     * @return the number of admitted reconnection attempts that are still in progress.
+     */
+    public int getActiveHandshakeCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.activeHandshakeCount;
+        }
+    }
+
+    /**
+     * @return the number of reconnection attempts admitted so far.
+     */
+    public long getAdmittedCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.admittedCount;
+        }
+    }
+
+    /**
+     * @return the number of admitted reconnection attempts of clients that had messages waiting to be sent.
+     */
+    public long getPriorityAdmittedCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.priorityAdmittedCount;
+        }
+    }
+
+    /**
+     * @return the average time the admitted reconnection attempts waited for admission, in milliseconds.
+     */
+    public double getAverageAdmissionDelayMillis()
+    {
+        synchronized (this.lock)
+        {
+            if (this.admittedCount == 0)
+            {
+                return 0;
+            }
+
+            return (double) this.totalAdmissionDelayNanos / this.admittedCount / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+
+    /**
+     * @return the longest time an admitted reconnection attempt waited for admission, in milliseconds.
+     */
+    public long getMaxAdmissionDelayMillis()
+    {
+        synchronized (this.lock)
+        {
+            return TimeUnit.NANOSECONDS.toMillis(this.maxAdmissionDelayNanos);
+        }
+    }
+
+    /**
+     * A reconnection attempt queued for admission. Closing it frees its handshake slot if it was admitted, or removes
+     * it from the queue if it was not.
+     */
+    public final class Handshake implements Closeable
+    {
+        private final boolean hasQueuedMessages;
+        private final long enqueuedNanos;
+
+        // guarded by the coordinator lock
+        private boolean admitted;
+        private boolean closed;
+        private Runnable admissionCallback;
+        private ScheduledExecutorService admissionScheduler;
+
+        private Handshake(boolean hasQueuedMessages, long enqueuedNanos)
+        {
+            this.hasQueuedMessages = hasQueuedMessages;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        /**
+         * Checks, without waiting, if this attempt is admitted, admitting the queued attempts the coordinator has
+         * room for first.
+         * @return true if this attempt may start.
+         */
+        public boolean tryStart()
+        {
+            synchronized (lock)
+            {
+                // Codes_SRS_RECONNECTIONCOORDINATOR_34_007: [The tryStart function shall admit the queued attempts the coordinator has room for, and return true if this attempt is admitted.]
+                admitWaiters();
+                return this.admitted;
+            }
+        }
+
+        /**
+         * Waits until this attempt is admitted.
+         * @param timeoutMillis the longest time to wait, in milliseconds.
+         * @return true if this attempt may start, false if the timeout elapsed first.
+         * @throws InterruptedException if the thread is interrupted while waiting.
+         */
+        public boolean awaitStart(long timeoutMillis) throws InterruptedException
+        {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            synchronized (lock)
+            {
+                // Codes_SRS_RECONNECTIONCOORDINATOR_34_008: [The awaitStart function shall wait until this attempt is admitted or the timeout elapses, and return true if this attempt is admitted.]
+                while (true)
+                {
+                    long nextTokenNanos = admitWaiters();
+                    if (this.admitted || this.closed)
+                    {
+                        return this.admitted;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                    {
+                        return false;
+                    }
+
+                    long waitNanos = Math.min(remaining, MAX_WAIT_NANOS);
+                    if (nextTokenNanos > 0)
+                    {
+                        waitNanos = Math.min(waitNanos, nextTokenNanos);
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(lock, Math.max(waitNanos, 1));
+                }
+            }
+        }
+
+        /**
+         * Registers a callback to run once this attempt is admitted, instead of waiting for it. If this attempt is
+         * already admitted, the callback runs right away on the calling thread. Otherwise it runs on the provided
+         * scheduler, which is also used to check for admission again when the next token is available.
+         * @param callback the callback to run once this attempt is admitted. It must not block.
+         * @param scheduler the scheduler to run the callback and the admission checks on.
+         * @throws IllegalArgumentException if callback or scheduler is null.
+         * @throws IllegalStateException if a callback was already registered for this attempt.
+         */
+        public void whenAdmitted(Runnable callback, ScheduledExecutorService scheduler) throws IllegalArgumentException, IllegalStateException
+        {
+            if (callback == null || scheduler == null)
+            {
+                // Codes_SRS_RECONNECTIONCOORDINATOR_34_013: [If the provided callback or scheduler is null, the whenAdmitted function shall throw an IllegalArgumentException.]
+                throw new IllegalArgumentException("callback and scheduler cannot be null");
+            }
+
+            synchronized (lock)
+            {
+                if (this.admissionCallback != null)
+                {
+                    throw new IllegalStateException("An admission callback was already registered for this attempt");
+                }
+
+                if (this.closed)
+                {
+                    return;
+                }
+
+                if (!this.admitted)
+                {
+                    // Codes_SRS_RECONNECTIONCOORDINATOR_34_014: [If this attempt is not admitted yet, the whenAdmitted function shall save the callback and check for admission again on the scheduler once the next token is available.]
+                    this.admissionCallback = callback;
+                    this.admissionScheduler = scheduler;
+                    scheduleAdmissionCheck(admitWaiters());
+                    return;
+                }
+            }
+
+            // Codes_SRS_RECONNECTIONCOORDINATOR_34_015: [If this attempt is already admitted, the whenAdmitted function shall run the callback on the calling thread.]
+            callback.run();
+        }
+
+        /**
+         * Hands the admission callback, if any, to its scheduler. Called with the coordinator lock held.
+         */
+        private void runAdmissionCallback()
+        {
+            if (this.admissionCallback == null)
+            {
+                return;
+            }
+
+            try
+            {
+                this.admissionScheduler.execute(this.admissionCallback);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the client that registered the callback is closing and no longer waits for it
+            }
+        }
+
+        /**
+         * Checks for admission again once the next token is available, if this attempt is still waiting for one.
+         * Attempts waiting for a free handshake slot are admitted when an admitted attempt is closed instead. Called
+         * with the coordinator lock held.
+         * @param nextTokenNanos the time until the next token is available, in nanoseconds.
+         */
+        private void scheduleAdmissionCheck(long nextTokenNanos)
+        {
+            if (this.admitted || this.closed || nextTokenNanos <= 0)
+            {
+                return;
+            }
+
+            try
+            {
+                this.admissionScheduler.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        synchronized (lock)
+                        {
+                            scheduleAdmissionCheck(admitWaiters());
+                        }
+                    }
+                }, nextTokenNanos, TimeUnit.NANOSECONDS);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the client that registered the callback is closing and no longer waits for it
+            }
+        }
+
+        /**
+         * @return true if this attempt was admitted.
+         */
+        public boolean isAdmitted()
+        {
+            synchronized (lock)
+            {
+                return this.admitted;
+            }
+        }
+
+        /**
+         * @return true if the client of this attempt had messages waiting to be sent.
+         */
+        public boolean hasQueuedMessages()
+        {
+            return this.hasQueuedMessages;
+        }
+
+        /**
+         * Ends this attempt. Calling it more than once has no effect.
+         */
+        @Override
+        public void close()
+        {
+            synchronized (lock)
+            {
+                if (this.closed)
+                {
+                    return;
+                }
+
+                this.closed = true;
+                release(this);
+            }
+        }
+    }
+}
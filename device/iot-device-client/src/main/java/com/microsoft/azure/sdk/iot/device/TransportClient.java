@@ -14,6 +14,13 @@ import java.util.ArrayList;
  * the connection. 
  * </p>
  * The multiplexed connection is supported with AMQPS / AMQPS_WS protocols.
+ * <p>
+ * All the registered devices share one AMQP connection, one reactor thread and
+ * one small scheduler, so the number of threads does not grow with the number
+ * of devices. Device clients created for a transport client that is already
+ * open join the open connection, and {@link #unregisterDeviceClient(DeviceClient)}
+ * removes a device without closing the connection for the others.
+ * </p>
  */
 public class TransportClient
 {
@@ -194,10 +201,11 @@ public class TransportClient
     }
 
     /**
-     * Registers the given device into the transport client.
+     * Registers the given device into the transport client. If the connection is open, the device is added to it
+     * without reconnecting the devices that are already registered.
      *
      * @throws IllegalArgumentException if the deviceClient parameter is null.
-     * @throws IllegalStateException if the connection is open.
+     * @throws IllegalStateException if the connection is open and the device could not be added to it.
      */
     void registerDeviceClient(DeviceClient deviceClient) throws IllegalArgumentException, IllegalStateException
     {
@@ -207,10 +215,20 @@ public class TransportClient
             throw new IllegalArgumentException("deviceClient parameter cannot be null.");
         }
 
-        // Codes_SRS_TRANSPORTCLIENT_12_006: [The function shall throw  IllegalStateException if the connection is already open.]
         if ((this.deviceIO != null) && (this.deviceIO.isOpen()))
         {
-            throw new IllegalStateException("deviceClient cannot be registered if the connection is open.");
+            try
+            {
+                // Codes_SRS_TRANSPORTCLIENT_34_024: [If the connection is open, the function shall set the deviceIO on the device client and add its config to the open connection.]
+                deviceClient.setDeviceIO(this.deviceIO);
+                this.deviceIO.addClient(deviceClient.getConfig());
+            }
+            catch (IOException e)
+            {
+                // Codes_SRS_TRANSPORTCLIENT_34_025: [If the device could not be added to the open connection, the function shall throw an IllegalStateException.]
+                deviceClient.setDeviceIO(null);
+                throw new IllegalStateException("deviceClient could not be added to the open connection.", e);
+            }
         }
 
         // Codes_SRS_TRANSPORTCLIENT_12_007: [The function shall add the given device client to the deviceClientList.]
@@ -219,6 +237,47 @@ public class TransportClient
         logger.LogInfo("DeviceClient is added successfully to the transport client, method name is %s ", logger.getMethodName());
     }
 
+    /**
+     * Unregisters the given device from the transport client. If the connection is open, the links of the device are
+     * closed while the connection stays open for the other devices. The device client cannot be used after this call.
+     *
+     * @param deviceClient the device client to unregister.
+     * @return true if the device client was registered, false otherwise.
+     * @throws IllegalArgumentException if the deviceClient parameter is null or if it is the device client the
+     * connection was opened for.
+     */
+    public boolean unregisterDeviceClient(DeviceClient deviceClient) throws IllegalArgumentException
+    {
+        if (deviceClient == null)
+        {
+            // Codes_SRS_TRANSPORTCLIENT_34_026: [The function shall throw IllegalArgumentException if the deviceClient parameter is null.]
+            throw new IllegalArgumentException("deviceClient parameter cannot be null.");
+        }
+
+        if ((this.deviceIO != null) && (this.deviceIO.isOpen()) && (this.deviceClientList.indexOf(deviceClient) == 0))
+        {
+            // Codes_SRS_TRANSPORTCLIENT_34_027: [The function shall throw IllegalArgumentException if the connection is open and the device client is the one the connection was opened for.]
+            throw new IllegalArgumentException("The device client the connection was opened for cannot be unregistered while the connection is open.");
+        }
+
+        // Codes_SRS_TRANSPORTCLIENT_34_028: [The function shall remove the device client from the deviceClientList and return false if it was not in it.]
+        if (!this.deviceClientList.remove(deviceClient))
+        {
+            return false;
+        }
+
+        if (this.deviceIO != null)
+        {
+            // Codes_SRS_TRANSPORTCLIENT_34_029: [If the deviceIO is not null, the function shall remove the device client's config from it and clear the deviceIO of the device client.]
+            this.deviceIO.removeClient(deviceClient.getConfig());
+            deviceClient.setDeviceIO(null);
+        }
+
+        logger.LogInfo("DeviceClient is removed successfully from the transport client, method name is %s ", logger.getMethodName());
+
+        return true;
+    }
+
     /**
      * Getter for the iotHubClientProtocol
      * @return the current protocol for the iotHubClient
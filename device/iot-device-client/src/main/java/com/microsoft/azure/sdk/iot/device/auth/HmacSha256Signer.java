@@ -0,0 +1,155 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the HMAC-SHA256 digests of one key. Looking up the Mac provider and initializing it with the key is most
+ * of the cost of signing a SAS token, so the signer keeps the decoded key and creates one {@link Mac} per thread, the
+ * first time that thread signs. A Mac is never shared between threads, so no locking is needed to sign.
+ * <p>
+ * The signer is owned by the authentication provider of a client, so the key and the Macs live as long as the
+ * provider keeps the signer. {@link #close()} clears the key; the Macs of the threads that signed become unreachable
+ * with the signer.
+ */
+public final class HmacSha256Signer
+{
+    private static final String HMAC_SHA256 = "HmacSHA256";
+
+    private static final AtomicLong macCreationCount = new AtomicLong();
+
+    private final byte[] key;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+    private volatile boolean isClosed;
+
+    /**
+     * Constructor.
+     *
+     * @param key the secret key. The signer keeps a copy of it.
+     * @throws IllegalArgumentException if the key is null or empty.
+     */
+    public HmacSha256Signer(byte[] key) throws IllegalArgumentException
+    {
+        if (key == null || key.length == 0)
+        {
+            // Codes_SRS_HMACSHA256SIGNER_34_004: [If the provided key is null or empty, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("key cannot be null or empty");
+        }
+
+        // Codes_SRS_HMACSHA256SIGNER_34_005: [The constructor shall save a copy of the key.]
+        this.key = key.clone();
+    }
+
+    /**
+     * Computes the HMAC-SHA256 digest of the data with the key of this signer.
+     *
+     * @param data the data to sign.
+     * @return the 32 byte digest.
+     * @throws IllegalArgumentException if the data is null.
+     * @throws IllegalStateException if this signer was closed.
+     */
+    public byte[] sign(byte[] data) throws IllegalArgumentException, IllegalStateException
+    {
+        if (data == null)
+        {
+            // Codes_SRS_HMACSHA256SIGNER_34_006: [If the provided data is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("data cannot be null");
+        }
+
+        Mac mac = this.macs.get();
+        if (mac == null)
+        {
+            // Codes_SRS_HMACSHA256SIGNER_34_007: [If the calling thread has no Mac for this signer, this function shall create one, initialize it with the key and keep it for the thread.]
+            synchronized (this.key)
+            {
+                checkNotClosed();
+                mac = createMac(this.key);
+            }
+
+            this.macs.set(mac);
+        }
+        else
+        {
+            checkNotClosed();
+        }
+
+        // Codes_SRS_HMACSHA256SIGNER_34_008: [This function shall return the digest of the data computed with the Mac of the calling thread.]
+        // doFinal resets the Mac to its initialized state, so it is ready for the next digest
+        return mac.doFinal(data);
+    }
+
+    /**
+     * Clears the key of this signer and the Mac of the calling thread. The signer cannot sign afterwards.
+     */
+    public void close()
+    {
+        // Codes_SRS_HMACSHA256SIGNER_34_009: [This function shall clear the saved key and the Mac of the calling thread, and the following calls to sign shall throw an IllegalStateException.]
+        synchronized (this.key)
+        {
+            this.isClosed = true;
+            Arrays.fill(this.key, (byte) 0);
+        }
+
+        this.macs.remove();
+    }
+
+    /**
+     * Computes the HMAC-SHA256 digest of the data with a Mac initialized for this digest only. Use a signer instance
+     * to sign repeatedly with the same key.
+     *
+     * @param data the data to sign.
+     * @param key the secret key.
+     * @return the 32 byte digest.
+     * @throws IllegalArgumentException if the data or the key is null, or if the key is empty.
+     */
+    public static byte[] sign(byte[] data, byte[] key) throws IllegalArgumentException
+    {
+        if (data == null || key == null)
+        {
+            // Codes_SRS_HMACSHA256SIGNER_34_001: [If the provided data or key is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("data and key cannot be null");
+        }
+
+        // Codes_SRS_HMACSHA256SIGNER_34_003: [This function shall return the digest of the data computed with a Mac initialized with the key.]
+        return createMac(key).doFinal(data);
+    }
+
+    /**
+     * @return the number of Macs created and initialized by all signers and threads.
+     */
+    public static long getMacCreationCount()
+    {
+        return macCreationCount.get();
+    }
+
+    private void checkNotClosed()
+    {
+        if (this.isClosed)
+        {
+            throw new IllegalStateException("The signer was closed");
+        }
+    }
+
+    private static Mac createMac(byte[] key)
+    {
+        try
+        {
+            Mac mac = Mac.getInstance(HMAC_SHA256);
+            mac.init(new SecretKeySpec(key, HMAC_SHA256));
+            macCreationCount.incrementAndGet();
+            return mac;
+        }
+        catch (NoSuchAlgorithmException | InvalidKeyException e)
+        {
+            // should never happen, since the algorithm and the key type are hard-coded.
+            throw new IllegalStateException(e);
+        }
+    }
+}
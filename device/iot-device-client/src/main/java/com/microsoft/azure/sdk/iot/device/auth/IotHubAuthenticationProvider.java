@@ -6,6 +6,7 @@
 package com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContextCache;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 
 import javax.net.ssl.SSLContext;
@@ -160,18 +161,18 @@ public abstract class IotHubAuthenticationProvider
     {
         if (this.iotHubTrustedCert != null)
         {
-            // Codes_SRS_AUTHENTICATIONPROVIDER_34_019: [If this has a saved iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert as the trusted cert.]
-            return new IotHubSSLContext(this.iotHubTrustedCert, false);
+            // Codes_SRS_AUTHENTICATIONPROVIDER_34_019: [If this has a saved iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert as the trusted cert.]
+            return IotHubSSLContextCache.getIotHubSSLContext(this.iotHubTrustedCert, false);
         }
         else if (this.pathToIotHubTrustedCert != null)
         {
-            // Codes_SRS_AUTHENTICATIONPROVIDER_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert path as the trusted cert.]
-            return new IotHubSSLContext(this.pathToIotHubTrustedCert, true);
+            // Codes_SRS_AUTHENTICATIONPROVIDER_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert path as the trusted cert.]
+            return IotHubSSLContextCache.getIotHubSSLContext(this.pathToIotHubTrustedCert, true);
         }
         else
         {
-            // Codes_SRS_AUTHENTICATIONPROVIDER_34_021: [If this has no saved iotHubTrustedCert or path, This function shall create and save a new default IotHubSSLContext object.]
-            return new IotHubSSLContext();
+            // Codes_SRS_AUTHENTICATIONPROVIDER_34_021: [If this has no saved iotHubTrustedCert or path, This function shall get the default IotHubSSLContext object shared by the clients.]
+            return IotHubSSLContextCache.getIotHubSSLContext();
         }
     }
 }
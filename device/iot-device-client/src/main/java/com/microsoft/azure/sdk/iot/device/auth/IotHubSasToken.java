@@ -109,6 +109,32 @@ public final class IotHubSasToken
         }
     }
 
+    /**
+     * Constructor. Generates a SAS token that grants access to an IoT Hub for
+     * the specified amount of time, signed with the signer of the device key.
+     *
+     * @param hostname the hostname of the hub the token is for
+     * @param deviceId The id of the device the token is for
+     * @param signer The signer holding the decoded device key of the device
+     * @param moduleId the module id. May be null if the sas token is not for a module
+     * @param expiryTime the time, as a UNIX timestamp, after which the token will become invalid
+     */
+    public IotHubSasToken(String hostname, String deviceId, HmacSha256Signer signer, String moduleId, long expiryTime)
+    {
+        if (signer == null)
+        {
+            // Codes_SRS_IOTHUBSASTOKEN_34_016: [If the provided signer is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("signer cannot be null");
+        }
+
+        // Codes_SRS_IOTHUBSASTOKEN_34_017: [The signature shall be computed with the provided signer, without decoding the device key again.]
+        this.scope = IotHubUri.getResourceUri(hostname, deviceId, moduleId);
+        this.expiryTime = expiryTime;
+
+        Signature sig = new Signature(this.scope, this.expiryTime, signer);
+        this.signature = sig.toString();
+    }
+
     /**
      * Creates a shared access token from the provided audience, signature and expiry time
      * @param audience the audience of the token
@@ -34,6 +34,12 @@ public abstract class IotHubSasTokenAuthenticationProvider extends IotHubAuthent
 
     protected IotHubSasToken sasToken;
 
+    /**
+     * The signer holding the decoded device key, if this provider renews its tokens with a device key. It is created
+     * when the first token is signed and dropped when the client is closed.
+     */
+    protected HmacSha256Signer signer;
+
     public abstract boolean canRefreshToken();
     public abstract String getRenewedSasToken(boolean proactivelyRenew) throws IOException, TransportException;
 
@@ -114,6 +120,20 @@ public abstract class IotHubSasTokenAuthenticationProvider extends IotHubAuthent
         return false;
     }
 
+    /**
+     * Releases the signer holding the decoded device key, if any, so that the key does not outlive the client. A token
+     * renewed afterwards creates a new signer.
+     */
+    public synchronized void close()
+    {
+        if (this.signer != null)
+        {
+            //Codes_SRS_IOTHUBSASTOKENAUTHENTICATION_34_021: [This function shall close the saved signer, if any, and drop it.]
+            this.signer.close();
+            this.signer = null;
+        }
+    }
+
     public long getTokenValidSecs()
     {
         return this.tokenValidSecs;
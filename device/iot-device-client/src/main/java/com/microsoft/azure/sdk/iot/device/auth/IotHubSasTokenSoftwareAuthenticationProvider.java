@@ -41,7 +41,7 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
         this.sslContextNeedsUpdate = true;
 
         //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_002: [This constructor shall save the provided hostname, device id, module id, deviceKey, and sharedAccessToken.]
-        this.sasToken = new IotHubSasToken(hostname, deviceId, deviceKey, sharedAccessToken, moduleId, getExpiryTimeInSeconds());
+        this.sasToken = buildSasToken(sharedAccessToken);
     }
 
     /**
@@ -62,7 +62,23 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
         this.sslContextNeedsUpdate = true;
 
         //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_003: [This constructor shall save the provided hostname, device id, module id, deviceKey, and sharedAccessToken.]
-        this.sasToken = new IotHubSasToken(hostname, deviceId, deviceKey, sharedAccessToken, moduleId, getExpiryTimeInSeconds());
+        this.sasToken = buildSasToken(sharedAccessToken);
+    }
+
+    private synchronized IotHubSasToken buildSasToken(String sharedAccessToken)
+    {
+        if (this.deviceKey == null)
+        {
+            return new IotHubSasToken(this.hostname, this.deviceId, null, sharedAccessToken, this.moduleId, getExpiryTimeInSeconds());
+        }
+
+        if (this.signer == null)
+        {
+            //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_019: [The device key shall be decoded once into a signer that is reused by the following renewals until this provider is closed.]
+            this.signer = new HmacSha256Signer(SignatureHelper.decodeDeviceKeyBase64(this.deviceKey));
+        }
+
+        return new IotHubSasToken(this.hostname, this.deviceId, this.signer, this.moduleId, getExpiryTimeInSeconds());
     }
 
     /**
@@ -83,7 +99,7 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
 
         if (this.deviceKey != null)
         {
-            this.sasToken = new IotHubSasToken(this.hostname, this.deviceId, this.deviceKey, null, this.moduleId, getExpiryTimeInSeconds());
+            this.sasToken = buildSasToken(null);
         }
     }
 
@@ -112,7 +128,7 @@ public class IotHubSasTokenSoftwareAuthenticationProvider extends IotHubSasToken
             {
                 //Codes_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_004: [If the saved sas token has expired and there is a device key present, the saved sas token shall be renewed.]
                 //Codes_SRS_IOTHUBSASTOKENAUTHENTICATION_34_006: [If the saved sas token has not expired and there is a device key present, but this method is called to proactively renew and the token should renew, the saved sas token shall be renewed.]
-                this.sasToken = new IotHubSasToken(this.hostname, this.deviceId, this.deviceKey, null, this.moduleId, getExpiryTimeInSeconds());
+                this.sasToken = buildSasToken(null);
             }
         }
 
@@ -6,6 +6,7 @@
 package com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContextCache;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
@@ -68,7 +69,8 @@ public class IotHubX509SoftwareAuthenticationProvider extends IotHubAuthenticati
     }
 
     /**
-     * Creates the SSLContext for this object using the saved public and private keys
+     * Gets the SSLContext for this object using the saved public and private keys. Clients with the same keys and
+     * trusted certificate share the same context.
      * @throws KeyStoreException  if no Provider supports a KeyStoreSpi implementation for the specified type or
      *                            if the keystore has not been initialized,
      *                            or the given alias already exists and does not identify an entry containing a trusted certificate,
@@ -82,18 +84,18 @@ public class IotHubX509SoftwareAuthenticationProvider extends IotHubAuthenticati
     {
         if (this.iotHubTrustedCert != null)
         {
-            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_019: [If this has a saved iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert as the trusted cert and with the saved public and private key combo.]
-            return new IotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey(), this.iotHubTrustedCert, false);
+            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_019: [If this has a saved iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert as the trusted cert and with the saved public and private key combo.]
+            return IotHubSSLContextCache.getIotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey(), this.iotHubTrustedCert, false);
         }
         else if (this.pathToIotHubTrustedCert != null)
         {
-            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert path as the trusted cert and with the saved public and private key combo.]
-            return new IotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey(), this.pathToIotHubTrustedCert, true);
+            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert path as the trusted cert and with the saved public and private key combo.]
+            return IotHubSSLContextCache.getIotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey(), this.pathToIotHubTrustedCert, true);
         }
         else
         {
-            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_021: [If this has no saved iotHubTrustedCert or path, This function shall create and save a new IotHubSSLContext object with the saved public and private key combo.]
-            return new IotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey());
+            // Codes_SRS_IOTHUBX509AUTHENTICATION_34_021: [If this has no saved iotHubTrustedCert or path, This function shall get the IotHubSSLContext object shared by the clients with the saved public and private key combo.]
+            return IotHubSSLContextCache.getIotHubSSLContext(this.iotHubX509.getPublicKeyCertificate(), this.iotHubX509.getPrivateKey(), null, false);
         }
     }
 }
@@ -29,11 +29,38 @@ public final class Signature
         byte[] encryptedSig =
                 SignatureHelper.encryptSignatureHmacSha256(rawSig,
                         decodedDeviceKey);
+        this.sig = encodeSignature(encryptedSig);
+    }
+
+    /**
+     * Constructs a {@code Signature} instance from the given resource URI and
+     * expiry time, signed with the signer holding the decoded device key.
+     * @param resourceUri the resource URI.
+     * @param expiryTime the time, as a UNIX timestamp, after which the token
+     * will become invalid.
+     * @param signer the signer of the device key.
+     */
+    public Signature(String resourceUri, long expiryTime, HmacSha256Signer signer)
+    {
+        if (signer == null)
+        {
+            // Codes_SRS_SIGNATURE_34_001: [If the provided signer is null, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("signer cannot be null");
+        }
+
+        // Codes_SRS_SIGNATURE_34_002: [The signature shall be computed as the one built from a device key, with the raw signature signed by the provided signer.]
+        byte[] rawSig = SignatureHelper.buildRawSignature(resourceUri,
+                expiryTime);
+        this.sig = encodeSignature(signer.sign(rawSig));
+    }
+
+    private static String encodeSignature(byte[] encryptedSig)
+    {
         byte[] encryptedSigBase64 = SignatureHelper.encodeSignatureBase64(
                 encryptedSig);
         // Codes_SRS_SIGNATURE_11_003: [The signature string shall be encoded using charset UTF-8.]
         String utf8Sig = SignatureHelper.encodeSignatureUtf8(encryptedSigBase64);
-        this.sig = SignatureHelper.encodeSignatureWebSafe(utf8Sig);
+        return SignatureHelper.encodeSignatureWebSafe(utf8Sig);
     }
 
     /**
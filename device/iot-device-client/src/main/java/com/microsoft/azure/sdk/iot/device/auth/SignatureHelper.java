@@ -5,27 +5,17 @@ package com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.deps.util.Base64;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 
 /** Builds the authorization signature as a composition of functions. */
 public final class SignatureHelper
 {
-    /**
-     * The device ID will be the prefix. The expiry time, as a UNIX
-     * timestamp, will be the suffix.
-     */
-    private static final String RAW_SIGNATURE_FORMAT = "%s\n%s";
-
     /** The charset used for the raw and hashed signature. */
     private static final Charset SIGNATURE_CHARSET = StandardCharsets.UTF_8;
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     /**
      * Builds the raw signature.
      *
@@ -38,8 +28,7 @@ public final class SignatureHelper
     {
         // Codes_SRS_SIGNATUREHELPER_11_001: [The function shall initialize the message being encoded as "<scope>\n<expiryTime>".]
         // Codes_SRS_SIGNATUREHELPER_11_002: [The function shall decode the message using the charset UTF-8.]
-        return String.format(RAW_SIGNATURE_FORMAT, resourceUri, expiryTime)
-                .getBytes(SIGNATURE_CHARSET);
+        return (resourceUri + '\n' + expiryTime).getBytes(SIGNATURE_CHARSET);
     }
 
     /**
@@ -66,29 +55,9 @@ public final class SignatureHelper
     public static byte[] encryptSignatureHmacSha256(byte[] sig,
             byte[] deviceKey)
     {
-        String hmacSha256 = "HmacSHA256";
-
+        // Codes_SRS_SIGNATUREHELPER_11_004: [The function shall encrypt the signature using the HMAC-SHA256 algorithm.]
         // Codes_SRS_SIGNATUREHELPER_11_005: [The function shall use the device key as the secret for the algorithm.]
-        SecretKeySpec secretKey = new SecretKeySpec(deviceKey, hmacSha256);
-
-        byte[] encryptedSig = null;
-        try
-        {
-            // Codes_SRS_SIGNATUREHELPER_11_004: [The function shall encrypt the signature using the HMAC-SHA256 algorithm.]
-            Mac hMacSha256 = Mac.getInstance(hmacSha256);
-            hMacSha256.init(secretKey);
-            encryptedSig = hMacSha256.doFinal(sig);
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            // should never happen, since the algorithm is hard-coded.
-        }
-        catch (InvalidKeyException e)
-        {
-            // should never happen, since the input key type is hard-coded.
-        }
-
-        return encryptedSig;
+        return HmacSha256Signer.sign(sig, deviceKey);
     }
 
     /**
@@ -131,20 +100,52 @@ public final class SignatureHelper
      */
     public static String encodeSignatureWebSafe(String sig)
     {
-        String strSig;
-        try
+        int length = sig.length();
+        int firstUnsafe = 0;
+        while (firstUnsafe < length && isWebSafe(sig.charAt(firstUnsafe)))
+        {
+            firstUnsafe++;
+        }
+
+        if (firstUnsafe == length)
         {
-            // Codes_SRS_SIGNATUREHELPER_11_007: [The function shall replace web-unsafe characters in the signature with a '%' followed by two hexadecimal digits, where the hexadecimal digits are determined by the UTF-8 charset.]
-            // Codes_SRS_SIGNATUREHELPER_11_008: [The function shall replace spaces with '+' signs.]
-            strSig = URLEncoder.encode(sig, SIGNATURE_CHARSET.name());
+            return sig;
         }
-        catch (UnsupportedEncodingException e)
+
+        // Codes_SRS_SIGNATUREHELPER_11_007: [The function shall replace web-unsafe characters in the signature with a '%' followed by two hexadecimal digits, where the hexadecimal digits are determined by the UTF-8 charset.]
+        // Codes_SRS_SIGNATUREHELPER_11_008: [The function shall replace spaces with '+' signs.]
+        // only the part after the first unsafe character is converted to UTF-8 and escaped; the safe prefix, which is
+        // most of a Base64 signature, is copied as it is
+        byte[] unsafeBytes = sig.substring(firstUnsafe).getBytes(SIGNATURE_CHARSET);
+        StringBuilder webSafeSig = new StringBuilder(firstUnsafe + unsafeBytes.length * 3);
+        webSafeSig.append(sig, 0, firstUnsafe);
+        for (byte unsafeByte : unsafeBytes)
         {
-            // should never happen, since the encoding is hard-coded.
-            throw new IllegalStateException(e);
+            char c = (char) (unsafeByte & 0xFF);
+            if (isWebSafe(c))
+            {
+                webSafeSig.append(c);
+            }
+            else if (c == ' ')
+            {
+                webSafeSig.append('+');
+            }
+            else
+            {
+                webSafeSig.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            }
         }
 
-        return strSig;
+        return webSafeSig.toString();
+    }
+
+    /**
+     * @return true if {@link java.net.URLEncoder} leaves the character as it is.
+     */
+    private static boolean isWebSafe(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
     }
 
     @SuppressWarnings("unused")
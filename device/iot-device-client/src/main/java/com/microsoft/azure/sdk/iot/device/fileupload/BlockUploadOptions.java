@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.fileupload;
+
+import java.io.File;
+
+/**
+ * Options of a file upload that stores the stream in the blob block by block.
+ *
+ * <p>
+ *     The stream is read one block at a time, and up to {@code maxParallelBlocks} blocks are sent to the storage
+ *     in parallel, so the upload holds at most {@code blockSizeInBytes * maxParallelBlocks} bytes in memory,
+ *     whatever the stream length. A file uploaded from its {@code Path} is sent from memory mapped slices of the
+ *     file instead, without copying the blocks in the heap. The blocks are committed to the blob once all of them
+ *     are stored.
+ * </p>
+ * <p>
+ *     If a {@code checkpointFile} is provided, the upload records in it each block that was stored. An upload of
+ *     the same blob with the same stream length, block size, and content that finds this file resumes from it,
+ *     sending only the blocks that are not recorded. The content is identified by the {@code sourceVersion}, like
+ *     the ETag of the source, or else, for a file, by its last modified time. A stream without a
+ *     {@code sourceVersion} is always uploaded from the beginning, since a change after its first bytes could not be
+ *     detected. The file is deleted once the blob is committed. The storage keeps the blocks that were not committed
+ *     for one week, so an upload shall be resumed within this time.
+ * </p>
+ */
+public final class BlockUploadOptions
+{
+    /** The size of the blocks, if not set, in bytes. */
+    public static final int DEFAULT_BLOCK_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    /** The biggest block accepted by the storage, in bytes. */
+    public static final int MAX_BLOCK_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    /** The number of blocks sent in parallel, if not set. */
+    public static final int DEFAULT_MAX_PARALLEL_BLOCKS = 4;
+
+    private int blockSizeInBytes = DEFAULT_BLOCK_SIZE_IN_BYTES;
+    private int maxParallelBlocks = DEFAULT_MAX_PARALLEL_BLOCKS;
+    private File checkpointFile;
+    private String sourceVersion;
+    private boolean computeBlockMd5;
+    private BlockUploadProgressCallback progressCallback;
+    private Object progressCallbackContext;
+
+    /**
+     * Setter for the block size.
+     *
+     * @param blockSizeInBytes is the number of bytes of each block, but the last one. It shall be between 1 and
+     *                         {@link #MAX_BLOCK_SIZE_IN_BYTES}.
+     * @throws IllegalArgumentException if the block size is out of range.
+     */
+    public void setBlockSizeInBytes(int blockSizeInBytes) throws IllegalArgumentException
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_001: [If the `blockSizeInBytes` is not between 1 and MAX_BLOCK_SIZE_IN_BYTES, the setBlockSizeInBytes shall throw IllegalArgumentException.] */
+        if ((blockSizeInBytes <= 0) || (blockSizeInBytes > MAX_BLOCK_SIZE_IN_BYTES))
+        {
+            throw new IllegalArgumentException("blockSizeInBytes shall be between 1 and " + MAX_BLOCK_SIZE_IN_BYTES);
+        }
+
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_002: [The setBlockSizeInBytes shall store the provided `blockSizeInBytes`.] */
+        this.blockSizeInBytes = blockSizeInBytes;
+    }
+
+    /**
+     * Getter for the block size.
+     *
+     * @return the number of bytes of each block, {@link #DEFAULT_BLOCK_SIZE_IN_BYTES} if not set.
+     */
+    public int getBlockSizeInBytes()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_002: [The setBlockSizeInBytes shall store the provided `blockSizeInBytes`.] */
+        return this.blockSizeInBytes;
+    }
+
+    /**
+     * Setter for the number of blocks sent in parallel.
+     *
+     * @param maxParallelBlocks is the maximum number of blocks sent to the storage at the same time. It shall be
+     *                          positive.
+     * @throws IllegalArgumentException if the number of blocks is not positive.
+     */
+    public void setMaxParallelBlocks(int maxParallelBlocks) throws IllegalArgumentException
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_003: [If the `maxParallelBlocks` is not positive, the setMaxParallelBlocks shall throw IllegalArgumentException.] */
+        if (maxParallelBlocks <= 0)
+        {
+            throw new IllegalArgumentException("maxParallelBlocks shall be positive");
+        }
+
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_004: [The setMaxParallelBlocks shall store the provided `maxParallelBlocks`.] */
+        this.maxParallelBlocks = maxParallelBlocks;
+    }
+
+    /**
+     * Getter for the number of blocks sent in parallel.
+     *
+     * @return the maximum number of blocks sent at the same time, {@link #DEFAULT_MAX_PARALLEL_BLOCKS} if not set.
+     */
+    public int getMaxParallelBlocks()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_004: [The setMaxParallelBlocks shall store the provided `maxParallelBlocks`.] */
+        return this.maxParallelBlocks;
+    }
+
+    /**
+     * Setter for the checkpoint file.
+     *
+     * @param checkpointFile is the file where the stored blocks are recorded, allowing an interrupted upload to
+     *                       resume. Can be {@code null}, in which case an interrupted upload restarts from the
+     *                       beginning.
+     */
+    public void setCheckpointFile(File checkpointFile)
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_005: [The setCheckpointFile shall store the provided `checkpointFile`, that can be null.] */
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Getter for the checkpoint file.
+     *
+     * @return the file where the stored blocks are recorded, or {@code null} if not set.
+     */
+    public File getCheckpointFile()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_005: [The setCheckpointFile shall store the provided `checkpointFile`, that can be null.] */
+        return this.checkpointFile;
+    }
+
+    /**
+     * Setter for the source version.
+     *
+     * @param sourceVersion is a value that changes whenever the content of the source changes, like its ETag or a
+     *                      version number. The upload of a stream only resumes from the checkpoint with it; the
+     *                      upload of a file uses it instead of the last modified time of the file. Can be
+     *                      {@code null}.
+     */
+    public void setSourceVersion(String sourceVersion)
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_008: [The setSourceVersion shall store the provided `sourceVersion`, that can be null.] */
+        this.sourceVersion = sourceVersion;
+    }
+
+    /**
+     * Getter for the source version.
+     *
+     * @return the version of the content of the source, or {@code null} if not set.
+     */
+    public String getSourceVersion()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_008: [The setSourceVersion shall store the provided `sourceVersion`, that can be null.] */
+        return this.sourceVersion;
+    }
+
+    /**
+     * Setter for the block MD5 verification.
+     *
+     * @param computeBlockMd5 is {@code true} to compute the MD5 of each block and send it with the block, so the
+     *                        storage rejects a block corrupted on the way. The MD5 is computed from the block
+     *                        already in memory, so the source is not read twice.
+     */
+    public void setComputeBlockMd5(boolean computeBlockMd5)
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_007: [The setComputeBlockMd5 shall store the provided `computeBlockMd5`.] */
+        this.computeBlockMd5 = computeBlockMd5;
+    }
+
+    /**
+     * Getter for the block MD5 verification.
+     *
+     * @return {@code true} if the MD5 of each block is sent with the block, {@code false} if not set.
+     */
+    public boolean isComputeBlockMd5()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_007: [The setComputeBlockMd5 shall store the provided `computeBlockMd5`.] */
+        return this.computeBlockMd5;
+    }
+
+    /**
+     * Setter for the progress callback.
+     *
+     * @param progressCallback is the callback to call each time a block is stored. Can be {@code null}.
+     * @param progressCallbackContext is the context for the callback. Can be any value.
+     */
+    public void setProgressCallback(BlockUploadProgressCallback progressCallback, Object progressCallbackContext)
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_006: [The setProgressCallback shall store the provided `progressCallback`, that can be null, and `progressCallbackContext`.] */
+        this.progressCallback = progressCallback;
+        this.progressCallbackContext = progressCallbackContext;
+    }
+
+    /**
+     * Getter for the progress callback.
+     *
+     * @return the callback to call each time a block is stored, or {@code null} if not set.
+     */
+    public BlockUploadProgressCallback getProgressCallback()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_006: [The setProgressCallback shall store the provided `progressCallback`, that can be null, and `progressCallbackContext`.] */
+        return this.progressCallback;
+    }
+
+    /**
+     * Getter for the progress callback context.
+     *
+     * @return the context for the progress callback.
+     */
+    public Object getProgressCallbackContext()
+    {
+        /* Codes_SRS_BLOCKUPLOADOPTIONS_34_006: [The setProgressCallback shall store the provided `progressCallback`, that can be null, and `progressCallbackContext`.] */
+        return this.progressCallbackContext;
+    }
+}
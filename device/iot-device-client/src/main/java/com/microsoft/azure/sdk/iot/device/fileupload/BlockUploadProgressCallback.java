@@ -0,0 +1,24 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.fileupload;
+
+/**
+ * An interface for the progress of a block upload.
+ *
+ * Developers are expected to create an implementation of this interface, and the file upload will call
+ * {@link BlockUploadProgressCallback#execute(long, long, Object)} each time a block of the stream is
+ * stored in the blob.
+ */
+public interface BlockUploadProgressCallback
+{
+    /**
+     * Executes the callback.
+     *
+     * @param bytesUploaded the number of bytes of the stream already stored in the blob, including the
+     *                      ones stored before the upload was resumed.
+     * @param streamLength the total number of bytes of the stream.
+     * @param callbackContext a custom context given by the developer.
+     */
+    void execute(long bytesUploaded, long streamLength, Object callbackContext);
+}
@@ -0,0 +1,755 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.fileupload;
+
+import com.microsoft.azure.sdk.iot.deps.util.Base64;
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.SendingRequestEvent;
+import com.microsoft.azure.storage.StorageEvent;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload a stream to a block blob, one block at a time.
+ *
+ * <p>
+ *     The source, a stream or a file, is read in the caller thread, one block at a time, and each block is sent to
+ *     the storage by a pool of {@link BlockUploadOptions#getMaxParallelBlocks()} threads. The reader waits for a
+ *     block to be sent before reading more than this number of blocks, so the memory stays bounded for any stream
+ *     length. Once all the blocks are stored, the list of blocks is committed to the blob, in the stream order.
+ * </p>
+ * <p>
+ *     Each stored block is appended to the checkpoint file of the options, if any, which allows a later upload of
+ *     the same stream to the same blob to send only the missing blocks. The checkpoint records the source version
+ *     of the options, or else the last modified time of a file, so a source whose content changed is uploaded
+ *     again from the beginning. A stream cannot tell if its content changed, so it is only resumed when the
+ *     options have a source version; without one, the upload of a stream neither reads nor writes a checkpoint.
+ * </p>
+ */
+public final class BlockUploader
+{
+    private static final int MAX_BLOCKS_PER_BLOB = 50000;
+    private static final String BLOCK_ID_FORMAT = "%s-%06d";
+    private static final long AWAIT_TERMINATION_TIMEOUT_IN_SECONDS = Long.MAX_VALUE;
+
+    private static final String CHECKPOINT_BLOB_NAME = "blobName";
+    private static final String CHECKPOINT_STREAM_LENGTH = "streamLength";
+    private static final String CHECKPOINT_BLOCK_SIZE = "blockSize";
+    private static final String CHECKPOINT_SOURCE_VERSION = "sourceVersion";
+    private static final String CHECKPOINT_UPLOAD_ID = "uploadId";
+    private static final String CHECKPOINT_BLOCK_PREFIX = "block.";
+    private static final String CHECKPOINT_BLOCK_STORED = "stored";
+    private static final String CHECKPOINT_TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private static final String MD5_ALGORITHM = "MD5";
+    private static final String CONTENT_MD5_HEADER = "Content-MD5";
+
+    private static final String THREAD_NAME = "azure-iot-sdk-BlockUploader";
+
+    private final BlockUploadOptions options;
+    private final CustomLogger logger;
+
+    /**
+     * CONSTRUCTOR
+     *
+     * @param options is the set of options of the upload. Cannot be {@code null}.
+     * @throws IllegalArgumentException if the options are {@code null}.
+     */
+    BlockUploader(BlockUploadOptions options) throws IllegalArgumentException
+    {
+        /* Codes_SRS_BLOCKUPLOADER_34_001: [If the `options` is null, the constructor shall throw IllegalArgumentException.] */
+        if (options == null)
+        {
+            throw new IllegalArgumentException("options is null");
+        }
+
+        this.options = options;
+        this.logger = new CustomLogger(this.getClass());
+    }
+
+    /**
+     * Upload the stream to the blob, block by block, and commit the blocks.
+     *
+     * @param blob is the destination blob. Cannot be {@code null}.
+     * @param blobName is the name of the blob, used to identify the checkpoint. Cannot be {@code null} or empty.
+     * @param inputStream is the stream to upload. Cannot be {@code null}.
+     * @param streamLength is the number of bytes to upload. Cannot be negative.
+     * @throws IllegalArgumentException if one of the parameters is invalid, or if the stream needs more blocks
+     *              than a blob can have.
+     * @throws StorageException if the storage failed to store a block or to commit the blob.
+     * @throws IOException if the stream failed to be read, is shorter than {@code streamLength}, or if the upload
+     *              was interrupted.
+     */
+    void upload(CloudBlockBlob blob, String blobName, InputStream inputStream, long streamLength)
+            throws IllegalArgumentException, StorageException, IOException
+    {
+        /* Codes_SRS_BLOCKUPLOADER_34_002: [If the `blob` or the `inputStream` is null, the `blobName` is null or empty, or the `streamLength` is negative, the upload shall throw IllegalArgumentException.] */
+        if ((blob == null) || (blobName == null) || blobName.isEmpty() || (inputStream == null) || (streamLength < 0))
+        {
+            throw new IllegalArgumentException("blob, blobName, and inputStream cannot be null or empty, and streamLength cannot be negative");
+        }
+
+        this.uploadBlocks(blob, blobName, new StreamBlockReader(inputStream), streamLength);
+    }
+
+    /**
+     * Upload the file to the blob, block by block, and commit the blocks.
+     *
+     * <p>
+     *     Each block is a read only memory mapped slice of the file, sent to the storage without being copied in the
+     *     heap. The blocks are independent of each other, so resuming an upload does not read the blocks already
+     *     stored.
+     * </p>
+     *
+     * @param blob is the destination blob. Cannot be {@code null}.
+     * @param blobName is the name of the blob, used to identify the checkpoint. Cannot be {@code null} or empty.
+     * @param path is the file to upload. Cannot be {@code null}.
+     * @throws IllegalArgumentException if one of the parameters is invalid, or if the file needs more blocks
+     *              than a blob can have.
+     * @throws StorageException if the storage failed to store a block or to commit the blob.
+     * @throws IOException if the file failed to be read, or if the upload was interrupted.
+     */
+    void upload(CloudBlockBlob blob, String blobName, Path path) throws IllegalArgumentException, StorageException, IOException
+    {
+        /* Codes_SRS_BLOCKUPLOADER_34_016: [If the `blob` or the `path` is null, or the `blobName` is null or empty, the upload shall throw IllegalArgumentException.] */
+        if ((blob == null) || (blobName == null) || blobName.isEmpty() || (path == null))
+        {
+            throw new IllegalArgumentException("blob, blobName, and path cannot be null or empty");
+        }
+
+        /* Codes_SRS_BLOCKUPLOADER_34_017: [The upload shall send each block of the file as a read only memory mapped slice of the file, mapped from a FileChannel.] */
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            this.uploadBlocks(blob, blobName, new MappedBlockReader(path, fileChannel), fileChannel.size());
+        }
+    }
+
+    private void uploadBlocks(CloudBlockBlob blob, String blobName, BlockReader blockReader, long streamLength)
+            throws IllegalArgumentException, StorageException, IOException
+    {
+        int blockSize = this.options.getBlockSizeInBytes();
+        long blockCountLong = (streamLength + blockSize - 1) / blockSize;
+        /* Codes_SRS_BLOCKUPLOADER_34_003: [If the stream needs more than 50000 blocks of the configured size, the upload shall throw IllegalArgumentException.] */
+        if (blockCountLong > MAX_BLOCKS_PER_BLOB)
+        {
+            throw new IllegalArgumentException("streamLength needs " + blockCountLong + " blocks, more than the " + MAX_BLOCKS_PER_BLOB + " that a blob can have");
+        }
+        int blockCount = (int) blockCountLong;
+
+        /* Codes_SRS_BLOCKUPLOADER_34_020: [The upload shall identify the content of the source by the source version of the options if set, or else by the last modified time of the file. The upload of a stream without a source version shall neither resume from nor write the checkpoint file.] */
+        String sourceVersion = this.options.getSourceVersion();
+        if (sourceVersion == null)
+        {
+            sourceVersion = blockReader.getSourceVersion();
+        }
+        File checkpointFile = this.options.getCheckpointFile();
+        if ((sourceVersion == null) && (checkpointFile != null))
+        {
+            logger.LogInfo("Uploading %s from the beginning without a checkpoint, as its stream has no source version, method name is %s ", blobName, logger.getMethodName());
+            checkpointFile = null;
+        }
+
+        /* Codes_SRS_BLOCKUPLOADER_34_004: [If the checkpoint file exists and was created for the same `blobName`, `streamLength`, block size, and source content, the upload shall resume from it; otherwise it shall start a new upload.] */
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile, blobName, streamLength, blockSize, sourceVersion);
+        if (checkpoint.getUploadedBlockCount() > 0)
+        {
+            logger.LogInfo("Resuming the upload of %s with %d of %d blocks already stored, method name is %s ", blobName, checkpoint.getUploadedBlockCount(), blockCount, logger.getMethodName());
+        }
+
+        BlockPutResult result = new BlockPutResult(checkpoint, streamLength);
+        int maxParallelBlocks = this.options.getMaxParallelBlocks();
+        Semaphore blocksInFlight = new Semaphore(maxParallelBlocks);
+        ExecutorService executor = Executors.newFixedThreadPool(maxParallelBlocks);
+        try
+        {
+            for (int blockIndex = 0; (blockIndex < blockCount) && !result.hasFailed(); blockIndex++)
+            {
+                int length = (int) Math.min(blockSize, streamLength - ((long) blockIndex * blockSize));
+                if (checkpoint.isUploaded(blockIndex))
+                {
+                    /* Codes_SRS_BLOCKUPLOADER_34_005: [The upload shall skip in the `inputStream` the blocks recorded in the checkpoint, without sending them again.] */
+                    blockReader.skip(length);
+                    continue;
+                }
+
+                /* Codes_SRS_BLOCKUPLOADER_34_006: [The upload shall read the next block only when less than the max parallel blocks are being sent.] */
+                blocksInFlight.acquire();
+                ByteBuffer block;
+                try
+                {
+                    block = blockReader.read((long) blockIndex * blockSize, length);
+                }
+                catch (IOException e)
+                {
+                    blocksInFlight.release();
+                    throw e;
+                }
+
+                /* Codes_SRS_BLOCKUPLOADER_34_007: [The upload shall send each block to the storage with `uploadBlock`, in parallel with the other blocks.] */
+                executor.execute(new BlockPut(blob, checkpoint.getBlockId(blockIndex), blockIndex, block, blocksInFlight, result));
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(AWAIT_TERMINATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            /* Codes_SRS_BLOCKUPLOADER_34_008: [If the upload is interrupted, it shall stop sending blocks, keep the checkpoint, and throw InterruptedIOException.] */
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Block upload of " + blobName + " was interrupted");
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        /* Codes_SRS_BLOCKUPLOADER_34_009: [If a block failed to be sent, the upload shall keep the checkpoint, and throw the exception of the failed block.] */
+        result.throwIfFailed();
+
+        try
+        {
+            /* Codes_SRS_BLOCKUPLOADER_34_010: [Once all the blocks are stored, the upload shall commit the list of blocks, in the stream order.] */
+            blob.commitBlockList(checkpoint.getBlockList(blockCount));
+        }
+        catch (StorageException e)
+        {
+            /* Codes_SRS_BLOCKUPLOADER_34_011: [If the storage rejects the list of blocks, the upload shall delete the checkpoint, so the next upload restarts from the beginning, and throw the StorageException.] */
+            if (e.getHttpStatusCode() == HttpURLConnection.HTTP_BAD_REQUEST)
+            {
+                checkpoint.delete();
+            }
+            throw e;
+        }
+
+        /* Codes_SRS_BLOCKUPLOADER_34_012: [Once the blocks are committed, the upload shall delete the checkpoint.] */
+        checkpoint.delete();
+    }
+
+    /**
+     * Reads the blocks of the source, in the stream order.
+     */
+    private interface BlockReader
+    {
+        String getSourceVersion() throws IOException;
+
+        ByteBuffer read(long offset, int length) throws IOException;
+
+        void skip(int length) throws IOException;
+    }
+
+    /**
+     * Reads the blocks of an InputStream, copying each one in a new array.
+     */
+    private static final class StreamBlockReader implements BlockReader
+    {
+        private final InputStream inputStream;
+
+        private StreamBlockReader(InputStream inputStream)
+        {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public String getSourceVersion()
+        {
+            // Only the whole content identifies a stream, and it cannot be read before the blocks are skipped.
+            return null;
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException
+        {
+            byte[] block = new byte[length];
+            int position = 0;
+            while (position < length)
+            {
+                int read = this.inputStream.read(block, position, length - position);
+                if (read < 0)
+                {
+                    /* Codes_SRS_BLOCKUPLOADER_34_013: [If the `inputStream` ends before `streamLength` bytes, the upload shall throw EOFException.] */
+                    throw new EOFException("The stream ended before the provided streamLength");
+                }
+                position += read;
+            }
+            return ByteBuffer.wrap(block);
+        }
+
+        @Override
+        public void skip(int length) throws IOException
+        {
+            long remaining = length;
+            while (remaining > 0)
+            {
+                long skipped = this.inputStream.skip(remaining);
+                if (skipped <= 0)
+                {
+                    // skip may stop before the end of the stream, read one byte to find out if it ended.
+                    if (this.inputStream.read() < 0)
+                    {
+                        /* Codes_SRS_BLOCKUPLOADER_34_013: [If the `inputStream` ends before `streamLength` bytes, the upload shall throw EOFException.] */
+                        throw new EOFException("The stream ended before the provided streamLength");
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+
+    /**
+     * Reads the blocks of a file as memory mapped slices. The pages of a slice are read from the disk when the
+     * block is first accessed, by the thread that sends it.
+     */
+    private static final class MappedBlockReader implements BlockReader
+    {
+        private final Path path;
+        private final FileChannel fileChannel;
+
+        private MappedBlockReader(Path path, FileChannel fileChannel)
+        {
+            this.path = path;
+            this.fileChannel = fileChannel;
+        }
+
+        @Override
+        public String getSourceVersion() throws IOException
+        {
+            return String.valueOf(Files.getLastModifiedTime(this.path).toMillis());
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException
+        {
+            return this.fileChannel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        @Override
+        public void skip(int length)
+        {
+            // The blocks are mapped by offset, so there is nothing to read.
+        }
+    }
+
+    /**
+     * Markable stream over the content of a block, which the storage client sends without buffering it.
+     */
+    private static final class ByteBufferInputStream extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? (this.buffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+            {
+                return 0;
+            }
+            if (!this.buffer.hasRemaining())
+            {
+                return -1;
+            }
+            int read = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long length)
+        {
+            int skipped = (int) Math.max(0, Math.min(length, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit)
+        {
+            this.buffer.mark();
+        }
+
+        @Override
+        public synchronized void reset()
+        {
+            this.buffer.reset();
+        }
+    }
+
+    /**
+     * Sends one block to the storage and records it in the checkpoint.
+     */
+    private final class BlockPut implements Runnable
+    {
+        private final CloudBlockBlob blob;
+        private final String blockId;
+        private final int blockIndex;
+        private final ByteBuffer block;
+        private final Semaphore blocksInFlight;
+        private final BlockPutResult result;
+
+        private BlockPut(CloudBlockBlob blob, String blockId, int blockIndex, ByteBuffer block, Semaphore blocksInFlight, BlockPutResult result)
+        {
+            this.blob = blob;
+            this.blockId = blockId;
+            this.blockIndex = blockIndex;
+            this.block = block;
+            this.blocksInFlight = blocksInFlight;
+            this.result = result;
+        }
+
+        @Override
+        public void run()
+        {
+            Thread.currentThread().setName(THREAD_NAME);
+            try
+            {
+                if (!this.result.hasFailed())
+                {
+                    int length = this.block.remaining();
+                    OperationContext operationContext = null;
+                    if (options.isComputeBlockMd5())
+                    {
+                        /* Codes_SRS_BLOCKUPLOADER_34_018: [If the options ask to compute the block MD5, the upload shall compute the MD5 of each block and send it as the `Content-MD5` of the block request, so the storage verifies the block.] */
+                        operationContext = createContentMd5Context(computeMd5(this.block.duplicate()));
+                    }
+                    this.blob.uploadBlock(this.blockId, new ByteBufferInputStream(this.block.duplicate()), length, null, null, operationContext);
+                    this.result.onBlockUploaded(this.blockIndex, length);
+                }
+            }
+            catch (Throwable e)
+            {
+                /* Codes_SRS_BLOCKUPLOADER_34_019: [If sending or recording a block fails with any Throwable, the upload shall fail with it, and shall not commit the blob.] */
+                logger.LogError("Failed to upload the block %d. %s", this.blockIndex, e.toString());
+                this.result.onBlockFailed(e);
+            }
+            finally
+            {
+                this.blocksInFlight.release();
+            }
+        }
+    }
+
+    private static String computeMd5(ByteBuffer block)
+    {
+        MessageDigest md5;
+        try
+        {
+            md5 = MessageDigest.getInstance(MD5_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform is required to support MD5.
+            throw new IllegalStateException(e);
+        }
+        md5.update(block);
+        return Base64.encodeBase64StringLocal(md5.digest());
+    }
+
+    private static OperationContext createContentMd5Context(final String contentMd5)
+    {
+        // The storage client only sends a Content-MD5 that it computed itself, in an extra pass over the block, so
+        // the one computed here is added to the request just before it is sent.
+        OperationContext operationContext = new OperationContext();
+        operationContext.getSendingRequestEventHandler().addListener(new StorageEvent<SendingRequestEvent>()
+        {
+            @Override
+            public void eventOccurred(SendingRequestEvent event)
+            {
+                ((HttpURLConnection) event.getConnectionObject()).setRequestProperty(CONTENT_MD5_HEADER, contentMd5);
+            }
+        });
+        return operationContext;
+    }
+
+    /**
+     * Collects the outcome of the blocks sent in parallel.
+     */
+    private final class BlockPutResult
+    {
+        private final Checkpoint checkpoint;
+        private final long streamLength;
+        private long bytesUploaded;
+        private Throwable failure;
+
+        private BlockPutResult(Checkpoint checkpoint, long streamLength)
+        {
+            this.checkpoint = checkpoint;
+            this.streamLength = streamLength;
+            this.bytesUploaded = checkpoint.getUploadedBytes(streamLength, options.getBlockSizeInBytes());
+        }
+
+        private synchronized void onBlockUploaded(int blockIndex, int length) throws IOException
+        {
+            /* Codes_SRS_BLOCKUPLOADER_34_014: [Each time a block is stored, the upload shall record it in the checkpoint file, if any.] */
+            this.checkpoint.setUploaded(blockIndex);
+            this.bytesUploaded += length;
+
+            /* Codes_SRS_BLOCKUPLOADER_34_015: [Each time a block is stored, the upload shall call the progress callback, if any, with the number of bytes already stored and the `streamLength`.] */
+            BlockUploadProgressCallback progressCallback = options.getProgressCallback();
+            if (progressCallback != null)
+            {
+                progressCallback.execute(this.bytesUploaded, this.streamLength, options.getProgressCallbackContext());
+            }
+        }
+
+        private synchronized void onBlockFailed(Throwable e)
+        {
+            if (this.failure == null)
+            {
+                this.failure = e;
+            }
+        }
+
+        private synchronized boolean hasFailed()
+        {
+            return this.failure != null;
+        }
+
+        private synchronized void throwIfFailed() throws StorageException, IOException
+        {
+            if (this.failure instanceof StorageException)
+            {
+                throw (StorageException) this.failure;
+            }
+            if (this.failure instanceof IOException)
+            {
+                throw (IOException) this.failure;
+            }
+            if (this.failure instanceof Error)
+            {
+                throw (Error) this.failure;
+            }
+            if (this.failure != null)
+            {
+                throw (RuntimeException) this.failure;
+            }
+        }
+    }
+
+    /**
+     * The blocks of an upload that are already stored, optionally persisted in a file.
+     *
+     * <p>
+     *     The block ids are made of an id of the upload and the index of the block, so the ids of all the blocks of
+     *     the blob have the same length, as the storage requires, and an upload does not reuse the blocks of
+     *     another one.
+     * </p>
+     * <p>
+     *     The file is a properties file that starts with the identity of the upload, written once, followed by one
+     *     {@code block.<index>=stored} line appended for each stored block. A line cut short by a crash does not end
+     *     with the stored value, so it is ignored and its block is sent again.
+     * </p>
+     */
+    private static final class Checkpoint
+    {
+        private final File file;
+        private final Properties properties;
+        private final BitSet uploadedBlocks;
+        private final String uploadId;
+        private boolean saved;
+
+        // A checkpoint loaded from the disk may end with a line cut short, which the next block must not extend.
+        private boolean appendOnNewLine;
+
+        private Checkpoint(File file, Properties properties, BitSet uploadedBlocks, boolean saved)
+        {
+            this.file = file;
+            this.properties = properties;
+            this.uploadedBlocks = uploadedBlocks;
+            this.uploadId = properties.getProperty(CHECKPOINT_UPLOAD_ID);
+            this.saved = saved;
+            this.appendOnNewLine = saved;
+        }
+
+        private static Checkpoint load(File file, String blobName, long streamLength, int blockSize, String sourceVersion) throws IOException
+        {
+            if ((file != null) && file.isFile())
+            {
+                Properties stored = new Properties();
+                try (InputStream checkpointStream = new FileInputStream(file))
+                {
+                    stored.load(checkpointStream);
+                }
+
+                if (blobName.equals(stored.getProperty(CHECKPOINT_BLOB_NAME)) &&
+                        String.valueOf(streamLength).equals(stored.getProperty(CHECKPOINT_STREAM_LENGTH)) &&
+                        String.valueOf(blockSize).equals(stored.getProperty(CHECKPOINT_BLOCK_SIZE)) &&
+                        sourceVersion.equals(stored.getProperty(CHECKPOINT_SOURCE_VERSION)) &&
+                        (stored.getProperty(CHECKPOINT_UPLOAD_ID) != null))
+                {
+                    BitSet uploadedBlocks = new BitSet();
+                    for (String key : stored.stringPropertyNames())
+                    {
+                        if (key.startsWith(CHECKPOINT_BLOCK_PREFIX) && CHECKPOINT_BLOCK_STORED.equals(stored.getProperty(key)))
+                        {
+                            Integer blockIndex = parseBlockIndex(key.substring(CHECKPOINT_BLOCK_PREFIX.length()));
+                            if (blockIndex != null)
+                            {
+                                uploadedBlocks.set(blockIndex);
+                            }
+                        }
+                    }
+                    return new Checkpoint(file, stored, uploadedBlocks, true);
+                }
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty(CHECKPOINT_BLOB_NAME, blobName);
+            properties.setProperty(CHECKPOINT_STREAM_LENGTH, String.valueOf(streamLength));
+            properties.setProperty(CHECKPOINT_BLOCK_SIZE, String.valueOf(blockSize));
+            if (sourceVersion != null)
+            {
+                properties.setProperty(CHECKPOINT_SOURCE_VERSION, sourceVersion);
+            }
+            properties.setProperty(CHECKPOINT_UPLOAD_ID, UUID.randomUUID().toString());
+            return new Checkpoint(file, properties, new BitSet(), false);
+        }
+
+        private static Integer parseBlockIndex(String blockIndex)
+        {
+            try
+            {
+                int index = Integer.parseInt(blockIndex);
+                return (index >= 0) && (index < MAX_BLOCKS_PER_BLOB) ? index : null;
+            }
+            catch (NumberFormatException e)
+            {
+                // A line cut short by a crash, and merged with the next one.
+                return null;
+            }
+        }
+
+        private boolean isUploaded(int blockIndex)
+        {
+            return this.uploadedBlocks.get(blockIndex);
+        }
+
+        private int getUploadedBlockCount()
+        {
+            return this.uploadedBlocks.cardinality();
+        }
+
+        private long getUploadedBytes(long streamLength, int blockSize)
+        {
+            long uploadedBytes = (long) this.uploadedBlocks.cardinality() * blockSize;
+            int lastBlockIndex = (int) ((streamLength - 1) / blockSize);
+            if ((streamLength > 0) && this.uploadedBlocks.get(lastBlockIndex))
+            {
+                // The last block is shorter than the others when the stream is not a multiple of the block size.
+                uploadedBytes -= ((long) (lastBlockIndex + 1) * blockSize) - streamLength;
+            }
+            return uploadedBytes;
+        }
+
+        private String getBlockId(int blockIndex)
+        {
+            String blockId = String.format(BLOCK_ID_FORMAT, this.uploadId, blockIndex);
+            return Base64.encodeBase64StringLocal(blockId.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private List<BlockEntry> getBlockList(int blockCount)
+        {
+            List<BlockEntry> blockList = new ArrayList<>(blockCount);
+            for (int blockIndex = 0; blockIndex < blockCount; blockIndex++)
+            {
+                blockList.add(new BlockEntry(this.getBlockId(blockIndex)));
+            }
+            return blockList;
+        }
+
+        private void setUploaded(int blockIndex) throws IOException
+        {
+            this.uploadedBlocks.set(blockIndex);
+            if (this.file == null)
+            {
+                return;
+            }
+
+            if (!this.saved)
+            {
+                // Write aside and move over the checkpoint, so a crash while writing never leaves a partial identity,
+                // and a checkpoint of another upload is replaced at once.
+                File temporaryFile = new File(this.file.getPath() + CHECKPOINT_TEMPORARY_FILE_SUFFIX);
+                try (OutputStream checkpointStream = new FileOutputStream(temporaryFile))
+                {
+                    this.properties.store(checkpointStream, null);
+                }
+                Files.move(temporaryFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                this.saved = true;
+            }
+
+            /* Codes_SRS_BLOCKUPLOADER_34_021: [The upload shall append each stored block to the checkpoint file, without rewriting the blocks already recorded.] */
+            String entry = CHECKPOINT_BLOCK_PREFIX + blockIndex + "=" + CHECKPOINT_BLOCK_STORED + System.lineSeparator();
+            if (this.appendOnNewLine)
+            {
+                entry = System.lineSeparator() + entry;
+                this.appendOnNewLine = false;
+            }
+            try (OutputStream checkpointStream = new FileOutputStream(this.file, true))
+            {
+                checkpointStream.write(entry.getBytes(StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        private void delete() throws IOException
+        {
+            if (this.file != null)
+            {
+                Files.deleteIfExists(this.file.toPath());
+            }
+        }
+    }
+}
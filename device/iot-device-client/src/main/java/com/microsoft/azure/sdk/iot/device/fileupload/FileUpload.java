@@ -11,6 +11,8 @@ import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransportManager;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Queue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -93,6 +95,35 @@ public final class FileUpload
             String blobName, InputStream inputStream, long streamLength,
             IotHubEventCallback statusCallback, Object statusCallbackContext)
             throws IllegalArgumentException, IOException
+    {
+        this.uploadToBlobAsync(blobName, inputStream, streamLength, null, statusCallback, statusCallbackContext);
+    }
+
+    /**
+     * Upload the file to container, which was associated to the iothub, block by block.
+     * This function will start the upload process, and back the execution
+     * to the caller. The upload process will be executed in background.
+     * When it is completed, the background thread will trigger the
+     * callback with the upload status.
+     *
+     * @param blobName is the name of the file in the container.
+     * @param inputStream is the input stream.
+     * @param streamLength is the stream length.
+     * @param blockUploadOptions is the set of options to upload the stream block by block. Can be {@code null},
+     *                           in which case the stream is uploaded in a single call.
+     * @param statusCallback is the callback to notify that the upload is completed (with status).
+     * @param statusCallbackContext is the context of the callback, allowing multiple uploads in parallel.
+     * @throws IllegalArgumentException if one of the parameters is invalid.
+     *              blobName is {@code null} or empty,
+     *              inputStream is {@code null} or not available,
+     *              streamLength is negative,
+     *              statusCallback is {@code null}
+     * @throws IOException if an I/O error occurs in the inputStream.
+     */
+    public synchronized void uploadToBlobAsync(
+            String blobName, InputStream inputStream, long streamLength, BlockUploadOptions blockUploadOptions,
+            IotHubEventCallback statusCallback, Object statusCallbackContext)
+            throws IllegalArgumentException, IOException
     {
         /* Codes_SRS_FILEUPLOAD_21_005: [If the `blobName` is null or empty, the uploadToBlobAsync shall throw IllegalArgumentException.] */
         if((blobName == null) || blobName.isEmpty())
@@ -125,12 +156,62 @@ public final class FileUpload
 
         /* Codes_SRS_FILEUPLOAD_21_004: [The uploadToBlobAsync shall asynchronously upload the InputStream `inputStream` to the blob in `blobName`.] */
         /* Codes_SRS_FILEUPLOAD_21_009: [The uploadToBlobAsync shall create a `FileUploadTask` to control this file upload.] */
-        FileUploadTask fileUploadTask = new FileUploadTask(blobName, inputStream, streamLength, httpsTransportManager, fileUploadStatusCallBack, newUpload);
+        /* Codes_SRS_FILEUPLOAD_34_024: [The uploadToBlobAsync shall provide the `blockUploadOptions`, that can be null, to the `FileUploadTask`.] */
+        FileUploadTask fileUploadTask = new FileUploadTask(blobName, inputStream, streamLength, blockUploadOptions, httpsTransportManager, fileUploadStatusCallBack, newUpload);
 
         /* Codes_SRS_FILEUPLOAD_21_010: [The uploadToBlobAsync shall schedule the task `FileUploadTask` to immediately start.] */
         newUpload.setTask(taskScheduler.submit(fileUploadTask));
     }
 
+    /**
+     * Upload the file in the provided path to container, which was associated to the iothub, block by block.
+     * The blocks are read as memory mapped slices of the file, and sent without copying them in the heap.
+     * This function will start the upload process, and back the execution
+     * to the caller. The upload process will be executed in background.
+     * When it is completed, the background thread will trigger the
+     * callback with the upload status.
+     *
+     * @param blobName is the name of the file in the container.
+     * @param path is the file to upload.
+     * @param blockUploadOptions is the set of options to upload the file block by block. Can be {@code null}, in
+     *                           which case the default options are used.
+     * @param statusCallback is the callback to notify that the upload is completed (with status).
+     * @param statusCallbackContext is the context of the callback, allowing multiple uploads in parallel.
+     * @throws IllegalArgumentException if one of the parameters is invalid.
+     *              blobName is {@code null} or empty,
+     *              path is {@code null} or not a regular file,
+     *              statusCallback is {@code null}
+     */
+    public synchronized void uploadToBlobAsync(
+            String blobName, Path path, BlockUploadOptions blockUploadOptions,
+            IotHubEventCallback statusCallback, Object statusCallbackContext)
+            throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOAD_34_025: [If the `blobName` is null or empty, the `path` is null or not a regular file, or the `statusCallback` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+        if ((blobName == null) || blobName.isEmpty())
+        {
+            throw new IllegalArgumentException("blobName is null or empty");
+        }
+
+        if ((path == null) || !Files.isRegularFile(path))
+        {
+            throw new IllegalArgumentException("path is null or not a regular file");
+        }
+
+        if (statusCallback == null)
+        {
+            throw new IllegalArgumentException("statusCallback is null");
+        }
+
+        /* Codes_SRS_FILEUPLOAD_34_026: [The uploadToBlobAsync shall create a `FileUploadInProgress` and a `FileUploadTask` with the `path` and the `blockUploadOptions`, and schedule the task to immediately start.] */
+        FileUploadInProgress newUpload = new FileUploadInProgress(statusCallback, statusCallbackContext);
+        fileUploadInProgressesSet.add(newUpload);
+
+        FileUploadTask fileUploadTask = new FileUploadTask(blobName, path, blockUploadOptions, httpsTransportManager, fileUploadStatusCallBack, newUpload);
+
+        newUpload.setTask(taskScheduler.submit(fileUploadTask));
+    }
+
     private final class FileUploadStatusCallBack implements IotHubEventCallback
     {
         @Override
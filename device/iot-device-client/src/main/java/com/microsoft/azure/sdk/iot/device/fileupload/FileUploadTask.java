@@ -22,6 +22,7 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 /**
  * Provide means to  asynchronous upload file in the Azure Storage using the IoTHub.
@@ -60,8 +61,10 @@ public final class FileUploadTask implements Runnable
     private String blobName;
     private InputStream inputStream;
     private long streamLength;
+    private Path path;
     private IotHubEventCallback userCallback;
     private Object userCallbackContext;
+    private BlockUploadOptions blockUploadOptions;
 
     private String correlationId;
     private URI blobURI;
@@ -83,6 +86,26 @@ public final class FileUploadTask implements Runnable
      */
     FileUploadTask(String blobName, InputStream inputStream, long streamLength, HttpsTransportManager httpsTransportManager,
                     IotHubEventCallback userCallback, Object userCallbackContext) throws IllegalArgumentException
+    {
+        this(blobName, inputStream, streamLength, null, httpsTransportManager, userCallback, userCallbackContext);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param blobName is the destination blob name in the storage. Cannot be {@code null}, or empty.
+     * @param inputStream is the byte stream with the information to store in the blob. Cannot be {@code null}.
+     * @param streamLength is the number of bytes to upload. Cannot be negative.
+     * @param blockUploadOptions is the set of options to upload the stream block by block. Can be {@code null},
+     *                           in which case the stream is uploaded in a single call.
+     * @param httpsTransportManager is the https transport to connect to the IoT Hub. Cannot be {@code null}.
+     * @param userCallback is the callback to call when the upload is completed. Cannot be {@code null}.
+     * @param userCallbackContext is the context for the callback. Can be any value.
+     * @throws IllegalArgumentException if one of the parameters is not valid.
+     */
+    FileUploadTask(String blobName, InputStream inputStream, long streamLength, BlockUploadOptions blockUploadOptions,
+                   HttpsTransportManager httpsTransportManager, IotHubEventCallback userCallback, Object userCallbackContext)
+            throws IllegalArgumentException
     {
         /* Codes_SRS_FILEUPLOADTASK_21_001: [If the `blobName` is null or empty, the constructor shall throw IllegalArgumentException.] */
         if((blobName == null) || blobName.isEmpty())
@@ -121,6 +144,41 @@ public final class FileUploadTask implements Runnable
         this.userCallback = userCallback;
         this.userCallbackContext = userCallbackContext;
         this.httpsTransportManager = httpsTransportManager;
+        /* Codes_SRS_FILEUPLOADTASK_34_034: [The constructor shall store the provided `blockUploadOptions`, that can be null.] */
+        this.blockUploadOptions = blockUploadOptions;
+
+        logger = new CustomLogger(this.getClass());
+        logger.LogInfo("HttpsFileUpload object is created successfully, method name is %s ", logger.getMethodName());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param blobName is the destination blob name in the storage. Cannot be {@code null}, or empty.
+     * @param path is the file to store in the blob. Cannot be {@code null}.
+     * @param blockUploadOptions is the set of options to upload the file block by block. Can be {@code null}, in
+     *                           which case the default options are used.
+     * @param httpsTransportManager is the https transport to connect to the IoT Hub. Cannot be {@code null}.
+     * @param userCallback is the callback to call when the upload is completed. Cannot be {@code null}.
+     * @param userCallbackContext is the context for the callback. Can be any value.
+     * @throws IllegalArgumentException if one of the parameters is not valid.
+     */
+    FileUploadTask(String blobName, Path path, BlockUploadOptions blockUploadOptions, HttpsTransportManager httpsTransportManager,
+                   IotHubEventCallback userCallback, Object userCallbackContext) throws IllegalArgumentException
+    {
+        /* Codes_SRS_FILEUPLOADTASK_34_036: [If the `blobName` is null or empty, or the `path`, the `httpsTransportManager`, or the `userCallback` is null, the constructor shall throw IllegalArgumentException.] */
+        if ((blobName == null) || blobName.isEmpty() || (path == null) || (httpsTransportManager == null) || (userCallback == null))
+        {
+            throw new IllegalArgumentException("blobName cannot be null or empty, and path, httpsTransportManager, and userCallback cannot be null");
+        }
+
+        /* Codes_SRS_FILEUPLOADTASK_34_037: [The constructor shall store all the provided parameters, using the default `BlockUploadOptions` if the provided ones are null.] */
+        this.blobName = blobName;
+        this.path = path;
+        this.blockUploadOptions = (blockUploadOptions == null) ? new BlockUploadOptions() : blockUploadOptions;
+        this.userCallback = userCallback;
+        this.userCallbackContext = userCallbackContext;
+        this.httpsTransportManager = httpsTransportManager;
 
         logger = new CustomLogger(this.getClass());
         logger.LogInfo("HttpsFileUpload object is created successfully, method name is %s ", logger.getMethodName());
@@ -154,8 +212,21 @@ public final class FileUploadTask implements Runnable
             {
             /* Codes_SRS_FILEUPLOADTASK_21_019: [The run shall create a `CloudBlockBlob` using the `blobUri`.] */
                 CloudBlockBlob blob = new CloudBlockBlob(blobURI);
+                if (path != null)
+                {
+            /* Codes_SRS_FILEUPLOADTASK_34_038: [If the task was created with a `path`, the run shall upload the file to the created `CloudBlockBlob` block by block, using a `BlockUploader` with the `blockUploadOptions`.] */
+                    new BlockUploader(blockUploadOptions).upload(blob, blobName, path);
+                }
+                else if (blockUploadOptions == null)
+                {
             /* Codes_SRS_FILEUPLOADTASK_21_020: [The run shall upload the `inputStream` with the `streamLength` to the created `CloudBlockBlob`.] */
-                blob.upload(inputStream, streamLength);
+                    blob.upload(inputStream, streamLength);
+                }
+                else
+                {
+            /* Codes_SRS_FILEUPLOADTASK_34_035: [If the `blockUploadOptions` is not null, the run shall upload the `inputStream` to the created `CloudBlockBlob` block by block, using a `BlockUploader` with these options.] */
+                    new BlockUploader(blockUploadOptions).upload(blob, blobName, inputStream, streamLength);
+                }
             /* Codes_SRS_FILEUPLOADTASK_21_021: [If the upload to blob succeed, the run shall create a notification the IoT Hub with `isSuccess` equals true, `statusCode` equals 0.] */
                 fileUploadStatusParser = new FileUploadStatusParser(correlationId, true, 0, "Succeed to upload to storage.");
                 resultStatus = IotHubStatusCode.OK;
@@ -0,0 +1,88 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+
+/**
+ * Sends queued messages and invokes callbacks on completed requests as soon as the transport signals that there is
+ * work to do. Unlike {@link IotHubSendTask}, this task is meant to be submitted once to an executor; it keeps running
+ * until {@link #stop()} is called or its thread is interrupted, and it sleeps while the transport is idle.
+ */
+public final class IotHubEventDrivenSendTask implements Runnable
+{
+    private static final String THREAD_NAME = "azure-iot-sdk-IotHubEventDrivenSendTask";
+
+    // Upper bound on how long the task sleeps without a signal before it checks the transport queues again
+    private static final long IDLE_WAIT_MILLISECONDS = 1000;
+
+    private final IotHubTransport transport;
+    private volatile boolean stopped;
+
+    /**
+     * Private logger for class
+     */
+    private final CustomLogger logger = new CustomLogger(this.getClass());
+
+    public IotHubEventDrivenSendTask(IotHubTransport transport)
+    {
+        if (transport == null)
+        {
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_001: [If the provided transport is null, the constructor shall throw an IllegalArgumentException.]
+            logger.LogError("IotHubEventDrivenSendTask constructor called with null value for parameter transport");
+            throw new IllegalArgumentException("Parameter 'transport' must not be null");
+        }
+
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_002: [The constructor shall save the transport.]
+        this.transport = transport;
+    }
+
+    public void run()
+    {
+        Thread.currentThread().setName(THREAD_NAME);
+
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_003: [The function shall keep running until stop is called or the thread is interrupted.]
+        while (!this.stopped && !Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_004: [The function shall wait for the transport to signal that there is work to do.]
+                this.transport.waitForSendWork(IDLE_WAIT_MILLISECONDS);
+
+                if (this.stopped)
+                {
+                    break;
+                }
+
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_005: [The function shall drain the messages on the transport queue.]
+                this.transport.drainMessages();
+
+                // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_006: [The function shall invoke all callbacks on the transport's callback queue.]
+                this.transport.invokeCallbacks();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_007: [The function shall not crash because of any error or exception thrown by the transport.]
+            catch (Throwable e)
+            {
+                logger.LogError(e.toString() + ": " + e.getMessage());
+                logger.LogDebug("Exception on sending queued messages to IoT Hub", e);
+            }
+        }
+
+        logger.LogTrace("Event driven send task has stopped");
+    }
+
+    /**
+     * Stops this task. The task finishes its current iteration and then returns from {@link #run()}.
+     */
+    public void stop()
+    {
+        // Codes_SRS_IOTHUBEVENTDRIVENSENDTASK_34_008: [The function shall mark this task as stopped and wake it up.]
+        this.stopped = true;
+        this.transport.signalSendWork();
+    }
+}
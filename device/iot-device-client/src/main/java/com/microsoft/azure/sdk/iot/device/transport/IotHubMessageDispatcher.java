@@ -0,0 +1,159 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs received message callbacks on a bounded set of threads. Tasks that share an ordering key, such as a device id,
+ * always run on the same thread and in the order they were dispatched, while tasks for different keys may run in
+ * parallel. A thread holds a bounded number of tasks; dispatching to a full thread blocks until it has room, which
+ * stops the flow of received messages instead of reordering them.
+ */
+public final class IotHubMessageDispatcher
+{
+    private static final String THREAD_NAME_PREFIX = "azure-iot-sdk-IotHubMessageDispatcher-";
+
+    private final ThreadPoolExecutor[] lanes;
+
+    // Room left on each thread, for its running task and the tasks waiting for it
+    private final Semaphore[] laneCapacities;
+
+    /**
+     * Constructor
+     * @param parallelism the number of threads that can run callbacks at the same time
+     * @param queueCapacity the maximum number of tasks that can wait for each thread
+     * @throws IllegalArgumentException if parallelism or queueCapacity are less than 1
+     */
+    public IotHubMessageDispatcher(int parallelism, int queueCapacity) throws IllegalArgumentException
+    {
+        if (parallelism < 1)
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_001: [If the provided parallelism is less than 1, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+
+        if (queueCapacity < 1)
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_002: [If the provided queue capacity is less than 1, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_003: [This function shall create one single threaded executor with a bounded queue per degree of parallelism.]
+        this.lanes = new ThreadPoolExecutor[parallelism];
+        this.laneCapacities = new Semaphore[parallelism];
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        for (int i = 0; i < parallelism; i++)
+        {
+            this.lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory);
+            this.laneCapacities[i] = new Semaphore(queueCapacity + 1);
+        }
+    }
+
+    /**
+     * Queues a task behind all previously dispatched tasks with the same ordering key. If the thread for that key
+     * already holds as many tasks as it can, this function blocks until one of them completes.
+     * @param orderingKey the key whose tasks must run in order. May be null.
+     * @param task the task to run
+     * @return true if the task was queued, false if this dispatcher is closed or the calling thread was interrupted
+     * while waiting for room
+     */
+    public boolean dispatch(String orderingKey, final Runnable task)
+    {
+        if (task == null)
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_004: [If the provided task is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("task cannot be null");
+        }
+
+        // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_005: [This function shall queue the task on the executor chosen by the hash of the ordering key.]
+        int hash = orderingKey == null ? 0 : orderingKey.hashCode();
+        int index = (hash & Integer.MAX_VALUE) % this.lanes.length;
+        ThreadPoolExecutor lane = this.lanes[index];
+        final Semaphore laneCapacity = this.laneCapacities[index];
+
+        if (lane.isShutdown())
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_006: [If the dispatcher is closed, or if the calling thread is interrupted while waiting for room, this function shall return false.]
+            return false;
+        }
+
+        try
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_008: [If the chosen executor holds as many tasks as its queue capacity plus the running one, this function shall block until one of them completes.]
+            laneCapacity.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_006: [If the dispatcher is closed, or if the calling thread is interrupted while waiting for room, this function shall return false.]
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try
+        {
+            lane.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    finally
+                    {
+                        laneCapacity.release();
+                    }
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_006: [If the dispatcher is closed, or if the calling thread is interrupted while waiting for room, this function shall return false.]
+            laneCapacity.release();
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to run across all threads
+     */
+    public int getQueuedTaskCount()
+    {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : this.lanes)
+        {
+            queued += lane.getQueue().size();
+        }
+
+        return queued;
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that were already queued still run.
+     */
+    public void close()
+    {
+        // Codes_SRS_IOTHUBMESSAGEDISPATCHER_34_007: [This function shall shut down every executor.]
+        for (ThreadPoolExecutor lane : this.lanes)
+        {
+            lane.shutdown();
+        }
+    }
+}
@@ -12,14 +12,23 @@ import com.microsoft.azure.sdk.iot.device.exceptions.*;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpConnectionThrottledException;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpUnauthorizedAccessException;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.exceptions.MqttUnauthorizedException;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.io.IOException;
 import java.util.concurrent.*;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -31,6 +40,9 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
 public class IotHubTransport implements IotHubListener
 {
     private static final int MAX_MESSAGES_TO_SEND_PER_THREAD = 10;
+    private static final int MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN = 1000;
+    private static final int MAX_DISPATCHED_MESSAGES_PER_THREAD = 1000;
+    private static final long FAILED_PERSISTED_MESSAGE_RESEND_DELAY_MILLIS = 60 * 1000;
     private IotHubConnectionStatus connectionStatus;
     private IotHubTransportConnection iotHubTransportConnection;
 
@@ -46,6 +58,12 @@ public class IotHubTransport implements IotHubListener
     /* Messages whose callbacks that are waiting to be invoked. */
     private final Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
 
+    /* Runs received message callbacks as soon as messages arrive, when event driven receive is enabled. */
+    private IotHubMessageDispatcher messageDispatcher;
+
+    /* Time between a message arriving on the connection and its message callback being invoked. */
+    private final LatencyHistogram receiveLatencyHistogram = new LatencyHistogram();
+
     /*Connection Status callback information (deprecated)*/
     private IotHubConnectionStateCallback stateCallback;
     private Object stateCallbackContext;
@@ -57,6 +75,10 @@ public class IotHubTransport implements IotHubListener
     //Lock on reading and writing on the inProgressPackets map
     final private Object inProgressMessagesLock = new Object();
 
+    //Lock used to wake up the event driven send task when there is work for it to do
+    final private Object sendSignalLock = new Object();
+    private boolean sendSignalled;
+
     private DeviceClientConfig defaultConfig;
     private Queue<DeviceClientConfig> deviceClientConfigs;
 
@@ -64,6 +86,27 @@ public class IotHubTransport implements IotHubListener
     private long reconnectionAttemptStartTimeMillis;
     private ScheduledExecutorService taskScheduler;
 
+    /* Admits the reconnection attempts of all the clients sharing it, when configured. */
+    private ReconnectionCoordinator reconnectionCoordinator;
+
+    /* Keeps the telemetry on disk until IoT Hub accepts it, when configured. */
+    private PersistentMessageQueue persistentQueue;
+
+    /* Record ids of the persisted packets held in memory, which make the in memory window. */
+    private final Map<IotHubTransportPacket, Long> persistedPackets = new IdentityHashMap<>();
+
+    /* Callbacks of the persisted messages left on disk by this session, by record id, until they are read back. */
+    private final Map<Long, PersistedMessageCallback> persistedMessageCallbacks = new HashMap<>();
+
+    /* Record ids of the persisted messages that failed in this session and were released to be sent again. */
+    private final Set<Long> releasedPersistedRecordIds = new HashSet<>();
+
+    /* Flushes the persistent queue once per sync interval, in its PERIODIC sync mode. */
+    private ScheduledFuture<?> persistentQueueSyncTask;
+
+    //Lock on the persistent queue and its in memory window
+    final private Object persistentQueueLock = new Object();
+
     private final CustomLogger logger;
 
     final private Object reconnectionLock = new Object();
@@ -151,6 +194,10 @@ public class IotHubTransport implements IotHubListener
             logger.LogError("Message with message id %s was delivered to IoTHub, was no longer in progress, " +
                     "method name is %s ", message.getMessageId(), logger.getMethodName());
         }
+
+        //Codes_SRS_IOTHUBTRANSPORT_34_084: [This function shall signal the event driven send task so that it invokes
+        // the queued callbacks and resumes sending if it was stopped by the in flight limit.]
+        this.signalSendWork();
     }
 
     @Override
@@ -171,7 +218,22 @@ public class IotHubTransport implements IotHubListener
             // exception, this function shall add that message to the receivedMessagesQueue.]
             logger.LogInfo("Message with hashcode %s is received from IotHub on %s, method name is onMessageReceived",
                     message.hashCode(), new Date());
-            this.receivedMessagesQueue.add(message);
+            message.setReceivedTimeNanos(System.nanoTime());
+
+            //Codes_SRS_IOTHUBTRANSPORT_34_085: [If event driven receive is enabled, this function shall dispatch the
+            // message to the message dispatcher, keyed by the message's connection device id, instead of queueing it.]
+            IotHubMessageDispatcher dispatcher = this.messageDispatcher;
+            if (dispatcher == null)
+            {
+                this.receivedMessagesQueue.add(message);
+            }
+            else if (!dispatcher.dispatch(message.getConnectionDeviceId(), new ReceivedMessageRunnable(message)))
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_116: [If the dispatcher is closed, this function shall leave the message
+                // unacknowledged, so that the service delivers it again, rather than queue it out of order.]
+                this.logger.LogInfo("Message with hashcode %s was left unacknowledged as the message dispatcher is closed, method name is %s ",
+                        message.hashCode(), this.logger.getMethodName());
+            }
         }
         else if (e != null)
         {
@@ -277,12 +339,154 @@ public class IotHubTransport implements IotHubListener
 
         this.deviceClientConfigs = new LinkedBlockingQueue<>(deviceClientConfigs);
         this.defaultConfig = this.deviceClientConfigs.peek();
-        this.taskScheduler = Executors.newScheduledThreadPool(1);
+        //Codes_SRS_IOTHUBTRANSPORT_34_099: [If the default config has a client thread pool, this function shall
+        // schedule retries and reconnections on schedulers from that pool.]
+        this.taskScheduler = this.newScheduler(1);
+
+        if (this.reconnectionCoordinator == null && this.defaultConfig.getReconnectionCoordinator() != null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_106: [If the default config has a reconnection coordinator, this function
+            // shall register with it.]
+            this.reconnectionCoordinator = this.defaultConfig.getReconnectionCoordinator();
+            this.reconnectionCoordinator.register();
+        }
+
+        PersistentQueueOptions persistentQueueOptions = this.defaultConfig.getPersistentQueueOptions();
+        if (persistentQueueOptions != null && this.persistentQueue == null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_110: [If the default config has persistent queue options, this function
+            // shall open the persistent queue and queue the messages it kept, up to the in memory window size.]
+            try
+            {
+                PersistentMessageQueue persistentQueue = new PersistentMessageQueue(persistentQueueOptions);
+                synchronized (this.persistentQueueLock)
+                {
+                    this.persistentQueue = persistentQueue;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new TransportException("Could not open the persistent message queue", e);
+            }
+
+            if (persistentQueueOptions.getSyncMode() == PersistentQueueOptions.SyncMode.PERIODIC)
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_120: [If the persistent queue uses the PERIODIC sync mode, this function
+                // shall flush it on the task scheduler once per sync interval.]
+                this.persistentQueueSyncTask = this.taskScheduler.scheduleWithFixedDelay(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        syncPersistentQueue();
+                    }
+                }, persistentQueueOptions.getSyncIntervalMillis(), persistentQueueOptions.getSyncIntervalMillis(), MILLISECONDS);
+            }
+
+            this.fillPersistedMessagesWindow();
+        }
+
+        if (this.defaultConfig.isEventDrivenReceive() && this.messageDispatcher == null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_086: [If the default config enables event driven receive, this function
+            // shall create a message dispatcher with the configured callback parallelism.]
+            this.messageDispatcher = new IotHubMessageDispatcher(this.defaultConfig.getReceiveCallbackParallelism(), MAX_DISPATCHED_MESSAGES_PER_THREAD);
+        }
 
         //Codes_SRS_IOTHUBTRANSPORT_34_019: [This function shall open the invoke the method openConnection.]
         openConnection();
     }
 
+    /**
+     * Adds a device to the multiplexed connection opened by this transport. If the connection is open, the device is
+     * added to it without reconnecting. Either way, the device is opened again by every later reconnection.
+     *
+     * @param config the config of the device to add
+     * @throws IllegalArgumentException if the config is null
+     * @throws IllegalStateException if this transport has not been opened yet
+     * @throws UnsupportedOperationException if the protocol does not support multiplexing
+     * @throws TransportException if the device could not be added to the open connection
+     */
+    public void addDeviceClientConfig(DeviceClientConfig config) throws TransportException
+    {
+        if (config == null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_090: [If the provided config is null, this function shall throw an
+            // IllegalArgumentException.]
+            throw new IllegalArgumentException("config cannot be null");
+        }
+
+        if (this.deviceClientConfigs == null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_091: [If this transport has not been opened, this function shall throw an
+            // IllegalStateException.]
+            throw new IllegalStateException("Devices can only be added to a transport that has been opened");
+        }
+
+        if (this.defaultConfig.getProtocol() != IotHubClientProtocol.AMQPS && this.defaultConfig.getProtocol() != IotHubClientProtocol.AMQPS_WS)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_092: [If the protocol of the default config is not AMQPS or AMQPS_WS, this
+            // function shall throw an UnsupportedOperationException.]
+            throw new UnsupportedOperationException("Multiplexing is only supported for AMQPS and AMQPS_WS");
+        }
+
+        //Codes_SRS_IOTHUBTRANSPORT_34_093: [This function shall save the config so that reconnections open the
+        // device as well.]
+        this.deviceClientConfigs.add(config);
+
+        if (this.connectionStatus == IotHubConnectionStatus.CONNECTED && this.iotHubTransportConnection instanceof AmqpsIotHubConnection)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_094: [If the connection is open, this function shall add the device to it.]
+            ((AmqpsIotHubConnection) this.iotHubTransportConnection).addDeviceOperationSession(config);
+        }
+    }
+
+    /**
+     * Removes a device from the multiplexed connection opened by this transport. The connection and the other
+     * devices on it stay open.
+     *
+     * @param deviceId the id of the device to remove
+     * @return true if the device was on this transport, false otherwise
+     * @throws IllegalArgumentException if the device is the one the connection was opened for
+     */
+    public boolean removeDeviceClientConfig(String deviceId) throws IllegalArgumentException
+    {
+        if (this.deviceClientConfigs == null || deviceId == null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_095: [If this transport has not been opened or the device id is null, this
+            // function shall return false.]
+            return false;
+        }
+
+        if (deviceId.equals(this.defaultConfig.getDeviceId()))
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_096: [If the device id is the one of the default config, this function shall
+            // throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("The device that opened the connection cannot be removed from it");
+        }
+
+        boolean removed = false;
+        for (DeviceClientConfig config : this.deviceClientConfigs)
+        {
+            if (deviceId.equals(config.getDeviceId()))
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_097: [This function shall remove the config with the given device id
+                // from the saved configs.]
+                removed = this.deviceClientConfigs.remove(config);
+                break;
+            }
+        }
+
+        if (removed && this.iotHubTransportConnection instanceof AmqpsIotHubConnection)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_098: [If the config was removed, this function shall remove the device
+            // from the connection.]
+            ((AmqpsIotHubConnection) this.iotHubTransportConnection).removeDeviceOperationSession(deviceId);
+        }
+
+        return removed;
+    }
+
     /**
      * Closes all resources used to communicate with an IoT Hub. Once {@code close()} is
      * called, the transport is no longer usable. If the transport is already
@@ -302,11 +506,42 @@ public class IotHubTransport implements IotHubListener
             throw new IllegalArgumentException("reason cannot be null");
         }
 
+        // detach the persistent queue first, so the cancelled packets stay on disk for the next open
+        PersistentMessageQueue persistentQueue;
+        List<PersistedMessageCallback> callbacksOfMessagesOnDisk;
+        synchronized (this.persistentQueueLock)
+        {
+            persistentQueue = this.persistentQueue;
+            this.persistentQueue = null;
+            this.persistedPackets.clear();
+            this.releasedPersistedRecordIds.clear();
+            callbacksOfMessagesOnDisk = new ArrayList<>(this.persistedMessageCallbacks.values());
+            this.persistedMessageCallbacks.clear();
+        }
+
+        if (this.persistentQueueSyncTask != null)
+        {
+            this.persistentQueueSyncTask.cancel(false);
+            this.persistentQueueSyncTask = null;
+        }
+
         this.cancelPendingPackets();
 
         //Codes_SRS_IOTHUBTRANSPORT_34_023: [This function shall invoke all callbacks.]
         this.invokeCallbacks();
 
+        if (persistentQueue != null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_113: [This function shall close the persistent queue, if any, which keeps
+            // the messages that were not acknowledged, and invoke the callbacks of the messages left on disk with
+            // MESSAGE_CANCELLED_ONCLOSE.]
+            persistentQueue.close();
+            for (PersistedMessageCallback persistedMessageCallback : callbacksOfMessagesOnDisk)
+            {
+                persistedMessageCallback.callback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, persistedMessageCallback.context);
+            }
+        }
+
         if (this.taskScheduler != null)
         {
             this.taskScheduler.shutdown();
@@ -318,12 +553,39 @@ public class IotHubTransport implements IotHubListener
             this.scheduledExecutorService = null;
         }
 
+        if (this.messageDispatcher != null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_087: [This function shall close the message dispatcher, if any.]
+            this.messageDispatcher.close();
+            this.messageDispatcher = null;
+        }
+
+        if (this.reconnectionCoordinator != null)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_107: [This function shall unregister from the reconnection coordinator, if any.]
+            this.reconnectionCoordinator.unregister();
+            this.reconnectionCoordinator = null;
+        }
+
         //Codes_SRS_IOTHUBTRANSPORT_34_024: [This function shall close the connection.]
         if (this.iotHubTransportConnection != null)
         {
             this.iotHubTransportConnection.close();
         }
 
+        if (this.deviceClientConfigs != null)
+        {
+            for (DeviceClientConfig config : this.deviceClientConfigs)
+            {
+                if (config.getAuthenticationType() == DeviceClientConfig.AuthType.SAS_TOKEN && config.getSasTokenAuthentication() != null)
+                {
+                    //Codes_SRS_IOTHUBTRANSPORT_34_122: [This function shall close the sas token authentication provider
+                    // of each device, which drops the signer holding its decoded device key.]
+                    config.getSasTokenAuthentication().close();
+                }
+            }
+        }
+
         //Codes_SRS_IOTHUBTRANSPORT_34_025: [This function shall invoke updateStatus with status DISCONNECTED and the
         // supplied reason and cause.]
         this.updateStatus(IotHubConnectionStatus.DISCONNECTED, reason, cause);
@@ -350,7 +612,16 @@ public class IotHubTransport implements IotHubListener
         //Codes_SRS_IOTHUBTRANSPORT_34_042: [This function shall build a transport packet from the provided message,
         // callback, and context and then add that packet to the waiting queue.]
         IotHubTransportPacket packet = new IotHubTransportPacket(message, callback, callbackContext, null, System.currentTimeMillis());
+        if (!this.persistPacket(packet))
+        {
+            // left on disk until the in memory window has room for it
+            return;
+        }
+
         this.waitingPacketsQueue.add(packet);
+
+        //Codes_SRS_IOTHUBTRANSPORT_34_080: [This function shall signal the event driven send task that there is work to do.]
+        this.signalSendWork();
     }
 
     /**
@@ -367,25 +638,279 @@ public class IotHubTransport implements IotHubListener
             return;
         }
 
+        if (this.isHttpsBatchSend())
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_100: [If HTTPS batch send is enabled, this function shall send at most one
+            // batch, and only once the waiting packets fill a batch or the oldest of them has waited for the linger time.]
+            if (this.isHttpsBatchReady())
+            {
+                this.sendNextHttpsBatch();
+            }
+            return;
+        }
+
         int timeSlice = MAX_MESSAGES_TO_SEND_PER_THREAD;
 
         while (this.connectionStatus == IotHubConnectionStatus.CONNECTED && timeSlice-- > 0)
         {
-            IotHubTransportPacket packet = waitingPacketsQueue.poll();
-            if (packet != null)
+            //Codes_SRS_IOTHUBTRANSPORT_34_044: [This function continue to dequeue packets saved in the waiting
+            // queue and send them until connection status isn't CONNECTED or until 10 messages have been sent]
+            this.sendNextWaitingPacket();
+        }
+    }
+
+    /**
+     * Sends messages from the transport queue until the queue is empty, the connection is no longer CONNECTED, or
+     * the number of messages awaiting an acknowledgement from the service reaches the in flight limit. Used by the
+     * event driven send task in place of the fixed time slice of {@link #sendMessages()}.
+     */
+    public void drainMessages()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_34_081: [This function shall dequeue packets saved in the waiting queue and send
+        // them until the queue is empty, the connection status isn't CONNECTED, or the in flight limit is reached.]
+        //Codes_SRS_IOTHUBTRANSPORT_34_101: [If HTTPS batch send is enabled, this function shall send the waiting
+        // packets in batches, without waiting for the linger time.]
+        boolean httpsBatchSend = this.isHttpsBatchSend();
+        while (this.connectionStatus == IotHubConnectionStatus.CONNECTED
+                && this.getInProgressPacketCount() < MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN
+                && (httpsBatchSend ? this.sendNextHttpsBatch() : this.sendNextWaitingPacket()))
+        {
+            // keep draining the waiting queue
+        }
+    }
+
+    /**
+     * Blocks until there are messages to send or callbacks to invoke, or until the provided timeout elapses. Waiting
+     * messages only count as work while the connection is CONNECTED and below the in flight limit; otherwise this
+     * function waits for the signal of a status change or of an acknowledgement.
+     *
+     * @param timeoutMilliseconds the maximum time to wait for, in milliseconds.
+     * @return {@code true} if work was signalled, {@code false} if the timeout elapsed first.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public boolean waitForSendWork(long timeoutMilliseconds) throws InterruptedException
+    {
+        synchronized (this.sendSignalLock)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_082: [If there is already queued work, this function shall return true without waiting.]
+            long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+            long remaining = timeoutMilliseconds;
+            while (!this.sendSignalled && !this.hasSendWork() && remaining > 0)
             {
-                logger.LogInfo("Get the message from waiting message queue to be sent to IoT Hub, method name is %s ",
-                        logger.getMethodName());
-                Message message = packet.getMessage();
+                //Codes_SRS_IOTHUBTRANSPORT_34_083: [This function shall wait until signalled or until the timeout elapses.]
+                this.sendSignalLock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            boolean signalled = this.sendSignalled || this.hasSendWork();
+            this.sendSignalled = false;
+            return signalled;
+        }
+    }
+
+    /**
+     * Checks if the event driven send task has something to do right away: callbacks to invoke, or waiting messages
+     * it can send
+     * @return true if there is work for the event driven send task
+     */
+    private boolean hasSendWork()
+    {
+        if (!this.callbackPacketsQueue.isEmpty())
+        {
+            return true;
+        }
+
+        //Codes_SRS_IOTHUBTRANSPORT_34_115: [Waiting messages shall only count as queued work while the connection
+        // status is CONNECTED and the in flight limit is not reached.]
+        return this.connectionStatus == IotHubConnectionStatus.CONNECTED
+                && !this.waitingPacketsQueue.isEmpty()
+                && this.getInProgressPacketCount() < MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN;
+    }
+
+    /**
+     * @return the number of packets waiting for an acknowledgement from the service
+     */
+    private int getInProgressPacketCount()
+    {
+        synchronized (this.inProgressMessagesLock)
+        {
+            return this.inProgressPackets.size();
+        }
+    }
+
+    /**
+     * Wakes up the event driven send task, if any, so that it drains the waiting and callback queues.
+     */
+    public void signalSendWork()
+    {
+        synchronized (this.sendSignalLock)
+        {
+            this.sendSignalled = true;
+            this.sendSignalLock.notifyAll();
+        }
+    }
+
+    /**
+     * Dequeues a single packet from the waiting queue and sends it if it is still valid.
+     * @return true if a packet was dequeued, false if the waiting queue was empty
+     */
+    private boolean sendNextWaitingPacket()
+    {
+        IotHubTransportPacket packet = waitingPacketsQueue.poll();
+        if (packet == null)
+        {
+            return false;
+        }
+
+        logger.LogInfo("Get the message from waiting message queue to be sent to IoT Hub, method name is %s ",
+                logger.getMethodName());
+        Message message = packet.getMessage();
+
+        if (message != null && this.isMessageValid(packet))
+        {
+            sendPacket(packet);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if telemetry is sent over HTTPS in batches
+     */
+    private boolean isHttpsBatchSend()
+    {
+        return this.iotHubTransportConnection instanceof HttpsIotHubConnection && this.defaultConfig.isHttpsBatchSend();
+    }
 
-                if (message != null && this.isMessageValid(packet))
+    /**
+     * Checks if the waiting packets should be sent as a batch now: when the oldest of them has waited for the linger
+     * time, or when their messages are large enough to fill a batch.
+     * @return true if a batch should be sent now
+     */
+    private boolean isHttpsBatchReady()
+    {
+        IotHubTransportPacket oldestPacket = this.waitingPacketsQueue.peek();
+        if (oldestPacket == null)
+        {
+            return false;
+        }
+
+        if (System.currentTimeMillis() - oldestPacket.getStartTimeMillis() >= this.defaultConfig.getHttpsBatchLingerMillis())
+        {
+            return true;
+        }
+
+        // message bodies are base64 encoded in the batch, so this estimate never exceeds the actual size
+        long estimatedBatchSize = 0;
+        for (IotHubTransportPacket packet : this.waitingPacketsQueue)
+        {
+            Message message = packet.getMessage();
+            if (message != null)
+            {
+                estimatedBatchSize += (message.getBytes().length + 2) / 3 * 4;
+                if (estimatedBatchSize >= HttpsBatchMessage.SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Dequeues waiting packets into a single HTTPS batch, until the batch is full or the queue is empty, and sends it.
+     * The callback of each packet is completed when the listener is notified of the result of the batch.
+     * @return true if a packet was dequeued, false if the waiting queue was empty
+     */
+    private boolean sendNextHttpsBatch()
+    {
+        HttpsBatchMessage batchMessage = new HttpsBatchMessage();
+        List<IotHubTransportPacket> batchPackets = new ArrayList<>();
+        boolean dequeued = false;
+
+        IotHubTransportPacket packet = this.waitingPacketsQueue.peek();
+        while (packet != null && this.connectionStatus == IotHubConnectionStatus.CONNECTED)
+        {
+            Message message = packet.getMessage();
+            if (message != null && this.isMessageValid(packet))
+            {
+                if (message instanceof IotHubTransportMessage)
+                {
+                    // only telemetry goes in batches
+                    this.sendPacket(packet);
+                }
+                else
                 {
-                    //Codes_SRS_IOTHUBTRANSPORT_34_044: [This function continue to dequeue packets saved in the waiting
-                    // queue and send them until connection status isn't CONNECTED or until 10 messages have been sent]
-                    sendPacket(packet);
+                    try
+                    {
+                        //Codes_SRS_IOTHUBTRANSPORT_34_102: [This function shall add waiting packets to the batch until
+                        // the next one would exceed the batch size limit, which leaves it waiting for the next batch.]
+                        batchMessage.addMessage(HttpsSingleMessage.parseHttpsMessage(message));
+                        batchPackets.add(packet);
+                    }
+                    catch (IotHubSizeExceededException e)
+                    {
+                        if (!batchPackets.isEmpty())
+                        {
+                            break;
+                        }
+
+                        //Codes_SRS_IOTHUBTRANSPORT_34_103: [If a message is too large for a batch of its own, this
+                        // function shall send it by itself.]
+                        this.waitingPacketsQueue.poll();
+                        this.sendPacket(packet);
+                        return true;
+                    }
                 }
             }
+
+            this.waitingPacketsQueue.poll();
+            dequeued = true;
+            packet = this.waitingPacketsQueue.peek();
+        }
+
+        if (batchPackets.isEmpty())
+        {
+            return dequeued;
         }
+
+        List<Message> batchMessages = new ArrayList<>(batchPackets.size());
+        synchronized (this.inProgressMessagesLock)
+        {
+            for (IotHubTransportPacket batchPacket : batchPackets)
+            {
+                this.inProgressPackets.put(batchPacket.getMessage().getMessageId(), batchPacket);
+                batchMessages.add(batchPacket.getMessage());
+            }
+        }
+
+        try
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_104: [This function shall send the batch over the HTTPS connection, which
+            // notifies this object of the result for each message of the batch.]
+            ((HttpsIotHubConnection) this.iotHubTransportConnection).sendBatchMessage(batchMessage, batchMessages);
+        }
+        catch (TransportException transportException)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_105: [If an exception is encountered while sending the batch, this function
+            // shall invoke handleMessageException with each packet of the batch.]
+            for (IotHubTransportPacket batchPacket : batchPackets)
+            {
+                IotHubTransportPacket outboundPacket;
+                synchronized (this.inProgressMessagesLock)
+                {
+                    outboundPacket = this.inProgressPackets.remove(batchPacket.getMessage().getMessageId());
+                }
+
+                if (outboundPacket != null)
+                {
+                    this.handleMessageException(outboundPacket, transportException);
+                }
+            }
+        }
+
+        return true;
     }
 
     /**
@@ -460,6 +985,66 @@ public class IotHubTransport implements IotHubListener
         }
     }
 
+    /**
+     * Getter for the histogram of the time between a message arriving on the connection and its message callback
+     * being invoked.
+     *
+     * @return the receive latency histogram.
+     */
+    public LatencyHistogram getReceiveLatencyHistogram()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_34_088: [This function shall return the saved receive latency histogram.]
+        return this.receiveLatencyHistogram;
+    }
+
+    /**
+     * Getter for the number of messages encoded by the AMQP connection.
+     *
+     * @return the number of messages encoded, or 0 if the transport does not use AMQP or has never been opened.
+     */
+    public long getMessageEncodeCount()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_34_117: [If the connection is an AMQP connection, this function shall return the number of messages it encoded. Otherwise, this function shall return 0.]
+        if (this.iotHubTransportConnection instanceof AmqpsIotHubConnection)
+        {
+            return ((AmqpsIotHubConnection) this.iotHubTransportConnection).getMessageEncodeCount();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Getter for the number of buffers allocated by the AMQP connection to encode messages.
+     *
+     * @return the number of buffers allocated, or 0 if the transport does not use AMQP or has never been opened.
+     */
+    public long getEncodeBufferAllocationCount()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_34_118: [If the connection is an AMQP connection, this function shall return the number of buffers it allocated to encode messages. Otherwise, this function shall return 0.]
+        if (this.iotHubTransportConnection instanceof AmqpsIotHubConnection)
+        {
+            return ((AmqpsIotHubConnection) this.iotHubTransportConnection).getEncodeBufferAllocationCount();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Getter for the number of bytes allocated by the AMQP connection to encode messages.
+     *
+     * @return the number of bytes allocated, or 0 if the transport does not use AMQP or has never been opened.
+     */
+    public long getEncodeBufferAllocatedBytes()
+    {
+        //Codes_SRS_IOTHUBTRANSPORT_34_119: [If the connection is an AMQP connection, this function shall return the number of bytes it allocated to encode messages. Otherwise, this function shall return 0.]
+        if (this.iotHubTransportConnection instanceof AmqpsIotHubConnection)
+        {
+            return ((AmqpsIotHubConnection) this.iotHubTransportConnection).getEncodeBufferAllocatedBytes();
+        }
+
+        return 0;
+    }
+
     /**
      * Registers a callback to be executed whenever the connection to the IoT Hub is lost or established.
      *
@@ -537,29 +1122,45 @@ public class IotHubTransport implements IotHubListener
      * @throws TransportException if any exception is encountered while sending the acknowledgement
      */
     private void acknowledgeReceivedMessage(IotHubTransportMessage receivedMessage) throws TransportException
+    {
+        try
+        {
+            this.executeMessageCallbackAndAcknowledge(receivedMessage);
+        }
+        catch (TransportException e)
+        {
+            //Codes_SRS_IOTHUBTRANSPORT_34_055: [If an exception is thrown while acknowledging the received message,
+            // this function shall add the received message back into the receivedMessagesQueue and then rethrow the exception.]
+            this.receivedMessagesQueue.add(receivedMessage);
+            throw e;
+        }
+    }
+
+    /**
+     * If the provided received message has a saved callback, this function shall execute that callback and send the ack
+     * to the service
+     * @param receivedMessage the message to acknowledge
+     * @throws TransportException if any exception is encountered while sending the acknowledgement
+     */
+    private void executeMessageCallbackAndAcknowledge(IotHubTransportMessage receivedMessage) throws TransportException
     {
         MessageCallback messageCallback = receivedMessage.getMessageCallback();
         Object messageCallbackContext = receivedMessage.getMessageCallbackContext();
 
         if (messageCallback != null)
         {
+            if (receivedMessage.getReceivedTimeNanos() != 0)
+            {
+                this.receiveLatencyHistogram.record(NANOSECONDS.toMillis(System.nanoTime() - receivedMessage.getReceivedTimeNanos()));
+            }
+
             //Codes_SRS_IOTHUBTRANSPORT_34_053: [This function shall execute the callback associate with the provided
             // transport message with the provided message and its saved callback context.]
             IotHubMessageResult result = messageCallback.execute(receivedMessage, messageCallbackContext);
 
-            try
-            {
-                //Codes_SRS_IOTHUBTRANSPORT_34_054: [This function shall send the message callback result along the
-                // connection as the ack to the service.]
-                this.iotHubTransportConnection.sendMessageResult(receivedMessage, result);
-            }
-            catch (TransportException e)
-            {
-                //Codes_SRS_IOTHUBTRANSPORT_34_055: [If an exception is thrown while acknowledging the received message,
-                // this function shall add the received message back into the receivedMessagesQueue and then rethrow the exception.]
-                this.receivedMessagesQueue.add(receivedMessage);
-                throw e;
-            }
+            //Codes_SRS_IOTHUBTRANSPORT_34_054: [This function shall send the message callback result along the
+            // connection as the ack to the service.]
+            this.iotHubTransportConnection.sendMessageResult(receivedMessage, result);
         }
     }
 
@@ -616,13 +1217,34 @@ public class IotHubTransport implements IotHubListener
         return IotHubConnectionStatusChangeReason.COMMUNICATION_ERROR;
     }
 
+    /**
+     * Creates a scheduler on the client thread pool of the default config if it has one, or with its own threads
+     * otherwise
+     * @param threadCount the number of threads of the scheduler when there is no client thread pool
+     * @return the new scheduler
+     */
+    private ScheduledExecutorService newScheduler(int threadCount)
+    {
+        ClientThreadPool clientThreadPool = this.defaultConfig.getClientThreadPool();
+        if (clientThreadPool != null)
+        {
+            return clientThreadPool.newScheduler();
+        }
+
+        return Executors.newScheduledThreadPool(threadCount);
+    }
+
     /**
      * Creates a new iotHubTransportConnection instance, sets this object as its listener, and opens that connection
      * @throws TransportException
      */
     private void openConnection() throws TransportException
     {
-        scheduledExecutorService = Executors.newScheduledThreadPool(POOL_SIZE);
+        if (this.scheduledExecutorService == null)
+        {
+            // reconnections reuse the scheduler they run on instead of leaking a new one on every attempt
+            this.scheduledExecutorService = this.newScheduler(POOL_SIZE);
+        }
 
         if (this.iotHubTransportConnection == null)
         {
@@ -725,7 +1347,7 @@ public class IotHubTransport implements IotHubListener
 
             hasReconnectOperationTimedOut = this.hasOperationTimedOut(this.reconnectionAttemptStartTimeMillis);
 
-            transportException = singleReconnectAttempt();
+            transportException = coordinatedReconnectAttempt();
         }
 
         // reconnection may have failed, so check last retry decision, check for timeout, and check if last exception
@@ -761,6 +1383,55 @@ public class IotHubTransport implements IotHubListener
         }
     }
 
+    /**
+     * Attempts to reconnect once, after being admitted by the reconnection coordinator if there is one. Clients sharing
+     * a coordinator wait for their turn here, so a connection loss of the whole process does not start all of their
+     * handshakes at once.
+     * @return the exception encountered during reconnection, or null if reconnection succeeded
+     */
+    private TransportException coordinatedReconnectAttempt()
+    {
+        if (this.reconnectionCoordinator == null)
+        {
+            return singleReconnectAttempt();
+        }
+
+        //Codes_SRS_IOTHUBTRANSPORT_34_108: [If there is a reconnection coordinator, this function shall wait for it
+        // to admit the attempt, with priority if messages are waiting to be sent, and release the attempt once it is
+        // done.]
+        ReconnectionCoordinator.Handshake handshake = this.reconnectionCoordinator.enqueue(!this.waitingPacketsQueue.isEmpty());
+        try
+        {
+            // The coordinator wakes this thread when the attempt is admitted, and checks for the next token on the
+            // task scheduler, so the wait does not poll
+            final CountDownLatch admission = new CountDownLatch(1);
+            handshake.whenAdmitted(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    admission.countDown();
+                }
+            }, this.taskScheduler);
+
+            long remainingMillis = this.defaultConfig.getOperationTimeout() - (System.currentTimeMillis() - this.reconnectionAttemptStartTimeMillis);
+            if (!awaitUninterruptibly(admission, remainingMillis))
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_109: [If the attempt is not admitted before the reconnection times out,
+                // this function shall return a retryable TransportException without reconnecting.]
+                TransportException transportException = new TransportException("Reconnection was not admitted before the operation timed out");
+                transportException.setRetryable(true);
+                return transportException;
+            }
+
+            return singleReconnectAttempt();
+        }
+        finally
+        {
+            handshake.close();
+        }
+    }
+
     /**
      * Attempts to close and then re-open the iotHubTransportConnection once
      * @return the exception encountered during closing or opening, or null if reconnection succeeded
@@ -784,6 +1455,50 @@ public class IotHubTransport implements IotHubListener
         return null;
     }
 
+    /**
+     * Task for invoking the message callback of a received message and acknowledging it. Used for event driven receive
+     */
+    private class ReceivedMessageRunnable implements Runnable
+    {
+        final IotHubTransportMessage receivedMessage;
+
+        ReceivedMessageRunnable(IotHubTransportMessage receivedMessage)
+        {
+            this.receivedMessage = receivedMessage;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_089: [The dispatched task shall acknowledge the received message. If
+                // that fails, the message is left unacknowledged so that the service delivers it again, in order.]
+                executeMessageCallbackAndAcknowledge(this.receivedMessage);
+            }
+            catch (Throwable e)
+            {
+                logger.LogError("Exception encountered while dispatching a received message, method name is %s", logger.getMethodName());
+                logger.LogError(e);
+            }
+        }
+    }
+
+    /**
+     * Callback of a persisted message left on disk
+     */
+    private static final class PersistedMessageCallback
+    {
+        final IotHubEventCallback callback;
+        final Object context;
+
+        PersistedMessageCallback(IotHubEventCallback callback, Object context)
+        {
+            this.callback = callback;
+            this.context = context;
+        }
+    }
+
     /**
      * Task for adding a packet back to the waiting queue. Used for delaying message retry
      */
@@ -802,6 +1517,7 @@ public class IotHubTransport implements IotHubListener
         public void run()
         {
             this.waitingPacketsQueue.add(this.transportPacket);
+            signalSendWork();
         }
     }
 
@@ -968,6 +1684,9 @@ public class IotHubTransport implements IotHubListener
                 //Codes_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
                 this.currentReconnectionAttempt = 0;
                 this.reconnectionAttemptStartTimeMillis = 0;
+
+                // packets may have been buffered while disconnected
+                this.signalSendWork();
             }
         }
     }
@@ -1044,6 +1763,8 @@ public class IotHubTransport implements IotHubListener
      */
     private void addToCallbackQueue(IotHubTransportPacket packet)
     {
+        this.releasePersistedPacket(packet);
+
         //Codes_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
         if (packet.getCallback() != null)
         {
@@ -1051,6 +1772,243 @@ public class IotHubTransport implements IotHubListener
         }
     }
 
+    /**
+     * Appends the message of the provided packet to the persistent queue, if there is one and the message is
+     * telemetry. The packet stays in memory if the in memory window has room for it and no older message waits on
+     * disk; otherwise the message is left on disk, with its callback, until the window reads it back.
+     * @param packet the packet to persist
+     * @return true if the packet shall be added to the waiting queue, false if it was left on disk
+     * @throws IllegalStateException if the message cannot be persisted, like when the disk quota is used
+     */
+    private boolean persistPacket(IotHubTransportPacket packet) throws IllegalStateException
+    {
+        if (packet.getMessage() instanceof IotHubTransportMessage)
+        {
+            // twin and method messages are not persisted
+            return true;
+        }
+
+        synchronized (this.persistentQueueLock)
+        {
+            if (this.persistentQueue == null)
+            {
+                return true;
+            }
+
+            //Codes_SRS_IOTHUBTRANSPORT_34_111: [If there is a persistent queue, this function shall append the
+            // telemetry message to it, and only add the packet to the waiting queue if the in memory window has room
+            // and no older message waits on disk.]
+            boolean inMemory = this.persistedPackets.size() < this.defaultConfig.getPersistentQueueOptions().getInMemoryWindowSize()
+                    && this.persistentQueue.getUnreadCount() == 0;
+
+            long recordId;
+            try
+            {
+                recordId = this.persistentQueue.append(packet.getMessage(), inMemory);
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException("Could not persist the message", e);
+            }
+
+            if (inMemory)
+            {
+                this.persistedPackets.put(packet, recordId);
+                return true;
+            }
+
+            if (packet.getCallback() != null)
+            {
+                this.persistedMessageCallbacks.put(recordId, new PersistedMessageCallback(packet.getCallback(), packet.getContext()));
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Reads persisted messages back from the disk into the waiting queue until the in memory window is full
+     */
+    private void fillPersistedMessagesWindow()
+    {
+        boolean added = false;
+        synchronized (this.persistentQueueLock)
+        {
+            if (this.persistentQueue == null)
+            {
+                return;
+            }
+
+            PersistentQueueOptions options = this.defaultConfig.getPersistentQueueOptions();
+            while (this.persistedPackets.size() < options.getInMemoryWindowSize())
+            {
+                PersistentMessageQueue.PersistedMessage persistedMessage = this.persistentQueue.poll();
+                if (persistedMessage == null)
+                {
+                    break;
+                }
+
+                //Codes_SRS_IOTHUBTRANSPORT_34_114: [The messages kept by a previous session shall be sent with the
+                // replay callback of the persistent queue options.]
+                IotHubEventCallback callback = null;
+                Object callbackContext = null;
+                PersistedMessageCallback persistedMessageCallback = this.persistedMessageCallbacks.remove(persistedMessage.getRecordId());
+                if (persistedMessageCallback != null)
+                {
+                    callback = persistedMessageCallback.callback;
+                    callbackContext = persistedMessageCallback.context;
+                }
+                else if (this.persistentQueue.wasAppendedBeforeOpen(persistedMessage.getRecordId())
+                        || this.releasedPersistedRecordIds.remove(persistedMessage.getRecordId()))
+                {
+                    callback = options.getReplayCallback();
+                    callbackContext = options.getReplayCallbackContext();
+                }
+
+                IotHubTransportPacket packet = new IotHubTransportPacket(persistedMessage.getMessage(), callback, callbackContext, null, System.currentTimeMillis());
+                this.persistedPackets.put(packet, persistedMessage.getRecordId());
+                this.waitingPacketsQueue.add(packet);
+                added = true;
+            }
+        }
+
+        if (added)
+        {
+            this.signalSendWork();
+        }
+    }
+
+    /**
+     * Removes the provided packet from the in memory window of the persistent queue, if it holds a persisted message.
+     * The message is acknowledged, so it leaves the disk, if IoT Hub accepted it or if it can never be delivered;
+     * otherwise it stays on disk, and is released to be sent again, with the replay callback, once
+     * {@link #FAILED_PERSISTED_MESSAGE_RESEND_DELAY_MILLIS} elapsed, or the next time the transport opens.
+     * @param packet the packet that completed
+     */
+    private void releasePersistedPacket(IotHubTransportPacket packet)
+    {
+        synchronized (this.persistentQueueLock)
+        {
+            if (this.persistentQueue == null)
+            {
+                return;
+            }
+
+            Long recordId = this.persistedPackets.remove(packet);
+            if (recordId == null)
+            {
+                return;
+            }
+
+            //Codes_SRS_IOTHUBTRANSPORT_34_112: [If the packet holds a persisted message, this function shall
+            // acknowledge it in the persistent queue if its status is OK, OK_EMPTY, BAD_FORMAT,
+            // REQUEST_ENTITY_TOO_LARGE or MESSAGE_EXPIRED, and read the next persisted messages back into the
+            // waiting queue.]
+            IotHubStatusCode status = packet.getStatus();
+            if (status == IotHubStatusCode.OK
+                    || status == IotHubStatusCode.OK_EMPTY
+                    || status == IotHubStatusCode.BAD_FORMAT
+                    || status == IotHubStatusCode.REQUEST_ENTITY_TOO_LARGE
+                    || status == IotHubStatusCode.MESSAGE_EXPIRED)
+            {
+                this.persistentQueue.acknowledge(recordId);
+            }
+            else
+            {
+                //Codes_SRS_IOTHUBTRANSPORT_34_121: [If the packet holds a persisted message that is not acknowledged,
+                // this function shall release it in the persistent queue after a delay, so that it is read back into
+                // the waiting queue again with the replay callback.]
+                this.schedulePersistedMessageRelease(this.persistentQueue, recordId);
+            }
+        }
+
+        this.fillPersistedMessagesWindow();
+    }
+
+    /**
+     * Schedules the release of a persisted message that failed, so that it is sent again without looping on a failure
+     * that lasts. The message stays on disk for the next open if the transport closes before.
+     * @param persistentQueue the persistent queue holding the message
+     * @param recordId the record id of the message
+     */
+    private void schedulePersistedMessageRelease(final PersistentMessageQueue persistentQueue, final long recordId)
+    {
+        try
+        {
+            this.taskScheduler.schedule(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    synchronized (persistentQueueLock)
+                    {
+                        if (IotHubTransport.this.persistentQueue != persistentQueue)
+                        {
+                            return;
+                        }
+
+                        releasedPersistedRecordIds.add(recordId);
+                        persistentQueue.release(recordId);
+                    }
+
+                    fillPersistedMessagesWindow();
+                }
+            }, FAILED_PERSISTED_MESSAGE_RESEND_DELAY_MILLIS, MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // the transport is closing, the message is sent again the next time it opens
+            logger.LogInfo("Keeping the failed persisted message %s for the next open, method name is %s ", recordId, logger.getMethodName());
+        }
+    }
+
+    /**
+     * Flushes the persistent queue, if it is open
+     */
+    private void syncPersistentQueue()
+    {
+        synchronized (this.persistentQueueLock)
+        {
+            if (this.persistentQueue != null)
+            {
+                this.persistentQueue.sync();
+            }
+        }
+    }
+
+    /**
+     * Wait without interruption for the reconnection coordinator to admit a reconnection attempt
+     * @param admission the latch released once the attempt is admitted
+     * @param timeoutMillis the longest time to wait, in milliseconds
+     * @return true if the attempt was admitted
+     */
+    private static boolean awaitUninterruptibly(CountDownLatch admission, long timeoutMillis)
+    {
+        boolean interrupted = false;
+        try
+        {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            while (true)
+            {
+                try
+                {
+                    return admission.await(Math.max(end - System.currentTimeMillis(), 0), MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Sleep for a length of time without interruption
      * @param sleepFor length of time to sleep for
@@ -29,6 +29,9 @@ public class IotHubTransportMessage extends Message
     private MessageCallback messageCallback;
     private Object messageCallbackContext;
 
+    // Time, from System.nanoTime(), at which this message was handed to the transport by the connection
+    private long receivedTimeNanos;
+
     /**
      * Constructor with binary data and message type
      * @param data The byte array of the message.
@@ -92,6 +95,16 @@ public class IotHubTransportMessage extends Message
         this.messageCallback = messageCallback;
     }
 
+    void setReceivedTimeNanos(long receivedTimeNanos)
+    {
+        this.receivedTimeNanos = receivedTimeNanos;
+    }
+
+    long getReceivedTimeNanos()
+    {
+        return this.receivedTimeNanos;
+    }
+
     public Object getMessageCallbackContext()
     {
         return messageCallbackContext;
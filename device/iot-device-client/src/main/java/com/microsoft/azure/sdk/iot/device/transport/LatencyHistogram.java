@@ -0,0 +1,148 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe, fixed bucket histogram of latencies in milliseconds. Recording a value is lock free, so it is cheap
+ * enough to be done for every message.
+ */
+public final class LatencyHistogram
+{
+    private static final long[] BUCKET_UPPER_BOUNDS_MILLISECONDS =
+            {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE};
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MILLISECONDS.length);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMilliseconds = new AtomicLong();
+    private final AtomicLong maxMilliseconds = new AtomicLong();
+
+    /**
+     * Records a single latency sample
+     * @param latencyMilliseconds the latency to record, in milliseconds. Negative values are recorded as 0.
+     */
+    public void record(long latencyMilliseconds)
+    {
+        // Codes_SRS_LATENCYHISTOGRAM_34_001: [This function shall record negative latencies as 0.]
+        long latency = Math.max(0, latencyMilliseconds);
+
+        // Codes_SRS_LATENCYHISTOGRAM_34_002: [This function shall increment the count of the first bucket whose upper bound is greater than or equal to the provided latency.]
+        int bucket = 0;
+        while (latency > BUCKET_UPPER_BOUNDS_MILLISECONDS[bucket])
+        {
+            bucket++;
+        }
+
+        this.bucketCounts.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.sumMilliseconds.addAndGet(latency);
+
+        long currentMax = this.maxMilliseconds.get();
+        while (latency > currentMax && !this.maxMilliseconds.compareAndSet(currentMax, latency))
+        {
+            currentMax = this.maxMilliseconds.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded samples
+     */
+    public long getCount()
+    {
+        return this.count.get();
+    }
+
+    /**
+     * @return the mean of the recorded samples in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getMeanMilliseconds()
+    {
+        long samples = this.count.get();
+        return samples == 0 ? 0 : (double) this.sumMilliseconds.get() / samples;
+    }
+
+    /**
+     * @return the largest recorded sample in milliseconds
+     */
+    public long getMaxMilliseconds()
+    {
+        return this.maxMilliseconds.get();
+    }
+
+    /**
+     * Estimates a percentile of the recorded samples as the upper bound of the bucket that contains it. The last
+     * bucket is unbounded, so samples in it are reported as the largest recorded sample.
+     *
+     * @param percentile the percentile to estimate, between 0 and 100.
+     * @return the estimated percentile in milliseconds, or 0 if nothing has been recorded.
+     * @throws IllegalArgumentException if the percentile is not between 0 and 100.
+     */
+    public long getPercentileMilliseconds(double percentile) throws IllegalArgumentException
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            // Codes_SRS_LATENCYHISTOGRAM_34_003: [If the provided percentile is not between 0 and 100, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        long samples = this.count.get();
+        if (samples == 0)
+        {
+            return 0;
+        }
+
+        // Codes_SRS_LATENCYHISTOGRAM_34_004: [This function shall return the upper bound of the bucket containing the requested percentile.]
+        long rank = (long) Math.ceil(samples * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_UPPER_BOUNDS_MILLISECONDS.length; bucket++)
+        {
+            seen += this.bucketCounts.get(bucket);
+            if (seen >= rank && seen > 0)
+            {
+                return Math.min(BUCKET_UPPER_BOUNDS_MILLISECONDS[bucket], this.maxMilliseconds.get());
+            }
+        }
+
+        return this.maxMilliseconds.get();
+    }
+
+    /**
+     * @return a copy of the upper bound, in milliseconds, of each bucket. The last bucket is unbounded.
+     */
+    public long[] getBucketUpperBoundsMilliseconds()
+    {
+        return BUCKET_UPPER_BOUNDS_MILLISECONDS.clone();
+    }
+
+    /**
+     * @return a snapshot of the number of samples recorded in each bucket
+     */
+    public long[] getBucketCounts()
+    {
+        long[] counts = new long[this.bucketCounts.length()];
+        for (int bucket = 0; bucket < counts.length; bucket++)
+        {
+            counts[bucket] = this.bucketCounts.get(bucket);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Clears all recorded samples
+     */
+    public void reset()
+    {
+        for (int bucket = 0; bucket < this.bucketCounts.length(); bucket++)
+        {
+            this.bucketCounts.set(bucket, 0);
+        }
+
+        this.count.set(0);
+        this.sumMilliseconds.set(0);
+        this.maxMilliseconds.set(0);
+    }
+}
@@ -0,0 +1,895 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.CustomLogger;
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageProperty;
+import com.microsoft.azure.sdk.iot.device.MessageType;
+import com.microsoft.azure.sdk.iot.device.PersistentQueueOptions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of the outbound messages, stored in memory mapped segment files.
+ *
+ * <p>
+ *     Each message is appended to the current segment as a record made of its length, the CRC32 of its content, a
+ *     state byte, and the serialized message. The state byte is the only part of a record written after the
+ *     record is appended: it is set once the message is acknowledged, and a segment whose records are all
+ *     acknowledged is deleted. The id of a record is its position, the segment number in the high 32 bits and the
+ *     offset in the low ones, so acknowledging a record needs no index.
+ * </p>
+ * <p>
+ *     When the queue opens, it scans the segments left in its directory and reads back, in order, the records
+ *     that were not acknowledged. A record whose length or CRC32 does not match, like one torn by a crash, ends
+ *     its segment. New records always go to a new segment.
+ * </p>
+ * <p>
+ *     Records are read back with {@link #poll()} in the order they were appended, skipping the ones appended with
+ *     {@code inMemory}, whose message the caller already holds. A record that was read back can be released with
+ *     {@link #release(long)}, like when its message could not be sent, so that {@code poll} reads it again before
+ *     the records it did not read yet.
+ * </p>
+ * <p>
+ *     The queue only flushes the segments to the storage device from its own calls: on every append and acknowledge
+ *     in the {@code EVERY_WRITE} sync mode, on an append or acknowledge that comes once the sync interval elapsed in
+ *     the {@code PERIODIC} one, and on close. A change stays unflushed for at most the sync interval only if the
+ *     owner of the queue calls {@link #sync()} once per interval, as the transport does.
+ * </p>
+ * <p>
+ *     A segment file that cannot be deleted yet, like a file still mapped on some systems, keeps counting in the disk
+ *     usage until an attempt to delete it succeeds, which is made again before each new segment is created.
+ * </p>
+ */
+public final class PersistentMessageQueue implements Closeable
+{
+    private static final String SEGMENT_FILE_SUFFIX = ".seg";
+    private static final String SEGMENT_FILE_NAME_FORMAT = "%020d" + SEGMENT_FILE_SUFFIX;
+
+    // length, CRC32 and state of a record
+    private static final int LENGTH_OFFSET = 0;
+    private static final int CRC_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final int HEADER_SIZE = 9;
+
+    private static final byte STATE_PENDING = 0;
+    private static final byte STATE_ACKNOWLEDGED = 1;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final PersistentQueueOptions options;
+    private final File directory;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Set<Segment> dirtySegments = new LinkedHashSet<>();
+    private final TreeSet<Long> releasedRecordIds = new TreeSet<>();
+    private final List<Segment> undeletedSegments = new ArrayList<>();
+    private final CustomLogger logger;
+
+    private Segment writeSegment;
+    private long nextSegmentNumber;
+
+    // records appended once this queue opened have this id or a bigger one
+    private long firstRecordIdOfSession;
+
+    // next record to read back
+    private long readSegmentNumber;
+    private int readOffset;
+
+    private long pendingCount;
+    private long unreadCount;
+    private long diskUsageInBytes;
+    private long syncCount;
+    private long lastSyncMillis;
+    private boolean closed;
+
+    /**
+     * A message read back from the queue.
+     */
+    public static final class PersistedMessage
+    {
+        private final long recordId;
+        private final Message message;
+
+        private PersistedMessage(long recordId, Message message)
+        {
+            this.recordId = recordId;
+            this.message = message;
+        }
+
+        /**
+         * @return the id to acknowledge the message with.
+         */
+        public long getRecordId()
+        {
+            return this.recordId;
+        }
+
+        /**
+         * @return the message.
+         */
+        public Message getMessage()
+        {
+            return this.message;
+        }
+    }
+
+    /**
+     * Opens the queue stored in the directory of the provided options, creating the directory if needed, and
+     * deleting the segments whose records are all acknowledged.
+     *
+     * @param options the options of the queue.
+     * @throws IllegalArgumentException if the options are null, or if the disk quota is smaller than a segment.
+     * @throws IOException if the directory or a segment cannot be opened.
+     */
+    public PersistentMessageQueue(PersistentQueueOptions options) throws IllegalArgumentException, IOException
+    {
+        if (options == null)
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_001: [If the options are null, or if the disk quota is smaller than the segment size, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("options cannot be null");
+        }
+
+        if (options.getDiskQuotaInBytes() < options.getSegmentSizeInBytes())
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_001: [If the options are null, or if the disk quota is smaller than the segment size, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("The disk quota cannot be smaller than the segment size");
+        }
+
+        this.options = options;
+        this.directory = options.getDirectory();
+        this.logger = new CustomLogger(this.getClass());
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs())
+        {
+            throw new IOException("Could not create the persistent queue directory " + this.directory);
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_002: [The constructor shall scan the segments of the directory in order, counting the records that are not acknowledged, and delete the segments that have none.]
+        File[] files = this.directory.listFiles();
+        if (files == null)
+        {
+            throw new IOException("Could not list the persistent queue directory " + this.directory);
+        }
+
+        for (File file : files)
+        {
+            long number = parseSegmentNumber(file.getName());
+            if (number < 0)
+            {
+                continue;
+            }
+
+            this.nextSegmentNumber = Math.max(this.nextSegmentNumber, number + 1);
+            Segment segment = Segment.open(number, file);
+            if (segment == null)
+            {
+                this.logger.LogError("Ignoring the persistent queue segment %s that is too large, method name is %s ", file, this.logger.getMethodName());
+                continue;
+            }
+
+            if (segment.pendingCount == 0)
+            {
+                segment.buffer = null;
+                if (!deleteSegmentFile(segment))
+                {
+                    this.undeletedSegments.add(segment);
+                    this.diskUsageInBytes += segment.capacity;
+                }
+                continue;
+            }
+
+            this.segments.put(number, segment);
+            this.pendingCount += segment.pendingCount;
+            this.diskUsageInBytes += segment.capacity;
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_003: [The records that are not acknowledged shall be read back by poll, from the oldest.]
+        this.unreadCount = this.pendingCount;
+        this.readSegmentNumber = this.segments.isEmpty() ? this.nextSegmentNumber : this.segments.firstKey();
+        this.readOffset = 0;
+        this.firstRecordIdOfSession = recordId(this.nextSegmentNumber, 0);
+        this.lastSyncMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Appends a message to the queue.
+     *
+     * @param message the message to append.
+     * @param inMemory true if the caller keeps the message in memory, so that {@link #poll()} does not read it
+     *                 back. Only allowed when all the previous records were read back.
+     * @return the id of the record, to acknowledge it with.
+     * @throws IllegalStateException if the queue is closed, if the message does not fit in the disk quota, or if
+     * {@code inMemory} is true while records are waiting to be read back.
+     * @throws IOException if a new segment cannot be created.
+     */
+    public synchronized long append(Message message, boolean inMemory) throws IllegalStateException, IOException
+    {
+        checkOpen();
+        if (inMemory && this.unreadCount > 0)
+        {
+            throw new IllegalStateException("A message can only be kept in memory once all the previous ones were read back");
+        }
+
+        byte[] payload = encode(message);
+        int recordSize = HEADER_SIZE + payload.length;
+        if (this.writeSegment == null || this.writeSegment.capacity - this.writeSegment.writePosition < recordSize)
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_005: [If the record does not fit in the current segment, this function shall create a new segment of the configured size, or of the record size if bigger.]
+            rollSegment(recordSize);
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_004: [This function shall write the record content, CRC32 and state before its length, so that a record torn by a crash is ignored.]
+        Segment segment = this.writeSegment;
+        int offset = segment.writePosition;
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(payload);
+        segment.buffer.putInt(offset + CRC_OFFSET, (int) crc.getValue());
+        segment.buffer.put(offset + STATE_OFFSET, STATE_PENDING);
+        segment.buffer.putInt(offset + LENGTH_OFFSET, payload.length);
+
+        segment.writePosition += recordSize;
+        segment.pendingCount++;
+        this.pendingCount++;
+        if (inMemory)
+        {
+            this.readSegmentNumber = segment.number;
+            this.readOffset = segment.writePosition;
+        }
+        else
+        {
+            this.unreadCount++;
+        }
+
+        this.dirtySegments.add(segment);
+        syncIfNeeded();
+        return recordId(segment.number, offset);
+    }
+
+    /**
+     * Reads back the oldest record that was neither acknowledged nor read back yet.
+     *
+     * @return the record, or null if there is none.
+     * @throws IllegalStateException if the queue is closed.
+     */
+    public synchronized PersistedMessage poll() throws IllegalStateException
+    {
+        checkOpen();
+        while (!this.releasedRecordIds.isEmpty())
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_015: [The records released with release shall be read back again by poll, from the oldest, before the records that were not read back yet.]
+            long recordId = this.releasedRecordIds.pollFirst();
+            this.unreadCount--;
+            Segment segment = this.segments.get(recordId >>> 32);
+            int offset = (int) recordId;
+            if (segment != null && segment.buffer.get(offset + STATE_OFFSET) == STATE_PENDING)
+            {
+                PersistedMessage persistedMessage = readRecord(segment, offset);
+                if (persistedMessage != null)
+                {
+                    return persistedMessage;
+                }
+            }
+        }
+
+        while (this.unreadCount > 0)
+        {
+            Map.Entry<Long, Segment> entry = this.segments.ceilingEntry(this.readSegmentNumber);
+            if (entry == null)
+            {
+                this.unreadCount = 0;
+                break;
+            }
+
+            if (entry.getKey() != this.readSegmentNumber)
+            {
+                this.readSegmentNumber = entry.getKey();
+                this.readOffset = 0;
+            }
+
+            Segment segment = entry.getValue();
+            if (this.readOffset >= segment.writePosition)
+            {
+                this.readSegmentNumber++;
+                this.readOffset = 0;
+                continue;
+            }
+
+            int offset = this.readOffset;
+            int length = segment.buffer.getInt(offset + LENGTH_OFFSET);
+            this.readOffset += HEADER_SIZE + length;
+            if (segment.buffer.get(offset + STATE_OFFSET) != STATE_PENDING)
+            {
+                continue;
+            }
+
+            this.unreadCount--;
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_006: [This function shall return the oldest record that is neither acknowledged nor read back yet.]
+            PersistedMessage persistedMessage = readRecord(segment, offset);
+            if (persistedMessage != null)
+            {
+                return persistedMessage;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a record that was read back, or appended with {@code inMemory}, to the records waiting to be read back,
+     * so that {@link #poll()} reads it again. Releasing a record that is acknowledged, waiting to be read back, or
+     * already released has no effect.
+     *
+     * @param recordId the id of a record that was appended with {@code inMemory} or read back.
+     * @throws IllegalStateException if the queue is closed.
+     */
+    public synchronized void release(long recordId) throws IllegalStateException
+    {
+        checkOpen();
+        Segment segment = this.segments.get(recordId >>> 32);
+        int offset = (int) recordId;
+        if (segment == null || offset < 0 || offset >= segment.writePosition
+                || segment.buffer.get(offset + STATE_OFFSET) != STATE_PENDING
+                || recordId >= recordId(this.readSegmentNumber, this.readOffset))
+        {
+            return;
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_015: [The records released with release shall be read back again by poll, from the oldest, before the records that were not read back yet.]
+        if (this.releasedRecordIds.add(recordId))
+        {
+            this.unreadCount++;
+        }
+    }
+
+    /**
+     * Marks a record as acknowledged, so it is not read back when the queue opens again. The segment of the record is
+     * deleted once all of its records are acknowledged. Acknowledging a record twice has no effect.
+     *
+     * @param recordId the id of a record that was appended with {@code inMemory} or read back.
+     * @throws IllegalStateException if the queue is closed.
+     */
+    public synchronized void acknowledge(long recordId) throws IllegalStateException
+    {
+        checkOpen();
+        Segment segment = this.segments.get(recordId >>> 32);
+        int offset = (int) recordId;
+        if (segment == null || offset < 0 || offset >= segment.writePosition
+                || segment.buffer.get(offset + STATE_OFFSET) != STATE_PENDING)
+        {
+            return;
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_008: [This function shall set the state of the record to acknowledged.]
+        segment.buffer.put(offset + STATE_OFFSET, STATE_ACKNOWLEDGED);
+        segment.pendingCount--;
+        this.pendingCount--;
+        if (this.releasedRecordIds.remove(recordId))
+        {
+            this.unreadCount--;
+        }
+        this.dirtySegments.add(segment);
+
+        if (segment.pendingCount == 0 && segment != this.writeSegment)
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_009: [Once all the records of a segment other than the current one are acknowledged, this function shall delete the segment.]
+            deleteSegment(segment);
+        }
+
+        syncIfNeeded();
+    }
+
+    /**
+     * Flushes the segments changed since the last flush to the storage device.
+     *
+     * @throws IllegalStateException if the queue is closed.
+     */
+    public synchronized void sync() throws IllegalStateException
+    {
+        checkOpen();
+        syncDirtySegments();
+    }
+
+    /**
+     * Flushes and closes the segments. The segments whose records are all acknowledged are deleted. Closing the
+     * queue twice has no effect.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (this.closed)
+        {
+            return;
+        }
+
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_011: [The close shall flush the segments, whatever the sync mode, and delete the segments whose records are all acknowledged.]
+        syncDirtySegments();
+        for (Segment segment : this.segments.values())
+        {
+            if (segment.pendingCount == 0)
+            {
+                deleteSegmentFile(segment);
+            }
+
+            segment.buffer = null;
+        }
+
+        this.segments.clear();
+        deleteUndeletedSegments();
+        this.releasedRecordIds.clear();
+        this.writeSegment = null;
+        this.unreadCount = 0;
+        this.closed = true;
+    }
+
+    /**
+     * Checks if a record was kept by a previous session, so that its callback is unknown.
+     *
+     * @param recordId the id of the record.
+     * @return true if the record was appended before this queue opened.
+     */
+    public boolean wasAppendedBeforeOpen(long recordId)
+    {
+        // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_014: [The wasAppendedBeforeOpen shall return true if the record was appended before the queue opened.]
+        return recordId < this.firstRecordIdOfSession;
+    }
+
+    /**
+     * @return the number of records that are not acknowledged.
+     */
+    public synchronized long getPendingCount()
+    {
+        return this.pendingCount;
+    }
+
+    /**
+     * @return the number of records waiting to be read back.
+     */
+    public synchronized long getUnreadCount()
+    {
+        return this.unreadCount;
+    }
+
+    /**
+     * @return the space taken by the segments, in bytes.
+     */
+    public synchronized long getDiskUsageInBytes()
+    {
+        return this.diskUsageInBytes;
+    }
+
+    /**
+     * @return the number of segment files.
+     */
+    public synchronized int getSegmentCount()
+    {
+        return this.segments.size();
+    }
+
+    /**
+     * @return the number of times the segments were flushed to the storage device.
+     */
+    public synchronized long getSyncCount()
+    {
+        return this.syncCount;
+    }
+
+    private void checkOpen() throws IllegalStateException
+    {
+        if (this.closed)
+        {
+            throw new IllegalStateException("The persistent message queue is closed");
+        }
+    }
+
+    private void rollSegment(int recordSize) throws IllegalStateException, IOException
+    {
+        int capacity = Math.max(this.options.getSegmentSizeInBytes(), recordSize);
+        deleteUndeletedSegments();
+        Segment previous = this.writeSegment;
+        long reclaimable = (previous != null && previous.pendingCount == 0) ? previous.capacity : 0;
+        if (this.diskUsageInBytes - reclaimable + capacity > this.options.getDiskQuotaInBytes())
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_010: [If a new segment would exceed the disk quota, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The persistent message queue is full, its disk quota of "
+                    + this.options.getDiskQuotaInBytes() + " bytes is used");
+        }
+
+        long number = this.nextSegmentNumber;
+        Segment segment = Segment.create(number, new File(this.directory, String.format(SEGMENT_FILE_NAME_FORMAT, number)), capacity);
+        this.nextSegmentNumber++;
+        this.segments.put(number, segment);
+        this.diskUsageInBytes += capacity;
+        this.writeSegment = segment;
+
+        if (previous != null && previous.pendingCount == 0)
+        {
+            deleteSegment(previous);
+        }
+    }
+
+    private void deleteSegment(Segment segment)
+    {
+        this.segments.remove(segment.number);
+        this.dirtySegments.remove(segment);
+        segment.buffer = null;
+        if (deleteSegmentFile(segment))
+        {
+            this.diskUsageInBytes -= segment.capacity;
+        }
+        else
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_016: [A segment file that cannot be deleted shall count in the disk usage until an attempt to delete it, made again before each new segment is created, succeeds.]
+            this.undeletedSegments.add(segment);
+        }
+    }
+
+    private void deleteUndeletedSegments()
+    {
+        Iterator<Segment> iterator = this.undeletedSegments.iterator();
+        while (iterator.hasNext())
+        {
+            Segment segment = iterator.next();
+            if (segment.file.delete() || !segment.file.exists())
+            {
+                // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_016: [A segment file that cannot be deleted shall count in the disk usage until an attempt to delete it, made again before each new segment is created, succeeds.]
+                this.diskUsageInBytes -= segment.capacity;
+                iterator.remove();
+            }
+        }
+    }
+
+    private boolean deleteSegmentFile(Segment segment)
+    {
+        // The mapping is released when the buffer is collected. Systems that cannot delete a mapped file keep it
+        // until a later attempt, or until the queue opens again, which deletes it as all of its records are
+        // acknowledged.
+        if (segment.file.delete())
+        {
+            return true;
+        }
+
+        this.logger.LogInfo("Could not delete the persistent queue segment %s yet, method name is %s ", segment.file, this.logger.getMethodName());
+        return false;
+    }
+
+    /*
+     * Reads the message of a pending record, or acknowledges the record if its message cannot be read back.
+     */
+    private PersistedMessage readRecord(Segment segment, int offset)
+    {
+        int length = segment.buffer.getInt(offset + LENGTH_OFFSET);
+        long recordId = recordId(segment.number, offset);
+        byte[] payload = new byte[length];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + HEADER_SIZE);
+        buffer.get(payload);
+
+        try
+        {
+            return new PersistedMessage(recordId, decode(payload));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_007: [If a record cannot be read back as a message, this function shall acknowledge it and move to the next one.]
+            this.logger.LogError("Dropping the persisted message %s that cannot be read back, method name is %s ", recordId, this.logger.getMethodName());
+            this.logger.LogError(e);
+            acknowledge(recordId);
+            return null;
+        }
+    }
+
+    private void syncIfNeeded()
+    {
+        switch (this.options.getSyncMode())
+        {
+            case EVERY_WRITE:
+                // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_012: [In the EVERY_WRITE sync mode, every append and acknowledge shall flush the changed segments.]
+                syncDirtySegments();
+                break;
+            case PERIODIC:
+                // Codes_SRS_PERSISTENTMESSAGEQUEUE_34_013: [In the PERIODIC sync mode, an append or acknowledge shall flush the changed segments if the last flush is older than the sync interval.]
+                // The owner calls sync once per interval for the changes that no later append or acknowledge flushes
+                if (System.currentTimeMillis() - this.lastSyncMillis >= this.options.getSyncIntervalMillis())
+                {
+                    syncDirtySegments();
+                }
+                break;
+            default:
+                // the operating system writes the segments back
+                break;
+        }
+    }
+
+    private void syncDirtySegments()
+    {
+        if (this.dirtySegments.isEmpty())
+        {
+            return;
+        }
+
+        for (Segment segment : this.dirtySegments)
+        {
+            segment.buffer.force();
+        }
+
+        this.dirtySegments.clear();
+        this.syncCount++;
+        this.lastSyncMillis = System.currentTimeMillis();
+    }
+
+    private static long recordId(long segmentNumber, int offset)
+    {
+        return (segmentNumber << 32) | offset;
+    }
+
+    private static long parseSegmentNumber(String fileName)
+    {
+        if (!fileName.endsWith(SEGMENT_FILE_SUFFIX))
+        {
+            return -1;
+        }
+
+        String number = fileName.substring(0, fileName.length() - SEGMENT_FILE_SUFFIX.length());
+        if (number.isEmpty() || number.length() > 20)
+        {
+            return -1;
+        }
+
+        for (int i = 0; i < number.length(); i++)
+        {
+            if (!Character.isDigit(number.charAt(i)))
+            {
+                return -1;
+            }
+        }
+
+        // segment numbers are ints, so longer ones are not segments of this queue
+        String digits = number.replaceFirst("^0+(?=.)", "");
+        if (digits.length() > 10)
+        {
+            return -1;
+        }
+
+        long value = Long.parseLong(digits);
+        return value > Integer.MAX_VALUE ? -1 : value;
+    }
+
+    private static byte[] encode(Message message) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(FORMAT_VERSION);
+        writeString(output, message.getMessageId());
+        writeString(output, message.getCorrelationId());
+        writeString(output, message.getUserId());
+        writeString(output, message.getContentType());
+        writeString(output, message.getContentEncoding());
+        writeString(output, message.getOutputName());
+        writeString(output, message.getConnectionDeviceId());
+        writeString(output, message.getConnectionModuleId());
+        writeString(output, message.getMessageType() == null ? null : message.getMessageType().name());
+        output.writeLong(message.getExpiryTime());
+        output.writeLong(message.getCreationTimeUTC() == null ? -1 : message.getCreationTimeUTC().getTime());
+
+        MessageProperty[] properties = message.getProperties();
+        output.writeInt(properties.length);
+        for (MessageProperty property : properties)
+        {
+            writeString(output, property.getName());
+            writeString(output, property.getValue());
+        }
+
+        writeBytes(output, message.getBytes());
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Message decode(byte[] payload) throws IOException
+    {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte version = input.readByte();
+        if (version != FORMAT_VERSION)
+        {
+            throw new IOException("Unknown persisted message format " + version);
+        }
+
+        String messageId = readString(input);
+        String correlationId = readString(input);
+        String userId = readString(input);
+        String contentType = readString(input);
+        String contentEncoding = readString(input);
+        String outputName = readString(input);
+        String connectionDeviceId = readString(input);
+        String connectionModuleId = readString(input);
+        String messageType = readString(input);
+        long expiryTime = input.readLong();
+        long creationTime = input.readLong();
+
+        int propertyCount = input.readInt();
+        String[][] properties = new String[Math.max(propertyCount, 0)][];
+        for (int i = 0; i < propertyCount; i++)
+        {
+            properties[i] = new String[] {readString(input), readString(input)};
+        }
+
+        byte[] body = readBytes(input);
+        Message message = body == null ? new Message() : new Message(body);
+        message.setMessageId(messageId);
+        message.setCorrelationId(correlationId);
+        message.setUserId(userId);
+        message.setContentTypeFinal(contentType);
+        message.setContentEncoding(contentEncoding);
+        message.setOutputName(outputName);
+        message.setConnectionDeviceId(connectionDeviceId);
+        message.setConnectionModuleId(connectionModuleId);
+        if (messageType != null)
+        {
+            message.setMessageType(MessageType.valueOf(messageType));
+        }
+        message.setAbsoluteExpiryTime(expiryTime);
+        if (creationTime >= 0)
+        {
+            message.setCreationTimeUTC(new Date(creationTime));
+        }
+
+        for (String[] property : properties)
+        {
+            message.setProperty(property[0], property[1]);
+        }
+
+        return message;
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException
+    {
+        writeBytes(output, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream input) throws IOException
+    {
+        byte[] bytes = readBytes(input);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream output, byte[] value) throws IOException
+    {
+        if (value == null)
+        {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+
+        if (length > input.available())
+        {
+            throw new IOException("Persisted message is truncated");
+        }
+
+        byte[] value = new byte[length];
+        input.readFully(value);
+        return value;
+    }
+
+    /**
+     * A segment file, mapped in memory.
+     */
+    private static final class Segment
+    {
+        private final long number;
+        private final File file;
+        private final int capacity;
+        private MappedByteBuffer buffer;
+        private int writePosition;
+        private int pendingCount;
+
+        private Segment(long number, File file, int capacity, MappedByteBuffer buffer)
+        {
+            this.number = number;
+            this.file = file;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+
+        private static Segment create(long number, File file, int capacity) throws IOException
+        {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+            {
+                randomAccessFile.setLength(capacity);
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                return new Segment(number, file, capacity, buffer);
+            }
+        }
+
+        private static Segment open(long number, File file) throws IOException
+        {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+            {
+                long length = randomAccessFile.length();
+                if (length > Integer.MAX_VALUE)
+                {
+                    return null;
+                }
+
+                int capacity = (int) length;
+                MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                Segment segment = new Segment(number, file, capacity, buffer);
+                segment.scan();
+                return segment;
+            }
+        }
+
+        /*
+         * Finds the end of the valid records, and counts the ones that are not acknowledged.
+         */
+        private void scan()
+        {
+            int offset = 0;
+            while (offset + HEADER_SIZE <= this.capacity)
+            {
+                int length = this.buffer.getInt(offset + LENGTH_OFFSET);
+                if (length <= 0 || length > this.capacity - offset - HEADER_SIZE)
+                {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                ByteBuffer duplicate = this.buffer.duplicate();
+                duplicate.position(offset + HEADER_SIZE);
+                duplicate.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != this.buffer.getInt(offset + CRC_OFFSET))
+                {
+                    break;
+                }
+
+                if (this.buffer.get(offset + STATE_OFFSET) == STATE_PENDING)
+                {
+                    this.pendingCount++;
+                }
+
+                offset += HEADER_SIZE + length;
+            }
+
+            // nothing is appended to an old segment, so the records can be read back up to here
+            this.writePosition = offset;
+        }
+    }
+}
@@ -15,7 +15,6 @@ import org.apache.qpid.proton.amqp.messaging.Section;
 import org.apache.qpid.proton.engine.*;
 import org.apache.qpid.proton.message.impl.MessageImpl;
 import java.io.IOException;
-import java.nio.BufferOverflowException;
 import java.util.*;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -43,6 +42,9 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
 
     private long nextTag = 0;
 
+    // Shared with the device sessions of the connection
+    private final AmqpsMessageEncoder messageEncoder;
+
     private final Queue<MessageImpl> waitingMessages = new LinkedBlockingDeque<>();
 
     private Integer queueLock = new Integer(1);
@@ -58,11 +60,31 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
      * @throws IllegalArgumentException if deviceClientConfig is null.
      */
     public AmqpsDeviceAuthenticationCBS(DeviceClientConfig deviceClientConfig) throws IllegalArgumentException
+    {
+        this(deviceClientConfig, new AmqpsMessageEncoder());
+    }
+
+    /**
+     * This constructor creates an instance of AmqpsDeviceAuthenticationCBS class that encodes its messages with the
+     * encoder of its connection
+     *
+     * @param deviceClientConfig the device config to use for authentication.
+     * @param messageEncoder the encoder shared with the device sessions of the connection.
+     * @throws IllegalArgumentException if deviceClientConfig or messageEncoder is null.
+     */
+    public AmqpsDeviceAuthenticationCBS(DeviceClientConfig deviceClientConfig, AmqpsMessageEncoder messageEncoder) throws IllegalArgumentException
     {
         // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_050: [This constructor shall call super with the provided user agent string.]
         super(deviceClientConfig);
 
+        if (messageEncoder == null)
+        {
+            // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_052: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the authentication messages with it otherwise.]
+            throw new IllegalArgumentException("messageEncoder cannot be null");
+        }
+
         this.deviceClientConfig = deviceClientConfig;
+        this.messageEncoder = messageEncoder;
 
         // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_001: [The constructor shall set the sender and receiver endpoint path to IoTHub specific values.]
         this.senderLinkEndpointPath = SENDER_LINK_ENDPOINT_PATH;
@@ -94,31 +116,22 @@ public final class AmqpsDeviceAuthenticationCBS extends AmqpsDeviceAuthenticatio
             // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_005: [If there is no message in the queue to send the function shall do nothing.]
             while (!this.waitingMessages.isEmpty())
             {
-                byte[] msgData = new byte[1024];
-                int length;
-
                 // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_006: [The function shall read the message from the queue.]
                 MessageImpl outgoingMessage = this.waitingMessages.remove();
 
-                while (true)
+                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_007: [The function shall encode the message to a buffer.]
+                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_008: [The function shall double the buffer if encode throws BufferOverflowException.]
+                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_051: [The function shall encode the message into the reusable buffer of the connection encoder.]
+                synchronized (this.messageEncoder)
                 {
-                    try
-                    {
-                        // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_007: [The function shall encode the message to a buffer.]
-                        length = outgoingMessage.encode(msgData, 0, msgData.length);
-                        break;
-                    }
-                    catch (BufferOverflowException e)
-                    {
-                        // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_008: [The function shall double the buffer if encode throws BufferOverflowException.]
-                        msgData = new byte[msgData.length * 2];
-                    }
-                }
-                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_009: [The function shall set the delivery tag for the sender.]
-                byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
+                    int length = this.messageEncoder.encode(outgoingMessage, 0);
 
-                // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_010: [The function shall call the super class sendMessageAndGetDeliveryHash.]
-                this.sendMessageAndGetDeliveryHash(MessageType.CBS_AUTHENTICATION, msgData, 0, length, deliveryTag);
+                    // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_009: [The function shall set the delivery tag for the sender.]
+                    byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
+
+                    // Codes_SRS_AMQPSDEVICEAUTHENTICATIONCBS_12_010: [The function shall call the super class sendMessageAndGetDeliveryHash.]
+                    this.sendMessageAndGetDeliveryHash(MessageType.CBS_AUTHENTICATION, this.messageEncoder.getBuffer(), 0, length, deliveryTag);
+                }
             }
         }
     }
@@ -27,6 +27,7 @@ import org.apache.qpid.proton.reactor.Reactor;
 import org.apache.qpid.proton.reactor.ReactorOptions;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
 import java.util.UUID;
@@ -40,6 +41,9 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
 {
     private static final int MAX_WAIT_TO_OPEN_CLOSE_CONNECTION = 90*1000; // 90 second timeout
     private static final int MAX_WAIT_TO_TERMINATE_EXECUTOR = 30;
+
+    // Threads shared by the CBS authentication and the token renewal of every device session on this connection
+    private static final int SESSION_MANAGER_POOL_SIZE = 2;
     private IotHubConnectionStatus state;
 
     private int linkCredit = -1;
@@ -61,6 +65,9 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
 
     private IotHubListener listener;
 
+    // Encodes the messages of all the sessions of this connection, and is kept across reconnections
+    private final AmqpsMessageEncoder messageEncoder = new AmqpsMessageEncoder();
+
     //When the connection is lost for any reason, a thread is spawned to notify the Transport layer to re-establish
     // this connection. The original thread completes its shutdown. That thread should only be spawned once.
     private boolean reconnectionScheduled = false;
@@ -139,7 +146,8 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
     }
 
     /**
-     * Creates a new DeviceOperation using the given configuration..
+     * Creates a new DeviceOperation using the given configuration. If the connection is open, the device is
+     * authenticated and its links are opened on the existing session without reconnecting.
      *
      * @param deviceClientConfig the device configuration to add.
      * @throws TransportException if adding the device fails
@@ -154,6 +162,32 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         }
     }
 
+    /**
+     * Closes the links of the device with the given id and stops handling its operations. The connection and the
+     * links of the other devices are left open.
+     *
+     * @param deviceId the id of the device to remove.
+     * @return true if the device was removed, false if it was not on this connection.
+     * @throws IllegalArgumentException if the device is the one this connection was created for.
+     */
+    public boolean removeDeviceOperationSession(String deviceId) throws IllegalArgumentException
+    {
+        if (this.deviceClientConfig.getDeviceId().equals(deviceId))
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_34_094: [If the device id is the id of the device this connection was created for, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("The device that owns the connection cannot be removed from it");
+        }
+
+        if (this.amqpsSessionManager == null)
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_34_095: [If the connection has not been opened, this function shall return false.]
+            return false;
+        }
+
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_34_096: [This function shall call AmqpsSessionManager.removeDeviceOperationSession with the given device id and return its result.]
+        return this.amqpsSessionManager.removeDeviceOperationSession(deviceId);
+    }
+
     /**
      * Opens the {@link AmqpsIotHubConnection}.
      * <p>
@@ -178,7 +212,16 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         this.openLatch = new CountDownLatch(1);
         this.savedException = null;
 
-        this.amqpsSessionManager = new AmqpsSessionManager(this.deviceClientConfig, Executors.newScheduledThreadPool(2));
+        ClientThreadPool clientThreadPool = this.deviceClientConfig.getClientThreadPool();
+        if (clientThreadPool != null)
+        {
+            // Codes_SRS_AMQPSIOTHUBCONNECTION_34_098: [If the config has a client thread pool, this function shall give the session manager a scheduler from that pool.]
+            this.amqpsSessionManager = new AmqpsSessionManager(this.deviceClientConfig, clientThreadPool.newScheduler(), this.messageEncoder);
+        }
+        else
+        {
+            this.amqpsSessionManager = new AmqpsSessionManager(this.deviceClientConfig, Executors.newScheduledThreadPool(SESSION_MANAGER_POOL_SIZE), this.messageEncoder);
+        }
 
         logger.LogDebug("Entered in method %s", logger.getMethodName());
 
@@ -187,10 +230,12 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         {
             if(deviceClientConfigs.size() > 1)
             {
-                deviceClientConfigs.remove();
-                while (!deviceClientConfigs.isEmpty())
+                // Codes_SRS_AMQPSIOTHUBCONNECTION_34_097: [The function shall add a device session for every config after the first without removing them from the queue, so that a reconnection opens the same devices again.]
+                Iterator<DeviceClientConfig> configIterator = deviceClientConfigs.iterator();
+                configIterator.next();
+                while (configIterator.hasNext())
                 {
-                    this.addDeviceOperationSession(deviceClientConfigs.remove());
+                    this.addDeviceOperationSession(configIterator.next());
                 }
             }
 
@@ -270,7 +315,17 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
 
         if (executorService == null)
         {
-            executorService = Executors.newFixedThreadPool(1);
+            ClientThreadPool clientThreadPool = this.deviceClientConfig.getClientThreadPool();
+            if (clientThreadPool != null)
+            {
+                // the reactor runs for as long as the connection is open, so it cannot share the scheduler threads
+                // Codes_SRS_AMQPSIOTHUBCONNECTION_34_099: [If the config has a client thread pool, this function shall run the reactor on a dedicated thread from that pool.]
+                executorService = clientThreadPool.newDedicatedThreadExecutor();
+            }
+            else
+            {
+                executorService = Executors.newFixedThreadPool(1);
+            }
         }
 
         IotHubReactor iotHubReactor = new IotHubReactor(reactor);
@@ -1058,6 +1113,33 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         return this.connectionId;
     }
 
+    /**
+     * @return the number of messages encoded by this connection.
+     */
+    public long getMessageEncodeCount()
+    {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_34_101: [This function shall return the number of messages encoded by the message encoder of this connection.]
+        return this.messageEncoder.getEncodeCount();
+    }
+
+    /**
+     * @return the number of buffers allocated to encode the messages of this connection.
+     */
+    public long getEncodeBufferAllocationCount()
+    {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_34_102: [This function shall return the number of buffers allocated by the message encoder of this connection.]
+        return this.messageEncoder.getBufferAllocationCount();
+    }
+
+    /**
+     * @return the total number of bytes allocated to encode the messages of this connection.
+     */
+    public long getEncodeBufferAllocatedBytes()
+    {
+        // Codes_SRS_AMQPSIOTHUBCONNECTION_34_103: [This function shall return the number of bytes allocated by the message encoder of this connection.]
+        return this.messageEncoder.getAllocatedBytes();
+    }
+
     /**
      * Schedules a thread to start the reconnection process for AMQP
      * @param throwable the reason why the reconnection needs to take place, for reporting purposes
@@ -1067,7 +1149,19 @@ public final class AmqpsIotHubConnection extends BaseHandler implements IotHubTr
         if (!reconnectionScheduled)
         {
             reconnectionScheduled = true;
-            scheduledExecutorService.schedule(new ReconnectionTask(throwable, this.listener, this.connectionId), 0, TimeUnit.MILLISECONDS);
+            ReconnectionTask reconnectionTask = new ReconnectionTask(throwable, this.listener, this.connectionId);
+            ClientThreadPool clientThreadPool = this.deviceClientConfig.getClientThreadPool();
+            if (clientThreadPool != null)
+            {
+                // Reconnecting blocks through its backoff and while the new connection opens, so it must not hold
+                // one of the scheduler threads that other clients share
+                // Codes_SRS_AMQPSIOTHUBCONNECTION_34_100: [If the config has a client thread pool, this function shall run the reconnection task on a dedicated thread of that pool.]
+                clientThreadPool.executeBlocking(new FutureTask<Object>(reconnectionTask));
+            }
+            else
+            {
+                scheduledExecutorService.schedule(reconnectionTask, 0, TimeUnit.MILLISECONDS);
+            }
         }
     }
 
@@ -0,0 +1,168 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Section;
+import org.apache.qpid.proton.message.Message;
+
+import java.nio.BufferOverflowException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Encodes outgoing proton messages into a buffer that is reused from one message to the next. One encoder is shared
+ * by all the device sessions of a connection. The buffer is sized up front from the estimated size of the message
+ * and grows up to the size of the largest message IoT Hub accepts, so once it has reached the size of the largest
+ * message sent, encoding does not allocate at all. A bigger message is encoded into a buffer of its own, which is
+ * not kept once the next message is encoded.
+ *
+ * This class is not thread safe; callers must synchronize on the encoder, and must not encode a message while the
+ * result of a previous encode is still being read from {@link #getBuffer()}.
+ */
+public final class AmqpsMessageEncoder
+{
+    private static final int INITIAL_BUFFER_SIZE_BYTES = 1024;
+
+    // Room left for the header, properties and application properties sections on top of the body
+    private static final int ENCODING_OVERHEAD_BYTES = 1024;
+
+    // The largest message IoT Hub accepts, 256 KB, with its encoding overhead
+    private static final int MAX_RETAINED_BUFFER_SIZE_BYTES = 256 * 1024 + ENCODING_OVERHEAD_BYTES;
+
+    // The buffer reused from one message to the next
+    private byte[] buffer;
+
+    // The buffer the last message was encoded into, which is a bigger one than the reused buffer for a large message
+    private byte[] lastBuffer;
+
+    private final AtomicLong encodeCount = new AtomicLong();
+    private final AtomicLong bufferAllocationCount = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    public AmqpsMessageEncoder()
+    {
+        // Codes_SRS_AMQPSMESSAGEENCODER_34_001: [The constructor shall allocate a buffer of 1024 bytes.]
+        this.buffer = allocate(INITIAL_BUFFER_SIZE_BYTES);
+        this.lastBuffer = this.buffer;
+    }
+
+    /**
+     * Encodes the message into the reusable buffer.
+     *
+     * @param message the message to encode.
+     * @param estimatedSize the estimated size of the encoded message in bytes, or 0 if it is unknown.
+     * @return the number of bytes written to the start of {@link #getBuffer()}.
+     * @throws IllegalArgumentException if the message is null.
+     */
+    public int encode(Message message, int estimatedSize) throws IllegalArgumentException
+    {
+        if (message == null)
+        {
+            // Codes_SRS_AMQPSMESSAGEENCODER_34_002: [If the provided message is null, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("message cannot be null");
+        }
+
+        // the buffer of a previous large message is released
+        this.lastBuffer = this.buffer;
+
+        byte[] target = this.buffer;
+        if (estimatedSize > target.length)
+        {
+            // Codes_SRS_AMQPSMESSAGEENCODER_34_003: [If the estimated size is larger than the buffer, this function shall grow the buffer to the estimated size before encoding.]
+            target = allocate(estimatedSize);
+        }
+
+        this.encodeCount.incrementAndGet();
+        while (true)
+        {
+            try
+            {
+                // Codes_SRS_AMQPSMESSAGEENCODER_34_004: [This function shall encode the message into the buffer and return the encoded length.]
+                int length = message.encode(target, 0, target.length);
+                if (target.length <= MAX_RETAINED_BUFFER_SIZE_BYTES)
+                {
+                    // Codes_SRS_AMQPSMESSAGEENCODER_34_007: [This function shall keep the grown buffer for the next messages only if it is not bigger than the largest message IoT Hub accepts plus its encoding overhead.]
+                    this.buffer = target;
+                }
+                this.lastBuffer = target;
+                return length;
+            }
+            catch (BufferOverflowException e)
+            {
+                // Codes_SRS_AMQPSMESSAGEENCODER_34_005: [If encode throws BufferOverflowException, this function shall double the buffer and encode again.]
+                target = allocate(target.length * 2);
+            }
+        }
+    }
+
+    /**
+     * @return the buffer the last message was encoded into. It is overwritten by the next call to encode.
+     */
+    public byte[] getBuffer()
+    {
+        return this.lastBuffer;
+    }
+
+    /**
+     * @return the size in bytes of the buffer kept for the next messages.
+     */
+    public int getRetainedBufferSize()
+    {
+        return this.buffer.length;
+    }
+
+    /**
+     * @return the number of messages encoded by this encoder.
+     */
+    public long getEncodeCount()
+    {
+        return this.encodeCount.get();
+    }
+
+    /**
+     * @return the number of buffers allocated by this encoder, including the initial one.
+     */
+    public long getBufferAllocationCount()
+    {
+        return this.bufferAllocationCount.get();
+    }
+
+    /**
+     * @return the total number of bytes allocated for buffers by this encoder.
+     */
+    public long getAllocatedBytes()
+    {
+        return this.allocatedBytes.get();
+    }
+
+    /**
+     * Estimates the encoded size of a message from the size of its body.
+     *
+     * @param message the message to estimate.
+     * @return the estimated size in bytes, or 0 if the message has no binary body.
+     */
+    public static int estimateEncodedSize(Message message)
+    {
+        // Codes_SRS_AMQPSMESSAGEENCODER_34_006: [If the message has a binary body, this function shall return the body length plus room for the rest of the message, otherwise it shall return 0.]
+        Section body = (message == null) ? null : message.getBody();
+        if (body instanceof Data)
+        {
+            Binary binary = ((Data) body).getValue();
+            if (binary != null)
+            {
+                return binary.getLength() + ENCODING_OVERHEAD_BYTES;
+            }
+        }
+
+        return 0;
+    }
+
+    private byte[] allocate(int size)
+    {
+        this.bufferAllocationCount.incrementAndGet();
+        this.allocatedBytes.addAndGet(size);
+        return new byte[size];
+    }
+}
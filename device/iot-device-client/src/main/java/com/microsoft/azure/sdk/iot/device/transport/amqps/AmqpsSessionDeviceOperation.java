@@ -4,11 +4,11 @@ import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import org.apache.qpid.proton.engine.*;
 
-import java.nio.BufferOverflowException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class AmqpsSessionDeviceOperation
@@ -22,11 +22,16 @@ public class AmqpsSessionDeviceOperation
 
     private long nextTag = 0;
 
+    // Shared with the other device sessions and the CBS authentication of the connection
+    private final AmqpsMessageEncoder messageEncoder;
+
     private Integer openLock = new Integer(1);
 
     private long tokenRenewalPeriodInMilliseconds = 4000; //4 seconds;
 
     private ScheduledExecutorService taskSchedulerTokenRenewal;
+    private final ScheduledExecutorService sharedTaskScheduler;
+    private ScheduledFuture<?> tokenRenewalFuture;
     private AmqpsDeviceAuthenticationCBSTokenRenewalTask tokenRenewalTask = null;
 
     private static final int MAX_WAIT_TO_AUTHENTICATE = 10*1000;
@@ -47,6 +52,36 @@ public class AmqpsSessionDeviceOperation
      * @throws IllegalArgumentException if deviceClientConfig or amqpsDeviceAuthentication is null
      */
     public AmqpsSessionDeviceOperation(final DeviceClientConfig deviceClientConfig, AmqpsDeviceAuthentication amqpsDeviceAuthentication) throws IllegalArgumentException
+    {
+        this(deviceClientConfig, amqpsDeviceAuthentication, null);
+    }
+
+    /**
+     * Create logical device entity to handle all operation, renewing its token on a scheduler that is shared with the
+     * other devices on the same connection rather than on a thread of its own.
+     *
+     * @param deviceClientConfig the configuration of teh device.
+     * @param amqpsDeviceAuthentication the authentication object associated with the device.
+     * @param sharedTaskScheduler the scheduler to run the token renewal on. If null, this object creates and owns a
+     *                            scheduler of its own.
+     * @throws IllegalArgumentException if deviceClientConfig or amqpsDeviceAuthentication is null
+     */
+    public AmqpsSessionDeviceOperation(final DeviceClientConfig deviceClientConfig, AmqpsDeviceAuthentication amqpsDeviceAuthentication, ScheduledExecutorService sharedTaskScheduler) throws IllegalArgumentException
+    {
+        this(deviceClientConfig, amqpsDeviceAuthentication, sharedTaskScheduler, new AmqpsMessageEncoder());
+    }
+
+    /**
+     * Create logical device entity to handle all operation, encoding its messages with the encoder of its connection.
+     *
+     * @param deviceClientConfig the configuration of teh device.
+     * @param amqpsDeviceAuthentication the authentication object associated with the device.
+     * @param sharedTaskScheduler the scheduler to run the token renewal on. If null, this object creates and owns a
+     *                            scheduler of its own.
+     * @param messageEncoder the encoder shared by all the device sessions of the connection.
+     * @throws IllegalArgumentException if deviceClientConfig, amqpsDeviceAuthentication or messageEncoder is null
+     */
+    public AmqpsSessionDeviceOperation(final DeviceClientConfig deviceClientConfig, AmqpsDeviceAuthentication amqpsDeviceAuthentication, ScheduledExecutorService sharedTaskScheduler, AmqpsMessageEncoder messageEncoder) throws IllegalArgumentException
     {
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig or the amqpsDeviceAuthentication parameter is null.]
         if (deviceClientConfig == null)
@@ -57,10 +92,17 @@ public class AmqpsSessionDeviceOperation
         {
             throw new IllegalArgumentException("amqpsDeviceAuthentication cannot be null.");
         }
+        if (messageEncoder == null)
+        {
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the messages of the device with it otherwise.]
+            throw new IllegalArgumentException("messageEncoder cannot be null.");
+        }
 
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_002: [The constructor shall save the deviceClientConfig and amqpsDeviceAuthentication parameter value to a member variable.]
         this.deviceClientConfig = deviceClientConfig;
         this.amqpsDeviceAuthentication = amqpsDeviceAuthentication;
+        this.sharedTaskScheduler = sharedTaskScheduler;
+        this.messageEncoder = messageEncoder;
 
         // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_003: [The constructor shall create AmqpsDeviceTelemetry, AmqpsDeviceMethods and AmqpsDeviceTwin and add them to the device operations list. ]
         this.amqpsDeviceOperationsList.add(new AmqpsDeviceTelemetry(this.deviceClientConfig));
@@ -184,6 +226,15 @@ public class AmqpsSessionDeviceOperation
         return this.amqpsAuthenticatorState;
     }
 
+    /**
+     * @return the id of the device this object handles the operations of.
+     */
+    String getDeviceId()
+    {
+        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_34_066: [The function shall return the device id from the saved device client config.]
+        return this.deviceClientConfig.getDeviceId();
+    }
+
     /**
      * Verify if all operation links are open.
      *
@@ -297,29 +348,20 @@ public class AmqpsSessionDeviceOperation
             // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_013: [The function shall return -1 if the deviceId int he connection string is not equal to the deviceId in the config.]
             if (this.deviceClientConfig.getDeviceId().equals(deviceId))
             {
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
-                byte[] msgData = new byte[1024];
-                int length;
-
-                while (true)
+                synchronized (this.messageEncoder)
                 {
-                    try
-                    {
-                        length = message.encode(msgData, 0, msgData.length);
-                        break;
-                    }
-                    catch (BufferOverflowException e)
-                    {
-                        // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
-                        msgData = new byte[msgData.length * 2];
-                    }
-                }
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
-                byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_014: [The function shall encode the message and copy the contents to the byte buffer.]
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_015: [The function shall doubles the buffer if encode throws BufferOverflowException.]
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_34_050: [The function shall encode the message into the reusable buffer of the connection encoder, presized from the estimated size of the message.]
+                    int length = this.messageEncoder.encode(message, AmqpsMessageEncoder.estimateEncodedSize(message));
 
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
-                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
-                return this.sendMessageAndGetDeliveryHash(messageType, msgData, 0, length, deliveryTag);
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_017: [The function shall set the delivery tag for the sender.]
+                    byte[] deliveryTag = String.valueOf(this.nextTag++).getBytes();
+
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_018: [The function shall call sendMessageAndGetDeliveryHash on all device operation objects.]
+                    // Codes_SRS_AMQPSESSIONDEVICEOPERATION_12_019: [The function shall return the delivery hash.]
+                    return this.sendMessageAndGetDeliveryHash(messageType, this.messageEncoder.getBuffer(), 0, length, deliveryTag);
+                }
             }
             else
             {
@@ -524,8 +566,16 @@ public class AmqpsSessionDeviceOperation
 
 
             shutDownScheduler();
-            this.taskSchedulerTokenRenewal = Executors.newScheduledThreadPool(1);
-            this.taskSchedulerTokenRenewal.scheduleAtFixedRate(this.tokenRenewalTask, 0, this.tokenRenewalPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+            if (this.sharedTaskScheduler != null)
+            {
+                // Codes_SRS_AMQPSESSIONDEVICEOPERATION_34_064: [If a shared scheduler was provided, the constructor shall schedule the token renewal on it instead of creating a scheduler.]
+                this.tokenRenewalFuture = this.sharedTaskScheduler.scheduleAtFixedRate(this.tokenRenewalTask, 0, this.tokenRenewalPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                this.taskSchedulerTokenRenewal = Executors.newScheduledThreadPool(1);
+                this.taskSchedulerTokenRenewal.scheduleAtFixedRate(this.tokenRenewalTask, 0, this.tokenRenewalPeriodInMilliseconds, TimeUnit.MILLISECONDS);
+            }
         }
     }
 
@@ -534,6 +584,13 @@ public class AmqpsSessionDeviceOperation
      */
     private void shutDownScheduler()
     {
+        if (this.tokenRenewalFuture != null)
+        {
+            // Codes_SRS_AMQPSESSIONDEVICEOPERATION_34_065: [If the token renewal runs on a shared scheduler, close shall cancel the renewal without shutting down the shared scheduler.]
+            this.tokenRenewalFuture.cancel(false);
+            this.tokenRenewalFuture = null;
+        }
+
         if (this.taskSchedulerTokenRenewal  != null)
         {
             taskSchedulerTokenRenewal.shutdown(); // Disable new tasks from being submitted
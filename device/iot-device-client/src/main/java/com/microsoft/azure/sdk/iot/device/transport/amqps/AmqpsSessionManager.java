@@ -7,13 +7,16 @@ import com.microsoft.azure.sdk.iot.device.MessageType;
 import com.microsoft.azure.sdk.iot.device.ObjectLock;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import org.apache.qpid.proton.engine.*;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 
 /**
  * Manage multiple device clients and the authentication 
- * mechanism
+ * mechanism. All the devices share the scheduler given to the
+ * constructor for their token renewal, so a connection uses the
+ * same number of threads no matter how many devices it carries.
+ * Devices can be added and removed while the session is open.
  */
 public class AmqpsSessionManager
 {
@@ -21,10 +24,11 @@ public class AmqpsSessionManager
     protected Session session = null;
 
     private AmqpsDeviceAuthentication amqpsDeviceAuthentication;
-    private ArrayList<AmqpsSessionDeviceOperation> amqpsDeviceSessionList = new ArrayList<>();
+    private List<AmqpsSessionDeviceOperation> amqpsDeviceSessionList = new CopyOnWriteArrayList<>();
 
     private long SEND_PERIOD_MILLISECONDS = 300;
-    private ScheduledExecutorService taskSchedulerCBSSend;
+    private final ScheduledExecutorService taskScheduler;
+    private final AmqpsMessageEncoder messageEncoder;
     private AmqpsDeviceAuthenticationCBSSendTask cbsAuthSendTask = null;
 
     private static final int MAX_WAIT_TO_AUTHENTICATE_MS = 10*1000;
@@ -41,6 +45,20 @@ public class AmqpsSessionManager
      * @throws TransportException if a transport error occurs.
      */
     public AmqpsSessionManager(DeviceClientConfig deviceClientConfig, ScheduledExecutorService scheduledExecutorService) throws TransportException
+    {
+        this(deviceClientConfig, scheduledExecutorService, new AmqpsMessageEncoder());
+    }
+
+    /**
+     * Constructor that takes a device configuration and the message encoder of the connection.
+     *
+     * @param deviceClientConfig the device configuration to use for
+     *                           session management.
+     * @param scheduledExecutorService the scheduler of the tasks of this object and of its device sessions.
+     * @param messageEncoder the encoder of the connection, shared by the authentication and all the device sessions.
+     * @throws TransportException if a transport error occurs.
+     */
+    public AmqpsSessionManager(DeviceClientConfig deviceClientConfig, ScheduledExecutorService scheduledExecutorService, AmqpsMessageEncoder messageEncoder) throws TransportException
     {
         // Codes_SRS_AMQPSESSIONMANAGER_12_001: [The constructor shall throw IllegalArgumentException if the deviceClientConfig parameter is null.]
         if (deviceClientConfig == null)
@@ -54,22 +72,31 @@ public class AmqpsSessionManager
             throw new IllegalArgumentException("scheduledExecutorService cannot be null.");
         }
 
+        if (messageEncoder == null)
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall give it to the CBS authentication and to every device session otherwise.]
+            throw new IllegalArgumentException("messageEncoder cannot be null.");
+        }
+        this.messageEncoder = messageEncoder;
+
         this.logger = new CustomLogger(this.getClass());
 
         // Codes_SRS_AMQPSESSIONMANAGER_12_002: [The constructor shall save the deviceClientConfig parameter value to a member variable.]
         this.deviceClientConfig = deviceClientConfig;
 
+        // Codes_SRS_AMQPSESSIONMANAGER_34_046: [The constructor shall save the scheduledExecutorService and use it for all the scheduled tasks of this object and of its device sessions.]
+        this.taskScheduler = scheduledExecutorService;
+
         // Codes_SRS_AMQPSESSIONMANAGER_12_003: [The constructor shall create AmqpsDeviceAuthenticationSAS if the authentication type is SAS.]
         switch (this.deviceClientConfig.getAuthenticationType())
         {
             case SAS_TOKEN:
                 // Codes_SRS_AMQPSESSIONMANAGER_12_005: [The constructor shall create AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
-                this.amqpsDeviceAuthentication = new AmqpsDeviceAuthenticationCBS(this.deviceClientConfig);
+                this.amqpsDeviceAuthentication = new AmqpsDeviceAuthenticationCBS(this.deviceClientConfig, this.messageEncoder);
 
                 // Codes_SRS_AMQPSESSIONMANAGER_12_006: [The constructor shall create and start a scheduler for AmqpsDeviceAuthenticationCBSTokenRenewalTask if the authentication type is CBS.]
                 this.cbsAuthSendTask = new AmqpsDeviceAuthenticationCBSSendTask((AmqpsDeviceAuthenticationCBS) this.amqpsDeviceAuthentication);
-                this.taskSchedulerCBSSend = scheduledExecutorService;
-                this.taskSchedulerCBSSend.scheduleAtFixedRate(this.cbsAuthSendTask, 0, SEND_PERIOD_MILLISECONDS, TimeUnit.MILLISECONDS);
+                this.taskScheduler.scheduleAtFixedRate(this.cbsAuthSendTask, 0, SEND_PERIOD_MILLISECONDS, TimeUnit.MILLISECONDS);
                 break;
 
             case X509_CERTIFICATE:
@@ -82,9 +109,12 @@ public class AmqpsSessionManager
     }
 
     /**
-     * Register the given device to the manager.
+     * Register the given device to the manager. If the session is
+     * already open and authenticated, the device is authenticated
+     * and its links are opened before this function returns.
      *
      * @param deviceClientConfig the device to register.
+     * @throws TransportException if the links of the device could not be opened.
      */
     final void addDeviceOperationSession(DeviceClientConfig deviceClientConfig) throws TransportException
     {
@@ -95,8 +125,49 @@ public class AmqpsSessionManager
         }
 
         // Codes_SRS_AMQPSESSIONMANAGER_12_009: [The function shall create a new  AmqpsSessionDeviceOperation with the given deviceClietnConfig and add it to the session list.]
-        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(deviceClientConfig, this.amqpsDeviceAuthentication);
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(deviceClientConfig, this.amqpsDeviceAuthentication, this.taskScheduler, this.messageEncoder);
         this.amqpsDeviceSessionList.add(amqpsSessionDeviceOperation);
+
+        if (this.session != null && this.isAuthenticationOpened())
+        {
+            // Codes_SRS_AMQPSESSIONMANAGER_34_047: [If the session is open and authenticated, the function shall authenticate the new device session and open its links.]
+            amqpsSessionDeviceOperation.authenticate();
+            this.openDeviceOperationLinks(amqpsSessionDeviceOperation);
+        }
+    }
+
+    /**
+     * Unregister the given device from the manager and close its
+     * links. The session and the links of the other devices are
+     * left open.
+     *
+     * @param deviceId the id of the device to unregister.
+     * @return true if the device was registered, false otherwise.
+     */
+    boolean removeDeviceOperationSession(String deviceId)
+    {
+        for (AmqpsSessionDeviceOperation amqpsSessionDeviceOperation : this.amqpsDeviceSessionList)
+        {
+            if (amqpsSessionDeviceOperation.getDeviceId().equals(deviceId))
+            {
+                // Codes_SRS_AMQPSESSIONMANAGER_34_048: [The function shall close the device session with the given device id and remove it from the session list.]
+                amqpsSessionDeviceOperation.close();
+                this.amqpsDeviceSessionList.remove(amqpsSessionDeviceOperation);
+                return true;
+            }
+        }
+
+        // Codes_SRS_AMQPSESSIONMANAGER_34_049: [If no device session has the given device id, the function shall return false.]
+        return false;
+    }
+
+    /**
+     * @return the number of devices registered to the manager.
+     */
+    int getDeviceOperationSessionCount()
+    {
+        // Codes_SRS_AMQPSESSIONMANAGER_34_050: [The function shall return the size of the session list.]
+        return this.amqpsDeviceSessionList.size();
     }
 
     /**
@@ -178,22 +249,7 @@ public class AmqpsSessionManager
             {
                 if (this.amqpsDeviceSessionList.get(i) != null)
                 {
-                    // Codes_SRS_AMQPSESSIONMANAGER_12_019: [The function shall call openLinks on all session list members.]
-                    this.amqpsDeviceSessionList.get(i).openLinks(this.session);
-
-                    synchronized (this.openLinksLock)
-                    {
-                        try
-                        {
-                            // Codes_SRS_AMQPSESSIONMANAGER_12_020: [The function shall lock the execution with waitLock.]
-                            this.openLinksLock.waitLock(MAX_WAIT_TO_AUTHENTICATE_MS);
-                        }
-                        catch (InterruptedException e)
-                        {
-                            // Codes_SRS_AMQPSESSIONMANAGER_12_021: [The function shall throw TransportException if the lock throws.]
-                            throw new TransportException("Waited too long for the connection to onConnectionInit.");
-                        }
-                    }
+                    this.openDeviceOperationLinks(this.amqpsDeviceSessionList.get(i));
                 }
             }
         }
@@ -201,6 +257,26 @@ public class AmqpsSessionManager
         logger.LogDebug("Exited from method %s", logger.getMethodName());
     }
 
+    private void openDeviceOperationLinks(AmqpsSessionDeviceOperation amqpsSessionDeviceOperation) throws TransportException
+    {
+        // Codes_SRS_AMQPSESSIONMANAGER_12_019: [The function shall call openLinks on all session list members.]
+        amqpsSessionDeviceOperation.openLinks(this.session);
+
+        synchronized (this.openLinksLock)
+        {
+            try
+            {
+                // Codes_SRS_AMQPSESSIONMANAGER_12_020: [The function shall lock the execution with waitLock.]
+                this.openLinksLock.waitLock(MAX_WAIT_TO_AUTHENTICATE_MS);
+            }
+            catch (InterruptedException e)
+            {
+                // Codes_SRS_AMQPSESSIONMANAGER_12_021: [The function shall throw TransportException if the lock throws.]
+                throw new TransportException("Waited too long for the connection to onConnectionInit.");
+            }
+        }
+    }
+
     /**
      * Event handler for connection initialization. 
      * Open the session and the links. 
@@ -538,21 +614,22 @@ public class AmqpsSessionManager
     }
 
     /**
-     * Shut down the CBS authentication sender thread
+     * Shut down the scheduler running the CBS authentication sender
+     * and the token renewal of all devices
      */
     private void shutDownScheduler()
     {
-        if (this.taskSchedulerCBSSend != null)
+        if (this.taskScheduler != null)
         {
-            this.taskSchedulerCBSSend.shutdown(); // Disable new tasks from being submitted
+            this.taskScheduler.shutdown(); // Disable new tasks from being submitted
             try
             {
                 // Wait a while for existing tasks to terminate
-                if (!this.taskSchedulerCBSSend.awaitTermination(10, TimeUnit.SECONDS))
+                if (!this.taskScheduler.awaitTermination(10, TimeUnit.SECONDS))
                 {
-                    this.taskSchedulerCBSSend.shutdownNow(); // Cancel currently executing tasks
+                    this.taskScheduler.shutdownNow(); // Cancel currently executing tasks
                     // Wait a while for tasks to respond to being cancelled
-                    if (!this.taskSchedulerCBSSend.awaitTermination(10, TimeUnit.SECONDS))
+                    if (!this.taskScheduler.awaitTermination(10, TimeUnit.SECONDS))
                     {
                         System.err.println("taskSchedulerTokenRenewal did not terminate correctly");
                     }
@@ -561,7 +638,7 @@ public class AmqpsSessionManager
             catch (InterruptedException ie)
             {
                 // (Re-)Cancel if current thread also interrupted
-                this.taskSchedulerCBSSend.shutdownNow();
+                this.taskScheduler.shutdownNow();
                 // Preserve interrupt status
                 Thread.currentThread().interrupt();
             }
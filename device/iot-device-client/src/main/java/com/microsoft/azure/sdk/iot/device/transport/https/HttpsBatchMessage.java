@@ -9,6 +9,7 @@ import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,11 +17,17 @@ import java.util.Map;
 /**
  * Builds a batched IoT Hub request body as a JSON array. The batched message
  * has a maximum size of 256 kb.
+ *
+ * Each added message is encoded once and appended to a growable buffer, so
+ * building a batch of n messages takes time linear in the size of the batch.
  */
 public final class HttpsBatchMessage implements HttpsMessage
 {
-    // Note: this limit is defined by the IoT Hub.
-    private static final int SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES = 255 * 1024 - 1;
+    /**
+     * The maximum size, in bytes, of a batched message, including the
+     * brackets of the JSON array. Note: this limit is defined by the IoT Hub.
+     */
+    public static final int SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES = 255 * 1024 - 1;
 
     /**
      * The value for the "content-type" header field in a batched HTTPS
@@ -34,8 +41,20 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     private static final Charset BATCH_CHARSET = StandardCharsets.UTF_8;
 
-    /** The current batched message body. */
-    private String batchBody;
+    private static final byte JSON_ARRAY_OPEN = '[';
+    private static final byte JSON_ARRAY_CLOSE = ']';
+    private static final byte JSON_ARRAY_SEPARATOR = ',';
+
+    private static final int INITIAL_BUFFER_SIZE_BYTES = 1024;
+
+    /**
+     * The UTF-8 encoded JSON objects of the batched messages, separated by
+     * commas, without the enclosing brackets of the JSON array.
+     */
+    private byte[] batchBody;
+
+    /** The number of bytes in use in {@code batchBody}. */
+    private int batchBodyLength;
 
     /** The current number of messages in the batch. */
     private int numMsgs;
@@ -44,7 +63,8 @@ public final class HttpsBatchMessage implements HttpsMessage
     public HttpsBatchMessage()
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_001: [The constructor shall initialize the batch message with the body as an empty JSON array.]
-        this.batchBody = "[]";
+        this.batchBody = new byte[INITIAL_BUFFER_SIZE_BYTES];
+        this.batchBodyLength = 0;
         this.numMsgs = 0;
     }
 
@@ -59,25 +79,44 @@ public final class HttpsBatchMessage implements HttpsMessage
      */
     public void addMessage(HttpsSingleMessage msg) throws IotHubSizeExceededException
     {
-        String jsonMsg = msgToJson(msg);
-        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
-        String newBatchBody = addJsonObjToArray(jsonMsg, this.batchBody);
+        byte[] jsonMsg = msgToJson(msg).getBytes(BATCH_CHARSET);
+        int separatorLength = (this.numMsgs > 0) ? 1 : 0;
+        int newBatchBodyLength = this.batchBodyLength + separatorLength + jsonMsg.length;
 
         // Codes_SRS_HTTPSBATCHMESSAGE_11_008: [If adding the message causes the batched message to exceed 256 kb in size, the function shall throw a IotHubSizeExceededException.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a IotHubSizeExceededException, the batched message shall remain as if the message was never added.]
-        byte[] newBatchBodyBytes = newBatchBody.getBytes(BATCH_CHARSET);
-
-        if (newBatchBodyBytes.length > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
+        // the size includes the opening and closing brackets of the JSON array
+        int newBatchSize = newBatchBodyLength + 2;
+        if (newBatchSize > SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES)
         {
             String errMsg = String.format("Service-bound message size (%d bytes) cannot exceed %d bytes.",
-                    newBatchBodyBytes.length, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
+                    newBatchSize, SERVICEBOUND_MESSAGE_MAX_SIZE_BYTES);
             throw new IotHubSizeExceededException(errMsg);
         }
 
-        this.batchBody = newBatchBody;
+        // Codes_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+        ensureCapacity(newBatchBodyLength);
+        if (separatorLength > 0)
+        {
+            this.batchBody[this.batchBodyLength++] = JSON_ARRAY_SEPARATOR;
+        }
+
+        System.arraycopy(jsonMsg, 0, this.batchBody, this.batchBodyLength, jsonMsg.length);
+        this.batchBodyLength = newBatchBodyLength;
         this.numMsgs++;
     }
 
+    /**
+     * Returns the size, in bytes, of the UTF-8 encoded batch body.
+     *
+     * @return the size, in bytes, of the UTF-8 encoded batch body.
+     */
+    public int getBodySize()
+    {
+        // Codes_SRS_HTTPSBATCHMESSAGE_34_014: [The function shall return the size of the batch body in bytes, including the brackets of the JSON array.]
+        return this.batchBodyLength + 2;
+    }
+
     /**
      * Returns the current batch body as a UTF-8 encoded byte array.
      *
@@ -87,7 +126,11 @@ public final class HttpsBatchMessage implements HttpsMessage
     {
         // Codes_SRS_HTTPSBATCHMESSAGE_11_006: [The function shall return the current batch message body.]
         // Codes_SRS_HTTPSBATCHMESSAGE_11_007: [The batch message body shall be encoded using UTF-8.]
-        return this.batchBody.getBytes(BATCH_CHARSET);
+        byte[] body = new byte[this.batchBodyLength + 2];
+        body[0] = JSON_ARRAY_OPEN;
+        System.arraycopy(this.batchBody, 0, body, 1, this.batchBodyLength);
+        body[body.length - 1] = JSON_ARRAY_CLOSE;
+        return body;
     }
 
     /**
@@ -184,24 +227,18 @@ public final class HttpsBatchMessage implements HttpsMessage
     }
 
     /**
-     * Adds a JSON object to a JSON array.
-     *
-     * @param jsonObj the object to be added to the JSON array.
-     * @param jsonArray the JSON array.
+     * Grows the batch body buffer, if needed, so that it can hold at least the
+     * provided number of bytes. The buffer at least doubles every time it
+     * grows, so appending is amortized constant time per byte.
      *
-     * @return the JSON string representation of the JSON array with the object
-     * added.
+     * @param minCapacity the number of bytes the buffer must be able to hold.
      */
-    private static String addJsonObjToArray(String jsonObj, String jsonArray)
+    private void ensureCapacity(int minCapacity)
     {
-        if (jsonArray.equals("[]"))
+        if (minCapacity > this.batchBody.length)
         {
-            return "[" + jsonObj + "]";
+            int newCapacity = Math.max(minCapacity, this.batchBody.length * 2);
+            this.batchBody = Arrays.copyOf(this.batchBody, newCapacity);
         }
-
-        // removes the closing brace of the JSON array.
-        String openJsonArray = jsonArray.substring(0, jsonArray.length() - 1);
-
-        return openJsonArray + "," + jsonObj + "]";
     }
 }
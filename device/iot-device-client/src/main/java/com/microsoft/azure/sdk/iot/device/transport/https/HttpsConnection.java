@@ -6,6 +6,7 @@ package com.microsoft.azure.sdk.iot.device.transport.https;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.microsoft.azure.sdk.iot.deps.transport.http.HttpMethod;
+import com.microsoft.azure.sdk.iot.deps.transport.http.HttpStreamReader;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -16,7 +17,6 @@ import java.net.HttpURLConnection;
 import java.net.NoRouteToHostException;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -221,7 +221,7 @@ public class HttpsConnection
             try (InputStream inputStream = this.connection.getInputStream())
             {
                 // Codes_SRS_HTTPSCONNECTION_11_011: [The function shall read from the input stream (response stream) and return the response.]
-                input = readInputStream(inputStream);
+                input = readInputStream(inputStream, this.connection.getContentLength());
 
                 // Codes_SRS_HTTPSCONNECTION_11_019: [The function shall close the input stream after it has been completely read.]
             }
@@ -257,7 +257,7 @@ public class HttpsConnection
                 // if there is no error reason, getErrorStream() returns null.
                 if (errorStream != null)
                 {
-                    error = readInputStream(errorStream);
+                    error = readInputStream(errorStream, this.connection.getContentLength());
                 }
 
                 // Codes_SRS_HTTPSCONNECTION_11_020: [The function shall close the error stream after it has been completely read.]
@@ -311,32 +311,18 @@ public class HttpsConnection
      * Reads the input stream until the stream is empty.
      *
      * @param stream the input stream.
+     * @param expectedLength the expected length of the content, or a negative value if it is unknown.
      *
      * @return the content of the input stream.
      *
      * @throws TransportException if the input stream could not be read from.
      */
-    private static byte[] readInputStream(InputStream stream) throws TransportException
+    private static byte[] readInputStream(InputStream stream, int expectedLength) throws TransportException
     {
         try
         {
-            ArrayList<Byte> byteBuffer = new ArrayList<>();
-            int nextByte = -1;
-            // read(byte[]) reads the byte into the buffer and returns the number
-            // of bytes read, or -1 if the end of the stream has been reached.
-            while ((nextByte = stream.read()) > -1)
-            {
-                byteBuffer.add((byte) nextByte);
-            }
-
-            int bufferSize = byteBuffer.size();
-            byte[] byteArray = new byte[bufferSize];
-            for (int i = 0; i < bufferSize; ++i)
-            {
-                byteArray[i] = byteBuffer.get(i);
-            }
-
-            return byteArray;
+            // Codes_SRS_HTTPSCONNECTION_34_032: [The function shall read the stream in chunks, presizing the buffer from the content length when it is known.]
+            return HttpStreamReader.readFully(stream, expectedLength);
         }
         catch (IOException e)
         {
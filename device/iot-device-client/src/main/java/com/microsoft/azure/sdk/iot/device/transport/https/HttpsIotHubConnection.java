@@ -15,6 +15,7 @@ import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -152,6 +153,48 @@ public class HttpsIotHubConnection implements IotHubTransportConnection
         }
     }
 
+    /**
+     * Sends a batch of event messages in a single request.
+     *
+     * @param batchMessage the batch built from the event messages.
+     * @param messages the event messages in the batch.
+     *
+     * @return the IotHubStatusCode from sending the batch.
+     *
+     * @throws TransportException if the IoT Hub could not be reached.
+     */
+    public IotHubStatusCode sendBatchMessage(HttpsBatchMessage batchMessage, Collection<Message> messages) throws TransportException
+    {
+        synchronized (HTTPS_CONNECTION_LOCK)
+        {
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_34_076: [The function shall send a POST request to the same URL as sendMessage, with the batch body as the request body.]
+            IotHubEventUri iotHubEventUri = new IotHubEventUri(getHostName(), this.config.getDeviceId(), this.config.getModuleId());
+            URL eventUrl = this.buildUrlFromString(HTTPS_HEAD_TAG + iotHubEventUri.toString());
+            HttpsRequest request = new HttpsRequest(eventUrl, HttpsMethod.POST, batchMessage.getBody(), this.config.getProductInfo().getUserAgentString());
+
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_34_077: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events' and the header field 'content-type' to be the batch content type.]
+            request.setHeaderField(HTTPS_PROPERTY_IOTHUB_TO_TAG, iotHubEventUri.getPath())
+                    .setHeaderField(HTTPS_PROPERTY_CONTENT_TYPE_TAG, batchMessage.getContentType());
+
+            HttpsResponse response = this.sendRequest(request);
+
+            IotHubStatusCode status = IotHubStatusCode.getIotHubStatusCode(response.getStatus());
+            TransportException batchException = null;
+            if (status != IotHubStatusCode.OK && status != IotHubStatusCode.OK_EMPTY)
+            {
+                batchException = IotHubStatusCode.getConnectionStatusException(status, "");
+            }
+
+            // Codes_SRS_HTTPSIOTHUBCONNECTION_34_078: [The function shall notify its listener that each message of the batch was sent, with no exception if the response from the service is OK or OK_EMPTY, and with the mapped IotHubServiceException otherwise.]
+            for (Message message : messages)
+            {
+                this.listener.onMessageSent(message, batchException);
+            }
+
+            return status;
+        }
+    }
+
     /**
      * Sends an generic https message.
      *
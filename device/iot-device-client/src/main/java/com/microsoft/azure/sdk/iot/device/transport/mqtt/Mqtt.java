@@ -30,6 +30,9 @@ abstract public class Mqtt implements MqttCallback
     private static final int CONNECTION_TIMEOUT = 60 * 1000;
     private static final int DISCONNECTION_TIMEOUT = 60 * 1000;
 
+    // Upper bound on how long a publish waits for a slot in the in flight window before checking the connection again
+    private static final long IN_FLIGHT_WAIT_MILLISECONDS = 100;
+
     private MqttConnection mqttConnection;
     private MqttMessageListener messageListener;
     ConcurrentLinkedQueue<Pair<String, byte[]>> allReceivedMessages;
@@ -47,8 +50,6 @@ abstract public class Mqtt implements MqttCallback
     private final static String MESSAGE_SYSTEM_PROPERTY_IDENTIFIER_ENCODED = "%24";
     private final static char MESSAGE_SYSTEM_PROPERTY_IDENTIFIER_DECODED = '$';
     final static char MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR = '=';
-    private final static int PROPERTY_KEY_INDEX = 0;
-    private final static int PROPERTY_VALUE_INDEX = 1;
 
     /* The system property keys expected in a message */
     //This may be common with amqp as well
@@ -151,6 +152,9 @@ abstract public class Mqtt implements MqttCallback
             //Codes_SRS_Mqtt_25_009: [The function shall close the MQTT client.]
             this.mqttConnection.close();
             this.mqttConnection.setMqttAsyncClient(null);
+
+            //Codes_SRS_Mqtt_34_061: [The function shall release all slots of the in flight window, since deliveries in flight on the closed client will never complete.]
+            this.mqttConnection.getInFlightWindow().reset();
         }
         catch (MqttException e)
         {
@@ -200,11 +204,11 @@ abstract public class Mqtt implements MqttCallback
 
             byte[] payload = message.getBytes();
 
-            while (this.mqttConnection.getMqttAsyncClient().getPendingDeliveryTokens().length >= MqttConnection.MAX_IN_FLIGHT_COUNT)
-            {
-                //Codes_SRS_Mqtt_25_048: [publish shall check for pending publish tokens by calling getPendingDeliveryTokens. And if there are pending tokens publish shall sleep until the number of pending tokens are less than 10 as per paho limitations]
-                Thread.sleep(10);
+            MqttInFlightWindow inFlightWindow = this.mqttConnection.getInFlightWindow();
 
+            //Codes_SRS_Mqtt_34_059: [publish shall take a slot in the connection's in flight window, waiting for an earlier publish to be acknowledged if the window is full.]
+            while (!inFlightWindow.tryAcquire(IN_FLIGHT_WAIT_MILLISECONDS))
+            {
                 if (this.mqttConnection.getMqttAsyncClient() == null)
                 {
                     TransportException transportException = new TransportException("Connection was lost while waiting for mqtt deliveries to finish");
@@ -215,7 +219,7 @@ abstract public class Mqtt implements MqttCallback
                 if (!this.mqttConnection.getMqttAsyncClient().isConnected())
                 {
                     //Codes_SRS_Mqtt_25_012: [If the MQTT connection is closed, the function shall throw a ProtocolException.]
-                    TransportException transportException = new TransportException("Cannot publish when mqtt client is holding 10 tokens and is disconnected");
+                    TransportException transportException = new TransportException("Cannot publish when mqtt client is holding " + inFlightWindow.getMaxInFlightCount() + " tokens and is disconnected");
                     transportException.setRetryable(true);
                     throw transportException;
                 }
@@ -225,11 +229,24 @@ abstract public class Mqtt implements MqttCallback
 
             mqttMessage.setQos(MqttConnection.QOS);
 
-            synchronized (this.publishLock)
+            boolean published = false;
+            try
+            {
+                synchronized (this.publishLock)
+                {
+                    //Codes_SRS_Mqtt_25_014: [The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.]
+                    IMqttDeliveryToken publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
+                    unacknowledgedSentMessages.put(publishToken.getMessageId(), message);
+                    published = true;
+                }
+            }
+            finally
             {
-                //Codes_SRS_Mqtt_25_014: [The function shall publish message payload on the publishTopic specified to the IoT Hub given in the configuration.]
-                IMqttDeliveryToken publishToken = this.mqttConnection.getMqttAsyncClient().publish(publishTopic, mqttMessage);
-                unacknowledgedSentMessages.put(publishToken.getMessageId(), message);
+                if (!published)
+                {
+                    //Codes_SRS_Mqtt_34_060: [If the message could not be published, publish shall give its slot in the in flight window back.]
+                    inFlightWindow.release();
+                }
             }
         }
         catch (MqttException e)
@@ -408,6 +425,9 @@ abstract public class Mqtt implements MqttCallback
     @Override
     public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken)
     {
+        //Codes_SRS_Mqtt_34_062: [This function shall release a slot in the in flight window so that the next publish can proceed.]
+        this.mqttConnection.getInFlightWindow().release();
+
         Message deliveredMessage = null;
         synchronized (this.publishLock)
         {
@@ -474,19 +494,19 @@ abstract public class Mqtt implements MqttCallback
             //Codes_SRS_Mqtt_34_041: [This method shall call assignPropertiesToMessage so that all properties from the topic string can be assigned to the message]
             assignPropertiesToMessage(message, propertiesString);
 
-            String routeString = topic.substring(0, propertiesStringStartingIndex);
-            String[] routeComponents = routeString.split("/");
+            //the route is tokenized in place rather than copied and split
+            TopicParser routeParser = new TopicParser(topic, propertiesStringStartingIndex);
 
-            if (routeComponents.length > 2 && routeComponents[2].equals(MODULES_PATH_STRING))
+            if (routeParser.getTokenCount() > 3 && routeParser.tokenEquals(2, MODULES_PATH_STRING))
             {
                 //Codes_SRS_Mqtt_34_051: [This function shall extract the moduleId from the topic if the topic string fits the following convention: 'devices/<deviceId>/modules/<moduleId>']
-                message.setConnectionModuleId(routeComponents[3]);
+                message.setConnectionModuleId(routeParser.getToken(3));
             }
 
-            if (routeComponents.length > 4 && routeComponents[4].equals(INPUTS_PATH_STRING))
+            if (routeParser.getTokenCount() > 5 && routeParser.tokenEquals(4, INPUTS_PATH_STRING))
             {
                 //Codes_SRS_Mqtt_34_050: [This function shall extract the inputName from the topic if the topic string fits the following convention: 'devices/<deviceId>/modules/<moduleId>/inputs/<inputName>']
-                message.setInputName(routeComponents[5]);
+                message.setInputName(routeParser.getToken(5));
             }
         }
 
@@ -504,24 +524,29 @@ abstract public class Mqtt implements MqttCallback
     {
         //Codes_SRS_Mqtt_34_054: [A message may have 0 to many custom properties]
         //expected format is <key>=<value><MESSAGE_PROPERTY_SEPARATOR><key>=<value><MESSAGE_PROPERTY_SEPARATOR>...
-        for (String propertyString : propertiesString.split(String.valueOf(MESSAGE_PROPERTY_SEPARATOR)))
+        //The string is parsed in a single pass by index. Like String.split, trailing separators are ignored.
+        int propertiesEndIndex = propertiesString.length();
+        while (propertiesEndIndex > 0 && propertiesString.charAt(propertiesEndIndex - 1) == MESSAGE_PROPERTY_SEPARATOR)
         {
-            if (propertyString.contains("="))
+            propertiesEndIndex--;
+        }
+
+        int propertyStartIndex = 0;
+        while (propertyStartIndex <= propertiesEndIndex)
+        {
+            int propertyEndIndex = propertiesString.indexOf(MESSAGE_PROPERTY_SEPARATOR, propertyStartIndex);
+            if (propertyEndIndex == -1 || propertyEndIndex > propertiesEndIndex)
+            {
+                propertyEndIndex = propertiesEndIndex;
+            }
+
+            int keyValueSeparatorIndex = propertiesString.indexOf(MESSAGE_PROPERTY_KEY_VALUE_SEPARATOR, propertyStartIndex);
+            if (keyValueSeparatorIndex != -1 && keyValueSeparatorIndex < propertyEndIndex)
             {
                 //Expected format is <key>=<value> where both key and value may be encoded
-                String key = propertyString.split("=")[PROPERTY_KEY_INDEX];
-                String value = propertyString.split("=")[PROPERTY_VALUE_INDEX];
-                try
-                {
-                    //Codes_SRS_Mqtt_34_053: [A property's key and value may include unusual characters such as &, %, $]
-                    key = URLDecoder.decode(key, StandardCharsets.UTF_8.name());
-                    value = URLDecoder.decode(value, StandardCharsets.UTF_8.name());
-                }
-                catch (UnsupportedEncodingException e)
-                {
-                    // should never happen, since the encoding is hard-coded.
-                    throw new IllegalStateException(e);
-                }
+                //Codes_SRS_Mqtt_34_053: [A property's key and value may include unusual characters such as &, %, $]
+                String key = decodePropertyComponent(propertiesString, propertyStartIndex, keyValueSeparatorIndex);
+                String value = decodePropertyComponent(propertiesString, keyValueSeparatorIndex + 1, propertyEndIndex);
 
                 //Some properties are reserved system properties and must be saved in the message differently
                 //Codes_SRS_Mqtt_34_057: [This function shall parse the messageId, correlationId, outputname, content encoding and content type from the provided property string]
@@ -561,8 +586,44 @@ abstract public class Mqtt implements MqttCallback
             else
             {
                 //Codes_SRS_Mqtt_34_051: [If a topic string's property's key and value are not separated by the '=' symbol, an IllegalArgumentException shall be thrown]
-                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: " + propertyString);
+                throw new IllegalArgumentException("Unexpected property string provided. Expected '=' symbol between key and value of the property in string: "
+                        + propertiesString.substring(propertyStartIndex, propertyEndIndex));
+            }
+
+            propertyStartIndex = propertyEndIndex + 1;
+        }
+    }
+
+    /**
+     * URL decodes part of a property string. Most keys and values are not encoded at all, so they are returned as is
+     * without going through the decoder.
+     * @param propertiesString the string containing the encoded component
+     * @param startIndex the index of the first character of the component
+     * @param endIndex the index after the last character of the component
+     * @return the decoded component
+     * @throws IllegalStateException if UTF-8 is not supported
+     */
+    private static String decodePropertyComponent(String propertiesString, int startIndex, int endIndex) throws IllegalStateException
+    {
+        String component = propertiesString.substring(startIndex, endIndex);
+        for (int i = 0; i < component.length(); i++)
+        {
+            char c = component.charAt(i);
+            if (c == '%' || c == '+')
+            {
+                try
+                {
+                    return URLDecoder.decode(component, StandardCharsets.UTF_8.name());
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    // should never happen, since the encoding is hard-coded.
+                    throw new IllegalStateException(e);
+                }
             }
         }
+
+        //Codes_SRS_Mqtt_34_058: [If a property's key or value does not contain any encoded characters, it shall be used without decoding.]
+        return component;
     }
 }
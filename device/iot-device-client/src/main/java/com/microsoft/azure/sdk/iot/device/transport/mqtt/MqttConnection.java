@@ -30,8 +30,10 @@ public class MqttConnection
     static final int QOS = 1;
     static final int MAX_SUBSCRIBE_ACK_WAIT_TIME = 15 * 1000;
 
-    // paho mqtt only supports 10 messages in flight at the same time
-    static final int MAX_IN_FLIGHT_COUNT = 10;
+    // paho mqtt allows 10 messages in flight at the same time unless configured otherwise
+    static final int DEFAULT_MAX_IN_FLIGHT_COUNT = 10;
+
+    private MqttInFlightWindow inFlightWindow = new MqttInFlightWindow(DEFAULT_MAX_IN_FLIGHT_COUNT);
 
     /**
      * Constructor to create MqttAsync Client with Paho
@@ -182,6 +184,38 @@ public class MqttConnection
         return this.mqttLock;
     }
 
+    /**
+     * Sets the window that limits the number of publishes waiting for an acknowledgement on this connection. Paho's own
+     * in flight limit is raised to match, so that it never rejects a publish that the window let through.
+     * @param inFlightWindow the window to use
+     * @throws IllegalArgumentException if inFlightWindow is null
+     */
+    void setInFlightWindow(MqttInFlightWindow inFlightWindow) throws IllegalArgumentException
+    {
+        if (inFlightWindow == null)
+        {
+            //Codes_SRS_MQTTCONNECTION_34_030: [If the provided window is null, this method shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("inFlightWindow cannot be null");
+        }
+
+        //Codes_SRS_MQTTCONNECTION_34_031: [This method shall save the window and set the max in flight count of the connection options to the window size.]
+        this.inFlightWindow = inFlightWindow;
+        if (this.connectionOptions != null)
+        {
+            this.connectionOptions.setMaxInflight(inFlightWindow.getMaxInFlightCount());
+        }
+    }
+
+    /**
+     * Getter for the in flight window
+     * @return the window that limits the number of publishes waiting for an acknowledgement on this connection
+     */
+    MqttInFlightWindow getInFlightWindow()
+    {
+        //Codes_SRS_MQTTCONNECTION_34_032: [Getter for the in flight window.]
+        return this.inFlightWindow;
+    }
+
     /**
      * Getter for connection Options
      * @return the connection options to be used for Mqtt
@@ -0,0 +1,158 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.transport.LatencyHistogram;
+
+/**
+ * Limits the number of QoS 1 publishes that are waiting for a PUBACK. A publish takes a slot before it is handed to
+ * Paho and the slot is given back when its delivery completes, which wakes the next waiting publish straight away
+ * instead of on the next poll of Paho's pending delivery tokens.
+ *
+ * The counters are meant to be read as metrics: a peak that keeps hitting the maximum together with long waits means
+ * the window is too small for the round trip time of the link.
+ */
+public final class MqttInFlightWindow
+{
+    private final int maxInFlightCount;
+    private final Object windowLock = new Object();
+
+    private int inFlightCount;
+    private int peakInFlightCount;
+    private long fullWindowCount;
+
+    private final LatencyHistogram waitLatencyHistogram = new LatencyHistogram();
+
+    /**
+     * Constructor
+     * @param maxInFlightCount the maximum number of publishes that may wait for an acknowledgement at the same time
+     * @throws IllegalArgumentException if maxInFlightCount is less than 1
+     */
+    public MqttInFlightWindow(int maxInFlightCount) throws IllegalArgumentException
+    {
+        if (maxInFlightCount < 1)
+        {
+            //Codes_SRS_MQTTINFLIGHTWINDOW_34_001: [If the provided max in flight count is less than 1, this function shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("maxInFlightCount must be at least 1");
+        }
+
+        //Codes_SRS_MQTTINFLIGHTWINDOW_34_002: [The constructor shall save the provided max in flight count.]
+        this.maxInFlightCount = maxInFlightCount;
+    }
+
+    /**
+     * Takes a slot in the window, waiting until one is released if the window is full.
+     * @param timeoutMilliseconds the maximum time to wait for a slot
+     * @return true if a slot was taken, false if the timeout elapsed first
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    boolean tryAcquire(long timeoutMilliseconds) throws InterruptedException
+    {
+        synchronized (this.windowLock)
+        {
+            long startTime = System.currentTimeMillis();
+            if (this.inFlightCount >= this.maxInFlightCount)
+            {
+                this.fullWindowCount++;
+            }
+
+            //Codes_SRS_MQTTINFLIGHTWINDOW_34_003: [If the window is full, this function shall wait until a slot is released or the timeout elapses.]
+            while (this.inFlightCount >= this.maxInFlightCount)
+            {
+                long remainingMilliseconds = timeoutMilliseconds - (System.currentTimeMillis() - startTime);
+                if (remainingMilliseconds <= 0)
+                {
+                    //Codes_SRS_MQTTINFLIGHTWINDOW_34_004: [If the timeout elapses before a slot is released, this function shall return false.]
+                    return false;
+                }
+
+                this.windowLock.wait(remainingMilliseconds);
+            }
+
+            //Codes_SRS_MQTTINFLIGHTWINDOW_34_005: [This function shall take a slot, record how long it waited for it, and return true.]
+            this.inFlightCount++;
+            this.peakInFlightCount = Math.max(this.peakInFlightCount, this.inFlightCount);
+            this.waitLatencyHistogram.record(System.currentTimeMillis() - startTime);
+            return true;
+        }
+    }
+
+    /**
+     * Gives back a slot and wakes up a publish waiting for it.
+     */
+    void release()
+    {
+        synchronized (this.windowLock)
+        {
+            //Codes_SRS_MQTTINFLIGHTWINDOW_34_006: [If a slot is taken, this function shall release it and wake up the threads waiting for a slot.]
+            if (this.inFlightCount > 0)
+            {
+                this.inFlightCount--;
+                this.windowLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Releases all slots. Used when the connection is lost, since the deliveries in flight on it will never complete.
+     */
+    void reset()
+    {
+        synchronized (this.windowLock)
+        {
+            //Codes_SRS_MQTTINFLIGHTWINDOW_34_007: [This function shall release every slot and wake up the threads waiting for a slot.]
+            this.inFlightCount = 0;
+            this.windowLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the maximum number of publishes that may wait for an acknowledgement at the same time
+     */
+    public int getMaxInFlightCount()
+    {
+        return this.maxInFlightCount;
+    }
+
+    /**
+     * @return the number of publishes currently waiting for an acknowledgement
+     */
+    public int getInFlightCount()
+    {
+        synchronized (this.windowLock)
+        {
+            return this.inFlightCount;
+        }
+    }
+
+    /**
+     * @return the largest number of publishes that have waited for an acknowledgement at the same time
+     */
+    public int getPeakInFlightCount()
+    {
+        synchronized (this.windowLock)
+        {
+            return this.peakInFlightCount;
+        }
+    }
+
+    /**
+     * @return the number of publishes that found the window full and had to wait for a slot
+     */
+    public long getFullWindowCount()
+    {
+        synchronized (this.windowLock)
+        {
+            return this.fullWindowCount;
+        }
+    }
+
+    /**
+     * @return the histogram of how long publishes waited for a slot in the window
+     */
+    public LatencyHistogram getWaitLatencyHistogram()
+    {
+        return this.waitLatencyHistogram;
+    }
+}
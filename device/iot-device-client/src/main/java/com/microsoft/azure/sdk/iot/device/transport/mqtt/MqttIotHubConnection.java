@@ -171,6 +171,10 @@ public class MqttIotHubConnection implements IotHubTransportConnection, MqttMess
                             clientId, this.iotHubUserName, this.iotHubUserPassword, sslContext);
                 }
 
+                //Codes_SRS_MQTTIOTHUBCONNECTION_34_066: [This function shall limit the publishes in flight on the connection with the in flight window saved in the config.]
+                this.config.getMqttInFlightWindow().reset();
+                mqttConnection.setInFlightWindow(this.config.getMqttInFlightWindow());
+
                 //Codes_SRS_MQTTIOTHUBCONNECTION_34_030: [This function shall instantiate this object's MqttMessaging object with this object as the listener.]
                 this.deviceMessaging = new MqttMessaging(mqttConnection, this.config.getDeviceId(), this.listener, this, this.connectionId, this.config.getModuleId(), this.config.getGatewayHostname() != null);
                 this.mqttConnection.setMqttCallback(this.deviceMessaging);
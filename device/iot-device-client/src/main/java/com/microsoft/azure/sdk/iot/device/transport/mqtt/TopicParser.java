@@ -7,8 +7,13 @@ import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 
 public class TopicParser
 {
-    private String[] topicTokens = null;
+    private final String topic;
 
+    // The topic is parsed in place; only the part of the string before this index is considered
+    private final int topicEndIndex;
+    private final int tokenCount;
+
+    private final char SEPARATOR = '/';
     private final String QUESTION = "?";
 
     private final String REQ_ID = "$rid=";
@@ -23,22 +28,130 @@ public class TopicParser
         }
 
         //Codes_SRS_TopicParser_25_001: [The constructor shall spilt the topic by "/" and save the tokens.]
-        this.topicTokens = topic.split("/");
+        this.topic = topic;
+        this.topicEndIndex = topic.length();
+        this.tokenCount = countTokens(topic, topic.length());
+    }
+
+    /**
+     * Creates a parser over the first endIndex characters of the topic, without copying them.
+     * @param topic the topic to parse
+     * @param endIndex the index of the first character that is not part of the topic
+     */
+    TopicParser(String topic, int endIndex)
+    {
+        if (topic == null || endIndex < 0 || endIndex > topic.length())
+        {
+            //Codes_SRS_TopicParser_34_015: [The constructor shall throw IllegalArgumentException if topic is null or endIndex is outside of the topic.]
+            throw new IllegalArgumentException("topic cannot be null and endIndex must be within the topic");
+        }
+
+        //Codes_SRS_TopicParser_34_016: [The constructor shall tokenize the topic up to endIndex by "/" the same way String.split does, without copying it.]
+        this.topic = topic;
+        this.topicEndIndex = endIndex;
+        this.tokenCount = countTokens(topic, endIndex);
+    }
+
+    private int countTokens(String topic, int endIndex)
+    {
+        // like String.split, trailing empty tokens are not counted
+        int lastIndex = endIndex;
+        while (lastIndex > 0 && topic.charAt(lastIndex - 1) == SEPARATOR)
+        {
+            lastIndex--;
+        }
+
+        if (lastIndex == 0)
+        {
+            return endIndex == 0 ? 1 : 0;
+        }
+
+        int count = 1;
+        for (int i = 0; i < lastIndex; i++)
+        {
+            if (topic.charAt(i) == SEPARATOR)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private int getTokenStartIndex(int tokenIndex)
+    {
+        int startIndex = 0;
+        for (int i = 0; i < tokenIndex; i++)
+        {
+            startIndex = this.topic.indexOf(SEPARATOR, startIndex) + 1;
+        }
+
+        return startIndex;
+    }
+
+    private int getTokenEndIndex(int startIndex)
+    {
+        int endIndex = this.topic.indexOf(SEPARATOR, startIndex);
+        return (endIndex == -1 || endIndex > this.topicEndIndex) ? this.topicEndIndex : endIndex;
+    }
+
+    /**
+     * @return the number of tokens in the topic
+     */
+    int getTokenCount()
+    {
+        //Codes_SRS_TopicParser_34_017: [This method shall return the number of tokens in the topic.]
+        return this.tokenCount;
+    }
+
+    /**
+     * @param tokenIndex the index of the token
+     * @return the token at the provided index, or null if there is no such token
+     */
+    String getToken(int tokenIndex)
+    {
+        if (tokenIndex < 0 || tokenIndex >= this.tokenCount)
+        {
+            //Codes_SRS_TopicParser_34_018: [If there is no token at the provided index, this method shall return null.]
+            return null;
+        }
+
+        //Codes_SRS_TopicParser_34_019: [This method shall return the token at the provided index.]
+        int startIndex = getTokenStartIndex(tokenIndex);
+        return this.topic.substring(startIndex, getTokenEndIndex(startIndex));
+    }
+
+    /**
+     * @param tokenIndex the index of the token
+     * @param value the value to compare the token to
+     * @return true if the token at the provided index exists and is equal to the provided value
+     */
+    boolean tokenEquals(int tokenIndex, String value)
+    {
+        if (tokenIndex < 0 || tokenIndex >= this.tokenCount || value == null)
+        {
+            return false;
+        }
+
+        //Codes_SRS_TopicParser_34_020: [This method shall compare the token at the provided index to the provided value without copying the token.]
+        int startIndex = getTokenStartIndex(tokenIndex);
+        int endIndex = getTokenEndIndex(startIndex);
+        return (endIndex - startIndex) == value.length() && this.topic.regionMatches(startIndex, value, 0, value.length());
     }
 
     protected String getStatus(int tokenIndexStatus) throws TransportException
     {
         String status = null;
 
-        if (tokenIndexStatus <= 0 || tokenIndexStatus >= topicTokens.length)
+        if (tokenIndexStatus <= 0 || tokenIndexStatus >= this.tokenCount)
         {
             //Codes_SRS_TopicParser_25_003: [If tokenIndexStatus is not valid i.e less than or equal to zero or greater then token length then getStatus shall throw TransportException.]
             throw new TransportException(new IllegalArgumentException("Invalid token Index for status"));
         }
 
-        if (topicTokens.length > tokenIndexStatus)
+        if (this.tokenCount > tokenIndexStatus)
         {
-            String token = topicTokens[tokenIndexStatus];
+            String token = getToken(tokenIndexStatus);
 
             if (token != null)
             {
@@ -59,15 +172,15 @@ public class TopicParser
     {
         String reqId = null;
 
-        if (tokenIndexReqID <= 0 || tokenIndexReqID >= topicTokens.length)
+        if (tokenIndexReqID <= 0 || tokenIndexReqID >= this.tokenCount)
         {
             //Codes_SRS_TopicParser_25_006: [If tokenIndexReqID is not valid i.e less than or equal to zero or greater then token length then getRequestId shall throw TransportException.]
             throw new TransportException(new IllegalArgumentException("Invalid token Index for request id"));
         }
 
-        if (topicTokens.length > tokenIndexReqID)
+        if (this.tokenCount > tokenIndexReqID)
         {
-            String token = topicTokens[tokenIndexReqID];
+            String token = getToken(tokenIndexReqID);
 
             //Codes_SRS_TopicParser_25_008: [If the topic token does not contain request id then this method shall return null.]
             if (token.contains(REQ_ID) && token.contains(QUESTION)) // restriction for request id
@@ -93,15 +206,15 @@ public class TopicParser
     {
         String version = null;
 
-        if (tokenIndexVersion <= 0 || tokenIndexVersion >= topicTokens.length)
+        if (tokenIndexVersion <= 0 || tokenIndexVersion >= this.tokenCount)
         {
             //Codes_SRS_TopicParser_25_009: [If tokenIndexVersion is not valid i.e less than or equal to zero or greater then token length then getVersion shall throw TranpsortException.]
             throw new TransportException(new IllegalArgumentException("Invalid token Index for Version"));
         }
 
-        if (topicTokens.length > tokenIndexVersion)
+        if (this.tokenCount > tokenIndexVersion)
         {
-            String token = topicTokens[tokenIndexVersion];
+            String token = getToken(tokenIndexVersion);
             
             //Codes_SRS_TopicParser_25_010: [This method shall return the version value(if present) corresponding to the tokenIndexVersion from tokens.]
             //Codes_SRS_TopicParser_25_011: [If the topic token does not contain version then this method shall return null.]
@@ -127,15 +240,15 @@ public class TopicParser
     {
         String methodName = null;
 
-        if (tokenIndexMethod <= 0 || tokenIndexMethod >= topicTokens.length)
+        if (tokenIndexMethod <= 0 || tokenIndexMethod >= this.tokenCount)
         {
             //Codes_SRS_TopicParser_25_012: [If tokenIndexMethod is not valid i.e less than or equal to zero or greater then token length then getMethodName shall throw TransportException.]
             throw new TransportException(new IllegalArgumentException("Invalid token Index for Method Name"));
         }
 
-        if (topicTokens.length > tokenIndexMethod)
+        if (this.tokenCount > tokenIndexMethod)
         {
-            String token = topicTokens[tokenIndexMethod];
+            String token = getToken(tokenIndexMethod);
             
             //Codes_SRS_TopicParser_25_013: [This method shall return the method name(if present) corresponding to the tokenIndexMethod from tokens.]
             //Codes_SRS_TopicParser_25_014: [If the topic token does not contain method name or is null then this method shall throw TransportException.]
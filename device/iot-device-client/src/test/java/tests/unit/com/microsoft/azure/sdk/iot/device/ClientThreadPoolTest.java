@@ -0,0 +1,293 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.ClientThreadPool;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ClientThreadPool.
+ */
+public class ClientThreadPoolTest
+{
+    private ClientThreadPool clientThreadPool;
+
+    @After
+    public void tearDown()
+    {
+        if (clientThreadPool != null)
+        {
+            clientThreadPool.close();
+        }
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_001: [If the provided thread count is less than 1, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroThreadCount()
+    {
+        new ClientThreadPool(0);
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_002: [If virtual threads are requested and the Java runtime does not support them, the constructor shall throw an UnsupportedOperationException.]
+    // Tests_SRS_CLIENTTHREADPOOL_34_004: [This function shall return true if the Java runtime supports virtual threads.]
+    @Test
+    public void constructorWithVirtualThreadsDependsOnRuntimeSupport()
+    {
+        try
+        {
+            clientThreadPool = new ClientThreadPool(1, true);
+            assertTrue(ClientThreadPool.isVirtualThreadSupported());
+            assertTrue(clientThreadPool.isUsingVirtualThreads());
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertFalse(ClientThreadPool.isVirtualThreadSupported());
+        }
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_003: [The constructor shall create a scheduler with the provided number of threads that removes cancelled tasks from its queue.]
+    // Tests_SRS_CLIENTTHREADPOOL_34_006: [This function shall return a scheduler that runs its tasks on the shared scheduler threads.]
+    // Tests_SRS_CLIENTTHREADPOOL_34_008: [This function shall return the number of scheduler threads plus the number of dedicated threads.]
+    @Test
+    public void schedulersShareBoundedThreads() throws Exception
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(2);
+        final int schedulerCount = 100;
+        final CountDownLatch ran = new CountDownLatch(schedulerCount);
+
+        // act
+        for (int i = 0; i < schedulerCount; i++)
+        {
+            clientThreadPool.newScheduler().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ran.countDown();
+                }
+            });
+        }
+
+        // assert
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(2, clientThreadPool.getMaxSchedulerThreadCount());
+        assertTrue(clientThreadPool.getThreadCount() <= 2);
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_009: [This function shall return the number of tasks in the scheduler queue.]
+    @Test
+    public void shutdownNowCancelsOnlyTasksOfThatScheduler() throws Exception
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        ScheduledExecutorService firstScheduler = clientThreadPool.newScheduler();
+        ScheduledExecutorService secondScheduler = clientThreadPool.newScheduler();
+        Runnable noop = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        };
+        ScheduledFuture<?> firstFuture = firstScheduler.schedule(noop, 1, TimeUnit.HOURS);
+        ScheduledFuture<?> secondFuture = secondScheduler.schedule(noop, 1, TimeUnit.HOURS);
+        assertEquals(2, clientThreadPool.getQueueDepth());
+
+        // act
+        firstScheduler.shutdownNow();
+
+        // assert
+        assertTrue(firstFuture.isCancelled());
+        assertFalse(secondFuture.isCancelled());
+        assertEquals(1, clientThreadPool.getQueueDepth());
+        assertTrue(firstScheduler.isShutdown());
+        assertTrue(firstScheduler.isTerminated());
+        assertTrue(firstScheduler.awaitTermination(1, TimeUnit.SECONDS));
+        assertFalse(secondScheduler.isShutdown());
+    }
+
+    @Test
+    public void shutdownCancelsPeriodicTasksAndRejectsNewTasks() throws Exception
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        ScheduledExecutorService scheduler = clientThreadPool.newScheduler();
+        final AtomicInteger runCount = new AtomicInteger();
+        ScheduledFuture<?> periodicFuture = scheduler.scheduleAtFixedRate(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                runCount.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Future<Integer> delayedFuture = scheduler.schedule(new Callable<Integer>()
+        {
+            @Override
+            public Integer call()
+            {
+                return 1;
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        // act
+        scheduler.shutdown();
+
+        // assert
+        assertTrue(periodicFuture.isCancelled());
+        assertEquals(Integer.valueOf(1), delayedFuture.get(5, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        try
+        {
+            scheduler.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                }
+            });
+            fail("Expected the scheduler to reject new tasks");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_007: [This function shall return a single thread executor whose thread is created by this pool.]
+    @Test
+    public void dedicatedThreadsAreCounted() throws Exception
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        ExecutorService dedicatedExecutor = clientThreadPool.newDedicatedThreadExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        // act
+        dedicatedExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // assert
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, clientThreadPool.getDedicatedThreadCount());
+        release.countDown();
+        dedicatedExecutor.shutdown();
+        assertTrue(dedicatedExecutor.awaitTermination(5, TimeUnit.SECONDS));
+        // the count drops right after the executor reports termination, on the exiting thread
+        long deadline = System.currentTimeMillis() + 5000;
+        while (clientThreadPool.getDedicatedThreadCount() > 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, clientThreadPool.getDedicatedThreadCount());
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_012: [This function shall run the task on an idle dedicated thread of this pool, or on a new one if none is idle.]
+    @Test
+    public void executeBlockingDoesNotHoldTheSchedulerThreads() throws Exception
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch blockingTasksStarted = new CountDownLatch(2);
+        Runnable blockingTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                blockingTasksStarted.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        // act
+        clientThreadPool.executeBlocking(blockingTask);
+        clientThreadPool.executeBlocking(blockingTask);
+        Future<?> scheduledTask = clientThreadPool.newScheduler().submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+
+        // assert
+        assertTrue(blockingTasksStarted.await(5, TimeUnit.SECONDS));
+        scheduledTask.get(5, TimeUnit.SECONDS);
+        assertEquals(2, clientThreadPool.getDedicatedThreadCount());
+        release.countDown();
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_011: [If the provided task is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void executeBlockingThrowsForNullTask()
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+
+        // act
+        clientThreadPool.executeBlocking(null);
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+    // Tests_SRS_CLIENTTHREADPOOL_34_013: [This function shall stop accepting blocking tasks and let the running ones complete.]
+    @Test (expected = IllegalStateException.class)
+    public void executeBlockingThrowsAfterClose()
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        clientThreadPool.close();
+
+        // act
+        clientThreadPool.executeBlocking(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+    }
+
+    // Tests_SRS_CLIENTTHREADPOOL_34_005: [If this pool has been closed, this function shall throw an IllegalStateException.]
+    // Tests_SRS_CLIENTTHREADPOOL_34_010: [This function shall shut the scheduler down and interrupt the running tasks.]
+    @Test (expected = IllegalStateException.class)
+    public void newSchedulerThrowsAfterClose()
+    {
+        // arrange
+        clientThreadPool = new ClientThreadPool(1);
+        clientThreadPool.close();
+
+        // act
+        clientThreadPool.newScheduler();
+    }
+}
@@ -8,16 +8,19 @@ import com.microsoft.azure.sdk.iot.device.DeviceTwin.PropertyCallBack;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUpload;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import mockit.*;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 
 import static com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType.SINGLE_CLIENT;
 import static com.microsoft.azure.sdk.iot.device.transport.amqps.IoTHubConnectionType.USE_TRANSPORTCLIENT;
@@ -1572,7 +1575,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_048: [If there is no instance of the FileUpload, the uploadToBlobAsync shall create a new instance of the FileUpload.] */
     @Test
     public void startFileUploadOneFileUploadInstanceSucceeds(@Mocked final FileUpload mockedFileUpload,
-                                                             @Mocked final InputStream mockInputStream,
+                                                             @Injectable final InputStream mockInputStream,
                                                              @Mocked final IotHubEventCallback mockedStatusCB,
                                                              @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1601,9 +1604,101 @@ public class DeviceClientTest
         Deencapsulation.invoke(client, "uploadToBlobAsync", destinationBlobName, mockInputStream, streamLength, mockedStatusCB, mockedPropertyCB);
     }
 
+    // Tests_SRS_DEVICECLIENT_34_077: [The function shall start the upload of the stream block by block with the provided `blockUploadOptions`, using the FileUpload.]
+    @Test
+    public void startFileUploadWithBlockUploadOptionsSucceeds(@Mocked final FileUpload mockedFileUpload,
+                                                              @Injectable final InputStream mockInputStream,
+                                                              @Mocked final BlockUploadOptions mockedBlockUploadOptions,
+                                                              @Mocked final IotHubEventCallback mockedStatusCB,
+                                                              @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        final String destinationBlobName = "valid/blob/name.txt";
+        final long streamLength = 100;
+
+        //assert
+        new Expectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUpload.class, mockConfig);
+                result = mockedFileUpload;
+                Deencapsulation.invoke(mockedFileUpload, "uploadToBlobAsync",
+                        destinationBlobName, mockInputStream, streamLength, mockedBlockUploadOptions, mockedStatusCB, mockedPropertyCB);
+                times = 1;
+            }
+        };
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+        Deencapsulation.setField(client, "logger", new CustomLogger(this.getClass()));
+        Deencapsulation.setField(client, "config", mockConfig);
+
+        // act
+        client.uploadToBlobAsync(destinationBlobName, mockInputStream, streamLength, mockedBlockUploadOptions, mockedStatusCB, mockedPropertyCB);
+    }
+
+    // Tests_SRS_DEVICECLIENT_34_079: [The function shall start the upload of the file in the `path` block by block with the provided `blockUploadOptions`, using the FileUpload.]
+    @Test
+    public void startFileUploadFromPathSucceeds(@Mocked final FileUpload mockedFileUpload,
+                                                @Mocked final IotHubEventCallback mockedStatusCB,
+                                                @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        final String destinationBlobName = "valid/blob/name.txt";
+        final Path path = new File("recording.bin").toPath();
+
+        //assert
+        new Expectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUpload.class, mockConfig);
+                result = mockedFileUpload;
+                mockedFileUpload.uploadToBlobAsync(destinationBlobName, path, null, mockedStatusCB, mockedPropertyCB);
+                times = 1;
+            }
+        };
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+        Deencapsulation.setField(client, "logger", new CustomLogger(this.getClass()));
+        Deencapsulation.setField(client, "config", mockConfig);
+
+        // act
+        client.uploadToBlobAsync(destinationBlobName, path, null, mockedStatusCB, mockedPropertyCB);
+    }
+
+    // Tests_SRS_DEVICECLIENT_34_078: [If the `path` or the `callback` is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void startFileUploadNullPathThrows(@Mocked final IotHubEventCallback mockedStatusCB,
+                                              @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+
+        // act
+        client.uploadToBlobAsync("valid/blob/name.txt", (Path) null, null, mockedStatusCB, mockedPropertyCB);
+    }
+
+    // Tests_SRS_DEVICECLIENT_34_076: [If the `blockUploadOptions` is null, the function shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void startFileUploadNullBlockUploadOptionsThrows(@Injectable final InputStream mockInputStream,
+                                                            @Mocked final IotHubEventCallback mockedStatusCB,
+                                                            @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
+    {
+        //arrange
+        final IotHubClientProtocol protocol = IotHubClientProtocol.AMQPS;
+        final String destinationBlobName = "valid/blob/name.txt";
+        final long streamLength = 100;
+
+        DeviceClient client = Deencapsulation.newInstance(DeviceClient.class, new Class[] {String.class, IotHubClientProtocol.class}, "some conn string", protocol);
+
+        // act
+        client.uploadToBlobAsync(destinationBlobName, mockInputStream, streamLength, null, mockedStatusCB, mockedPropertyCB);
+    }
+
     /* Tests_SRS_INTERNALCLIENT_21_045: [If the `callback` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadNullCallbackThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadNullCallbackThrows(@Injectable final InputStream mockInputStream,
                                                   @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
         //arrange
@@ -1638,7 +1733,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_052: [If the `streamLength` is negative, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
     public void startFileUploadNegativeLengthThrows(@Mocked final IotHubEventCallback mockedStatusCB,
-                                                    @Mocked final InputStream mockInputStream,
+                                                    @Injectable final InputStream mockInputStream,
                                                     @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
         //arrange
@@ -1654,7 +1749,7 @@ public class DeviceClientTest
 
     /* Tests_SRS_INTERNALCLIENT_21_047: [If the `destinationBlobName` is null, empty, or not valid, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadNullBlobNameThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadNullBlobNameThrows(@Injectable final InputStream mockInputStream,
                                                   @Mocked final IotHubEventCallback mockedStatusCB,
                                                   @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1671,7 +1766,7 @@ public class DeviceClientTest
 
     /* Tests_SRS_INTERNALCLIENT_21_047: [If the `destinationBlobName` is null, empty, or not valid, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadEmptyBlobNameThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadEmptyBlobNameThrows(@Injectable final InputStream mockInputStream,
                                                    @Mocked final IotHubEventCallback mockedStatusCB,
                                                    @Mocked final PropertyCallBack mockedPropertyCB)
     {
@@ -1688,7 +1783,7 @@ public class DeviceClientTest
 
     /* Tests_SRS_INTERNALCLIENT_21_047: [If the `destinationBlobName` is null, empty, or not valid, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadInvalidUTF8BlobNameThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadInvalidUTF8BlobNameThrows(@Injectable final InputStream mockInputStream,
                                                          @Mocked final IotHubEventCallback mockedStatusCB,
                                                          @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1706,7 +1801,7 @@ public class DeviceClientTest
 
     /* Tests_SRS_INTERNALCLIENT_21_047: [If the `destinationBlobName` is null, empty, or not valid, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadInvalidBigBlobNameThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadInvalidBigBlobNameThrows(@Injectable final InputStream mockInputStream,
                                                         @Mocked final IotHubEventCallback mockedStatusCB,
                                                         @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1737,7 +1832,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_050: [The uploadToBlobAsync shall start the stream upload process, by calling uploadToBlobAsync on the FileUpload class.] */
     @Test
     public void startFileUploadSucceeds(@Mocked final FileUpload mockedFileUpload,
-                                        @Mocked final InputStream mockInputStream,
+                                        @Injectable final InputStream mockInputStream,
                                         @Mocked final IotHubEventCallback mockedStatusCB,
                                         @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1765,7 +1860,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_054: [If the fileUpload is not null, the closeNow shall call closeNow on fileUpload.] */
     @Test
     public void closeNowClosesFileUploadSucceeds(@Mocked final FileUpload mockedFileUpload,
-                                                 @Mocked final InputStream mockInputStream,
+                                                 @Injectable final InputStream mockInputStream,
                                                  @Mocked final IotHubEventCallback mockedStatusCB,
                                                  @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1803,7 +1898,7 @@ public class DeviceClientTest
 
     /* Tests_SRS_INTERNALCLIENT_21_047: [If the `destinationBlobName` is null, empty, or not valid, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
-    public void startFileUploadInvalidPathBlobNameThrows(@Mocked final InputStream mockInputStream,
+    public void startFileUploadInvalidPathBlobNameThrows(@Injectable final InputStream mockInputStream,
                                                          @Mocked final IotHubEventCallback mockedStatusCB,
                                                          @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1832,7 +1927,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_049: [If uploadToBlobAsync failed to create a new instance of the FileUpload, it shall bypass the exception.] */
     @Test (expected = IllegalArgumentException.class)
     public void startFileUploadNewInstanceThrows(@Mocked final FileUpload mockedFileUpload,
-                                                 @Mocked final InputStream mockInputStream,
+                                                 @Injectable final InputStream mockInputStream,
                                                  @Mocked final IotHubEventCallback mockedStatusCB,
                                                  @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -1857,7 +1952,7 @@ public class DeviceClientTest
     /* Tests_SRS_INTERNALCLIENT_21_051: [If uploadToBlobAsync failed to start the upload using the FileUpload, it shall bypass the exception.] */
     @Test (expected = IllegalArgumentException.class)
     public void startFileUploadUploadToBlobAsyncThrows(@Mocked final FileUpload mockedFileUpload,
-                                                       @Mocked final InputStream mockInputStream,
+                                                       @Injectable final InputStream mockInputStream,
                                                        @Mocked final IotHubEventCallback mockedStatusCB,
                                                        @Mocked final PropertyCallBack mockedPropertyCB) throws IOException, URISyntaxException, TransportException
     {
@@ -6,6 +6,7 @@ package tests.unit.com.microsoft.azure.sdk.iot.device;
 import com.microsoft.azure.sdk.iot.device.*;
 import com.microsoft.azure.sdk.iot.device.exceptions.DeviceClientException;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubReceiveTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubSendTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
@@ -20,6 +21,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -96,6 +98,8 @@ public class DeviceIOTest
                 result = mockIotHubSendTask;
                 new IotHubReceiveTask(transport);
                 result = mockIotHubReceiveTask;
+                mockConfig.getClientThreadPool();
+                result = null;
                 executors.newScheduledThreadPool(2);
                 result = scheduledExecutorService;
             }
@@ -348,6 +352,185 @@ public class DeviceIOTest
         };
     }
 
+    /* Tests_SRS_DEVICE_IO_34_040: [If the config enables event driven send, the open shall start a single
+     * event driven send task instead of scheduling send tasks.] */
+    @Test
+    public void openWithEventDrivenSendStartsEventDrivenSendTask(final @Mocked IotHubEventDrivenSendTask mockEventDrivenSendTask) throws DeviceClientException, IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        configs.add(mockConfig);
+        Deencapsulation.setField(deviceIO, "deviceClientConfigs", configs);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.isEventDrivenSend();
+                result = true;
+                new IotHubEventDrivenSendTask(mockedTransport);
+                result = mockEventDrivenSendTask;
+                mockConfig.getClientThreadPool();
+                result = null;
+                mockExecutors.newScheduledThreadPool(2);
+                result = mockScheduler;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "open");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockScheduler.execute(mockEventDrivenSendTask);
+                times = 1;
+                mockScheduler.scheduleAtFixedRate(withInstanceOf(IotHubSendTask.class), anyLong, anyLong, TimeUnit.MILLISECONDS);
+                times = 0;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_34_048: [If the config has a client thread pool, the open shall schedule the send and
+     * receive tasks on a scheduler from that pool.] */
+    /* Tests_SRS_DEVICE_IO_34_049: [If the config has a client thread pool, the open shall run the event
+     * driven send task on a dedicated thread from that pool.] */
+    @Test
+    public void openWithClientThreadPoolUsesPoolThreads(
+            final @Mocked IotHubEventDrivenSendTask mockEventDrivenSendTask,
+            final @Mocked ClientThreadPool mockClientThreadPool,
+            final @Mocked ExecutorService mockDedicatedExecutor) throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.isEventDrivenSend();
+                result = true;
+                new IotHubEventDrivenSendTask(mockedTransport);
+                result = mockEventDrivenSendTask;
+                mockConfig.getClientThreadPool();
+                result = mockClientThreadPool;
+                mockClientThreadPool.newScheduler();
+                result = mockScheduler;
+                mockClientThreadPool.newDedicatedThreadExecutor();
+                result = mockDedicatedExecutor;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "open");
+
+        // assert
+        new Verifications()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                times = 0;
+                mockDedicatedExecutor.execute(mockEventDrivenSendTask);
+                times = 1;
+                mockScheduler.execute(mockEventDrivenSendTask);
+                times = 0;
+                mockScheduler.scheduleAtFixedRate(withInstanceOf(IotHubReceiveTask.class), anyLong, anyLong, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_34_041: [The close shall stop the event driven send task, if any.] */
+    @Test
+    public void closeStopsEventDrivenSendTask(final @Mocked IotHubEventDrivenSendTask mockEventDrivenSendTask) throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        Deencapsulation.setField(deviceIO, "eventDrivenSendTask", mockEventDrivenSendTask);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "close");
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockEventDrivenSendTask.stop();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(deviceIO, "eventDrivenSendTask"));
+    }
+
+    /* Tests_SRS_DEVICE_IO_34_044: [If the client is open, the function shall add the config to the open transport.] */
+    @Test
+    public void addClientAddsConfigToOpenTransport() throws IOException, TransportException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        openDeviceIO(deviceIO, mockedTransport, mockExecutors, mockScheduler);
+
+        // act
+        Deencapsulation.invoke(deviceIO, "addClient", mockConfig);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockedTransport.addDeviceClientConfig(mockConfig);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICE_IO_34_045: [If the transport fails to add the config, the function shall throw an IOException.] */
+    @Test (expected = IOException.class)
+    public void addClientThrowsIfOpenTransportFails() throws IOException, TransportException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        openDeviceIO(deviceIO, mockedTransport, mockExecutors, mockScheduler);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransport.addDeviceClientConfig(mockConfig);
+                result = new TransportException();
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(deviceIO, "addClient", mockConfig);
+    }
+
+    /* Tests_SRS_DEVICE_IO_34_046: [If the client is open, the function shall remove the device from the open transport.] */
+    /* Tests_SRS_DEVICE_IO_34_047: [The function shall remove the config from the saved list and return true if it was in it.] */
+    @Test
+    public void removeClientRemovesConfigFromOpenTransport() throws IOException
+    {
+        // arrange
+        final Object deviceIO = newDeviceIO();
+        openDeviceIO(deviceIO, mockedTransport, mockExecutors, mockScheduler);
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getDeviceId();
+                result = "someDevice";
+            }
+        };
+        Deencapsulation.invoke(deviceIO, "addClient", mockConfig);
+
+        // act
+        boolean removed = Deencapsulation.invoke(deviceIO, "removeClient", mockConfig);
+
+        // assert
+        assertTrue(removed);
+        new Verifications()
+        {
+            {
+                mockedTransport.removeDeviceClientConfig("someDevice");
+                times = 1;
+            }
+        };
+    }
+
     /* Tests_SRS_DEVICE_IO_21_015: [If an error occurs in opening the transport, the open shall throw an IOException.] */
     @Test (expected = IOException.class)
     public void openThrowsIOExceptionIfTransportOpenThrows() throws DeviceClientException
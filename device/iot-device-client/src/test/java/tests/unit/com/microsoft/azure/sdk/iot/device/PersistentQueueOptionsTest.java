@@ -0,0 +1,165 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
+import com.microsoft.azure.sdk.iot.device.PersistentQueueOptions;
+import mockit.Mocked;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the persistent queue options class.
+ * 100% methods, 100% lines covered
+ */
+public class PersistentQueueOptionsTest
+{
+    private static final File DIRECTORY = new File("queue");
+
+    @Mocked
+    private IotHubEventCallback mockEventCallback;
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_002: [The constructor shall store the provided `directory`.] */
+    @Test
+    public void defaultsSucceed()
+    {
+        // act
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+
+        // assert
+        assertEquals(DIRECTORY, options.getDirectory());
+        assertEquals(PersistentQueueOptions.DEFAULT_SEGMENT_SIZE_IN_BYTES, options.getSegmentSizeInBytes());
+        assertEquals(PersistentQueueOptions.DEFAULT_DISK_QUOTA_IN_BYTES, options.getDiskQuotaInBytes());
+        assertEquals(PersistentQueueOptions.DEFAULT_IN_MEMORY_WINDOW_SIZE, options.getInMemoryWindowSize());
+        assertEquals(PersistentQueueOptions.SyncMode.PERIODIC, options.getSyncMode());
+        assertEquals(PersistentQueueOptions.DEFAULT_SYNC_INTERVAL_MILLIS, options.getSyncIntervalMillis());
+        assertNull(options.getReplayCallback());
+        assertNull(options.getReplayCallbackContext());
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_001: [If the `directory` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorNullDirectoryThrows()
+    {
+        // act
+        new PersistentQueueOptions(null);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_003: [If the `segmentSizeInBytes` is smaller than MIN_SEGMENT_SIZE_IN_BYTES, the setSegmentSizeInBytes shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setSegmentSizeInBytesTooSmallThrows()
+    {
+        // act
+        new PersistentQueueOptions(DIRECTORY).setSegmentSizeInBytes(PersistentQueueOptions.MIN_SEGMENT_SIZE_IN_BYTES - 1);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_004: [The setSegmentSizeInBytes shall store the provided `segmentSizeInBytes`.] */
+    @Test
+    public void setSegmentSizeInBytesSucceeds()
+    {
+        // arrange
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+
+        // act
+        options.setSegmentSizeInBytes(PersistentQueueOptions.MIN_SEGMENT_SIZE_IN_BYTES);
+
+        // assert
+        assertEquals(PersistentQueueOptions.MIN_SEGMENT_SIZE_IN_BYTES, options.getSegmentSizeInBytes());
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_005: [If the `diskQuotaInBytes` is not positive, the setDiskQuotaInBytes shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setDiskQuotaInBytesZeroThrows()
+    {
+        // act
+        new PersistentQueueOptions(DIRECTORY).setDiskQuotaInBytes(0);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_006: [The setDiskQuotaInBytes shall store the provided `diskQuotaInBytes`.] */
+    @Test
+    public void setDiskQuotaInBytesSucceeds()
+    {
+        // arrange
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+
+        // act
+        options.setDiskQuotaInBytes(10L * 1024 * 1024 * 1024);
+
+        // assert
+        assertEquals(10L * 1024 * 1024 * 1024, options.getDiskQuotaInBytes());
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_007: [If the `inMemoryWindowSize` is not positive, the setInMemoryWindowSize shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setInMemoryWindowSizeZeroThrows()
+    {
+        // act
+        new PersistentQueueOptions(DIRECTORY).setInMemoryWindowSize(0);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_008: [The setInMemoryWindowSize shall store the provided `inMemoryWindowSize`.] */
+    @Test
+    public void setInMemoryWindowSizeSucceeds()
+    {
+        // arrange
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+
+        // act
+        options.setInMemoryWindowSize(5);
+
+        // assert
+        assertEquals(5, options.getInMemoryWindowSize());
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_009: [If the `syncMode` is null or the `syncIntervalMillis` is not positive, the setSyncMode shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setSyncModeNullThrows()
+    {
+        // act
+        new PersistentQueueOptions(DIRECTORY).setSyncMode(null, 1);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_009: [If the `syncMode` is null or the `syncIntervalMillis` is not positive, the setSyncMode shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setSyncModeZeroIntervalThrows()
+    {
+        // act
+        new PersistentQueueOptions(DIRECTORY).setSyncMode(PersistentQueueOptions.SyncMode.PERIODIC, 0);
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_010: [The setSyncMode shall store the provided `syncMode` and `syncIntervalMillis`.] */
+    @Test
+    public void setSyncModeSucceeds()
+    {
+        // arrange
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+
+        // act
+        options.setSyncMode(PersistentQueueOptions.SyncMode.EVERY_WRITE, 50);
+
+        // assert
+        assertEquals(PersistentQueueOptions.SyncMode.EVERY_WRITE, options.getSyncMode());
+        assertEquals(50, options.getSyncIntervalMillis());
+    }
+
+    /* Tests_SRS_PERSISTENTQUEUEOPTIONS_34_011: [The setReplayCallback shall store the provided `replayCallback`, that can be null, and `replayCallbackContext`.] */
+    @Test
+    public void setReplayCallbackSucceeds()
+    {
+        // arrange
+        PersistentQueueOptions options = new PersistentQueueOptions(DIRECTORY);
+        Object context = new Object();
+
+        // act
+        options.setReplayCallback(mockEventCallback, context);
+
+        // assert
+        assertEquals(mockEventCallback, options.getReplayCallback());
+        assertEquals(context, options.getReplayCallbackContext());
+    }
+}
@@ -0,0 +1,609 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device;
+
+import com.microsoft.azure.sdk.iot.device.ReconnectionCoordinator;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for ReconnectionCoordinator
+ */
+public class ReconnectionCoordinatorTest
+{
+    /*
+     * Time source moved forward by the tests, so the token bucket refills deterministically.
+     */
+    private static class FakeTicker implements ReconnectionCoordinator.Ticker
+    {
+        long nanos;
+
+        @Override
+        public long nanoTime()
+        {
+            return nanos;
+        }
+
+        void advanceMillis(long millis)
+        {
+            nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+
+    private static ReconnectionCoordinator createCoordinator(int maxConcurrentHandshakes, double admissionsPerSecond, int burstSize, FakeTicker ticker)
+    {
+        return Deencapsulation.newInstance(ReconnectionCoordinator.class,
+                new Class[] {int.class, double.class, int.class, ReconnectionCoordinator.Ticker.class},
+                maxConcurrentHandshakes, admissionsPerSecond, burstSize, ticker);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_001: [If the maximum number of concurrent handshakes, the admission rate or the burst size is not positive, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroConcurrentHandshakes()
+    {
+        // act
+        new ReconnectionCoordinator(0, 10, 10);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_001: [If the maximum number of concurrent handshakes, the admission rate or the burst size is not positive, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroRate()
+    {
+        // act
+        new ReconnectionCoordinator(10, 0, 10);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_001: [If the maximum number of concurrent handshakes, the admission rate or the burst size is not positive, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForNaNRate()
+    {
+        // act
+        new ReconnectionCoordinator(10, Double.NaN, 10);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_001: [If the maximum number of concurrent handshakes, the admission rate or the burst size is not positive, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroBurst()
+    {
+        // act
+        new ReconnectionCoordinator(10, 10, 0);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_003: [The register and unregister functions shall count the clients that use this coordinator.] */
+    @Test
+    public void registerAndUnregisterCountClients()
+    {
+        // arrange
+        ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1, 1);
+
+        // act
+        coordinator.register();
+        coordinator.register();
+        coordinator.unregister();
+        coordinator.unregister();
+        coordinator.unregister();
+        coordinator.register();
+
+        // assert
+        assertEquals(1, coordinator.getRegisteredClientCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_002: [The constructor shall start with a full token bucket of burstSize tokens.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_005: [The token bucket shall be refilled at admissionsPerSecond, up to burstSize tokens.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_007: [The tryStart function shall admit the queued attempts the coordinator has room for, and return true if this attempt is admitted.] */
+    @Test
+    public void tryStartAdmitsBurstThenAtRate()
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(100, 10, 3, ticker);
+        List<ReconnectionCoordinator.Handshake> handshakes = new ArrayList<>();
+        for (int i = 0; i < 6; i++)
+        {
+            handshakes.add(coordinator.enqueue(false));
+        }
+
+        // act
+        boolean[] admittedAtStart = admitted(handshakes);
+        ticker.advanceMillis(150);
+        boolean[] admittedAfter150Millis = admitted(handshakes);
+        ticker.advanceMillis(10000);
+        boolean[] admittedAfterRefill = admitted(handshakes);
+
+        // assert
+        assertArrayEquals(new boolean[] {true, true, true, false, false, false}, admittedAtStart);
+        assertArrayEquals(new boolean[] {true, true, true, true, false, false}, admittedAfter150Millis);
+        assertArrayEquals(new boolean[] {true, true, true, true, true, true}, admittedAfterRefill);
+        assertEquals(6, coordinator.getAdmittedCount());
+        assertEquals(0, coordinator.getWaitingCount());
+        // the first three were admitted from the burst as soon as they were queued
+        assertEquals(3, coordinator.getPeakWaitingCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_005: [The token bucket shall be refilled at admissionsPerSecond, up to burstSize tokens.] */
+    @Test
+    public void tokensDoNotAccumulateBeyondBurst()
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(100, 10, 2, ticker);
+        ticker.advanceMillis(60000);
+        List<ReconnectionCoordinator.Handshake> handshakes = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            handshakes.add(coordinator.enqueue(false));
+        }
+
+        // act
+        boolean[] admitted = admitted(handshakes);
+
+        // assert
+        assertArrayEquals(new boolean[] {true, true, false, false, false}, admitted);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_006: [An attempt shall only be admitted while fewer than maxConcurrentHandshakes attempts are in progress, and it shall take one token from the bucket.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_009: [Closing an admitted attempt shall free its handshake slot for the queued attempts.] */
+    @Test
+    public void concurrentHandshakesAreCapped()
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(2, 1000, 10, ticker);
+        ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake third = coordinator.enqueue(false);
+
+        // act
+        boolean thirdAdmittedWhileFull = third.tryStart();
+        first.close();
+        first.close();
+
+        // assert
+        assertTrue(first.isAdmitted());
+        assertTrue(second.isAdmitted());
+        assertFalse(thirdAdmittedWhileFull);
+        assertTrue(third.isAdmitted());
+        assertEquals(2, coordinator.getActiveHandshakeCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_004: [This function shall queue the attempt behind the attempts of the same priority, attempts with queued messages being admitted first.] */
+    @Test
+    public void attemptsWithQueuedMessagesAreAdmittedFirst()
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(10, 10, 1, ticker);
+        ReconnectionCoordinator.Handshake blocker = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake idle = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake firstBusy = coordinator.enqueue(true);
+        ReconnectionCoordinator.Handshake secondBusy = coordinator.enqueue(true);
+
+        // act
+        ticker.advanceMillis(150);
+        boolean firstBusyAdmitted = firstBusy.tryStart();
+        boolean secondBusyAdmitted = secondBusy.isAdmitted();
+        boolean idleAdmitted = idle.isAdmitted();
+
+        // assert
+        assertTrue(blocker.isAdmitted());
+        assertTrue(firstBusyAdmitted);
+        assertFalse(secondBusyAdmitted);
+        assertFalse(idleAdmitted);
+        assertTrue(firstBusy.hasQueuedMessages());
+        assertEquals(1, coordinator.getPriorityAdmittedCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_010: [Closing an attempt that was not admitted shall remove it from the queue.] */
+    @Test
+    public void closeRemovesWaitingAttempt()
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(1, 10, 1, ticker);
+        ReconnectionCoordinator.Handshake admitted = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake waiting = coordinator.enqueue(true);
+
+        // act
+        waiting.close();
+        admitted.close();
+
+        // assert
+        assertFalse(waiting.isAdmitted());
+        assertEquals(0, coordinator.getWaitingCount());
+        assertEquals(0, coordinator.getActiveHandshakeCount());
+        assertEquals(1, coordinator.getAdmittedCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_008: [The awaitStart function shall wait until this attempt is admitted or the timeout elapses, and return true if this attempt is admitted.] */
+    @Test
+    public void awaitStartWaitsForNextToken() throws InterruptedException
+    {
+        // arrange
+        ReconnectionCoordinator coordinator = new ReconnectionCoordinator(10, 20, 1);
+        ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+
+        // act
+        boolean admitted = second.awaitStart(10000);
+
+        // assert
+        assertTrue(first.isAdmitted());
+        assertTrue(admitted);
+        assertEquals(2, coordinator.getAdmittedCount());
+        assertTrue(coordinator.getMaxAdmissionDelayMillis() < 10000);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_008: [The awaitStart function shall wait until this attempt is admitted or the timeout elapses, and return true if this attempt is admitted.] */
+    @Test
+    public void awaitStartWaitsForFreeSlot() throws InterruptedException
+    {
+        // arrange
+        ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 10);
+        final ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+        Thread closer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e)
+                {
+                    // close now
+                }
+                first.close();
+            }
+        });
+
+        // act
+        closer.start();
+        boolean admitted = second.awaitStart(10000);
+        closer.join();
+
+        // assert
+        assertTrue(admitted);
+        assertEquals(1, coordinator.getActiveHandshakeCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_008: [The awaitStart function shall wait until this attempt is admitted or the timeout elapses, and return true if this attempt is admitted.] */
+    @Test
+    public void awaitStartReturnsFalseOnTimeout() throws InterruptedException
+    {
+        // arrange
+        ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 10);
+        ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+        ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+
+        // act
+        boolean admitted = second.awaitStart(20);
+
+        // assert
+        assertTrue(first.isAdmitted());
+        assertFalse(admitted);
+        assertEquals(1, coordinator.getWaitingCount());
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_011: [Admitting an attempt shall wake the threads waiting for admission.] */
+    @Test
+    public void awaitStartIsWokenWhenAnotherCallAdmitsTheAttempt() throws InterruptedException
+    {
+        // arrange
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(10, 1, 1, ticker);
+        assertTrue(coordinator.enqueue(false).tryStart());
+        final ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+        final boolean[] admitted = new boolean[1];
+        Thread waiter = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    admitted[0] = second.awaitStart(10000);
+                }
+                catch (InterruptedException e)
+                {
+                    // the assertions below fail
+                }
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+
+        // act
+        ticker.advanceMillis(1000);
+        coordinator.enqueue(false);
+
+        // assert
+        // the waiter sleeps for a full second of real time unless the admission wakes it up
+        waiter.join(500);
+        assertFalse(waiter.isAlive());
+        assertTrue(admitted[0]);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_012: [Once an attempt with an admission callback is admitted, its callback shall be run on the scheduler given with it.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_014: [If this attempt is not admitted yet, the whenAdmitted function shall save the callback and check for admission again on the scheduler once the next token is available.] */
+    @Test
+    public void whenAdmittedRunsCallbackOnceASlotIsFreed() throws InterruptedException
+    {
+        // arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 10);
+            ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+            ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+            final CountDownLatch admission = new CountDownLatch(1);
+
+            // act
+            second.whenAdmitted(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    admission.countDown();
+                }
+            }, scheduler);
+            boolean admittedBeforeClose = admission.await(50, TimeUnit.MILLISECONDS);
+            first.close();
+
+            // assert
+            assertFalse(admittedBeforeClose);
+            assertTrue(admission.await(5, TimeUnit.SECONDS));
+            assertTrue(second.isAdmitted());
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_014: [If this attempt is not admitted yet, the whenAdmitted function shall save the callback and check for admission again on the scheduler once the next token is available.] */
+    @Test
+    public void whenAdmittedRunsCallbackOnceTheNextTokenIsAvailable() throws InterruptedException
+    {
+        // arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            ReconnectionCoordinator coordinator = new ReconnectionCoordinator(10, 20, 1);
+            ReconnectionCoordinator.Handshake first = coordinator.enqueue(false);
+            ReconnectionCoordinator.Handshake second = coordinator.enqueue(false);
+            final CountDownLatch admission = new CountDownLatch(1);
+
+            // act
+            second.whenAdmitted(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    admission.countDown();
+                }
+            }, scheduler);
+
+            // assert
+            assertTrue(first.isAdmitted());
+            assertTrue(admission.await(5, TimeUnit.SECONDS));
+            assertTrue(second.isAdmitted());
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_015: [If this attempt is already admitted, the whenAdmitted function shall run the callback on the calling thread.] */
+    @Test
+    public void whenAdmittedRunsCallbackRightAwayIfAdmitted()
+    {
+        // arrange
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try
+        {
+            ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 10);
+            ReconnectionCoordinator.Handshake handshake = coordinator.enqueue(false);
+            final List<Thread> callbackThreads = new ArrayList<>();
+
+            // act
+            handshake.whenAdmitted(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    callbackThreads.add(Thread.currentThread());
+                }
+            }, scheduler);
+
+            // assert
+            assertEquals(1, callbackThreads.size());
+            assertEquals(Thread.currentThread(), callbackThreads.get(0));
+        }
+        finally
+        {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_013: [If the provided callback or scheduler is null, the whenAdmitted function shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void whenAdmittedThrowsForNullScheduler()
+    {
+        // arrange
+        ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 10);
+        ReconnectionCoordinator.Handshake handshake = coordinator.enqueue(false);
+
+        // act
+        handshake.whenAdmitted(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        }, null);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_004: [This function shall queue the attempt behind the attempts of the same priority, attempts with queued messages being admitted first.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_005: [The token bucket shall be refilled at admissionsPerSecond, up to burstSize tokens.] */
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_006: [An attempt shall only be admitted while fewer than maxConcurrentHandshakes attempts are in progress, and it shall take one token from the bucket.] */
+    @Test
+    public void simulatedReconnectionStormIsSpreadAndCapped()
+    {
+        // arrange
+        // 1000 clients lose their connection at once; one in ten has messages waiting to be sent. Each handshake
+        // takes 300 simulated milliseconds, and time moves forward 10 milliseconds per step.
+        final int clients = 1000;
+        final int maxConcurrentHandshakes = 10;
+        final double admissionsPerSecond = 50;
+        final int burstSize = 10;
+        final long handshakeMillis = 300;
+        final long stepMillis = 10;
+
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(maxConcurrentHandshakes, admissionsPerSecond, burstSize, ticker);
+        List<ReconnectionCoordinator.Handshake> waiting = new ArrayList<>();
+        for (int i = 0; i < clients; i++)
+        {
+            coordinator.register();
+            waiting.add(coordinator.enqueue(i % 10 == 0));
+        }
+
+        List<ReconnectionCoordinator.Handshake> inProgress = new ArrayList<>();
+        List<Long> inProgressEndMillis = new ArrayList<>();
+        int maxObservedConcurrency = 0;
+        long elapsedMillis = 0;
+
+        // act
+        while (!waiting.isEmpty() || !inProgress.isEmpty())
+        {
+            for (int i = inProgress.size() - 1; i >= 0; i--)
+            {
+                if (inProgressEndMillis.get(i) <= elapsedMillis)
+                {
+                    inProgress.remove(i).close();
+                    inProgressEndMillis.remove(i);
+                }
+            }
+
+            Iterator<ReconnectionCoordinator.Handshake> iterator = waiting.iterator();
+            while (iterator.hasNext())
+            {
+                ReconnectionCoordinator.Handshake handshake = iterator.next();
+                if (handshake.tryStart())
+                {
+                    iterator.remove();
+                    inProgress.add(handshake);
+                    inProgressEndMillis.add(elapsedMillis + handshakeMillis);
+                }
+            }
+
+            maxObservedConcurrency = Math.max(maxObservedConcurrency, coordinator.getActiveHandshakeCount());
+            long admittedLimit = burstSize + (long) Math.floor(admissionsPerSecond * elapsedMillis / 1000);
+            assertTrue("admitted faster than the rate at " + elapsedMillis + " ms", coordinator.getAdmittedCount() <= admittedLimit);
+
+            ticker.advanceMillis(stepMillis);
+            elapsedMillis += stepMillis;
+        }
+
+        for (int i = 0; i < clients; i++)
+        {
+            coordinator.unregister();
+        }
+
+        // assert
+        assertEquals(clients, coordinator.getAdmittedCount());
+        assertEquals(clients / 10, coordinator.getPriorityAdmittedCount());
+        assertEquals(0, coordinator.getActiveHandshakeCount());
+        assertEquals(0, coordinator.getRegisteredClientCount());
+        assertEquals(clients - burstSize, coordinator.getPeakWaitingCount());
+        assertEquals(maxConcurrentHandshakes, maxObservedConcurrency);
+
+        // the storm is spread over time instead of hitting the hub at once; here the handshake cap is the bottleneck
+        long rateLimitedMillis = (long) ((clients - burstSize) / admissionsPerSecond * 1000);
+        long concurrencyLimitedMillis = clients * handshakeMillis / maxConcurrentHandshakes;
+        assertTrue("storm lasted " + elapsedMillis + " ms", elapsedMillis >= rateLimitedMillis);
+        assertTrue("storm lasted " + elapsedMillis + " ms", elapsedMillis >= concurrencyLimitedMillis);
+        assertTrue("storm lasted " + elapsedMillis + " ms", elapsedMillis <= concurrencyLimitedMillis + handshakeMillis + 10 * stepMillis);
+        assertTrue(coordinator.getAverageAdmissionDelayMillis() > 0);
+        assertTrue(coordinator.getMaxAdmissionDelayMillis() <= elapsedMillis);
+    }
+
+    /* Tests_SRS_RECONNECTIONCOORDINATOR_34_004: [This function shall queue the attempt behind the attempts of the same priority, attempts with queued messages being admitted first.] */
+    @Test
+    public void simulatedReconnectionStormAdmitsClientsWithQueuedMessagesFirst()
+    {
+        // arrange
+        final int clients = 1000;
+        FakeTicker ticker = new FakeTicker();
+        ReconnectionCoordinator coordinator = createCoordinator(clients, 100, 1, ticker);
+        List<ReconnectionCoordinator.Handshake> handshakes = new ArrayList<>();
+        for (int i = 0; i < clients; i++)
+        {
+            handshakes.add(coordinator.enqueue(i % 4 == 0));
+        }
+        List<ReconnectionCoordinator.Handshake> waiting = new ArrayList<>(handshakes.subList(1, clients));
+
+        // act
+        // the burst admits one client, then one more is admitted per step
+        List<Boolean> admissionOrder = new ArrayList<>();
+        for (int step = 0; step < clients; step++)
+        {
+            ticker.advanceMillis(11);
+            Iterator<ReconnectionCoordinator.Handshake> iterator = waiting.iterator();
+            while (iterator.hasNext())
+            {
+                ReconnectionCoordinator.Handshake handshake = iterator.next();
+                if (handshake.tryStart())
+                {
+                    iterator.remove();
+                    admissionOrder.add(handshake.hasQueuedMessages());
+                }
+            }
+        }
+
+        // assert
+        // the first client was admitted from the burst; the other 249 clients with messages go before the 750 without
+        assertTrue(handshakes.get(0).isAdmitted());
+        assertEquals(clients - 1, admissionOrder.size());
+        for (int i = 0; i < admissionOrder.size(); i++)
+        {
+            assertEquals(i < clients / 4 - 1, admissionOrder.get(i));
+        }
+    }
+
+    private static boolean[] admitted(List<ReconnectionCoordinator.Handshake> handshakes)
+    {
+        boolean[] admitted = new boolean[handshakes.size()];
+        for (int i = 0; i < handshakes.size(); i++)
+        {
+            admitted[i] = handshakes.get(i).tryStart();
+        }
+
+        return admitted;
+    }
+
+    private static void assertArrayEquals(boolean[] expected, boolean[] actual)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("index " + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -323,9 +323,45 @@ public class TransportClientTest
         Deencapsulation.invoke(transportClient, "registerDeviceClient", (DeviceClient)null);
     }
 
-    // Tests_SRS_TRANSPORTCLIENT_12_006: [The function shall throw  IllegalStateException if the connection is already open.]
+    // Tests_SRS_TRANSPORTCLIENT_34_024: [If the connection is open, the function shall set the deviceIO on the device client and add its config to the open connection.]
+    @Test
+    public void registerDeviceClientAddsToOpenConnection() throws IOException
+    {
+        // arrange
+        IotHubClientProtocol iotHubClientProtocol = IotHubClientProtocol.AMQPS;
+        TransportClient transportClient = new TransportClient(iotHubClientProtocol);
+        Deencapsulation.setField(transportClient, "deviceIO", mockDeviceIO);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceClient.getConfig();
+                result = mockDeviceClientConfig;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient);
+
+        // assert
+        ArrayList<DeviceClient> actualDeviceClientList = Deencapsulation.getField(transportClient, "deviceClientList");
+        assertEquals(1, actualDeviceClientList.size());
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockDeviceClient, "setDeviceIO", mockDeviceIO);
+                times = 1;
+                Deencapsulation.invoke(mockDeviceIO, "addClient", mockDeviceClientConfig);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_TRANSPORTCLIENT_34_025: [If the device could not be added to the open connection, the function shall throw an IllegalStateException.]
     @Test (expected = IllegalStateException.class)
-    public void registerDeviceClientThrowsOpen()
+    public void registerDeviceClientThrowsIfOpenConnectionRejectsDevice() throws IOException
     {
         // arrange
         IotHubClientProtocol iotHubClientProtocol = IotHubClientProtocol.AMQPS;
@@ -337,6 +373,10 @@ public class TransportClientTest
             {
                 mockDeviceIO.isOpen();
                 result = true;
+                mockDeviceClient.getConfig();
+                result = mockDeviceClientConfig;
+                Deencapsulation.invoke(mockDeviceIO, "addClient", mockDeviceClientConfig);
+                result = new IOException();
             }
         };
 
@@ -344,6 +384,79 @@ public class TransportClientTest
         Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient);
     }
 
+    // Tests_SRS_TRANSPORTCLIENT_34_026: [The function shall throw IllegalArgumentException if the deviceClient parameter is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void unregisterDeviceClientThrowsDeviceClientNull()
+    {
+        // arrange
+        TransportClient transportClient = new TransportClient(IotHubClientProtocol.AMQPS);
+
+        // act
+        transportClient.unregisterDeviceClient(null);
+    }
+
+    // Tests_SRS_TRANSPORTCLIENT_34_027: [The function shall throw IllegalArgumentException if the connection is open and the device client is the one the connection was opened for.]
+    @Test (expected = IllegalArgumentException.class)
+    public void unregisterDeviceClientThrowsForFirstDeviceWhenOpen()
+    {
+        // arrange
+        TransportClient transportClient = new TransportClient(IotHubClientProtocol.AMQPS);
+        Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient);
+        Deencapsulation.setField(transportClient, "deviceIO", mockDeviceIO);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+            }
+        };
+
+        // act
+        transportClient.unregisterDeviceClient(mockDeviceClient);
+    }
+
+    // Tests_SRS_TRANSPORTCLIENT_34_028: [The function shall remove the device client from the deviceClientList and return false if it was not in it.]
+    // Tests_SRS_TRANSPORTCLIENT_34_029: [If the deviceIO is not null, the function shall remove the device client's config from it and clear the deviceIO of the device client.]
+    @Test
+    public void unregisterDeviceClientRemovesDeviceFromOpenConnection(@Mocked final DeviceClient mockDeviceClient2)
+    {
+        // arrange
+        TransportClient transportClient = new TransportClient(IotHubClientProtocol.AMQPS);
+        Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient);
+        Deencapsulation.invoke(transportClient, "registerDeviceClient", mockDeviceClient2);
+        Deencapsulation.setField(transportClient, "deviceIO", mockDeviceIO);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceIO.isOpen();
+                result = true;
+                mockDeviceClient2.getConfig();
+                result = mockDeviceClientConfig;
+            }
+        };
+
+        // act
+        boolean firstRemoval = transportClient.unregisterDeviceClient(mockDeviceClient2);
+        boolean secondRemoval = transportClient.unregisterDeviceClient(mockDeviceClient2);
+
+        // assert
+        assertTrue(firstRemoval);
+        assertFalse(secondRemoval);
+        ArrayList<DeviceClient> actualDeviceClientList = Deencapsulation.getField(transportClient, "deviceClientList");
+        assertEquals(1, actualDeviceClientList.size());
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockDeviceIO, "removeClient", mockDeviceClientConfig);
+                times = 1;
+                Deencapsulation.invoke(mockDeviceClient2, "setDeviceIO", new Class[] {DeviceIO.class}, (DeviceIO) null);
+                times = 1;
+            }
+        };
+    }
+
     // Tests_SRS_TRANSPORTCLIENT_12_007: [The function shall add the given device client to the deviceClientList.]
     @Test
     public void registerDeviceClientSuccess()
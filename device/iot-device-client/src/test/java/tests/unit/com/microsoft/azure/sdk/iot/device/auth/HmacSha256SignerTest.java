@@ -0,0 +1,178 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
+
+import com.microsoft.azure.sdk.iot.device.auth.HmacSha256Signer;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for HmacSha256Signer. */
+public class HmacSha256SignerTest
+{
+    private static byte[] referenceDigest(byte[] data, byte[] key) throws Exception
+    {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_001: [If the provided data or key is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void signThrowsForNullKey()
+    {
+        HmacSha256Signer.sign(new byte[1], null);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_003: [This function shall return the digest of the data computed with a Mac initialized with the key.]
+    @Test
+    public void staticSignMatchesReference() throws Exception
+    {
+        // arrange
+        final byte[] key = "staticSignMatchesReference".getBytes(StandardCharsets.UTF_8);
+        final byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+
+        // act
+        byte[] digest = HmacSha256Signer.sign(data, key);
+
+        // assert
+        assertArrayEquals(referenceDigest(data, key), digest);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_004: [If the provided key is null or empty, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullKey()
+    {
+        new HmacSha256Signer(null);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_004: [If the provided key is null or empty, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForEmptyKey()
+    {
+        new HmacSha256Signer(new byte[0]);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_006: [If the provided data is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void signThrowsForNullData()
+    {
+        new HmacSha256Signer(new byte[1]).sign(null);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_007: [If the calling thread has no Mac for this signer, this function shall create one, initialize it with the key and keep it for the thread.]
+    // Tests_SRS_HMACSHA256SIGNER_34_008: [This function shall return the digest of the data computed with the Mac of the calling thread.]
+    @Test
+    public void signReusesMacOfCallingThread() throws Exception
+    {
+        // arrange
+        final byte[] key = "signReusesMacOfCallingThread".getBytes(StandardCharsets.UTF_8);
+        final byte[] firstData = "first".getBytes(StandardCharsets.UTF_8);
+        final byte[] secondData = "second".getBytes(StandardCharsets.UTF_8);
+        HmacSha256Signer signer = new HmacSha256Signer(key);
+        long creationCountBefore = HmacSha256Signer.getMacCreationCount();
+
+        // act
+        byte[] firstDigest = signer.sign(firstData);
+        byte[] secondDigest = signer.sign(secondData);
+
+        // assert
+        assertEquals(1, HmacSha256Signer.getMacCreationCount() - creationCountBefore);
+        assertArrayEquals(referenceDigest(firstData, key), firstDigest);
+        assertArrayEquals(referenceDigest(secondData, key), secondDigest);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_005: [The constructor shall save a copy of the key.]
+    @Test
+    public void signIsNotAffectedByChangesToCallerKey() throws Exception
+    {
+        // arrange
+        final byte[] key = "signIsNotAffectedByChangesToCallerKey".getBytes(StandardCharsets.UTF_8);
+        final byte[] originalKey = key.clone();
+        final byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+        HmacSha256Signer signer = new HmacSha256Signer(key);
+
+        // act
+        key[0] = 'X';
+        byte[] digest = signer.sign(data);
+
+        // assert
+        assertArrayEquals(referenceDigest(data, originalKey), digest);
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_009: [This function shall clear the saved key and the Mac of the calling thread, and the following calls to sign shall throw an IllegalStateException.]
+    @Test
+    public void closeClearsKeyAndStopsSigning()
+    {
+        // arrange
+        HmacSha256Signer signer = new HmacSha256Signer("closeClearsKeyAndStopsSigning".getBytes(StandardCharsets.UTF_8));
+        signer.sign(new byte[1]);
+
+        // act
+        signer.close();
+
+        // assert
+        byte[] savedKey = Deencapsulation.getField(signer, "key");
+        assertArrayEquals(new byte[savedKey.length], savedKey);
+        try
+        {
+            signer.sign(new byte[1]);
+            fail("A closed signer should not sign");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    // Tests_SRS_HMACSHA256SIGNER_34_007: [If the calling thread has no Mac for this signer, this function shall create one, initialize it with the key and keep it for the thread.]
+    // Tests_SRS_HMACSHA256SIGNER_34_008: [This function shall return the digest of the data computed with the Mac of the calling thread.]
+    @Test
+    public void signFromManyThreadsMatchesReference() throws Exception
+    {
+        // arrange
+        final int threadCount = 8;
+        final int signaturesPerThread = 500;
+        final byte[] key = "signFromManyThreadsMatchesReference".getBytes(StandardCharsets.UTF_8);
+        final HmacSha256Signer signer = new HmacSha256Signer(key);
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        Future<?>[] futures = new Future<?>[threadCount];
+
+        // act
+        for (int t = 0; t < threadCount; t++)
+        {
+            futures[t] = executorService.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    for (int i = 0; i < signaturesPerThread; i++)
+                    {
+                        byte[] data = ("resource\n" + i).getBytes(StandardCharsets.UTF_8);
+                        assertArrayEquals(referenceDigest(data, key), signer.sign(data));
+                    }
+
+                    return null;
+                }
+            });
+        }
+
+        // assert
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+
+        executorService.shutdown();
+    }
+}
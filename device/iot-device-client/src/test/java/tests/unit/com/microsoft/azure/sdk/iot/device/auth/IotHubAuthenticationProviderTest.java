@@ -6,6 +6,7 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContextCache;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import mockit.Deencapsulation;
@@ -16,6 +17,9 @@ import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 
 import static junit.framework.TestCase.assertEquals;
@@ -26,6 +30,9 @@ public class IotHubAuthenticationProviderTest
     @Mocked
     IotHubSSLContext mockedIotHubSSLContext;
 
+    @Mocked
+    IotHubSSLContextCache mockedIotHubSSLContextCache;
+
     @Mocked
     SSLContext mockedSSLContext;
     
@@ -108,7 +115,7 @@ public class IotHubAuthenticationProviderTest
     //Codes_SRS_AUTHENTICATIONPROVIDER_34_012: [If a CertificateException, NoSuchAlgorithmException, KeyManagementException, or KeyStoreException is thrown during this function, this function shall throw an IOException.]
     //Codes_SRS_AUTHENTICATIONPROVIDER_34_010: [If this object's ssl context has not been generated yet or if it needs to be re-generated, this function shall regenerate the ssl context.]
     @Test (expected = IOException.class)
-    public void getSSLContextWrapsExceptions() throws IOException
+    public void getSSLContextWrapsExceptions() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException
     {
         //arrange
         IotHubAuthenticationProvider sasAuth = new IotHubAuthenticationProviderMock(expectedHostname, expectedGatewayHostname, expectedDeviceId, expectedModuleId);
@@ -116,7 +123,7 @@ public class IotHubAuthenticationProviderTest
         new NonStrictExpectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSSLContext.class);
+                IotHubSSLContextCache.getIotHubSSLContext();
                 result = new CertificateException();
             }
         };
@@ -127,7 +134,7 @@ public class IotHubAuthenticationProviderTest
 
     //Codes_SRS_AUTHENTICATIONPROVIDER_34_011: [This function shall return the generated IotHubSSLContext.]
     @Test
-    public void getSSLContextSuccess() throws IOException
+    public void getSSLContextSuccess() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException
     {
         //arrange
         IotHubAuthenticationProvider sasAuth = new IotHubAuthenticationProviderMock(expectedHostname, expectedGatewayHostname, expectedDeviceId, expectedModuleId);
@@ -135,7 +142,7 @@ public class IotHubAuthenticationProviderTest
         new NonStrictExpectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSSLContext.class);
+                IotHubSSLContextCache.getIotHubSSLContext();
                 result = mockedIotHubSSLContext;
 
                 Deencapsulation.invoke(mockedIotHubSSLContext, "getSSLContext");
@@ -188,9 +195,9 @@ public class IotHubAuthenticationProviderTest
         assertTrue(sslContextNeedsRenewal);
     }
 
-    // Tests_SRS_AUTHENTICATIONPROVIDER_34_019: [If this has a saved iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert as the trusted cert.]
+    // Tests_SRS_AUTHENTICATIONPROVIDER_34_019: [If this has a saved iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert as the trusted cert.]
     @Test
-    public void generateSSLContextUsesSavedTrustedCert()
+    public void generateSSLContextUsesSavedTrustedCert() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException
     {
         //arrange
         final String expectedCert = "someTrustedCert";
@@ -204,15 +211,15 @@ public class IotHubAuthenticationProviderTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, expectedCert, false);
+                IotHubSSLContextCache.getIotHubSSLContext(expectedCert, false);
                 times = 1;
             }
         };
     }
 
-    // Tests_SRS_AUTHENTICATIONPROVIDER_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall generate a new IotHubSSLContext object with that saved cert path as the trusted cert.]
+    // Tests_SRS_AUTHENTICATIONPROVIDER_34_020: [If this has a saved path to a iotHubTrustedCert, this function shall get the IotHubSSLContext object shared by the clients with that saved cert path as the trusted cert.]
     @Test
-    public void generateSSLContextUsesSavedTrustedCertPath()
+    public void generateSSLContextUsesSavedTrustedCertPath() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException
     {
         //arrange
         final String expectedCertPath = "someTrustedCertPath";
@@ -226,15 +233,15 @@ public class IotHubAuthenticationProviderTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(IotHubSSLContext.class, new Class[] {String.class, boolean.class}, expectedCertPath, true);
+                IotHubSSLContextCache.getIotHubSSLContext(expectedCertPath, true);
                 times = 1;
             }
         };
     }
     
-    // Tests_SRS_AUTHENTICATIONPROVIDER_34_021: [If this has no saved iotHubTrustedCert or path, This function shall create and save a new default IotHubSSLContext object.]
+    // Tests_SRS_AUTHENTICATIONPROVIDER_34_021: [If this has no saved iotHubTrustedCert or path, This function shall get the default IotHubSSLContext object shared by the clients.]
     @Test
-    public void generateSSLContextGeneratesDefaultIotHubSSLContext()
+    public void generateSSLContextGeneratesDefaultIotHubSSLContext() throws IOException, CertificateException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException
     {
         //arrange
         IotHubAuthenticationProvider auth = new IotHubAuthenticationProviderMock(expectedHostname, expectedGatewayHostname, expectedDeviceId, expectedModuleId);
@@ -246,7 +253,7 @@ public class IotHubAuthenticationProviderTest
         new Verifications()
         {
             {
-                Deencapsulation.newInstance(IotHubSSLContext.class);
+                IotHubSSLContextCache.getIotHubSSLContext();
                 times = 1;
             }
         };
@@ -23,6 +23,9 @@ import java.security.cert.CertificateException;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * Unit tests for IotHubSasTokenSoftwareAuthenticationProvider.java
@@ -35,7 +38,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
     private static String expectedHostname = "hostname";
     private static String expectedGatewayHostname = "gateway";
     private static String expectedModuleId = "moduleId";
-    private static String expectedDeviceKey = "deviceKey";
+    private static String expectedDeviceKey = "ZGV2aWNlS2V5";
     private static String expectedSasToken = "sasToken";
     private static long expectedExpiryTime = 3601;
     private static long expectedBufferPercent = 20;
@@ -52,7 +55,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
         new NonStrictExpectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyString, anyLong);
+                new IotHubSasToken(anyString, anyString, (HmacSha256Signer) any, anyString, anyLong);
                 result = mockSasToken;
 
                 mockSasToken.toString();
@@ -85,7 +88,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
         new NonStrictExpectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyString, anyLong);
+                new IotHubSasToken(anyString, anyString, (HmacSha256Signer) any, anyString, anyLong);
                 result = mockSasToken;
 
                 mockSasToken.toString();
@@ -124,7 +127,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
                 result = true;
                 System.currentTimeMillis();
                 result = 0;
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, expectedHostname, expectedDeviceId, expectedDeviceKey, null, expectedModuleId, expectedExpiryTime);
+                new IotHubSasToken(expectedHostname, expectedDeviceId, (HmacSha256Signer) any, expectedModuleId, expectedExpiryTime);
                 result = mockSasToken;
             }
         };
@@ -157,7 +160,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
                 result = 0;
                 System.currentTimeMillis();
                 result = 0;
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, expectedHostname, expectedDeviceId, expectedDeviceKey, null, expectedModuleId, expectedExpiryTime);
+                new IotHubSasToken(expectedHostname, expectedDeviceId, (HmacSha256Signer) any, expectedModuleId, expectedExpiryTime);
                 result = mockSasToken;
             }
         };
@@ -207,7 +210,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
         new Expectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyString, anyLong);
+                new IotHubSasToken(anyString, anyString, (HmacSha256Signer) any, anyString, anyLong);
                 result = mockSasToken;
                 mockSasToken.toString();
                 result = "some token";
@@ -255,7 +258,7 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
         new StrictExpectations()
         {
             {
-                Deencapsulation.newInstance(IotHubSasToken.class, new Class[] {String.class, String.class, String.class, String.class, String.class, long.class}, anyString, anyString, anyString, anyString, anyString, anyLong);
+                new IotHubSasToken(anyString, anyString, (HmacSha256Signer) any, anyString, anyLong);
                 result = mockSasToken;
                 Deencapsulation.invoke(mockSasToken, "isExpired");
                 result = true;
@@ -335,4 +338,69 @@ public class IotHubSasTokenSoftwareIotHubAuthenticationProviderTest
         assertFalse(result);
     }
 
+    //Tests_SRS_IOTHUBSASTOKENSOFTWAREAUTHENTICATION_34_019: [The device key shall be decoded once into a signer that is reused by the following renewals until this provider is closed.]
+    @Test
+    public void renewalsReuseSignerOfDeviceKey(@Mocked final SignatureHelper mockSignatureHelper) throws IOException, TransportException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                SignatureHelper.decodeDeviceKeyBase64(expectedDeviceKey);
+                result = new byte[] {1, 2, 3};
+                Deencapsulation.invoke(mockSasToken, "isExpired");
+                result = true;
+            }
+        };
+        IotHubSasTokenAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedGatewayHostname, expectedDeviceId, expectedModuleId, expectedDeviceKey, null);
+        HmacSha256Signer signer = Deencapsulation.getField(sasAuth, "signer");
+
+        //act
+        sasAuth.getRenewedSasToken(false);
+        sasAuth.getRenewedSasToken(false);
+
+        //assert
+        assertSame(signer, Deencapsulation.getField(sasAuth, "signer"));
+        new Verifications()
+        {
+            {
+                SignatureHelper.decodeDeviceKeyBase64(anyString);
+                times = 1;
+                new IotHubSasToken(expectedHostname, expectedDeviceId, (HmacSha256Signer) any, expectedModuleId, anyLong);
+                times = 3;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBSASTOKENAUTHENTICATION_34_021: [This function shall close the saved signer, if any, and drop it.]
+    @Test
+    public void closeClosesAndDropsSigner(@Mocked final HmacSha256Signer mockSigner) throws IOException, TransportException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockSasToken, "isExpired");
+                result = true;
+            }
+        };
+        IotHubSasTokenAuthenticationProvider sasAuth = new IotHubSasTokenSoftwareAuthenticationProvider(expectedHostname, expectedGatewayHostname, expectedDeviceId, expectedModuleId, expectedDeviceKey, null);
+
+        //act
+        sasAuth.close();
+
+        //assert
+        assertNull(Deencapsulation.getField(sasAuth, "signer"));
+        new Verifications()
+        {
+            {
+                mockSigner.close();
+                times = 1;
+            }
+        };
+
+        // a token renewed after close creates a new signer
+        sasAuth.getRenewedSasToken(false);
+        assertNotNull(Deencapsulation.getField(sasAuth, "signer"));
+    }
 }
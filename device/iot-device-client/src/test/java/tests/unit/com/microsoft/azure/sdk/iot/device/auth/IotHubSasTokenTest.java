@@ -4,11 +4,13 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
 
 import com.microsoft.azure.sdk.iot.device.IotHubConnectionString;
+import com.microsoft.azure.sdk.iot.device.auth.HmacSha256Signer;
 import com.microsoft.azure.sdk.iot.device.auth.IotHubSasToken;
 import com.microsoft.azure.sdk.iot.device.auth.Signature;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
+import mockit.Verifications;
 import org.junit.Test;
 
 import java.net.URISyntaxException;
@@ -589,4 +591,39 @@ public class IotHubSasTokenTest
         String actualSharedAccessToken = IotHubSasToken.buildSharedAccessToken(null, signature, expiryTime);
     }
 
+
+    // Tests_SRS_IOTHUBSASTOKEN_34_016: [If the provided signer is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void signerConstructorThrowsForNullSigner()
+    {
+        new IotHubSasToken("iothub.sample-iothub-hostname.net", "sample-device-ID", (HmacSha256Signer) null, null, 100);
+    }
+
+    // Tests_SRS_IOTHUBSASTOKEN_34_017: [The signature shall be computed with the provided signer, without decoding the device key again.]
+    @Test
+    public void signerConstructorSignsWithSigner(@Mocked final HmacSha256Signer mockSigner)
+    {
+        final long expiryTime = 100;
+        final String signature = "sample-sig";
+        new NonStrictExpectations()
+        {
+            {
+                mockSig.toString();
+                result = signature;
+            }
+        };
+
+        IotHubSasToken token = new IotHubSasToken("iothub.sample-iothub-hostname.net", "sample-device-ID", mockSigner, null, expiryTime);
+
+        String tokenStr = token.toString();
+        assertTrue(tokenStr.contains("sig=" + signature));
+        assertTrue(tokenStr.contains("se=" + expiryTime));
+        new Verifications()
+        {
+            {
+                new Signature(anyString, expiryTime, mockSigner);
+                times = 1;
+            }
+        };
+    }
 }
@@ -6,6 +6,8 @@ package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
 import com.microsoft.azure.sdk.iot.device.auth.SignatureHelper;
 import org.junit.Test;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -118,4 +120,16 @@ public class SignatureHelperTest
         final String expectedWebSafeSig = "m+m";
         assertThat(testWebSafeSig, is(expectedWebSafeSig));
     }
+
+    // Tests_SRS_SIGNATUREHELPER_11_007: [The function shall replace web-unsafe characters in the signature with a '%' followed by two hexadecimal digits, where the hexadecimal digits are determined by the UTF-8 charset.]
+    @Test
+    public void encodeSignatureMatchesUrlEncoder() throws UnsupportedEncodingException
+    {
+        final String[] sigs = { "abcXYZ019.-*_", "xZ+a/b==", "", "a b\u00e9\u4e2d~!", "\ud83d\ude00" };
+
+        for (String sig : sigs)
+        {
+            assertThat(SignatureHelper.encodeSignatureWebSafe(sig), is(URLEncoder.encode(sig, "UTF-8")));
+        }
+    }
 }
@@ -3,10 +3,12 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.device.auth;
 
+import com.microsoft.azure.sdk.iot.device.auth.HmacSha256Signer;
 import com.microsoft.azure.sdk.iot.device.auth.Signature;
 import com.microsoft.azure.sdk.iot.device.auth.SignatureHelper;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.VerificationsInOrder;
 import org.junit.Test;
 
@@ -90,4 +92,39 @@ public class SignatureTest
         final String expectedSigStr = sigStr;
         assertThat(testSigStr, is(expectedSigStr));
     }
+
+    // Tests_SRS_SIGNATURE_34_001: [If the provided signer is null, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void signerConstructorThrowsForNullSigner()
+    {
+        new Signature("test-resource-uri", 101L, (HmacSha256Signer) null);
+    }
+
+    // Tests_SRS_SIGNATURE_34_002: [The signature shall be computed as the one built from a device key, with the raw signature signed by the provided signer.]
+    @Test
+    public void signerConstructorSignsWithoutDecodingDeviceKey(@Mocked final HmacSha256Signer mockSigner)
+    {
+        final String resourceUri = "test-resource-uri";
+        final long expiryTime = 101L;
+
+        new Signature(resourceUri, expiryTime, mockSigner);
+
+        new VerificationsInOrder()
+        {
+            {
+                SignatureHelper.buildRawSignature(resourceUri, expiryTime);
+                mockSigner.sign((byte[]) any);
+                SignatureHelper.encodeSignatureBase64((byte[]) any);
+                SignatureHelper.encodeSignatureUtf8((byte[]) any);
+                SignatureHelper.encodeSignatureWebSafe(anyString);
+            }
+        };
+        new Verifications()
+        {
+            {
+                SignatureHelper.decodeDeviceKeyBase64(anyString);
+                times = 0;
+            }
+        };
+    }
 }
@@ -0,0 +1,142 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.fileupload;
+
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadProgressCallback;
+import mockit.Mocked;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the block upload options class.
+ * 100% methods, 100% lines covered
+ */
+public class BlockUploadOptionsTest
+{
+    @Mocked
+    private BlockUploadProgressCallback mockBlockUploadProgressCallback;
+
+    @Test
+    public void defaultsSucceed()
+    {
+        // act
+        BlockUploadOptions options = new BlockUploadOptions();
+
+        // assert
+        assertEquals(BlockUploadOptions.DEFAULT_BLOCK_SIZE_IN_BYTES, options.getBlockSizeInBytes());
+        assertEquals(BlockUploadOptions.DEFAULT_MAX_PARALLEL_BLOCKS, options.getMaxParallelBlocks());
+        assertNull(options.getCheckpointFile());
+        assertNull(options.getProgressCallback());
+        assertNull(options.getProgressCallbackContext());
+        assertFalse(options.isComputeBlockMd5());
+        assertNull(options.getSourceVersion());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_008: [The setSourceVersion shall store the provided `sourceVersion`, that can be null.] */
+    @Test
+    public void setSourceVersionSucceeds()
+    {
+        // arrange
+        BlockUploadOptions options = new BlockUploadOptions();
+
+        // act
+        options.setSourceVersion("\"0x8D5F1A2B3C4D5E6\"");
+
+        // assert
+        assertEquals("\"0x8D5F1A2B3C4D5E6\"", options.getSourceVersion());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_007: [The setComputeBlockMd5 shall store the provided `computeBlockMd5`.] */
+    @Test
+    public void setComputeBlockMd5Succeeds()
+    {
+        // arrange
+        BlockUploadOptions options = new BlockUploadOptions();
+
+        // act
+        options.setComputeBlockMd5(true);
+
+        // assert
+        assertTrue(options.isComputeBlockMd5());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_001: [If the `blockSizeInBytes` is not between 1 and MAX_BLOCK_SIZE_IN_BYTES, the setBlockSizeInBytes shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setBlockSizeInBytesZeroThrows()
+    {
+        // act
+        new BlockUploadOptions().setBlockSizeInBytes(0);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_001: [If the `blockSizeInBytes` is not between 1 and MAX_BLOCK_SIZE_IN_BYTES, the setBlockSizeInBytes shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setBlockSizeInBytesTooBigThrows()
+    {
+        // act
+        new BlockUploadOptions().setBlockSizeInBytes(BlockUploadOptions.MAX_BLOCK_SIZE_IN_BYTES + 1);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_002: [The setBlockSizeInBytes shall store the provided `blockSizeInBytes`.] */
+    @Test
+    public void setBlockSizeInBytesSucceeds()
+    {
+        // arrange
+        BlockUploadOptions options = new BlockUploadOptions();
+
+        // act
+        options.setBlockSizeInBytes(1024);
+
+        // assert
+        assertEquals(1024, options.getBlockSizeInBytes());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_003: [If the `maxParallelBlocks` is not positive, the setMaxParallelBlocks shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setMaxParallelBlocksZeroThrows()
+    {
+        // act
+        new BlockUploadOptions().setMaxParallelBlocks(0);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_004: [The setMaxParallelBlocks shall store the provided `maxParallelBlocks`.] */
+    @Test
+    public void setMaxParallelBlocksSucceeds()
+    {
+        // arrange
+        BlockUploadOptions options = new BlockUploadOptions();
+
+        // act
+        options.setMaxParallelBlocks(8);
+
+        // assert
+        assertEquals(8, options.getMaxParallelBlocks());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_005: [The setCheckpointFile shall store the provided `checkpointFile`, that can be null.] */
+    /* Tests_SRS_BLOCKUPLOADOPTIONS_34_006: [The setProgressCallback shall store the provided `progressCallback`, that can be null, and `progressCallbackContext`.] */
+    @Test
+    public void setCheckpointFileAndProgressCallbackSucceed()
+    {
+        // arrange
+        BlockUploadOptions options = new BlockUploadOptions();
+        File checkpointFile = new File("upload.checkpoint");
+        Object context = new Object();
+
+        // act
+        options.setCheckpointFile(checkpointFile);
+        options.setProgressCallback(mockBlockUploadProgressCallback, context);
+
+        // assert
+        assertEquals(checkpointFile, options.getCheckpointFile());
+        assertEquals(mockBlockUploadProgressCallback, options.getProgressCallback());
+        assertEquals(context, options.getProgressCallbackContext());
+    }
+}
@@ -0,0 +1,731 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.fileupload;
+
+import com.microsoft.azure.sdk.iot.deps.util.Base64;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadProgressCallback;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploader;
+import com.microsoft.azure.storage.AccessCondition;
+import com.microsoft.azure.storage.OperationContext;
+import com.microsoft.azure.storage.SendingRequestEvent;
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlobRequestOptions;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the block uploader class, against a stub of the storage that keeps the blocks in memory.
+ */
+public class BlockUploaderTest
+{
+    private static final String VALID_BLOB_NAME = "test-device1/image.jpg";
+    private static final int TEST_BLOCK_SIZE = 100;
+    private static final int TEST_STREAM_LENGTH = 1050;
+    private static final String TEST_SOURCE_VERSION = "0x8D5F1A2B3C4D5E6";
+    private static final int TEST_BLOCK_COUNT = 11;
+
+    @Mocked
+    private CloudBlockBlob mockCloudBlockBlob;
+
+    private File checkpointFile;
+    private byte[] content;
+
+    /* The blocks stored by the stub, by block id, and the blob committed with them. */
+    private final Map<String, byte[]> storedBlocks = new ConcurrentHashMap<>();
+    private final List<String> uploadedBlockIds = Collections.synchronizedList(new ArrayList<String>());
+    private List<String> committedBlockIds;
+    private byte[] committedContent;
+    private final AtomicInteger uploadAttempts = new AtomicInteger();
+    private final AtomicInteger blocksInFlight = new AtomicInteger();
+    private final AtomicInteger maxBlocksInFlight = new AtomicInteger();
+    private final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+    private final Map<String, OperationContext> operationContexts = new ConcurrentHashMap<>();
+    private final AtomicBoolean sentFromMappedFile = new AtomicBoolean(true);
+
+    @Before
+    public void setUp() throws IOException
+    {
+        checkpointFile = File.createTempFile("BlockUploaderTest", ".checkpoint");
+        assertTrue(checkpointFile.delete());
+        content = new byte[TEST_STREAM_LENGTH];
+        new Random(42).nextBytes(content);
+    }
+
+    @After
+    public void tearDown()
+    {
+        checkpointFile.delete();
+    }
+
+    private BlockUploadOptions createOptions(int maxParallelBlocks)
+    {
+        BlockUploadOptions options = new BlockUploadOptions();
+        options.setBlockSizeInBytes(TEST_BLOCK_SIZE);
+        options.setMaxParallelBlocks(maxParallelBlocks);
+        options.setCheckpointFile(checkpointFile);
+        options.setSourceVersion(TEST_SOURCE_VERSION);
+        options.setProgressCallback(new BlockUploadProgressCallback()
+        {
+            @Override
+            public void execute(long bytesUploaded, long streamLength, Object callbackContext)
+            {
+                assertEquals(TEST_STREAM_LENGTH, streamLength);
+                progress.add(bytesUploaded);
+            }
+        }, null);
+        return options;
+    }
+
+    private void upload(BlockUploadOptions options, InputStream inputStream, long streamLength) throws Exception
+    {
+        BlockUploader blockUploader = Deencapsulation.newInstance(BlockUploader.class, new Class[] {BlockUploadOptions.class}, options);
+        try
+        {
+            Deencapsulation.invoke(blockUploader, "upload",
+                    new Class[] {CloudBlockBlob.class, String.class, InputStream.class, long.class},
+                    mockCloudBlockBlob, VALID_BLOB_NAME, inputStream, streamLength);
+        }
+        catch (RuntimeException e)
+        {
+            // Deencapsulation wraps the checked exceptions of the invoked method.
+            if (e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private File writeContentToFile() throws IOException
+    {
+        File file = File.createTempFile("BlockUploaderTest", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file))
+        {
+            fileOutputStream.write(content);
+        }
+        return file;
+    }
+
+    private void uploadPath(BlockUploadOptions options, Path path) throws Exception
+    {
+        BlockUploader blockUploader = Deencapsulation.newInstance(BlockUploader.class, new Class[] {BlockUploadOptions.class}, options);
+        try
+        {
+            Deencapsulation.invoke(blockUploader, "upload",
+                    new Class[] {CloudBlockBlob.class, String.class, Path.class},
+                    mockCloudBlockBlob, VALID_BLOB_NAME, path);
+        }
+        catch (RuntimeException e)
+        {
+            // Deencapsulation wraps the checked exceptions of the invoked method.
+            if (e.getCause() instanceof Exception)
+            {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String md5Of(byte[] block) throws NoSuchAlgorithmException
+    {
+        return Base64.encodeBase64StringLocal(MessageDigest.getInstance("MD5").digest(block));
+    }
+
+    private static long currentThreadAllocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void storageExpectations(final int failingUploadAttempt, final StorageException commitFailure) throws Exception
+    {
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong, (AccessCondition) any, (BlobRequestOptions) any, (OperationContext) any);
+                result = new Delegate()
+                {
+                    void uploadBlock(String blockId, InputStream sourceStream, long length, AccessCondition accessCondition,
+                                     BlobRequestOptions blobRequestOptions, OperationContext operationContext) throws StorageException, IOException, InterruptedException
+                    {
+                        int inFlight = blocksInFlight.incrementAndGet();
+                        try
+                        {
+                            synchronized (maxBlocksInFlight)
+                            {
+                                maxBlocksInFlight.set(Math.max(maxBlocksInFlight.get(), inFlight));
+                            }
+                            if (uploadAttempts.incrementAndGet() == failingUploadAttempt)
+                            {
+                                throw new StorageException("ServerBusy", "The server is busy.", 503, null, null);
+                            }
+                            Thread.sleep(2);
+                            assertTrue(sourceStream.markSupported());
+                            if (!(Deencapsulation.getField(sourceStream, "buffer") instanceof MappedByteBuffer))
+                            {
+                                sentFromMappedFile.set(false);
+                            }
+                            byte[] block = new byte[(int) length];
+                            assertEquals(length, sourceStream.read(block));
+                            assertEquals(-1, sourceStream.read());
+                            storedBlocks.put(blockId, block);
+                            if (operationContext != null)
+                            {
+                                operationContexts.put(blockId, operationContext);
+                            }
+                            uploadedBlockIds.add(blockId);
+                        }
+                        finally
+                        {
+                            blocksInFlight.decrementAndGet();
+                        }
+                    }
+                };
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                result = new Delegate()
+                {
+                    void commitBlockList(Iterable<BlockEntry> blockList) throws StorageException, IOException
+                    {
+                        if (commitFailure != null)
+                        {
+                            throw commitFailure;
+                        }
+                        committedBlockIds = new ArrayList<>();
+                        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+                        for (BlockEntry blockEntry : blockList)
+                        {
+                            committedBlockIds.add(blockEntry.getId());
+                            blob.write(storedBlocks.get(blockEntry.getId()));
+                        }
+                        committedContent = blob.toByteArray();
+                    }
+                };
+            }
+        };
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_001: [If the `options` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorNullOptionsThrows()
+    {
+        // act
+        Deencapsulation.newInstance(BlockUploader.class, new Class[] {BlockUploadOptions.class}, (BlockUploadOptions) null);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_002: [If the `blob` or the `inputStream` is null, the `blobName` is null or empty, or the `streamLength` is negative, the upload shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadNegativeStreamLengthThrows() throws Exception
+    {
+        // act
+        upload(createOptions(1), new ByteArrayInputStream(content), -1);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_002: [If the `blob` or the `inputStream` is null, the `blobName` is null or empty, or the `streamLength` is negative, the upload shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadNullInputStreamThrows() throws Exception
+    {
+        // act
+        upload(createOptions(1), null, TEST_STREAM_LENGTH);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_003: [If the stream needs more than 50000 blocks of the configured size, the upload shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadTooManyBlocksThrows() throws Exception
+    {
+        // arrange
+        BlockUploadOptions options = createOptions(1);
+        options.setBlockSizeInBytes(1);
+
+        // act
+        upload(options, new ByteArrayInputStream(new byte[50001]), 50001);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_006: [The upload shall read the next block only when less than the max parallel blocks are being sent.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_007: [The upload shall send each block to the storage with `uploadBlock`, in parallel with the other blocks.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_010: [Once all the blocks are stored, the upload shall commit the list of blocks, in the stream order.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_012: [Once the blocks are committed, the upload shall delete the checkpoint.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_015: [Each time a block is stored, the upload shall call the progress callback, if any, with the number of bytes already stored and the `streamLength`.] */
+    @Test
+    public void uploadSendsTheBlocksInParallelAndCommitsThemInOrder() throws Exception
+    {
+        // arrange
+        storageExpectations(0, null);
+
+        // act
+        upload(createOptions(3), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertEquals(TEST_BLOCK_COUNT, committedBlockIds.size());
+        assertArrayEquals(content, committedContent);
+        assertTrue(maxBlocksInFlight.get() <= 3);
+        assertEquals(TEST_BLOCK_COUNT, progress.size());
+        assertEquals(Long.valueOf(TEST_STREAM_LENGTH), Collections.max(progress));
+        assertFalse(checkpointFile.exists());
+        for (String blockId : committedBlockIds)
+        {
+            assertEquals(committedBlockIds.get(0).length(), blockId.length());
+        }
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_004: [If the checkpoint file exists and was created for the same `blobName`, `streamLength`, block size, and source content, the upload shall resume from it; otherwise it shall start a new upload.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_005: [The upload shall skip in the `inputStream` the blocks recorded in the checkpoint, without sending them again.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_009: [If a block failed to be sent, the upload shall keep the checkpoint, and throw the exception of the failed block.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_014: [Each time a block is stored, the upload shall record it in the checkpoint file, if any.] */
+    @Test
+    public void uploadResumesFromTheCheckpointAfterAFailedBlock() throws Exception
+    {
+        // arrange
+        storageExpectations(5, null);
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            assertEquals(503, e.getHttpStatusCode());
+        }
+        assertNull(committedBlockIds);
+        assertTrue(checkpointFile.exists());
+        List<String> firstBlockIds = new ArrayList<>(uploadedBlockIds);
+        assertEquals(4, firstBlockIds.size());
+        progress.clear();
+
+        // act
+        upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertEquals(firstBlockIds, committedBlockIds.subList(0, 4));
+        assertArrayEquals(content, committedContent);
+        assertEquals(Long.valueOf(5 * TEST_BLOCK_SIZE), progress.get(0));
+        assertEquals(Long.valueOf(TEST_STREAM_LENGTH), progress.get(progress.size() - 1));
+        assertFalse(checkpointFile.exists());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_019: [If sending or recording a block fails with any Throwable, the upload shall fail with it, and shall not commit the blob.] */
+    @Test
+    public void uploadFailsIfABlockPutThrowsAnError() throws Exception
+    {
+        // arrange
+        final Error blockError = new LinkageError("the block put failed");
+        new NonStrictExpectations()
+        {
+            {
+                mockCloudBlockBlob.uploadBlock(anyString, (InputStream) any, anyLong, (AccessCondition) any, (BlobRequestOptions) any, (OperationContext) any);
+                result = blockError;
+            }
+        };
+
+        // act
+        try
+        {
+            upload(createOptions(2), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (LinkageError e)
+        {
+            // assert
+            assertEquals(blockError, e);
+        }
+        assertNull(committedBlockIds);
+        new Verifications()
+        {
+            {
+                mockCloudBlockBlob.commitBlockList((Iterable<BlockEntry>) any);
+                times = 0;
+            }
+        };
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_004: [If the checkpoint file exists and was created for the same `blobName`, `streamLength`, block size, and source content, the upload shall resume from it; otherwise it shall start a new upload.] */
+    @Test
+    public void uploadStartsOverIfTheCheckpointIsForAnotherStream() throws Exception
+    {
+        // arrange
+        storageExpectations(5, null);
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        BlockUploadOptions options = createOptions(1);
+        options.setBlockSizeInBytes(TEST_BLOCK_SIZE * 2);
+
+        // act
+        upload(options, new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertEquals(4 + 6, uploadedBlockIds.size());
+        assertEquals(6, committedBlockIds.size());
+        assertFalse(committedBlockIds.contains(uploadedBlockIds.get(0)));
+        assertArrayEquals(content, committedContent);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_004: [If the checkpoint file exists and was created for the same `blobName`, `streamLength`, block size, and source content, the upload shall resume from it; otherwise it shall start a new upload.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_020: [The upload shall identify the content of the source by the source version of the options if set, or else by the last modified time of the file. The upload of a stream without a source version shall neither resume from nor write the checkpoint file.] */
+    @Test
+    public void uploadStartsOverIfTheSourceVersionChanged() throws Exception
+    {
+        // arrange
+        storageExpectations(5, null);
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        content[2 * TEST_BLOCK_SIZE]++;
+        BlockUploadOptions options = createOptions(1);
+        options.setSourceVersion(TEST_SOURCE_VERSION + "-changed");
+
+        // act
+        upload(options, new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertEquals(4 + TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertFalse(committedBlockIds.contains(uploadedBlockIds.get(0)));
+        assertArrayEquals(content, committedContent);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_020: [The upload shall identify the content of the source by the source version of the options if set, or else by the last modified time of the file. The upload of a stream without a source version shall neither resume from nor write the checkpoint file.] */
+    @Test
+    public void uploadStreamWithoutSourceVersionDoesNotResumeAfterTheContentChanged() throws Exception
+    {
+        // arrange
+        storageExpectations(5, null);
+        BlockUploadOptions options = createOptions(1);
+        options.setSourceVersion(null);
+        try
+        {
+            upload(options, new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        boolean checkpointWritten = checkpointFile.exists();
+
+        // same length and first block, but a later block changed
+        content[2 * TEST_BLOCK_SIZE]++;
+
+        // act
+        upload(options, new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertFalse(checkpointWritten);
+        assertEquals(4 + TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertFalse(committedBlockIds.contains(uploadedBlockIds.get(0)));
+        assertArrayEquals(content, committedContent);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_020: [The upload shall identify the content of the source by the source version of the options if set, or else by the last modified time of the file. The upload of a stream without a source version shall neither resume from nor write the checkpoint file.] */
+    @Test
+    public void uploadPathStartsOverIfTheFileWasModified() throws Exception
+    {
+        // arrange
+        File file = writeContentToFile();
+        BlockUploadOptions options = createOptions(1);
+        options.setSourceVersion(null);
+        storageExpectations(3, null);
+        try
+        {
+            uploadPath(options, file.toPath());
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        content[TEST_STREAM_LENGTH - 1]++;
+        long lastModified = file.lastModified();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file))
+        {
+            fileOutputStream.write(content);
+        }
+        assertTrue(file.setLastModified(lastModified + 2000));
+
+        // act
+        uploadPath(options, file.toPath());
+
+        // assert
+        assertEquals(2 + TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertArrayEquals(content, committedContent);
+        assertTrue(file.delete());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_021: [The upload shall append each stored block to the checkpoint file, without rewriting the blocks already recorded.] */
+    @Test
+    public void uploadAppendsEachBlockToTheCheckpointAndIgnoresACutLine() throws Exception
+    {
+        // arrange
+        storageExpectations(5, null);
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        List<String> blockLines = new ArrayList<>();
+        for (String line : Files.readAllLines(checkpointFile.toPath(), StandardCharsets.ISO_8859_1))
+        {
+            if (line.startsWith("block."))
+            {
+                blockLines.add(line);
+            }
+        }
+        assertEquals(4, blockLines.size());
+        assertEquals("block.3=stored", blockLines.get(3));
+        try (FileOutputStream fileOutputStream = new FileOutputStream(checkpointFile, true))
+        {
+            // a crash while appending the record of block 7
+            fileOutputStream.write("block.7=st".getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        storageExpectations(8, null);
+
+        // act
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert - the blocks 4 and 5 are recorded after the cut line, so only the blocks 6 to 10 are sent again
+        assertEquals(4 + 2 + 5, uploadedBlockIds.size());
+        assertArrayEquals(content, committedContent);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_011: [If the storage rejects the list of blocks, the upload shall delete the checkpoint, so the next upload restarts from the beginning, and throw the StorageException.] */
+    @Test
+    public void uploadDeletesTheCheckpointIfTheBlockListIsRejected() throws Exception
+    {
+        // arrange
+        storageExpectations(0, new StorageException("InvalidBlockList", "The specified block list is invalid.", 400, null, null));
+
+        // act
+        try
+        {
+            upload(createOptions(2), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the rejected block list shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            assertEquals(400, e.getHttpStatusCode());
+        }
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertFalse(checkpointFile.exists());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_013: [If the `inputStream` ends before `streamLength` bytes, the upload shall throw EOFException.] */
+    @Test (expected = EOFException.class)
+    public void uploadShortStreamThrows() throws Exception
+    {
+        // arrange
+        storageExpectations(0, null);
+
+        // act
+        upload(createOptions(2), new ByteArrayInputStream(content, 0, TEST_STREAM_LENGTH - 1), TEST_STREAM_LENGTH);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_008: [If the upload is interrupted, it shall stop sending blocks, keep the checkpoint, and throw InterruptedIOException.] */
+    @Test
+    public void uploadInterruptedThrows() throws Exception
+    {
+        // arrange
+        storageExpectations(0, null);
+        Thread.currentThread().interrupt();
+
+        // act
+        try
+        {
+            upload(createOptions(1), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+            fail("the interrupted upload shall throw InterruptedIOException");
+        }
+        catch (InterruptedIOException e)
+        {
+            // expected
+        }
+        finally
+        {
+            // assert
+            assertTrue(Thread.interrupted());
+        }
+        assertTrue(uploadedBlockIds.isEmpty());
+        assertNull(committedBlockIds);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_016: [If the `blob` or the `path` is null, or the `blobName` is null or empty, the upload shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadNullPathThrows() throws Exception
+    {
+        // act
+        uploadPath(createOptions(1), null);
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_005: [The upload shall skip in the `inputStream` the blocks recorded in the checkpoint, without sending them again.] */
+    /* Tests_SRS_BLOCKUPLOADER_34_017: [The upload shall send each block of the file as a read only memory mapped slice of the file, mapped from a FileChannel.] */
+    @Test
+    public void uploadPathSendsMappedSlicesAndResumesFromTheCheckpoint() throws Exception
+    {
+        // arrange
+        File file = writeContentToFile();
+        storageExpectations(3, null);
+        try
+        {
+            uploadPath(createOptions(1), file.toPath());
+            fail("the failed block shall fail the upload");
+        }
+        catch (StorageException e)
+        {
+            // expected
+        }
+        assertEquals(2, uploadedBlockIds.size());
+
+        // act
+        uploadPath(createOptions(3), file.toPath());
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertArrayEquals(content, committedContent);
+        assertTrue(sentFromMappedFile.get());
+        assertFalse(checkpointFile.exists());
+        assertTrue(file.delete());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_017: [The upload shall send each block of the file as a read only memory mapped slice of the file, mapped from a FileChannel.] */
+    @Test
+    public void uploadPathDoesNotCopyTheBlocksInTheHeap() throws Exception
+    {
+        // arrange
+        content = new byte[2 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        File file = writeContentToFile();
+        storageExpectations(0, null);
+        BlockUploadOptions options = new BlockUploadOptions();
+        options.setBlockSizeInBytes(256 * 1024);
+
+        // act
+        long streamAllocatedBytes = currentThreadAllocatedBytes();
+        upload(options, new FileInputStream(file), content.length);
+        streamAllocatedBytes = currentThreadAllocatedBytes() - streamAllocatedBytes;
+        long pathAllocatedBytes = currentThreadAllocatedBytes();
+        uploadPath(options, file.toPath());
+        pathAllocatedBytes = currentThreadAllocatedBytes() - pathAllocatedBytes;
+
+        // assert - both uploads allocate the same to commit the blob in the stub, but only the stream copies the blocks
+        assertTrue("the stream upload allocated " + streamAllocatedBytes + " bytes, and the path upload " + pathAllocatedBytes,
+                streamAllocatedBytes - pathAllocatedBytes > content.length * 3 / 4);
+        assertArrayEquals(content, committedContent);
+        assertTrue(file.delete());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_018: [If the options ask to compute the block MD5, the upload shall compute the MD5 of each block and send it as the `Content-MD5` of the block request, so the storage verifies the block.] */
+    @Test
+    public void uploadSendsTheMd5OfEachBlock(@Mocked final HttpURLConnection mockHttpURLConnection) throws Exception
+    {
+        // arrange
+        File file = writeContentToFile();
+        storageExpectations(0, null);
+        BlockUploadOptions options = createOptions(2);
+        options.setComputeBlockMd5(true);
+
+        // act
+        uploadPath(options, file.toPath());
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, operationContexts.size());
+        for (final Map.Entry<String, OperationContext> operationContext : operationContexts.entrySet())
+        {
+            operationContext.getValue().getSendingRequestEventHandler().fireEvent(
+                    new SendingRequestEvent(operationContext.getValue(), mockHttpURLConnection, null));
+            final String expectedMd5 = md5Of(storedBlocks.get(operationContext.getKey()));
+            new Verifications()
+            {
+                {
+                    mockHttpURLConnection.setRequestProperty("Content-MD5", expectedMd5);
+                    times = 1;
+                }
+            };
+        }
+        assertTrue(file.delete());
+    }
+
+    /* Tests_SRS_BLOCKUPLOADER_34_018: [If the options ask to compute the block MD5, the upload shall compute the MD5 of each block and send it as the `Content-MD5` of the block request, so the storage verifies the block.] */
+    @Test
+    public void uploadDoesNotSendTheMd5ByDefault() throws Exception
+    {
+        // arrange
+        storageExpectations(0, null);
+
+        // act
+        upload(createOptions(2), new ByteArrayInputStream(content), TEST_STREAM_LENGTH);
+
+        // assert
+        assertEquals(TEST_BLOCK_COUNT, uploadedBlockIds.size());
+        assertTrue(operationContexts.isEmpty());
+        assertFalse(sentFromMappedFile.get());
+    }
+}
@@ -7,6 +7,8 @@ import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
 import com.microsoft.azure.sdk.iot.device.IotHubMethod;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
 import com.microsoft.azure.sdk.iot.device.ResponseMessage;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploader;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUploadTask;
 import com.microsoft.azure.sdk.iot.device.transport.IotHubTransportMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransportManager;
@@ -14,15 +16,18 @@ import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.StorageExtendedErrorInformation;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import mockit.Deencapsulation;
+import mockit.Injectable;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -34,7 +39,7 @@ import static org.junit.Assert.assertEquals;
  */
 public class FileUploadTaskTest
 {
-    @Mocked
+    @Injectable
     private InputStream mockInputStream;
 
     @Mocked
@@ -507,6 +512,86 @@ public class FileUploadTaskTest
         };
     }
 
+    /* Tests_SRS_FILEUPLOADTASK_34_034: [The constructor shall store the provided `blockUploadOptions`, that can be null.] */
+    /* Tests_SRS_FILEUPLOADTASK_34_035: [If the `blockUploadOptions` is not null, the run shall upload the `inputStream` to the created `CloudBlockBlob` block by block, using a `BlockUploader` with these options.] */
+    @Test
+    public void runUploadStreamBlockByBlockToCloudBlockBlob(@Mocked final BlockUploadOptions mockBlockUploadOptions,
+                                                            @Mocked final BlockUploader mockBlockUploader)
+            throws IOException, IllegalArgumentException, URISyntaxException, StorageException
+    {
+        // arrange
+        expectSuccess(VALID_BLOB_NAME, VALID_CORRELATION_ID, VALID_HOST_NAME, VALID_CONTAINER_NAME, VALID_SAS_TOKEN,
+                VALID_REQUEST_JSON, VALID_RESPONSE_JSON, VALID_NOTIFICATION_JSON);
+        FileUploadTask fileUploadTask = Deencapsulation.newInstance(FileUploadTask.class,
+                new Class[] {String.class, InputStream.class, long.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                VALID_BLOB_NAME, mockInputStream, VALID_STREAM_LENGTH, mockBlockUploadOptions, mockHttpsTransportManager, mockIotHubEventCallback, VALID_CALLBACK_CONTEXT);
+        assertEquals(mockBlockUploadOptions, Deencapsulation.getField(fileUploadTask, "blockUploadOptions"));
+
+        // act
+        Deencapsulation.invoke(fileUploadTask, "run");
+
+        // assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.newInstance(BlockUploader.class, mockBlockUploadOptions);
+                times = 1;
+                Deencapsulation.invoke(mockBlockUploader, "upload", mockCloudBlockBlob, VALID_BLOB_NAME, mockInputStream, VALID_STREAM_LENGTH);
+                times = 1;
+                mockCloudBlockBlob.upload((InputStream) any, anyLong);
+                times = 0;
+                mockIotHubEventCallback.execute(IotHubStatusCode.OK, VALID_CALLBACK_CONTEXT);
+                times = 1;
+            }
+        };
+    }
+
+    /* Tests_SRS_FILEUPLOADTASK_34_036: [If the `blobName` is null or empty, or the `path`, the `httpsTransportManager`, or the `userCallback` is null, the constructor shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorNullPathThrows()
+    {
+        // act
+        Deencapsulation.newInstance(FileUploadTask.class,
+                new Class[] {String.class, Path.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                VALID_BLOB_NAME, null, null, mockHttpsTransportManager, mockIotHubEventCallback, VALID_CALLBACK_CONTEXT);
+    }
+
+    /* Tests_SRS_FILEUPLOADTASK_34_037: [The constructor shall store all the provided parameters, using the default `BlockUploadOptions` if the provided ones are null.] */
+    /* Tests_SRS_FILEUPLOADTASK_34_038: [If the task was created with a `path`, the run shall upload the file to the created `CloudBlockBlob` block by block, using a `BlockUploader` with the `blockUploadOptions`.] */
+    @Test
+    public void runUploadPathBlockByBlockToCloudBlockBlob(@Mocked final BlockUploader mockBlockUploader)
+            throws IOException, IllegalArgumentException, URISyntaxException, StorageException
+    {
+        // arrange
+        final Path path = new File("recording.bin").toPath();
+        expectSuccess(VALID_BLOB_NAME, VALID_CORRELATION_ID, VALID_HOST_NAME, VALID_CONTAINER_NAME, VALID_SAS_TOKEN,
+                VALID_REQUEST_JSON, VALID_RESPONSE_JSON, VALID_NOTIFICATION_JSON);
+        FileUploadTask fileUploadTask = Deencapsulation.newInstance(FileUploadTask.class,
+                new Class[] {String.class, Path.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                VALID_BLOB_NAME, path, null, mockHttpsTransportManager, mockIotHubEventCallback, VALID_CALLBACK_CONTEXT);
+        assertEquals(path, Deencapsulation.getField(fileUploadTask, "path"));
+        final BlockUploadOptions defaultOptions = Deencapsulation.getField(fileUploadTask, "blockUploadOptions");
+        assertEquals(BlockUploadOptions.DEFAULT_BLOCK_SIZE_IN_BYTES, defaultOptions.getBlockSizeInBytes());
+
+        // act
+        Deencapsulation.invoke(fileUploadTask, "run");
+
+        // assert
+        new Verifications()
+        {
+            {
+                Deencapsulation.newInstance(BlockUploader.class, defaultOptions);
+                times = 1;
+                Deencapsulation.invoke(mockBlockUploader, "upload", mockCloudBlockBlob, VALID_BLOB_NAME, path);
+                times = 1;
+                mockCloudBlockBlob.upload((InputStream) any, anyLong);
+                times = 0;
+                mockIotHubEventCallback.execute(IotHubStatusCode.OK, VALID_CALLBACK_CONTEXT);
+                times = 1;
+            }
+        };
+    }
+
     /* Tests_SRS_FILEUPLOADTASK_21_021: [If the upload to blob succeed, the run shall create a notification the IoT Hub with `isSuccess` equals true, `statusCode` equals 0.] */
     @Test
     public void runCreateNotificationSucceed() throws IOException, IllegalArgumentException, URISyntaxException, StorageException
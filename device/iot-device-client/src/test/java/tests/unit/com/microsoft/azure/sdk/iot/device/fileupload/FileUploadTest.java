@@ -7,6 +7,7 @@ import com.microsoft.azure.sdk.iot.device.CustomLogger;
 import com.microsoft.azure.sdk.iot.device.DeviceClientConfig;
 import com.microsoft.azure.sdk.iot.device.IotHubEventCallback;
 import com.microsoft.azure.sdk.iot.device.IotHubStatusCode;
+import com.microsoft.azure.sdk.iot.device.fileupload.BlockUploadOptions;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUpload;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUploadInProgress;
 import com.microsoft.azure.sdk.iot.device.fileupload.FileUploadTask;
@@ -14,8 +15,10 @@ import com.microsoft.azure.sdk.iot.device.transport.https.HttpsTransportManager;
 import mockit.*;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -38,7 +41,7 @@ public class FileUploadTest
     @Mocked
     private HttpsTransportManager mockHttpsTransportManager;
 
-    @Mocked
+    @Injectable
     private InputStream mockInputStream;
 
     @Mocked
@@ -173,8 +176,8 @@ public class FileUploadTest
                 result = mockFileUploadInProgress;
                 times = 1;
                 Deencapsulation.newInstance(FileUploadTask.class,
-                        new Class[] { String.class, InputStream.class, long.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
-                        blobName, mockInputStream, streamLength, mockHttpsTransportManager, (IotHubEventCallback)any, mockFileUploadInProgress);
+                        new Class[] { String.class, InputStream.class, long.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                        blobName, mockInputStream, streamLength, null, mockHttpsTransportManager, (IotHubEventCallback)any, mockFileUploadInProgress);
                 result = mockFileUploadTask;
                 times = 1;
                 mockScheduler.submit(mockFileUploadTask);
@@ -186,6 +189,107 @@ public class FileUploadTest
         fileUpload.uploadToBlobAsync(blobName, mockInputStream, streamLength, mockIotHubEventCallback, context);
     }
 
+    /* Tests_SRS_FILEUPLOAD_34_024: [The uploadToBlobAsync shall provide the `blockUploadOptions`, that can be null, to the `FileUploadTask`.] */
+    @Test
+    public void uploadToBlobAsyncWithBlockUploadOptionsSuccess() throws IOException
+    {
+        // arrange
+        final String blobName = "validBlobName";
+        final long streamLength = 100;
+        final Map<String, Object> context = new HashMap<>();
+        final BlockUploadOptions blockUploadOptions = new BlockUploadOptions();
+
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // assert
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUploadInProgress.class,
+                        new Class[] {IotHubEventCallback.class, Object.class},
+                        mockIotHubEventCallback, context);
+                result = mockFileUploadInProgress;
+                Deencapsulation.newInstance(FileUploadTask.class,
+                        new Class[] { String.class, InputStream.class, long.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                        blobName, mockInputStream, streamLength, blockUploadOptions, mockHttpsTransportManager, (IotHubEventCallback)any, mockFileUploadInProgress);
+                result = mockFileUploadTask;
+                times = 1;
+                mockScheduler.submit(mockFileUploadTask);
+                times = 1;
+            }
+        };
+
+        // act
+        fileUpload.uploadToBlobAsync(blobName, mockInputStream, streamLength, blockUploadOptions, mockIotHubEventCallback, context);
+    }
+
+    /* Tests_SRS_FILEUPLOAD_34_026: [The uploadToBlobAsync shall create a `FileUploadInProgress` and a `FileUploadTask` with the `path` and the `blockUploadOptions`, and schedule the task to immediately start.] */
+    @Test
+    public void uploadToBlobAsyncPathSuccess() throws IOException
+    {
+        // arrange
+        final String blobName = "validBlobName";
+        final Map<String, Object> context = new HashMap<>();
+        final BlockUploadOptions blockUploadOptions = new BlockUploadOptions();
+        final File file = File.createTempFile("FileUploadTest", ".bin");
+        file.deleteOnExit();
+
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // assert
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.newInstance(FileUploadInProgress.class,
+                        new Class[] {IotHubEventCallback.class, Object.class},
+                        mockIotHubEventCallback, context);
+                result = mockFileUploadInProgress;
+                times = 1;
+                Deencapsulation.newInstance(FileUploadTask.class,
+                        new Class[] { String.class, Path.class, BlockUploadOptions.class, HttpsTransportManager.class, IotHubEventCallback.class, Object.class},
+                        blobName, file.toPath(), blockUploadOptions, mockHttpsTransportManager, (IotHubEventCallback)any, mockFileUploadInProgress);
+                result = mockFileUploadTask;
+                times = 1;
+                mockScheduler.submit(mockFileUploadTask);
+                times = 1;
+            }
+        };
+
+        // act
+        fileUpload.uploadToBlobAsync(blobName, file.toPath(), blockUploadOptions, mockIotHubEventCallback, context);
+    }
+
+    /* Tests_SRS_FILEUPLOAD_34_025: [If the `blobName` is null or empty, the `path` is null or not a regular file, or the `statusCallback` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadToBlobAsyncPathNotARegularFileThrows() throws IOException
+    {
+        // arrange
+        final Path directory = new File(System.getProperty("java.io.tmpdir")).toPath();
+
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // act
+        fileUpload.uploadToBlobAsync("validBlobName", directory, null, mockIotHubEventCallback, null);
+    }
+
+    /* Tests_SRS_FILEUPLOAD_34_025: [If the `blobName` is null or empty, the `path` is null or not a regular file, or the `statusCallback` is null, the uploadToBlobAsync shall throw IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void uploadToBlobAsyncPathNullCallbackThrows() throws IOException
+    {
+        // arrange
+        final File file = File.createTempFile("FileUploadTest", ".bin");
+        file.deleteOnExit();
+
+        constructorExpectations();
+        FileUpload fileUpload = new FileUpload(mockConfig);
+
+        // act
+        fileUpload.uploadToBlobAsync("validBlobName", file.toPath(), null, null, null);
+    }
+
     /* Tests_SRS_FILEUPLOAD_21_005: [If the `blobName` is null or empty, the uploadToBlobAsync shall throw IllegalArgumentException.] */
     @Test (expected = IllegalArgumentException.class)
     public void uploadToBlobAsyncNullBlobNameThrows() throws IOException
@@ -0,0 +1,126 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubEventDrivenSendTask;
+import com.microsoft.azure.sdk.iot.device.transport.IotHubTransport;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for IotHubEventDrivenSendTask. */
+public class IotHubEventDrivenSendTaskTest
+{
+    @Mocked
+    IotHubTransport mockTransport;
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_001: [If the provided transport is null, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullTransport()
+    {
+        new IotHubEventDrivenSendTask(null);
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_004: [The function shall wait for the transport to signal that there is work to do.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_005: [The function shall drain the messages on the transport queue.]
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_006: [The function shall invoke all callbacks on the transport's callback queue.]
+    @Test
+    public void runDrainsMessagesAndInvokesCallbacksWhenSignalled() throws InterruptedException
+    {
+        final IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.invokeCallbacks();
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void invokeCallbacks()
+                    {
+                        Deencapsulation.setField(sendTask, "stopped", true);
+                    }
+                };
+            }
+        };
+
+        sendTask.run();
+
+        new Verifications()
+        {
+            {
+                mockTransport.waitForSendWork(anyLong);
+                times = 1;
+                mockTransport.drainMessages();
+                times = 1;
+                mockTransport.invokeCallbacks();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_007: [The function shall not crash because of any error or exception thrown by the transport.]
+    @Test
+    public void runDoesNotCrashFromThrowable() throws InterruptedException
+    {
+        final IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.drainMessages();
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void drainMessages()
+                    {
+                        Deencapsulation.setField(sendTask, "stopped", true);
+                        throw new IllegalStateException("Test that send does not crash.");
+                    }
+                };
+            }
+        };
+
+        sendTask.run();
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_003: [The function shall keep running until stop is called or the thread is interrupted.]
+    @Test
+    public void runReturnsWhenInterrupted() throws InterruptedException
+    {
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport);
+        new NonStrictExpectations()
+        {
+            {
+                mockTransport.waitForSendWork(anyLong);
+                result = new InterruptedException();
+            }
+        };
+
+        sendTask.run();
+
+        assertTrue(Thread.interrupted());
+    }
+
+    // Tests_SRS_IOTHUBEVENTDRIVENSENDTASK_34_008: [The function shall mark this task as stopped and wake it up.]
+    @Test
+    public void stopMarksTaskStoppedAndSignalsTransport()
+    {
+        IotHubEventDrivenSendTask sendTask = new IotHubEventDrivenSendTask(mockTransport);
+
+        sendTask.stop();
+
+        assertTrue((boolean) Deencapsulation.getField(sendTask, "stopped"));
+        new Verifications()
+        {
+            {
+                mockTransport.signalSendWork();
+                times = 1;
+            }
+        };
+    }
+}
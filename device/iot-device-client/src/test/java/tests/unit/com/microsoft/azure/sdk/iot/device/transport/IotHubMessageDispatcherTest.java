@@ -0,0 +1,191 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.IotHubMessageDispatcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for IotHubMessageDispatcher. */
+public class IotHubMessageDispatcherTest
+{
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_001: [If the provided parallelism is less than 1, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroParallelism()
+    {
+        new IotHubMessageDispatcher(0, 10);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_002: [If the provided queue capacity is less than 1, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroQueueCapacity()
+    {
+        new IotHubMessageDispatcher(1, 0);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_004: [If the provided task is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void dispatchThrowsForNullTask()
+    {
+        new IotHubMessageDispatcher(1, 1).dispatch("device", null);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_005: [This function shall queue the task on the executor chosen by the hash of the ordering key.]
+    @Test
+    public void dispatchRunsTasksForSameKeyInOrder() throws InterruptedException
+    {
+        //arrange
+        final int taskCount = 200;
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(taskCount);
+        IotHubMessageDispatcher dispatcher = new IotHubMessageDispatcher(4, taskCount);
+
+        //act
+        for (int i = 0; i < taskCount; i++)
+        {
+            final int index = i;
+            assertTrue(dispatcher.dispatch("device", new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    order.add(index);
+                    done.countDown();
+                }
+            }));
+        }
+
+        //assert
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < taskCount; i++)
+        {
+            assertEquals(i, (int) order.get(i));
+        }
+
+        dispatcher.close();
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_006: [If the dispatcher is closed, or if the calling thread is interrupted while waiting for room, this function shall return false.]
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_007: [This function shall shut down every executor.]
+    @Test
+    public void dispatchReturnsFalseAfterClose()
+    {
+        //arrange
+        IotHubMessageDispatcher dispatcher = new IotHubMessageDispatcher(2, 1);
+        dispatcher.close();
+
+        //act
+        boolean dispatched = dispatcher.dispatch("device", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+            }
+        });
+
+        //assert
+        assertFalse(dispatched);
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_008: [If the chosen executor holds as many tasks as its queue capacity plus the running one, this function shall block until one of them completes.]
+    @Test
+    public void dispatchBlocksWhenQueueIsFullUntilATaskCompletes() throws InterruptedException
+    {
+        //arrange
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch dispatchedThird = new CountDownLatch(1);
+        final IotHubMessageDispatcher dispatcher = new IotHubMessageDispatcher(1, 1);
+        final Runnable blockingTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        assertTrue(dispatcher.dispatch("device", blockingTask));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch("device", blockingTask));
+
+        //act
+        Thread dispatcherThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (dispatcher.dispatch("device", blockingTask))
+                {
+                    dispatchedThird.countDown();
+                }
+            }
+        });
+        dispatcherThread.start();
+        boolean dispatchedWhileFull = dispatchedThird.await(200, TimeUnit.MILLISECONDS);
+        release.countDown();
+
+        //assert
+        assertFalse(dispatchedWhileFull);
+        assertTrue(dispatchedThird.await(10, TimeUnit.SECONDS));
+        dispatcherThread.join();
+        dispatcher.close();
+    }
+
+    // Tests_SRS_IOTHUBMESSAGEDISPATCHER_34_006: [If the dispatcher is closed, or if the calling thread is interrupted while waiting for room, this function shall return false.]
+    @Test
+    public void dispatchReturnsFalseWhenInterruptedWhileQueueIsFull() throws InterruptedException
+    {
+        //arrange
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        IotHubMessageDispatcher dispatcher = new IotHubMessageDispatcher(1, 1);
+        Runnable blockingTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        assertTrue(dispatcher.dispatch("device", blockingTask));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(dispatcher.dispatch("device", blockingTask));
+        Thread.currentThread().interrupt();
+
+        //act
+        boolean dispatched = dispatcher.dispatch("device", blockingTask);
+
+        //assert
+        assertTrue(Thread.interrupted());
+        assertFalse(dispatched);
+        assertEquals(1, dispatcher.getQueuedTaskCount());
+        release.countDown();
+        dispatcher.close();
+    }
+}
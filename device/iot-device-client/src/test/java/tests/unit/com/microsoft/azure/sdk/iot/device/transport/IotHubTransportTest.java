@@ -4,7 +4,9 @@
 package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
 
 import com.microsoft.azure.sdk.iot.device.*;
+import com.microsoft.azure.sdk.iot.device.auth.IotHubSasTokenAuthenticationProvider;
 import com.microsoft.azure.sdk.iot.device.exceptions.DeviceClientException;
+import com.microsoft.azure.sdk.iot.device.exceptions.IotHubSizeExceededException;
 import com.microsoft.azure.sdk.iot.device.exceptions.IotHubServiceException;
 import com.microsoft.azure.sdk.iot.device.exceptions.TransportException;
 import com.microsoft.azure.sdk.iot.device.exceptions.UnauthorizedException;
@@ -12,12 +14,15 @@ import com.microsoft.azure.sdk.iot.device.transport.*;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpConnectionThrottledException;
 import com.microsoft.azure.sdk.iot.device.transport.amqps.exceptions.AmqpUnauthorizedAccessException;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsBatchMessage;
 import com.microsoft.azure.sdk.iot.device.transport.https.HttpsIotHubConnection;
+import com.microsoft.azure.sdk.iot.device.transport.https.HttpsSingleMessage;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttIotHubConnection;
 import com.microsoft.azure.sdk.iot.device.transport.mqtt.exceptions.MqttUnauthorizedException;
 import mockit.*;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
@@ -265,6 +270,102 @@ public class IotHubTransportTest
         assertEquals(mockedTransportMessage, receivedMessagesQueue.poll());
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_34_085: [If event driven receive is enabled, this function shall dispatch the
+    // message to the message dispatcher, keyed by the message's connection device id, instead of queueing it.]
+    @Test
+    public void onMessageReceivedWithDispatcherDispatchesMessage(final @Mocked IotHubMessageDispatcher mockedDispatcher)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "messageDispatcher", mockedDispatcher);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportMessage.getConnectionDeviceId();
+                result = "someDevice";
+                mockedDispatcher.dispatch("someDevice", (Runnable) any);
+                result = true;
+            }
+        };
+
+        //act
+        transport.onMessageReceived(mockedTransportMessage, null);
+
+        //assert
+        Queue<IotHubTransportPacket> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        assertTrue(receivedMessagesQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedDispatcher.dispatch("someDevice", (Runnable) any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_116: [If the dispatcher is closed, this function shall leave the message
+    // unacknowledged, so that the service delivers it again, rather than queue it out of order.]
+    @Test
+    public void onMessageReceivedWithClosedDispatcherDoesNotQueueMessage(final @Mocked IotHubMessageDispatcher mockedDispatcher)
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "messageDispatcher", mockedDispatcher);
+        new NonStrictExpectations()
+        {
+            {
+                mockedDispatcher.dispatch(anyString, (Runnable) any);
+                result = false;
+            }
+        };
+
+        //act
+        transport.onMessageReceived(mockedTransportMessage, null);
+
+        //assert
+        Queue<IotHubTransportPacket> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        assertTrue(receivedMessagesQueue.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_089: [The dispatched task shall acknowledge the received message. If
+    // that fails, the message is left unacknowledged so that the service delivers it again, in order.]
+    @Test
+    public void dispatchedMessageIsNotQueuedWhenItsAcknowledgementFails() throws TransportException
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final Object context = new Object();
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedIotHubTransportConnection);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportMessage.getMessageCallback();
+                result = mockedMessageCallback;
+                mockedTransportMessage.getMessageCallbackContext();
+                result = context;
+                mockedMessageCallback.execute(mockedTransportMessage, context);
+                result = IotHubMessageResult.COMPLETE;
+                mockedIotHubTransportConnection.sendMessageResult(mockedTransportMessage, IotHubMessageResult.COMPLETE);
+                result = mockedTransportException;
+            }
+        };
+        Runnable receivedMessageRunnable = Deencapsulation.newInnerInstance("ReceivedMessageRunnable", transport, mockedTransportMessage);
+
+        //act
+        receivedMessageRunnable.run();
+
+        //assert
+        Queue<IotHubTransportPacket> receivedMessagesQueue = Deencapsulation.getField(transport, "receivedMessagesQueue");
+        assertTrue(receivedMessagesQueue.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedIotHubTransportConnection.sendMessageResult(mockedTransportMessage, IotHubMessageResult.COMPLETE);
+                times = 1;
+            }
+        };
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_010: [If this function is called with a null message and a non-null throwable, this function shall log that exception.]
     @Test
     public void onMessageReceivedWithOnlyExceptionOnlyLogsException()
@@ -551,6 +652,13 @@ public class IotHubTransportTest
                 verifier.append("Success");
             }
         };
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getPersistentQueueOptions();
+                result = null;
+            }
+        };
 
         //act
         transport.open(configs);
@@ -663,6 +771,40 @@ public class IotHubTransportTest
         assertTrue(methodsCalled.toString().contains("invokeCallbacks"));
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_34_122: [This function shall close the sas token authentication provider
+    // of each device, which drops the signer holding its decoded device key.]
+    @Test
+    public void closeClosesSasTokenAuthenticationOfEachDevice(@Mocked final IotHubSasTokenAuthenticationProvider mockedSasTokenAuthentication) throws DeviceClientException
+    {
+        //arrange
+        final Queue<DeviceClientConfig> deviceClientConfigs = new ConcurrentLinkedQueue<>();
+        deviceClientConfigs.add(mockedConfig);
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", deviceClientConfigs);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedIotHubTransportConnection);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+                mockedConfig.getSasTokenAuthentication();
+                result = mockedSasTokenAuthentication;
+            }
+        };
+
+        //act
+        transport.close(CLIENT_CLOSE, null);
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedSasTokenAuthentication.close();
+                times = 1;
+            }
+        };
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_032: [If the provided exception is not a TransportException, this function shall return COMMUNICATION_ERROR.]
     @Test
     public void exceptionToStatusChangeReasonWithNonTransportException()
@@ -886,6 +1028,8 @@ public class IotHubTransportTest
             {
                 mockedConfig.getProtocol();
                 result = IotHubClientProtocol.AMQPS;
+                mockedConfig.getClientThreadPool();
+                result = null;
                 Executors.newScheduledThreadPool(1);
                 result = mockedScheduledExecutorService;
                 new AmqpsIotHubConnection(mockedConfig);
@@ -910,6 +1054,48 @@ public class IotHubTransportTest
         };
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_34_099: [If the default config has a client thread pool, this function shall
+    // schedule retries and reconnections on schedulers from that pool.]
+    @Test
+    public void openConnectionWithClientThreadPoolUsesPoolScheduler(@Mocked final ClientThreadPool mockedClientThreadPool) throws TransportException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final Queue<DeviceClientConfig> configs = new ConcurrentLinkedQueue<>();
+        configs.add(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", configs);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getProtocol();
+                result = IotHubClientProtocol.AMQPS;
+                mockedConfig.getClientThreadPool();
+                result = mockedClientThreadPool;
+                mockedClientThreadPool.newScheduler();
+                result = mockedScheduledExecutorService;
+                new AmqpsIotHubConnection(mockedConfig);
+                result = mockedAmqpsIotHubConnection;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "openConnection");
+        Deencapsulation.invoke(transport, "openConnection");
+
+        //assert
+        new Verifications()
+        {
+            {
+                Executors.newScheduledThreadPool(anyInt);
+                times = 0;
+                mockedClientThreadPool.newScheduler();
+                times = 1;
+                mockedAmqpsIotHubConnection.open(configs, mockedScheduledExecutorService);
+                times = 2;
+            }
+        };
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_037: [If the default config's protocol is AMQPS or AMQPS_WS, this function shall set this object's iotHubTransportConnection to a new AmqpsIotHubConnection object.]
     @Test
     public void openConnectionWithAmqpsWS() throws TransportException
@@ -924,6 +1110,8 @@ public class IotHubTransportTest
             {
                 mockedConfig.getProtocol();
                 result = IotHubClientProtocol.AMQPS_WS;
+                mockedConfig.getClientThreadPool();
+                result = null;
                 Executors.newScheduledThreadPool(1);
                 result = mockedScheduledExecutorService;
                 new AmqpsIotHubConnection(mockedConfig);
@@ -1184,6 +1372,144 @@ public class IotHubTransportTest
         assertEquals(1, waitingPacketsQueue.size());
     }
 
+    //Tests_SRS_IOTHUBTRANSPORT_34_081: [This function shall dequeue packets saved in the waiting queue and send
+    // them until the queue is empty, the connection status isn't CONNECTED, or the in flight limit is reached.]
+    @Test
+    public void drainMessagesSendsAllWaitingMessages()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void sendPacket(IotHubTransportPacket packet)
+            {
+                //do nothing
+            }
+        };
+
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final int MAX_MESSAGES_TO_SEND_PER_THREAD = Deencapsulation.getField(transport, "MAX_MESSAGES_TO_SEND_PER_THREAD");
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < MAX_MESSAGES_TO_SEND_PER_THREAD * 5; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        transport.drainMessages();
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_081: [This function shall dequeue packets saved in the waiting queue and send
+    // them until the queue is empty, the connection status isn't CONNECTED, or the in flight limit is reached.]
+    @Test
+    public void drainMessagesStopsAtInFlightLimit()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final int MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN = Deencapsulation.getField(transport, "MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN");
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Map<String, IotHubTransportPacket> inProgressPackets = new ConcurrentHashMap<>();
+        for (int i = 0; i < MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN; i++)
+        {
+            inProgressPackets.put("" + i, mockedPacket);
+        }
+
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressPackets);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        transport.drainMessages();
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_080: [This function shall signal the event driven send task that there is work to do.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_082: [If there is already queued work, this function shall return true without waiting.]
+    @Test
+    public void waitForSendWorkReturnsImmediatelyAfterMessageAdded() throws InterruptedException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        transport.addMessage(mockedMessage, mockedEventCallback, null);
+
+        //act
+        boolean signalled = transport.waitForSendWork(60 * 1000);
+
+        //assert
+        assertTrue(signalled);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_083: [This function shall wait until signalled or until the timeout elapses.]
+    @Test
+    public void waitForSendWorkReturnsFalseOnTimeout() throws InterruptedException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+
+        //act
+        boolean signalled = transport.waitForSendWork(1);
+
+        //assert
+        assertFalse(signalled);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_115: [Waiting messages shall only count as queued work while the connection
+    // status is CONNECTED and the in flight limit is not reached.]
+    @Test
+    public void waitForSendWorkWaitsWhileDisconnectedWithWaitingMessages() throws InterruptedException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        boolean signalled = transport.waitForSendWork(50);
+
+        //assert
+        assertFalse(signalled);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_115: [Waiting messages shall only count as queued work while the connection
+    // status is CONNECTED and the in flight limit is not reached.]
+    @Test
+    public void waitForSendWorkWaitsWhileInFlightLimitIsReached() throws InterruptedException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final int MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN = Deencapsulation.getField(transport, "MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN");
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Map<String, IotHubTransportPacket> inProgressPackets = new ConcurrentHashMap<>();
+        for (int i = 0; i < MAX_IN_FLIGHT_PACKETS_EVENT_DRIVEN; i++)
+        {
+            inProgressPackets.put("" + i, mockedPacket);
+        }
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressPackets);
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+
+        //act
+        boolean signalledWhileFull = transport.waitForSendWork(50);
+        inProgressPackets.remove("0");
+        boolean signalledAfterAck = transport.waitForSendWork(50);
+
+        //assert
+        assertFalse(signalledWhileFull);
+        assertTrue(signalledAfterAck);
+    }
+
     //Tests_SRS_IOTHUBTRANSPORT_34_045: [This function shall dequeue each packet in the callback queue and execute
     // their saved callback with their saved status and context]
     @Test
@@ -1611,397 +1937,519 @@ public class IotHubTransportTest
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_063: [If the provided transportException is retryable, the packet has not
-    // timed out, and the retry policy allows, this function shall schedule a task to add the provided
-    // packet to the waiting list after the amount of time determined by the retry policy.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_108: [If there is a reconnection coordinator, this function shall wait for it
+    // to admit the attempt, with priority if messages are waiting to be sent, and release the attempt once it is
+    // done.]
     @Test
-    public void handleMessageExceptionSchedulesRetryIfRetryable()
+    public void coordinatedReconnectAttemptWaitsForAdmissionAndReleasesHandshake()
     {
         //arrange
+        final ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 1);
+        final List<Integer> activeHandshakesDuringAttempt = new ArrayList<>();
         new MockUp<IotHubTransport>()
         {
-            @Mock boolean hasOperationTimedOut(long time)
+            @Mock TransportException singleReconnectAttempt()
             {
-                return false;
+                activeHandshakesDuringAttempt.add(coordinator.getActiveHandshakeCount());
+                return null;
             }
         };
+        final Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        waitingPacketsQueue.add(mockedPacket);
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-
-        final long expectedDelay = 0;
-        final long duration = 0;
+        Deencapsulation.setField(transport, "reconnectionCoordinator", coordinator);
         Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
-        new Expectations()
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        Deencapsulation.setField(transport, "reconnectionAttemptStartTimeMillis", System.currentTimeMillis());
+        new NonStrictExpectations()
         {
             {
-                mockedTransportException.isRetryable();
-                result = true;
-
-                mockedConfig.getRetryPolicy();
-                result = mockedRetryPolicy;
-
-                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
-                result = mockedRetryDecision;
-
-                mockedRetryDecision.shouldRetry();
-                result = true;
-
-                mockedRetryDecision.getDuration();
-                result = duration;
+                mockedConfig.getOperationTimeout();
+                result = 60000L;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedTransportException);
+        Exception result = Deencapsulation.invoke(transport, "coordinatedReconnectAttempt");
 
         //assert
-        new Verifications()
-        {
-            {
-                mockedPacket.incrementRetryAttempt();
-                times = 1;
-
-                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
-                times = 1;
-            }
-        };
+        assertNull(result);
+        assertEquals(1, activeHandshakesDuringAttempt.size());
+        assertEquals(1, (int) activeHandshakesDuringAttempt.get(0));
+        assertEquals(0, coordinator.getActiveHandshakeCount());
+        assertEquals(1, coordinator.getAdmittedCount());
+        assertEquals(1, coordinator.getPriorityAdmittedCount());
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
-    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_109: [If the attempt is not admitted before the reconnection times out,
+    // this function shall return a retryable TransportException without reconnecting.]
     @Test
-    public void handleMessageExceptionDoesNotRetryIfDeviceOperationTimedOut(final @Mocked IotHubStatusCode mockedStatus)
+    public void coordinatedReconnectAttemptReturnsExceptionIfNotAdmittedBeforeTimeout()
     {
         //arrange
+        final ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1000, 1);
+        ReconnectionCoordinator.Handshake otherClientHandshake = coordinator.enqueue(false);
+        assertTrue(otherClientHandshake.tryStart());
         new MockUp<IotHubTransport>()
         {
-            @Mock boolean hasOperationTimedOut(long time)
+            @Mock TransportException singleReconnectAttempt()
             {
-                return true;
+                fail("The reconnection should not be attempted before it is admitted");
+                return null;
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        final long expectedDelay = 0;
+        Deencapsulation.setField(transport, "reconnectionCoordinator", coordinator);
         Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        Deencapsulation.setField(transport, "reconnectionAttemptStartTimeMillis", System.currentTimeMillis());
         new NonStrictExpectations()
         {
             {
-                mockedIothubServiceException.isRetryable();
-                result = true;
+                mockedConfig.getOperationTimeout();
+                result = 50L;
+            }
+        };
 
-                mockedConfig.getRetryPolicy();
-                result = mockedRetryPolicy;
+        //act
+        Exception result = Deencapsulation.invoke(transport, "coordinatedReconnectAttempt");
 
-                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
-                result = mockedRetryDecision;
+        //assert
+        assertNotNull(result);
+        assertTrue(result instanceof TransportException);
+        assertEquals(0, coordinator.getWaitingCount());
+        assertEquals(1, coordinator.getActiveHandshakeCount());
+        otherClientHandshake.close();
+    }
 
-                mockedRetryDecision.shouldRetry();
-                result = true;
+    //Tests_SRS_IOTHUBTRANSPORT_34_106: [If the default config has a reconnection coordinator, this function
+    // shall register with it.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_107: [This function shall unregister from the reconnection coordinator, if any.]
+    @Test
+    public void openRegistersAndCloseUnregistersWithReconnectionCoordinator() throws DeviceClientException
+    {
+        //arrange
+        final ReconnectionCoordinator coordinator = new ReconnectionCoordinator(1, 1, 1);
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return false;
+            }
 
-                mockedIothubServiceException.getStatusCode();
-                result = mockedStatus;
+            @Mock void openConnection()
+            {
+                //do nothing
+            }
+
+            @Mock void invokeCallbacks()
+            {
+                //do nothing
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED);
+        Collection<DeviceClientConfig> configs = new ArrayList<>();
+        configs.add(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getReconnectionCoordinator();
+                result = coordinator;
+                mockedConfig.getPersistentQueueOptions();
+                result = null;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
+        transport.open(configs);
+        int registeredWhileOpen = coordinator.getRegisteredClientCount();
+        transport.close(CLIENT_CLOSE, null);
+        transport.close(CLIENT_CLOSE, null);
 
         //assert
-        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
-        assertEquals(1, callbackQueue.size());
-        assertEquals(mockedPacket, callbackQueue.poll());
-        new Verifications()
+        assertEquals(1, registeredWhileOpen);
+        assertEquals(0, coordinator.getRegisteredClientCount());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_111: [If there is a persistent queue, this function shall append the
+    // telemetry message to it, and only add the packet to the waiting queue if the in memory window has room
+    // and no older message waits on disk.]
+    @Test
+    public void addMessageKeepsPersistedPacketInTheInMemoryWindow(final @Mocked PersistentMessageQueue mockedPersistentQueue) throws IOException
+    {
+        //arrange
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
+        options.setInMemoryWindowSize(1);
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "persistentQueue", mockedPersistentQueue);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
         {
             {
-                mockedPacket.setStatus(mockedStatus);
-                times = 1;
-
-                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
-                times = 0;
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedPersistentQueue.getUnreadCount();
+                result = 0;
+                mockedPersistentQueue.append(mockedMessage, true);
+                result = 5L;
             }
         };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertEquals(1, waitingPacketsQueue.size());
+        Map<IotHubTransportPacket, Long> persistedPackets = Deencapsulation.getField(transport, "persistedPackets");
+        assertEquals(1, persistedPackets.size());
+        assertTrue(persistedPackets.containsValue(5L));
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
-    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_111: [If there is a persistent queue, this function shall append the
+    // telemetry message to it, and only add the packet to the waiting queue if the in memory window has room
+    // and no older message waits on disk.]
     @Test
-    public void handleMessageExceptionDoesNotRetryIfExceptionIsNotRetryable(final @Mocked IotHubStatusCode mockedStatus)
+    public void addMessageLeavesMessageOnDiskWhileOlderMessagesWait(final @Mocked PersistentMessageQueue mockedPersistentQueue) throws IOException
     {
         //arrange
-        new MockUp<IotHubTransport>()
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "persistentQueue", mockedPersistentQueue);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        new NonStrictExpectations()
         {
-            @Mock boolean hasOperationTimedOut(long time)
             {
-                return false;
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, any, null, anyLong);
+                result = mockedPacket;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedPacket.getCallback();
+                result = mockedEventCallback;
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedPersistentQueue.getUnreadCount();
+                result = 3;
+                mockedPersistentQueue.append(mockedMessage, false);
+                result = 7L;
             }
         };
+
+        //act
+        transport.addMessage(mockedMessage, mockedEventCallback, new Object());
+
+        //assert
+        assertTrue(waitingPacketsQueue.isEmpty());
+        Map<Long, Object> persistedMessageCallbacks = Deencapsulation.getField(transport, "persistedMessageCallbacks");
+        assertTrue(persistedMessageCallbacks.containsKey(7L));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_112: [If the packet holds a persisted message, this function shall
+    // acknowledge it in the persistent queue if its status is OK, OK_EMPTY, BAD_FORMAT,
+    // REQUEST_ENTITY_TOO_LARGE or MESSAGE_EXPIRED, and read the next persisted messages back into the
+    // waiting queue.]
+    @Test
+    public void addToCallbackQueueAcknowledgesDeliveredPersistedMessage(final @Mocked PersistentMessageQueue mockedPersistentQueue)
+    {
+        //arrange
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        final long expectedDelay = 0;
-        Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        Deencapsulation.setField(transport, "persistentQueue", mockedPersistentQueue);
+        Map<IotHubTransportPacket, Long> persistedPackets = Deencapsulation.getField(transport, "persistedPackets");
+        persistedPackets.put(mockedPacket, 3L);
         new NonStrictExpectations()
         {
             {
-                mockedTransportException.isRetryable();
-                result = false;
-
-                mockedConfig.getRetryPolicy();
-                result = mockedRetryPolicy;
-
-                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
-                result = mockedRetryDecision;
-
-                mockedRetryDecision.shouldRetry();
-                result = true;
-
-                mockedIothubServiceException.getStatusCode();
-                result = mockedStatus;
+                mockedPacket.getStatus();
+                result = IotHubStatusCode.OK_EMPTY;
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedPersistentQueue.poll();
+                result = null;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
 
         //assert
-        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
-        assertEquals(1, callbackQueue.size());
-        assertEquals(mockedPacket, callbackQueue.poll());
+        assertTrue(persistedPackets.isEmpty());
         new Verifications()
         {
             {
-                mockedPacket.setStatus(mockedStatus);
+                mockedPersistentQueue.acknowledge(3L);
+                times = 1;
+                mockedPersistentQueue.poll();
                 times = 1;
-
-                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
-                times = 0;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
-    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_112: [If the packet holds a persisted message, this function shall
+    // acknowledge it in the persistent queue if its status is OK, OK_EMPTY, BAD_FORMAT,
+    // REQUEST_ENTITY_TOO_LARGE or MESSAGE_EXPIRED, and read the next persisted messages back into the
+    // waiting queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_121: [If the packet holds a persisted message that is not acknowledged,
+    // this function shall release it in the persistent queue after a delay, so that it is read back into
+    // the waiting queue again with the replay callback.]
     @Test
-    public void handleMessageExceptionDoesNotRetryIfRetryPolicySaysToNotRetry(final @Mocked IotHubStatusCode mockedStatus)
+    public void addToCallbackQueueReleasesFailedPersistedMessageAfterADelay(final @Mocked PersistentMessageQueue mockedPersistentQueue)
     {
         //arrange
-        new MockUp<IotHubTransport>()
-        {
-            @Mock boolean hasOperationTimedOut(long time)
-            {
-                return false;
-            }
-        };
+        final Object replayContext = new Object();
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
+        options.setReplayCallback(mockedEventCallback, replayContext);
+        final PersistentMessageQueue.PersistedMessage persistedMessage = Deencapsulation.newInstance(PersistentMessageQueue.PersistedMessage.class,
+                new Class[] {long.class, Message.class}, 3L, mockedMessage);
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        final long expectedDelay = 0;
+        Deencapsulation.setField(transport, "persistentQueue", mockedPersistentQueue);
         Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        Map<IotHubTransportPacket, Long> persistedPackets = Deencapsulation.getField(transport, "persistedPackets");
+        persistedPackets.put(mockedPacket, 3L);
         new NonStrictExpectations()
         {
             {
-                mockedTransportException.isRetryable();
-                result = true;
-
-                mockedConfig.getRetryPolicy();
-                result = mockedRetryPolicy;
-
-                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
-                result = mockedRetryDecision;
-
-                mockedRetryDecision.shouldRetry();
+                mockedPacket.getStatus();
+                result = IotHubStatusCode.THROTTLED;
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedPersistentQueue.poll();
+                returns(null, persistedMessage, null);
+                mockedPersistentQueue.wasAppendedBeforeOpen(3L);
                 result = false;
-
-                mockedIothubServiceException.getStatusCode();
-                result = mockedStatus;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
 
         //assert
-        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
-        assertEquals(1, callbackQueue.size());
-        assertEquals(mockedPacket, callbackQueue.poll());
+        assertTrue(persistedPackets.isEmpty());
+        final List<Runnable> releaseTasks = new ArrayList<>();
         new Verifications()
         {
             {
-                mockedPacket.setStatus(mockedStatus);
+                mockedPersistentQueue.acknowledge(anyLong);
+                times = 0;
+                mockedPersistentQueue.release(anyLong);
+                times = 0;
+                mockedTaskScheduler.schedule(withCapture(releaseTasks), 60 * 1000L, TimeUnit.MILLISECONDS);
                 times = 1;
+            }
+        };
 
-                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
-                times = 0;
+        releaseTasks.get(0).run();
+        assertTrue(persistedPackets.containsValue(3L));
+        new Verifications()
+        {
+            {
+                mockedPersistentQueue.release(3L);
+                times = 1;
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, replayContext, null, anyLong);
+                times = 1;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_068: [If the reconnection effort ends because the retry policy said to
-    // stop, this function shall invoke close with RETRY_EXPIRED and the last transportException.]
-    //Tests_SRS_IOTHUBTRANSPORT_34_065: [If the saved reconnection attempt start time is 0, this function shall 
-    // save the current time as the time that reconnection started.]
-    //Tests_SRS_IOTHUBTRANSPORT_34_066: [This function shall attempt to reconnect while this object's state is
-    // DISCONNECTED_RETRYING, the operation hasn't timed out, and the last transport exception is retryable.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_110: [If the default config has persistent queue options, this function
+    // shall open the persistent queue and queue the messages it kept, up to the in memory window size.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_114: [The messages kept by a previous session shall be sent with the
+    // replay callback of the persistent queue options.]
     @Test
-    public void reconnectAttemptsToReconnectUntilRetryPolicyEnds()
+    public void openOpensPersistentQueueAndReplaysKeptMessages(final @Mocked PersistentMessageQueue mockedPersistentQueue) throws DeviceClientException, IOException
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
+        final Object replayContext = new Object();
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
+        options.setReplayCallback(mockedEventCallback, replayContext);
+        final PersistentMessageQueue.PersistedMessage persistedMessage = Deencapsulation.newInstance(PersistentMessageQueue.PersistedMessage.class,
+                new Class[] {long.class, Message.class}, 9L, mockedMessage);
         new MockUp<IotHubTransport>()
         {
-            @Mock boolean hasOperationTimedOut(long time)
+            @Mock boolean isSasTokenExpired()
             {
                 return false;
             }
 
-            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            @Mock void openConnection()
             {
-                if (reason == RETRY_EXPIRED)
-                {
-                    methodsCalled.append("close");
-                }
+                //do nothing
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
-        new Expectations()
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED);
+        Collection<DeviceClientConfig> configs = new ArrayList<>();
+        configs.add(mockedConfig);
+        new NonStrictExpectations()
         {
             {
-                mockedTransportException.isRetryable();
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedPersistentQueue.poll();
+                returns(persistedMessage, null);
+                mockedPersistentQueue.wasAppendedBeforeOpen(9L);
                 result = true;
-
-                mockedConfig.getRetryPolicy();
-                result = mockedRetryPolicy;
-
-                mockedRetryPolicy.getRetryDecision(anyInt, (TransportException) any);
-                result = mockedRetryDecision;
-
-                mockedRetryDecision.shouldRetry();
-                result = false;
+                new IotHubTransportPacket(mockedMessage, mockedEventCallback, replayContext, null, anyLong);
+                result = mockedPacket;
+                times = 1;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+        transport.open(configs);
 
         //assert
-        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
-        assertTrue(reconnectionAttemptStartTimeMillis > 0);
-        assertEquals("close", methodsCalled.toString());
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertEquals(1, waitingPacketsQueue.size());
+        Map<IotHubTransportPacket, Long> persistedPackets = Deencapsulation.getField(transport, "persistedPackets");
+        assertEquals(1, persistedPackets.size());
+        new Verifications()
+        {
+            {
+                new PersistentMessageQueue(options);
+                times = 1;
+            }
+        };
     }
 
-
-    //Tests_SRS_IOTHUBTRANSPORT_34_069: [If the reconnection effort ends because the reconnection timed out,
-    // this function shall invoke close with RETRY_EXPIRED and a DeviceOperationTimeoutException.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_120: [If the persistent queue uses the PERIODIC sync mode, this function
+    // shall flush it on the task scheduler once per sync interval.]
     @Test
-    public void reconnectAttemptsToReconnectUntilOperationTimesOut()
+    public void openSchedulesPeriodicFlushOfPersistentQueue(final @Mocked PersistentMessageQueue mockedPersistentQueue) throws DeviceClientException
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
+        final PersistentQueueOptions options = new PersistentQueueOptions(new File("queue"));
+        options.setSyncMode(PersistentQueueOptions.SyncMode.PERIODIC, 250);
         new MockUp<IotHubTransport>()
         {
-            @Mock boolean hasOperationTimedOut(long time)
+            @Mock boolean isSasTokenExpired()
             {
-                return true;
+                return false;
             }
 
-            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            @Mock void openConnection()
             {
-                if (reason == RETRY_EXPIRED)
-                {
-                    methodsCalled.append("close");
-                }
+                //do nothing
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED);
+        Collection<DeviceClientConfig> configs = new ArrayList<>();
+        configs.add(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getPersistentQueueOptions();
+                result = options;
+                mockedConfig.getClientThreadPool();
+                result = null;
+                Executors.newScheduledThreadPool(1);
+                result = mockedTaskScheduler;
+                mockedPersistentQueue.poll();
+                result = null;
+            }
+        };
 
         //act
-        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+        transport.open(configs);
 
         //assert
-        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
-        assertTrue(reconnectionAttemptStartTimeMillis > 0);
-        assertEquals("close", methodsCalled.toString());
+        final List<Runnable> syncTasks = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockedTaskScheduler.scheduleWithFixedDelay(withCapture(syncTasks), 250L, 250L, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+
+        syncTasks.get(0).run();
+        new Verifications()
+        {
+            {
+                mockedPersistentQueue.sync();
+                times = 1;
+            }
+        };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_070: [If the reconnection effort ends because a terminal exception is
-    // encountered, this function shall invoke close with that terminal exception.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_113: [This function shall close the persistent queue, if any, which keeps
+    // the messages that were not acknowledged, and invoke the callbacks of the messages left on disk with
+    // MESSAGE_CANCELLED_ONCLOSE.]
     @Test
-    public void reconnectAttemptsToReconnectUntilExceptionNotRetryable()
+    public void closeKeepsPersistedMessagesOnDiskAndInvokesTheirCallbacks(final @Mocked PersistentMessageQueue mockedPersistentQueue) throws Exception
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
+        final Object context = new Object();
         new MockUp<IotHubTransport>()
         {
-            @Mock boolean hasOperationTimedOut(long time)
-            {
-                return false;
-            }
-
-            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            @Mock void invokeCallbacks()
             {
-                methodsCalled.append("close");
+                //do nothing
             }
 
-            @Mock IotHubConnectionStatusChangeReason exceptionToStatusChangeReason(Throwable e)
+            @Mock void updateStatus(IotHubConnectionStatus newConnectionStatus, IotHubConnectionStatusChangeReason reason, Throwable throwable)
             {
-                if (e.equals(mockedTransportException))
-                {
-                    methodsCalled.append("exceptionToStatusChangeReason");
-                }
-
-                return IotHubConnectionStatusChangeReason.BAD_CREDENTIAL;
+                //do nothing
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "taskScheduler", mockedScheduledExecutorService);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedIotHubTransportConnection);
+        Deencapsulation.setField(transport, "persistentQueue", mockedPersistentQueue);
+        Class<?> persistedMessageCallbackClass = Class.forName(IotHubTransport.class.getName() + "$PersistedMessageCallback");
+        Object persistedMessageCallback = Deencapsulation.newInstance(persistedMessageCallbackClass,
+                new Class[] {IotHubEventCallback.class, Object.class}, mockedEventCallback, context);
+        Map<Long, Object> persistedMessageCallbacks = Deencapsulation.getField(transport, "persistedMessageCallbacks");
+        persistedMessageCallbacks.put(7L, persistedMessageCallback);
 
         //act
-        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+        transport.close(CLIENT_CLOSE, null);
 
         //assert
-        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
-        assertTrue(reconnectionAttemptStartTimeMillis > 0);
-        assertTrue(methodsCalled.toString().contains("close"));
-        assertTrue(methodsCalled.toString().contains("exceptionToStatusChangeReason"));
+        assertNull(Deencapsulation.getField(transport, "persistentQueue"));
+        assertTrue(persistedMessageCallbacks.isEmpty());
+        new Verifications()
+        {
+            {
+                mockedPersistentQueue.close();
+                times = 1;
+                mockedPersistentQueue.acknowledge(anyLong);
+                times = 0;
+                mockedEventCallback.execute(IotHubStatusCode.MESSAGE_CANCELLED_ONCLOSE, context);
+                times = 1;
+            }
+        };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_071: [If an exception is encountered while closing, this function shall invoke
-    // updateStatus with DISCONNECTED, COMMUNICATION_ERROR, and the last transport exception.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_063: [If the provided transportException is retryable, the packet has not
+    // timed out, and the retry policy allows, this function shall schedule a task to add the provided
+    // packet to the waiting list after the amount of time determined by the retry policy.]
     @Test
-    public void reconnectUpdatesStatusIfClosingFailed()
+    public void handleMessageExceptionSchedulesRetryIfRetryable()
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
         new MockUp<IotHubTransport>()
         {
-            @Mock void addToCallbackQueue(IotHubTransportPacket packet)
-            {
-                methodsCalled.append("addToCallbackQueue");
-            }
-
             @Mock boolean hasOperationTimedOut(long time)
             {
-                return true;
-            }
-
-            @Mock void updateStatus(IotHubConnectionStatus newConnectionStatus, IotHubConnectionStatusChangeReason reason, Throwable throwable)
-            {
-                if (newConnectionStatus == DISCONNECTED && reason == COMMUNICATION_ERROR)
-                {
-                    methodsCalled.append("updateStatus");
-                }
-            }
-
-            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause) throws TransportException
-            {
-                if (reason == RETRY_EXPIRED)
-                {
-                    methodsCalled.append("close");
-                }
-
-                throw new TransportException("close failed");
+                return false;
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
-        new NonStrictExpectations()
+
+        final long expectedDelay = 0;
+        final long duration = 0;
+        Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        new Expectations()
         {
             {
                 mockedTransportException.isRetryable();
@@ -2010,117 +2458,488 @@ public class IotHubTransportTest
                 mockedConfig.getRetryPolicy();
                 result = mockedRetryPolicy;
 
-                mockedRetryPolicy.getRetryDecision(anyInt, (TransportException) any);
+                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
                 result = mockedRetryDecision;
 
                 mockedRetryDecision.shouldRetry();
                 result = true;
+
+                mockedRetryDecision.getDuration();
+                result = duration;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedTransportException);
 
         //assert
-        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
-        assertTrue(reconnectionAttemptStartTimeMillis > 0);
-        assertTrue(methodsCalled.toString().contains("updateStatus"));
+        new Verifications()
+        {
+            {
+                mockedPacket.incrementRetryAttempt();
+                times = 1;
+
+                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_008:[This function shall set the packet status to MESSAGE_EXPIRED if packet has expired.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_009:[This function shall add the expired packet to the Callback Queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
+    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
     @Test
-    public void isMessageValidWithMessageExpired()
+    public void handleMessageExceptionDoesNotRetryIfDeviceOperationTimedOut(final @Mocked IotHubStatusCode mockedStatus)
     {
         //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return true;
+            }
+        };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations(IotHubTransport.class)
+        final long expectedDelay = 0;
+        Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedMessage;
-                mockedMessage.isExpired();
+                mockedIothubServiceException.isRetryable();
                 result = true;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
-                Deencapsulation.invoke(transport, "isSasTokenExpired");
-                result = false;
+
+                mockedConfig.getRetryPolicy();
+                result = mockedRetryPolicy;
+
+                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
+                result = mockedRetryDecision;
+
+                mockedRetryDecision.shouldRetry();
+                result = true;
+
+                mockedIothubServiceException.getStatusCode();
+                result = mockedStatus;
             }
         };
 
         //act
-        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
 
         //assert
-        assertFalse(ret);
+        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+        assertEquals(1, callbackQueue.size());
+        assertEquals(mockedPacket, callbackQueue.poll());
         new Verifications()
         {
             {
-                mockedPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
-                times = 1;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                mockedPacket.setStatus(mockedStatus);
                 times = 1;
+
+                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
+                times = 0;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_008:[This function shall set the packet status to MESSAGE_EXPIRED if packet has expired.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_009:[This function shall add the expired packet to the Callback Queue.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_010:[This function shall set the packet status to UNAUTHORIZED if sas token has expired.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_011:[This function shall add the packet which sas token has expired to the Callback Queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
+    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
     @Test
-    public void isMessageValidWithMessageNotExpiredAndValidSasToken()
+    public void handleMessageExceptionDoesNotRetryIfExceptionIsNotRetryable(final @Mocked IotHubStatusCode mockedStatus)
     {
         //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return false;
+            }
+        };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations(IotHubTransport.class)
+        final long expectedDelay = 0;
+        Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedMessage;
-                mockedMessage.isExpired();
-                result = false;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
-                Deencapsulation.invoke(transport, "isSasTokenExpired");
+                mockedTransportException.isRetryable();
                 result = false;
+
+                mockedConfig.getRetryPolicy();
+                result = mockedRetryPolicy;
+
+                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
+                result = mockedRetryDecision;
+
+                mockedRetryDecision.shouldRetry();
+                result = true;
+
+                mockedIothubServiceException.getStatusCode();
+                result = mockedStatus;
             }
         };
 
         //act
-        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
 
         //assert
-        assertTrue(ret);
+        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+        assertEquals(1, callbackQueue.size());
+        assertEquals(mockedPacket, callbackQueue.poll());
         new Verifications()
         {
             {
-                mockedPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
-                times = 0;
-                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                mockedPacket.setStatus(mockedStatus);
+                times = 1;
+
+                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
                 times = 0;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_010:[This function shall set the packet status to UNAUTHORIZED if sas token has expired.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_011:[This function shall add the packet which sas token has expired to the Callback Queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_064: [If the provided transportException is not retryable, the packet has expired,
+    // or if the retry policy says to not retry, this function shall add the provided packet to the callback queue.]
     @Test
-    public void isMessageValidWithMessageNotExpiredSasTokenExpired()
+    public void handleMessageExceptionDoesNotRetryIfRetryPolicySaysToNotRetry(final @Mocked IotHubStatusCode mockedStatus)
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
         new MockUp<IotHubTransport>()
         {
-            @Mock void addToCallbackQueue(IotHubTransportPacket packet)
-            {
-                methodsCalled.append("addToCallbackQueue");
-            }
-
-            @Mock boolean isSasTokenExpired()
+            @Mock boolean hasOperationTimedOut(long time)
             {
-                return true;
+                return false;
             }
-
-            @Mock void updateStatus(IotHubConnectionStatus newConnectionStatus, IotHubConnectionStatusChangeReason reason, Throwable throwable)
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        final long expectedDelay = 0;
+        Deencapsulation.setField(transport, "taskScheduler", mockedTaskScheduler);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportException.isRetryable();
+                result = true;
+
+                mockedConfig.getRetryPolicy();
+                result = mockedRetryPolicy;
+
+                mockedRetryPolicy.getRetryDecision(anyInt, mockedTransportException);
+                result = mockedRetryDecision;
+
+                mockedRetryDecision.shouldRetry();
+                result = false;
+
+                mockedIothubServiceException.getStatusCode();
+                result = mockedStatus;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "handleMessageException", mockedPacket, mockedIothubServiceException);
+
+        //assert
+        Queue<IotHubTransportPacket> callbackQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+        assertEquals(1, callbackQueue.size());
+        assertEquals(mockedPacket, callbackQueue.poll());
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(mockedStatus);
+                times = 1;
+
+                mockedTaskScheduler.schedule((IotHubTransport.MessageRetryRunnable) any, expectedDelay, TimeUnit.MILLISECONDS);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_068: [If the reconnection effort ends because the retry policy said to
+    // stop, this function shall invoke close with RETRY_EXPIRED and the last transportException.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_065: [If the saved reconnection attempt start time is 0, this function shall 
+    // save the current time as the time that reconnection started.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_066: [This function shall attempt to reconnect while this object's state is
+    // DISCONNECTED_RETRYING, the operation hasn't timed out, and the last transport exception is retryable.]
+    @Test
+    public void reconnectAttemptsToReconnectUntilRetryPolicyEnds()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return false;
+            }
+
+            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            {
+                if (reason == RETRY_EXPIRED)
+                {
+                    methodsCalled.append("close");
+                }
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        new Expectations()
+        {
+            {
+                mockedTransportException.isRetryable();
+                result = true;
+
+                mockedConfig.getRetryPolicy();
+                result = mockedRetryPolicy;
+
+                mockedRetryPolicy.getRetryDecision(anyInt, (TransportException) any);
+                result = mockedRetryDecision;
+
+                mockedRetryDecision.shouldRetry();
+                result = false;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+
+        //assert
+        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
+        assertTrue(reconnectionAttemptStartTimeMillis > 0);
+        assertEquals("close", methodsCalled.toString());
+    }
+
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_069: [If the reconnection effort ends because the reconnection timed out,
+    // this function shall invoke close with RETRY_EXPIRED and a DeviceOperationTimeoutException.]
+    @Test
+    public void reconnectAttemptsToReconnectUntilOperationTimesOut()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return true;
+            }
+
+            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            {
+                if (reason == RETRY_EXPIRED)
+                {
+                    methodsCalled.append("close");
+                }
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+
+        //act
+        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+
+        //assert
+        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
+        assertTrue(reconnectionAttemptStartTimeMillis > 0);
+        assertEquals("close", methodsCalled.toString());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_070: [If the reconnection effort ends because a terminal exception is
+    // encountered, this function shall invoke close with that terminal exception.]
+    @Test
+    public void reconnectAttemptsToReconnectUntilExceptionNotRetryable()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return false;
+            }
+
+            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause)
+            {
+                methodsCalled.append("close");
+            }
+
+            @Mock IotHubConnectionStatusChangeReason exceptionToStatusChangeReason(Throwable e)
+            {
+                if (e.equals(mockedTransportException))
+                {
+                    methodsCalled.append("exceptionToStatusChangeReason");
+                }
+
+                return IotHubConnectionStatusChangeReason.BAD_CREDENTIAL;
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+
+        //act
+        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+
+        //assert
+        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
+        assertTrue(reconnectionAttemptStartTimeMillis > 0);
+        assertTrue(methodsCalled.toString().contains("close"));
+        assertTrue(methodsCalled.toString().contains("exceptionToStatusChangeReason"));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_071: [If an exception is encountered while closing, this function shall invoke
+    // updateStatus with DISCONNECTED, COMMUNICATION_ERROR, and the last transport exception.]
+    @Test
+    public void reconnectUpdatesStatusIfClosingFailed()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void addToCallbackQueue(IotHubTransportPacket packet)
+            {
+                methodsCalled.append("addToCallbackQueue");
+            }
+
+            @Mock boolean hasOperationTimedOut(long time)
+            {
+                return true;
+            }
+
+            @Mock void updateStatus(IotHubConnectionStatus newConnectionStatus, IotHubConnectionStatusChangeReason reason, Throwable throwable)
+            {
+                if (newConnectionStatus == DISCONNECTED && reason == COMMUNICATION_ERROR)
+                {
+                    methodsCalled.append("updateStatus");
+                }
+            }
+
+            @Mock void close(IotHubConnectionStatusChangeReason reason, Throwable cause) throws TransportException
+            {
+                if (reason == RETRY_EXPIRED)
+                {
+                    methodsCalled.append("close");
+                }
+
+                throw new TransportException("close failed");
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", DISCONNECTED_RETRYING);
+        new NonStrictExpectations()
+        {
+            {
+                mockedTransportException.isRetryable();
+                result = true;
+
+                mockedConfig.getRetryPolicy();
+                result = mockedRetryPolicy;
+
+                mockedRetryPolicy.getRetryDecision(anyInt, (TransportException) any);
+                result = mockedRetryDecision;
+
+                mockedRetryDecision.shouldRetry();
+                result = true;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "reconnect", mockedTransportException);
+
+        //assert
+        long reconnectionAttemptStartTimeMillis = Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis");
+        assertTrue(reconnectionAttemptStartTimeMillis > 0);
+        assertTrue(methodsCalled.toString().contains("updateStatus"));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_008:[This function shall set the packet status to MESSAGE_EXPIRED if packet has expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_009:[This function shall add the expired packet to the Callback Queue.]
+    @Test
+    public void isMessageValidWithMessageExpired()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations(IotHubTransport.class)
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.isExpired();
+                result = true;
+                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                Deencapsulation.invoke(transport, "isSasTokenExpired");
+                result = false;
+            }
+        };
+
+        //act
+        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+
+        //assert
+        assertFalse(ret);
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
+                times = 1;
+                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_008:[This function shall set the packet status to MESSAGE_EXPIRED if packet has expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_009:[This function shall add the expired packet to the Callback Queue.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_010:[This function shall set the packet status to UNAUTHORIZED if sas token has expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_011:[This function shall add the packet which sas token has expired to the Callback Queue.]
+    @Test
+    public void isMessageValidWithMessageNotExpiredAndValidSasToken()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations(IotHubTransport.class)
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.isExpired();
+                result = false;
+                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                Deencapsulation.invoke(transport, "isSasTokenExpired");
+                result = false;
+            }
+        };
+
+        //act
+        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+
+        //assert
+        assertTrue(ret);
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.MESSAGE_EXPIRED);
+                times = 0;
+                Deencapsulation.invoke(transport, "addToCallbackQueue", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_010:[This function shall set the packet status to UNAUTHORIZED if sas token has expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_011:[This function shall add the packet which sas token has expired to the Callback Queue.]
+    @Test
+    public void isMessageValidWithMessageNotExpiredSasTokenExpired()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void addToCallbackQueue(IotHubTransportPacket packet)
+            {
+                methodsCalled.append("addToCallbackQueue");
+            }
+
+            @Mock boolean isSasTokenExpired()
+            {
+                return true;
+            }
+
+            @Mock void updateStatus(IotHubConnectionStatus newConnectionStatus, IotHubConnectionStatusChangeReason reason, Throwable throwable)
             {
                 if (newConnectionStatus == DISCONNECTED && reason == EXPIRED_SAS_TOKEN)
                 {
@@ -2132,664 +2951,1115 @@ public class IotHubTransportTest
         new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedMessage;
-                mockedMessage.isExpired();
-                result = false;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.isExpired();
+                result = false;
+            }
+        };
+
+        //act
+        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+
+        //assert
+        assertFalse(ret);
+        new Verifications()
+        {
+            {
+                mockedPacket.setStatus(IotHubStatusCode.UNAUTHORIZED);
+                times = 1;
+            }
+        };
+        assertTrue(methodsCalled.toString().contains("addToCallbackQueue"));
+        assertTrue(methodsCalled.toString().contains("updateStatus"));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    @Test
+    public void updateStatusConnectionStatusChangedToConnected()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void invokeConnectionStatusChangeCallback(IotHubConnectionStatus status, IotHubConnectionStatusChangeReason reason, Throwable e)
+            {
+                methodsCalled.append("invokeConnectionStatusChangeCallback");
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.DISCONNECTED_RETRYING);
+        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
+        Deencapsulation.setField(transport, "reconnectionAttemptStartTimeMillis", 5);
+
+        //act
+        Deencapsulation.invoke(transport, "updateStatus",
+                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.NO_NETWORK, null);
+
+        //assert
+        assertEquals(IotHubConnectionStatus.CONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
+        assertEquals(0, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
+        assertEquals(0L, Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis"));
+        assertTrue(methodsCalled.toString().equalsIgnoreCase("invokeConnectionStatusChangeCallback"));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    @Test
+    public void updateStatusConnectionStatusNotChanged()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.CONNECTED);
+        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
+        new Expectations(IotHubTransport.class)
+        {
+            {
+                Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
+                        new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                        IotHubConnectionStatus.CONNECTED, null, null);
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "updateStatus",
+                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                IotHubConnectionStatus.CONNECTED, null, null);
+
+        //assert
+        assertEquals(IotHubConnectionStatus.CONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
+        assertEquals(5, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    @Test
+    public void updateStatusConnectionStatusChangedToDisconnected()
+    {
+        //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void invokeConnectionStatusChangeCallback(IotHubConnectionStatus status, IotHubConnectionStatusChangeReason reason, Throwable e)
+            {
+                if (status == DISCONNECTED && reason == NO_NETWORK)
+                {
+                    methodsCalled.append("invokeConnectionStatusChangeCallback");
+                }
+            }
+        };
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.DISCONNECTED_RETRYING);
+        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
+
+        //act
+        Deencapsulation.invoke(transport, "updateStatus",
+                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                IotHubConnectionStatus.DISCONNECTED, IotHubConnectionStatusChangeReason.NO_NETWORK, null);
+
+        //assert
+        assertEquals(IotHubConnectionStatus.DISCONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
+        assertEquals(5, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
+        assertEquals("invokeConnectionStatusChangeCallback", methodsCalled.toString());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_004:[This function shall notify the connection status change callback if the callback is not null]
+    @Test
+    public void invokeConnectionStatusChangeCallbackWithCallback()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatusChangeCallback", mockedIotHubConnectionStatusChangeCallback);
+
+        //act
+        Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
+                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.CONNECTION_OK, new IOException());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedIotHubConnectionStatusChangeCallback.execute(
+                        (IotHubConnectionStatus)any,
+                        (IotHubConnectionStatusChangeReason)any,
+                        (Throwable)any,
+                        any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_004:[This function shall notify the connection status change callback if the callback is not null]
+    @Test
+    public void invokeConnectionStatusChangeCallbackWithNullCallback()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatusChangeCallback", null);
+
+        //act
+        Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
+                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
+                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.CONNECTION_OK, new IOException());
+
+        //assert
+
+        new Verifications()
+        {
+            {
+                mockedIotHubConnectionStatusChangeCallback.execute(
+                        (IotHubConnectionStatus)any,
+                        (IotHubConnectionStatusChangeReason)any,
+                        (Throwable)any,
+                        any);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
+    @Test
+    public void isSasTokenExpiredAuthenticationTypeIsSasTokenAndExpired()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
+                result = true;
+            }
+        };
+
+        //act
+        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
+
+        //assert
+        assertTrue(ret);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
+    @Test
+    public void isSasTokenExpiredAuthenticationTypeIsSasTokenAndNotExpired()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
+                result = false;
+            }
+        };
+
+        //act
+        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
+
+        //assert
+        assertFalse(ret);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
+    @Test
+    public void isSasTokenExpiredAuthenticationTypeNotSasToken()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.X509_CERTIFICATE;
+                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
+                result = true;
             }
         };
 
         //act
-        boolean ret = Deencapsulation.invoke(transport, "isMessageValid", new Class[] {IotHubTransportPacket.class}, mockedPacket);
+        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
 
         //assert
         assertFalse(ret);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
+    @Test
+    public void addToCallbackQueuePacketHasCallback(@Mocked final IotHubEventCallback mockCallback)
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getCallback();
+                result = mockCallback;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+        assertEquals(1, callbackPacketsQueue.size());
+        assertTrue(callbackPacketsQueue.contains(mockedPacket));
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
+    @Test
+    public void addToCallbackQueuePacketNoCallback(@Mocked final IotHubEventCallback mockCallback)
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getCallback();
+                result = null;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
+
+        //assert
+        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
+        assertEquals(0, callbackPacketsQueue.size());
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException as retryable if the sas token has not expired.]
+    @Test
+    public void checkForUnauthorizedExceptionInMqttUnauthroizedException()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return false;
+            }
+        };
+        final MqttUnauthorizedException testException = new MqttUnauthorizedException();
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+
+        //act
+        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+
+        //assert
         new Verifications()
         {
             {
-                mockedPacket.setStatus(IotHubStatusCode.UNAUTHORIZED);
+                testException.setRetryable(true);
                 times = 1;
             }
         };
-        assertTrue(methodsCalled.toString().contains("addToCallbackQueue"));
-        assertTrue(methodsCalled.toString().contains("updateStatus"));
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
+    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
     @Test
-    public void updateStatusConnectionStatusChangedToConnected()
+    public void checkForUnauthorizedExceptionInUnauthorizedException()
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
         new MockUp<IotHubTransport>()
         {
-            @Mock void invokeConnectionStatusChangeCallback(IotHubConnectionStatus status, IotHubConnectionStatusChangeReason reason, Throwable e)
+            @Mock boolean isSasTokenExpired()
             {
-                methodsCalled.append("invokeConnectionStatusChangeCallback");
+                return false;
             }
         };
+
+        final UnauthorizedException testException = new UnauthorizedException();
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.DISCONNECTED_RETRYING);
-        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
-        Deencapsulation.setField(transport, "reconnectionAttemptStartTimeMillis", 5);
 
         //act
-        Deencapsulation.invoke(transport, "updateStatus",
-                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.NO_NETWORK, null);
+        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
 
         //assert
-        assertEquals(IotHubConnectionStatus.CONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
-        assertEquals(0, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
-        assertEquals(0L, Deencapsulation.getField(transport, "reconnectionAttemptStartTimeMillis"));
-        assertTrue(methodsCalled.toString().equalsIgnoreCase("invokeConnectionStatusChangeCallback"));
+        new Verifications()
+        {
+            {
+                testException.setRetryable(true);
+                times = 1;
+            }
+        };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
+    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
     @Test
-    public void updateStatusConnectionStatusNotChanged()
+    public void checkForUnauthorizedExceptionInAmqpUnauthorizedAccessException()
     {
         //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return false;
+            }
+        };
+
+        final AmqpUnauthorizedAccessException testException = new AmqpUnauthorizedAccessException();
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.CONNECTED);
-        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
-        new Expectations(IotHubTransport.class)
+
+        //act
+        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+
+        //assert
+        new Verifications()
         {
             {
-                Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
-                        new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                        IotHubConnectionStatus.CONNECTED, null, null);
+                testException.setRetryable(true);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
+    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
+    @Test
+    public void checkForUnauthorizedExceptionWithExpiredSASToken()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return true;
             }
         };
+        final UnauthorizedException testException = new UnauthorizedException();
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
 
         //act
-        Deencapsulation.invoke(transport, "updateStatus",
-                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                IotHubConnectionStatus.CONNECTED, null, null);
+        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
 
         //assert
-        assertEquals(IotHubConnectionStatus.CONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
-        assertEquals(5, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
+        new Verifications()
+        {
+            {
+                testException.setRetryable(true);
+                times = 0;
+            }
+        };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_005:[This function shall updated the saved connection status if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_006:[This function shall invoke all callbacks listening for the state change if the connection status has changed.]
-    //Tests_SRS_IOTHUBTRANSPORT_28_007: [This function shall reset currentReconnectionAttempt and reconnectionAttemptStartTimeMillis if connection status is changed to CONNECTED.]
+    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
+    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
     @Test
-    public void updateStatusConnectionStatusChangedToDisconnected()
+    public void checkForUnauthorizedExceptionWithOtherTransportException()
+    {
+        //arrange
+        new MockUp<IotHubTransport>()
+        {
+            @Mock boolean isSasTokenExpired()
+            {
+                return true;
+            }
+        };
+        final TransportException testException = new TransportException();
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+
+        //act
+        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+
+        //assert
+        new Verifications()
+        {
+            {
+                testException.setRetryable(true);
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_072: [This function shall check if the provided message should expect an ACK or not.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_073: [This function shall send the provided message over the saved connection
+    // and save the response code.]
+    @Test
+    public void sendPacketHappyPathWithAck() throws TransportException
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+
+                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
+                result = true;
+
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
+
+        //assert
+        assertEquals(1, inProgressMessages.size());
+    }
+
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_074: [If the response from sending is not OK or OK_EMPTY, this function
+    // shall invoke handleMessageException with that message.]
+    @Test
+    public void sendPacketReceivesStatusThatIsNotOkOrOkEmpty() throws TransportException
     {
         //arrange
         final StringBuilder methodsCalled = new StringBuilder();
         new MockUp<IotHubTransport>()
         {
-            @Mock void invokeConnectionStatusChangeCallback(IotHubConnectionStatus status, IotHubConnectionStatusChangeReason reason, Throwable e)
+            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
             {
-                if (status == DISCONNECTED && reason == NO_NETWORK)
+                if (packet.equals(mockedPacket))
                 {
-                    methodsCalled.append("invokeConnectionStatusChangeCallback");
+                    methodsCalled.append("handleMessageException");
                 }
             }
         };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatus", IotHubConnectionStatus.DISCONNECTED_RETRYING);
-        Deencapsulation.setField(transport, "currentReconnectionAttempt", 5);
+        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        new Expectations()
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+
+                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
+                result = true;
+
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                result = IotHubStatusCode.HUB_OR_DEVICE_ID_NOT_FOUND;
+            }
+        };
 
         //act
-        Deencapsulation.invoke(transport, "updateStatus",
-                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                IotHubConnectionStatus.DISCONNECTED, IotHubConnectionStatusChangeReason.NO_NETWORK, null);
+        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
 
         //assert
-        assertEquals(IotHubConnectionStatus.DISCONNECTED, Deencapsulation.getField(transport, "connectionStatus"));
-        assertEquals(5, Deencapsulation.getField(transport, "currentReconnectionAttempt"));
-        assertEquals("invokeConnectionStatusChangeCallback", methodsCalled.toString());
+        assertEquals(0, inProgressMessages.size());
+        assertEquals("handleMessageException", methodsCalled.toString());
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_004:[This function shall notify the connection status change callback if the callback is not null]
+    //Tests_SRS_IOTHUBTRANSPORT_34_075: [If the response from sending is OK or OK_EMPTY and no ack is expected,
+    // this function shall put that set that status in the sent packet and add that packet to the callbacks queue.]
     @Test
-    public void invokeConnectionStatusChangeCallbackWithCallback()
+    public void sendPacketHappyPathWithoutAck() throws TransportException
     {
         //arrange
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatusChangeCallback", mockedIotHubConnectionStatusChangeCallback);
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        new NonStrictExpectations()
+        {
+            {
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+
+                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
+                result = false;
+
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                result = IotHubStatusCode.OK_EMPTY;
+            }
+        };
 
         //act
-        Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
-                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.CONNECTION_OK, new IOException());
+        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
 
         //assert
+        assertEquals(0, inProgressMessages.size());
+        assertEquals(1, callbackPacketsQueue.size());
         new Verifications()
         {
             {
-                mockedIotHubConnectionStatusChangeCallback.execute(
-                        (IotHubConnectionStatus)any,
-                        (IotHubConnectionStatusChangeReason)any,
-                        (Throwable)any,
-                        any);
+                mockedPacket.setStatus(IotHubStatusCode.OK_EMPTY);
                 times = 1;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_004:[This function shall notify the connection status change callback if the callback is not null]
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_076: [If an exception is encountered while sending the message, this function
+    // shall invoke handleMessageException with that packet.]
     @Test
-    public void invokeConnectionStatusChangeCallbackWithNullCallback()
+    public void sendPacketFailsToSend() throws TransportException
     {
         //arrange
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Deencapsulation.setField(transport, "connectionStatusChangeCallback", null);
-
-        //act
-        Deencapsulation.invoke(transport, "invokeConnectionStatusChangeCallback",
-                new Class[] {IotHubConnectionStatus.class, IotHubConnectionStatusChangeReason.class, Throwable.class},
-                IotHubConnectionStatus.CONNECTED, IotHubConnectionStatusChangeReason.CONNECTION_OK, new IOException());
-
-        //assert
-
-        new Verifications()
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
         {
+            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
             {
-                mockedIotHubConnectionStatusChangeCallback.execute(
-                        (IotHubConnectionStatus)any,
-                        (IotHubConnectionStatusChangeReason)any,
-                        (Throwable)any,
-                        any);
-                times = 0;
+                methodsCalled.append("handleMessageException");
             }
         };
-    }
-
-    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
-    @Test
-    public void isSasTokenExpiredAuthenticationTypeIsSasTokenAndExpired()
-    {
-        //arrange
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations()
+        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        new Expectations()
         {
             {
-                mockedConfig.getAuthenticationType();
-                result = DeviceClientConfig.AuthType.SAS_TOKEN;
-                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
-                result = true;
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+
+                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
+                result = false;
+
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                result = mockedTransportException;
             }
         };
 
         //act
-        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
+        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
 
         //assert
-        assertTrue(ret);
+        assertEquals(0, inProgressMessages.size());
+        assertEquals(0, callbackPacketsQueue.size());
+        assertEquals(methodsCalled.toString(), "handleMessageException");
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_076: [If an exception is encountered while sending the message, this function
+    // shall invoke handleMessageException with that packet.]
     @Test
-    public void isSasTokenExpiredAuthenticationTypeIsSasTokenAndNotExpired()
+    public void sendPacketFailsToSendAndExpectsAck() throws TransportException
     {
         //arrange
+        final StringBuilder methodsCalled = new StringBuilder();
+        new MockUp<IotHubTransport>()
+        {
+            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
+            {
+                if (packet.equals(mockedPacket) && exception.equals(mockedTransportException))
+                {
+                    methodsCalled.append("handleMessageException");
+                }
+            }
+        };
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations()
+        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
+        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
+        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
+        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        new Expectations()
         {
             {
-                mockedConfig.getAuthenticationType();
-                result = DeviceClientConfig.AuthType.SAS_TOKEN;
-                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
-                result = false;
+                mockedPacket.getMessage();
+                result = mockedTransportMessage;
+
+                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
+                result = true;
+
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                result = mockedTransportException;
             }
         };
 
         //act
-        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
+        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
 
         //assert
-        assertFalse(ret);
+        assertEquals(0, inProgressMessages.size());
+        assertEquals(0, callbackPacketsQueue.size());
+        assertEquals("handleMessageException", methodsCalled.toString());
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_003: [This function shall indicate if the device's sas token is expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_079: [If the provided transportException is an AmqpConnectionThrottledException,
+    // this function shall set the status of the callback packet to the error code for THROTTLED.]
     @Test
-    public void isSasTokenExpiredAuthenticationTypeNotSasToken()
+    public void handleMessageExceptionChecksForAmqpThrottling()
     {
         //arrange
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations()
+
+        //act
+        Deencapsulation.invoke(transport, "handleMessageException", new Class[] {IotHubTransportPacket.class, TransportException.class}, mockedPacket, new AmqpConnectionThrottledException());
+
+        //assert
+        new Verifications()
         {
             {
-                mockedConfig.getAuthenticationType();
-                result = DeviceClientConfig.AuthType.X509_CERTIFICATE;
-                mockedConfig.getSasTokenAuthentication().isRenewalNecessary();
-                result = true;
+                mockedPacket.setStatus(IotHubStatusCode.THROTTLED);
+                times = 1;
             }
         };
+    }
 
-        //act
-        boolean ret = Deencapsulation.invoke(transport, "isSasTokenExpired");
+    //Tests_SRS_IOTHUBTRANSPORT_34_090: [If the provided config is null, this function shall throw an
+    // IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void addDeviceClientConfigThrowsForNullConfig() throws TransportException
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", new ConcurrentLinkedQueue<DeviceClientConfig>());
 
-        //assert
-        assertFalse(ret);
+        //act
+        transport.addDeviceClientConfig(null);
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
-    @Test
-    public void addToCallbackQueuePacketHasCallback(@Mocked final IotHubEventCallback mockCallback)
+    //Tests_SRS_IOTHUBTRANSPORT_34_091: [If this transport has not been opened, this function shall throw an
+    // IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void addDeviceClientConfigThrowsIfNotOpened() throws TransportException
     {
         //arrange
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        new NonStrictExpectations()
-        {
-            {
-                mockedPacket.getCallback();
-                result = mockCallback;
-            }
-        };
 
         //act
-        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
-
-        //assert
-        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
-        assertEquals(1, callbackPacketsQueue.size());
-        assertTrue(callbackPacketsQueue.contains(mockedPacket));
+        transport.addDeviceClientConfig(mockedConfig);
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_002: [This function shall add the packet to the callback queue if it has a callback.]
-    @Test
-    public void addToCallbackQueuePacketNoCallback(@Mocked final IotHubEventCallback mockCallback)
+    //Tests_SRS_IOTHUBTRANSPORT_34_092: [If the protocol of the default config is not AMQPS or AMQPS_WS, this
+    // function shall throw an UnsupportedOperationException.]
+    @Test (expected = UnsupportedOperationException.class)
+    public void addDeviceClientConfigThrowsForMqtt() throws TransportException
     {
         //arrange
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", new ConcurrentLinkedQueue<DeviceClientConfig>());
         new NonStrictExpectations()
         {
             {
-                mockedPacket.getCallback();
-                result = null;
+                mockedConfig.getProtocol();
+                result = IotHubClientProtocol.MQTT;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "addToCallbackQueue", mockedPacket);
-
-        //assert
-        Queue<IotHubTransportPacket> callbackPacketsQueue = Deencapsulation.getField(transport, "callbackPacketsQueue");
-        assertEquals(0, callbackPacketsQueue.size());
+        transport.addDeviceClientConfig(mockedConfig);
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException as retryable if the sas token has not expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_093: [This function shall save the config so that reconnections open the
+    // device as well.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_094: [If the connection is open, this function shall add the device to it.]
     @Test
-    public void checkForUnauthorizedExceptionInMqttUnauthroizedException()
+    public void addDeviceClientConfigAddsDeviceToOpenAmqpsConnection(@Mocked final DeviceClientConfig mockedOtherConfig) throws TransportException
     {
         //arrange
-        new MockUp<IotHubTransport>()
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Queue<DeviceClientConfig> configs = new ConcurrentLinkedQueue<>();
+        configs.add(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", configs);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedAmqpsIotHubConnection);
+        new NonStrictExpectations()
         {
-            @Mock boolean isSasTokenExpired()
             {
-                return false;
+                mockedConfig.getProtocol();
+                result = IotHubClientProtocol.AMQPS;
             }
         };
-        final MqttUnauthorizedException testException = new MqttUnauthorizedException();
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
 
         //act
-        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+        transport.addDeviceClientConfig(mockedOtherConfig);
 
         //assert
+        assertEquals(2, configs.size());
+        assertTrue(configs.contains(mockedOtherConfig));
         new Verifications()
         {
             {
-                testException.setRetryable(true);
+                mockedAmqpsIotHubConnection.addDeviceOperationSession(mockedOtherConfig);
                 times = 1;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
-    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
-    @Test
-    public void checkForUnauthorizedExceptionInUnauthorizedException()
-    {
-        //arrange
-        new MockUp<IotHubTransport>()
-        {
-            @Mock boolean isSasTokenExpired()
-            {
-                return false;
-            }
-        };
-
-        final UnauthorizedException testException = new UnauthorizedException();
+    //Tests_SRS_IOTHUBTRANSPORT_34_095: [If this transport has not been opened or the device id is null, this
+    // function shall return false.]
+    @Test
+    public void removeDeviceClientConfigReturnsFalseIfNotOpened()
+    {
+        //arrange
         final IotHubTransport transport = new IotHubTransport(mockedConfig);
 
         //act
-        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+        boolean removed = transport.removeDeviceClientConfig("someDevice");
 
         //assert
-        new Verifications()
+        assertFalse(removed);
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_096: [If the device id is the one of the default config, this function shall
+    // throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void removeDeviceClientConfigThrowsForDefaultDevice()
+    {
+        //arrange
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", new ConcurrentLinkedQueue<DeviceClientConfig>());
+        new NonStrictExpectations()
         {
             {
-                testException.setRetryable(true);
-                times = 1;
+                mockedConfig.getDeviceId();
+                result = "defaultDevice";
             }
         };
+
+        //act
+        transport.removeDeviceClientConfig("defaultDevice");
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
-    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_097: [This function shall remove the config with the given device id
+    // from the saved configs.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_098: [If the config was removed, this function shall remove the device
+    // from the connection.]
     @Test
-    public void checkForUnauthorizedExceptionInAmqpUnauthorizedAccessException()
+    public void removeDeviceClientConfigRemovesDeviceFromAmqpsConnection(@Mocked final DeviceClientConfig mockedOtherConfig)
     {
         //arrange
-        new MockUp<IotHubTransport>()
+        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Queue<DeviceClientConfig> configs = new ConcurrentLinkedQueue<>();
+        configs.add(mockedConfig);
+        configs.add(mockedOtherConfig);
+        Deencapsulation.setField(transport, "deviceClientConfigs", configs);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedAmqpsIotHubConnection);
+        new NonStrictExpectations()
         {
-            @Mock boolean isSasTokenExpired()
             {
-                return false;
+                mockedConfig.getDeviceId();
+                result = "defaultDevice";
+                mockedOtherConfig.getDeviceId();
+                result = "otherDevice";
             }
         };
 
-        final AmqpUnauthorizedAccessException testException = new AmqpUnauthorizedAccessException();
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-
         //act
-        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+        boolean removed = transport.removeDeviceClientConfig("otherDevice");
 
         //assert
+        assertTrue(removed);
+        assertEquals(1, configs.size());
         new Verifications()
         {
             {
-                testException.setRetryable(true);
+                mockedAmqpsIotHubConnection.removeDeviceOperationSession("otherDevice");
                 times = 1;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
-    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
-    @Test
-    public void checkForUnauthorizedExceptionWithExpiredSASToken()
+    private IotHubTransport createHttpsBatchTransport(final long lingerMillis, int waitingPacketCount)
     {
-        //arrange
-        new MockUp<IotHubTransport>()
+        new NonStrictExpectations()
         {
-            @Mock boolean isSasTokenExpired()
             {
-                return true;
+                mockedConfig.isHttpsBatchSend();
+                result = true;
+                mockedConfig.getHttpsBatchLingerMillis();
+                result = lingerMillis;
+                mockedPacket.getMessage();
+                result = mockedMessage;
+                mockedMessage.getMessageId();
+                result = "messageId";
+                mockedMessage.getBytes();
+                result = new byte[10];
             }
         };
-        final UnauthorizedException testException = new UnauthorizedException();
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "connectionStatus", CONNECTED);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        Queue<IotHubTransportPacket> waitingPacketsQueue = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < waitingPacketCount; i++)
+        {
+            waitingPacketsQueue.add(mockedPacket);
+        }
+        Deencapsulation.setField(transport, "waitingPacketsQueue", waitingPacketsQueue);
+        return transport;
+    }
+
+    //Tests_SRS_IOTHUBTRANSPORT_34_100: [If HTTPS batch send is enabled, this function shall send at most one
+    // batch, and only once the waiting packets fill a batch or the oldest of them has waited for the linger time.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_104: [This function shall send the batch over the HTTPS connection, which
+    // notifies this object of the result for each message of the batch.]
+    @Test
+    public void sendMessagesWithHttpsBatchSendSendsWaitingMessagesInOneBatch(final @Mocked HttpsBatchMessage mockedBatchMessage,
+                                                                           final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException, IotHubSizeExceededException
+    {
+        //arrange
+        IotHubTransport transport = createHttpsBatchTransport(0, 3);
 
         //act
-        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+        transport.sendMessages();
 
         //assert
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertTrue(waitingPacketsQueue.isEmpty());
         new Verifications()
         {
             {
-                testException.setRetryable(true);
+                mockedBatchMessage.addMessage((HttpsSingleMessage) any);
+                times = 3;
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
+                times = 1;
+                mockedHttpsIotHubConnection.sendMessage((Message) any);
                 times = 0;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_28_001: [This function shall set the MqttUnauthorizedException, UnauthorizedException or
-    //AmqpUnauthorizedAccessException as retryable if the sas token has not expired.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_100: [If HTTPS batch send is enabled, this function shall send at most one
+    // batch, and only once the waiting packets fill a batch or the oldest of them has waited for the linger time.]
     @Test
-    public void checkForUnauthorizedExceptionWithOtherTransportException()
+    public void sendMessagesWithHttpsBatchSendWaitsForTheLingerTime(final @Mocked HttpsBatchMessage mockedBatchMessage) throws TransportException
     {
         //arrange
-        new MockUp<IotHubTransport>()
+        IotHubTransport transport = createHttpsBatchTransport(60 * 1000, 2);
+        new NonStrictExpectations()
         {
-            @Mock boolean isSasTokenExpired()
             {
-                return true;
+                mockedPacket.getStartTimeMillis();
+                result = System.currentTimeMillis();
             }
         };
-        final TransportException testException = new TransportException();
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
 
         //act
-        Deencapsulation.invoke(transport, "checkForUnauthorizedException", testException);
+        transport.sendMessages();
 
         //assert
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertEquals(2, waitingPacketsQueue.size());
         new Verifications()
         {
             {
-                testException.setRetryable(true);
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
                 times = 0;
             }
         };
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_072: [This function shall check if the provided message should expect an ACK or not.]
-    //Tests_SRS_IOTHUBTRANSPORT_34_073: [This function shall send the provided message over the saved connection
-    // and save the response code.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_100: [If HTTPS batch send is enabled, this function shall send at most one
+    // batch, and only once the waiting packets fill a batch or the oldest of them has waited for the linger time.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_102: [This function shall add waiting packets to the batch until the
+    // next one would exceed the batch size limit, which leaves it waiting for the next batch.]
     @Test
-    public void sendPacketHappyPathWithAck() throws TransportException
+    public void sendMessagesWithHttpsBatchSendSendsAFullBatchBeforeTheLingerTime(final @Mocked HttpsBatchMessage mockedBatchMessage,
+                                                                               final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException, IotHubSizeExceededException
     {
         //arrange
-        IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
-        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
-        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        IotHubTransport transport = createHttpsBatchTransport(60 * 1000, 3);
         new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedTransportMessage;
-
-                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
-                result = true;
+                mockedPacket.getStartTimeMillis();
+                result = System.currentTimeMillis();
+                mockedMessage.getBytes();
+                result = new byte[100 * 1024];
+                mockedBatchMessage.addMessage((HttpsSingleMessage) any);
+                result = new Delegate()
+                {
+                    int addedMessages = 0;
 
-                mockedHttpsIotHubConnection.sendMessage((Message) any);
-                result = IotHubStatusCode.OK_EMPTY;
+                    void addMessage(HttpsSingleMessage message) throws IotHubSizeExceededException
+                    {
+                        if (++addedMessages > 2)
+                        {
+                            throw new IotHubSizeExceededException("batch is full");
+                        }
+                    }
+                };
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
+        transport.sendMessages();
 
         //assert
-        assertEquals(1, inProgressMessages.size());
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertEquals(1, waitingPacketsQueue.size());
+        new Verifications()
+        {
+            {
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
+                times = 1;
+            }
+        };
     }
 
-
-    //Tests_SRS_IOTHUBTRANSPORT_34_074: [If the response from sending is not OK or OK_EMPTY, this function
-    // shall invoke handleMessageException with that message.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_103: [If a message is too large for a batch of its own, this function
+    // shall send it by itself.]
     @Test
-    public void sendPacketReceivesStatusThatIsNotOkOrOkEmpty() throws TransportException
+    public void sendMessagesWithHttpsBatchSendSendsTooLargeMessageByItself(final @Mocked HttpsBatchMessage mockedBatchMessage,
+                                                                         final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException, IotHubSizeExceededException
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
+        final List<IotHubTransportPacket> sentPackets = new ArrayList<>();
         new MockUp<IotHubTransport>()
         {
-            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
-            {
-                if (packet.equals(mockedPacket))
-                {
-                    methodsCalled.append("handleMessageException");
-                }
-            }
-        };
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
-        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
-        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
-        new Expectations()
-        {
+            @Mock void sendPacket(IotHubTransportPacket packet)
             {
-                mockedPacket.getMessage();
-                result = mockedTransportMessage;
-
-                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
-                result = true;
-
-                mockedHttpsIotHubConnection.sendMessage((Message) any);
-                result = IotHubStatusCode.HUB_OR_DEVICE_ID_NOT_FOUND;
+                sentPackets.add(packet);
             }
         };
 
-        //act
-        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
-
-        //assert
-        assertEquals(0, inProgressMessages.size());
-        assertEquals("handleMessageException", methodsCalled.toString());
-    }
-
-    //Tests_SRS_IOTHUBTRANSPORT_34_075: [If the response from sending is OK or OK_EMPTY and no ack is expected,
-    // this function shall put that set that status in the sent packet and add that packet to the callbacks queue.]
-    @Test
-    public void sendPacketHappyPathWithoutAck() throws TransportException
-    {
-        //arrange
-        IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
-        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
-        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
-        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
-        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
+        IotHubTransport transport = createHttpsBatchTransport(0, 2);
         new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedTransportMessage;
-
-                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
-                result = false;
-
-                mockedHttpsIotHubConnection.sendMessage((Message) any);
-                result = IotHubStatusCode.OK_EMPTY;
+                mockedBatchMessage.addMessage((HttpsSingleMessage) any);
+                result = new IotHubSizeExceededException("too large");
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
+        transport.sendMessages();
 
         //assert
-        assertEquals(0, inProgressMessages.size());
-        assertEquals(1, callbackPacketsQueue.size());
+        assertEquals(1, sentPackets.size());
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertEquals(1, waitingPacketsQueue.size());
         new Verifications()
         {
             {
-                mockedPacket.setStatus(IotHubStatusCode.OK_EMPTY);
-                times = 1;
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
+                times = 0;
             }
         };
     }
 
-
-    //Tests_SRS_IOTHUBTRANSPORT_34_076: [If an exception is encountered while sending the message, this function
-    // shall invoke handleMessageException with that packet.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_105: [If an exception is encountered while sending the batch, this function
+    // shall invoke handleMessageException with each packet of the batch.]
     @Test
-    public void sendPacketFailsToSend() throws TransportException
+    public void sendMessagesWithHttpsBatchSendHandlesExceptionForThePacketsOfTheBatch(final @Mocked HttpsBatchMessage mockedBatchMessage,
+                                                                                    final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
+        final List<IotHubTransportPacket> failedPackets = new ArrayList<>();
         new MockUp<IotHubTransport>()
         {
-            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
+            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException transportException)
             {
-                methodsCalled.append("handleMessageException");
+                failedPackets.add(packet);
             }
         };
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
-        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
-        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
-        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
-        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
-        new Expectations()
+
+        IotHubTransport transport = createHttpsBatchTransport(0, 1);
+        new NonStrictExpectations()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedTransportMessage;
-
-                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
-                result = false;
-
-                mockedHttpsIotHubConnection.sendMessage((Message) any);
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
                 result = mockedTransportException;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
+        transport.sendMessages();
 
         //assert
-        assertEquals(0, inProgressMessages.size());
-        assertEquals(0, callbackPacketsQueue.size());
-        assertEquals(methodsCalled.toString(), "handleMessageException");
+        assertEquals(1, failedPackets.size());
+        Map<String, IotHubTransportPacket> inProgressPackets = Deencapsulation.getField(transport, "inProgressPackets");
+        assertTrue(inProgressPackets.isEmpty());
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_076: [If an exception is encountered while sending the message, this function
-    // shall invoke handleMessageException with that packet.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_101: [If HTTPS batch send is enabled, this function shall send the waiting
+    // packets in batches, without waiting for the linger time.]
     @Test
-    public void sendPacketFailsToSendAndExpectsAck() throws TransportException
+    public void drainMessagesWithHttpsBatchSendDoesNotWaitForTheLingerTime(final @Mocked HttpsBatchMessage mockedBatchMessage,
+                                                                         final @Mocked HttpsSingleMessage mockedSingleMessage) throws TransportException
     {
         //arrange
-        final StringBuilder methodsCalled = new StringBuilder();
-        new MockUp<IotHubTransport>()
+        IotHubTransport transport = createHttpsBatchTransport(60 * 1000, 2);
+        new NonStrictExpectations()
         {
-            @Mock void handleMessageException(IotHubTransportPacket packet, TransportException exception)
             {
-                if (packet.equals(mockedPacket) && exception.equals(mockedTransportException))
-                {
-                    methodsCalled.append("handleMessageException");
-                }
+                mockedPacket.getStartTimeMillis();
+                result = System.currentTimeMillis();
             }
         };
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
-        Map<String, IotHubTransportPacket> inProgressMessages = new HashMap<>();
-        Queue<IotHubTransportPacket> callbackPacketsQueue = new ConcurrentLinkedQueue<>();
-        Deencapsulation.setField(transport, "callbackPacketsQueue", callbackPacketsQueue);
-        Deencapsulation.setField(transport, "inProgressPackets", inProgressMessages);
-        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedHttpsIotHubConnection);
-        new Expectations()
+
+        //act
+        transport.drainMessages();
+
+        //assert
+        Queue<IotHubTransportPacket> waitingPacketsQueue = Deencapsulation.getField(transport, "waitingPacketsQueue");
+        assertTrue(waitingPacketsQueue.isEmpty());
+        new Verifications()
         {
             {
-                mockedPacket.getMessage();
-                result = mockedTransportMessage;
-
-                mockedTransportMessage.isMessageAckNeeded((IotHubClientProtocol) any);
-                result = true;
+                mockedHttpsIotHubConnection.sendBatchMessage((HttpsBatchMessage) any, (Collection<Message>) any);
+                times = 1;
+            }
+        };
+    }
 
-                mockedHttpsIotHubConnection.sendMessage((Message) any);
-                result = mockedTransportException;
+    //Tests_SRS_IOTHUBTRANSPORT_34_117: [If the connection is an AMQP connection, this function shall return the number of messages it encoded. Otherwise, this function shall return 0.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_118: [If the connection is an AMQP connection, this function shall return the number of buffers it allocated to encode messages. Otherwise, this function shall return 0.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_119: [If the connection is an AMQP connection, this function shall return the number of bytes it allocated to encode messages. Otherwise, this function shall return 0.]
+    @Test
+    public void encoderMetricsGettersReturnMetricsOfAmqpConnection()
+    {
+        //arrange
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedAmqpsIotHubConnection);
+        new NonStrictExpectations()
+        {
+            {
+                mockedAmqpsIotHubConnection.getMessageEncodeCount();
+                result = 5L;
+                mockedAmqpsIotHubConnection.getEncodeBufferAllocationCount();
+                result = 2L;
+                mockedAmqpsIotHubConnection.getEncodeBufferAllocatedBytes();
+                result = 3072L;
             }
         };
 
         //act
-        Deencapsulation.invoke(transport, "sendPacket", mockedPacket);
+        long encodeCount = transport.getMessageEncodeCount();
+        long bufferAllocationCount = transport.getEncodeBufferAllocationCount();
+        long allocatedBytes = transport.getEncodeBufferAllocatedBytes();
 
         //assert
-        assertEquals(0, inProgressMessages.size());
-        assertEquals(0, callbackPacketsQueue.size());
-        assertEquals("handleMessageException", methodsCalled.toString());
+        assertEquals(5L, encodeCount);
+        assertEquals(2L, bufferAllocationCount);
+        assertEquals(3072L, allocatedBytes);
     }
 
-    //Tests_SRS_IOTHUBTRANSPORT_34_079: [If the provided transportException is an AmqpConnectionThrottledException,
-    // this function shall set the status of the callback packet to the error code for THROTTLED.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_117: [If the connection is an AMQP connection, this function shall return the number of messages it encoded. Otherwise, this function shall return 0.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_118: [If the connection is an AMQP connection, this function shall return the number of buffers it allocated to encode messages. Otherwise, this function shall return 0.]
+    //Tests_SRS_IOTHUBTRANSPORT_34_119: [If the connection is an AMQP connection, this function shall return the number of bytes it allocated to encode messages. Otherwise, this function shall return 0.]
     @Test
-    public void handleMessageExceptionChecksForAmqpThrottling()
+    public void encoderMetricsGettersReturnZeroForNonAmqpConnection()
     {
         //arrange
-        final IotHubTransport transport = new IotHubTransport(mockedConfig);
+        IotHubTransport transport = new IotHubTransport(mockedConfig);
+        Deencapsulation.setField(transport, "iotHubTransportConnection", mockedMqttIotHubConnection);
 
         //act
-        Deencapsulation.invoke(transport, "handleMessageException", new Class[] {IotHubTransportPacket.class, TransportException.class}, mockedPacket, new AmqpConnectionThrottledException());
+        long encodeCount = transport.getMessageEncodeCount();
+        long bufferAllocationCount = transport.getEncodeBufferAllocationCount();
+        long allocatedBytes = transport.getEncodeBufferAllocatedBytes();
 
         //assert
-        new Verifications()
-        {
-            {
-                mockedPacket.setStatus(IotHubStatusCode.THROTTLED);
-                times = 1;
-            }
-        };
+        assertEquals(0L, encodeCount);
+        assertEquals(0L, bufferAllocationCount);
+        assertEquals(0L, allocatedBytes);
     }
-
 }
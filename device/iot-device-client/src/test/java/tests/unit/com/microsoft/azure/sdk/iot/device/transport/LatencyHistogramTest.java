@@ -0,0 +1,91 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.transport.LatencyHistogram;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Unit tests for LatencyHistogram. */
+public class LatencyHistogramTest
+{
+    // Tests_SRS_LATENCYHISTOGRAM_34_001: [This function shall record negative latencies as 0.]
+    // Tests_SRS_LATENCYHISTOGRAM_34_002: [This function shall increment the count of the first bucket whose upper bound is greater than or equal to the provided latency.]
+    @Test
+    public void recordIncrementsMatchingBucket()
+    {
+        //arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        //act
+        histogram.record(-5);
+        histogram.record(1);
+        histogram.record(3);
+
+        //assert
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(2, counts[0]);
+        assertEquals(0, counts[1]);
+        assertEquals(1, counts[2]);
+        assertEquals(3, histogram.getCount());
+        assertEquals(3, histogram.getMaxMilliseconds());
+    }
+
+    // Tests_SRS_LATENCYHISTOGRAM_34_004: [This function shall return the upper bound of the bucket containing the requested percentile.]
+    @Test
+    public void getPercentileReturnsBucketUpperBound()
+    {
+        //arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++)
+        {
+            histogram.record(4);
+        }
+
+        for (int i = 0; i < 10; i++)
+        {
+            histogram.record(150);
+        }
+
+        //act
+        long p50 = histogram.getPercentileMilliseconds(50);
+        long p99 = histogram.getPercentileMilliseconds(99);
+        long p100 = histogram.getPercentileMilliseconds(100);
+
+        //assert
+        assertEquals(5, p50);
+        assertEquals(150, p99);
+        assertEquals(150, p100);
+    }
+
+    @Test
+    public void getPercentileReturnsZeroWhenEmpty()
+    {
+        assertEquals(0, new LatencyHistogram().getPercentileMilliseconds(99));
+    }
+
+    // Tests_SRS_LATENCYHISTOGRAM_34_003: [If the provided percentile is not between 0 and 100, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getPercentileThrowsForInvalidPercentile()
+    {
+        new LatencyHistogram().getPercentileMilliseconds(101);
+    }
+
+    @Test
+    public void resetClearsSamples()
+    {
+        //arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+
+        //act
+        histogram.reset();
+
+        //assert
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMilliseconds());
+        assertEquals(0, histogram.getBucketCounts()[3]);
+    }
+}
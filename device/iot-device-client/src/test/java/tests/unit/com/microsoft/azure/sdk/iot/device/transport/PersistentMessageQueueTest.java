@@ -0,0 +1,562 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport;
+
+import com.microsoft.azure.sdk.iot.device.Message;
+import com.microsoft.azure.sdk.iot.device.MessageType;
+import com.microsoft.azure.sdk.iot.device.PersistentQueueOptions;
+import com.microsoft.azure.sdk.iot.device.transport.PersistentMessageQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the persistent message queue, on segments in a temporary directory.
+ * 100% methods, 94% lines covered
+ */
+public class PersistentMessageQueueTest
+{
+    private static final int SEGMENT_SIZE = PersistentQueueOptions.MIN_SEGMENT_SIZE_IN_BYTES;
+    private static final int HEADER_SIZE = 9;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = File.createTempFile("PersistentMessageQueueTest", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    private PersistentQueueOptions createOptions(PersistentQueueOptions.SyncMode syncMode)
+    {
+        PersistentQueueOptions options = new PersistentQueueOptions(directory);
+        options.setSegmentSizeInBytes(SEGMENT_SIZE);
+        options.setSyncMode(syncMode, PersistentQueueOptions.DEFAULT_SYNC_INTERVAL_MILLIS);
+        return options;
+    }
+
+    private static Message createMessage(int bodySize, int index)
+    {
+        byte[] body = new byte[bodySize];
+        body[0] = (byte) index;
+        Message message = new Message(body);
+        message.setMessageId("message" + index);
+        return message;
+    }
+
+    private int countSegmentFiles()
+    {
+        File[] files = directory.listFiles();
+        return files == null ? 0 : files.length;
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_001: [If the options are null, or if the disk quota is smaller than the segment size, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorNullOptionsThrows() throws IOException
+    {
+        // act
+        new PersistentMessageQueue(null);
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_001: [If the options are null, or if the disk quota is smaller than the segment size, the constructor shall throw an IllegalArgumentException.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorQuotaSmallerThanSegmentThrows() throws IOException
+    {
+        // arrange
+        PersistentQueueOptions options = createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE);
+        options.setDiskQuotaInBytes(SEGMENT_SIZE - 1);
+
+        // act
+        new PersistentMessageQueue(options);
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_006: [This function shall return the oldest record that is neither acknowledged nor read back yet.] */
+    @Test
+    public void appendAndPollKeepAllMessageFields() throws IOException
+    {
+        // arrange
+        Message message = new Message("telemetry".getBytes(StandardCharsets.UTF_8));
+        message.setMessageId("messageId");
+        message.setCorrelationId("correlationId");
+        message.setUserId("userId");
+        message.setContentTypeFinal("application/json");
+        message.setContentEncoding("utf-8");
+        message.setOutputName("output");
+        message.setConnectionDeviceId("device");
+        message.setConnectionModuleId("module");
+        message.setMessageType(MessageType.DEVICE_TELEMETRY);
+        message.setAbsoluteExpiryTime(1234567L);
+        message.setCreationTimeUTC(new Date(7654321L));
+        message.setProperty("key", "value");
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+
+        // act
+        long recordId = queue.append(message, false);
+        PersistentMessageQueue.PersistedMessage persistedMessage = queue.poll();
+
+        // assert
+        assertNotNull(persistedMessage);
+        assertEquals(recordId, persistedMessage.getRecordId());
+        Message readBack = persistedMessage.getMessage();
+        assertArrayEquals(message.getBytes(), readBack.getBytes());
+        assertEquals("messageId", readBack.getMessageId());
+        assertEquals("correlationId", readBack.getCorrelationId());
+        assertEquals("userId", readBack.getUserId());
+        assertEquals("application/json", readBack.getContentType());
+        assertEquals("utf-8", readBack.getContentEncoding());
+        assertEquals("output", readBack.getOutputName());
+        assertEquals("device", readBack.getConnectionDeviceId());
+        assertEquals("module", readBack.getConnectionModuleId());
+        assertEquals(MessageType.DEVICE_TELEMETRY, readBack.getMessageType());
+        assertEquals(1234567L, readBack.getExpiryTime());
+        assertEquals(new Date(7654321L), readBack.getCreationTimeUTC());
+        assertEquals("value", readBack.getProperty("key"));
+        assertNull(queue.poll());
+        assertEquals(1, queue.getPendingCount());
+        assertEquals(0, queue.getUnreadCount());
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_002: [The constructor shall scan the segments of the directory in order, counting the records that are not acknowledged, and delete the segments that have none.] */
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_003: [The records that are not acknowledged shall be read back by poll, from the oldest.] */
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_008: [This function shall set the state of the record to acknowledged.] */
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_014: [The wasAppendedBeforeOpen shall return true if the record was appended before the queue opened.] */
+    @Test
+    public void reopenReplaysMessagesThatWereNotAcknowledged() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.append(createMessage(10, 1), true);
+        long second = queue.append(createMessage(10, 2), false);
+        queue.append(createMessage(10, 3), false);
+        assertEquals(second, queue.poll().getRecordId());
+        queue.acknowledge(second);
+        queue.close();
+
+        // act
+        PersistentMessageQueue reopened = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+
+        // assert
+        assertEquals(2, reopened.getPendingCount());
+        assertEquals(2, reopened.getUnreadCount());
+        PersistentMessageQueue.PersistedMessage first = reopened.poll();
+        PersistentMessageQueue.PersistedMessage third = reopened.poll();
+        assertNull(reopened.poll());
+        assertEquals("message1", first.getMessage().getMessageId());
+        assertEquals("message3", third.getMessage().getMessageId());
+        assertTrue(reopened.wasAppendedBeforeOpen(first.getRecordId()));
+        assertFalse(reopened.wasAppendedBeforeOpen(reopened.append(createMessage(10, 4), false)));
+        reopened.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_002: [The constructor shall scan the segments of the directory in order, counting the records that are not acknowledged, and delete the segments that have none.] */
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_011: [The close shall flush the segments, whatever the sync mode, and delete the segments whose records are all acknowledged.] */
+    @Test
+    public void closeDeletesSegmentsThatAreAllAcknowledged() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.acknowledge(queue.append(createMessage(10, 1), true));
+        assertEquals(1, countSegmentFiles());
+
+        // act
+        queue.close();
+        queue.close();
+
+        // assert
+        assertEquals(0, countSegmentFiles());
+        PersistentMessageQueue reopened = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        assertEquals(0, reopened.getPendingCount());
+        assertNull(reopened.poll());
+        reopened.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_005: [If the record does not fit in the current segment, this function shall create a new segment of the configured size, or of the record size if bigger.] */
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_009: [Once all the records of a segment other than the current one are acknowledged, this function shall delete the segment.] */
+    @Test
+    public void appendRollsSegmentsAndAcknowledgeDeletesThem() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        long[] recordIds = new long[10];
+        for (int i = 0; i < recordIds.length; i++)
+        {
+            recordIds[i] = queue.append(createMessage(1000, i), true);
+        }
+        int segmentCount = queue.getSegmentCount();
+        int segmentFileCount = countSegmentFiles();
+
+        // act
+        for (long recordId : recordIds)
+        {
+            queue.acknowledge(recordId);
+        }
+
+        // assert
+        assertTrue(segmentCount >= 3);
+        assertEquals(segmentCount, segmentFileCount);
+        assertEquals(1, queue.getSegmentCount());
+        assertEquals(SEGMENT_SIZE, queue.getDiskUsageInBytes());
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+        assertEquals(0, countSegmentFiles());
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_005: [If the record does not fit in the current segment, this function shall create a new segment of the configured size, or of the record size if bigger.] */
+    @Test
+    public void appendRecordBiggerThanSegmentCreatesSegmentOfRecordSize() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+
+        // act
+        queue.append(createMessage(3 * SEGMENT_SIZE, 1), false);
+
+        // assert
+        assertTrue(queue.getDiskUsageInBytes() > 3 * SEGMENT_SIZE);
+        assertEquals(3 * SEGMENT_SIZE, queue.poll().getMessage().getBytes().length);
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_010: [If a new segment would exceed the disk quota, this function shall throw an IllegalStateException.] */
+    @Test
+    public void appendBeyondDiskQuotaThrowsUntilSpaceIsReclaimed() throws IOException
+    {
+        // arrange
+        PersistentQueueOptions options = createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE);
+        options.setDiskQuotaInBytes(2 * SEGMENT_SIZE);
+        PersistentMessageQueue queue = new PersistentMessageQueue(options);
+        long first = queue.append(createMessage(3000, 1), true);
+        queue.append(createMessage(3000, 2), true);
+
+        // act
+        try
+        {
+            queue.append(createMessage(3000, 3), true);
+            fail("The disk quota should have been enforced");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        queue.acknowledge(first);
+        queue.append(createMessage(3000, 3), true);
+
+        // assert
+        assertEquals(2, queue.getPendingCount());
+        assertEquals(2 * SEGMENT_SIZE, queue.getDiskUsageInBytes());
+        queue.close();
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void appendInMemoryWhileMessagesAreUnreadThrows() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.append(createMessage(10, 1), false);
+
+        // act
+        queue.append(createMessage(10, 2), true);
+    }
+
+    @Test
+    public void appendInMemoryIsNotReadBack() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.append(createMessage(10, 1), true);
+        queue.append(createMessage(10, 2), false);
+
+        // act
+        PersistentMessageQueue.PersistedMessage persistedMessage = queue.poll();
+
+        // assert
+        assertEquals("message2", persistedMessage.getMessage().getMessageId());
+        assertNull(queue.poll());
+        assertEquals(2, queue.getPendingCount());
+        queue.close();
+    }
+
+    @Test (expected = IllegalStateException.class)
+    public void appendAfterCloseThrows() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.close();
+
+        // act
+        queue.append(createMessage(10, 1), false);
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_004: [This function shall write the record content, CRC32 and state before its length, so that a record torn by a crash is ignored.] */
+    @Test
+    public void reopenIgnoresTornRecord() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        queue.append(createMessage(10, 1), false);
+        long torn = queue.append(createMessage(10, 2), false);
+        queue.close();
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile segment = new RandomAccessFile(files[0], "rw"))
+        {
+            segment.seek((int) torn + HEADER_SIZE + 1);
+            segment.write(0x7F);
+        }
+
+        // act
+        PersistentMessageQueue reopened = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+
+        // assert
+        assertEquals(1, reopened.getPendingCount());
+        assertEquals("message1", reopened.poll().getMessage().getMessageId());
+        assertNull(reopened.poll());
+        reopened.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_007: [If a record cannot be read back as a message, this function shall acknowledge it and move to the next one.] */
+    @Test
+    public void pollAcknowledgesRecordThatCannotBeReadBack() throws IOException
+    {
+        // arrange
+        byte[] payload = new byte[] {42};
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put((byte) 0).put(payload);
+        assertTrue(directory.mkdirs());
+        try (RandomAccessFile segment = new RandomAccessFile(new File(directory, "00000000000000000000.seg"), "rw"))
+        {
+            segment.setLength(SEGMENT_SIZE);
+            segment.write(record.array());
+        }
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        assertEquals(1, queue.getPendingCount());
+
+        // act
+        PersistentMessageQueue.PersistedMessage persistedMessage = queue.poll();
+
+        // assert
+        assertNull(persistedMessage);
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+        assertEquals(0, countSegmentFiles());
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_012: [In the EVERY_WRITE sync mode, every append and acknowledge shall flush the changed segments.] */
+    @Test
+    public void everyWriteSyncModeFlushesEachAppendAndAcknowledge() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.EVERY_WRITE));
+
+        // act
+        for (int i = 0; i < 1000; i++)
+        {
+            queue.acknowledge(queue.append(createMessage(100, i), true));
+        }
+
+        // assert
+        assertEquals(2000, queue.getSyncCount());
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_013: [In the PERIODIC sync mode, an append or acknowledge shall flush the changed segments if the last flush is older than the sync interval.] */
+    @Test
+    public void periodicSyncModeFlushesOncePerInterval() throws IOException, InterruptedException
+    {
+        // arrange
+        PersistentQueueOptions options = createOptions(PersistentQueueOptions.SyncMode.PERIODIC);
+        options.setSyncMode(PersistentQueueOptions.SyncMode.PERIODIC, 1);
+        PersistentMessageQueue queue = new PersistentMessageQueue(options);
+        Thread.sleep(5);
+
+        // act
+        queue.append(createMessage(100, 1), true);
+        long afterInterval = queue.getSyncCount();
+        options.setSyncMode(PersistentQueueOptions.SyncMode.PERIODIC, 60 * 60 * 1000);
+        for (int i = 0; i < 1000; i++)
+        {
+            queue.acknowledge(queue.append(createMessage(100, i), true));
+        }
+
+        // assert
+        assertEquals(1, afterInterval);
+        assertEquals(1, queue.getSyncCount());
+        queue.close();
+        assertEquals(2, queue.getSyncCount());
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_011: [The close shall flush the segments, whatever the sync mode, and delete the segments whose records are all acknowledged.] */
+    @Test
+    public void onCloseSyncModeOnlyFlushesChangedSegmentsOnSyncAndClose() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        for (int i = 0; i < 1000; i++)
+        {
+            queue.append(createMessage(100, i), false);
+        }
+        long beforeSync = queue.getSyncCount();
+
+        // act
+        queue.sync();
+        queue.sync();
+        long afterSync = queue.getSyncCount();
+        queue.append(createMessage(100, 1000), false);
+        queue.close();
+
+        // assert
+        assertEquals(0, beforeSync);
+        assertEquals(1, afterSync);
+        assertEquals(2, queue.getSyncCount());
+        PersistentMessageQueue reopened = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        assertEquals(1001, reopened.getPendingCount());
+        reopened.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_015: [The records released with release shall be read back again by poll, from the oldest, before the records that were not read back yet.] */
+    @Test
+    public void releaseMakesPollReadTheRecordsAgainBeforeTheUnreadOnes() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        for (int i = 0; i < 3; i++)
+        {
+            queue.append(createMessage(10, i), false);
+        }
+        long first = queue.poll().getRecordId();
+        long second = queue.poll().getRecordId();
+
+        // act
+        queue.release(second);
+        queue.release(first);
+        queue.release(first);
+
+        // assert
+        assertEquals(3, queue.getUnreadCount());
+        assertEquals(first, queue.poll().getRecordId());
+        assertEquals(second, queue.poll().getRecordId());
+        assertEquals("message2", queue.poll().getMessage().getMessageId());
+        assertNull(queue.poll());
+        assertEquals(3, queue.getPendingCount());
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_015: [The records released with release shall be read back again by poll, from the oldest, before the records that were not read back yet.] */
+    @Test
+    public void releaseIgnoresRecordsThatAreUnreadOrAcknowledged() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        long acknowledged = queue.append(createMessage(10, 1), true);
+        queue.acknowledge(acknowledged);
+        long unread = queue.append(createMessage(10, 2), false);
+
+        // act
+        queue.release(acknowledged);
+        queue.release(unread);
+
+        // assert
+        assertEquals(1, queue.getUnreadCount());
+        assertEquals(unread, queue.poll().getRecordId());
+        assertNull(queue.poll());
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_015: [The records released with release shall be read back again by poll, from the oldest, before the records that were not read back yet.] */
+    @Test
+    public void acknowledgeReleasedRecordLetsItsSegmentBeDeleted() throws IOException
+    {
+        // arrange
+        PersistentMessageQueue queue = new PersistentMessageQueue(createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE));
+        long released = queue.append(createMessage(3000, 1), true);
+        queue.append(createMessage(3000, 2), true);
+        queue.release(released);
+
+        // act
+        queue.acknowledge(released);
+
+        // assert
+        assertEquals(0, queue.getUnreadCount());
+        assertNull(queue.poll());
+        assertEquals(1, queue.getSegmentCount());
+        assertEquals(SEGMENT_SIZE, queue.getDiskUsageInBytes());
+        queue.close();
+    }
+
+    /* Tests_SRS_PERSISTENTMESSAGEQUEUE_34_016: [A segment file that cannot be deleted shall count in the disk usage until an attempt to delete it, made again before each new segment is created, succeeds.] */
+    @Test
+    public void segmentThatCannotBeDeletedCountsInDiskUsageUntilItIsDeleted() throws IOException
+    {
+        // arrange
+        PersistentQueueOptions options = createOptions(PersistentQueueOptions.SyncMode.ON_CLOSE);
+        options.setDiskQuotaInBytes(2 * SEGMENT_SIZE);
+        PersistentMessageQueue queue = new PersistentMessageQueue(options);
+        long first = queue.append(createMessage(3000, 1), true);
+        queue.append(createMessage(3000, 2), true);
+
+        // a directory that is not empty stands for a segment file the system cannot delete yet
+        File firstSegment = new File(directory, String.format("%020d.seg", 0));
+        assertTrue(firstSegment.delete());
+        assertTrue(firstSegment.mkdir());
+        File blocker = new File(firstSegment, "blocker");
+        assertTrue(blocker.createNewFile());
+
+        // act
+        queue.acknowledge(first);
+        long usageWhileUndeleted = queue.getDiskUsageInBytes();
+        try
+        {
+            queue.append(createMessage(3000, 3), true);
+            fail("The segment that could not be deleted should still count in the disk quota");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        assertTrue(blocker.delete());
+        queue.append(createMessage(3000, 3), true);
+
+        // assert
+        assertEquals(2 * SEGMENT_SIZE, usageWhileUndeleted);
+        assertEquals(2, queue.getSegmentCount());
+        assertFalse(firstSegment.exists());
+        assertEquals(2 * SEGMENT_SIZE, queue.getDiskUsageInBytes());
+        queue.close();
+    }
+}
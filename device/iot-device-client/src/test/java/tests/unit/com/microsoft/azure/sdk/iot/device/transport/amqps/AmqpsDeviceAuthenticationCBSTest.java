@@ -137,6 +137,28 @@ public class AmqpsDeviceAuthenticationCBSTest
         };
     }
 
+    // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_052: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the authentication messages with it otherwise.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfMessageEncoderIsNull()
+    {
+        //act
+        new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig, null);
+    }
+
+    // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_052: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the authentication messages with it otherwise.]
+    @Test
+    public void constructorSavesMessageEncoder()
+    {
+        //arrange
+        AmqpsMessageEncoder messageEncoder = new AmqpsMessageEncoder();
+
+        //act
+        AmqpsDeviceAuthenticationCBS actual = new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig, messageEncoder);
+
+        //assert
+        assertEquals(messageEncoder, Deencapsulation.getField(actual, "messageEncoder"));
+    }
+
     // Tests_SRS_AMQPSDEVICEAUTHENTICATIONCBS_34_050: [This constructor shall call super with the provided user agent string.]
     @Test
     public void constructorCallsSuperWithConfigUserAgentString()
@@ -517,6 +517,57 @@ public class AmqpsIotHubConnectionTest {
         };
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_094: [If the device id is the id of the device this connection was created for, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void removeDeviceOperationSessionThrowsForOwnerDevice() throws TransportException
+    {
+        // arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+
+        // act
+        connection.removeDeviceOperationSession(deviceId);
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_095: [If the connection has not been opened, this function shall return false.]
+    @Test
+    public void removeDeviceOperationSessionReturnsFalseIfNotOpened() throws TransportException
+    {
+        // arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+
+        // act
+        boolean removed = connection.removeDeviceOperationSession("someOtherDevice");
+
+        // assert
+        assertFalse(removed);
+    }
+
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_096: [This function shall call AmqpsSessionManager.removeDeviceOperationSession with the given device id and return its result.]
+    @Test
+    public void removeDeviceOperationSessionDelegatesToSessionManager() throws TransportException
+    {
+        // arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        Deencapsulation.setField(connection, "amqpsSessionManager", mockAmqpsSessionManager);
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionManager, "removeDeviceOperationSession", "someOtherDevice");
+                result = true;
+            }
+        };
+
+        // act
+        boolean removed = connection.removeDeviceOperationSession("someOtherDevice");
+
+        // assert
+        assertTrue(removed);
+    }
+
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_057: [The function shall call the connection to authenticate.]
     // Tests_SRS_AMQPSIOTHUBCONNECTION_12_058: [The function shall call the connection to open device client links.]
     @Test
@@ -538,7 +589,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 mockLatch.await(anyLong, TimeUnit.MILLISECONDS);
@@ -594,7 +645,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 mockLatch.await(anyLong, TimeUnit.MILLISECONDS);
@@ -658,7 +709,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 Deencapsulation.invoke(mockAmqpsSessionManager, "isAuthenticationOpened");
@@ -713,7 +764,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 mockLatch.await(anyLong, TimeUnit.MILLISECONDS);
@@ -2127,6 +2178,68 @@ public class AmqpsIotHubConnectionTest {
         assertEquals("scheduleReconnection", methodsCalled.toString());
     }
 
+    //Tests_SRS_AMQPSIOTHUBCONNECTION_34_100: [If the config has a client thread pool, this function shall run the reconnection task on a dedicated thread of that pool.]
+    @Test
+    public void scheduleReconnectionRunsOnDedicatedThreadOfClientThreadPool(@Mocked final ClientThreadPool mockedClientThreadPool) throws TransportException
+    {
+        //arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        connection.setListener(mockedIotHubListener);
+        Deencapsulation.setField(connection, "scheduledExecutorService", mockScheduledExecutorService);
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getClientThreadPool();
+                result = mockedClientThreadPool;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(connection, "scheduleReconnection", new Class[] {Throwable.class}, new IOException());
+        Deencapsulation.invoke(connection, "scheduleReconnection", new Class[] {Throwable.class}, new IOException());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedClientThreadPool.executeBlocking((Runnable) any);
+                times = 1;
+                mockScheduledExecutorService.schedule((Callable) any, anyLong, (TimeUnit) any);
+                times = 0;
+            }
+        };
+    }
+
+    @Test
+    public void scheduleReconnectionRunsOnSchedulerWithoutClientThreadPool() throws TransportException
+    {
+        //arrange
+        baseExpectations();
+        final AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        connection.setListener(mockedIotHubListener);
+        Deencapsulation.setField(connection, "scheduledExecutorService", mockScheduledExecutorService);
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getClientThreadPool();
+                result = null;
+            }
+        };
+
+        //act
+        Deencapsulation.invoke(connection, "scheduleReconnection", new Class[] {Throwable.class}, new IOException());
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockScheduledExecutorService.schedule((Callable) any, 0, TimeUnit.MILLISECONDS);
+                times = 1;
+            }
+        };
+    }
+
     //Tests_SRS_AMQPSIOTHUBCONNECTION_34_089: [If an amqp message can be received from the receiver link, and that amqp message contains a status code that is not 200 or 204, this function shall notify this object's listeners that that message was received and provide the status code's mapped exception.]
     @Test
     public void onDeliveryNotifiesListenerOfErrorCodes() throws TransportException
@@ -2332,7 +2445,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 mockLatch.await(anyLong, TimeUnit.MILLISECONDS);
@@ -2378,7 +2491,7 @@ public class AmqpsIotHubConnectionTest {
                 new CountDownLatch(anyInt);
                 result = mockLatch;
 
-                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any);
+                new AmqpsSessionManager(mockConfig, (ScheduledExecutorService)any, (AmqpsMessageEncoder)any);
                 result = mockAmqpsSessionManager;
 
                 mockLatch.await(anyLong, TimeUnit.MILLISECONDS);
@@ -2554,6 +2667,29 @@ public class AmqpsIotHubConnectionTest {
         Assert.assertEquals(expectedConnectionId, actualConnectionId);
     }
 
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_101: [This function shall return the number of messages encoded by the message encoder of this connection.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_102: [This function shall return the number of buffers allocated by the message encoder of this connection.]
+    // Tests_SRS_AMQPSIOTHUBCONNECTION_34_103: [This function shall return the number of bytes allocated by the message encoder of this connection.]
+    @Test
+    public void encoderMetricsGettersReturnMetricsOfConnectionEncoder() throws TransportException
+    {
+        //arrange
+        baseExpectations();
+        AmqpsIotHubConnection connection = new AmqpsIotHubConnection(mockConfig);
+        AmqpsMessageEncoder messageEncoder = Deencapsulation.getField(connection, "messageEncoder");
+        messageEncoder.encode(Proton.message(), 0);
+
+        //act
+        long encodeCount = connection.getMessageEncodeCount();
+        long bufferAllocationCount = connection.getEncodeBufferAllocationCount();
+        long allocatedBytes = connection.getEncodeBufferAllocatedBytes();
+
+        //assert
+        Assert.assertEquals(1, encodeCount);
+        Assert.assertEquals(messageEncoder.getBufferAllocationCount(), bufferAllocationCount);
+        Assert.assertEquals(messageEncoder.getAllocatedBytes(), allocatedBytes);
+    }
+
     // Tests_SRS_AMQPSIOTHUBCONNECTION_34_081: [If an exception can be found in the sender, this function shall return a the mapped amqp exception derived from that exception.]
     @Test
     public void getErrorFromEventOutOfSender(final @Mocked ErrorCondition mockedErrorCondition, @Mocked final AmqpConnectionFramingErrorException mockedAmqpConnectionFramingErrorException) throws TransportException
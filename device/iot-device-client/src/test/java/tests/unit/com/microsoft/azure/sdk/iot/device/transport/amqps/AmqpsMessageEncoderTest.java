@@ -0,0 +1,151 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.device.transport.amqps.AmqpsMessageEncoder;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.message.Message;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for AmqpsMessageEncoder.
+ */
+public class AmqpsMessageEncoderTest
+{
+    private static Message buildMessage(int bodySize)
+    {
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        Message message = Proton.message();
+        message.setBody(new Data(new Binary(body)));
+        return message;
+    }
+
+    private static byte[] decodeBody(byte[] buffer, int length)
+    {
+        Message decoded = Proton.message();
+        decoded.decode(buffer, 0, length);
+        return ((Data) decoded.getBody()).getValue().getArray();
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_001: [The constructor shall allocate a buffer of 1024 bytes.]
+    @Test
+    public void constructorAllocatesInitialBuffer()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+
+        assertEquals(1024, encoder.getBuffer().length);
+        assertEquals(1, encoder.getBufferAllocationCount());
+        assertEquals(1024, encoder.getAllocatedBytes());
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_002: [If the provided message is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void encodeThrowsForNullMessage()
+    {
+        new AmqpsMessageEncoder().encode(null, 0);
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_003: [If the estimated size is larger than the buffer, this function shall grow the buffer to the estimated size before encoding.]
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_004: [This function shall encode the message into the buffer and return the encoded length.]
+    @Test
+    public void encodeLargeMessageWithEstimateAllocatesOnce()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+        Message message = buildMessage(200 * 1024);
+
+        int length = encoder.encode(message, AmqpsMessageEncoder.estimateEncodedSize(message));
+
+        assertEquals(2, encoder.getBufferAllocationCount());
+        assertEquals(1, encoder.getEncodeCount());
+        assertArrayEquals(((Data) message.getBody()).getValue().getArray(), decodeBody(encoder.getBuffer(), length));
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_005: [If encode throws BufferOverflowException, this function shall double the buffer and encode again.]
+    @Test
+    public void encodeLargeMessageWithoutEstimateDoublesBuffer()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+        Message message = buildMessage(200 * 1024);
+
+        int length = encoder.encode(message, 0);
+
+        assertEquals(256 * 1024, encoder.getBuffer().length);
+        assertEquals(9, encoder.getBufferAllocationCount());
+        assertArrayEquals(((Data) message.getBody()).getValue().getArray(), decodeBody(encoder.getBuffer(), length));
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_003: [If the estimated size is larger than the buffer, this function shall grow the buffer to the estimated size before encoding.]
+    @Test
+    public void encodeKeepsBufferAtHighWaterMark()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+        Message largeMessage = buildMessage(64 * 1024);
+        Message smallMessage = buildMessage(10);
+        encoder.encode(largeMessage, AmqpsMessageEncoder.estimateEncodedSize(largeMessage));
+        long allocationsAfterFirstEncode = encoder.getBufferAllocationCount();
+        int bufferSize = encoder.getBuffer().length;
+
+        for (int i = 0; i < 100; i++)
+        {
+            encoder.encode(smallMessage, AmqpsMessageEncoder.estimateEncodedSize(smallMessage));
+            encoder.encode(largeMessage, AmqpsMessageEncoder.estimateEncodedSize(largeMessage));
+        }
+
+        assertEquals(allocationsAfterFirstEncode, encoder.getBufferAllocationCount());
+        assertEquals(bufferSize, encoder.getBuffer().length);
+        assertEquals(201, encoder.getEncodeCount());
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_007: [This function shall keep the grown buffer for the next messages only if it is not bigger than the largest message IoT Hub accepts plus its encoding overhead.]
+    @Test
+    public void encodeDoesNotRetainBufferOfOversizedMessage()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+        Message oversizedMessage = buildMessage(1024 * 1024);
+        Message smallMessage = buildMessage(10);
+
+        int length = encoder.encode(oversizedMessage, AmqpsMessageEncoder.estimateEncodedSize(oversizedMessage));
+
+        assertArrayEquals(((Data) oversizedMessage.getBody()).getValue().getArray(), decodeBody(encoder.getBuffer(), length));
+        assertEquals(1024, encoder.getRetainedBufferSize());
+
+        length = encoder.encode(smallMessage, AmqpsMessageEncoder.estimateEncodedSize(smallMessage));
+
+        assertEquals(encoder.getRetainedBufferSize(), encoder.getBuffer().length);
+        assertTrue(encoder.getBuffer().length < 2048);
+        assertArrayEquals(((Data) smallMessage.getBody()).getValue().getArray(), decodeBody(encoder.getBuffer(), length));
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_005: [If encode throws BufferOverflowException, this function shall double the buffer and encode again.]
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_007: [This function shall keep the grown buffer for the next messages only if it is not bigger than the largest message IoT Hub accepts plus its encoding overhead.]
+    @Test
+    public void encodeWithoutEstimateDoesNotRetainBufferOfOversizedMessage()
+    {
+        AmqpsMessageEncoder encoder = new AmqpsMessageEncoder();
+
+        encoder.encode(buildMessage(200 * 1024), 0);
+        encoder.encode(buildMessage(300 * 1024), 0);
+
+        assertEquals(512 * 1024, encoder.getBuffer().length);
+        assertEquals(256 * 1024, encoder.getRetainedBufferSize());
+    }
+
+    // Tests_SRS_AMQPSMESSAGEENCODER_34_006: [If the message has a binary body, this function shall return the body length plus room for the rest of the message, otherwise it shall return 0.]
+    @Test
+    public void estimateEncodedSizeUsesBodyLength()
+    {
+        assertTrue(AmqpsMessageEncoder.estimateEncodedSize(buildMessage(5000)) > 5000);
+        assertEquals(0, AmqpsMessageEncoder.estimateEncodedSize(Proton.message()));
+        assertEquals(0, AmqpsMessageEncoder.estimateEncodedSize(null));
+    }
+}
@@ -20,6 +20,7 @@ import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertFalse;
@@ -121,6 +122,29 @@ public class AmqpsSessionDeviceOperationTest
         new AmqpsSessionDeviceOperation(mockDeviceClientConfig, null);
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the messages of the device with it otherwise.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfMessageEncoderIsNull() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        // act
+        new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, null, null);
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall encode the messages of the device with it otherwise.]
+    @Test
+    public void constructorSavesMessageEncoder() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        AmqpsMessageEncoder messageEncoder = new AmqpsMessageEncoder();
+
+        // act
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication, null, messageEncoder);
+
+        // assert
+        assertEquals(messageEncoder, Deencapsulation.getField(amqpsSessionDeviceOperation, "messageEncoder"));
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_002: [The constructor shall save the deviceClientConfig and amqpsDeviceAuthentication parameter value to a member variable.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_003: [The constructor shall create AmqpsDeviceTelemetry, AmqpsDeviceMethods and AmqpsDeviceTwin and add them to the device operations list.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_047: [The constructor shall set the authentication state to authenticated if the authentication type is not CBS.]
@@ -213,6 +237,72 @@ public class AmqpsSessionDeviceOperationTest
         };
     }
 
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_34_064: [If a shared scheduler was provided, the constructor shall schedule the token renewal on it instead of creating a scheduler.]
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_34_065: [If the token renewal runs on a shared scheduler, close shall cancel the renewal without shutting down the shared scheduler.]
+    @Test
+    public void constructorWithSharedSchedulerSchedulesRenewalOnIt(@Mocked final ScheduledFuture mockScheduledFuture) throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final long tokenValidSecs = 3600;
+        final long expectedRenewalTimeMillisecs = 2700 * 1000;
+
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+                mockDeviceClientConfig.getSasTokenAuthentication();
+                result = mockIotHubSasTokenAuthenticationProvider;
+                mockIotHubSasTokenAuthenticationProvider.getTokenValidSecs();
+                result = tokenValidSecs;
+                new AmqpsDeviceAuthenticationCBSTokenRenewalTask((AmqpsSessionDeviceOperation)any);
+                result = mockAmqpsDeviceAuthenticationCBSTokenRenewalTask;
+                mockScheduledExecutorService.scheduleAtFixedRate(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
+                result = mockScheduledFuture;
+            }
+        };
+
+        // act
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, mockScheduledExecutorService);
+        amqpsSessionDeviceOperation.close();
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockExecutors.newScheduledThreadPool(anyInt);
+                times = 0;
+                mockScheduledExecutorService.scheduleAtFixedRate(mockAmqpsDeviceAuthenticationCBSTokenRenewalTask, 0, expectedRenewalTimeMillisecs, TimeUnit.MILLISECONDS);
+                times = 1;
+                mockScheduledFuture.cancel(false);
+                times = 1;
+                mockScheduledExecutorService.shutdown();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONDEVICEOPERATION_34_066: [The function shall return the device id from the saved device client config.]
+    @Test
+    public void getDeviceIdReturnsDeviceIdFromConfig() throws IllegalArgumentException
+    {
+        // arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getDeviceId();
+                result = "someDevice";
+            }
+        };
+        AmqpsSessionDeviceOperation amqpsSessionDeviceOperation = new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthentication);
+
+        // act
+        String deviceId = Deencapsulation.invoke(amqpsSessionDeviceOperation, "getDeviceId");
+
+        // assert
+        assertEquals("someDevice", deviceId);
+    }
+
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_058: [The function shall shut down the executor threads.]
     // Tests_SRS_AMQPSESSIONDEVICEOPERATION_12_059: [The function shall close the operation links.]
     @Test
@@ -9,6 +9,7 @@ import org.junit.Test;
 
 import javax.net.ssl.SSLContext;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -94,6 +95,44 @@ public class AmqpsSessionManagerTest
         new AmqpsSessionManager(mockDeviceClientConfig, null);
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall give it to the CBS authentication and to every device session otherwise.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsIfMessageEncoderIsNull() throws IllegalArgumentException, TransportException
+    {
+        // act
+        new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService, null);
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_34_051: [The constructor shall throw IllegalArgumentException if the messageEncoder is null, and shall give it to the CBS authentication and to every device session otherwise.]
+    @Test
+    public void constructorSharesMessageEncoderWithAuthenticationAndSessions() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final AmqpsMessageEncoder messageEncoder = new AmqpsMessageEncoder();
+        new NonStrictExpectations()
+        {
+            {
+                mockDeviceClientConfig.getAuthenticationType();
+                result = DeviceClientConfig.AuthType.SAS_TOKEN;
+            }
+        };
+
+        // act
+        AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService, messageEncoder);
+        Deencapsulation.invoke(amqpsSessionManager, "addDeviceOperationSession", mockDeviceClientConfig);
+
+        // assert
+        new Verifications()
+        {
+            {
+                new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig, messageEncoder);
+                times = 1;
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, (AmqpsDeviceAuthentication) any, mockScheduledExecutorService, messageEncoder);
+                times = 2;
+            }
+        };
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_002: [The constructor shall save the deviceClientConfig parameter value to a member variable.]
     @Test
     public void constructorSavesDeviceClientConfig() throws IllegalArgumentException, TransportException
@@ -118,7 +157,7 @@ public class AmqpsSessionManagerTest
         AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService);
 
         // assert
-        ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        List<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
         assertEquals(actualList.size(), 1);
     }
 
@@ -136,7 +175,7 @@ public class AmqpsSessionManagerTest
         AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService);
 
         // assert
-        ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        List<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
         assertEquals(actualList.size(), 1);
 
         new Verifications()
@@ -160,18 +199,119 @@ public class AmqpsSessionManagerTest
         Deencapsulation.invoke(amqpsSessionManager, "addDeviceOperationSession", mockDeviceClientConfig);
 
         // assert
-        ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        List<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
         assertEquals(actualList.size(), 2);
 
         new Verifications()
         {
             {
-                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS);
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, mockScheduledExecutorService, (AmqpsMessageEncoder) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_34_046: [The constructor shall save the scheduledExecutorService and use it for all the scheduled tasks of this object and of its device sessions.]
+    // Tests_SRS_AMQPSESSIONMANAGER_34_047: [If the session is open and authenticated, the function shall authenticate the new device session and open its links.]
+    @Test
+    public void addDeviceOperationSessionOpensLinksOnOpenSession() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        baseExpectationsSAS();
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService);
+        Deencapsulation.setField(amqpsSessionManager, "session", mockSession);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsDeviceAuthenticationCBS, "operationLinksOpened");
+                result = true;
+            }
+        };
+
+        // act
+        Deencapsulation.invoke(amqpsSessionManager, "addDeviceOperationSession", mockDeviceClientConfig);
+
+        // assert
+        List<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        assertEquals(2, actualList.size());
+
+        new Verifications()
+        {
+            {
+                mockAmqpsSessionDeviceOperation.authenticate();
+                times = 1;
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "openLinks", mockSession);
                 times = 1;
             }
         };
     }
 
+    // Tests_SRS_AMQPSESSIONMANAGER_34_048: [The function shall close the device session with the given device id and remove it from the session list.]
+    // Tests_SRS_AMQPSESSIONMANAGER_34_050: [The function shall return the size of the session list.]
+    @Test
+    public void removeDeviceOperationSessionClosesAndRemovesDevice() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService);
+        List<AmqpsSessionDeviceOperation> sessionList = new ArrayList<>();
+        sessionList.add(mockAmqpsSessionDeviceOperation);
+        sessionList.add(mockAmqpsSessionDeviceOperation1);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "getDeviceId");
+                result = "device1";
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "getDeviceId");
+                result = "device2";
+            }
+        };
+
+        // act
+        boolean removed = Deencapsulation.invoke(amqpsSessionManager, "removeDeviceOperationSession", "device2");
+
+        // assert
+        assertTrue(removed);
+        assertEquals(1, (int) Deencapsulation.invoke(amqpsSessionManager, "getDeviceOperationSessionCount"));
+        new Verifications()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "close");
+                times = 0;
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation1, "close");
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_AMQPSESSIONMANAGER_34_049: [If no device session has the given device id, the function shall return false.]
+    @Test
+    public void removeDeviceOperationSessionReturnsFalseForUnknownDevice() throws IllegalArgumentException, TransportException
+    {
+        // arrange
+        final AmqpsSessionManager amqpsSessionManager = new AmqpsSessionManager(mockDeviceClientConfig, mockScheduledExecutorService);
+        List<AmqpsSessionDeviceOperation> sessionList = new ArrayList<>();
+        sessionList.add(mockAmqpsSessionDeviceOperation);
+        Deencapsulation.setField(amqpsSessionManager, "amqpsDeviceSessionList", sessionList);
+
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(mockAmqpsSessionDeviceOperation, "getDeviceId");
+                result = "device1";
+            }
+        };
+
+        // act
+        boolean removed = Deencapsulation.invoke(amqpsSessionManager, "removeDeviceOperationSession", "unknownDevice");
+
+        // assert
+        assertFalse(removed);
+        assertEquals(1, (int) Deencapsulation.invoke(amqpsSessionManager, "getDeviceOperationSessionCount"));
+    }
+
     // Tests_SRS_AMQPSESSIONMANAGER_12_010: [The function shall call all device session to closeNow links.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_011: [The function shall closeNow the authentication links.]
     // Tests_SRS_AMQPSESSIONMANAGER_12_012: [The function shall closeNow the session.]
@@ -203,7 +343,7 @@ public class AmqpsSessionManagerTest
         Deencapsulation.invoke(amqpsSessionManager, "closeNow");
 
         // assert
-        ArrayList<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
+        List<AmqpsSessionDeviceOperation> actualList =  Deencapsulation.getField(amqpsSessionManager, "amqpsDeviceSessionList");
         assertEquals(2, actualList.size());
         Session actualSession =  Deencapsulation.getField(amqpsSessionManager, "session");
         assertNull(actualSession);
@@ -1163,9 +1303,9 @@ public class AmqpsSessionManagerTest
             {
                 mockDeviceClientConfig.getAuthenticationType();
                 result = DeviceClientConfig.AuthType.SAS_TOKEN;
-                new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig);
+                new AmqpsDeviceAuthenticationCBS(mockDeviceClientConfig, (AmqpsMessageEncoder) any);
                 result = mockAmqpsDeviceAuthenticationCBS;
-                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS);
+                new AmqpsSessionDeviceOperation(mockDeviceClientConfig, mockAmqpsDeviceAuthenticationCBS, mockScheduledExecutorService, (AmqpsMessageEncoder) any);
                 result = mockAmqpsSessionDeviceOperation;
             }
         };
@@ -342,4 +342,75 @@ public class HttpsBatchMessageTest
 
         assertThat(httpsBatchMessageSizeLimitVerified, is(true));
     }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_002: [The function shall add the message as a JSON object appended to the current JSON array.]
+    // Tests_SRS_HTTPSBATCHMESSAGE_34_014: [The function shall return the size of the batch body in bytes, including the brackets of the JSON array.]
+    @Test
+    public void addManyMessagesBuildsValidJsonArray(@Mocked final HttpsSingleMessage mockMsg) throws IotHubSizeExceededException
+    {
+        final String msgBody = "test-msg-body";
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                result = msgBody.getBytes();
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        for (int i = 0; i < 500; i++)
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+
+        byte[] body = batchMsg.getBody();
+        String testBatchBody = new String(body, UTF8);
+        final String expectedMsg = "{\"body\":\"" + Base64.encodeBase64StringLocal(msgBody.getBytes()) + "\",\"base64Encoded\":true}";
+        StringBuilder expectedBatchBody = new StringBuilder("[");
+        for (int i = 0; i < 500; i++)
+        {
+            if (i > 0)
+            {
+                expectedBatchBody.append(",");
+            }
+
+            expectedBatchBody.append(expectedMsg);
+        }
+
+        expectedBatchBody.append("]");
+        assertThat(testBatchBody, is(expectedBatchBody.toString()));
+        assertThat(batchMsg.getBodySize(), is(body.length));
+        assertThat(batchMsg.numMessages(), is(500));
+    }
+
+    // Tests_SRS_HTTPSBATCHMESSAGE_11_009: [If the function throws a IotHubSizeExceededException, the batched message shall remain as if the message was never added.]
+    @Test
+    public void addMessageThatExceedsLimitLeavesBatchUnchanged(@Mocked final HttpsSingleMessage mockMsg) throws IotHubSizeExceededException
+    {
+        final byte[] smallBody = new byte[10];
+        final byte[] largeBody = new byte[255 * 1024];
+        new NonStrictExpectations()
+        {
+            {
+                mockMsg.getBody();
+                returns(smallBody, largeBody);
+            }
+        };
+
+        HttpsBatchMessage batchMsg = new HttpsBatchMessage();
+        batchMsg.addMessage(mockMsg);
+        byte[] expectedBody = batchMsg.getBody();
+
+        try
+        {
+            batchMsg.addMessage(mockMsg);
+        }
+        catch (IotHubSizeExceededException e)
+        {
+            // expected
+        }
+
+        assertThat(new String(batchMsg.getBody(), UTF8), is(new String(expectedBody, UTF8)));
+        assertThat(batchMsg.numMessages(), is(1));
+    }
 }
@@ -21,6 +21,7 @@ import org.junit.Test;
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -2015,6 +2016,133 @@ public class HttpsIotHubConnectionTest
         };
     }
 
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_34_076: [The function shall send a POST request to the same URL as sendMessage, with the batch body as the request body.]
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_34_077: [The function shall set the header field 'iothub-to' to be '/devices/[deviceId]/messages/events' and the header field 'content-type' to be the batch content type.]
+    @Test
+    public void sendBatchMessageSendsOnePostWithTheBatch(final @Mocked IotHubEventUri mockUri,
+                                                         final @Mocked HttpsBatchMessage mockBatch) throws TransportException, IOException
+    {
+        //arrange
+        final String iotHubHostname = "test.iothub";
+        final String deviceId = "test-device-id";
+        final String eventUri = "test-event-uri";
+        final String eventPath = "/devices/test-device-id/messages/events";
+        final byte[] batchBody = "[{}]".getBytes();
+        final String batchContentType = "application/vnd.microsoft.iothub.json";
+        new NonStrictExpectations()
+        {
+            {
+                mockConfig.getIotHubHostname();
+                result = iotHubHostname;
+                mockConfig.getDeviceId();
+                result = deviceId;
+                new IotHubEventUri(iotHubHostname, deviceId, null);
+                result = mockUri;
+                mockUri.toString();
+                result = eventUri;
+                mockUri.getPath();
+                result = eventPath;
+                mockBatch.getBody();
+                result = batchBody;
+                mockBatch.getContentType();
+                result = batchContentType;
+                mockRequest.send();
+                result = mockResponse;
+                mockResponse.getStatus();
+                result = 204;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.setListener(mockedListener);
+
+        //act
+        IotHubStatusCode status = conn.sendBatchMessage(mockBatch, Arrays.asList(mockedMessage, mockedMessage));
+
+        //assert
+        assertEquals(IotHubStatusCode.OK_EMPTY, status);
+        new Verifications()
+        {
+            {
+                new URL("https://" + eventUri);
+                times = 1;
+                new HttpsRequest((URL) any, HttpsMethod.POST, batchBody, anyString);
+                times = 1;
+                mockRequest.setHeaderField("iothub-to", eventPath);
+                times = 1;
+                mockRequest.setHeaderField("content-type", batchContentType);
+                times = 1;
+                mockRequest.send();
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_34_078: [The function shall notify its listener that each message of the batch was sent, with no exception if the response from the service is OK or OK_EMPTY, and with the mapped IotHubServiceException otherwise.]
+    @Test
+    public void sendBatchMessageNotifiesListenerForEachMessage(final @Mocked IotHubEventUri mockUri,
+                                                               final @Mocked HttpsBatchMessage mockBatch) throws TransportException, IOException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.send();
+                result = mockResponse;
+                mockResponse.getStatus();
+                result = 204;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.setListener(mockedListener);
+
+        //act
+        conn.sendBatchMessage(mockBatch, Arrays.asList(mockedMessage, mockedMessage, mockedMessage));
+
+        //assert
+        new Verifications()
+        {
+            {
+                mockedListener.onMessageSent(mockedMessage, null);
+                times = 3;
+            }
+        };
+    }
+
+    //Tests_SRS_HTTPSIOTHUBCONNECTION_34_078: [The function shall notify its listener that each message of the batch was sent, with no exception if the response from the service is OK or OK_EMPTY, and with the mapped IotHubServiceException otherwise.]
+    @Test
+    public void sendBatchMessageNotifiesListenerOfIotHubServiceExceptionForEachMessage(final @Mocked IotHubEventUri mockUri,
+                                                                                       final @Mocked HttpsBatchMessage mockBatch) throws TransportException, IOException
+    {
+        //arrange
+        new NonStrictExpectations()
+        {
+            {
+                mockRequest.send();
+                result = mockResponse;
+                mockResponse.getStatus();
+                result = 429;
+            }
+        };
+
+        HttpsIotHubConnection conn = new HttpsIotHubConnection(mockConfig);
+        conn.setListener(mockedListener);
+
+        //act
+        IotHubStatusCode status = conn.sendBatchMessage(mockBatch, Arrays.asList(mockedMessage, mockedMessage));
+
+        //assert
+        assertEquals(IotHubStatusCode.THROTTLED, status);
+        new Verifications()
+        {
+            {
+                mockedListener.onMessageSent(mockedMessage, (IotHubServiceException) any);
+                times = 2;
+            }
+        };
+    }
+
     //Tests_SRS_HTTPSIOTHUBCONNECTION_34_071: [This function shall return the empty string.]
     @Test
     public void getConnectionIdReturnsEmptyString()
@@ -0,0 +1,115 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See LICENSE file in the project root for full license information.
+
+package tests.unit.com.microsoft.azure.sdk.iot.device.transport.mqtt;
+
+import com.microsoft.azure.sdk.iot.device.transport.mqtt.MqttInFlightWindow;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MqttInFlightWindow.
+ */
+public class MqttInFlightWindowTest
+{
+    private static boolean tryAcquire(MqttInFlightWindow window, long timeoutMilliseconds)
+    {
+        return Deencapsulation.invoke(window, "tryAcquire", timeoutMilliseconds);
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_001: [If the provided max in flight count is less than 1, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroMaxInFlightCount()
+    {
+        new MqttInFlightWindow(0);
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_002: [The constructor shall save the provided max in flight count.]
+    @Test
+    public void constructorSavesMaxInFlightCount()
+    {
+        MqttInFlightWindow window = new MqttInFlightWindow(5);
+
+        assertEquals(5, window.getMaxInFlightCount());
+        assertEquals(0, window.getInFlightCount());
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_003: [If the window is full, this function shall wait until a slot is released or the timeout elapses.]
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_004: [If the timeout elapses before a slot is released, this function shall return false.]
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_005: [This function shall take a slot, record how long it waited for it, and return true.]
+    @Test
+    public void tryAcquireReturnsFalseWhenWindowStaysFull()
+    {
+        MqttInFlightWindow window = new MqttInFlightWindow(2);
+
+        assertTrue(tryAcquire(window, 0));
+        assertTrue(tryAcquire(window, 0));
+        assertFalse(tryAcquire(window, 10));
+
+        assertEquals(2, window.getInFlightCount());
+        assertEquals(2, window.getPeakInFlightCount());
+        assertEquals(1, window.getFullWindowCount());
+        assertEquals(2, window.getWaitLatencyHistogram().getCount());
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_006: [If a slot is taken, this function shall release it and wake up the threads waiting for a slot.]
+    @Test
+    public void releaseWakesWaitingThread() throws InterruptedException
+    {
+        final MqttInFlightWindow window = new MqttInFlightWindow(1);
+        assertTrue(tryAcquire(window, 0));
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final AtomicBoolean result = new AtomicBoolean();
+        Thread waiter = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                result.set(tryAcquire(window, 10000));
+                acquired.countDown();
+            }
+        });
+        waiter.start();
+
+        Deencapsulation.invoke(window, "release");
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        assertTrue(result.get());
+        assertEquals(1, window.getInFlightCount());
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_006: [If a slot is taken, this function shall release it and wake up the threads waiting for a slot.]
+    @Test
+    public void releaseDoesNotGoBelowZero()
+    {
+        MqttInFlightWindow window = new MqttInFlightWindow(1);
+
+        Deencapsulation.invoke(window, "release");
+
+        assertEquals(0, window.getInFlightCount());
+        assertTrue(tryAcquire(window, 0));
+        assertFalse(tryAcquire(window, 0));
+    }
+
+    //Tests_SRS_MQTTINFLIGHTWINDOW_34_007: [This function shall release every slot and wake up the threads waiting for a slot.]
+    @Test
+    public void resetReleasesAllSlotsAndKeepsPeak()
+    {
+        MqttInFlightWindow window = new MqttInFlightWindow(3);
+        tryAcquire(window, 0);
+        tryAcquire(window, 0);
+        tryAcquire(window, 0);
+
+        Deencapsulation.invoke(window, "reset");
+
+        assertEquals(0, window.getInFlightCount());
+        assertEquals(3, window.getPeakInFlightCount());
+        assertTrue(tryAcquire(window, 0));
+    }
+}
@@ -108,6 +108,9 @@ public class MqttIotHubConnectionTest
     @Mocked
     private ScheduledExecutorService mockedScheduledExecutorService;
 
+    @Mocked
+    private MqttInFlightWindow mockedInFlightWindow;
+
     // Tests_SRS_MQTTIOTHUBCONNECTION_15_001: [The constructor shall save the configuration.]
     @Test
     public void constructorSavesCorrectConfigAndListener() throws IOException, TransportException
@@ -441,6 +444,9 @@ public class MqttIotHubConnectionTest
                 result = expectedToken;
                 new MqttMessaging(mockedMqttConnection, anyString, (IotHubListener) any, null, null, anyString, anyBoolean);
                 result = mockDeviceMessaging;
+                mockConfig.getMqttInFlightWindow();
+                result = mockedInFlightWindow;
+                Deencapsulation.invoke(mockedMqttConnection, "setInFlightWindow", mockedInFlightWindow);
                 Deencapsulation.invoke(mockedMqttConnection, "setMqttCallback", mockDeviceMessaging);
                 result = null;
                 new MqttDeviceMethod(mockedMqttConnection, anyString);
@@ -497,6 +503,9 @@ public class MqttIotHubConnectionTest
                 result = expectedToken;
                 new MqttMessaging(mockedMqttConnection, anyString, (IotHubListener) any, null, null, anyString, anyBoolean);
                 result = mockDeviceMessaging;
+                mockConfig.getMqttInFlightWindow();
+                result = mockedInFlightWindow;
+                Deencapsulation.invoke(mockedMqttConnection, "setInFlightWindow", mockedInFlightWindow);
                 Deencapsulation.invoke(mockedMqttConnection, "setMqttCallback", mockDeviceMessaging);
                 new MqttDeviceMethod(mockedMqttConnection, anyString);
                 result = mockDeviceMethod;
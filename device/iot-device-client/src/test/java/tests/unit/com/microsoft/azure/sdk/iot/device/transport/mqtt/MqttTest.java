@@ -191,6 +191,8 @@ public class MqttTest
                 result = mockMqttMessage;
                 mockMqttAsyncClient.publish(MOCK_PARSE_TOPIC, mockMqttMessage);
                 result = mockMqttDeliveryToken;
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightWindow");
+                result = new MqttInFlightWindow(10);
             }
         };
     }
@@ -562,21 +564,15 @@ public class MqttTest
     {
         //arrange
         baseConstructorExpectations();
-        final byte[] payload = {0x61, 0x62, 0x63};
-        final IMqttDeliveryToken[] testTokens = {mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken,
-                mockMqttDeliveryToken, mockMqttDeliveryToken, mockMqttDeliveryToken
-        };
+        final MqttInFlightWindow fullWindow = new MqttInFlightWindow(1);
+        Deencapsulation.invoke(fullWindow, "tryAcquire", 0L);
         new NonStrictExpectations()
         {
             {
                 mockMqttAsyncClient.isConnected();
-                result = true;
-                mockMqttAsyncClient.getPendingDeliveryTokens();
-                result = testTokens;
-                mockMqttAsyncClient.isConnected();
-                result = false;
+                returns(true, false);
+                Deencapsulation.invoke(mockedMqttConnection, "getInFlightWindow");
+                result = fullWindow;
             }
         };
         Mqtt mockMqtt = instantiateMqtt(true);
@@ -1256,6 +1252,48 @@ public class MqttTest
         assertEquals("=", receivedMessage.getProperties()[3].getValue());
     }
 
+    /*
+    **Tests_SRS_Mqtt_34_058: [If a property's key or value does not contain any encoded characters, it shall be used without decoding.]
+    */
+    @Test
+    public void receiveSuccessCustomPropertiesWithAndWithoutEncoding() throws TransportException, MqttException
+    {
+        //arrange
+        final byte[] payload = {0x61, 0x62, 0x63};
+        final String mockParseTopic = "devices/deviceID/messages/devicebound/%24.mid=69ea4caf-d83e-454b-81f2-caafda4c81c8&iothub-ack=full&plainKey=plainValue&spaced+key=a+b%2Bc&emptyValue=&";
+        baseConstructorExpectations();
+        baseConnectExpectation();
+        new MockUp<MqttMessaging>()
+        {
+            @Mock
+            Pair<String, byte[]> peekMessage()
+            {
+                return new MutablePair<>(mockParseTopic, payload);
+            }
+        };
+
+        final Mqtt mockMqtt = new MqttMessaging(mockedMqttConnection, CLIENT_ID, mockedIotHubListener, null, "", "", false);
+        new NonStrictExpectations()
+        {
+            {
+                mockMqttAsyncClient.isConnected();
+                result = true;
+            }
+        };
+
+        Deencapsulation.invoke(mockMqtt, "connect");
+
+        //act
+        Message receivedMessage = mockMqtt.receive();
+
+        //assert
+        assertEquals("69ea4caf-d83e-454b-81f2-caafda4c81c8", receivedMessage.getMessageId());
+        assertEquals(3, receivedMessage.getProperties().length);
+        assertEquals("plainValue", receivedMessage.getProperty("plainKey"));
+        assertEquals("a b+c", receivedMessage.getProperty("spaced key"));
+        assertEquals("", receivedMessage.getProperty("emptyValue"));
+    }
+
     //Tests_SRS_Mqtt_34_057: [This function shall parse the messageId, correlationId, outputname, content encoding and content type from the provided property string]
     @Test
     public void receiveSuccessWithSystemProperties() throws TransportException, MqttException, UnsupportedEncodingException
@@ -28,9 +28,8 @@ public class TopicParserTest
 
         //assert
         assertNotNull(testParser);
-        String[] tokens = Deencapsulation.getField(testParser, "topicTokens");
-        assertNotNull(tokens);
-        assertTrue(tokens.length > 1);
+        int tokenCount = Deencapsulation.getField(testParser, "tokenCount");
+        assertTrue(tokenCount > 1);
     }
 
     /*
@@ -392,4 +391,79 @@ public class TopicParserTest
         //act
         String methodName = Deencapsulation.invoke(testParser, "getMethodName", 3);
     }
+
+    /*
+    Tests_SRS_TopicParser_25_001: [**The constructor shall spilt the topic by "/" and save the tokens.**]**
+    Tests_SRS_TopicParser_34_017: [**This method shall return the number of tokens in the topic.**]**
+    Tests_SRS_TopicParser_34_019: [**This method shall return the token at the provided index.**]**
+     */
+    @Test
+    public void tokensMatchStringSplit() throws TransportException
+    {
+        String[] topics = {"$iothub/twin/res/200/?$rid=1", "$iothub/methods/res//", "a//b", "a", "/a", "a/b/", "a/b//"};
+        for (String topic : topics)
+        {
+            //arrange
+            String[] expectedTokens = topic.split("/");
+
+            //act
+            TopicParser testParser = new TopicParser(topic);
+
+            //assert
+            int tokenCount = Deencapsulation.invoke(testParser, "getTokenCount");
+            assertEquals(topic, expectedTokens.length, tokenCount);
+            for (int i = 0; i < expectedTokens.length; i++)
+            {
+                assertEquals(topic, expectedTokens[i], Deencapsulation.invoke(testParser, "getToken", i));
+            }
+        }
+    }
+
+    /*
+    Tests_SRS_TopicParser_34_016: [**The constructor shall tokenize the topic up to endIndex by "/" the same way String.split does, without copying it.**]**
+    Tests_SRS_TopicParser_34_020: [**This method shall compare the token at the provided index to the provided value without copying the token.**]**
+     */
+    @Test
+    public void constructorWithEndIndexOnlyParsesStartOfTopic()
+    {
+        //arrange
+        String topic = "devices/deviceId/modules/moduleId/inputs/inputName/messages/devicebound/%24.mid=1&a/b=c";
+        int endIndex = topic.indexOf("%24");
+
+        //act
+        TopicParser testParser = Deencapsulation.newInstance(TopicParser.class, new Class[] {String.class, int.class}, topic, endIndex);
+
+        //assert
+        int tokenCount = Deencapsulation.invoke(testParser, "getTokenCount");
+        assertEquals(8, tokenCount);
+        assertEquals("devicebound", Deencapsulation.invoke(testParser, "getToken", 7));
+        assertTrue((boolean) Deencapsulation.invoke(testParser, "tokenEquals", 2, "modules"));
+        assertFalse((boolean) Deencapsulation.invoke(testParser, "tokenEquals", 2, "module"));
+        assertFalse((boolean) Deencapsulation.invoke(testParser, "tokenEquals", 8, "%24.mid=1&a"));
+    }
+
+    /*
+    Tests_SRS_TopicParser_34_018: [**If there is no token at the provided index, this method shall return null.**]**
+     */
+    @Test
+    public void getTokenReturnsNullForInvalidIndex() throws TransportException
+    {
+        //arrange
+        TopicParser testParser = new TopicParser("$iothub/methods/res/");
+
+        //act
+        String token = Deencapsulation.invoke(testParser, "getToken", 3);
+
+        //assert
+        assertNull(token);
+    }
+
+    /*
+    Tests_SRS_TopicParser_34_015: [**The constructor shall throw IllegalArgumentException if topic is null or endIndex is outside of the topic.**]**
+     */
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorWithEndIndexThrowsForEndIndexPastTopic()
+    {
+        Deencapsulation.newInstance(TopicParser.class, new Class[] {String.class, int.class}, "a/b", 4);
+    }
 }
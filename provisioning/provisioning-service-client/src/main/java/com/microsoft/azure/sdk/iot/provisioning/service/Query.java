@@ -11,6 +11,13 @@ import com.microsoft.azure.sdk.iot.provisioning.service.contract.ContractApiHttp
 import com.microsoft.azure.sdk.iot.provisioning.service.exceptions.ProvisioningServiceClientException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -57,6 +64,12 @@ import java.util.*;
  *     shall return it. In any point in the future, you may recreate the query using the same query factories that you
  *     used for the first time, and call {@link #next(String)} providing the stored continuationToken to get the next page.
  *
+ * <p> By default, each {@link #next()} sends the request for its page and waits for the response. With a prefetch
+ *     depth set by {@link #setPrefetchDepth(int)}, the query requests up to that many pages ahead from a background
+ *     thread, while the application processes the current page, and {@link #next()} only waits if its page is not
+ *     received yet. As each request needs the continuationToken of the previous page, the pages are requested one
+ *     after the other.
+ *
  * @see <a href="https://docs.microsoft.com/en-us/azure/iot-dps/">Azure IoT Hub Device Provisioning Service</a>
  * @see <a href="https://docs.microsoft.com/en-us/azure/iot-hub/iot-hub-devguide-query-language">Query Language</a>
  */
@@ -67,6 +80,8 @@ public class Query implements Iterator
     private static final String PAGE_SIZE_KEY = "x-ms-max-item-count";
     private static final String PATH_SEPARATOR = "/";
     private static final String PATH_QUERY = "query";
+    private static final long IDLE_PREFETCH_THREAD_TIMEOUT_SECONDS = 60;
+    private static final String PREFETCH_THREAD_NAME = "azure-iot-sdk-provisioning-query";
 
     private String querySpecificationJson;
     private int pageSize;
@@ -74,6 +89,9 @@ public class Query implements Iterator
     private ContractApiHttp contractApiHttp;
     private boolean hasNext;
     private String queryPath;
+    private int prefetchDepth;
+    private final Deque<CompletableFuture<QueryPage>> prefetchedPages = new ArrayDeque<>();
+    private ThreadPoolExecutor prefetchExecutor;
 
     /**
      * INTERNAL CONSTRUCTOR
@@ -176,6 +194,45 @@ public class Query implements Iterator
             throw new NoSuchElementException("There are no more pending elements");
         }
 
+        QueryPage page;
+        CompletableFuture<QueryPage> prefetchedPage = this.prefetchedPages.pollFirst();
+        if (prefetchedPage != null)
+        {
+            /* SRS_QUERY_34_003: [If the page was prefetched, the next shall wait for it instead of sending a new request, and throw the exception of its request if it failed.] */
+            try
+            {
+                page = prefetchedPage.join();
+            }
+            catch (CompletionException e)
+            {
+                this.prefetchedPages.clear();
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        else
+        {
+            page = requestPage(this.continuationToken, this.pageSize);
+        }
+
+        this.continuationToken = page.continuationToken;
+
+        /* SRS_QUERY_21_017: [The next shall set hasNext as true if the continuationToken is not null, or false if it is null.] */
+        hasNext = (this.continuationToken != null);
+        if (!hasNext)
+        {
+            this.prefetchedPages.clear();
+        }
+        prefetchPages();
+
+        return page.result;
+    }
+
+    private QueryPage requestPage(String continuationToken, int pageSize)
+    {
         /* SRS_QUERY_21_012: [If the pageSize is not 0, the next shall send the Http request with `x-ms-max-item-count=[pageSize]` in the header.] */
         Map<String, String> headerParameters = new HashMap<>();
         if(pageSize != 0)
@@ -183,9 +240,9 @@ public class Query implements Iterator
             headerParameters.put(PAGE_SIZE_KEY, Integer.toString(pageSize));
         }
         /* SRS_QUERY_21_013: [If the continuationToken is not null or empty, the next shall send the Http request with `x-ms-continuation=[continuationToken]` in the header.] */
-        if(!Tools.isNullOrEmpty(this.continuationToken))
+        if(!Tools.isNullOrEmpty(continuationToken))
         {
-            headerParameters.put(CONTINUATION_TOKEN_KEY, this.continuationToken);
+            headerParameters.put(CONTINUATION_TOKEN_KEY, continuationToken);
         }
 
         /* SRS_QUERY_21_014: [The next shall send a Http request with a Http verb `POST`.] */
@@ -216,12 +273,57 @@ public class Query implements Iterator
         String bodyStr = new String(body);
         Map<String, String> headers = httpResponse.getHeaderFields();
         String type = headers.get(ITEM_TYPE_KEY);
-        this.continuationToken = headers.get(CONTINUATION_TOKEN_KEY);
+        String nextContinuationToken = headers.get(CONTINUATION_TOKEN_KEY);
 
-        /* SRS_QUERY_21_017: [The next shall set hasNext as true if the continuationToken is not null, or false if it is null.] */
-        hasNext = (this.continuationToken != null);
+        return new QueryPage(new QueryResult(type, bodyStr, nextContinuationToken), nextContinuationToken);
+    }
+
+    private void prefetchPages()
+    {
+        /* SRS_QUERY_34_002: [The query shall keep up to prefetchDepth page requests ahead of the last returned page, each one sent from a background thread with the continuationToken of the previous page.] */
+        while (this.hasNext && (this.prefetchedPages.size() < this.prefetchDepth))
+        {
+            if (this.prefetchExecutor == null)
+            {
+                this.prefetchExecutor = createPrefetchExecutor();
+            }
 
-        return new QueryResult(type, bodyStr, this.continuationToken);
+            final int pageSize = this.pageSize;
+            CompletableFuture<QueryPage> lastPage = this.prefetchedPages.peekLast();
+            CompletableFuture<QueryPage> nextPage;
+            if (lastPage == null)
+            {
+                final String continuationToken = this.continuationToken;
+                nextPage = CompletableFuture.supplyAsync(() -> requestPage(continuationToken, pageSize), this.prefetchExecutor);
+            }
+            else
+            {
+                if (lastPage.isDone() && (lastPage.isCompletedExceptionally() || (lastPage.join() == null) || (lastPage.join().continuationToken == null)))
+                {
+                    return;
+                }
+                // A null page marks the end of the query, the page before had no continuationToken.
+                nextPage = lastPage.thenApplyAsync(page ->
+                        ((page == null) || (page.continuationToken == null)) ? null : requestPage(page.continuationToken, pageSize),
+                        this.prefetchExecutor);
+            }
+            this.prefetchedPages.addLast(nextPage);
+        }
+    }
+
+    private static ThreadPoolExecutor createPrefetchExecutor()
+    {
+        // The pages of one query are requested one after the other, so one thread is enough. It stops once the query
+        // is not used anymore, so an abandoned query does not need to be closed.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IDLE_PREFETCH_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), runnable ->
+                {
+                    Thread thread = new Thread(runnable, PREFETCH_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     /**
@@ -242,6 +344,9 @@ public class Query implements Iterator
         /* SRS_QUERY_21_019: [The next shall store the provided continuationToken.] */
         this.continuationToken = continuationToken;
 
+        /* SRS_QUERY_34_004: [The next shall discard the pages prefetched before.] */
+        this.prefetchedPages.clear();
+
         /* SRS_QUERY_21_020: [The next shall return the next page of results by calling the next().] */
         return next();
     }
@@ -277,5 +382,91 @@ public class Query implements Iterator
         }
         /* SRS_QUERY_21_023: [The setPageSize shall store the new pageSize value.] */
         this.pageSize = pageSize;
+
+        /* SRS_QUERY_34_005: [The setPageSize shall discard the pages prefetched with the previous pageSize.] */
+        if (!this.prefetchedPages.isEmpty())
+        {
+            this.prefetchedPages.clear();
+            prefetchPages();
+        }
+    }
+
+    /**
+     * Getter for the prefetchDepth.
+     *
+     * @return An {@code int} with the number of pages requested ahead of the last page returned by {@link #next()}.
+     */
+    public int getPrefetchDepth()
+    {
+        return prefetchDepth;
+    }
+
+    /**
+     * Setter for the prefetchDepth.
+     *
+     * <p> PrefetchDepth is the number of pages that the query requests in background, ahead of the last page returned
+     *     by {@link #next()}. The requests start when the prefetchDepth is set, so the first page can be requested
+     *     before the first call to {@link #next()}. Reducing the prefetchDepth does not cancel the requests already
+     *     sent.
+     *
+     * @param prefetchDepth an {@code int} with the new prefetchDepth. It cannot be negative. The query will request
+     *                      each page in {@link #next()} if it is <b>0</b>, which is the default.
+     * @throws IllegalArgumentException if the provided prefetchDepth is negative.
+     */
+    public void setPrefetchDepth(int prefetchDepth)
+    {
+        /* SRS_QUERY_34_001: [The setPrefetchDepth shall throw IllegalArgumentException if the provided prefetchDepth is negative.] */
+        if(prefetchDepth < 0)
+        {
+            throw new IllegalArgumentException("prefetchDepth cannot be negative");
+        }
+
+        /* SRS_QUERY_34_002: [The query shall keep up to prefetchDepth page requests ahead of the last returned page, each one sent from a background thread with the continuationToken of the previous page.] */
+        this.prefetchDepth = prefetchDepth;
+        while (this.prefetchedPages.size() > prefetchDepth)
+        {
+            this.prefetchedPages.removeLast();
+        }
+        prefetchPages();
+    }
+
+    /**
+     * Return a sequential stream over the remaining pages of the query.
+     *
+     * <p> The pages are requested as the stream is consumed, or ahead of it if a prefetchDepth is set. The stream throws
+     *     the same exceptions as {@link #next()}.
+     *
+     * @return A {@code Stream} with the remaining {@link QueryResult} pages of the query.
+     */
+    public Stream<QueryResult> stream()
+    {
+        /* SRS_QUERY_34_006: [The stream shall return the remaining pages of the query in order, by calling hasNext and next.] */
+        Iterator<QueryResult> pages = new Iterator<QueryResult>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return Query.this.hasNext();
+            }
+
+            @Override
+            public QueryResult next()
+            {
+                return Query.this.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static final class QueryPage
+    {
+        private final QueryResult result;
+        private final String continuationToken;
+
+        private QueryPage(QueryResult result, String continuationToken)
+        {
+            this.result = result;
+            this.continuationToken = continuationToken;
+        }
     }
 }
@@ -12,7 +12,11 @@ import com.microsoft.azure.sdk.iot.provisioning.service.exceptions.*;
 import mockit.*;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -788,4 +792,142 @@ public class QueryTest
         // assert
         assertEquals(20, (int)Deencapsulation.getField(query, "pageSize"));
     }
+
+    /* SRS_QUERY_34_001: [The setPrefetchDepth shall throw IllegalArgumentException if the provided prefetchDepth is negative.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void setPrefetchDepthThrowsOnNegativePrefetchDepth()
+    {
+        // arrange
+        Query query = Deencapsulation.newInstance(Query.class, new Class[]{ContractApiHttp.class, String.class, QuerySpecification.class, Integer.class},
+                mockedContractApiHttp, "enrollments", mockedQuerySpecification, 10);
+
+        // act
+        query.setPrefetchDepth(-1);
+    }
+
+    /* SRS_QUERY_34_002: [The query shall keep up to prefetchDepth page requests ahead of the last returned page, each one sent from a background thread with the continuationToken of the previous page.] */
+    /* SRS_QUERY_34_003: [If the page was prefetched, the next shall wait for it instead of sending a new request, and throw the exception of its request if it failed.] */
+    @Test
+    public void nextReturnsPagesPrefetchedInBackground() throws Exception
+    {
+        // arrange
+        final String targetPath = "enrollments";
+        final String queryPath = targetPath + "/query";
+        final List<String> requestedTokens = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> requestingThreads = Collections.synchronizedList(new ArrayList<String>());
+        new NonStrictExpectations()
+        {
+            {
+                mockedQuerySpecification.toJson();
+                result = "validJson";
+                mockedContractApiHttp.request(HttpMethod.POST, queryPath, (Map<String, String>) any, "validJson");
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(HttpMethod httpMethod, String path, Map<String, String> headerParameters, String payload)
+                    {
+                        requestedTokens.add(headerParameters.get("x-ms-continuation"));
+                        requestingThreads.add(Thread.currentThread().getName());
+                        return mockedHttpResponse;
+                    }
+                };
+                mockedHttpResponse.getBody();
+                result = "result".getBytes();
+                mockedHttpResponse.getHeaderFields();
+                returns(
+                        new HashMap<String, String>() {{ put("x-ms-continuation", "token1"); }},
+                        new HashMap<String, String>() {{ put("x-ms-continuation", "token2"); }},
+                        new HashMap<String, String>());
+            }
+        };
+        Query query = Deencapsulation.newInstance(Query.class, new Class[]{ContractApiHttp.class, String.class, QuerySpecification.class, Integer.class},
+                mockedContractApiHttp, targetPath, mockedQuerySpecification, 10);
+
+        // act
+        query.setPrefetchDepth(2);
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((requestedTokens.size() < 2) && (System.currentTimeMillis() < deadline))
+        {
+            Thread.sleep(10);
+        }
+
+        // assert
+        assertEquals(2, requestedTokens.size());
+        assertNotNull(query.next());
+        assertNotNull(query.next());
+        assertTrue(query.hasNext());
+        assertNotNull(query.next());
+        assertFalse(query.hasNext());
+        assertEquals(Arrays.asList(null, "token1", "token2"), requestedTokens);
+        assertFalse(requestingThreads.contains(Thread.currentThread().getName()));
+    }
+
+    /* SRS_QUERY_34_003: [If the page was prefetched, the next shall wait for it instead of sending a new request, and throw the exception of its request if it failed.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void nextThrowsOnPrefetchedRequestFailed() throws ProvisioningServiceClientException
+    {
+        // arrange
+        final String targetPath = "enrollments";
+        final String queryPath = targetPath + "/query";
+        new NonStrictExpectations()
+        {
+            {
+                mockedQuerySpecification.toJson();
+                result = "validJson";
+                mockedContractApiHttp.request(HttpMethod.POST, queryPath, (Map<String, String>) any, "validJson");
+                result = new ProvisioningServiceClientException("request failed");
+            }
+        };
+        Query query = Deencapsulation.newInstance(Query.class, new Class[]{ContractApiHttp.class, String.class, QuerySpecification.class, Integer.class},
+                mockedContractApiHttp, targetPath, mockedQuerySpecification, 10);
+        query.setPrefetchDepth(1);
+
+        // act
+        query.next();
+    }
+
+    /* SRS_QUERY_34_004: [The next shall discard the pages prefetched before.] */
+    /* SRS_QUERY_34_006: [The stream shall return the remaining pages of the query in order, by calling hasNext and next.] */
+    @Test
+    public void streamReturnsRemainingPagesFromProvidedContinuationToken() throws ProvisioningServiceClientException
+    {
+        // arrange
+        final String targetPath = "enrollments";
+        final String queryPath = targetPath + "/query";
+        final List<String> requestedTokens = Collections.synchronizedList(new ArrayList<String>());
+        new NonStrictExpectations()
+        {
+            {
+                mockedQuerySpecification.toJson();
+                result = "validJson";
+                mockedContractApiHttp.request(HttpMethod.POST, queryPath, (Map<String, String>) any, "validJson");
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(HttpMethod httpMethod, String path, Map<String, String> headerParameters, String payload)
+                    {
+                        requestedTokens.add(headerParameters.get("x-ms-continuation"));
+                        return mockedHttpResponse;
+                    }
+                };
+                mockedHttpResponse.getBody();
+                result = "result".getBytes();
+                mockedHttpResponse.getHeaderFields();
+                returns(
+                        new HashMap<String, String>() {{ put("x-ms-continuation", "token2"); }},
+                        new HashMap<String, String>());
+            }
+        };
+        Query query = Deencapsulation.newInstance(Query.class, new Class[]{ContractApiHttp.class, String.class, QuerySpecification.class, Integer.class},
+                mockedContractApiHttp, targetPath, mockedQuerySpecification, 10);
+
+        // act
+        assertNotNull(query.next("token1"));
+        long remainingPages = query.stream().count();
+
+        // assert
+        assertEquals(1, remainingPages);
+        assertEquals(Arrays.asList("token1", "token2"), requestedTokens);
+        assertFalse(query.hasNext());
+    }
 }
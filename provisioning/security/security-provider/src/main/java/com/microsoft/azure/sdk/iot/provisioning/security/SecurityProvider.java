@@ -10,16 +10,21 @@ package com.microsoft.azure.sdk.iot.provisioning.security;
 import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProviderException;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.UUID;
 
 public abstract class SecurityProvider
@@ -27,6 +32,13 @@ public abstract class SecurityProvider
     static final String DEFAULT_TLS_PROTOCOL = "TLSv1.2";
     private static final String DEFAULT_CERT_INSTANCE = "X.509";
     private static final String TRUSTED_CERT_ALIAS = "TRUSTED_CERT_";
+    // Sessions kept by the shared context to resume a connection with an abbreviated handshake.
+    private static final int SESSION_CACHE_SIZE = 256;
+    private static final int SESSION_TIMEOUT_IN_SECONDS = 24 * 60 * 60;
+
+    // Parsed and built only once per process, see getDefaultSSLContext.
+    private static Collection<? extends Certificate> defaultTrustedCerts;
+    private static SSLContext defaultSSLContext;
     private static final String DEFAULT_TRUSTED_CERT =
                     /*D-TRUST Root Class 3 CA 2 2009*/
                     "-----BEGIN CERTIFICATE-----\r\n" +
@@ -122,15 +134,7 @@ public abstract class SecurityProvider
         KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
         keyStore.load(null);
 
-        //SRS_SecurityClient_25_002: [ This method shall retrieve the default CertificateFactory instance. ]
-        CertificateFactory certFactory = CertificateFactory.getInstance(DEFAULT_CERT_INSTANCE);
-        Collection<? extends Certificate> trustedCert;
-        try (InputStream certStreamArray = new ByteArrayInputStream(DEFAULT_TRUSTED_CERT.getBytes()))
-        {
-            trustedCert =  certFactory.generateCertificates(certStreamArray);
-        }
-
-        for (Certificate c : trustedCert)
+        for (Certificate c : getDefaultTrustedCerts())
         {
             //SRS_SecurityClient_25_003: [ This method shall load all the trusted certificates to the keystore. ]
             keyStore.setCertificateEntry(TRUSTED_CERT_ALIAS + UUID.randomUUID(), c);
@@ -138,4 +142,61 @@ public abstract class SecurityProvider
 
         return keyStore;
     }
+
+    /**
+     * Getter for the SSL context that only trusts the default certificates. It is built the first time it is
+     * needed and shared by all the security providers of the process that do not present a client certificate,
+     * so the trusted certificates are parsed once, and a device reconnecting resumes its TLS session with an
+     * abbreviated handshake.
+     * @return The shared SSLContext
+     * @throws NoSuchAlgorithmException if the SSLContext or the trust manager cannot be created
+     * @throws KeyStoreException if the keystore cannot be loaded with the trusted certificates
+     * @throws CertificateException if the trusted certificates cannot be parsed
+     * @throws IOException if the trusted certificates cannot be read
+     * @throws KeyManagementException if the SSLContext cannot be initialized
+     */
+    SSLContext getDefaultSSLContext() throws NoSuchAlgorithmException, KeyStoreException, CertificateException, IOException, KeyManagementException
+    {
+        synchronized (SecurityProvider.class)
+        {
+            //SRS_SecurityClient_25_004: [ This method shall build the SSLContext only once per process, and return the same instance to all the security providers. ]
+            if (defaultSSLContext == null)
+            {
+                SSLContext sslContext = SSLContext.getInstance(DEFAULT_TLS_PROTOCOL);
+
+                KeyStore keyStore = this.getKeyStoreWithTrustedCerts();
+
+                TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                trustManagerFactory.init(keyStore);
+                sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
+
+                //SRS_SecurityClient_25_005: [ This method shall keep up to SESSION_CACHE_SIZE client sessions for SESSION_TIMEOUT_IN_SECONDS in the SSLContext. ]
+                SSLSessionContext clientSessionContext = sslContext.getClientSessionContext();
+                if (clientSessionContext != null)
+                {
+                    clientSessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+                    clientSessionContext.setSessionTimeout(SESSION_TIMEOUT_IN_SECONDS);
+                }
+
+                defaultSSLContext = sslContext;
+            }
+
+            return defaultSSLContext;
+        }
+    }
+
+    private static synchronized Collection<? extends Certificate> getDefaultTrustedCerts() throws CertificateException, IOException
+    {
+        if (defaultTrustedCerts == null)
+        {
+            //SRS_SecurityClient_25_002: [ This method shall retrieve the default CertificateFactory instance. ]
+            CertificateFactory certFactory = CertificateFactory.getInstance(DEFAULT_CERT_INSTANCE);
+            try (InputStream certStreamArray = new ByteArrayInputStream(DEFAULT_TRUSTED_CERT.getBytes()))
+            {
+                defaultTrustedCerts = Collections.unmodifiableCollection(certFactory.generateCertificates(certStreamArray));
+            }
+        }
+
+        return defaultTrustedCerts;
+    }
 }
@@ -12,7 +12,6 @@ import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProv
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
 import java.io.IOException;
 import java.security.*;
 import java.security.cert.CertificateException;
@@ -89,17 +88,10 @@ public class SecurityProviderSymmetricKey extends SecurityProvider
 
     private SSLContext generateSSLContext() throws NoSuchAlgorithmException, KeyStoreException, CertificateException, IOException, KeyManagementException
     {
-        SSLContext sslContext = SSLContext.getInstance(DEFAULT_TLS_PROTOCOL);
-
-        // create keystore
         //SRS_SecurityClientTpm_25_006: [ This method shall load the keystore with TrustedCerts. ]
-        KeyStore keyStore = this.getKeyStoreWithTrustedCerts();
-
-        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        trustManagerFactory.init(keyStore);
         //SRS_SecurityClientTpm_25_007: [ This method shall initialize SSLContext with the default trustManager loaded with keystore. ]
-        sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
-        return sslContext;
+        // The context only holds trusted certificates, so it is shared by all the devices of the process.
+        return this.getDefaultSSLContext();
     }
 
     /**
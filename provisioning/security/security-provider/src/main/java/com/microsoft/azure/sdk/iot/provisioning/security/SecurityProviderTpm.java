@@ -8,7 +8,6 @@
 package com.microsoft.azure.sdk.iot.provisioning.security;
 
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
 import java.io.IOException;
 
 import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProviderException;
@@ -73,16 +72,9 @@ public abstract class SecurityProviderTpm extends SecurityProvider
 
     private SSLContext generateSSLContext() throws NoSuchAlgorithmException, KeyStoreException, CertificateException, IOException, KeyManagementException
     {
-        SSLContext sslContext = SSLContext.getInstance(DEFAULT_TLS_PROTOCOL);
-
-        // create keystore
         //SRS_SecurityClientTpm_25_006: [ This method shall load the keystore with TrustedCerts. ]
-        KeyStore keyStore = this.getKeyStoreWithTrustedCerts();
-
-        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-        trustManagerFactory.init(keyStore);
         //SRS_SecurityClientTpm_25_007: [ This method shall initialize SSLContext with the default trustManager loaded with keystore. ]
-        sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
-        return sslContext;
+        // The context only holds trusted certificates, so it is shared by all the devices of the process.
+        return this.getDefaultSSLContext();
     }
 }
@@ -8,17 +8,20 @@
 package tests.unit.com.microsoft.azure.sdk.iot.provisioning.security;
 
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderSymmetricKey;
+import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderTpm;
 import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProviderException;
 import mockit.*;
 import org.apache.commons.codec.binary.Base32;
 import org.junit.Ignore;
+import org.junit.Before;
 import org.junit.Test;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
@@ -28,6 +31,7 @@ import java.security.cert.CertificateException;
 import java.util.UUID;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
 
 /*
      Unit tests for SecurityProviderTpm and SecurityProvider
@@ -65,6 +69,14 @@ public class SecurityProviderSymmetricKeyTest
     @Mocked
     UUID mockedUUID;
 
+    @Before
+    public void setUp()
+    {
+        // the trusted certificates and the SSLContext are shared by the process, build them again for each test.
+        Deencapsulation.setField(SecurityProvider.class, "defaultTrustedCerts", null);
+        Deencapsulation.setField(SecurityProvider.class, "defaultSSLContext", null);
+    }
+
     @Test
     public void testConstructorSucceeds() throws SecurityProviderException
     {
@@ -251,6 +263,45 @@ public class SecurityProviderSymmetricKeyTest
         };
     }
 
+    //SRS_SecurityClient_25_004: [ This method shall build the SSLContext only once per process, and return the same instance to all the security providers. ]
+    //SRS_SecurityClient_25_005: [ This method shall keep up to SESSION_CACHE_SIZE client sessions for SESSION_TIMEOUT_IN_SECONDS in the SSLContext. ]
+    @Test
+    public void getSSLContextSharesContextBetweenProviders(@Mocked final SSLSessionContext mockedSslSessionContext) throws SecurityProviderException, KeyManagementException, KeyStoreException, CertificateException, NoSuchAlgorithmException
+    {
+        //arrange
+        SecurityProviderSymmetricKey firstProvider = new SecurityProviderSymmetricKey(testSymKey, testRegId);
+        SecurityProviderSymmetricKey secondProvider = new SecurityProviderSymmetricKey(testSymKey, "otherRegId");
+        new NonStrictExpectations()
+        {
+            {
+                SSLContext.getInstance(anyString);
+                result = mockedSslContext;
+                mockedSslContext.getClientSessionContext();
+                result = mockedSslSessionContext;
+            }
+        };
+
+        //act
+        SSLContext firstSslContext = firstProvider.getSSLContext();
+        SSLContext secondSslContext = secondProvider.getSSLContext();
+
+        //assert
+        assertSame(firstSslContext, secondSslContext);
+        new Verifications()
+        {
+            {
+                mockedKeyStore.setCertificateEntry(anyString, (Certificate) any);
+                times = 3;
+                mockedSslContext.init((KeyManager[]) any, (TrustManager[]) any, (SecureRandom) any);
+                times = 1;
+                mockedSslSessionContext.setSessionCacheSize(256);
+                times = 1;
+                mockedSslSessionContext.setSessionTimeout(24 * 60 * 60);
+                times = 1;
+            }
+        };
+    }
+
     //SRS_SecurityClientSymmetricKey_25_005: [ This method shall throw SecurityProviderException if any of the underlying API's in generating SSL context fails. ]
     @Test (expected = SecurityProviderException.class)
     public void getSSLContextThrowsUnderlyingException() throws SecurityProviderException, KeyStoreException
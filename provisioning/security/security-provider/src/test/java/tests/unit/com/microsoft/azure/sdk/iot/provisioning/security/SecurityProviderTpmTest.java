@@ -7,13 +7,16 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.provisioning.security;
 
+import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProvider;
 import com.microsoft.azure.sdk.iot.provisioning.security.SecurityProviderTpm;
 import com.microsoft.azure.sdk.iot.provisioning.security.exceptions.SecurityProviderException;
+import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
 import mockit.Verifications;
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.binary.Base32;
+import org.junit.Before;
 import org.junit.Test;
 
 import javax.net.ssl.KeyManager;
@@ -107,6 +110,14 @@ public class SecurityProviderTpmTest
         }
     }
 
+    @Before
+    public void setUp()
+    {
+        // the trusted certificates and the SSLContext are shared by the process, build them again for each test.
+        Deencapsulation.setField(SecurityProvider.class, "defaultTrustedCerts", null);
+        Deencapsulation.setField(SecurityProvider.class, "defaultSSLContext", null);
+    }
+
     //SRS_SecurityClientTpm_25_001: [ This method shall retrieve the EnrollmentKey from the implementation of this abstract class. ]
     //SRS_SecurityClientTpm_25_002: [ This method shall hash the EnrollmentKey using SHA-256. ]
     //SRS_SecurityClientTpm_25_003: [ This method shall convert the resultant hash to Base32 to convert all the data to be case agnostic and remove "=" from the string. ]
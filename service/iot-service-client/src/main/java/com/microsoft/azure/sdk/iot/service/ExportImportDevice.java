@@ -18,6 +18,7 @@ public class ExportImportDevice
     // Etag, importMode, status, statusReason, authentication]
 
     private String id;
+    private String moduleId;
     private String eTag;
     private ImportMode importMode;
     private DeviceStatus status;
@@ -86,6 +87,26 @@ public class ExportImportDevice
         return this.id;
     }
 
+    /**
+     * Setter for module id. Set it to describe a module of the device with the id of this object in a bulk registry
+     * operation, or leave it null to describe the device itself.
+     * @param moduleId The module id.
+     */
+    public void setModuleId(String moduleId)
+    {
+        //Codes_SRS_SERVICE_SDK_JAVA_IMPORT_EXPORT_DEVICE_34_062: [This method shall save the provided moduleId, which may be null.]
+        this.moduleId = moduleId;
+    }
+
+    /**
+     * Getter for module id.
+     * @return The module id, or null if this object describes a device.
+     */
+    public String getModuleId()
+    {
+        return this.moduleId;
+    }
+
     /**
      * Getter for device eTag.
      * @return The device eTag.
@@ -283,6 +304,7 @@ public class ExportImportDevice
         //Codes_SRS_SERVICE_SDK_JAVA_IMPORT_EXPORT_DEVICE_34_052: [This constructor shall use the properties of the provided parser object to set the new ExportImportDevice's properties.]
         this.eTag = parser.getETag();
         this.id = parser.getIdFinal();
+        this.moduleId = parser.getModuleId();
         this.statusReason = parser.getStatusReason();
 
         if (parser.getImportMode() != null)
@@ -345,6 +367,7 @@ public class ExportImportDevice
         ExportImportDeviceParser parser = new ExportImportDeviceParser();
         parser.setETag(this.eTag);
         parser.setId(this.id);
+        parser.setModuleId(this.moduleId);
         parser.setStatusReason(this.statusReason);
 
         if (this.importMode != null)
@@ -6,11 +6,13 @@
 package com.microsoft.azure.sdk.iot.service;
 
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFileUploadNotificationReceive;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpStreamingReceive;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class FileUploadNotificationReceiver extends Receiver
 {
@@ -72,6 +74,55 @@ public class FileUploadNotificationReceiver extends Receiver
         this.amqpFileUploadNotificationReceive.close();
     }
 
+    /**
+     * Start receiving file upload notifications as they arrive, on one long lived connection, instead of polling with receive().
+     * The link credit and the settlement batch size are set to their defaults.
+     *
+     * @param consumer The consumer of the file upload notifications. It is called on the receiver thread, one file upload notification at a time
+     * @throws IOException This exception is thrown if the receiver is not initialized or not opened
+     */
+    public void startReceiving(Consumer<FileUploadNotification> consumer) throws IOException
+    {
+        startReceiving(consumer, AmqpStreamingReceive.DEFAULT_PREFETCH_COUNT, AmqpStreamingReceive.DEFAULT_SETTLEMENT_BATCH_SIZE);
+    }
+
+    /**
+     * Start receiving file upload notifications as they arrive, on one long lived connection, instead of polling with receive().
+     * If the consumer throws, the file upload notification is released after a delay that grows while the consumer keeps
+     * failing, and IotHub delivers it again. A file upload notification the consumer failed on 10 times is rejected instead.
+     *
+     * @param consumer The consumer of the file upload notifications. It is called on the receiver thread, one file upload notification at a time
+     * @param prefetchCount The link credit, that is the number of file upload notifications IotHub may send ahead of the consumer
+     * @param settlementBatchSize The number of file upload notifications that are acknowledged to IotHub together
+     * @throws IOException This exception is thrown if the receiver is not initialized or not opened
+     */
+    public void startReceiving(Consumer<FileUploadNotification> consumer, int prefetchCount, int settlementBatchSize) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_001: [The function shall throw IOException if the member receiver object has not been initialized]
+        if (this.amqpFileUploadNotificationReceive == null)
+        {
+            throw new IOException("AMQP receiver is not initialized");
+        }
+        // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_002: [The function shall call startReceiving() on the member receiver object with the given parameters]
+        this.amqpFileUploadNotificationReceive.startReceiving(consumer, prefetchCount, settlementBatchSize);
+    }
+
+    /**
+     * Stop receiving the file upload notifications started by startReceiving. close() stops it as well.
+     *
+     * @throws IOException This exception is thrown if the receiver is not initialized
+     */
+    public void stopReceiving() throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_003: [The function shall throw IOException if the member receiver object has not been initialized]
+        if (this.amqpFileUploadNotificationReceive == null)
+        {
+            throw new IOException("AMQP receiver is not initialized");
+        }
+        // Codes_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_004: [The function shall call stopReceiving() on the member receiver object]
+        this.amqpFileUploadNotificationReceive.stopReceiving();
+    }
+
     /**
      * Receive FileUploadNotification with default timeout
      *
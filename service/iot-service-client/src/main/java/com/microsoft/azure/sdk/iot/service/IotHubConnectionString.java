@@ -592,6 +592,26 @@ public class IotHubConnectionString extends IotHubConnectionStringBuilder
         return new URL(stringBuilder.toString());
     }
 
+    /**
+     * Create url for a bulk registry operation, which creates, updates or deletes many devices and modules in one request
+     *
+     * @return The bulk registry operation Url in the following format: "https:hostname/devices?api-version=201X-XX-XX"
+     * @throws MalformedURLException This exception is thrown if the URL creation failed due to malformed string
+     */
+    public URL getUrlBulkRegistryOperations() throws MalformedURLException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_IOTHUBCONNECTIONSTRING_34_027: [The function shall create a URL object from
+        // the object properties using the following format: https:hostname/devices?api-version=201X-XX-XX]
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(URL_HTTPS);
+        stringBuilder.append(hostName);
+        stringBuilder.append(URL_SEPARATOR_0);
+        stringBuilder.append(URL_PATH_DEVICES);
+        stringBuilder.append(URL_SEPARATOR_1);
+        stringBuilder.append(URL_API_VERSION);
+        return new URL(stringBuilder.toString());
+    }
+
     /**
      * Create url for requesting device statistics
      *
@@ -21,15 +21,23 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonValue;
 import java.io.IOException;
 import java.io.StringReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Use the RegistryManager class to manage the identity registry in IoT Hubs.
@@ -38,9 +46,27 @@ public class RegistryManager
 {
     private final Integer DEFAULT_HTTP_TIMEOUT_MS = 24000;
     private static final int EXECUTOR_THREAD_POOL_SIZE = 10;
+
+    /** The maximum number of device and module operations IotHub accepts in one bulk registry request */
+    public static final int MAX_BULK_REGISTRY_OPERATION_COUNT = 100;
+
+    /** The number of bulk registry requests sent concurrently, unless the caller asks for another one */
+    public static final int DEFAULT_BULK_REGISTRY_CONCURRENCY = 4;
+
+    private static final String BULK_IS_SUCCESSFUL_NAME = "isSuccessful";
+    private static final String BULK_ERRORS_NAME = "errors";
+    private static final String BULK_DEVICE_ID_NAME = "deviceId";
+    private static final String BULK_MODULE_ID_NAME = "moduleId";
+    private static final String BULK_ERROR_CODE_NAME = "errorCode";
+    private static final String BULK_ERROR_STATUS_NAME = "errorStatus";
     private ExecutorService executor;
     private IotHubConnectionString iotHubConnectionString;
 
+    // The async operations whose response was not parsed yet need the executor, so close waits for them
+    private final Object pendingOperationLock = new Object();
+    private int pendingOperationCount;
+    private boolean isCloseRequested;
+
     /**
      * Static constructor to create instance from connection string
      *
@@ -78,14 +104,67 @@ public class RegistryManager
     }
 
     /**
-     * Gracefully close running threads, and then shutdown the underlying executor service
+     * Gracefully close running threads, and then shutdown the underlying executor service. The async operations
+     * already started still complete; the ones started afterwards fail with an IOException.
      */
     public void close()
+    {
+        synchronized (this.pendingOperationLock)
+        {
+            this.isCloseRequested = true;
+            if (this.pendingOperationCount == 0)
+            {
+                shutdownExecutor();
+            }
+        }
+    }
+
+    private void shutdownExecutor()
     {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_087: [The function shall tell this object's executor service to shutdown]
         if (executor != null && !executor.isTerminated())
         {
-            this.executor.shutdownNow();
+            this.executor.shutdown();
+        }
+    }
+
+    private boolean startOperation()
+    {
+        synchronized (this.pendingOperationLock)
+        {
+            if (this.isCloseRequested)
+            {
+                return false;
+            }
+
+            this.pendingOperationCount++;
+            return true;
+        }
+    }
+
+    private CompletableFuture<HttpResponse> sendStartedOperation(HttpRequest request)
+    {
+        try
+        {
+            return request.sendAsync();
+        }
+        catch (RuntimeException e)
+        {
+            completeOperation();
+            throw e;
+        }
+    }
+
+    private void completeOperation()
+    {
+        synchronized (this.pendingOperationLock)
+        {
+            this.pendingOperationCount--;
+            if (this.isCloseRequested && this.pendingOperationCount == 0)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_106: [If async operations are pending when the registry manager is closed, the executor service shall be shut down once the last of them completed.]
+                shutdownExecutor();
+            }
         }
     }
 
@@ -106,6 +185,16 @@ public class RegistryManager
             throw new IllegalArgumentException("device cannot be null");
         }
 
+        HttpRequest request = createAddDeviceRequest(device);
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_009: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        return parseDeviceResponse(response);
+    }
+
+    private HttpRequest createAddDeviceRequest(Device device) throws IOException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_005: [The function shall deserialize the given device object to Json string]
         String deviceJson = device.toDeviceParser().toJson();
 
@@ -115,20 +204,18 @@ public class RegistryManager
         String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_008: [The function shall create a new HttpRequest for adding the device to IotHub]
-        HttpRequest request = CreateRequest(url, HttpMethod.PUT, deviceJson.getBytes(), sasTokenString);
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_009: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
+        return CreateRequest(url, HttpMethod.PUT, deviceJson.getBytes(), sasTokenString);
+    }
 
+    private Device parseDeviceResponse(HttpResponse response) throws IotHubException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_010: [The function shall verify the response status and throw proper Exception]
         IotHubExceptionManager.httpResponseVerification(response);
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_011: [The function shall create a new Device object from the response and return with it]
         String bodyStr = new String(response.getBody(), StandardCharsets.UTF_8);
 
-        Device iotHubDevice = new Device(new DeviceParser(bodyStr));
-
-        return iotHubDevice;
+        return new Device(new DeviceParser(bodyStr));
     }
 
     /**
@@ -147,21 +234,8 @@ public class RegistryManager
             throw new IllegalArgumentException("device cannot be null");
         }
 
-        // Codes_SRS_SERVICE_SDK_JAVA_ REGISTRYMANAGER_12_013: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
-        final CompletableFuture<Device> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                Device responseDevice = addDevice(device);
-                future.complete(responseDevice);
-            }
-            catch (IOException | IotHubException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createAddDeviceRequest(device), this::parseDeviceResponse);
     }
 
     /**
@@ -180,25 +254,25 @@ public class RegistryManager
             throw new IllegalArgumentException("deviceId cannot be null or empty");
         }
 
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_015: [The function shall get the URL for the device]
-        URL url = iotHubConnectionString.getUrlDevice(deviceId);
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_016: [The function shall create a new SAS token for the device]
-        String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_017: [The function shall create a new HttpRequest for getting a device from IotHub]
-        HttpRequest request = CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
+        HttpRequest request = createGetDeviceRequest(deviceId);
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_018: [The function shall send the created request and get the response]
         HttpResponse response = request.send();
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_019: [The function shall verify the response status and throw proper Exception]
-        IotHubExceptionManager.httpResponseVerification(response);
-
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_020: [The function shall create a new Device object from the response and return with it]
-        String bodyStr = new String(response.getBody(), StandardCharsets.UTF_8);
+        return parseDeviceResponse(response);
+    }
 
-        Device iotHubDevice = new Device(new DeviceParser(bodyStr));
-        return iotHubDevice;
+    private HttpRequest createGetDeviceRequest(String deviceId) throws IOException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_015: [The function shall get the URL for the device]
+        URL url = iotHubConnectionString.getUrlDevice(deviceId);
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_016: [The function shall create a new SAS token for the device]
+        String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_017: [The function shall create a new HttpRequest for getting a device from IotHub]
+        return CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
     }
 
     /**
@@ -217,21 +291,8 @@ public class RegistryManager
             throw new IllegalArgumentException("deviceId cannot be null or empty");
         }
 
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_022: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
-        final CompletableFuture<Device> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                Device responseDevice = getDevice(deviceId);
-                future.complete(responseDevice);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createGetDeviceRequest(deviceId), this::parseDeviceResponse);
     }
 
     /**
@@ -254,17 +315,27 @@ public class RegistryManager
             throw new IllegalArgumentException("maxCount cannot be less then 1");
         }
 
+        HttpRequest request = createGetDevicesRequest(maxCount);
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_027: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        return parseDevicesResponse(response);
+    }
+
+    private HttpRequest createGetDevicesRequest(Integer maxCount) throws IOException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_024: [The function shall get the URL for the device]
         URL url = iotHubConnectionString.getUrlDeviceList(maxCount);
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_025: [The function shall create a new SAS token for the device]
         String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_026: [The function shall create a new HttpRequest for getting a device list from IotHub]
-        HttpRequest request = CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_027: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
+        return CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
+    }
 
+    private ArrayList<Device> parseDevicesResponse(HttpResponse response) throws IotHubException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_028: [The function shall verify the response status and throw proper Exception]
         IotHubExceptionManager.httpResponseVerification(response);
 
@@ -306,21 +377,8 @@ public class RegistryManager
             throw new IllegalArgumentException("maxCount cannot be less then 1");
         }
 
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_031: [The function shall create an async wrapper around the getDevices() function call, handle the return value or delegate exception]
-        final CompletableFuture<ArrayList<Device>> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                ArrayList<Device> response = getDevices(maxCount);
-                future.complete(response);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createGetDevicesRequest(maxCount), this::parseDevicesResponse);
     }
 
     /**
@@ -393,6 +451,18 @@ public class RegistryManager
             throw new IllegalArgumentException("device cannot be null");
         }
 
+        HttpRequest request = createUpdateDeviceRequest(device, forceUpdate);
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_039: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_040: [The function shall verify the response status and throw proper Exception]
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_041: [The function shall create a new Device object from the response and return with it]
+        return parseDeviceResponse(response);
+    }
+
+    private HttpRequest createUpdateDeviceRequest(Device device, Boolean forceUpdate) throws IOException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_035: [The function shall set forceUpdate on the device]
         device.setForceUpdate(forceUpdate);
 
@@ -404,18 +474,7 @@ public class RegistryManager
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_038: [The function shall create a new HttpRequest for updating the device on IotHub]
         HttpRequest request = CreateRequest(url, HttpMethod.PUT, device.toDeviceParser().toJson().getBytes(), sasTokenString);
         request.setHeaderField("If-Match", "*");
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_039: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_040: [The function shall verify the response status and throw proper Exception]
-        IotHubExceptionManager.httpResponseVerification(response);
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_041: [The function shall create a new Device object from the response and return with it]
-        String bodyStr = new String(response.getBody(), StandardCharsets.UTF_8);
-        Device iotHubDevice = new Device(new DeviceParser(bodyStr));
-
-        return iotHubDevice;
+        return request;
     }
 
     /**
@@ -434,20 +493,7 @@ public class RegistryManager
             throw new IllegalArgumentException("device cannot be null");
         }
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_043: [The function shall create an async wrapper around the updateDevice() function call, handle the return value or delegate exception]
-        final CompletableFuture<Device> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                Device responseDevice = updateDevice(device);
-                future.complete(responseDevice);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        return updateDeviceAsync(device, false);
     }
 
     /**
@@ -466,21 +512,8 @@ public class RegistryManager
         {
             throw new IllegalArgumentException("device cannot be null");
         }
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_045: [The function shall create an async wrapper around the updateDevice(Device, device, Boolean forceUpdate) function call, handle the return value or delegate exception]
-        final CompletableFuture<Device> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                Device responseDevice = updateDevice(device, forceUpdate);
-                future.complete(responseDevice);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createUpdateDeviceRequest(device, forceUpdate), this::parseDeviceResponse);
     }
 
     /**
@@ -538,6 +571,17 @@ public class RegistryManager
             throw new IllegalArgumentException("etag cannot be null or empty");
         }
 
+        HttpRequest request = createRemoveDeviceRequest(deviceId, etag);
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_050: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_051: [The function shall verify the response status and throw proper Exception]
+        IotHubExceptionManager.httpResponseVerification(response);
+    }
+
+    private HttpRequest createRemoveDeviceRequest(String deviceId, String etag) throws IOException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_047: [The function shall get the URL for the device]
         URL url = iotHubConnectionString.getUrlDevice(deviceId);
 
@@ -549,12 +593,7 @@ public class RegistryManager
         request.setReadTimeoutMillis(DEFAULT_HTTP_TIMEOUT_MS);
         request.setHeaderField("authorization", sasToken);
         request.setHeaderField("If-Match", etag);
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_050: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_051: [The function shall verify the response status and throw proper Exception]
-        IotHubExceptionManager.httpResponseVerification(response);
+        return request;
     }
 
     /**
@@ -574,21 +613,12 @@ public class RegistryManager
             throw new IllegalArgumentException("deviceId cannot be null or empty");
         }
 
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_053: [The function shall create an async wrapper around the removeDevice() function call, handle the return value or delegate exception]
-        final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
-        executor.submit(() ->
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createRemoveDeviceRequest(deviceId, "*"), response ->
         {
-            try
-            {
-                removeDevice(deviceId);
-                future.complete(true);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
+            IotHubExceptionManager.httpResponseVerification(response);
+            return true;
         });
-        return future;
     }
 
     /**
@@ -599,6 +629,16 @@ public class RegistryManager
      * @throws IotHubException This exception is thrown if the response verification failed
      */
     public RegistryStatistics getStatistics() throws IOException, IotHubException, JsonSyntaxException
+    {
+        HttpRequest request = createGetStatisticsRequest();
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_057: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        return parseStatisticsResponse(response);
+    }
+
+    private HttpRequest createGetStatisticsRequest() throws IOException
     {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_054: [The function shall get the URL for the device]
         URL url = iotHubConnectionString.getUrlDeviceStatistics();
@@ -607,18 +647,17 @@ public class RegistryManager
         String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_056: [The function shall create a new HttpRequest for getting statistics a device from IotHub]
-        HttpRequest request = CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
-
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_057: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
+        return CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
+    }
 
+    private RegistryStatistics parseStatisticsResponse(HttpResponse response) throws IotHubException
+    {
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_058: [The function shall verify the response status and throw proper Exception]
         IotHubExceptionManager.httpResponseVerification(response);
 
         // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_059: [The function shall create a new RegistryStatistics object from the response and return with it]
         String bodyStr = new String(response.getBody(), StandardCharsets.UTF_8);
-        RegistryStatistics registryStatistics = new RegistryStatistics(new RegistryStatisticsParser(bodyStr));
-        return registryStatistics;
+        return new RegistryStatistics(new RegistryStatisticsParser(bodyStr));
     }
 
     /**
@@ -630,21 +669,8 @@ public class RegistryManager
      */
     public CompletableFuture<RegistryStatistics> getStatisticsAsync() throws IOException, IotHubException
     {
-        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_060: [The function shall create an async wrapper around the getStatistics() function call, handle the return value or delegate exception]
-        final CompletableFuture<RegistryStatistics> future = new CompletableFuture<>();
-        executor.submit(() ->
-        {
-            try
-            {
-                RegistryStatistics responseDevice = getStatistics();
-                future.complete(responseDevice);
-            }
-            catch (IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(this::createGetStatisticsRequest, this::parseStatisticsResponse);
     }
 
     /**
@@ -669,6 +695,18 @@ public class RegistryManager
             throw new IllegalArgumentException("Export blob uri cannot be null");
         }
 
+        HttpRequest request = createExportDevicesRequest(exportBlobContainerUri, excludeKeys);
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_065: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_066: [The function shall verify the response status and throw proper Exception]
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_067: [The function shall create a new JobProperties object from the response and return it]
+        return ProcessJobResponse(response);
+    }
+
+    private HttpRequest createExportDevicesRequest(String exportBlobContainerUri, Boolean excludeKeys) throws IOException
+    {
         // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_062: [The function shall get the URL for the bulk export job creation]
         URL url = iotHubConnectionString.getUrlCreateExportImportJob();
 
@@ -677,14 +715,7 @@ public class RegistryManager
 
         // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_064: [The function shall create a new HttpRequest for the bulk export job creation ]
         String jobPropertiesJson = CreateExportJobPropertiesJson(exportBlobContainerUri, excludeKeys);
-        HttpRequest request = CreateRequest(url, HttpMethod.POST, jobPropertiesJson.getBytes(), sasTokenString);
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_065: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_066: [The function shall verify the response status and throw proper Exception]
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_067: [The function shall create a new JobProperties object from the response and return it]
-        return ProcessJobResponse(response);
+        return CreateRequest(url, HttpMethod.POST, jobPropertiesJson.getBytes(), sasTokenString);
     }
 
     /**
@@ -700,22 +731,16 @@ public class RegistryManager
     public CompletableFuture<JobProperties> exportDevicesAsync(String exportBlobContainerUri, Boolean excludeKeys)
             throws IllegalArgumentException, IOException, IotHubException, JsonSyntaxException
     {
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_068: [The function shall create an async wrapper around the
-        // exportDevices() function call, handle the return value or delegate exception]
-        final CompletableFuture<JobProperties> future = new CompletableFuture<>();
-        executor.submit(() ->
+        if (exportBlobContainerUri == null || excludeKeys == null)
         {
-            try
-            {
-                JobProperties responseJobProperties = exportDevices(exportBlobContainerUri, excludeKeys);
-                future.complete(responseJobProperties);
-            }
-            catch (IllegalArgumentException | IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_105: [If any of the input parameters is null, the function shall return a future completed with an IllegalArgumentException.]
+            CompletableFuture<JobProperties> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("Export blob uri cannot be null"));
+            return future;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createExportDevicesRequest(exportBlobContainerUri, excludeKeys), this::ProcessJobResponse);
     }
 
     /**
@@ -739,6 +764,18 @@ public class RegistryManager
             throw new IllegalArgumentException("Import blob uri or output blob uri cannot be null");
         }
 
+        HttpRequest request = createImportDevicesRequest(importBlobContainerUri, outputBlobContainerUri);
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_073: [The function shall send the created request and get the response]
+        HttpResponse response = request.send();
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_074: [The function shall verify the response status and throw proper Exception]
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_075: [The function shall create a new JobProperties object from the response and return it]
+        return ProcessJobResponse(response);
+    }
+
+    private HttpRequest createImportDevicesRequest(String importBlobContainerUri, String outputBlobContainerUri) throws IOException
+    {
         //CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_070: [The function shall get the URL for the bulk import job creation]
         URL url = iotHubConnectionString.getUrlCreateExportImportJob();
 
@@ -747,14 +784,7 @@ public class RegistryManager
 
         // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_072: [The function shall create a new HttpRequest for the bulk import job creation]
         String jobPropertiesJson = CreateImportJobPropertiesJson(importBlobContainerUri, outputBlobContainerUri);
-        HttpRequest request = CreateRequest(url, HttpMethod.POST, jobPropertiesJson.getBytes(), sasTokenString);
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_073: [The function shall send the created request and get the response]
-        HttpResponse response = request.send();
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_074: [The function shall verify the response status and throw proper Exception]
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_075: [The function shall create a new JobProperties object from the response and return it]
-        return ProcessJobResponse(response);
+        return CreateRequest(url, HttpMethod.POST, jobPropertiesJson.getBytes(), sasTokenString);
     }
 
     /**
@@ -771,22 +801,16 @@ public class RegistryManager
     public CompletableFuture<JobProperties> importDevicesAsync(String importBlobContainerUri, String outputBlobContainerUri)
             throws IllegalArgumentException, IOException, IotHubException, JsonSyntaxException
     {
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_076: [The function shall create an async wrapper around
-        // the importDevices() function call, handle the return value or delegate exception]
-        final CompletableFuture<JobProperties> future = new CompletableFuture<>();
-        executor.submit(() ->
+        if (importBlobContainerUri == null || outputBlobContainerUri == null)
         {
-            try
-            {
-                JobProperties responseJobProperties = importDevices(importBlobContainerUri, outputBlobContainerUri);
-                future.complete(responseJobProperties);
-            }
-            catch (IllegalArgumentException | IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_105: [If any of the input parameters is null, the function shall return a future completed with an IllegalArgumentException.]
+            CompletableFuture<JobProperties> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("Import blob uri or output blob uri cannot be null"));
+            return future;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createImportDevicesRequest(importBlobContainerUri, outputBlobContainerUri), this::ProcessJobResponse);
     }
 
     /**
@@ -808,14 +832,7 @@ public class RegistryManager
             throw new IllegalArgumentException("Job id cannot be null");
         }
 
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_078: [The function shall get the URL for the get request]
-        URL url = iotHubConnectionString.getUrlImportExportJob(jobId);
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_079: [The function shall create a new SAS token for the get request **]
-        String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
-
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_080: [The function shall create a new HttpRequest for getting the properties of a job]
-        HttpRequest request = CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
+        HttpRequest request = createGetJobRequest(jobId);
 
         // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_081: [The function shall send the created request and get the response]
         HttpResponse response = request.send();
@@ -825,6 +842,18 @@ public class RegistryManager
         return ProcessJobResponse(response);
     }
 
+    private HttpRequest createGetJobRequest(String jobId) throws IOException
+    {
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_078: [The function shall get the URL for the get request]
+        URL url = iotHubConnectionString.getUrlImportExportJob(jobId);
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_079: [The function shall create a new SAS token for the get request **]
+        String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
+
+        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_080: [The function shall create a new HttpRequest for getting the properties of a job]
+        return CreateRequest(url, HttpMethod.GET, new byte[0], sasTokenString);
+    }
+
     /**
      * Async wrapper for getJob() operation
      * @param jobId jobID as String
@@ -837,22 +866,16 @@ public class RegistryManager
     public CompletableFuture<JobProperties> getJobAsync(
             String jobId) throws IllegalArgumentException, IOException, IotHubException
     {
-        // CODES_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_084: [The function shall create an async wrapper around
-        // the getJob() function call, handle the return value or delegate exception]
-        final CompletableFuture<JobProperties> future = new CompletableFuture<>();
-        executor.submit(() ->
+        if (jobId == null)
         {
-            try
-            {
-                JobProperties responseJobProperties = getJob(jobId);
-                future.complete(responseJobProperties);
-            }
-            catch (IllegalArgumentException | IotHubException | IOException e)
-            {
-                future.completeExceptionally(e);
-            }
-        });
-        return future;
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_105: [If any of the input parameters is null, the function shall return a future completed with an IllegalArgumentException.]
+            CompletableFuture<JobProperties> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("Job id cannot be null"));
+            return future;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+        return sendAsync(() -> createGetJobRequest(jobId), this::ProcessJobResponse);
     }
 
     /**
@@ -1421,6 +1444,262 @@ public class RegistryManager
         IotHubExceptionManager.httpResponseVerification(response);
     }
 
+    /**
+     * Creates, updates or deletes many devices and modules through IotHub's bulk registry operation. The operations are
+     * sent in requests of up to {@value #MAX_BULK_REGISTRY_OPERATION_COUNT} operations, and up to
+     * {@value #DEFAULT_BULK_REGISTRY_CONCURRENCY} requests are sent concurrently.
+     *
+     * @param operations The operations, one per device or module. The import mode of each operation selects whether
+     *                   it is created, updated or deleted, and its module id selects a module instead of its device.
+     * @return The result of each operation, in the order of the operations
+     * @throws IllegalArgumentException This exception is thrown if the operations or one of them is null
+     * @throws IOException This exception is thrown if the calling thread was interrupted while waiting for the results
+     */
+    public List<RegistryOperationResult> bulkRegistryOperations(List<ExportImportDevice> operations) throws IOException, IllegalArgumentException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_093: [The function shall send the operations with the default concurrency and wait for their results.]
+        return bulkRegistryOperations(operations, DEFAULT_BULK_REGISTRY_CONCURRENCY);
+    }
+
+    /**
+     * Creates, updates or deletes many devices and modules through IotHub's bulk registry operation. The operations are
+     * sent in requests of up to {@value #MAX_BULK_REGISTRY_OPERATION_COUNT} operations.
+     *
+     * @param operations The operations, one per device or module
+     * @param maxConcurrentRequests The maximum number of requests sent concurrently. The requests are also bounded
+     *                              by the {@link com.microsoft.azure.sdk.iot.service.transport.http.HttpEngine} in use
+     * @return The result of each operation, in the order of the operations
+     * @throws IllegalArgumentException This exception is thrown if the operations or one of them is null, or if the
+     * max concurrent requests is less than 1
+     * @throws IOException This exception is thrown if the calling thread was interrupted while waiting for the results
+     */
+    public List<RegistryOperationResult> bulkRegistryOperations(List<ExportImportDevice> operations, int maxConcurrentRequests) throws IOException, IllegalArgumentException
+    {
+        try
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_094: [The function shall wait for the future of bulkRegistryOperationsAsync and return its result.]
+            return bulkRegistryOperationsAsync(operations, maxConcurrentRequests).get();
+        }
+        catch (InterruptedException e)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_095: [If the calling thread is interrupted while waiting, the function shall restore the interrupt flag and throw an IOException.]
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the bulk registry operations", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException("The bulk registry operations failed", e.getCause());
+        }
+    }
+
+    /**
+     * Async wrapper for bulkRegistryOperations() operation. The requests are pipelined through
+     * {@link HttpRequest#sendAsync()}: each of up to maxConcurrentRequests workers sends the next pending request as
+     * soon as its previous one was answered, without holding a thread while the request is in flight.
+     *
+     * @param operations The operations, one per device or module
+     * @param maxConcurrentRequests The maximum number of requests sent concurrently
+     * @return The future result of each operation, in the order of the operations. A request that fails as a whole
+     * does not fail the future, instead the results of its operations hold the exception
+     * @throws IllegalArgumentException This exception is thrown if the operations or one of them is null, or if the
+     * max concurrent requests is less than 1
+     */
+    public CompletableFuture<List<RegistryOperationResult>> bulkRegistryOperationsAsync(List<ExportImportDevice> operations, int maxConcurrentRequests) throws IllegalArgumentException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_096: [The function shall throw IllegalArgumentException if the operations or one of them is null, or if the max concurrent requests is less than 1.]
+        if (operations == null || operations.contains(null))
+        {
+            throw new IllegalArgumentException("operations cannot be null or contain null");
+        }
+
+        if (maxConcurrentRequests < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentRequests cannot be less than 1");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_097: [The function shall split the operations in batches of at most MAX_BULK_REGISTRY_OPERATION_COUNT operations.]
+        final List<List<ExportImportDevice>> batches = new ArrayList<>();
+        for (int i = 0; i < operations.size(); i += MAX_BULK_REGISTRY_OPERATION_COUNT)
+        {
+            batches.add(new ArrayList<>(operations.subList(i, Math.min(i + MAX_BULK_REGISTRY_OPERATION_COUNT, operations.size()))));
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_098: [The function shall send the batches from at most maxConcurrentRequests workers, each sending the next unsent batch once its previous batch was answered.]
+        final AtomicInteger nextBatch = new AtomicInteger();
+        final AtomicReferenceArray<List<RegistryOperationResult>> batchResults = new AtomicReferenceArray<>(batches.size());
+        int workerCount = Math.min(maxConcurrentRequests, batches.size());
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[workerCount];
+        for (int i = 0; i < workerCount; i++)
+        {
+            workers[i] = sendNextBulkRegistryOperation(batches, nextBatch, batchResults);
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_099: [The future shall complete with the results of all batches, in the order of the operations.]
+        return CompletableFuture.allOf(workers).thenApply(ignored ->
+        {
+            List<RegistryOperationResult> results = new ArrayList<>(operations.size());
+            for (int i = 0; i < batchResults.length(); i++)
+            {
+                results.addAll(batchResults.get(i));
+            }
+            return results;
+        });
+    }
+
+    private CompletableFuture<Void> sendNextBulkRegistryOperation(List<List<ExportImportDevice>> batches, AtomicInteger nextBatch, AtomicReferenceArray<List<RegistryOperationResult>> batchResults)
+    {
+        int batchIndex = nextBatch.getAndIncrement();
+        if (batchIndex >= batches.size())
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return sendBulkRegistryOperation(batches.get(batchIndex)).thenCompose(results ->
+        {
+            batchResults.set(batchIndex, results);
+            return sendNextBulkRegistryOperation(batches, nextBatch, batchResults);
+        });
+    }
+
+    private CompletableFuture<List<RegistryOperationResult>> sendBulkRegistryOperation(List<ExportImportDevice> batch)
+    {
+        HttpRequest request;
+        try
+        {
+            StringBuilder bulkJson = new StringBuilder("[");
+            for (ExportImportDevice operation : batch)
+            {
+                if (bulkJson.length() > 1)
+                {
+                    bulkJson.append(',');
+                }
+                bulkJson.append(operation.toExportImportDeviceParser().toJson());
+            }
+            bulkJson.append(']');
+
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_100: [The function shall send each batch as a json array in a POST request to the bulk registry operations URL.]
+            URL url = iotHubConnectionString.getUrlBulkRegistryOperations();
+            String sasTokenString = new IotHubServiceSasToken(this.iotHubConnectionString).toString();
+            request = CreateRequest(url, HttpMethod.POST, bulkJson.toString().getBytes(StandardCharsets.UTF_8), sasTokenString);
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            return CompletableFuture.completedFuture(failedBulkRegistryOperation(batch, e));
+        }
+
+        if (!startOperation())
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_107: [An async operation started after the registry manager was closed shall fail with an IOException.]
+            return CompletableFuture.completedFuture(failedBulkRegistryOperation(batch, new IOException("The registry manager was closed")));
+        }
+
+        CompletableFuture<List<RegistryOperationResult>> future = sendStartedOperation(request).handleAsync((response, throwable) ->
+        {
+            if (throwable != null)
+            {
+                return failedBulkRegistryOperation(batch, unwrapCompletionException(throwable));
+            }
+
+            try
+            {
+                return parseBulkRegistryOperationResponse(batch, response);
+            }
+            catch (IotHubException | IllegalStateException e)
+            {
+                return failedBulkRegistryOperation(batch, e);
+            }
+        }, executor);
+        future.whenComplete((result, throwable) -> completeOperation());
+        return future;
+    }
+
+    private static List<RegistryOperationResult> failedBulkRegistryOperation(List<ExportImportDevice> batch, Exception e)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_101: [If a batch cannot be sent or IotHub rejects it as a whole, the result of each of its operations shall hold the exception.]
+        List<RegistryOperationResult> results = new ArrayList<>(batch.size());
+        for (ExportImportDevice operation : batch)
+        {
+            results.add(new RegistryOperationResult(operation, e));
+        }
+        return results;
+    }
+
+    private static List<RegistryOperationResult> parseBulkRegistryOperationResponse(List<ExportImportDevice> batch, HttpResponse response) throws IotHubException
+    {
+        // IotHub answers a partially failed bulk operation with status 400 and the per item errors in the body
+        JsonObject bulkResult = null;
+        if (response.getStatus() == 200 || response.getStatus() == 400)
+        {
+            byte[] body = (response.getStatus() == 200) ? response.getBody() : response.getErrorReason();
+            bulkResult = readBulkRegistryOperationResult(body);
+        }
+
+        if (bulkResult == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_102: [If the response is not a bulk registry operation result, the function shall verify the response status and throw proper Exception.]
+            IotHubExceptionManager.httpResponseVerification(response);
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_103: [The function shall report the errors listed in the bulk registry operation result for the matching device and module, and report every other operation of the batch as successful.]
+        Map<String, JsonObject> errors = new HashMap<>();
+        if (bulkResult != null && bulkResult.get(BULK_ERRORS_NAME) instanceof JsonArray)
+        {
+            for (JsonObject error : bulkResult.getJsonArray(BULK_ERRORS_NAME).getValuesAs(JsonObject.class))
+            {
+                errors.put(bulkOperationKey(error.getString(BULK_DEVICE_ID_NAME, null), error.getString(BULK_MODULE_ID_NAME, null)), error);
+            }
+        }
+
+        List<RegistryOperationResult> results = new ArrayList<>(batch.size());
+        for (ExportImportDevice operation : batch)
+        {
+            JsonObject error = errors.get(bulkOperationKey(operation.getId(), operation.getModuleId()));
+            if (error == null)
+            {
+                results.add(new RegistryOperationResult(operation, null, null));
+            }
+            else
+            {
+                results.add(new RegistryOperationResult(operation, bulkErrorCode(error), error.getString(BULK_ERROR_STATUS_NAME, null)));
+            }
+        }
+        return results;
+    }
+
+    private static JsonObject readBulkRegistryOperationResult(byte[] body)
+    {
+        if (body == null || body.length == 0)
+        {
+            return null;
+        }
+
+        try (JsonReader jsonReader = Json.createReader(new StringReader(new String(body, StandardCharsets.UTF_8))))
+        {
+            JsonObject jsonObject = jsonReader.readObject();
+            return jsonObject.containsKey(BULK_IS_SUCCESSFUL_NAME) ? jsonObject : null;
+        }
+        catch (javax.json.JsonException | IllegalStateException e)
+        {
+            return null;
+        }
+    }
+
+    private static String bulkErrorCode(JsonObject error)
+    {
+        // an error is reported even if IotHub left out its code, so the code is never null
+        JsonValue errorCode = error.get(BULK_ERROR_CODE_NAME);
+        if (errorCode instanceof JsonString)
+        {
+            return ((JsonString) errorCode).getString();
+        }
+        return (errorCode == null || errorCode == JsonValue.NULL) ? "" : errorCode.toString();
+    }
+
+    private static String bulkOperationKey(String deviceId, String moduleId)
+    {
+        return (moduleId == null) ? deviceId : deviceId + "/" + moduleId;
+    }
+
     private String CreateExportJobPropertiesJson(String exportBlobContainerUri, Boolean excludeKeysInExport)
     {
         JobProperties jobProperties = new JobProperties();
@@ -1457,4 +1736,58 @@ public class RegistryManager
         request.setHeaderField("charset", "utf-8");
         return request;
     }
+
+    private <T> CompletableFuture<T> sendAsync(RequestFactory requestFactory, ResponseParser<T> responseParser)
+    {
+        HttpRequest request;
+        try
+        {
+            request = requestFactory.create();
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        if (!startOperation())
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_107: [An async operation started after the registry manager was closed shall fail with an IOException.]
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("The registry manager was closed"));
+            return future;
+        }
+
+        // the response is parsed on the executor so that the threads of the http engine only wait for responses
+        CompletableFuture<T> future = sendStartedOperation(request).thenApplyAsync(response ->
+        {
+            try
+            {
+                return responseParser.parse(response);
+            }
+            catch (IotHubException | IOException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        future.whenComplete((result, throwable) -> completeOperation());
+        return future;
+    }
+
+    private static Exception unwrapCompletionException(Throwable throwable)
+    {
+        Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+        return (cause instanceof Exception) ? (Exception) cause : new IOException(cause);
+    }
+
+    private interface RequestFactory
+    {
+        HttpRequest create() throws IOException;
+    }
+
+    private interface ResponseParser<T>
+    {
+        T parse(HttpResponse response) throws IotHubException, IOException;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service;
+
+/**
+ * The outcome of one device or module operation of a bulk registry operation. See
+ * {@link RegistryManager#bulkRegistryOperations(java.util.List)}.
+ */
+public class RegistryOperationResult
+{
+    private final String deviceId;
+    private final String moduleId;
+    private final ImportMode importMode;
+    private final boolean successful;
+    private final String errorCode;
+    private final String errorStatus;
+    private final Exception exception;
+
+    /**
+     * Constructor for the result of an operation that IotHub processed.
+     * @param operation the requested operation.
+     * @param errorCode the error code reported by IotHub, or null if the operation succeeded.
+     * @param errorStatus the error description reported by IotHub, or null if the operation succeeded.
+     */
+    RegistryOperationResult(ExportImportDevice operation, String errorCode, String errorStatus)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYOPERATIONRESULT_34_001: [The constructor shall save the device id, module id and import mode of the operation, and the operation shall be successful if and only if IotHub reported no error code.]
+        this.deviceId = operation.getId();
+        this.moduleId = operation.getModuleId();
+        this.importMode = operation.getImportMode();
+        this.successful = (errorCode == null);
+        this.errorCode = errorCode;
+        this.errorStatus = errorStatus;
+        this.exception = null;
+    }
+
+    /**
+     * Constructor for the result of an operation whose request failed as a whole.
+     * @param operation the requested operation.
+     * @param exception the reason why the request failed.
+     */
+    RegistryOperationResult(ExportImportDevice operation, Exception exception)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_REGISTRYOPERATIONRESULT_34_002: [The constructor shall save the device id, module id and import mode of the operation and the exception, and the operation shall not be successful.]
+        this.deviceId = operation.getId();
+        this.moduleId = operation.getModuleId();
+        this.importMode = operation.getImportMode();
+        this.successful = false;
+        this.errorCode = null;
+        this.errorStatus = exception.getMessage();
+        this.exception = exception;
+    }
+
+    /**
+     * @return the id of the device the operation was requested for.
+     */
+    public String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    /**
+     * @return the id of the module the operation was requested for, or null if it was requested for a device.
+     */
+    public String getModuleId()
+    {
+        return this.moduleId;
+    }
+
+    /**
+     * @return the requested import mode.
+     */
+    public ImportMode getImportMode()
+    {
+        return this.importMode;
+    }
+
+    /**
+     * @return true if IotHub applied the operation.
+     */
+    public boolean isSuccessful()
+    {
+        return this.successful;
+    }
+
+    /**
+     * @return the error code IotHub reported for the operation, such as "DeviceAlreadyExists", or null if IotHub
+     * reported no error.
+     */
+    public String getErrorCode()
+    {
+        return this.errorCode;
+    }
+
+    /**
+     * @return the description of the error, or null if the operation succeeded.
+     */
+    public String getErrorStatus()
+    {
+        return this.errorStatus;
+    }
+
+    /**
+     * @return the exception that failed the request that carried the operation, or null if IotHub processed it. The
+     * request can be retried when this is an IOException or an IotHubException for a transient error.
+     */
+    public Exception getException()
+    {
+        return this.exception;
+    }
+}
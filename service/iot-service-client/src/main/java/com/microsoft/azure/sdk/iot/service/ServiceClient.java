@@ -188,7 +188,8 @@ public class ServiceClient
     }
 
     /**
-     * Provide asynchronous access to send()
+     * Send a one-way message to the specified device without waiting for IotHub to accept it. The messages share one
+     * AMQP connection and many of them can be in flight at once.
      *
      * @param deviceId The device identifier for the target device
      * @param message The message for the device
@@ -197,18 +198,31 @@ public class ServiceClient
     public CompletableFuture<Void> sendAsync(String deviceId, Message message)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_12_016: [The function shall create an async wrapper around the send() function call]
-        final CompletableFuture<Void> future = new CompletableFuture<>();
-        executor.submit(() -> {
-        try
-        {
-            send(deviceId, message);
-            future.complete(null);
-        } catch (Exception e)
+        return this.sendAsync(deviceId, null, message);
+    }
+
+    /**
+     * Send a one-way message to the specified module without waiting for IotHub to accept it. The messages share one
+     * AMQP connection and many of them can be in flight at once.
+     *
+     * @param deviceId The device identifier for the target device
+     * @param moduleId The module identifier for the target device
+     * @param message The message for the device
+     * @return The future object for the requested operation. It completes exceptionally with an IotHubException if
+     * IotHub rejects the message, or with an IOException if the AMQP sender is not initialized or the connection fails
+     */
+    public CompletableFuture<Void> sendAsync(String deviceId, String moduleId, Message message)
+    {
+        if (this.amqpMessageSender == null)
         {
-            future.completeExceptionally(e);
+            // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_34_001: [The function shall return a future completed with an IOException if the member AMQP sender object has not been initialized]
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("AMQP sender is not initialized"));
+            return future;
         }
-        });
-        return future;
+
+        // Codes_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_34_002: [The function shall return the future of sendAsync() on the member AMQP sender object]
+        return this.amqpMessageSender.sendAsync(deviceId, moduleId, message);
     }
 
     /**
@@ -13,18 +13,35 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DeviceMethod enables service client to directly invoke methods on various devices from service client.
+ * An instance can be shared by many threads, each invocation waits only for its own device.
  */
 public class DeviceMethod
 {
     private IotHubConnectionString iotHubConnectionString = null;
-    private Integer requestId = 0;
+    private final AtomicInteger requestId = new AtomicInteger();
     private static final int DEFAULT_RESPONSE_TIMEOUT = 30; // default response timeout is 30 seconds
     private static final int DEFAULT_CONNECT_TIMEOUT = 0;
     private static final int THOUSAND_MS = 1000;
+    private static final String INVOCATION_THREAD_NAME_PREFIX = "azure-iot-sdk-DeviceMethod-";
+
+    /** The number of invocations in flight of {@link #invokeMany(Collection, String, Object, MethodInvocationCallback)} */
+    public static final int DEFAULT_MAX_CONCURRENT_INVOCATIONS = 16;
+
     /**
      * Create a DeviceMethod instance from the information in the connection string.
      *
@@ -61,7 +78,7 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    public synchronized MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    public MethodResult invoke(String deviceId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
     {
         /* Codes_SRS_DEVICEMETHOD_21_004: [The invoke shall throw IllegalArgumentException if the provided deviceId is null or empty.] */
         if((deviceId == null) || deviceId.isEmpty())
@@ -94,7 +111,7 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    public synchronized MethodResult invoke(String deviceId, String moduleId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    public MethodResult invoke(String deviceId, String moduleId, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
     {
         /* Codes_SRS_DEVICEMETHOD_28_001: [The invoke shall throw IllegalArgumentException if the provided deviceId is null or empty.] */
         if((deviceId == null) || deviceId.isEmpty())
@@ -132,7 +149,124 @@ public class DeviceMethod
      * @throws IotHubException This exception is thrown if the response verification failed
      * @throws IOException This exception is thrown if the IO operation failed
      */
-    private synchronized MethodResult invokeMethod(URL url, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    private MethodResult invokeMethod(URL url, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload) throws IotHubException, IOException
+    {
+        String json = toMethodJson(methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload);
+        long timeoutInMs = toTimeoutInMs(responseTimeoutInSeconds, connectTimeoutInSeconds);
+
+        /* Codes_SRS_DEVICEMETHOD_21_009: [The invoke shall send the created request and get the response using the HttpRequester.] */
+        /* Codes_SRS_DEVICEMETHOD_21_010: [The invoke shall create a new HttpRequest with http method as `POST`.] */
+        /* Codes_SRS_DEVICEMETHOD_34_001: [Concurrent invocations shall not wait for each other, and each of them shall use a unique request id.] */
+        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.POST, json.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId.getAndIncrement()), timeoutInMs);
+
+        return toMethodResult(response);
+    }
+
+    /**
+     * Directly invokes a method on many devices, with up to {@value #DEFAULT_MAX_CONCURRENT_INVOCATIONS} invocations
+     * in flight, and the default timeouts.
+     *
+     * @param deviceIds are the devices where the request is sent to.
+     * @param methodName is the name of the method that shall be invoked on the devices.
+     * @param payload is the the method parameter
+     * @param callback receives the result of each device as soon as it is known. It can be {@code null}.
+     * @return the future summary of all the invocations.
+     * @throws IllegalArgumentException This exception is thrown if one of the parameters is not valid
+     * @see #invokeMany(Collection, String, Long, Long, Object, int, MethodInvocationCallback)
+     */
+    public CompletableFuture<MethodInvocationSummary> invokeMany(Collection<String> deviceIds, String methodName, Object payload, MethodInvocationCallback callback) throws IllegalArgumentException
+    {
+        return invokeMany(deviceIds, methodName, null, null, payload, DEFAULT_MAX_CONCURRENT_INVOCATIONS, callback);
+    }
+
+    /**
+     * Directly invokes a method on many devices, without waiting for the devices to answer.
+     *
+     * <p>At most maxConcurrentInvocations invocations are in flight at any time; the next device is invoked as soon as
+     * one of them completes, and its result is passed to the callback. Every invocation ends after the response
+     * timeout plus the connect timeout, so a device that does not answer only delays its own result. A failed
+     * invocation does not stop the others, its exception is reported in its {@link MethodInvocationResult}.</p>
+     *
+     * <p>The invocations are sent from a pool of maxConcurrentInvocations daemon threads that belongs to this call
+     * and stops once every invocation completed. They neither wait for nor hold the threads of the http engine shared
+     * by the async operations of the other clients, so the latency of each result is measured from the moment its
+     * request is sent.</p>
+     *
+     * @param deviceIds are the devices where the request is sent to.
+     * @param methodName is the name of the method that shall be invoked on the devices.
+     * @param responseTimeoutInSeconds is the maximum waiting time for a response from each device in seconds.
+     * @param connectTimeoutInSeconds is the maximum waiting time for a response from the connection in seconds.
+     * @param payload is the the method parameter
+     * @param maxConcurrentInvocations is the maximum number of invocations in flight.
+     * @param callback receives the result of each device as soon as it is known. It can be {@code null}.
+     * @return the future summary of all the invocations, completed after the callback received every result.
+     * @throws IllegalArgumentException This exception is thrown if one of the parameters is not valid
+     */
+    public CompletableFuture<MethodInvocationSummary> invokeMany(
+            Collection<String> deviceIds, String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload,
+            int maxConcurrentInvocations, MethodInvocationCallback callback)
+            throws IllegalArgumentException
+    {
+        /* Codes_SRS_DEVICEMETHOD_34_002: [The invokeMany shall throw IllegalArgumentException if the provided deviceIds is null, empty, or contains a null or empty id.] */
+        if ((deviceIds == null) || deviceIds.isEmpty())
+        {
+            throw new IllegalArgumentException("deviceIds is empty or null.");
+        }
+        for (String deviceId : deviceIds)
+        {
+            if ((deviceId == null) || deviceId.isEmpty())
+            {
+                throw new IllegalArgumentException("deviceIds contains an empty or null id.");
+            }
+        }
+
+        /* Codes_SRS_DEVICEMETHOD_34_003: [The invokeMany shall throw IllegalArgumentException if the provided methodName is null, empty, or not valid.] */
+        if ((methodName == null) || methodName.isEmpty())
+        {
+            throw new IllegalArgumentException("methodName is empty or null.");
+        }
+
+        /* Codes_SRS_DEVICEMETHOD_34_004: [The invokeMany shall throw IllegalArgumentException if the provided maxConcurrentInvocations is less than 1.] */
+        if (maxConcurrentInvocations < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentInvocations cannot be less than 1.");
+        }
+
+        /* Codes_SRS_DEVICEMETHOD_34_005: [The invokeMany shall create the Json body once, the same way as the invoke.] */
+        String json = toMethodJson(methodName, responseTimeoutInSeconds, connectTimeoutInSeconds, payload);
+        long timeoutInMs = toTimeoutInMs(responseTimeoutInSeconds, connectTimeoutInSeconds);
+
+        /* Codes_SRS_DEVICEMETHOD_34_006: [The invokeMany shall start up to maxConcurrentInvocations invocations, and start the next one each time an invocation completes.] */
+        int invocationThreads = Math.min(maxConcurrentInvocations, deviceIds.size());
+        MethodFanOut fanOut = new MethodFanOut(new ArrayList<>(deviceIds), json.getBytes(StandardCharsets.UTF_8), timeoutInMs, invocationThreads, callback);
+        for (int i = 0; i < invocationThreads; i++)
+        {
+            fanOut.invokeNext();
+        }
+
+        return fanOut.summary;
+    }
+
+    private MethodInvocationResult invokeOnDevice(String deviceId, byte[] json, long timeoutInMs)
+    {
+        /* Codes_SRS_DEVICEMETHOD_34_008: [The result of each device shall contain its MethodResult or the exception of its invocation, and the time from sending its request to its completion.] */
+        final long startNanos = System.nanoTime();
+        try
+        {
+            /* Codes_SRS_DEVICEMETHOD_34_007: [The invokeMany shall send the request of each device through DeviceOperations.request, with the Method URL `{iot hub}/twins/{device id}/methods/` and a unique request id.] */
+            URL url = this.iotHubConnectionString.getUrlMethod(deviceId);
+            HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.POST, json, String.valueOf(requestId.getAndIncrement()), timeoutInMs);
+            MethodResult methodResult = toMethodResult(response);
+            return new MethodInvocationResult(deviceId, methodResult, null, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+        catch (Throwable throwable)
+        {
+            Exception exception = (throwable instanceof Exception) ? (Exception) throwable : new ExecutionException(throwable);
+            return new MethodInvocationResult(deviceId, null, exception, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    private static String toMethodJson(String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload)
     {
         /* Codes_SRS_DEVICEMETHOD_21_006: [The invoke shall throw IllegalArgumentException if the provided responseTimeoutInSeconds is negative.] */
         /* Codes_SRS_DEVICEMETHOD_21_007: [The invoke shall throw IllegalArgumentException if the provided connectTimeoutInSeconds is negative.] */
@@ -147,6 +281,11 @@ public class DeviceMethod
             throw new IllegalArgumentException("MethodParser return null Json");
         }
 
+        return json;
+    }
+
+    private static long toTimeoutInMs(Long responseTimeoutInSeconds, Long connectTimeoutInSeconds)
+    {
         long  responseTimeout, connectTimeout;
 
         if (responseTimeoutInSeconds == null)
@@ -168,12 +307,11 @@ public class DeviceMethod
         }
         
         // Calculate total timeout in milliseconds
-        long timeoutInMs = (responseTimeout + connectTimeout) * THOUSAND_MS; 
-               
-        /* Codes_SRS_DEVICEMETHOD_21_009: [The invoke shall send the created request and get the response using the HttpRequester.] */
-        /* Codes_SRS_DEVICEMETHOD_21_010: [The invoke shall create a new HttpRequest with http method as `POST`.] */
-        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.POST, json.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId++), timeoutInMs);
+        return (responseTimeout + connectTimeout) * THOUSAND_MS;
+    }
 
+    private static MethodResult toMethodResult(HttpResponse response)
+    {
         /* Codes_SRS_DEVICEMETHOD_21_013: [The invoke shall deserialize the payload using the `serializer.MethodParser`.] */
         MethodParser methodParserResponse = new MethodParser();
         methodParserResponse.fromJson(new String(response.getBody(), StandardCharsets.UTF_8));
@@ -182,6 +320,91 @@ public class DeviceMethod
         return new MethodResult(methodParserResponse.getStatus(), methodParserResponse.getPayload());
     }
 
+    /**
+     * The state of one invokeMany. Each in flight invocation starts the next one when it completes, so at most
+     * maxConcurrentInvocations are in flight, each of them on its own thread of the pool of the fan-out.
+     */
+    private final class MethodFanOut
+    {
+        private final List<String> deviceIds;
+        private final byte[] json;
+        private final long timeoutInMs;
+        private final ThreadPoolExecutor executor;
+        private final MethodInvocationCallback callback;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final List<MethodInvocationResult> results;
+        private final CompletableFuture<MethodInvocationSummary> summary = new CompletableFuture<>();
+
+        private MethodFanOut(List<String> deviceIds, byte[] json, long timeoutInMs, int threadCount, MethodInvocationCallback callback)
+        {
+            this.deviceIds = deviceIds;
+            this.json = json;
+            this.timeoutInMs = timeoutInMs;
+            this.callback = callback;
+
+            /* Codes_SRS_DEVICEMETHOD_34_011: [The invokeMany shall send the requests from a pool of daemon threads dedicated to the call, with one thread per invocation in flight.] */
+            final AtomicInteger threadIndex = new AtomicInteger();
+            ThreadFactory threadFactory = runnable ->
+            {
+                Thread thread = new Thread(runnable, INVOCATION_THREAD_NAME_PREFIX + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+            this.remaining = new AtomicInteger(deviceIds.size());
+            this.results = Collections.synchronizedList(new ArrayList<>(deviceIds.size()));
+        }
+
+        private void invokeNext()
+        {
+            // Loops instead of recursing on the invocations that complete before their continuation is attached, so
+            // that a long list of devices answering quickly cannot overflow the stack.
+            int index;
+            while ((index = nextIndex.getAndIncrement()) < deviceIds.size())
+            {
+                final String deviceId = deviceIds.get(index);
+                CompletableFuture<MethodInvocationResult> result = CompletableFuture.supplyAsync(() -> invokeOnDevice(deviceId, json, timeoutInMs), executor);
+                if (!result.isDone())
+                {
+                    result.thenAccept(completed ->
+                    {
+                        onCompleted(completed);
+                        invokeNext();
+                    });
+                    return;
+                }
+                onCompleted(result.join());
+            }
+        }
+
+        private void onCompleted(MethodInvocationResult result)
+        {
+            results.add(result);
+
+            /* Codes_SRS_DEVICEMETHOD_34_009: [The invokeMany shall pass each result to the callback as soon as it is known, and ignore the exceptions thrown by the callback.] */
+            if (callback != null)
+            {
+                try
+                {
+                    callback.onInvocationCompleted(result);
+                }
+                catch (RuntimeException e)
+                {
+                    // The callback of the user cannot stop the other invocations.
+                }
+            }
+
+            /* Codes_SRS_DEVICEMETHOD_34_010: [The invokeMany shall complete the future with the MethodInvocationSummary of all the results once every invocation completed.] */
+            if (remaining.decrementAndGet() == 0)
+            {
+                /* Codes_SRS_DEVICEMETHOD_34_012: [The invokeMany shall stop the threads of the call once every invocation completed.] */
+                executor.shutdown();
+                summary.complete(new MethodInvocationSummary(results));
+            }
+        }
+    }
+
     /**
      * Creates a new Job to invoke method on one or multiple devices
      *
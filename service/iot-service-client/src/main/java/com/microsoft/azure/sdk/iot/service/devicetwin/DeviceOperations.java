@@ -15,6 +15,8 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Set of common operations for Twin and Method.
@@ -32,7 +34,10 @@ public class DeviceOperations
     private static final String ACCEPT_CHARSET = "charset=utf-8";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final Integer DEFAULT_HTTP_TIMEOUT_MS = 24000;
-    private static Map<String, String> headers = null;
+
+    // the custom headers set by setHeaders are consumed by the next request of the same thread, so that concurrent
+    // requests of different clients never send each other's headers
+    private static final ThreadLocal<Map<String, String>> headers = new ThreadLocal<>();
 
     /**
      * Send a http request to the IoTHub using the Twin/Method standard, and return its response.
@@ -55,6 +60,124 @@ public class DeviceOperations
             String requestId,
             long timeoutInMs) 
             throws IOException, IotHubException, IllegalArgumentException
+    {
+        return request(iotHubConnectionString, url, method, payload, requestId, timeoutInMs, takeHeaders());
+    }
+
+    /**
+     * Send a http request with custom headers to the IoTHub using the Twin/Method standard, and return its response.
+     *
+     * @param iotHubConnectionString is the connection string for the IoTHub
+     * @param url is the Twin URL for the device ID.
+     * @param method is the HTTP method (GET, POST, DELETE, PATCH, PUT).
+     * @param payload is the array of bytes that contains the payload.
+     * @param requestId is an unique number that identify the request.
+     * @param timeoutInMs is timeout in milliseconds.
+     * @param customHeaders are the additional headers of this request. It can be {@code null}.
+     * @return the result of the request.
+     * @throws IotHubException This exception is thrown if the response verification failed
+     * @throws IOException This exception is thrown if the IO operation failed
+     */
+    public static HttpResponse request(
+            IotHubConnectionString iotHubConnectionString,
+            URL url,
+            HttpMethod method,
+            byte[] payload,
+            String requestId,
+            long timeoutInMs,
+            Map<String, String> customHeaders)
+            throws IOException, IotHubException, IllegalArgumentException
+    {
+        HttpRequest request = createRequest(iotHubConnectionString, url, method, payload, requestId, timeoutInMs, customHeaders);
+
+        /* Codes_SRS_DEVICE_OPERATIONS_21_015: [The request shall send the created request and get the response.] */
+        HttpResponse response = request.send();
+
+        /* Codes_SRS_DEVICE_OPERATIONS_21_016: [If the resulted HttpResponseStatus represents fail, the request shall throw proper Exception by calling httpResponseVerification.] */
+        IotHubExceptionManager.httpResponseVerification(response);
+        
+        /* Codes_SRS_DEVICE_OPERATIONS_21_017: [If the resulted status represents success, the request shall return the http response.] */
+        return response;
+    }
+
+    /**
+     * Send a http request to the IoTHub using the Twin/Method standard through {@link HttpRequest#sendAsync()}.
+     *
+     * @param iotHubConnectionString is the connection string for the IoTHub
+     * @param url is the Twin URL for the device ID.
+     * @param method is the HTTP method (GET, POST, DELETE, PATCH, PUT).
+     * @param payload is the array of bytes that contains the payload.
+     * @param requestId is an unique number that identify the request.
+     * @param timeoutInMs is timeout in milliseconds.
+     * @return the future result of the request. It completes exceptionally with the IOException of the request or the
+     * IotHubException of the response verification.
+     * @throws IOException This exception is thrown if the request could not be created
+     * @throws IllegalArgumentException This exception is thrown if one of the parameters is not valid
+     */
+    public static CompletableFuture<HttpResponse> requestAsync(
+            IotHubConnectionString iotHubConnectionString,
+            URL url,
+            HttpMethod method,
+            byte[] payload,
+            String requestId,
+            long timeoutInMs)
+            throws IOException, IllegalArgumentException
+    {
+        return requestAsync(iotHubConnectionString, url, method, payload, requestId, timeoutInMs, takeHeaders());
+    }
+
+    /**
+     * Send a http request with custom headers to the IoTHub using the Twin/Method standard through
+     * {@link HttpRequest#sendAsync()}.
+     *
+     * @param iotHubConnectionString is the connection string for the IoTHub
+     * @param url is the Twin URL for the device ID.
+     * @param method is the HTTP method (GET, POST, DELETE, PATCH, PUT).
+     * @param payload is the array of bytes that contains the payload.
+     * @param requestId is an unique number that identify the request.
+     * @param timeoutInMs is timeout in milliseconds.
+     * @param customHeaders are the additional headers of this request. It can be {@code null}.
+     * @return the future result of the request. It completes exceptionally with the IOException of the request or the
+     * IotHubException of the response verification.
+     * @throws IOException This exception is thrown if the request could not be created
+     * @throws IllegalArgumentException This exception is thrown if one of the parameters is not valid
+     */
+    public static CompletableFuture<HttpResponse> requestAsync(
+            IotHubConnectionString iotHubConnectionString,
+            URL url,
+            HttpMethod method,
+            byte[] payload,
+            String requestId,
+            long timeoutInMs,
+            Map<String, String> customHeaders)
+            throws IOException, IllegalArgumentException
+    {
+        /* Codes_SRS_DEVICE_OPERATIONS_34_023: [The requestAsync shall create the same request as the request, send it through HttpRequest.sendAsync, and verify the response status.] */
+        HttpRequest request = createRequest(iotHubConnectionString, url, method, payload, requestId, timeoutInMs, customHeaders);
+
+        return request.sendAsync().thenApply(response ->
+        {
+            try
+            {
+                IotHubExceptionManager.httpResponseVerification(response);
+            }
+            catch (IotHubException e)
+            {
+                throw new CompletionException(e);
+            }
+            return response;
+        });
+    }
+
+    private static HttpRequest createRequest(
+            IotHubConnectionString iotHubConnectionString,
+            URL url,
+            HttpMethod method,
+            byte[] payload,
+            String requestId,
+            long timeoutInMs,
+            Map<String, String> customHeaders)
+            throws IOException, IllegalArgumentException
     {
         /* Codes_SRS_DEVICE_OPERATIONS_21_001: [The request shall throw IllegalArgumentException if the provided `iotHubConnectionString` is null.] */
         if(iotHubConnectionString == null)
@@ -119,29 +242,31 @@ public class DeviceOperations
         /* Codes_SRS_DEVICE_OPERATIONS_21_014: [The request shall add to the HTTP header a `Content-Type` key with `application/json; charset=utf-8`.] */
         request.setHeaderField(CONTENT_TYPE, ACCEPT_VALUE + "; " + ACCEPT_CHARSET);
 
-        if (headers != null)
+        if (customHeaders != null)
         {
             //SRS_DEVICE_OPERATIONS_25_019: [The request shall add to the HTTP header all the additional custom headers set for this request.]
-            for(Map.Entry<String, String> header : headers.entrySet())
+            for(Map.Entry<String, String> header : customHeaders.entrySet())
             {
                 request.setHeaderField(header.getKey(), header.getValue());
             }
-
-            headers = null;
         }
 
-        /* Codes_SRS_DEVICE_OPERATIONS_21_015: [The request shall send the created request and get the response.] */
-        HttpResponse response = request.send();
+        return request;
+    }
 
-        /* Codes_SRS_DEVICE_OPERATIONS_21_016: [If the resulted HttpResponseStatus represents fail, the request shall throw proper Exception by calling httpResponseVerification.] */
-        IotHubExceptionManager.httpResponseVerification(response);
-        
-        /* Codes_SRS_DEVICE_OPERATIONS_21_017: [If the resulted status represents success, the request shall return the http response.] */
-        return response;
+    private static Map<String, String> takeHeaders()
+    {
+        // Codes_SRS_DEVICE_OPERATIONS_34_024: [The request without custom headers shall take the headers set by the calling thread before validating its parameters, so that they are not used again even if the request fails.]
+        Map<String, String> customHeaders = headers.get();
+        headers.remove();
+        return customHeaders;
     }
 
     /**
-     * Sets headers to be used on next HTTP request
+     * Sets headers to be used on next HTTP request sent by the calling thread. Prefer the overloads of
+     * {@link #request(IotHubConnectionString, URL, HttpMethod, byte[], String, long, Map)} and
+     * {@link #requestAsync(IotHubConnectionString, URL, HttpMethod, byte[], String, long, Map)} that take the headers,
+     * since the headers set here stay on the thread until its next request.
      * @param httpHeaders non null and non empty custom headers
      * @throws IllegalArgumentException This exception is thrown if headers were null or empty
      */
@@ -154,6 +279,7 @@ public class DeviceOperations
         }
 
         //SRS_DEVICE_OPERATIONS_25_020: [This method shall set the headers map to be used for next request only.]
-        headers = httpHeaders;
+        // Codes_SRS_DEVICE_OPERATIONS_34_022: [The headers shall only be used by the next request sent by the calling thread.]
+        headers.set(httpHeaders);
     }
 }
@@ -13,18 +13,30 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class DeviceTwin
 {
     private IotHubConnectionString iotHubConnectionString = null;
-    private Integer requestId = 0;
+    private final AtomicInteger requestId = new AtomicInteger();
     private final long USE_DEFAULT_TIMEOUT = 0;
     private final int DEFAULT_PAGE_SIZE = 100;
 
+    /** The number of device ids in each query of {@link #getTwins(Collection)} */
+    public static final int DEFAULT_TWIN_BATCH_SIZE = 100;
+
+    /** The number of queries in flight of {@link #getTwins(Collection)} */
+    public static final int DEFAULT_MAX_CONCURRENT_TWIN_QUERIES = 4;
+
     /**
      * Static constructor to create instance from connection string
      *
@@ -88,6 +100,121 @@ public class DeviceTwin
         getTwinOperation(url, device);
     }
 
+    /**
+     * This method retrieves the device twins of many devices, looking them up with queries of
+     * {@link #DEFAULT_TWIN_BATCH_SIZE} device ids each instead of one request per device.
+     *
+     * @param deviceIds The ids of the devices for which device twins are to be retrieved.
+     * @return The device twins found, by device id. Devices that do not exist are not in the map.
+     * @throws IOException This exception is thrown if the IO operation failed
+     * @throws IotHubException This exception is thrown if the response verification failed
+     * @see #getTwins(Collection, int, int)
+     */
+    public Map<String, DeviceTwinDevice> getTwins(Collection<String> deviceIds) throws IotHubException, IOException
+    {
+        return getTwins(deviceIds, DEFAULT_TWIN_BATCH_SIZE, DEFAULT_MAX_CONCURRENT_TWIN_QUERIES);
+    }
+
+    /**
+     * This method retrieves the device twins of many devices, looking them up with queries of up to batchSize device
+     * ids each, `SELECT * FROM devices WHERE deviceId IN [...]`, instead of one request per device. Up to
+     * maxConcurrentQueries queries are in flight at the same time. Module twins are not retrieved.
+     *
+     * @param deviceIds The ids of the devices for which device twins are to be retrieved. Repeated ids are looked up once.
+     * @param batchSize The maximum number of device ids in each query.
+     * @param maxConcurrentQueries The maximum number of queries in flight at the same time.
+     * @return The device twins found, by device id. Devices that do not exist are not in the map.
+     * @throws IllegalArgumentException This exception is thrown if deviceIds is null, empty, or contains a null or
+     * empty id, or if batchSize or maxConcurrentQueries is less than 1
+     * @throws IOException This exception is thrown if the IO operation failed
+     * @throws IotHubException This exception is thrown if the response verification failed. The queries that were
+     * not sent yet are not sent.
+     */
+    public Map<String, DeviceTwinDevice> getTwins(Collection<String> deviceIds, int batchSize, int maxConcurrentQueries) throws IotHubException, IOException
+    {
+        if (deviceIds == null || deviceIds.isEmpty())
+        {
+            //Codes_SRS_DEVICETWIN_34_085: [ The method shall throw IllegalArgumentException if deviceIds is null, empty, or contains a null or empty id.]
+            throw new IllegalArgumentException("deviceIds cannot be null or empty");
+        }
+
+        Set<String> distinctDeviceIds = new LinkedHashSet<>();
+        for (String deviceId : deviceIds)
+        {
+            if (deviceId == null || deviceId.isEmpty())
+            {
+                //Codes_SRS_DEVICETWIN_34_085: [ The method shall throw IllegalArgumentException if deviceIds is null, empty, or contains a null or empty id.]
+                throw new IllegalArgumentException("deviceIds cannot contain a null or empty id");
+            }
+            distinctDeviceIds.add(deviceId);
+        }
+
+        if (batchSize < 1 || maxConcurrentQueries < 1)
+        {
+            //Codes_SRS_DEVICETWIN_34_086: [ The method shall throw IllegalArgumentException if batchSize or maxConcurrentQueries is less than 1.]
+            throw new IllegalArgumentException("batchSize and maxConcurrentQueries cannot be less than 1");
+        }
+
+        //Codes_SRS_DEVICETWIN_34_087: [ The method shall split the distinct device ids in queries of up to batchSize ids, `SELECT * FROM devices WHERE deviceId IN [...]`, with the ids quoted and escaped as string literals.]
+        List<String> sqlQueries = new ArrayList<>();
+        StringBuilder sqlQuery = null;
+        int idsInQuery = 0;
+        for (String deviceId : distinctDeviceIds)
+        {
+            if (sqlQuery == null)
+            {
+                sqlQuery = new StringBuilder("SELECT * FROM devices WHERE deviceId IN [");
+            }
+            else
+            {
+                sqlQuery.append(", ");
+            }
+            sqlQuery.append('\'').append(deviceId.replace("\\", "\\\\").replace("'", "\\'")).append('\'');
+
+            if (++idsInQuery == batchSize)
+            {
+                sqlQueries.add(sqlQuery.append(']').toString());
+                sqlQuery = null;
+                idsInQuery = 0;
+            }
+        }
+        if (sqlQuery != null)
+        {
+            sqlQueries.add(sqlQuery.append(']').toString());
+        }
+
+        //Codes_SRS_DEVICETWIN_34_088: [ The method shall send up to maxConcurrentQueries queries through Query.requestAllPagesAsync, with the URL from getUrlTwinQuery, and send the next one each time a query completes.]
+        TwinLookup lookup = new TwinLookup(sqlQueries, this.iotHubConnectionString.getUrlTwinQuery(), batchSize);
+        for (int i = 0; i < Math.min(maxConcurrentQueries, sqlQueries.size()); i++)
+        {
+            lookup.queryNext();
+        }
+
+        try
+        {
+            //Codes_SRS_DEVICETWIN_34_089: [ The method shall return the device twins of all the queries by device id, parsed the same way as getNextDeviceTwin.]
+            return lookup.twins.join();
+        }
+        catch (CompletionException e)
+        {
+            //Codes_SRS_DEVICETWIN_34_090: [ If a query failed, the method shall stop sending queries and throw the exception of that query.]
+            Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+            if (cause instanceof IotHubException)
+            {
+                throw (IotHubException) cause;
+            }
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     private void getTwinOperation(URL url, DeviceTwinDevice device) throws IotHubException, IOException
     {
         /*
@@ -104,7 +231,7 @@ public class DeviceTwin
          **Codes_SRS_DEVICETWIN_25_009: [** The function shall send the created request and get the response **]**
          **Codes_SRS_DEVICETWIN_25_010: [** The function shall verify the response status and throw proper Exception **]**
          */
-        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.GET, new byte[0], String.valueOf(requestId++), USE_DEFAULT_TIMEOUT);
+        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.GET, new byte[0], String.valueOf(requestId.getAndIncrement()), USE_DEFAULT_TIMEOUT);
         String twin = new String(response.getBody(), StandardCharsets.UTF_8);
 
         /*
@@ -130,7 +257,7 @@ public class DeviceTwin
      * @throws IOException This exception is thrown if the IO operation failed
      * @throws IotHubException This exception is thrown if the response verification failed
      */
-    public synchronized void updateTwin(DeviceTwinDevice device) throws IotHubException, IOException
+    public void updateTwin(DeviceTwinDevice device) throws IotHubException, IOException
     {
         if (device == null || device.getDeviceId() == null || device.getDeviceId().length() == 0)
         {
@@ -189,7 +316,7 @@ public class DeviceTwin
 
         **Codes_SRS_DEVICETWIN_25_020: [** The function shall verify the response status and throw proper Exception **]**
          */
-        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.PATCH, twinJson.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId++),0);
+        HttpResponse response = DeviceOperations.request(this.iotHubConnectionString, url, HttpMethod.PATCH, twinJson.getBytes(StandardCharsets.UTF_8), String.valueOf(requestId.getAndIncrement()),0);
     }
 
     /**
@@ -240,7 +367,21 @@ public class DeviceTwin
      * @throws IotHubException If Query request was not successful at the IotHub
      * @throws IOException If input parameters are invalid
      */
-    public synchronized Query queryTwin(String sqlQuery, Integer pageSize) throws IotHubException, IOException
+    public Query queryTwin(String sqlQuery, Integer pageSize) throws IotHubException, IOException
+    {
+        return this.queryTwin(sqlQuery, pageSize, 0);
+    }
+
+    /**
+     * Sql style query for twin, requesting the next pages of the response while the current one is consumed.
+     * @param sqlQuery Sql query string to query IotHub for Twin
+     * @param pageSize Size to limit query response by
+     * @param prefetchDepth Number of pages to request ahead of the page being consumed, see {@link Query#setPrefetchDepth(int)}
+     * @return Query Object to be used for looking up responses for this query
+     * @throws IotHubException If Query request was not successful at the IotHub
+     * @throws IOException If input parameters are invalid
+     */
+    public Query queryTwin(String sqlQuery, Integer pageSize, int prefetchDepth) throws IotHubException, IOException
     {
         if (sqlQuery == null || sqlQuery.length() == 0)
         {
@@ -254,8 +395,19 @@ public class DeviceTwin
             throw new IllegalArgumentException("pagesize cannot be negative or zero");
         }
 
+        if (prefetchDepth < 0)
+        {
+            //Codes_SRS_DEVICETWIN_34_081: [ The method shall throw IllegalArgumentException if the prefetch depth is negative.]
+            throw new IllegalArgumentException("prefetchDepth cannot be negative");
+        }
+
         //Codes_SRS_DEVICETWIN_25_050: [ The method shall create a new Query Object of Type TWIN. ]
         Query deviceTwinQuery = new Query(sqlQuery, pageSize, QueryType.TWIN);
+        if (prefetchDepth > 0)
+        {
+            //Codes_SRS_DEVICETWIN_34_082: [ The method shall set the prefetch depth of the Query before sending its first request.]
+            deviceTwinQuery.setPrefetchDepth(prefetchDepth);
+        }
 
         //Codes_SRS_DEVICETWIN_25_049: [ The method shall build the URL for this operation by calling getUrlTwinQuery ]
         //Codes_SRS_DEVICETWIN_25_051: [ The method shall send a Query Request to IotHub as HTTP Method Post on the query Object by calling sendQueryRequest.]
@@ -270,7 +422,7 @@ public class DeviceTwin
      * @throws IotHubException If Query request was not successful at the IotHub
      * @throws IOException If input parameters are invalid
      */
-    public synchronized Query queryTwin(String sqlQuery) throws IotHubException, IOException
+    public Query queryTwin(String sqlQuery) throws IotHubException, IOException
     {
         //Codes_SRS_DEVICETWIN_25_052: [ If the pageSize if not provided then a default pageSize of 100 is used for the query.]
         return this.queryTwin(sqlQuery, DEFAULT_PAGE_SIZE);
@@ -284,7 +436,7 @@ public class DeviceTwin
      * @return the created QueryCollection object that can be used to query the service
      * @throws MalformedURLException If twin query url is not correct
      */
-    public synchronized QueryCollection queryTwinCollection(String sqlQuery) throws MalformedURLException
+    public QueryCollection queryTwinCollection(String sqlQuery) throws MalformedURLException
     {
         //Codes_SRS_DEVICETWIN_34_069: [This function shall return the results of calling queryTwinCollection(sqlQuery, DEFAULT_PAGE_SIZE).]
         return this.queryTwinCollection(sqlQuery, DEFAULT_PAGE_SIZE);
@@ -299,7 +451,7 @@ public class DeviceTwin
      * @return the created QueryCollection object that can be used to query the service
      * @throws MalformedURLException If twin query url is not correct
      */
-    public synchronized QueryCollection queryTwinCollection(String sqlQuery, Integer pageSize) throws MalformedURLException
+    public QueryCollection queryTwinCollection(String sqlQuery, Integer pageSize) throws MalformedURLException
     {
         //Codes_SRS_DEVICETWIN_34_070: [This function shall return a new QueryCollection object of type TWIN with the provided sql query and page size.]
         return new QueryCollection(sqlQuery, pageSize, QueryType.TWIN, this.iotHubConnectionString, this.iotHubConnectionString.getUrlTwinQuery(), HttpMethod.POST, USE_DEFAULT_TIMEOUT);
@@ -314,7 +466,7 @@ public class DeviceTwin
      * @throws IotHubException If IotHub could not respond back to the query successfully
      * @throws IOException If input parameter is incorrect
      */
-    public synchronized boolean hasNextDeviceTwin(Query deviceTwinQuery) throws IotHubException, IOException
+    public boolean hasNextDeviceTwin(Query deviceTwinQuery) throws IotHubException, IOException
     {
         if (deviceTwinQuery == null)
         {
@@ -334,7 +486,7 @@ public class DeviceTwin
      * @throws IotHubException If a non successful response from IotHub is received
      * @throws NoSuchElementException If no additional element was found
      */
-    public synchronized DeviceTwinDevice getNextDeviceTwin(Query deviceTwinQuery) throws IOException, IotHubException, NoSuchElementException
+    public DeviceTwinDevice getNextDeviceTwin(Query deviceTwinQuery) throws IOException, IotHubException, NoSuchElementException
     {
         if (deviceTwinQuery == null)
         {
@@ -357,13 +509,45 @@ public class DeviceTwin
         }
     }
 
+    /**
+     * Returns a stream over the remaining device twin documents of the query, see {@link Query#stream()}.
+     * @param deviceTwinQuery Object corresponding to the query in request
+     * @return the stream of the remaining device twin documents. An element that is not a twin document makes the
+     * stream throw an UncheckedIOException.
+     */
+    public Stream<DeviceTwinDevice> streamDeviceTwins(Query deviceTwinQuery)
+    {
+        if (deviceTwinQuery == null)
+        {
+            //Codes_SRS_DEVICETWIN_34_083: [ The method shall throw IllegalArgumentException if query is null ]
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+
+        //Codes_SRS_DEVICETWIN_34_084: [ The method shall map each element of the Query stream to a DeviceTwinDevice the same way as getNextDeviceTwin.]
+        return deviceTwinQuery.stream().map(nextObject ->
+        {
+            try
+            {
+                if (nextObject instanceof String)
+                {
+                    return jsonToDeviceTwinDevice((String) nextObject);
+                }
+                throw new IOException("Received a response that could not be parsed");
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     /**
      * Returns if the provided deviceTwinQueryCollection has a next page to query.
      * @param deviceTwinQueryCollection the query to check
      * @return True if the provided deviceTwinQueryCollection has a next page to query, false otherwise
      * @throws IllegalArgumentException if the provided deviceTwinQueryCollection is null
      */
-    public synchronized boolean hasNext(QueryCollection deviceTwinQueryCollection)
+    public boolean hasNext(QueryCollection deviceTwinQueryCollection)
     {
         if (deviceTwinQueryCollection == null)
         {
@@ -386,7 +570,7 @@ public class DeviceTwin
      * @throws IotHubException If an IotHubException occurs when querying the service.
      * @throws IOException If an IotHubException occurs when querying the service or if the results of that query don't match expectations.
      */
-    public synchronized QueryCollectionResponse<DeviceTwinDevice> next(QueryCollection deviceTwinQueryCollection) throws IOException, IotHubException
+    public QueryCollectionResponse<DeviceTwinDevice> next(QueryCollection deviceTwinQueryCollection) throws IOException, IotHubException
     {
         //Codes_SRS_DEVICETWIN_34_075: [This function shall call next(deviceTwinQueryCollection, queryOptions) where queryOptions has the deviceTwinQueryCollection's current page size.]
         QueryOptions options = new QueryOptions();
@@ -409,7 +593,7 @@ public class DeviceTwin
      * @throws IotHubException If an IotHubException occurs when querying the service.
      * @throws IOException If an IotHubException occurs when querying the service or if the results of that query don't match expectations.
      */
-    public synchronized QueryCollectionResponse<DeviceTwinDevice> next(QueryCollection deviceTwinQueryCollection, QueryOptions options) throws IOException, IotHubException
+    public QueryCollectionResponse<DeviceTwinDevice> next(QueryCollection deviceTwinQueryCollection, QueryOptions options) throws IOException, IotHubException
     {
         if (deviceTwinQueryCollection == null)
         {
@@ -483,6 +667,82 @@ public class DeviceTwin
         return job;
     }
 
+    /**
+     * The state of one getTwins. Each query in flight sends the next one when it completes, so at most
+     * maxConcurrentQueries are in flight without any thread waiting for them.
+     */
+    private final class TwinLookup
+    {
+        private final List<String> sqlQueries;
+        private final URL url;
+        private final int pageSize;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final Map<String, DeviceTwinDevice> foundTwins = new ConcurrentHashMap<>();
+        private final CompletableFuture<Map<String, DeviceTwinDevice>> twins = new CompletableFuture<>();
+
+        private TwinLookup(List<String> sqlQueries, URL url, int pageSize)
+        {
+            this.sqlQueries = sqlQueries;
+            this.url = url;
+            this.pageSize = pageSize;
+            this.remaining = new AtomicInteger(sqlQueries.size());
+        }
+
+        private void queryNext()
+        {
+            // Loops instead of recursing on the queries that complete before returning, so that a long list of
+            // devices cannot overflow the stack.
+            int index;
+            while (!twins.isDone() && (index = nextIndex.getAndIncrement()) < sqlQueries.size())
+            {
+                CompletableFuture<List<Object>> elements = Query.requestAllPagesAsync(iotHubConnectionString, url, sqlQueries.get(index), pageSize, QueryType.TWIN, USE_DEFAULT_TIMEOUT);
+                if (!elements.isDone())
+                {
+                    elements.whenComplete((completed, throwable) ->
+                    {
+                        onCompleted(completed, throwable);
+                        queryNext();
+                    });
+                    return;
+                }
+                elements.whenComplete(this::onCompleted);
+            }
+        }
+
+        private void onCompleted(List<Object> elements, Throwable throwable)
+        {
+            if (throwable != null)
+            {
+                twins.completeExceptionally(((throwable instanceof CompletionException) && (throwable.getCause() != null)) ? throwable.getCause() : throwable);
+                return;
+            }
+
+            try
+            {
+                for (Object element : elements)
+                {
+                    if (!(element instanceof String))
+                    {
+                        throw new IOException("Received a response that could not be parsed");
+                    }
+                    DeviceTwinDevice twin = jsonToDeviceTwinDevice((String) element);
+                    foundTwins.put(twin.getDeviceId(), twin);
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                twins.completeExceptionally(e);
+                return;
+            }
+
+            if (remaining.decrementAndGet() == 0)
+            {
+                twins.complete(new HashMap<>(foundTwins));
+            }
+        }
+    }
+
     private DeviceTwinDevice jsonToDeviceTwinDevice(String json) throws IOException
     {
         TwinState twinState = TwinState.createFromTwinJson(json);
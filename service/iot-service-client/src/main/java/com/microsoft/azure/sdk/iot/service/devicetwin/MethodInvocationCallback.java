@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.devicetwin;
+
+/**
+ * Receives the results of a method fan-out as the invocations complete.
+ */
+public interface MethodInvocationCallback
+{
+    /**
+     * Called once per device, from the thread that completed the invocation. Calls for different devices may be
+     * concurrent, and a slow callback delays the next invocation of the fan-out.
+     *
+     * @param result the outcome of the invocation on one device.
+     */
+    void onInvocationCompleted(MethodInvocationResult result);
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.devicetwin;
+
+/**
+ * The outcome of the invocation of a method on one device of a fan-out, see
+ * {@link DeviceMethod#invokeMany(java.util.Collection, String, Long, Long, Object, int, MethodInvocationCallback)}.
+ */
+public final class MethodInvocationResult
+{
+    private final String deviceId;
+    private final MethodResult methodResult;
+    private final Exception exception;
+    private final long latencyMillis;
+
+    MethodInvocationResult(String deviceId, MethodResult methodResult, Exception exception, long latencyMillis)
+    {
+        /* Codes_SRS_METHODINVOCATIONRESULT_34_001: [The constructor shall save the device id, the method result, the exception and the latency.] */
+        this.deviceId = deviceId;
+        this.methodResult = methodResult;
+        this.exception = exception;
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @return the id of the device the method was invoked on.
+     */
+    public String getDeviceId()
+    {
+        return this.deviceId;
+    }
+
+    /**
+     * @return the status and payload returned by the device, or null if the invocation failed.
+     */
+    public MethodResult getMethodResult()
+    {
+        return this.methodResult;
+    }
+
+    /**
+     * @return the reason why the invocation failed, such as an IotHubGatewayTimeoutException if the device did not
+     * answer in time, or null if the device answered.
+     */
+    public Exception getException()
+    {
+        return this.exception;
+    }
+
+    /**
+     * @return true if the device answered the invocation.
+     */
+    public boolean isSuccessful()
+    {
+        return this.exception == null;
+    }
+
+    /**
+     * @return the time, in milliseconds, from sending the invocation to its completion.
+     */
+    public long getLatencyMillis()
+    {
+        return this.latencyMillis;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a method fan-out once every invocation completed.
+ */
+public final class MethodInvocationSummary
+{
+    private final List<MethodInvocationResult> results;
+    private final long[] sortedLatenciesMillis;
+    private final int successfulCount;
+
+    MethodInvocationSummary(List<MethodInvocationResult> results)
+    {
+        /* Codes_SRS_METHODINVOCATIONSUMMARY_34_001: [The constructor shall save the results in their completion order and count the successful ones.] */
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.sortedLatenciesMillis = new long[results.size()];
+        int successful = 0;
+        for (int i = 0; i < results.size(); i++)
+        {
+            this.sortedLatenciesMillis[i] = results.get(i).getLatencyMillis();
+            if (results.get(i).isSuccessful())
+            {
+                successful++;
+            }
+        }
+        Arrays.sort(this.sortedLatenciesMillis);
+        this.successfulCount = successful;
+    }
+
+    /**
+     * @return the result of every invocation, in the order they completed.
+     */
+    public List<MethodInvocationResult> getResults()
+    {
+        return this.results;
+    }
+
+    /**
+     * @return the number of devices that answered the invocation.
+     */
+    public int getSuccessfulCount()
+    {
+        return this.successfulCount;
+    }
+
+    /**
+     * @return the number of invocations that failed.
+     */
+    public int getFailedCount()
+    {
+        return this.results.size() - this.successfulCount;
+    }
+
+    /**
+     * Returns a percentile of the completion latencies of the invocations, successful or not, using the nearest rank
+     * method. For example, 50 gives the median and 100 the slowest invocation.
+     *
+     * @param percentile the percentile, greater than 0 and at most 100.
+     * @return the latency in milliseconds, or 0 if there were no invocations.
+     * @throws IllegalArgumentException if the percentile is not greater than 0 and at most 100.
+     */
+    public long getLatencyPercentileMillis(double percentile) throws IllegalArgumentException
+    {
+        /* Codes_SRS_METHODINVOCATIONSUMMARY_34_002: [The function shall throw IllegalArgumentException if the percentile is not greater than 0 and at most 100.] */
+        if (!(percentile > 0 && percentile <= 100))
+        {
+            throw new IllegalArgumentException("percentile shall be greater than 0 and at most 100");
+        }
+
+        if (this.sortedLatenciesMillis.length == 0)
+        {
+            return 0;
+        }
+
+        /* Codes_SRS_METHODINVOCATIONSUMMARY_34_003: [The function shall return the latency at the nearest rank of the percentile.] */
+        int rank = (int) Math.ceil(percentile / 100 * this.sortedLatenciesMillis.length);
+        return this.sortedLatenciesMillis[Math.max(rank, 1) - 1];
+    }
+}
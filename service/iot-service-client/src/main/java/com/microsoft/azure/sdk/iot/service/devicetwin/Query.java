@@ -13,13 +13,31 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-
-/*
-    Sql style query IotHub for twin, jobs, device jobs or raw data
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sql style query IotHub for twin, jobs, device jobs or raw data.
+ *
+ * <p>By default the next page is requested once the current page was consumed, so every page costs a round trip on
+ * the thread iterating the query. With a prefetch depth set by {@link #setPrefetchDepth(int)}, the query requests
+ * up to that many pages ahead through {@link DeviceOperations#requestAsync}, while the current page is consumed.
+ * Each page request needs the continuation token of the previous page, so the prefetched pages are requested one
+ * after the other.</p>
  */
 public class Query
 {
@@ -44,6 +62,9 @@ public class Query
     private HttpMethod httpMethod;
     private long timeout;
 
+    private int prefetchDepth;
+    private final Deque<CompletableFuture<QueryPage>> prefetchedPages = new ArrayDeque<>();
+
     /**
      * Constructor for Query
      * @param query Sql style query to be sent to IotHub
@@ -155,7 +176,7 @@ public class Query
      * @throws IOException If any of the input parameters are not valid
      * @throws IotHubException If HTTP response other then status ok is received
      */
-    public QueryResponse sendQueryRequest(IotHubConnectionString iotHubConnectionString,
+    public synchronized QueryResponse sendQueryRequest(IotHubConnectionString iotHubConnectionString,
                                    URL url,
                                    HttpMethod method,
                                    Long timeoutInMs) throws IOException, IotHubException
@@ -172,33 +193,51 @@ public class Query
         this.httpMethod = method;
         this.timeout = timeoutInMs;
 
-        byte[] payload = null;
+        //Codes_SRS_QUERY_34_001: [This method shall discard the pages prefetched before, and prefetch the next pages after receiving the response.]
+        this.prefetchedPages.clear();
+
+        //Codes_SRS_QUERY_25_007: [The method shall set the http headers x-ms-continuation and x-ms-max-item-count with request continuation token and page size if they were not null.]
+        Map<String, String> queryHeaders = createQueryHeaders(this.requestContinuationToken, this.pageSize);
+
+        //Codes_SRS_QUERY_25_009: [The method shall use the provided HTTP Method and send request to IotHub with the serialized body over the provided URL.]
+        HttpResponse httpResponse = DeviceOperations.request(iotHubConnectionString, url, method, createQueryPayload(), null, timeoutInMs, queryHeaders);
+
+        useQueryPage(parseQueryPage(httpResponse, this.requestQueryType));
+        prefetchPages();
+        return this.queryResponse;
+    }
+
+    private static Map<String, String> createQueryHeaders(String continuationToken, int pageSize)
+    {
         Map<String, String> queryHeaders = new HashMap<>();
 
-        if (this.requestContinuationToken != null)
+        if (continuationToken != null)
         {
-            queryHeaders.put(CONTINUATION_TOKEN_KEY, requestContinuationToken);
+            queryHeaders.put(CONTINUATION_TOKEN_KEY, continuationToken);
         }
-        //Codes_SRS_QUERY_25_007: [The method shall set the http headers x-ms-continuation and x-ms-max-item-count with request continuation token and page size if they were not null.]
         queryHeaders.put(PAGE_SIZE_KEY, String.valueOf(pageSize));
 
-        DeviceOperations.setHeaders(queryHeaders);
+        return queryHeaders;
+    }
 
+    private byte[] createQueryPayload()
+    {
         if (isSqlQuery)
         {
             //Codes_SRS_QUERY_25_008: [The method shall obtain the serilaized query by using QueryRequestParser.]
             QueryRequestParser requestParser = new QueryRequestParser(this.query);
-            payload = requestParser.toJson().getBytes();
+            return requestParser.toJson().getBytes();
         }
         else
         {
-            payload = new byte[0];
+            return new byte[0];
         }
+    }
 
-        //Codes_SRS_QUERY_25_009: [The method shall use the provided HTTP Method and send request to IotHub with the serialized body over the provided URL.]
-        HttpResponse httpResponse = DeviceOperations.request(iotHubConnectionString, url, method, payload, null, timeoutInMs);
-
-        this.responseContinuationToken = null;
+    private static QueryPage parseQueryPage(HttpResponse httpResponse, QueryType requestQueryType) throws IOException
+    {
+        String continuationToken = null;
+        QueryType responseQueryType = QueryType.UNKNOWN;
         Map<String, String> headers = httpResponse.getHeaderFields();
         //Codes_SRS_QUERY_25_010: [The method shall read the continuation token (x-ms-continuation) and response type (x-ms-item-type) from the HTTP Headers and save it.]
         for (Map.Entry<String, String> header : headers.entrySet())
@@ -206,31 +245,244 @@ public class Query
             switch (header.getKey())
             {
                 case CONTINUATION_TOKEN_KEY:
-                    this.responseContinuationToken = header.getValue();
+                    continuationToken = header.getValue();
                     break;
                 case ITEM_TYPE_KEY:
-                    this.responseQueryType = QueryType.fromString(header.getValue());
+                    responseQueryType = QueryType.fromString(header.getValue());
                     break;
                 default:
                     break;
             }
         }
 
-        if (this.responseQueryType == null || this.responseQueryType == QueryType.UNKNOWN)
+        if (responseQueryType == null || responseQueryType == QueryType.UNKNOWN)
         {
             //Codes_SRS_QUERY_25_012: [If the response type is Unknown or not found then this method shall throw IOException.]
             throw new IOException("Query response type is not defined by IotHub");
         }
 
-        if (this.requestQueryType != this.responseQueryType)
+        if (requestQueryType != responseQueryType)
         {
             //Codes_SRS_QUERY_25_011: [If the request type and response does not match then the method shall throw IOException.]
             throw new IOException("Query response does not match query request");
         }
 
         //Codes_SRS_QUERY_25_013: [The method shall create a QueryResponse object with the contents from the response body and save it.]
-        this.queryResponse = new QueryResponse(new String(httpResponse.getBody()));
-        return this.queryResponse;
+        return new QueryPage(new QueryResponse(httpResponse.getBody()), continuationToken, responseQueryType);
+    }
+
+    private void useQueryPage(QueryPage page)
+    {
+        this.responseContinuationToken = page.continuationToken;
+        this.responseQueryType = page.queryType;
+        this.queryResponse = page.response;
+    }
+
+    /**
+     * Sets how many pages this query requests ahead of the page being consumed. Reducing the depth does not cancel
+     * the requests already sent.
+     *
+     * @param prefetchDepth the number of pages to request ahead, or 0 to request each page once the previous one was
+     *                      consumed, which is the default.
+     * @throws IllegalArgumentException if the prefetch depth is negative
+     */
+    public synchronized void setPrefetchDepth(int prefetchDepth) throws IllegalArgumentException
+    {
+        //Codes_SRS_QUERY_34_002: [This method shall throw IllegalArgumentException if the prefetch depth is negative.]
+        if (prefetchDepth < 0)
+        {
+            throw new IllegalArgumentException("Prefetch depth cannot be negative");
+        }
+
+        //Codes_SRS_QUERY_34_003: [This method shall save the prefetch depth, drop the prefetched pages beyond it, and prefetch up to that many pages if a request was already sent.]
+        this.prefetchDepth = prefetchDepth;
+        while (this.prefetchedPages.size() > prefetchDepth)
+        {
+            this.prefetchedPages.removeLast();
+        }
+        if (this.queryResponse != null)
+        {
+            prefetchPages();
+        }
+    }
+
+    /**
+     * Getter for the prefetch depth
+     * @return the number of pages this query requests ahead of the page being consumed.
+     */
+    public synchronized int getPrefetchDepth()
+    {
+        return this.prefetchDepth;
+    }
+
+    private void prefetchPages()
+    {
+        if (this.prefetchedPages.size() >= this.prefetchDepth)
+        {
+            return;
+        }
+
+        // the requests of the next pages are sent from the completion of the previous ones, without the lock of
+        // this query, so they only use a copy of its settings
+        final IotHubConnectionString iotHubConnectionString = this.iotHubConnectionString;
+        final URL url = this.url;
+        final HttpMethod httpMethod = this.httpMethod;
+        final long timeout = this.timeout;
+        final int pageSize = this.pageSize;
+        final QueryType requestQueryType = this.requestQueryType;
+        final byte[] payload = createQueryPayload();
+
+        //Codes_SRS_QUERY_34_004: [The query shall keep up to prefetch depth page requests ahead of the current page, each one sent with the continuation token of the previous page.]
+        while (this.prefetchedPages.size() < this.prefetchDepth)
+        {
+            CompletableFuture<QueryPage> lastPage = this.prefetchedPages.peekLast();
+            CompletableFuture<QueryPage> nextPage;
+            if (lastPage == null)
+            {
+                if (this.responseContinuationToken == null)
+                {
+                    return;
+                }
+                nextPage = requestPageAsync(iotHubConnectionString, url, httpMethod, timeout, this.responseContinuationToken, pageSize, payload, requestQueryType);
+            }
+            else
+            {
+                if (lastPage.isDone() && (lastPage.isCompletedExceptionally() || (lastPage.join() == null) || (lastPage.join().continuationToken == null)))
+                {
+                    return;
+                }
+                // A null page marks the end of the query, the page before had no continuation token.
+                nextPage = lastPage.thenCompose(page -> ((page == null) || (page.continuationToken == null))
+                        ? CompletableFuture.<QueryPage>completedFuture(null)
+                        : requestPageAsync(iotHubConnectionString, url, httpMethod, timeout, page.continuationToken, pageSize, payload, requestQueryType));
+            }
+            this.prefetchedPages.addLast(nextPage);
+        }
+    }
+
+    private static CompletableFuture<QueryPage> requestPageAsync(IotHubConnectionString iotHubConnectionString,
+                                                                 URL url,
+                                                                 HttpMethod httpMethod,
+                                                                 long timeout,
+                                                                 String continuationToken,
+                                                                 int pageSize,
+                                                                 byte[] payload,
+                                                                 QueryType requestQueryType)
+    {
+        try
+        {
+            return DeviceOperations.requestAsync(iotHubConnectionString, url, httpMethod, payload, null, timeout, createQueryHeaders(continuationToken, pageSize))
+                    .thenApply(httpResponse ->
+                    {
+                        try
+                        {
+                            return parseQueryPage(httpResponse, requestQueryType);
+                        }
+                        catch (IOException e)
+                        {
+                            throw new CompletionException(e);
+                        }
+                    });
+        }
+        catch (IOException | RuntimeException e)
+        {
+            CompletableFuture<QueryPage> failedPage = new CompletableFuture<>();
+            failedPage.completeExceptionally(e);
+            return failedPage;
+        }
+    }
+
+    /**
+     * Sends a sql query and requests all the pages of its response, each one with the continuation token of the
+     * previous page, without blocking the calling thread.
+     * @param iotHubConnectionString Hub Connection String
+     * @param url URL to query on
+     * @param sqlQuery Sql query to send
+     * @param pageSize Size of each page of the response
+     * @param requestQueryType Type of the elements the query shall respond with
+     * @param timeoutInMs timeout of each page request, in milliseconds
+     * @return the future of all the elements of the response, as json strings
+     */
+    static CompletableFuture<List<Object>> requestAllPagesAsync(IotHubConnectionString iotHubConnectionString,
+                                                                URL url,
+                                                                String sqlQuery,
+                                                                int pageSize,
+                                                                QueryType requestQueryType,
+                                                                long timeoutInMs)
+    {
+        //Codes_SRS_QUERY_34_008: [The method shall send the serialized sql query as HTTP method POST, and request the next page with the continuation token of the previous one until a page has no continuation token.]
+        byte[] payload = new QueryRequestParser(sqlQuery).toJson().getBytes();
+        return requestRemainingPagesAsync(iotHubConnectionString, url, timeoutInMs, null, pageSize, payload, requestQueryType, new ArrayList<>());
+    }
+
+    private static CompletableFuture<List<Object>> requestRemainingPagesAsync(IotHubConnectionString iotHubConnectionString,
+                                                                              URL url,
+                                                                              long timeoutInMs,
+                                                                              String continuationToken,
+                                                                              int pageSize,
+                                                                              byte[] payload,
+                                                                              QueryType requestQueryType,
+                                                                              List<Object> elements)
+    {
+        return requestPageAsync(iotHubConnectionString, url, HttpMethod.POST, timeoutInMs, continuationToken, pageSize, payload, requestQueryType)
+                .thenCompose(page ->
+                {
+                    //Codes_SRS_QUERY_34_009: [The method shall complete the future with the elements of all the pages, in order.]
+                    while (page.response.hasNext())
+                    {
+                        elements.add(page.response.next());
+                    }
+
+                    if (page.continuationToken == null)
+                    {
+                        return CompletableFuture.completedFuture(elements);
+                    }
+
+                    return requestRemainingPagesAsync(iotHubConnectionString, url, timeoutInMs, page.continuationToken, pageSize, payload, requestQueryType, elements);
+                });
+    }
+
+    private boolean usePrefetchedPage() throws IOException, IotHubException
+    {
+        CompletableFuture<QueryPage> prefetchedPage = this.prefetchedPages.pollFirst();
+        if (prefetchedPage == null)
+        {
+            return false;
+        }
+
+        //Codes_SRS_QUERY_34_005: [If the next page was prefetched, the query shall wait for it instead of sending a new request, and throw the exception of its request if it failed.]
+        QueryPage page;
+        try
+        {
+            page = prefetchedPage.join();
+        }
+        catch (CompletionException e)
+        {
+            this.prefetchedPages.clear();
+            Throwable cause = (e.getCause() == null) ? e : e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof IotHubException)
+            {
+                throw (IotHubException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+
+        this.requestContinuationToken = this.responseContinuationToken;
+        useQueryPage(page);
+        if (page.continuationToken == null)
+        {
+            this.prefetchedPages.clear();
+        }
+        prefetchPages();
+        return true;
     }
 
     /**
@@ -246,18 +498,23 @@ public class Query
     /**
      * Returns the availability of next element in the query response
      * @return the availability of next element in the query response
-     * @throws IOException if sending the request is unsuccessful because of input parameters
+     * @throws IOException if sending the request is unsuccessful because of input parameters, or if the page of the
+     * response is malformed. The elements of a page are parsed as they are iterated, so a malformed page is only
+     * reported once the iteration reaches the malformed part, after the elements before it were returned.
      * @throws IotHubException if sending the request is unsuccessful at the Hub
      */
-    public boolean hasNext() throws IOException, IotHubException
+    public synchronized boolean hasNext() throws IOException, IotHubException
     {
         //Codes_SRS_QUERY_25_015: [The method shall return true if next element from QueryResponse is available and false otherwise.]
-        boolean isNextAvailable = this.queryResponse.hasNext();
+        boolean isNextAvailable = this.responseHasNext();
         if (!isNextAvailable && this.getContinuationToken() != null)
         {
             //Codes_SRS_QUERY_25_021: [If no further query response is available, then this method shall continue to request query to IotHub if continuation token is available.]
-            this.continueQuery(this.getContinuationToken());
-            return this.queryResponse.hasNext();
+            if (!this.usePrefetchedPage())
+            {
+                this.continueQuery(this.getContinuationToken());
+            }
+            return this.responseHasNext();
         }
         else
         {
@@ -269,16 +526,25 @@ public class Query
     /**
      * provides the next element in query response
      * @return the next element in query response
-     * @throws IOException if sending the request is unsuccessful because of input parameters
+     * @throws IOException if sending the request is unsuccessful because of input parameters, or if the element is
+     * malformed
      * @throws IotHubException if sending the request is unsuccessful at the Hub
      * @throws NoSuchElementException if no further elements are available
      */
-    public Object next() throws IOException, IotHubException, NoSuchElementException
+    public synchronized Object next() throws IOException, IotHubException, NoSuchElementException
     {
         //Codes_SRS_QUERY_25_016: [The method shall return the next element for this QueryResponse.]
        if (this.hasNext())
        {
-           return queryResponse.next();
+           try
+           {
+               return queryResponse.next();
+           }
+           catch (IllegalArgumentException e)
+           {
+               //Codes_SRS_QUERY_34_010: [If the query response is malformed, the hasNext and next methods shall throw an IOException caused by the parsing error.]
+               throw new IOException("Malformed query response", e);
+           }
        }
        else
        {
@@ -287,4 +553,86 @@ public class Query
        }
 
     }
+
+    private boolean responseHasNext() throws IOException
+    {
+        try
+        {
+            return this.queryResponse.hasNext();
+        }
+        catch (IllegalArgumentException e)
+        {
+            //Codes_SRS_QUERY_34_010: [If the query response is malformed, the hasNext and next methods shall throw an IOException caused by the parsing error.]
+            throw new IOException("Malformed query response", e);
+        }
+    }
+
+    /**
+     * Returns a sequential stream over the remaining elements of this query. The pages are requested as the stream
+     * is consumed, or ahead of it if a prefetch depth was set. The stream can be split, so that a parallel stream
+     * processes the elements of a page while this query gets the next one.
+     *
+     * <p>An IOException thrown while requesting or parsing a page is rethrown by the stream as an {@link UncheckedIOException}
+     * with that cause. An IotHubException is rethrown as an UncheckedIOException caused by an IOException, whose
+     * cause is the IotHubException.</p>
+     *
+     * @return the stream of the remaining elements of this query.
+     */
+    public Stream<Object> stream()
+    {
+        //Codes_SRS_QUERY_34_006: [The stream shall return the remaining elements of the query in order, by calling hasNext and next.]
+        Iterator<Object> iterator = new Iterator<Object>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                try
+                {
+                    return Query.this.hasNext();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                catch (IotHubException e)
+                {
+                    //Codes_SRS_QUERY_34_007: [The stream shall rethrow the IOException and IotHubException of the query in an UncheckedIOException.]
+                    throw new UncheckedIOException(new IOException(e.getMessage(), e));
+                }
+            }
+
+            @Override
+            public Object next()
+            {
+                try
+                {
+                    return Query.this.next();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                catch (IotHubException e)
+                {
+                    throw new UncheckedIOException(new IOException(e.getMessage(), e));
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static final class QueryPage
+    {
+        private final QueryResponse response;
+        private final String continuationToken;
+        private final QueryType queryType;
+
+        private QueryPage(QueryResponse response, String continuationToken, QueryType queryType)
+        {
+            this.response = response;
+            this.continuationToken = continuationToken;
+            this.queryType = queryType;
+        }
+    }
 }
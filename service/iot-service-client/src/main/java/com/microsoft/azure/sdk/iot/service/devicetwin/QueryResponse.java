@@ -6,6 +6,7 @@
 package com.microsoft.azure.sdk.iot.service.devicetwin;
 
 import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseParser;
+import com.microsoft.azure.sdk.iot.deps.serializer.QueryResponseReader;
 
 import java.io.IOException;
 import java.util.Iterator;
@@ -35,9 +36,30 @@ public class QueryResponse implements Iterator<Object>
         this.responseElementsIterator = responseParser.getJsonItems().iterator();
     }
 
+    /**
+     * Creates an object for the query response that parses the elements of the response one at a time, as they are
+     * iterated, instead of parsing the whole response upfront. The body stays in memory until the response is
+     * released. A malformed body is only detected once the iteration reaches the malformed part, and is then
+     * reported by an IllegalArgumentException from {@link #hasNext()} or {@link #next()}.
+     * @param body UTF-8 json response for query to parse
+     * @throws IOException If any of the input parameters are invalid
+     */
+    QueryResponse(byte[] body) throws IOException
+    {
+        if (body == null || body.length == 0)
+        {
+            //Codes_SRS_QUERY_RESPONSE_34_001: [If the body is null or empty, the constructor shall throw an IllegalArgumentException.]
+            throw new IllegalArgumentException("response cannot be null or empty");
+        }
+
+        //Codes_SRS_QUERY_RESPONSE_34_002: [The constructor shall set the iterator to a QueryResponseReader of the body, so each element is parsed when it is iterated.]
+        this.responseElementsIterator = new QueryResponseReader(body);
+    }
+
     /**
      * returns the availability of next response
      * @return true if present and false otherwise
+     * @throws IllegalArgumentException if the response is malformed
      */
     @Override
     public boolean hasNext()
@@ -49,6 +71,7 @@ public class QueryResponse implements Iterator<Object>
     /**
      * returns next element in the response
      * @return next element in the response
+     * @throws IllegalArgumentException if the response is malformed
      */
     @Override
     public Object next()
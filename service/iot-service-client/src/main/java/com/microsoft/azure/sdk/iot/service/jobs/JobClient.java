@@ -15,13 +15,16 @@ import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * JobClient enables service client to schedule and cancel jobs for a group of devices using the IoTHub.
+ * An instance can be shared by many threads.
  */
 public class JobClient
 {
@@ -71,7 +74,7 @@ public class JobClient
      * @throws IOException if the function cannot create a URL for the job
      * @throws IotHubException if the http request failed
      */
-    public synchronized JobResult scheduleUpdateTwin(
+    public JobResult scheduleUpdateTwin(
             String jobId,
             String queryCondition,
             DeviceTwinDevice updateTwin,
@@ -144,7 +147,7 @@ public class JobClient
      * @throws IOException if the function cannot create a URL for the job, or the IO failed on request
      * @throws IotHubException if the http request failed
      */
-    public synchronized JobResult scheduleDeviceMethod(
+    public JobResult scheduleDeviceMethod(
             String jobId,
             String queryCondition,
             String methodName, Long responseTimeoutInSeconds, Long connectTimeoutInSeconds, Object payload,
@@ -211,7 +214,7 @@ public class JobClient
      * @throws IOException if the function cannot create a URL for the job, or the IO failed on request
      * @throws IotHubException if the http request failed
      */
-    public synchronized JobResult getJob(String jobId)
+    public JobResult getJob(String jobId)
             throws IllegalArgumentException, IOException, IotHubException
     {
         URL url;
@@ -250,7 +253,7 @@ public class JobClient
      * @throws IOException if the function cannot create a URL for the job, or the IO failed on request
      * @throws IotHubException if the http request failed
      */
-    public synchronized JobResult cancelJob(String jobId)
+    public JobResult cancelJob(String jobId)
             throws IllegalArgumentException, IOException, IotHubException
     {
         URL url;
@@ -341,7 +344,21 @@ public class JobClient
      * @throws IotHubException When IotHub fails to respond
      * @throws IOException When any of the parameters are incorrect
      */
-    public synchronized Query queryDeviceJob(String sqlQuery, Integer pageSize) throws IotHubException, IOException
+    public Query queryDeviceJob(String sqlQuery, Integer pageSize) throws IotHubException, IOException
+    {
+        return queryDeviceJob(sqlQuery, pageSize, 0);
+    }
+
+    /**
+     * Query for device Job, requesting the next pages of the response while the current one is consumed
+     * @param sqlQuery sql style query over device.jobs
+     * @param pageSize the value per which to limit the size of query response by.
+     * @param prefetchDepth the number of pages to request ahead of the page being consumed, see {@link Query#setPrefetchDepth(int)}
+     * @return Query object for this query
+     * @throws IotHubException When IotHub fails to respond
+     * @throws IOException When any of the parameters are incorrect
+     */
+    public Query queryDeviceJob(String sqlQuery, Integer pageSize, int prefetchDepth) throws IotHubException, IOException
     {
         if (sqlQuery == null || sqlQuery.length() == 0)
         {
@@ -355,8 +372,19 @@ public class JobClient
             throw new IllegalArgumentException("pagesize cannot be negative or zero");
         }
 
+        if (prefetchDepth < 0)
+        {
+            //Codes_SRS_JOBCLIENT_34_001: [If the prefetchDepth is negative, the queryDeviceJob shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("prefetchDepth cannot be negative");
+        }
+
         //Codes_SRS_JOBCLIENT_25_039: [The queryDeviceJob shall create a query object for the type DEVICE_JOB.]
         Query deviceJobQuery = new Query(sqlQuery, pageSize, QueryType.DEVICE_JOB);
+        if (prefetchDepth > 0)
+        {
+            //Codes_SRS_JOBCLIENT_34_002: [The queryDeviceJob shall set the prefetch depth of the query object before sending its first request.]
+            deviceJobQuery.setPrefetchDepth(prefetchDepth);
+        }
 
         //Codes_SRS_JOBCLIENT_25_040: [The queryDeviceJob shall send a query request on the query object using Query URL, HTTP POST method and wait for the response by calling sendQueryRequest.]
         deviceJobQuery.sendQueryRequest(iotHubConnectionString, iotHubConnectionString.getUrlTwinQuery(), HttpMethod.POST, MAX_TIMEOUT);
@@ -370,7 +398,7 @@ public class JobClient
      * @throws IotHubException When IotHub fails to respond
      * @throws IOException When any of the parameters are incorrect
      */
-    public synchronized Query queryDeviceJob(String sqlQuery) throws IotHubException, IOException
+    public Query queryDeviceJob(String sqlQuery) throws IotHubException, IOException
     {
         //Codes_SRS_JOBCLIENT_25_038: [If the pageSize is not specified, default pageSize of 100 shall be used .]
         return queryDeviceJob(sqlQuery, DEFAULT_PAGE_SIZE);
@@ -383,7 +411,7 @@ public class JobClient
      * @throws IotHubException When IotHub fails to respond
      * @throws IOException if any of the input parameters are incorrect
      */
-    public synchronized boolean hasNextJob(Query query) throws IotHubException, IOException
+    public boolean hasNextJob(Query query) throws IotHubException, IOException
     {
         if (query == null)
         {
@@ -402,7 +430,7 @@ public class JobClient
      * @throws IOException if any of the input parameters are incorrect
      * @throws NoSuchElementException if called when no further responses are left
      */
-    public synchronized JobResult getNextJob(Query query) throws IOException, IotHubException, NoSuchElementException
+    public JobResult getNextJob(Query query) throws IOException, IotHubException, NoSuchElementException
     {
         if (query == null)
         {
@@ -425,6 +453,31 @@ public class JobClient
         }
     }
 
+    /**
+     * returns a stream over the remaining job results of the query, see {@link Query#stream()}
+     * @param query Query for which to stream the job results
+     * @return the stream of the remaining job results. An element that is not a job result makes the stream throw
+     * an UncheckedIOException.
+     */
+    public Stream<JobResult> streamJobs(Query query)
+    {
+        if (query == null)
+        {
+            //Codes_SRS_JOBCLIENT_34_003: [If the input query is null, the streamJobs shall throw IllegalArgumentException.]
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+
+        //Codes_SRS_JOBCLIENT_34_004: [streamJobs shall parse each element of the query stream as a JobResult, the same way as getNextJob.]
+        return query.stream().map(nextObject ->
+        {
+            if (nextObject instanceof String)
+            {
+                return new JobResult(((String) nextObject).getBytes());
+            }
+            throw new UncheckedIOException(new IOException("Received a response that could not be parsed"));
+        });
+    }
+
     /**
      * Query the iot hub for a jobs response. Query response are limited by page size per attempt
      * @param jobType The type of job to query for
@@ -434,7 +487,7 @@ public class JobClient
      * @throws IOException If any of the input parameters are incorrect
      * @throws IotHubException If IotHub failed to respond
      */
-    public synchronized Query queryJobResponse(JobType jobType, JobStatus jobStatus, Integer pageSize) throws IOException, IotHubException
+    public Query queryJobResponse(JobType jobType, JobStatus jobStatus, Integer pageSize) throws IOException, IotHubException
     {
         if (pageSize <= 0)
         {
@@ -459,7 +512,7 @@ public class JobClient
      * @throws IOException If any of the input parameters are incorrect
      * @throws IotHubException If IotHub failed to respond
      */
-    public synchronized Query queryJobResponse(JobType jobType, JobStatus jobStatus) throws IotHubException, IOException
+    public Query queryJobResponse(JobType jobType, JobStatus jobStatus) throws IotHubException, IOException
     {
         //Codes_SRS_JOBCLIENT_25_043: [If the pageSize is not specified, default pageSize of 100 shall be used.]
         return queryJobResponse(jobType, jobStatus, DEFAULT_PAGE_SIZE);
@@ -16,6 +16,7 @@ import org.apache.qpid.proton.reactor.Reactor;
 import java.io.IOException;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Consumer;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
@@ -32,6 +33,7 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
     private Reactor reactor = null;
     private FileUploadNotification fileUploadNotification;
     private Queue<FileUploadNotification> fileUploadNotificationQueue;
+    private AmqpStreamingReceive amqpStreamingReceive;
     private static final int REACTOR_TIMEOUT = 3141; // reactor timeout in milliseconds
 
     /**
@@ -94,6 +96,66 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
             fileUploadNotificationQueue.clear();
         }
         fileUploadNotificationQueue = null;
+        stopReceiving();
+    }
+
+    /**
+     * Keep a receiver link to the file upload notification endpoint open and pass every notification to the consumer
+     * as it arrives
+     * @param notificationConsumer The consumer of the notifications, called on the receiver thread
+     * @param prefetchCount The number of notifications IotHub may send ahead of the consumer
+     * @param settlementBatchSize The number of notifications that are acknowledged together
+     * @throws IOException This exception is thrown if the AmqpFileUploadNotificationReceive object is not opened
+     */
+    public synchronized void startReceiving(Consumer<FileUploadNotification> notificationConsumer, int prefetchCount, int settlementBatchSize) throws IOException
+    {
+        if (notificationConsumer == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_34_001: [The function shall throw IllegalArgumentException if the consumer is null]
+            throw new IllegalArgumentException("notificationConsumer cannot be null");
+        }
+        if (amqpReceiveHandler == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_34_002: [The function shall throw IOException if the receive handler object is not initialized]
+            throw new IOException("receive handler is not initialized. call open before startReceiving");
+        }
+        if (amqpStreamingReceive != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_34_003: [The function shall throw IllegalStateException if the notifications are already being received]
+            throw new IllegalStateException("File upload notifications are already being received");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_34_004: [The function shall open a streaming receiver on the file upload notification endpoint that parses every message into a FileUploadNotification for the consumer]
+        amqpStreamingReceive = new AmqpStreamingReceive(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol,
+                AmqpFileUploadNotificationReceivedHandler.FILE_NOTIFICATION_RECEIVE_TAG, AmqpFileUploadNotificationReceivedHandler.FILENOTIFICATION_ENDPOINT,
+                prefetchCount, settlementBatchSize, notificationJson ->
+                {
+                    FileUploadNotification notification;
+                    try
+                    {
+                        notification = parseNotification(notificationJson);
+                    }
+                    catch (IOException | IllegalArgumentException e)
+                    {
+                        // a notification that cannot be parsed will not parse on redelivery either, so it is dropped
+                        return;
+                    }
+                    notificationConsumer.accept(notification);
+                });
+        amqpStreamingReceive.open();
+    }
+
+    /**
+     * Stop the receiver started by startReceiving, if any
+     */
+    public synchronized void stopReceiving()
+    {
+        if (amqpStreamingReceive != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPFILEUPLOADNOTIFICATIONRECEIVE_34_005: [The function shall close the streaming receiver if there is one]
+            amqpStreamingReceive.close();
+            amqpStreamingReceive = null;
+        }
     }
 
     /**
@@ -159,11 +221,7 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
 
         try
         {
-            FileUploadNotificationParser notificationParser = new FileUploadNotificationParser(feedbackJson);
-
-            fileUploadNotification = new FileUploadNotification(notificationParser.getDeviceId(),
-                    notificationParser.getBlobUri(), notificationParser.getBlobName(), notificationParser.getLastUpdatedTime(),
-                    notificationParser.getBlobSizeInBytesTag(), notificationParser.getEnqueuedTimeUtc());
+            fileUploadNotification = parseNotification(feedbackJson);
 
             fileUploadNotificationQueue.add(fileUploadNotification);
         }
@@ -177,4 +235,13 @@ public class AmqpFileUploadNotificationReceive extends BaseHandler implements Am
             System.out.println("Service threw something mysteriously dangerous, message abandoned.");
         }
     }
+
+    private static FileUploadNotification parseNotification(String notificationJson) throws IOException
+    {
+        FileUploadNotificationParser notificationParser = new FileUploadNotificationParser(notificationJson);
+
+        return new FileUploadNotification(notificationParser.getDeviceId(),
+                notificationParser.getBlobUri(), notificationParser.getBlobName(), notificationParser.getLastUpdatedTime(),
+                notificationParser.getBlobSizeInBytesTag(), notificationParser.getEnqueuedTimeUtc());
+    }
 }
@@ -33,10 +33,10 @@ import java.util.Map;
  */
 public class AmqpFileUploadNotificationReceivedHandler extends BaseHandler
 {
-    private static final String FILE_NOTIFICATION_RECEIVE_TAG = "filenotificationreceiver";
+    static final String FILE_NOTIFICATION_RECEIVE_TAG = "filenotificationreceiver";
     private static final String SEND_PORT_AMQPS = ":5671";
     private static final String SEND_PORT_AMQPS_WS = ":443";
-    private static final String FILENOTIFICATION_ENDPOINT = "/messages/serviceBound/filenotifications";
+    static final String FILENOTIFICATION_ENDPOINT = "/messages/serviceBound/filenotifications";
     private static final String WEBSOCKET_PATH = "/$iothub/websocket";
     private static final String WEBSOCKET_SUB_PROTOCOL = "AMQPWSB10";
 
@@ -14,6 +14,7 @@ import org.apache.qpid.proton.engine.Event;
 import org.apache.qpid.proton.reactor.Reactor;
 
 import java.io.IOException;
+import java.util.function.Consumer;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
@@ -29,6 +30,7 @@ public class AmqpReceive extends BaseHandler implements AmqpFeedbackReceivedEven
     private IotHubServiceClientProtocol iotHubServiceClientProtocol;
     private Reactor reactor = null;
     private FeedbackBatch feedbackBatch;
+    private AmqpStreamingReceive amqpStreamingReceive;
     private static final int REACTOR_TIMEOUT = 3141; // reactor timeout in milliseconds
 
     /**
@@ -80,6 +82,65 @@ public class AmqpReceive extends BaseHandler implements AmqpFeedbackReceivedEven
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_12_004: [The function shall invalidate the member AmqpsReceiveHandler object]
         amqpReceiveHandler = null;
+        stopReceiving();
+    }
+
+    /**
+     * Keep a receiver link to the feedback endpoint open and pass every feedback batch to the consumer as it arrives
+     * @param feedbackBatchConsumer The consumer of the feedback batches, called on the receiver thread
+     * @param prefetchCount The number of feedback messages IotHub may send ahead of the consumer
+     * @param settlementBatchSize The number of feedback messages that are acknowledged together
+     * @throws IOException This exception is thrown if the AmqpReceive object is not opened
+     */
+    public synchronized void startReceiving(Consumer<FeedbackBatch> feedbackBatchConsumer, int prefetchCount, int settlementBatchSize) throws IOException
+    {
+        if (feedbackBatchConsumer == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_001: [The function shall throw IllegalArgumentException if the consumer is null]
+            throw new IllegalArgumentException("feedbackBatchConsumer cannot be null");
+        }
+        if (amqpReceiveHandler == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_002: [The function shall throw IOException if the receive handler object is not initialized]
+            throw new IOException("receive handler is not initialized. call open before startReceiving");
+        }
+        if (amqpStreamingReceive != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_003: [The function shall throw IllegalStateException if the feedback is already being received]
+            throw new IllegalStateException("Feedback is already being received");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_004: [The function shall open a streaming receiver on the feedback endpoint that parses every message into a FeedbackBatch for the consumer]
+        amqpStreamingReceive = new AmqpStreamingReceive(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol,
+                AmqpFeedbackReceivedHandler.RECEIVE_TAG, AmqpFeedbackReceivedHandler.ENDPOINT, prefetchCount, settlementBatchSize,
+                feedbackJson ->
+                {
+                    FeedbackBatch batch;
+                    try
+                    {
+                        batch = FeedbackBatchMessage.parse(feedbackJson);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // a batch that cannot be parsed will not parse on redelivery either, so it is dropped
+                        return;
+                    }
+                    feedbackBatchConsumer.accept(batch);
+                });
+        amqpStreamingReceive.open();
+    }
+
+    /**
+     * Stop the receiver started by startReceiving, if any
+     */
+    public synchronized void stopReceiving()
+    {
+        if (amqpStreamingReceive != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_005: [The function shall close the streaming receiver if there is one]
+            amqpStreamingReceive.close();
+            amqpStreamingReceive = null;
+        }
     }
 
     /**
@@ -9,18 +9,20 @@ import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.Message;
 import com.microsoft.azure.sdk.iot.service.Tools;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
-import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.BaseHandler;
 import org.apache.qpid.proton.engine.Event;
 import org.apache.qpid.proton.reactor.Reactor;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Instance of the QPID-Proton-J BaseHandler class
  * overriding the events what are needed to handle
  * high level open, close and send methods.
  * Initialize and use AmqpsSendHandler class for low level ampqs operations.
+ * The messages are sent on one long lived {@link AmqpSendConnection}, which is opened on the first send.
  */
 public class AmqpSend extends BaseHandler
 {
@@ -29,6 +31,7 @@ public class AmqpSend extends BaseHandler
     protected final String sasToken;
     protected Reactor reactor = null;
     protected AmqpSendHandler amqpSendHandler;
+    protected AmqpSendConnection amqpSendConnection;
     protected IotHubServiceClientProtocol iotHubServiceClientProtocol;
 
     /**
@@ -93,53 +96,134 @@ public class AmqpSend extends BaseHandler
     }
 
     /**
-     * Invalidate AmqpsSendHandler member variable
+     * Invalidate AmqpsSendHandler member variable and close the connection used to send messages
      */
     public void close()
     {
-        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_12_005: [The function shall invalidate the member AmqpsSendHandler object]
-        amqpSendHandler = null;
+        AmqpSendConnection connection;
+        synchronized (this)
+        {
+            connection = amqpSendConnection;
+            amqpSendConnection = null;
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_12_005: [The function shall invalidate the member AmqpsSendHandler object]
+            amqpSendHandler = null;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_001: [The function shall close the send connection if there is one]
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_005: [The function shall wait for the send connection to close without holding the lock of this object]
+        if (connection != null)
+        {
+            connection.close();
+        }
     }
 
     /**
-     * Create binary message
-     * Initialize and start Proton reactor
-     * Send the created message
+     * Send the message and wait until IotHub settles it
      * @param deviceId The device name string
      * @param moduleId The module name string
      * @param message The message to be sent
-     * @throws IOException This exception is thrown if the AmqpSend object is not initialized
+     * @throws IOException This exception is thrown if the AmqpSend object is not initialized or the connection fails
      * @throws IotHubException If IotHub rejects the message for any reason
      */
     public void send(String deviceId, String moduleId, Message message) throws IOException, IotHubException
     {
-        synchronized(this)
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_002: [The function shall send the message with sendAsync and wait for its future]
+        CompletableFuture<Void> future = sendAsync(deviceId, moduleId, message);
+        try
         {
-            if  (amqpSendHandler != null)
+            future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the message to be sent", e);
+        }
+        catch (ExecutionException e)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_004: [The function shall throw the IotHubException or the IOException the future completed with]
+            Throwable cause = e.getCause();
+            if (cause instanceof IotHubException)
             {
-                if (moduleId == null)
-                {
-                    // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_006: [The function shall create a binary message with the given content with deviceId only if moduleId is null]
-                    amqpSendHandler.createProtonMessage(deviceId, message);
-                }
-                else
-                {
-                    // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The function shall create a binary message with the given content with moduleId]
-                    amqpSendHandler.createProtonMessage(deviceId, moduleId, message);
-                }
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The function shall initialize the Proton reactor object]
-                this.reactor = Proton.reactor(this);
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The function shall start the Proton reactor object]
-                this.reactor.run();
-                this.reactor.free();
-                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_004: [** The function shall call sendComplete to identify the status of sent message and throws exception if thrown by sendComplete **]**
-                amqpSendHandler.sendComplete();
+                throw (IotHubException)cause;
             }
-            else
+            if (cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            throw new IOException("Failed to send the message", cause);
+        }
+    }
+
+    /**
+     * Send the message on the connection shared by all the sends of this object, opening the connection if it is not
+     * open yet or was lost. Many messages can be in flight at once.
+     * @param deviceId The device name string
+     * @param moduleId The module name string, or null to send to the device
+     * @param message The message to be sent
+     * @return The future that completes when IotHub accepts the message. It completes exceptionally with an
+     * IotHubException if IotHub rejects the message, or with an IOException if the AmqpSend object is not initialized
+     * or the connection fails
+     */
+    public CompletableFuture<Void> sendAsync(String deviceId, String moduleId, Message message)
+    {
+        AmqpSendConnection connection;
+        try
+        {
+            connection = getOpenConnection();
+        }
+        catch (IOException e)
+        {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        String targetPath;
+        if (moduleId == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_006: [The function shall create a binary message with the given content with deviceId only if moduleId is null]
+            targetPath = String.format(AmqpSendHandler.DEVICE_PATH_FORMAT, deviceId);
+        }
+        else
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The function shall create a binary message with the given content with moduleId]
+            targetPath = String.format(AmqpSendHandler.MODULE_PATH_FORMAT, deviceId, moduleId);
+        }
+
+        return connection.send(targetPath, message);
+    }
+
+    private AmqpSendConnection getOpenConnection() throws IOException
+    {
+        AmqpSendConnection lostConnection = null;
+        AmqpSendConnection connection;
+        synchronized (this)
+        {
+            if (amqpSendHandler == null)
             {
                 // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_005: [The function shall throw IOException if the send handler object is not initialized]
                 throw new IOException("send handler is not initialized. call open before send");
             }
+
+            if (amqpSendConnection == null || !amqpSendConnection.isOpen())
+            {
+                lostConnection = amqpSendConnection;
+
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_003: [The function shall open a new send connection if there is none or the previous one was lost, and reuse it otherwise]
+                amqpSendConnection = new AmqpSendConnection(this.hostName, this.userName, this.sasToken, this.iotHubServiceClientProtocol);
+                amqpSendConnection.open();
+            }
+
+            connection = amqpSendConnection;
         }
+
+        if (lostConnection != null)
+        {
+            // release the thread of the lost connection, without making the other senders wait for it
+            lostConnection.close();
+        }
+
+        return connection;
     }
 }
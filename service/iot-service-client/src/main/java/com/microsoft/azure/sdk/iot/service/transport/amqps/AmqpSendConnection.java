@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
+import com.microsoft.azure.sdk.iot.service.Message;
+import com.microsoft.azure.sdk.iot.service.Tools;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.engine.*;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.Task;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Long lived AMQP connection and sender link to the cloud to device endpoint. Unlike {@link AmqpSendHandler}, which
+ * opens a connection for a single message, this connection stays open and pipelines the messages: a message is sent
+ * as soon as the link has credit, without waiting for the previous ones to be settled, up to a maximum number of
+ * unsettled deliveries. Each message gets a future that completes when IotHub settles its delivery.
+ *
+ * The Proton reactor runs on a thread owned by this connection. Senders only enqueue encoded messages and wake the
+ * reactor up, and the reactor thread moves them to the link once it has handled its pending events, so Proton objects
+ * are never touched by two threads and an idle connection does not wake its thread up.
+ */
+public class AmqpSendConnection extends AmqpSendHandler
+{
+    /** The default maximum number of unsettled deliveries on the link */
+    public static final int DEFAULT_MAX_IN_FLIGHT_COUNT = 100;
+
+    private static final long CLOSE_TIMEOUT_MILLISECONDS = 10000;
+
+    private final int maxInFlightCount;
+    private final BlockingQueue<PendingDelivery> pendingDeliveries = new LinkedBlockingQueue<>();
+
+    // Only accessed by the reactor thread
+    private final Set<PendingDelivery> inFlightDeliveries = new HashSet<>();
+    private Connection connection;
+    private Sender sender;
+    private long nextDeliveryTag = 0;
+    private Task closeTimeoutTask;
+
+    private volatile int inFlightCount = 0;
+    private volatile boolean isOpen = false;
+    private volatile boolean closeRequested = false;
+    private volatile long closeDeadline;
+    private volatile Reactor reactor;
+    private ExecutorService reactorExecutor;
+
+    /**
+     * Constructor to set up connection parameters with the default maximum number of unsettled deliveries
+     *
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     */
+    public AmqpSendConnection(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol)
+    {
+        this(hostName, userName, sasToken, iotHubServiceClientProtocol, DEFAULT_MAX_IN_FLIGHT_COUNT);
+    }
+
+    /**
+     * Constructor to set up connection parameters
+     *
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     * @param maxInFlightCount The maximum number of unsettled deliveries on the link
+     */
+    public AmqpSendConnection(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol, int maxInFlightCount)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_001: [The constructor shall throw IllegalArgumentException if any of the input parameter is null or empty, or if the max in flight count is less than 1.]
+        super(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        if (maxInFlightCount < 1)
+        {
+            throw new IllegalArgumentException("maxInFlightCount must be greater than 0");
+        }
+
+        this.maxInFlightCount = maxInFlightCount;
+    }
+
+    /**
+     * Create the Proton reactor and start it on the thread of this connection
+     * @throws IOException If the reactor cannot be created
+     */
+    public synchronized void open() throws IOException
+    {
+        if (this.reactorExecutor != null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_002: [If this connection was already opened, this function shall do nothing.]
+            return;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_003: [This function shall create a Proton reactor and run it on a dedicated thread.]
+        this.reactor = Proton.reactor(this);
+        this.isOpen = true;
+        this.reactorExecutor = Executors.newSingleThreadExecutor();
+        this.reactorExecutor.submit(this::runReactor);
+    }
+
+    /**
+     * Queue the message to be sent to the given path
+     *
+     * @param targetPath The path of the device or module the message is sent to
+     * @param message The message to be sent
+     * @return The future that completes when IotHub accepts the message, or completes exceptionally with an
+     * IotHubException if IotHub rejects it, or with an IOException if the connection is lost before it is settled
+     */
+    public CompletableFuture<Void> send(String targetPath, Message message)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_004: [If the target path is null or empty, or the message is null, this function shall throw an IllegalArgumentException.]
+        if (Tools.isNullOrEmpty(targetPath))
+        {
+            throw new IllegalArgumentException("targetPath can not be null or empty");
+        }
+        if (message == null)
+        {
+            throw new IllegalArgumentException("message can not be null");
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!this.isOpen || this.closeRequested)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_005: [If the connection is not open, this function shall return a future completed with an IOException.]
+            future.completeExceptionally(new IOException("The AMQP send connection is not open"));
+            return future;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_006: [This function shall encode the message on the calling thread, queue it, and wake the reactor up to send it.]
+        this.pendingDeliveries.add(new PendingDelivery(encode(buildProtonMessage(targetPath, message)), future));
+        wakeUpReactor();
+
+        if (!this.isOpen)
+        {
+            // the reactor stopped while the message was being queued
+            failPendingDeliveries(new IOException("The AMQP send connection was closed"));
+        }
+
+        return future;
+    }
+
+    /**
+     * @return true if the connection can accept messages, false once it has been closed or lost.
+     */
+    public boolean isOpen()
+    {
+        return this.isOpen && !this.closeRequested;
+    }
+
+    /**
+     * @return the number of messages sent and not yet settled by IotHub
+     */
+    public int getInFlightCount()
+    {
+        return this.inFlightCount;
+    }
+
+    /**
+     * @return the number of messages waiting for link credit or for an in flight slot
+     */
+    public int getPendingCount()
+    {
+        return this.pendingDeliveries.size();
+    }
+
+    /**
+     * Close the connection once the queued and in flight messages are settled, and stop the reactor thread. Messages
+     * that are still not settled after a timeout are completed with an IOException. The caller waits for the reactor
+     * thread to stop without holding the lock of this connection.
+     */
+    public void close()
+    {
+        ExecutorService executor;
+        synchronized (this)
+        {
+            if (this.reactorExecutor == null)
+            {
+                return;
+            }
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_007: [This function shall stop accepting messages, close the connection once the queued messages are settled or a timeout elapses, and stop the reactor thread.]
+            executor = this.reactorExecutor;
+            if (!this.closeRequested)
+            {
+                this.closeDeadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLISECONDS;
+                this.closeRequested = true;
+                executor.shutdown();
+            }
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_014: [This function shall wake the reactor up to handle the close request, and wait for the reactor thread to stop without holding the lock of this connection.]
+        wakeUpReactor();
+        try
+        {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLISECONDS * 2, TimeUnit.MILLISECONDS))
+            {
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        failPendingDeliveries(new IOException("The AMQP send connection was closed"));
+    }
+
+    /**
+     * Event handler for the reactor init event
+     * @param event The proton event object
+     */
+    @Override
+    public void onReactorInit(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_008: [The event handler shall open a connection handled by this object.]
+        this.connection = event.getReactor().connection(this);
+    }
+
+    /**
+     * Event handler for the reactor quiesced event, raised each time the reactor handled its pending events and is
+     * about to wait for more, such as the wake up of a send or of a close. It moves the queued messages to the link and
+     * handles close requests.
+     * @param event The proton event object
+     */
+    @Override
+    public void onReactorQuiesced(Event event)
+    {
+        if (!this.isOpen || this.connection == null)
+        {
+            // the connection is gone or not created yet
+            return;
+        }
+
+        if (this.closeRequested)
+        {
+            long remainingMilliseconds = this.closeDeadline - System.currentTimeMillis();
+            if ((this.pendingDeliveries.isEmpty() && this.inFlightDeliveries.isEmpty()) || remainingMilliseconds <= 0)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_009: [If a close was requested and nothing is queued or in flight, or the close timeout elapsed, the event handler shall close the Sender, Session and Connection.]
+                this.isOpen = false;
+                if (this.closeTimeoutTask != null)
+                {
+                    // a pending task would keep the reactor running until the timeout
+                    this.closeTimeoutTask.cancel();
+                }
+                if (this.sender != null)
+                {
+                    this.sender.close();
+                    this.sender.getSession().close();
+                }
+                this.connection.close();
+                return;
+            }
+
+            if (this.closeTimeoutTask == null)
+            {
+                // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_015: [If a close was requested while messages are queued or in flight, the event handler shall schedule a timer that wakes the reactor up when the close timeout elapses.]
+                this.closeTimeoutTask = event.getReactor().schedule((int) remainingMilliseconds, this);
+            }
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_010: [The event handler shall send the queued messages.]
+        sendPendingDeliveries();
+    }
+
+    @Override
+    public void onLinkRemoteOpen(Event event)
+    {
+        super.onLinkRemoteOpen(event);
+        this.sender = (Sender)event.getLink();
+        sendPendingDeliveries();
+    }
+
+    /**
+     * Event handler for the link flow event
+     * @param event The proton event object
+     */
+    @Override
+    public void onLinkFlow(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_011: [The event handler shall send queued messages while the link has credit and fewer than the max in flight count are unsettled.]
+        this.sender = (Sender)event.getLink();
+        sendPendingDeliveries();
+    }
+
+    @Override
+    public void onDelivery(Event event)
+    {
+        Delivery delivery = event.getDelivery();
+        if (delivery.getRemoteState() == null && !delivery.remotelySettled())
+        {
+            // not an outcome yet
+            return;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_012: [The event handler shall settle the delivery and complete its future with the exception of the Amqp response, if any, without closing the link.]
+        PendingDelivery pendingDelivery = (PendingDelivery)delivery.getContext();
+        delivery.settle();
+        if (pendingDelivery != null && this.inFlightDeliveries.remove(pendingDelivery))
+        {
+            this.inFlightCount = this.inFlightDeliveries.size();
+            AmqpResponseVerification verification = new AmqpResponseVerification(delivery.getRemoteState());
+            if (verification.getException() != null)
+            {
+                pendingDelivery.future.completeExceptionally(verification.getException());
+            }
+            else
+            {
+                pendingDelivery.future.complete(null);
+            }
+        }
+
+        sendPendingDeliveries();
+    }
+
+    /**
+     * Event handler for the transport error event
+     * @param event The Proton Event object.
+     */
+    @Override
+    public void onTransportError(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_013: [If the transport fails or IotHub closes the link or the connection, the event handler shall complete the queued and in flight futures with an IOException.]
+        super.onTransportError(event);
+        connectionLost(new IOException("A Transport error occurred"));
+    }
+
+    @Override
+    public void onLinkRemoteClose(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_013: [If the transport fails or IotHub closes the link or the connection, the event handler shall complete the queued and in flight futures with an IOException.]
+        connectionLost(new IOException("The sender link was closed by the service"));
+        event.getLink().close();
+        event.getLink().getSession().getConnection().close();
+    }
+
+    @Override
+    public void onConnectionRemoteClose(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_013: [If the transport fails or IotHub closes the link or the connection, the event handler shall complete the queued and in flight futures with an IOException.]
+        super.onConnectionRemoteClose(event);
+        connectionLost(new IOException("The connection was closed by the service"));
+    }
+
+    private void runReactor()
+    {
+        try
+        {
+            this.reactor.run();
+        }
+        catch (HandlerException e)
+        {
+            connectionLost(new IOException("The AMQP send connection failed", e));
+        }
+        finally
+        {
+            connectionLost(new IOException("The AMQP send connection was closed"));
+            this.reactor.free();
+        }
+    }
+
+    private void wakeUpReactor()
+    {
+        Reactor reactor = this.reactor;
+        if (reactor != null && this.isOpen)
+        {
+            reactor.wakeup();
+        }
+    }
+
+    private void sendPendingDeliveries()
+    {
+        if (this.sender == null)
+        {
+            return;
+        }
+
+        while (this.sender.getCredit() > 0 && this.inFlightDeliveries.size() < this.maxInFlightCount)
+        {
+            PendingDelivery pendingDelivery = this.pendingDeliveries.poll();
+            if (pendingDelivery == null)
+            {
+                break;
+            }
+
+            Delivery delivery = this.sender.delivery(String.valueOf(this.nextDeliveryTag++).getBytes());
+            delivery.setContext(pendingDelivery);
+            this.sender.send(pendingDelivery.encodedMessage, 0, pendingDelivery.encodedMessage.length);
+            this.sender.advance();
+            this.inFlightDeliveries.add(pendingDelivery);
+        }
+
+        this.inFlightCount = this.inFlightDeliveries.size();
+    }
+
+    private void connectionLost(IOException exception)
+    {
+        this.isOpen = false;
+        for (PendingDelivery pendingDelivery : this.inFlightDeliveries)
+        {
+            pendingDelivery.future.completeExceptionally(exception);
+        }
+        this.inFlightDeliveries.clear();
+        this.inFlightCount = 0;
+        failPendingDeliveries(exception);
+    }
+
+    private void failPendingDeliveries(IOException exception)
+    {
+        PendingDelivery pendingDelivery;
+        while ((pendingDelivery = this.pendingDeliveries.poll()) != null)
+        {
+            pendingDelivery.future.completeExceptionally(exception);
+        }
+    }
+
+    private static byte[] encode(org.apache.qpid.proton.message.Message protonMessage)
+    {
+        byte[] buffer = new byte[1024];
+        while (true)
+        {
+            try
+            {
+                int length = protonMessage.encode(buffer, 0, buffer.length);
+                byte[] encoded = new byte[length];
+                System.arraycopy(buffer, 0, encoded, 0, length);
+                return encoded;
+            }
+            catch (BufferOverflowException e)
+            {
+                buffer = new byte[buffer.length * 2];
+            }
+        }
+    }
+
+    private static final class PendingDelivery
+    {
+        private final byte[] encodedMessage;
+        private final CompletableFuture<Void> future;
+
+        private PendingDelivery(byte[] encodedMessage, CompletableFuture<Void> future)
+        {
+            this.encodedMessage = encodedMessage;
+            this.future = future;
+        }
+    }
+}
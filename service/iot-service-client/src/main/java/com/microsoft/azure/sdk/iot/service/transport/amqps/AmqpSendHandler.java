@@ -132,6 +132,17 @@ public class AmqpSendHandler extends BaseHandler
     }
 
     private void populateProtonMessage(String targetPath, com.microsoft.azure.sdk.iot.service.Message message)
+    {
+        messagesToBeSent.add(buildProtonMessage(targetPath, message));
+    }
+
+    /**
+     * Create Proton message addressed to the given path from the service message
+     * @param targetPath The path of the device or module the message is sent to
+     * @param message The message to be sent
+     * @return The created Proton message
+     */
+    protected org.apache.qpid.proton.message.Message buildProtonMessage(String targetPath, com.microsoft.azure.sdk.iot.service.Message message)
     {
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_005: [The function shall create a new Message (Proton) object]
         org.apache.qpid.proton.message.Message protonMessage = Proton.message();
@@ -168,7 +179,7 @@ public class AmqpSendHandler extends BaseHandler
         Section section = new Data(binary);
         // Codes_SRS_SERVICE_SDK_JAVA_AMQPSENDHANDLER_12_009: [The function shall set the Message body to the created data section]
         protonMessage.setBody(section);
-        messagesToBeSent.add(protonMessage);
+        return protonMessage;
     }
 
     /**
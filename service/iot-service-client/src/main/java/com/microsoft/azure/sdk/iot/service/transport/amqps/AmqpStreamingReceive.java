@@ -0,0 +1,609 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.deps.auth.IotHubSSLContext;
+import com.microsoft.azure.sdk.iot.deps.ws.impl.WebSocketImpl;
+import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
+import com.microsoft.azure.sdk.iot.service.Tools;
+import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Header;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.amqp.messaging.Source;
+import org.apache.qpid.proton.amqp.messaging.Target;
+import org.apache.qpid.proton.amqp.transport.AmqpError;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.apache.qpid.proton.engine.*;
+import org.apache.qpid.proton.engine.impl.TransportInternal;
+import org.apache.qpid.proton.reactor.FlowController;
+import org.apache.qpid.proton.reactor.Handshaker;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.Task;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instance of the QPID-Proton-J BaseHandler class that keeps a receiver link to a service bound endpoint open and
+ * pushes every message body to a callback as it arrives, instead of opening a connection per receive call.
+ *
+ * The link credit is kept at the prefetch count, so IotHub can push that many messages ahead of the callback.
+ * Accepted deliveries are settled in batches, once the settlement batch size is reached or the settlement interval
+ * elapses. A delivery that cannot be decoded is rejected. If the callback throws, the delivery is released so IotHub
+ * delivers it again, but only after a delay that doubles with every failure in a row, so a callback that keeps failing
+ * does not spin on the same messages; a message the callback failed on too many times is rejected instead. If the
+ * connection is lost it is opened again after a growing delay; the deliveries that were not settled yet are delivered
+ * again by IotHub.
+ *
+ * The callback is called on the thread of this receiver, so a slow callback slows down the link instead of piling
+ * up messages in memory.
+ */
+public class AmqpStreamingReceive extends BaseHandler
+{
+    public static final int DEFAULT_PREFETCH_COUNT = 64;
+    public static final int DEFAULT_SETTLEMENT_BATCH_SIZE = 16;
+
+    private static final String SEND_PORT_AMQPS = ":5671";
+    private static final String SEND_PORT_AMQPS_WS = ":443";
+    private static final String WEBSOCKET_PATH = "/$iothub/websocket";
+    private static final String WEBSOCKET_SUB_PROTOCOL = "AMQPWSB10";
+
+    // How long an accepted delivery may wait for its settlement batch to fill up
+    private static final int SETTLEMENT_INTERVAL_MILLISECONDS = 200;
+    private static final long MIN_RECONNECT_DELAY_MILLISECONDS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MILLISECONDS = 60000;
+    private static final long CLOSE_TIMEOUT_MILLISECONDS = 10000;
+
+    // A delivery the callback failed on is released after a delay that doubles with every failure in a row
+    private static final int MIN_RELEASE_DELAY_MILLISECONDS = 100;
+    private static final int MAX_RELEASE_DELAY_MILLISECONDS = 30000;
+
+    // A message the callback failed on that many times is rejected instead of released
+    private static final int MAX_DELIVERY_ATTEMPTS = 10;
+    private static final int MAX_TRACKED_FAILED_MESSAGES = 1024;
+    private static final Symbol DECODE_ERROR = Symbol.getSymbol("amqp:decode-error");
+
+    private final String hostName;
+    private final String webSocketHostName;
+    private final String userName;
+    private final String sasToken;
+    private final IotHubServiceClientProtocol iotHubServiceClientProtocol;
+    private final String linkName;
+    private final String endpoint;
+    private final int settlementBatchSize;
+    private final AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent;
+
+    // Only accessed by the receiver thread
+    private final List<Delivery> unsettledDeliveries = new ArrayList<>();
+    private final Map<Delivery, Task> delayedReleases = new HashMap<>();
+    private final Map<Object, Integer> failedAttempts = new LinkedHashMap<Object, Integer>()
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Integer> eldest)
+        {
+            return size() > MAX_TRACKED_FAILED_MESSAGES;
+        }
+    };
+    private int consecutiveFailures;
+    private Connection connection;
+    private Receiver receiver;
+    private boolean isConnectionLost;
+    private boolean linkWasOpened;
+
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong settledCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong reconnectCount = new AtomicLong();
+    private final CountDownLatch closeSignal = new CountDownLatch(1);
+    private volatile boolean closeRequested = false;
+    private ExecutorService receiverExecutor;
+
+    /**
+     * Constructor to set up connection parameters and initialize handshaker and flow controller for transport
+     * @param hostName The address string of the service (example: AAA.BBB.CCC)
+     * @param userName The username string to use SASL authentication (example: user@sas.service)
+     * @param sasToken The SAS token string
+     * @param iotHubServiceClientProtocol protocol to use
+     * @param linkName The name of the receiver link
+     * @param endpoint The address of the endpoint to receive from
+     * @param prefetchCount The link credit, that is the number of messages IotHub may send ahead of the callback
+     * @param settlementBatchSize The number of accepted deliveries that are settled together
+     * @param amqpFeedbackReceivedEvent callback to delegate the received message bodies to the user API
+     */
+    public AmqpStreamingReceive(String hostName, String userName, String sasToken, IotHubServiceClientProtocol iotHubServiceClientProtocol,
+                                String linkName, String endpoint, int prefetchCount, int settlementBatchSize, AmqpFeedbackReceivedEvent amqpFeedbackReceivedEvent)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_001: [The constructor shall throw IllegalArgumentException if any of the input parameters is null or empty, or if the prefetch count or settlement batch size is less than 1.]
+        if (Tools.isNullOrEmpty(hostName) || Tools.isNullOrEmpty(userName) || Tools.isNullOrEmpty(sasToken)
+                || Tools.isNullOrEmpty(linkName) || Tools.isNullOrEmpty(endpoint))
+        {
+            throw new IllegalArgumentException("Input parameters cannot be null or empty");
+        }
+        if (iotHubServiceClientProtocol == null || amqpFeedbackReceivedEvent == null)
+        {
+            throw new IllegalArgumentException("Input parameters cannot be null");
+        }
+        if (prefetchCount < 1 || settlementBatchSize < 1)
+        {
+            throw new IllegalArgumentException("prefetchCount and settlementBatchSize must be greater than 0");
+        }
+
+        this.iotHubServiceClientProtocol = iotHubServiceClientProtocol;
+        this.webSocketHostName = hostName;
+        if (this.iotHubServiceClientProtocol == IotHubServiceClientProtocol.AMQPS_WS)
+        {
+            this.hostName = hostName + SEND_PORT_AMQPS_WS;
+        }
+        else
+        {
+            this.hostName = hostName + SEND_PORT_AMQPS;
+        }
+        this.userName = userName;
+        this.sasToken = sasToken;
+        this.linkName = linkName;
+        this.endpoint = endpoint;
+        this.settlementBatchSize = settlementBatchSize;
+        this.amqpFeedbackReceivedEvent = amqpFeedbackReceivedEvent;
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_002: [The constructor shall add a Handshaker and a FlowController (Proton) object that keeps the link credit at the prefetch count.]
+        add(new Handshaker());
+        add(new FlowController(prefetchCount));
+    }
+
+    /**
+     * Start the thread that connects and receives until {@link #close()} is called
+     */
+    public synchronized void open()
+    {
+        if (this.closeRequested)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_003: [If this receiver was closed, this function shall throw an IllegalStateException.]
+            throw new IllegalStateException("The receiver was closed and cannot be opened again");
+        }
+
+        if (this.receiverExecutor == null)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_004: [This function shall start a thread that runs a Proton reactor and opens it again after a delay when the connection is lost.]
+            this.receiverExecutor = Executors.newSingleThreadExecutor();
+            this.receiverExecutor.submit(this::runReactors);
+        }
+    }
+
+    /**
+     * Settle the accepted deliveries, close the connection and stop the thread of this receiver
+     */
+    public synchronized void close()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_005: [This function shall settle the accepted deliveries, close the connection and stop the receiver thread.]
+        this.closeRequested = true;
+        this.closeSignal.countDown();
+        if (this.receiverExecutor != null)
+        {
+            this.receiverExecutor.shutdown();
+            try
+            {
+                if (!this.receiverExecutor.awaitTermination(CLOSE_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS))
+                {
+                    this.receiverExecutor.shutdownNow();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages received since this receiver was opened
+     */
+    public long getReceivedCount()
+    {
+        return this.receivedCount.get();
+    }
+
+    /**
+     * @return the number of deliveries settled with the Accepted outcome since this receiver was opened
+     */
+    public long getSettledCount()
+    {
+        return this.settledCount.get();
+    }
+
+    /**
+     * @return the number of deliveries settled with the Rejected outcome since this receiver was opened, because they
+     * could not be decoded or the callback failed on them too many times
+     */
+    public long getRejectedCount()
+    {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * @return the number of times the connection was opened again after it was lost
+     */
+    public long getReconnectCount()
+    {
+        return this.reconnectCount.get();
+    }
+
+    /**
+     * Event handler for the reactor init event
+     * @param event The proton event object
+     */
+    @Override
+    public void onReactorInit(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_006: [The event handler shall open a connection handled by this object and schedule the settlement timer.]
+        Reactor reactor = event.getReactor();
+        this.connection = reactor.connection(this);
+        reactor.schedule(SETTLEMENT_INTERVAL_MILLISECONDS, this);
+    }
+
+    /**
+     * Event handler for the timer task event, which settles the accepted deliveries and handles close requests
+     * @param event The proton event object
+     */
+    @Override
+    public void onTimerTask(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_007: [The event handler shall settle the accepted deliveries and reschedule itself while the connection is open and no close was requested.]
+        if (this.isConnectionLost)
+        {
+            // the deliveries of a lost connection cannot be settled, let the reactor stop
+            cancelDelayedReleases();
+            return;
+        }
+
+        settleAcceptedDeliveries();
+        if (this.closeRequested)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_018: [If a close was requested, the event handler shall release the deliveries waiting for their delayed release right away.]
+            for (Delivery delivery : this.delayedReleases.keySet())
+            {
+                release(delivery);
+            }
+            cancelDelayedReleases();
+
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_008: [If a close was requested, the event handler shall close the Receiver, Session and Connection.]
+            if (this.receiver != null)
+            {
+                this.receiver.close();
+                this.receiver.getSession().close();
+            }
+            this.connection.close();
+            return;
+        }
+
+        event.getReactor().schedule(SETTLEMENT_INTERVAL_MILLISECONDS, this);
+    }
+
+    /**
+     * Event handler for the on delivery event
+     * @param event The proton event object
+     */
+    @Override
+    public void onDelivery(Event event)
+    {
+        Receiver recv = (Receiver)event.getLink();
+        Delivery delivery = recv.current();
+        if (delivery == null || !delivery.isReadable() || delivery.isPartial())
+        {
+            return;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_009: [The event handler shall read and decode the delivery and call the callback with the message body.]
+        byte[] buffer = new byte[delivery.pending()];
+        int read = recv.recv(buffer, 0, buffer.length);
+        recv.advance();
+        this.receivedCount.incrementAndGet();
+        org.apache.qpid.proton.message.Message msg = Proton.message();
+        try
+        {
+            msg.decode(buffer, 0, read);
+        }
+        catch (RuntimeException e)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_016: [If the delivery cannot be decoded, the event handler shall settle it with the Rejected outcome and go on with the next delivery.]
+            reject(delivery, new ErrorCondition(DECODE_ERROR, e.getMessage()));
+            return;
+        }
+
+        try
+        {
+            this.amqpFeedbackReceivedEvent.onFeedbackReceived(bodyOf(msg));
+        }
+        catch (RuntimeException e)
+        {
+            onCallbackFailure(event.getReactor(), delivery, msg);
+            return;
+        }
+
+        this.consecutiveFailures = 0;
+        if (msg.getMessageId() != null)
+        {
+            this.failedAttempts.remove(msg.getMessageId());
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_011: [The event handler shall settle the accepted deliveries once the settlement batch size is reached.]
+        this.unsettledDeliveries.add(delivery);
+        if (this.unsettledDeliveries.size() >= this.settlementBatchSize)
+        {
+            settleAcceptedDeliveries();
+        }
+    }
+
+    @Override
+    public void onConnectionBound(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_012: [The event handler shall set the SASL PLAIN authentication and the IotHub SSL context on the Transport, and add the WebSocket layer for AMQPS_WS.]
+        Transport transport = event.getConnection().getTransport();
+        if (transport != null)
+        {
+            if (this.iotHubServiceClientProtocol == IotHubServiceClientProtocol.AMQPS_WS)
+            {
+                WebSocketImpl webSocket = new WebSocketImpl();
+                webSocket.configure(this.webSocketHostName, WEBSOCKET_PATH, 0, WEBSOCKET_SUB_PROTOCOL, null, null);
+                ((TransportInternal)transport).addTransportLayer(webSocket);
+            }
+            Sasl sasl = transport.sasl();
+            sasl.plain(this.userName, this.sasToken);
+
+            SslDomain domain = Proton.sslDomain();
+            domain.init(SslDomain.Mode.CLIENT);
+            domain.setPeerAuthentication(SslDomain.VerifyMode.VERIFY_PEER);
+            try
+            {
+                // Need the base trusted certs for IotHub in our ssl context. IotHubSSLContext handles that
+                domain.setSslContext(new IotHubSSLContext().getSSLContext());
+            }
+            catch (Exception e)
+            {
+                // the handshake fails without the IotHub certificates, and the connection is opened again later
+                this.isConnectionLost = true;
+            }
+
+            transport.ssl(domain);
+        }
+    }
+
+    @Override
+    public void onConnectionInit(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_013: [The event handler shall open the Connection, a Session and a Receiver with the link name and the service client version identifier.]
+        Connection conn = event.getConnection();
+        conn.setHostname(this.hostName);
+        Session ssn = conn.session();
+
+        Map<Symbol, Object> properties = new HashMap<>();
+        properties.put(Symbol.getSymbol(TransportUtils.versionIdentifierKey), TransportUtils.USER_AGENT_STRING);
+        this.receiver = ssn.receiver(this.linkName);
+        this.receiver.setProperties(properties);
+
+        conn.open();
+        ssn.open();
+        this.receiver.open();
+    }
+
+    @Override
+    public void onLinkInit(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_014: [The event handler shall set the source and target of the receiver link to the endpoint.]
+        Link link = event.getLink();
+        if (link.getName().equals(this.linkName))
+        {
+            Target target = new Target();
+            target.setAddress(this.endpoint);
+            Source source = new Source();
+            source.setAddress(this.endpoint);
+            link.setTarget(target);
+            link.setSource(source);
+        }
+    }
+
+    @Override
+    public void onLinkRemoteOpen(Event event)
+    {
+        this.linkWasOpened = true;
+    }
+
+    @Override
+    public void onLinkRemoteClose(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_015: [If IotHub closes the link or the connection, or the transport fails, the event handler shall mark the connection as lost and close it.]
+        this.isConnectionLost = true;
+        event.getLink().close();
+        event.getLink().getSession().getConnection().close();
+    }
+
+    @Override
+    public void onConnectionRemoteClose(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_015: [If IotHub closes the link or the connection, or the transport fails, the event handler shall mark the connection as lost and close it.]
+        this.isConnectionLost = true;
+        event.getConnection().close();
+        event.getTransport().close_tail();
+    }
+
+    @Override
+    public void onTransportError(Event event)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_015: [If IotHub closes the link or the connection, or the transport fails, the event handler shall mark the connection as lost and close it.]
+        this.isConnectionLost = true;
+    }
+
+    private void runReactors()
+    {
+        long reconnectDelay = MIN_RECONNECT_DELAY_MILLISECONDS;
+        while (!this.closeRequested)
+        {
+            this.isConnectionLost = false;
+            this.linkWasOpened = false;
+            this.receiver = null;
+            try
+            {
+                Reactor reactor = Proton.reactor(this);
+                try
+                {
+                    reactor.run();
+                }
+                finally
+                {
+                    reactor.free();
+                }
+            }
+            catch (IOException | HandlerException e)
+            {
+                // treated as a lost connection below
+            }
+
+            // deliveries of the lost connection cannot be settled anymore, IotHub delivers them again
+            this.unsettledDeliveries.clear();
+            this.delayedReleases.clear();
+
+            if (this.linkWasOpened)
+            {
+                reconnectDelay = MIN_RECONNECT_DELAY_MILLISECONDS;
+            }
+
+            try
+            {
+                if (this.closeSignal.await(reconnectDelay, TimeUnit.MILLISECONDS))
+                {
+                    break;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLISECONDS);
+            this.reconnectCount.incrementAndGet();
+        }
+    }
+
+    private void settleAcceptedDeliveries()
+    {
+        for (Delivery delivery : this.unsettledDeliveries)
+        {
+            delivery.disposition(Accepted.getInstance());
+            delivery.settle();
+        }
+        this.settledCount.addAndGet(this.unsettledDeliveries.size());
+        this.unsettledDeliveries.clear();
+    }
+
+    private void onCallbackFailure(Reactor reactor, Delivery delivery, org.apache.qpid.proton.message.Message msg)
+    {
+        int attempts = 1;
+        Header header = msg.getHeader();
+        if (header != null && header.getDeliveryCount() != null)
+        {
+            attempts = header.getDeliveryCount().intValue() + 1;
+        }
+        Object messageId = msg.getMessageId();
+        if (messageId != null)
+        {
+            Integer previousAttempts = this.failedAttempts.get(messageId);
+            attempts = Math.max(attempts, previousAttempts == null ? 1 : previousAttempts + 1);
+        }
+
+        if (attempts >= MAX_DELIVERY_ATTEMPTS)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_017: [If the callback failed on the same message 10 times, the event handler shall settle the delivery with the Rejected outcome instead of releasing it.]
+            if (messageId != null)
+            {
+                this.failedAttempts.remove(messageId);
+            }
+            reject(delivery, new ErrorCondition(AmqpError.PRECONDITION_FAILED, "The callback failed on the message " + attempts + " times"));
+            return;
+        }
+
+        if (messageId != null)
+        {
+            this.failedAttempts.put(messageId, attempts);
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_010: [If the callback throws, the event handler shall settle the delivery with the Released outcome after a delay that starts at 100 milliseconds and doubles with every callback failure in a row, up to 30 seconds.]
+        int delay = MIN_RELEASE_DELAY_MILLISECONDS << Math.min(this.consecutiveFailures, 20);
+        delay = Math.min(delay, MAX_RELEASE_DELAY_MILLISECONDS);
+        this.consecutiveFailures++;
+        this.delayedReleases.put(delivery, reactor.schedule(delay, new DelayedRelease(delivery)));
+    }
+
+    private void release(Delivery delivery)
+    {
+        delivery.disposition(Released.getInstance());
+        delivery.settle();
+    }
+
+    private void reject(Delivery delivery, ErrorCondition errorCondition)
+    {
+        Rejected rejected = new Rejected();
+        rejected.setError(errorCondition);
+        delivery.disposition(rejected);
+        delivery.settle();
+        this.rejectedCount.incrementAndGet();
+    }
+
+    private void cancelDelayedReleases()
+    {
+        for (Task task : this.delayedReleases.values())
+        {
+            task.cancel();
+        }
+        this.delayedReleases.clear();
+    }
+
+    /**
+     * Timer handler that releases a delivery the callback failed on, once its delay has elapsed
+     */
+    private final class DelayedRelease extends BaseHandler
+    {
+        private final Delivery delivery;
+
+        private DelayedRelease(Delivery delivery)
+        {
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void onTimerTask(Event event)
+        {
+            // the delivery was already released by a close, or dropped with a lost connection
+            if (delayedReleases.remove(this.delivery) != null && !isConnectionLost)
+            {
+                release(this.delivery);
+            }
+        }
+    }
+
+    private static String bodyOf(org.apache.qpid.proton.message.Message msg)
+    {
+        if (msg.getBody() instanceof Data)
+        {
+            return ((Data)msg.getBody()).getValue().toString();
+        }
+
+        return msg.getBody() == null ? null : msg.getBody().toString();
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.transport.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends {@link HttpRequest}s without blocking the caller. The service client sends the requests of its async
+ * operations through the engine set with {@link HttpRequest#setHttpEngine(HttpEngine)}, which is a
+ * {@link PooledHttpEngine} unless the application plugs in another one. The default engine runs the blocking
+ * {@link HttpRequest#send()} on a bounded pool; an application needing truly non-blocking I/O can plug in an engine
+ * built on an asynchronous http client.
+ */
+public interface HttpEngine
+{
+    /**
+     * Sends the request.
+     *
+     * @param request The request to send.
+     * @return The future response. The future completes exceptionally with an IOException if the request could not
+     * be sent or its response could not be read.
+     */
+    CompletableFuture<HttpResponse> sendAsync(HttpRequest request);
+}
@@ -11,9 +11,12 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class HttpRequest
 {
+    private static volatile HttpEngine httpEngine;
+
     /** The underlying HTTPS connection stream. */
     protected final HttpConnection connection;
 
@@ -87,6 +90,39 @@ public class HttpRequest
                 errorReason);
     }
 
+    /**
+     * Executes the HTTPS request through the http engine, without blocking the calling thread.
+     *
+     * @return The future HTTPS response. The future completes exceptionally with an IOException if the connection
+     * could not be established, or the input/output streams could not be accessed.
+     */
+    public CompletableFuture<HttpResponse> sendAsync()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_011: [The function shall send the request through the http engine and return its future response.]
+        return getHttpEngine().sendAsync(this);
+    }
+
+    /**
+     * Sets the engine that sends the requests of {@link #sendAsync()} for the whole application.
+     *
+     * @param engine The http engine, or null to use the shared {@link PooledHttpEngine}.
+     */
+    public static void setHttpEngine(HttpEngine engine)
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_012: [The function shall save the engine used by sendAsync.]
+        httpEngine = engine;
+    }
+
+    /**
+     * @return The engine that sends the requests of {@link #sendAsync()}.
+     */
+    public static HttpEngine getHttpEngine()
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_013: [If no engine was set, the function shall return the shared PooledHttpEngine.]
+        HttpEngine engine = httpEngine;
+        return (engine != null) ? engine : PooledHttpEngine.getDefault();
+    }
+
     /**
      * Sets the header field to the given value.
      *
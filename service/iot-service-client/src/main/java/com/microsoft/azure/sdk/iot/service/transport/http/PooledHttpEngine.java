@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package com.microsoft.azure.sdk.iot.service.transport.http;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default {@link HttpEngine}: a bounded-pool async adapter over the blocking {@link HttpRequest#send()}. It is not
+ * non-blocking I/O; each request holds a daemon thread of the pool for its whole round trip, so at most
+ * {@value #DEFAULT_MAX_CONCURRENT_REQUESTS} requests (or the count given to the constructor) are in flight at once and
+ * the other ones wait in the queue of the pool. What it bounds is the number of threads: the pool is shared by all the
+ * clients using the engine, so an application issuing many async operations, such as the ones of the
+ * RegistryManager, needs neither a thread per operation nor a thread pool per client. The HTTPS connections are kept
+ * alive and reused by the JDK, since every response is read to its end; the JDK keeps up to "http.maxConnections" idle
+ * connections per host.
+ * <p>
+ * The engine shared by the clients when no other one is set, returned by {@link HttpRequest#getHttpEngine()}, cannot
+ * be closed; only the engines created by the application can.
+ */
+public class PooledHttpEngine implements HttpEngine
+{
+    /** The number of requests the default engine sends concurrently */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 32;
+
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+    private static final String THREAD_NAME_PREFIX = "azure-iot-sdk-http-";
+
+    private final ThreadPoolExecutor executor;
+    private final boolean shared;
+
+    /**
+     * Constructor for an engine sending up to {@value #DEFAULT_MAX_CONCURRENT_REQUESTS} requests concurrently.
+     */
+    public PooledHttpEngine()
+    {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxConcurrentRequests The number of requests sent concurrently. The other requests wait in a queue.
+     * @throws IllegalArgumentException This exception is thrown if the max concurrent requests is less than 1
+     */
+    public PooledHttpEngine(int maxConcurrentRequests) throws IllegalArgumentException
+    {
+        this(maxConcurrentRequests, false);
+    }
+
+    private PooledHttpEngine(int maxConcurrentRequests, boolean shared) throws IllegalArgumentException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_001: [The constructor shall throw IllegalArgumentException if the max concurrent requests is less than 1.]
+        if (maxConcurrentRequests < 1)
+        {
+            throw new IllegalArgumentException("maxConcurrentRequests cannot be less than 1");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_002: [The constructor shall create a pool of up to max concurrent requests daemon threads, which stop after being idle for a minute.]
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable ->
+        {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+                IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.shared = shared;
+    }
+
+    /**
+     * Sends the request from the thread pool of this engine.
+     *
+     * @param request The request to send.
+     * @return The future response.
+     * @throws IllegalArgumentException This exception is thrown if the request is null
+     */
+    @Override
+    public CompletableFuture<HttpResponse> sendAsync(HttpRequest request) throws IllegalArgumentException
+    {
+        // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_003: [The function shall throw IllegalArgumentException if the request is null.]
+        if (request == null)
+        {
+            throw new IllegalArgumentException("request cannot be null");
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_004: [The function shall send the request from the thread pool and complete the future with its response or its exception.]
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        try
+        {
+            this.executor.execute(() ->
+            {
+                try
+                {
+                    future.complete(request.send());
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    future.completeExceptionally(e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_005: [If this engine was closed, the function shall return a future completed with an IOException.]
+            future.completeExceptionally(new IOException("The http engine was closed", e));
+        }
+        return future;
+    }
+
+    /**
+     * @return The number of requests being sent.
+     */
+    public int getActiveRequestCount()
+    {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return The number of requests waiting for a thread of the pool.
+     */
+    public int getQueuedRequestCount()
+    {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting requests. The requests already accepted are still sent. Closing the engine shared by the
+     * clients has no effect, since the other clients still send their requests through it.
+     */
+    public void close()
+    {
+        if (this.shared)
+        {
+            // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_007: [If this engine is the shared default one, the function shall do nothing.]
+            return;
+        }
+
+        // Codes_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_006: [The function shall shut the thread pool down after the accepted requests were sent.]
+        this.executor.shutdown();
+    }
+
+    static PooledHttpEngine getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static class DefaultHolder
+    {
+        private static final PooledHttpEngine INSTANCE = new PooledHttpEngine(DEFAULT_MAX_CONCURRENT_REQUESTS, true);
+    }
+}
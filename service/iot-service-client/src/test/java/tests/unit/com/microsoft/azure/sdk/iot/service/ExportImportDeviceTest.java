@@ -122,6 +122,25 @@ public class ExportImportDeviceTest
         assertEquals(DeviceStatus.Enabled.toString(), parserCA.getStatus());
     }
 
+    //Tests_SRS_SERVICE_SDK_JAVA_IMPORT_EXPORT_DEVICE_34_062: [This method shall save the provided moduleId, which may be null.]
+    //Tests_SRS_SERVICE_SDK_JAVA_IMPORT_EXPORT_DEVICE_34_054: [This method shall convert this into an ExportImportDeviceParser object and return it.]
+    @Test
+    public void conversionToExportImportDeviceParserKeepsModuleId()
+    {
+        // arrange
+        ExportImportDevice module = new ExportImportDevice("deviceId", AuthenticationType.SAS);
+        module.setModuleId("moduleId");
+        module.setImportMode(ImportMode.Delete);
+
+        // act
+        ExportImportDeviceParser parser = reflectivelyInvokeToExportImportDeviceParser(module);
+
+        // assert
+        assertEquals("moduleId", module.getModuleId());
+        assertEquals("deviceId", parser.getIdFinal());
+        assertEquals("moduleId", parser.getModuleId());
+    }
+
     //Tests_SRS_SERVICE_SDK_JAVA_IMPORT_EXPORT_DEVICE_34_052: [This constructor shall use the properties of the provided parser object to set the new ExportImportDevice's properties.]
     @Test
     public void conversionFromDeviceParser()
@@ -9,13 +9,16 @@ import com.microsoft.azure.sdk.iot.service.FeedbackBatch;
 import com.microsoft.azure.sdk.iot.service.FeedbackReceiver;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpReceive;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpStreamingReceive;
 import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
 
@@ -751,4 +754,41 @@ public class FeedbackReceiverTest
         CompletableFuture<FeedbackBatch> completableFuture = feedbackReceiver.receiveAsync(timeoutMs);
         completableFuture.get();
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_FEEDBACKRECEIVER_34_002: [The function shall call startReceiving() on the member receiver object with the given parameters]
+    @Test
+    public void startReceiving_default_parameters_call_receiver_startReceiving() throws Exception
+    {
+        // Arrange
+        FeedbackReceiver feedbackReceiver = new FeedbackReceiver("xxx", "xxx", "xxx", IotHubServiceClientProtocol.AMQPS);
+        final Consumer<FeedbackBatch> consumer = feedbackBatch -> { };
+        // Act
+        feedbackReceiver.startReceiving(consumer);
+        // Assert
+        new Verifications()
+        {
+            {
+                amqpReceive.startReceiving(consumer, AmqpStreamingReceive.DEFAULT_PREFETCH_COUNT, AmqpStreamingReceive.DEFAULT_SETTLEMENT_BATCH_SIZE);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_FEEDBACKRECEIVER_34_004: [The function shall call stopReceiving() on the member receiver object]
+    @Test
+    public void stopReceiving_call_receiver_stopReceiving() throws Exception
+    {
+        // Arrange
+        FeedbackReceiver feedbackReceiver = new FeedbackReceiver("xxx", "xxx", "xxx", IotHubServiceClientProtocol.AMQPS);
+        // Act
+        feedbackReceiver.stopReceiving();
+        // Assert
+        new Verifications()
+        {
+            {
+                amqpReceive.stopReceiving();
+                times = 1;
+            }
+        };
+    }
 }
@@ -16,6 +16,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class FileUploadNotificationReceiverTest
 {
@@ -360,4 +361,37 @@ public class FileUploadNotificationReceiverTest
         };
 
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_002: [The function shall call startReceiving() on the member receiver object with the given parameters]
+    @Test
+    public void startReceivingCallsReceiverStartReceiving() throws Exception
+    {
+        // Arrange
+        FileUploadNotificationReceiver fileUploadNotificationReceiver = Deencapsulation.newInstance(FileUploadNotificationReceiver.class, "xxx", "xxx", "xxx", IotHubServiceClientProtocol.AMQPS);
+        final Consumer<FileUploadNotification> consumer = notification -> { };
+
+        // Act
+        fileUploadNotificationReceiver.startReceiving(consumer, 10, 5);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                amqpFileUploadNotificationReceive.startReceiving(consumer, 10, 5);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_FILEUPLOADNOTIFICATIONRECEIVER_34_003: [The function shall throw IOException if the member receiver object has not been initialized]
+    @Test (expected = IOException.class)
+    public void stopReceivingThrowsIfReceiverNull() throws Exception
+    {
+        // Arrange
+        FileUploadNotificationReceiver fileUploadNotificationReceiver = Deencapsulation.newInstance(FileUploadNotificationReceiver.class, "xxx", "xxx", "xxx", IotHubServiceClientProtocol.AMQPS);
+        Deencapsulation.setField(fileUploadNotificationReceiver, "amqpFileUploadNotificationReceive", null);
+
+        // Act
+        fileUploadNotificationReceiver.stopReceiving();
+    }
 }
@@ -169,6 +169,27 @@ public class IotHubConnectionStringTest
         assertEquals("DeviceList URL mismatch!", expected, actual);
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBCONNECTIONSTRING_34_027: [The function shall create a URL object from the object properties using the following format: https:hostname/devices?api-version=201X-XX-XX]
+    @Test
+    public void getUrlBulkRegistryOperationsGoodCase() throws IOException
+    {
+        // arrange
+        final String iotHubName = "b.c.d";
+        final String hostName = "HOSTNAME." + iotHubName;
+        final String sharedAccessKeyName = "ACCESSKEYNAME";
+        final String policyName = "SharedAccessKey";
+        final String sharedAccessKey = "1234567890abcdefghijklmnopqrstvwxyz=";
+        final String connectionString = "HostName=" + hostName + ";SharedAccessKeyName=" + sharedAccessKeyName + ";" + policyName + "=" + sharedAccessKey;
+        final IotHubConnectionString iotHubConnectionString = IotHubConnectionStringBuilder.createConnectionString(connectionString);
+        final String expected = "https://HOSTNAME.b.c.d/devices?" + URL_API_VERSION;
+
+        // act
+        String actual = iotHubConnectionString.getUrlBulkRegistryOperations().toString();
+
+        // assert
+        assertEquals("Bulk registry operations URL mismatch!", expected, actual);
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_IOTHUBCONNECTIONSTRING_12_006: [The function shall create a URL object from the object properties using the following format: https:hostname/statistics/devices?api-version=201X-XX-XX]
     @Test
     public void getUrlDeviceStatisticsGoodCase() throws IOException
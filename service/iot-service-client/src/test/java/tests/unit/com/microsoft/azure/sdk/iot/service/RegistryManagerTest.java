@@ -10,6 +10,7 @@ import com.microsoft.azure.sdk.iot.deps.serializer.ConfigurationParser;
 import com.microsoft.azure.sdk.iot.deps.serializer.DeviceParser;
 import com.microsoft.azure.sdk.iot.service.*;
 import com.microsoft.azure.sdk.iot.service.Module;
+import com.microsoft.azure.sdk.iot.service.auth.AuthenticationType;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubExceptionManager;
@@ -26,6 +27,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 
 import static junit.framework.TestCase.assertNotNull;
@@ -245,7 +247,7 @@ public class RegistryManagerTest
         registryManager.addDeviceAsync(null);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_ REGISTRYMANAGER_12_013: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void addDeviceAsync_future_return_ok() throws Exception
     {
@@ -265,28 +267,19 @@ public class RegistryManagerTest
         CompletableFuture<Device> completableFuture =  registryManager.addDeviceAsync(device);
         Device returnDevice = completableFuture.get();
 
-        commonVerifications(HttpMethod.PUT, deviceId, returnDevice);
+        commonAsyncVerifications(HttpMethod.PUT, deviceId, returnDevice);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_ REGISTRYMANAGER_12_013: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void addDeviceAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device addDevice(Device device) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
-
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<Device> completableFuture =  registryManager.addDeviceAsync(device);
-        completableFuture.get();
+        registryManager.addDeviceAsync(device).get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_014: [The constructor shall throw IllegalArgumentException if the input string is null or empty]
@@ -331,7 +324,7 @@ public class RegistryManagerTest
         registryManager.getDeviceAsync(null);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_022: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void getDeviceAsync_future_return_ok() throws Exception
     {
@@ -344,28 +337,19 @@ public class RegistryManagerTest
         CompletableFuture<Device> completableFuture =  registryManager.getDeviceAsync(deviceId);
         Device returnDevice = completableFuture.get();
 
-        commonVerifications(HttpMethod.GET, deviceId, returnDevice);
+        commonAsyncVerifications(HttpMethod.GET, deviceId, returnDevice);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_022: [The function shall create an async wrapper around the addDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void getDeviceAsync_future_throw() throws Exception
     {
-        String deviceId = "somedevice";
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device getDevice(String deviceId) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<Device> completableFuture =  registryManager.getDeviceAsync(deviceId);
-        completableFuture.get();
+        registryManager.getDeviceAsync("somedevice").get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_023: [The constructor shall throw IllegalArgumentException if the input count number is less than 1]
@@ -411,7 +395,7 @@ public class RegistryManagerTest
         registryManager.getDevicesAsync(0);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_031: [The function shall create an async wrapper around the getDevices() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void getDevicesAsync_future_return_ok() throws Exception
     {
@@ -424,7 +408,16 @@ public class RegistryManagerTest
         CompletableFuture<ArrayList<Device>> completableFuture =  registryManager.getDevicesAsync(10);
         ArrayList<Device> devices = completableFuture.get();
 
-        getDevicesVerifications(numberOfDevices, devices);
+        new VerificationsInOrder()
+        {
+            {
+                iotHubConnectionString.getUrlDeviceList(numberOfDevices);
+                new HttpRequest(mockUrl, HttpMethod.GET, (byte[]) any);
+                mockHttpRequest.sendAsync();
+                mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
+            }
+        };
+        assertNotNull(devices);
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_21_085: [The function shall return a connectionString for the input device]
@@ -619,24 +612,16 @@ public class RegistryManagerTest
         registryManager.getDeviceConnectionString(returnDevice);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_031: [The function shall create an async wrapper around the getDevices() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void getDevicesAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device getDevices(Integer maxCount) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<ArrayList<Device>> completableFuture = registryManager.getDevicesAsync(10);
-        completableFuture.get();
+        registryManager.getDevicesAsync(10).get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_032: [The function shall throw IllegalArgumentException if the input device is null]
@@ -762,7 +747,7 @@ public class RegistryManagerTest
         CompletableFuture<Device> completableFuture = registryManager.updateDeviceAsync(device);
         Device returnDevice = completableFuture.get();
 
-        commonVerifications(HttpMethod.PUT, deviceId, returnDevice);
+        commonAsyncVerifications(HttpMethod.PUT, deviceId, returnDevice);
 
         new VerificationsInOrder()
         {
@@ -775,22 +760,14 @@ public class RegistryManagerTest
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_043: [The function shall create an async wrapper around the updateDevice() function call, handle the return value or delegate exception]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void updateDeviceAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device updateDevice(Device device) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<Device> completableFuture = registryManager.updateDeviceAsync(device);
-        completableFuture.get();
+        registryManager.updateDeviceAsync(device).get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_044: [The function shall throw IllegalArgumentException if the input device is null]
@@ -804,7 +781,7 @@ public class RegistryManagerTest
         registryManager.updateDeviceAsync(null, true);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_045: [The function shall create an async wrapper around the updateDevice(Device, device, Boolean forceUpdate) function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void updateDeviceAsyncForce_future_return_ok() throws Exception
     {
@@ -825,7 +802,7 @@ public class RegistryManagerTest
         CompletableFuture<Device> completableFuture =  registryManager.updateDeviceAsync(device, true);
         Device returnDevice = completableFuture.get();
 
-        commonVerifications(HttpMethod.PUT, deviceId, returnDevice);
+        commonAsyncVerifications(HttpMethod.PUT, deviceId, returnDevice);
 
         new VerificationsInOrder()
         {
@@ -836,24 +813,16 @@ public class RegistryManagerTest
         };
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_045: [The function shall create an async wrapper around the updateDevice(Device, device, Boolean forceUpdate) function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void updateDeviceAsyncForce_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device updateDevice(Device device, Boolean forceUpdate) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<Device> completableFuture =  registryManager.updateDeviceAsync(device, true);
-        completableFuture.get();
+        registryManager.updateDeviceAsync(device, true).get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_28_081: [The function shall throw IllegalArgumentException if the input device is null]
@@ -1028,7 +997,7 @@ public class RegistryManagerTest
         registryManager.removeDeviceAsync("");
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_053: [The function shall create an async wrapper around the removeDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void removeDeviceAsync_future_return_ok() throws Exception
     {
@@ -1051,28 +1020,22 @@ public class RegistryManagerTest
                 mockHttpRequest.setReadTimeoutMillis(anyInt);
                 mockHttpRequest.setHeaderField("authorization", anyString);
                 mockHttpRequest.setHeaderField("If-Match", "*");
+                mockHttpRequest.sendAsync();
+                mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
             }
         };
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_053: [The function shall create an async wrapper around the removeDevice() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void removeDeviceAsync_future_throw() throws Exception
     {
-        String deviceId = "somedevice";
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device removeDevice(String deviceId) throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture completableFuture = registryManager.removeDeviceAsync(deviceId);
+        registryManager.removeDeviceAsync("somedevice").get();
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_054: [The function shall get the URL for the device]
@@ -1111,7 +1074,7 @@ public class RegistryManagerTest
         assertNotNull(statistics);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_060: [The function shall create an async wrapper around the getStatistics() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     @Test
     public void getStatisticsAsync_future_return_ok() throws Exception
     {
@@ -1136,30 +1099,23 @@ public class RegistryManagerTest
                 mockHttpRequest.setHeaderField("Accept", "application/json");
                 mockHttpRequest.setHeaderField("Content-Type", "application/json");
                 mockHttpRequest.setHeaderField("charset", "utf-8");
-                mockHttpRequest.send();
+                mockHttpRequest.sendAsync();
                 mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
             }
         };
         assertNotNull(statistics);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_12_060: [The function shall create an async wrapper around the getStatistics() function call, handle the return value or delegate exception]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
     // Assert
-    @Test (expected = Exception.class)
+    @Test (expected = ExecutionException.class)
     public void getStatisticsAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public Device getStatistics() throws IOException, IotHubException
-            {
-                throw new IOException();
-            }
-        };
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        registryManager.getStatisticsAsync();
+        registryManager.getStatisticsAsync().get();
     }
 
     // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_061: [The function shall throw IllegalArgumentException if any of the input parameters is null]
@@ -1229,26 +1185,15 @@ public class RegistryManagerTest
         assertNotNull(jobProperties);
     }
 
-    // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_068: [The function shall create an async wrapper around
-    // the exportDevices() function call, handle the return value or delegate exception ]
-    @Test (expected = Exception.class)
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+    @Test (expected = ExecutionException.class)
     public void exportDevicesAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public JobProperties exportDevices(String url, Boolean excludeKeys)
-                    throws IllegalArgumentException, IOException, IotHubException
-            {
-                throw new IllegalArgumentException();
-            }
-        };
-
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<JobProperties> completableFuture =  registryManager.exportDevicesAsync("blah", true);
-        completableFuture.get();
+        registryManager.exportDevicesAsync("blah", true).get();
     }
 
     // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_069: [The function shall throw IllegalArgumentException if any of the input parameters is null]
@@ -1318,26 +1263,15 @@ public class RegistryManagerTest
         assertNotNull(jobProperties);
     }
 
-    // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_076: [The function shall create an async wrapper around
-    // the importDevices() function call, handle the return value or delegate exception]
-    @Test (expected = Exception.class)
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+    @Test (expected = ExecutionException.class)
     public void importDevicesAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
-        {
-            @Mock
-            public JobProperties importDevices(String importBlobContainerUri, String outputBlobContainerUri)
-                    throws IllegalArgumentException, IOException, IotHubException
-            {
-                throw new IllegalArgumentException();
-            }
-        };
-
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<JobProperties> completableFuture =  registryManager.importDevicesAsync("importblob", "outputblob");
-        completableFuture.get();
+        registryManager.importDevicesAsync("importblob", "outputblob").get();
     }
 
     // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_077: [The function shall throw IllegalArgumentException if the input parameter is null]
@@ -1398,26 +1332,78 @@ public class RegistryManagerTest
         assertNotNull(jobProperties);
     }
 
-    // TESTS_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_15_084: [The function shall create an async wrapper
-    // around the getJob() function call, handle the return value or delegate exception]
-    @Test (expected = Exception.class)
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+    @Test (expected = ExecutionException.class)
     public void getJobAsync_future_throw() throws Exception
     {
-        new MockUp<RegistryManager>()
+        String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        failedSendAsyncExpectations(new IOException());
+        RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
+
+        registryManager.getJobAsync("someJobId").get();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_105: [If any of the input parameters is null, the function shall return a future completed with an IllegalArgumentException.]
+    @Test
+    public void getJobAsyncFailsFutureForNullJobId() throws Exception
+    {
+        String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
+
+        CompletableFuture<JobProperties> completableFuture = registryManager.getJobAsync(null);
+
+        try
+        {
+            completableFuture.get();
+            fail("The future should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        new Verifications()
         {
-            @Mock
-            public JobProperties getJob(String jobId)
-                    throws IllegalArgumentException, IOException, IotHubException
             {
-                throw new IllegalArgumentException();
+                mockHttpRequest.sendAsync();
+                times = 0;
             }
         };
+    }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_104: [The function shall send the request of the synchronous operation through HttpRequest.sendAsync, parse the response on the executor of this registry manager, and complete the future with the result or the exception.]
+    @Test
+    public void getDeviceAsyncDoesNotBlockWhileRequestIsInFlight() throws Exception
+    {
+        // arrange
         String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        final CompletableFuture<HttpResponse> inFlightResponse = new CompletableFuture<>();
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(connectionString);
+                result = iotHubConnectionString;
+                mockHttpRequest.sendAsync();
+                result = inFlightResponse;
+                mockHttpResponse.getBody();
+                result = deviceJson.getBytes();
+            }
+        };
         RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
 
-        CompletableFuture<JobProperties> completableFuture =  registryManager.getJobAsync("someJobId");
-        completableFuture.get();
+        // act
+        CompletableFuture<Device> completableFuture = registryManager.getDeviceAsync("somedevice");
+
+        // assert
+        assertFalse(completableFuture.isDone());
+        inFlightResponse.complete(mockHttpResponse);
+        assertNotNull(completableFuture.get());
+        new Verifications()
+        {
+            {
+                mockHttpRequest.send();
+                times = 0;
+            }
+        };
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_087: [The function shall tell this object's executor service to shutdown]
@@ -1443,7 +1429,78 @@ public class RegistryManagerTest
         new Verifications()
         {
             {
-                mockExecutorService.shutdownNow();
+                mockExecutorService.shutdown();
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_106: [If async operations are pending when the registry manager is closed, the executor service shall be shut down once the last of them completed.]
+    @Test
+    public void closeLetsPendingAsyncOperationComplete() throws Exception
+    {
+        //arrange
+        String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        CompletableFuture<HttpResponse> pendingResponse = new CompletableFuture<>();
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(connectionString);
+                result = iotHubConnectionString;
+                mockHttpRequest.sendAsync();
+                result = pendingResponse;
+            }
+        };
+
+        RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
+        ExecutorService executor = Deencapsulation.getField(registryManager, "executor");
+        CompletableFuture<Boolean> completableFuture = registryManager.removeDeviceAsync("somedevice");
+
+        //act
+        registryManager.close();
+        boolean isShutdownBeforeCompletion = executor.isShutdown();
+        pendingResponse.complete(mockHttpResponse);
+
+        //assert
+        assertFalse(isShutdownBeforeCompletion);
+        completableFuture.get();
+        assertTrue(executor.isShutdown());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_107: [An async operation started after the registry manager was closed shall fail with an IOException.]
+    @Test
+    public void asyncOperationAfterCloseFails() throws Exception
+    {
+        //arrange
+        String connectionString = "HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY";
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(connectionString);
+                result = iotHubConnectionString;
+            }
+        };
+
+        RegistryManager registryManager = RegistryManager.createFromConnectionString(connectionString);
+        registryManager.close();
+
+        //act
+        CompletableFuture<Boolean> completableFuture = registryManager.removeDeviceAsync("somedevice");
+
+        //assert
+        try
+        {
+            completableFuture.get();
+            fail("The operation should have failed");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        new Verifications()
+        {
+            {
+                mockHttpRequest.sendAsync();
+                times = 0;
             }
         };
     }
@@ -2303,6 +2360,207 @@ public class RegistryManagerTest
         };
     }
 
+    private static List<ExportImportDevice> bulkOperations(int count, ImportMode importMode)
+    {
+        List<ExportImportDevice> operations = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            ExportImportDevice operation = new ExportImportDevice("device" + i, AuthenticationType.CERTIFICATE_AUTHORITY);
+            operation.setImportMode(importMode);
+            operations.add(operation);
+        }
+        return operations;
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_096: [The function shall throw IllegalArgumentException if the operations or one of them is null, or if the max concurrent requests is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void bulkRegistryOperationsThrowsForNullOperations() throws Exception
+    {
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        registryManager.bulkRegistryOperations(null);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_096: [The function shall throw IllegalArgumentException if the operations or one of them is null, or if the max concurrent requests is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void bulkRegistryOperationsAsyncThrowsForZeroConcurrency() throws Exception
+    {
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        registryManager.bulkRegistryOperationsAsync(bulkOperations(1, ImportMode.Create), 0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_093: [The function shall send the operations with the default concurrency and wait for their results.]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_097: [The function shall split the operations in batches of at most MAX_BULK_REGISTRY_OPERATION_COUNT operations.]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_099: [The future shall complete with the results of all batches, in the order of the operations.]
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_100: [The function shall send each batch as a json array in a POST request to the bulk registry operations URL.]
+    @Test
+    public void bulkRegistryOperationsSendsBatchesOfAtMost100() throws Exception
+    {
+        // arrange
+        List<ExportImportDevice> operations = bulkOperations(250, ImportMode.Create);
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(anyString);
+                result = iotHubConnectionString;
+                iotHubConnectionString.getUrlBulkRegistryOperations();
+                result = mockUrl;
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
+                mockHttpResponse.getStatus();
+                result = 200;
+                mockHttpResponse.getBody();
+                result = "{\"isSuccessful\":true,\"errors\":[],\"warnings\":[]}".getBytes();
+            }
+        };
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        // act
+        List<RegistryOperationResult> results = registryManager.bulkRegistryOperations(operations);
+        registryManager.close();
+
+        // assert
+        assertEquals(250, results.size());
+        for (int i = 0; i < results.size(); i++)
+        {
+            assertEquals("device" + i, results.get(i).getDeviceId());
+            assertEquals(ImportMode.Create, results.get(i).getImportMode());
+            assertTrue(results.get(i).isSuccessful());
+        }
+        final List<byte[]> payloads = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                new HttpRequest(mockUrl, HttpMethod.POST, withCapture(payloads));
+                times = 3;
+                mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
+                times = 0;
+            }
+        };
+        List<Integer> batchSizes = new ArrayList<>();
+        for (byte[] payload : payloads)
+        {
+            batchSizes.add(new String(payload).split("\"id\"").length - 1);
+        }
+        batchSizes.sort(null);
+        assertEquals(50, (int) batchSizes.get(0));
+        assertEquals(100, (int) batchSizes.get(1));
+        assertEquals(100, (int) batchSizes.get(2));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_103: [The function shall report the errors listed in the bulk registry operation result for the matching device and module, and report every other operation of the batch as successful.]
+    @Test
+    public void bulkRegistryOperationsReportsPerItemErrors() throws Exception
+    {
+        // arrange
+        List<ExportImportDevice> operations = bulkOperations(3, ImportMode.Create);
+        operations.get(2).setId("device0");
+        operations.get(2).setModuleId("module0");
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(anyString);
+                result = iotHubConnectionString;
+                iotHubConnectionString.getUrlBulkRegistryOperations();
+                result = mockUrl;
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
+                mockHttpResponse.getStatus();
+                result = 400;
+                mockHttpResponse.getErrorReason();
+                result = ("{\"isSuccessful\":false,\"errors\":[" +
+                        "{\"deviceId\":\"device1\",\"errorCode\":\"DeviceAlreadyExists\",\"errorStatus\":\"already exists\"}," +
+                        "{\"deviceId\":\"device0\",\"moduleId\":\"module0\",\"errorCode\":\"DeviceNotFound\",\"errorStatus\":\"not found\"}]," +
+                        "\"warnings\":[]}").getBytes();
+            }
+        };
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        // act
+        List<RegistryOperationResult> results = registryManager.bulkRegistryOperationsAsync(operations, 2).get();
+
+        // assert
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertEquals("DeviceAlreadyExists", results.get(1).getErrorCode());
+        assertEquals("already exists", results.get(1).getErrorStatus());
+        assertNull(results.get(1).getException());
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals("module0", results.get(2).getModuleId());
+        assertEquals("DeviceNotFound", results.get(2).getErrorCode());
+        new Verifications()
+        {
+            {
+                mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_101: [If a batch cannot be sent or IotHub rejects it as a whole, the result of each of its operations shall hold the exception.]
+    @Test
+    public void bulkRegistryOperationsReportsFailedRequestForEachOperation() throws Exception
+    {
+        // arrange
+        final IOException sendException = new IOException("connection reset");
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(anyString);
+                result = iotHubConnectionString;
+                iotHubConnectionString.getUrlBulkRegistryOperations();
+                result = mockUrl;
+                mockHttpRequest.sendAsync();
+                result = failedFuture(sendException);
+            }
+        };
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        // act
+        List<RegistryOperationResult> results = registryManager.bulkRegistryOperations(bulkOperations(2, ImportMode.Delete));
+
+        // assert
+        assertEquals(2, results.size());
+        for (RegistryOperationResult result : results)
+        {
+            assertFalse(result.isSuccessful());
+            assertEquals(sendException, result.getException());
+            assertEquals(ImportMode.Delete, result.getImportMode());
+        }
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_REGISTRYMANAGER_34_102: [If the response is not a bulk registry operation result, the function shall verify the response status and throw proper Exception.]
+    @Test
+    public void bulkRegistryOperationsVerifiesResponseWithoutBulkResult() throws Exception
+    {
+        // arrange
+        final IotHubException verificationException = new IotHubException("unauthorized");
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(anyString);
+                result = iotHubConnectionString;
+                iotHubConnectionString.getUrlBulkRegistryOperations();
+                result = mockUrl;
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
+                mockHttpResponse.getStatus();
+                result = 401;
+                mockIotHubExceptionManager.httpResponseVerification(mockHttpResponse);
+                result = verificationException;
+            }
+        };
+        RegistryManager registryManager = RegistryManager.createFromConnectionString("HostName=aaa.bbb.ccc;SharedAccessKeyName=XXX;SharedAccessKey=YYY");
+
+        // act
+        List<RegistryOperationResult> results = registryManager.bulkRegistryOperations(bulkOperations(1, ImportMode.Update));
+
+        // assert
+        assertFalse(results.get(0).isSuccessful());
+        assertEquals(verificationException, results.get(0).getException());
+    }
+
     private void commonExpectations(String connectionString, String deviceId) throws Exception
     {
         new NonStrictExpectations()
@@ -2314,6 +2572,8 @@ public class RegistryManagerTest
                 result = mockUrl;
                 mockHttpRequest.send();
                 result = mockHttpResponse;
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
                 mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
                 mockHttpResponse.getBody();
                 result = deviceJson.getBytes();
@@ -2343,6 +2603,55 @@ public class RegistryManagerTest
         assertNotNull(responseDevice);
     }
 
+    private void commonAsyncVerifications(HttpMethod httpMethod, String requestDeviceId, Device responseDevice) throws Exception
+    {
+        new VerificationsInOrder()
+        {
+            {
+                iotHubConnectionString.getUrlDevice(requestDeviceId);
+                new HttpRequest(mockUrl, httpMethod, (byte[]) any);
+                mockHttpRequest.setReadTimeoutMillis(anyInt);
+                mockHttpRequest.setHeaderField("authorization", anyString);
+                mockHttpRequest.setHeaderField("Request-Id", "1001");
+                mockHttpRequest.setHeaderField("Accept", "application/json");
+                mockHttpRequest.setHeaderField("Content-Type", "application/json");
+                mockHttpRequest.setHeaderField("charset", "utf-8");
+                mockHttpRequest.sendAsync();
+                mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
+            }
+        };
+        new Verifications()
+        {
+            {
+                mockHttpRequest.send();
+                times = 0;
+            }
+        };
+        assertNotNull(responseDevice);
+    }
+
+    private void failedSendAsyncExpectations(Exception exception) throws Exception
+    {
+        new NonStrictExpectations()
+        {
+            {
+                IotHubConnectionStringBuilder.createConnectionString(anyString);
+                result = iotHubConnectionString;
+                Deencapsulation.invoke(device, "toDeviceParser");
+                result = new DeviceParser();
+                mockHttpRequest.sendAsync();
+                result = failedFuture(exception);
+            }
+        };
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Exception exception)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(exception);
+        return future;
+    }
+
     private void getDevicesExpectations(String connectionString, int numberOfDevices) throws Exception
     {
         new NonStrictExpectations()
@@ -2354,6 +2663,8 @@ public class RegistryManagerTest
                 result = mockUrl;
                 mockHttpRequest.send();
                 result = mockHttpResponse;
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
                 mockIotHubExceptionManager.httpResponseVerification((HttpResponse) any);
                 mockHttpResponse.getBody();
                 result = devicesJson.getBytes();
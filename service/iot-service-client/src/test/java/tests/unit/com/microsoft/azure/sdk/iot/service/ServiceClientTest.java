@@ -13,6 +13,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -438,8 +439,8 @@ public class ServiceClientTest
         new Expectations()
         {
             {
-                amqpSend.send(deviceId, null, iotMessage);
-                serviceClient.send(deviceId, iotMessage);
+                amqpSend.sendAsync(deviceId, null, iotMessage);
+                result = CompletableFuture.completedFuture(null);
             }
         };
         // Act
@@ -447,6 +448,40 @@ public class ServiceClientTest
         completableFuture.get();
     }
 
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_34_002: [The function shall return the future of sendAsync() on the member AMQP sender object]
+    @Test
+    public void send_async_to_module_returns_sender_future() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        Message iotMessage = new Message("HELLO");
+        CompletableFuture<Void> senderFuture = new CompletableFuture<>();
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+        new Expectations()
+        {
+            {
+                amqpSend.sendAsync("XXX", "YYY", iotMessage);
+                result = senderFuture;
+            }
+        };
+        // Act
+        CompletableFuture<Void> completableFuture = serviceClient.sendAsync("XXX", "YYY", iotMessage);
+        // Assert
+        assertEquals(senderFuture, completableFuture);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_34_001: [The function shall return a future completed with an IOException if the member AMQP sender object has not been initialized]
+    @Test (expected = ExecutionException.class)
+    public void send_async_throws_if_sender_null() throws Exception
+    {
+        // Arrange
+        String connectionString = "HostName=HOSTNAME.IOTHUBNAME;SharedAccessKeyName=ACCESSKEYNAME;SharedAccessKey=1234567890abcdefghijklmnopqrstvwxyz=";
+        ServiceClient serviceClient = ServiceClient.createFromConnectionString(connectionString, IotHubServiceClientProtocol.AMQPS);
+        Deencapsulation.setField(serviceClient, "amqpMessageSender", null);
+        // Act
+        serviceClient.sendAsync("XXX", new Message("HELLO")).get();
+    }
+
     // Tests_SRS_SERVICE_SDK_JAVA_SERVICECLIENT_12_016: [The function shall create an async wrapper around the send() function call, handle the return value or delegate exception]
     // Assert
     @Test (expected = Exception.class)
@@ -10,8 +10,11 @@ import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
 import com.microsoft.azure.sdk.iot.service.devicetwin.DeviceMethod;
 import com.microsoft.azure.sdk.iot.service.devicetwin.DeviceOperations;
 import com.microsoft.azure.sdk.iot.service.devicetwin.Job;
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodInvocationResult;
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodInvocationSummary;
 import com.microsoft.azure.sdk.iot.service.devicetwin.MethodResult;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubGatewayTimeoutException;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
 import mockit.*;
@@ -19,14 +22,28 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -696,4 +713,321 @@ public class DeviceMethodTest
         testMethod.scheduleDeviceMethod(queryCondition, STANDARD_METHODNAME, STANDARD_TIMEOUT_SECONDS, STANDARD_TIMEOUT_SECONDS, STANDARD_PAYLOAD_MAP, now, maxExecutionTimeInSeconds);
     }
 
+    /* Tests_SRS_DEVICEMETHOD_34_001: [Concurrent invocations shall not wait for each other, and each of them shall use a unique request id.] */
+    @Test
+    public void invokeRunsConcurrentInvocationsInParallel(
+            @Mocked final MethodParser methodParser,
+            @Mocked final DeviceOperations request,
+            @Mocked final HttpResponse mockedResponse)
+            throws Exception
+    {
+        //arrange
+        final int invocationCount = 8;
+        final CountDownLatch allInFlight = new CountDownLatch(invocationCount);
+        final Set<String> requestIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        new NonStrictExpectations()
+        {
+            {
+                methodParser.toJson();
+                result = STANDARD_JSON;
+                mockedResponse.getBody();
+                result = "{}".getBytes();
+                DeviceOperations.request((IotHubConnectionString) any, (URL) any, HttpMethod.POST, (byte[]) any, anyString, anyLong);
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(IotHubConnectionString iotHubConnectionString, URL url, HttpMethod method, byte[] payload, String requestId, long timeoutInMs) throws IOException
+                    {
+                        requestIds.add(requestId);
+                        allInFlight.countDown();
+                        try
+                        {
+                            // every invocation waits until all of them are in flight, which never happens if they are serialized
+                            if (!allInFlight.await(10, TimeUnit.SECONDS))
+                            {
+                                throw new IOException("the invocations did not run concurrently");
+                            }
+                        }
+                        catch (InterruptedException e)
+                        {
+                            throw new IOException(e);
+                        }
+                        return mockedResponse;
+                    }
+                };
+            }
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(invocationCount);
+        List<Future<MethodResult>> results = new ArrayList<>();
+
+        //act
+        for (int i = 0; i < invocationCount; i++)
+        {
+            results.add(executorService.submit(() -> testMethod.invoke(STANDARD_DEVICEID, STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP)));
+        }
+
+        //assert
+        for (Future<MethodResult> result : results)
+        {
+            assertNotNull(result.get(30, TimeUnit.SECONDS));
+        }
+        executorService.shutdown();
+        assertThat(requestIds.size(), is(invocationCount));
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_002: [The invokeMany shall throw IllegalArgumentException if the provided deviceIds is null, empty, or contains a null or empty id.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void invokeManyThrowOnNullDeviceIds() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        testMethod.invokeMany(null, STANDARD_METHODNAME, STANDARD_PAYLOAD_MAP, null);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_002: [The invokeMany shall throw IllegalArgumentException if the provided deviceIds is null, empty, or contains a null or empty id.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void invokeManyThrowOnEmptyDeviceId() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        testMethod.invokeMany(Arrays.asList(STANDARD_DEVICEID, ""), STANDARD_METHODNAME, STANDARD_PAYLOAD_MAP, null);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_003: [The invokeMany shall throw IllegalArgumentException if the provided methodName is null, empty, or not valid.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void invokeManyThrowOnNullMethodName() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        testMethod.invokeMany(Collections.singletonList(STANDARD_DEVICEID), null, STANDARD_PAYLOAD_MAP, null);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_004: [The invokeMany shall throw IllegalArgumentException if the provided maxConcurrentInvocations is less than 1.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void invokeManyThrowOnZeroMaxConcurrentInvocations() throws Exception
+    {
+        //arrange
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+
+        //act
+        testMethod.invokeMany(Collections.singletonList(STANDARD_DEVICEID), STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP, 0, null);
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_005: [The invokeMany shall create the Json body once, the same way as the invoke.] */
+    /* Tests_SRS_DEVICEMETHOD_34_007: [The invokeMany shall send the request of each device through DeviceOperations.request, with the Method URL `{iot hub}/twins/{device id}/methods/` and a unique request id.] */
+    /* Tests_SRS_DEVICEMETHOD_34_008: [The result of each device shall contain its MethodResult or the exception of its invocation, and the time from sending its request to its completion.] */
+    /* Tests_SRS_DEVICEMETHOD_34_009: [The invokeMany shall pass each result to the callback as soon as it is known, and ignore the exceptions thrown by the callback.] */
+    /* Tests_SRS_DEVICEMETHOD_34_010: [The invokeMany shall complete the future with the MethodInvocationSummary of all the results once every invocation completed.] */
+    /* Tests_SRS_DEVICEMETHOD_34_011: [The invokeMany shall send the requests from a pool of daemon threads dedicated to the call, with one thread per invocation in flight.] */
+    @Test
+    public void invokeManyReportsEveryDeviceToCallbackAndSummary(
+            @Mocked final MethodParser methodParser,
+            @Mocked final DeviceOperations request,
+            @Mocked final HttpResponse mockedResponse)
+            throws Exception
+    {
+        //arrange
+        final String failingDeviceId = "failingDeviceId";
+        final Set<String> requestIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> requestThreads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final List<MethodInvocationResult> streamedResults = Collections.synchronizedList(new ArrayList<MethodInvocationResult>());
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        new NonStrictExpectations()
+        {
+            {
+                methodParser.toJson();
+                result = STANDARD_JSON;
+                methodParser.getStatus();
+                result = 200;
+                mockedResponse.getBody();
+                result = "{}".getBytes();
+                DeviceOperations.request((IotHubConnectionString) any, (URL) any, HttpMethod.POST, (byte[]) any, anyString, anyLong);
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(IotHubConnectionString iotHubConnectionString, URL url, HttpMethod method, byte[] payload, String requestId, long timeoutInMs)
+                    {
+                        requestIds.add(requestId);
+                        requestThreads.add(Thread.currentThread().getName());
+                        return mockedResponse;
+                    }
+                };
+                mockedIotHubConnectionString.getUrlMethod(failingDeviceId);
+                result = new IllegalArgumentException("invalid device id");
+            }
+        };
+        List<String> deviceIds = Arrays.asList("device1", failingDeviceId, "device2");
+
+        //act
+        MethodInvocationSummary summary = testMethod.invokeMany(deviceIds, STANDARD_METHODNAME, STANDARD_TIMEOUT_SECONDS, STANDARD_TIMEOUT_SECONDS, STANDARD_PAYLOAD_MAP, 2,
+                result ->
+                {
+                    streamedResults.add(result);
+                    throw new IllegalStateException("a failing callback does not stop the other invocations");
+                }).get(30, TimeUnit.SECONDS);
+
+        //assert
+        assertThat(streamedResults.size(), is(3));
+        assertThat(summary.getResults(), is(streamedResults));
+        assertThat(summary.getSuccessfulCount(), is(2));
+        assertThat(summary.getFailedCount(), is(1));
+        assertThat(requestIds.size(), is(2));
+        for (String requestThread : requestThreads)
+        {
+            assertTrue(requestThread.startsWith("azure-iot-sdk-DeviceMethod-"));
+        }
+        for (MethodInvocationResult result : summary.getResults())
+        {
+            if (result.getDeviceId().equals(failingDeviceId))
+            {
+                assertFalse(result.isSuccessful());
+                assertNull(result.getMethodResult());
+                assertTrue(result.getException() instanceof IllegalArgumentException);
+            }
+            else
+            {
+                assertTrue(result.isSuccessful());
+                assertThat(result.getMethodResult().getStatus(), is(200));
+            }
+        }
+        new Verifications()
+        {
+            {
+                methodParser.toJson();
+                times = 1;
+                mockedIotHubConnectionString.getUrlMethod(anyString);
+                times = 3;
+            }
+        };
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_006: [The invokeMany shall start up to maxConcurrentInvocations invocations, and start the next one each time an invocation completes.] */
+    /* Tests_SRS_DEVICEMETHOD_34_008: [The result of each device shall contain its MethodResult or the exception of its invocation, and the time from sending its request to its completion.] */
+    /* Tests_SRS_DEVICEMETHOD_34_012: [The invokeMany shall stop the threads of the call once every invocation completed.] */
+    @Test
+    public void invokeManyKeepsAtMostMaxConcurrentInvocationsInFlight(
+            @Mocked final MethodParser methodParser,
+            @Mocked final DeviceOperations request,
+            @Mocked final HttpResponse mockedResponse)
+            throws Exception
+    {
+        //arrange
+        final List<CompletableFuture<HttpResponse>> inFlight = Collections.synchronizedList(new ArrayList<CompletableFuture<HttpResponse>>());
+        final Set<Thread> requestThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        new NonStrictExpectations()
+        {
+            {
+                methodParser.toJson();
+                result = STANDARD_JSON;
+                mockedResponse.getBody();
+                result = "{}".getBytes();
+                DeviceOperations.request((IotHubConnectionString) any, (URL) any, HttpMethod.POST, (byte[]) any, anyString, anyLong);
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(IotHubConnectionString iotHubConnectionString, URL url, HttpMethod method, byte[] payload, String requestId, long timeoutInMs) throws Exception
+                    {
+                        requestThreads.add(Thread.currentThread());
+                        CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+                        inFlight.add(response);
+                        try
+                        {
+                            return response.get(10, TimeUnit.SECONDS);
+                        }
+                        catch (ExecutionException e)
+                        {
+                            throw (Exception) e.getCause();
+                        }
+                    }
+                };
+            }
+        };
+
+        //act
+        CompletableFuture<MethodInvocationSummary> summary = testMethod.invokeMany(
+                Arrays.asList("device1", "device2", "device3", "device4", "device5"), STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP, 2, null);
+
+        //assert
+        waitForInFlight(inFlight, 2);
+        Thread.sleep(50);
+        assertThat(inFlight.size(), is(2));
+        inFlight.get(0).completeExceptionally(new IotHubGatewayTimeoutException("device did not answer"));
+        waitForInFlight(inFlight, 3);
+        inFlight.get(1).complete(mockedResponse);
+        inFlight.get(2).complete(mockedResponse);
+        waitForInFlight(inFlight, 5);
+        assertFalse(summary.isDone());
+        inFlight.get(3).complete(mockedResponse);
+        inFlight.get(4).complete(mockedResponse);
+        assertThat(summary.get(10, TimeUnit.SECONDS).getSuccessfulCount(), is(4));
+        assertTrue(summary.get().getResults().get(0).getException() instanceof IotHubGatewayTimeoutException);
+        assertThat(requestThreads.size(), is(2));
+        for (Thread requestThread : requestThreads)
+        {
+            requestThread.join(TimeUnit.SECONDS.toMillis(10));
+            assertFalse(requestThread.isAlive());
+        }
+    }
+
+    /* Tests_SRS_DEVICEMETHOD_34_008: [The result of each device shall contain its MethodResult or the exception of its invocation, and the time from sending its request to its completion.] */
+    @Test
+    public void invokeManyMeasuresLatencyFromSendingTheRequest(
+            @Mocked final MethodParser methodParser,
+            @Mocked final DeviceOperations request,
+            @Mocked final HttpResponse mockedResponse)
+            throws Exception
+    {
+        //arrange
+        final long requestMillis = 200;
+        DeviceMethod testMethod = DeviceMethod.createFromConnectionString(STANDARD_CONNECTIONSTRING);
+        new NonStrictExpectations()
+        {
+            {
+                methodParser.toJson();
+                result = STANDARD_JSON;
+                mockedResponse.getBody();
+                result = "{}".getBytes();
+                DeviceOperations.request((IotHubConnectionString) any, (URL) any, HttpMethod.POST, (byte[]) any, anyString, anyLong);
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse request(IotHubConnectionString iotHubConnectionString, URL url, HttpMethod method, byte[] payload, String requestId, long timeoutInMs) throws InterruptedException
+                    {
+                        Thread.sleep(requestMillis);
+                        return mockedResponse;
+                    }
+                };
+            }
+        };
+
+        //act
+        MethodInvocationSummary summary = testMethod.invokeMany(
+                Arrays.asList("device1", "device2", "device3"), STANDARD_METHODNAME, null, null, STANDARD_PAYLOAD_MAP, 1, null).get(30, TimeUnit.SECONDS);
+
+        //assert
+        // the invocations run one after the other, but none of them counts the time it waited for the previous ones
+        for (MethodInvocationResult result : summary.getResults())
+        {
+            assertTrue(result.getLatencyMillis() >= requestMillis);
+            assertTrue(result.getLatencyMillis() < 2 * requestMillis);
+        }
+    }
+
+    private static void waitForInFlight(List<CompletableFuture<HttpResponse>> inFlight, int expectedSize) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while ((inFlight.size() < expectedSize) && (System.currentTimeMillis() < deadline))
+        {
+            Thread.sleep(10);
+        }
+        assertThat(inFlight.size(), is(expectedSize));
+    }
 }
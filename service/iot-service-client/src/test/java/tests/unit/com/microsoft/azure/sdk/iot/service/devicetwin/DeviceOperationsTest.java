@@ -8,6 +8,7 @@ import com.microsoft.azure.sdk.iot.service.IotHubConnectionStringBuilder;
 import com.microsoft.azure.sdk.iot.service.auth.IotHubServiceSasToken;
 import com.microsoft.azure.sdk.iot.service.devicetwin.DeviceOperations;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubBadFormatException;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
 import com.microsoft.azure.sdk.iot.service.exceptions.IotHubExceptionManager;
 import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
@@ -23,9 +24,14 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit tests for Http requester
@@ -749,7 +755,7 @@ public class DeviceOperationsTest
                 STANDARD_REQUEST_ID,
                 0);
 
-        assertNull(Deencapsulation.getField(DeviceOperations.class, "headers"));
+        assertNull(((ThreadLocal) Deencapsulation.getField(DeviceOperations.class, "headers")).get());
 
         //assert
         new Verifications()
@@ -810,4 +816,202 @@ public class DeviceOperationsTest
         //act/assert
         DeviceOperations.setHeaders(new HashMap<>());
     }
+
+    //Tests_SRS_DEVICE_OPERATIONS_34_022: [The headers shall only be used by the next request sent by the calling thread.]
+    @Test
+    public void setCustomHeadersDoesNotApplyToRequestsOfOtherThreads(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                                   @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //Arrange
+        Map<String, String> headers = new HashMap<>();
+        headers.put("TestKey", "TestValue");
+        DeviceOperations.setHeaders(headers);
+
+        //act
+        Thread otherThread = new Thread(() ->
+        {
+            try
+            {
+                DeviceOperations.request(
+                        IOT_HUB_CONNECTION_STRING,
+                        new URL(STANDARD_URL),
+                        HttpMethod.POST,
+                        STANDARD_PAYLOAD,
+                        STANDARD_REQUEST_ID,
+                        0);
+            }
+            catch (IOException | IotHubException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+        otherThread.start();
+        otherThread.join();
+
+        //assert
+        new Verifications()
+        {
+            {
+                httpRequest.setHeaderField("TestKey", "TestValue");
+                times = 0;
+            }
+        };
+        assertNotNull(((ThreadLocal) Deencapsulation.getField(DeviceOperations.class, "headers")).get());
+        ((ThreadLocal) Deencapsulation.getField(DeviceOperations.class, "headers")).remove();
+    }
+
+    //Tests_SRS_DEVICE_OPERATIONS_34_024: [The request without custom headers shall take the headers set by the calling thread before validating its parameters, so that they are not used again even if the request fails.]
+    @Test
+    public void setCustomHeadersAreClearedWhenTheRequestFails(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                              @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //Arrange
+        Map<String, String> headers = new HashMap<>();
+        headers.put("TestKey", "TestValue");
+        DeviceOperations.setHeaders(headers);
+
+        //act
+        try
+        {
+            DeviceOperations.request(
+                    IOT_HUB_CONNECTION_STRING,
+                    null,
+                    HttpMethod.POST,
+                    STANDARD_PAYLOAD,
+                    STANDARD_REQUEST_ID,
+                    0);
+            fail("the request without url shall fail");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        DeviceOperations.request(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0);
+
+        //assert
+        assertNull(((ThreadLocal) Deencapsulation.getField(DeviceOperations.class, "headers")).get());
+        new Verifications()
+        {
+            {
+                httpRequest.setHeaderField("TestKey", "TestValue");
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICE_OPERATIONS_25_019: [The request shall add to the HTTP header all the additional custom headers set for this request.]
+    @Test
+    public void requestWithCustomHeadersAddsThemToThatRequestOnly(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                                  @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //Arrange
+        Map<String, String> headers = new HashMap<>();
+        headers.put("TestKey", "TestValue");
+
+        //act
+        DeviceOperations.request(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0,
+                headers);
+        DeviceOperations.request(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0);
+
+        //assert
+        new Verifications()
+        {
+            {
+                httpRequest.setHeaderField("TestKey", "TestValue");
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICE_OPERATIONS_34_023: [The requestAsync shall create the same request as the request, send it through HttpRequest.sendAsync, and verify the response status.]
+    @Test
+    public void requestAsyncSendsThroughSendAsyncAndVerifiesResponse(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                                     @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //arrange
+        final HttpResponse sendResponse = new HttpResponse(200, new byte[0], new HashMap<String, List<String>>(), new byte[0]);
+        new NonStrictExpectations()
+        {
+            {
+                httpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(sendResponse);
+            }
+        };
+
+        //act
+        CompletableFuture<HttpResponse> response = DeviceOperations.requestAsync(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0);
+
+        //assert
+        assertEquals(sendResponse, response.get());
+        new Verifications()
+        {
+            {
+                httpRequest.setHeaderField(REQUEST_ID, STANDARD_REQUEST_ID);
+                times = 1;
+                httpRequest.send();
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICE_OPERATIONS_34_023: [The requestAsync shall create the same request as the request, send it through HttpRequest.sendAsync, and verify the response status.]
+    @Test
+    public void requestAsyncFailsFutureOnResponseVerificationFailed(@Mocked IotHubServiceSasToken iotHubServiceSasToken,
+                                                                    @Mocked HttpRequest httpRequest) throws Exception
+    {
+        //arrange
+        final byte[] errorReason = "{\"ExceptionMessage\":\"This is the error message\"}".getBytes();
+        final HttpResponse sendResponse = new HttpResponse(400, new byte[0], new HashMap<String, List<String>>(), errorReason);
+        new NonStrictExpectations()
+        {
+            {
+                httpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(sendResponse);
+            }
+        };
+
+        //act
+        CompletableFuture<HttpResponse> response = DeviceOperations.requestAsync(
+                IOT_HUB_CONNECTION_STRING,
+                new URL(STANDARD_URL),
+                HttpMethod.POST,
+                STANDARD_PAYLOAD,
+                STANDARD_REQUEST_ID,
+                0);
+
+        //assert
+        try
+        {
+            response.get();
+            fail("The future shall complete exceptionally");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IotHubBadFormatException);
+        }
+    }
 }
@@ -23,8 +23,14 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -1552,4 +1558,265 @@ public class DeviceTwinTest
         //act
         deviceTwin.hasNext(null);
     }
+
+    //Tests_SRS_DEVICETWIN_34_082: [ The method shall set the prefetch depth of the Query before sending its first request.]
+    @Test
+    public void queryTwinWithPrefetchDepthSetsItBeforeSending(@Mocked DeviceTwinDevice mockedDevice) throws IotHubException, IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString(connectionString);
+
+        new Expectations()
+        {
+            {
+                Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.TWIN);
+                result = mockedQuery;
+            }
+        };
+
+        //act
+        testTwin.queryTwin(VALID_SQL_QUERY, 100, 3);
+
+        //assert
+        new VerificationsInOrder()
+        {
+            {
+                mockedQuery.setPrefetchDepth(3);
+                times = 1;
+                Deencapsulation.invoke(mockedQuery, "sendQueryRequest", new Class[] {IotHubConnectionString.class, URL.class, HttpMethod.class, Long.class}, any, any, HttpMethod.POST, any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICETWIN_34_081: [ The method shall throw IllegalArgumentException if the prefetch depth is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queryTwinThrowsOnNegativePrefetchDepth(@Mocked DeviceTwinDevice mockedDevice) throws IotHubException, IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString(connectionString);
+
+        //act
+        testTwin.queryTwin(VALID_SQL_QUERY, 100, -1);
+    }
+
+    //Tests_SRS_DEVICETWIN_34_083: [ The method shall throw IllegalArgumentException if query is null ]
+    @Test (expected = IllegalArgumentException.class)
+    public void streamDeviceTwinsThrowsOnNullQuery() throws IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString(connectionString);
+
+        //act
+        testTwin.streamDeviceTwins(null);
+    }
+
+    //Tests_SRS_DEVICETWIN_34_084: [ The method shall map each element of the Query stream to a DeviceTwinDevice the same way as getNextDeviceTwin.]
+    @Test (expected = UncheckedIOException.class)
+    public void streamDeviceTwinsThrowsOnElementOtherThanString() throws IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString(connectionString);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedQuery.stream();
+                result = Stream.of(new Object());
+            }
+        };
+
+        //act
+        testTwin.streamDeviceTwins(mockedQuery).collect(Collectors.toList());
+    }
+
+    /* Answers each twin query with one twin per requested device id, and records the queries. */
+    private void expectTwinQueries(final List<String> sentQueries, final Queue<String> returnedDeviceIds, final int failingQueryIndex)
+    {
+        new NonStrictExpectations()
+        {
+            {
+                Deencapsulation.invoke(Query.class, "requestAllPagesAsync",
+                        new Class[] {IotHubConnectionString.class, URL.class, String.class, int.class, QueryType.class, long.class},
+                        any, any, anyString, anyInt, any, anyLong);
+                result = new Delegate()
+                {
+                    CompletableFuture<List<Object>> requestAllPagesAsync(IotHubConnectionString iotHubConnectionString, URL url, String sqlQuery, int pageSize, QueryType queryType, long timeoutInMs)
+                    {
+                        assertEquals(QueryType.TWIN, queryType);
+                        sentQueries.add(sqlQuery);
+                        CompletableFuture<List<Object>> elements = new CompletableFuture<>();
+                        if (sentQueries.size() - 1 == failingQueryIndex)
+                        {
+                            elements.completeExceptionally(new IotHubException("query failed"));
+                            return elements;
+                        }
+
+                        List<Object> twins = new ArrayList<>();
+                        Matcher matcher = Pattern.compile("'(device[0-9]+)'").matcher(sqlQuery);
+                        while (matcher.find())
+                        {
+                            returnedDeviceIds.add(matcher.group(1));
+                            twins.add("{}");
+                        }
+                        elements.complete(twins);
+                        return elements;
+                    }
+                };
+            }
+        };
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedTwinState.getDeviceId();
+                result = new Delegate()
+                {
+                    String getDeviceId()
+                    {
+                        return returnedDeviceIds.poll();
+                    }
+                };
+                mockedTwinState.getETag();
+                result = "validEtag";
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICETWIN_34_085: [ The method shall throw IllegalArgumentException if deviceIds is null, empty, or contains a null or empty id.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getTwinsThrowsOnEmptyDeviceIds() throws IotHubException, IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.getTwins(new ArrayList<String>());
+    }
+
+    //Tests_SRS_DEVICETWIN_34_085: [ The method shall throw IllegalArgumentException if deviceIds is null, empty, or contains a null or empty id.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getTwinsThrowsOnNullDeviceId() throws IotHubException, IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.getTwins(Arrays.asList("device0", null));
+    }
+
+    //Tests_SRS_DEVICETWIN_34_086: [ The method shall throw IllegalArgumentException if batchSize or maxConcurrentQueries is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getTwinsThrowsOnZeroBatchSize() throws IotHubException, IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.getTwins(Collections.singletonList("device0"), 0, 1);
+    }
+
+    //Tests_SRS_DEVICETWIN_34_086: [ The method shall throw IllegalArgumentException if batchSize or maxConcurrentQueries is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void getTwinsThrowsOnZeroMaxConcurrentQueries() throws IotHubException, IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+
+        //act
+        testTwin.getTwins(Collections.singletonList("device0"), 10, 0);
+    }
+
+    //Tests_SRS_DEVICETWIN_34_087: [ The method shall split the distinct device ids in queries of up to batchSize ids, `SELECT * FROM devices WHERE deviceId IN [...]`, with the ids quoted and escaped as string literals.]
+    //Tests_SRS_DEVICETWIN_34_088: [ The method shall send up to maxConcurrentQueries queries through Query.requestAllPagesAsync, with the URL from getUrlTwinQuery, and send the next one each time a query completes.]
+    //Tests_SRS_DEVICETWIN_34_089: [ The method shall return the device twins of all the queries by device id, parsed the same way as getNextDeviceTwin.]
+    @Test
+    public void getTwinsLooksUpDevicesWithOneQueryPerBatch() throws IotHubException, IOException
+    {
+        //arrange
+        final int deviceCount = 250;
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+        List<String> deviceIds = new ArrayList<>();
+        for (int i = 0; i < deviceCount; i++)
+        {
+            deviceIds.add("device" + i);
+        }
+        deviceIds.add("device0");
+
+        final List<String> sentQueries = new ArrayList<>();
+        expectTwinQueries(sentQueries, new ArrayDeque<String>(), -1);
+
+        //act
+        Map<String, DeviceTwinDevice> twins = testTwin.getTwins(deviceIds, 100, 2);
+
+        //assert
+        assertEquals(deviceCount, twins.size());
+        for (int i = 0; i < deviceCount; i++)
+        {
+            assertEquals("device" + i, twins.get("device" + i).getDeviceId());
+        }
+
+        // 3 requests instead of one GET per device
+        assertEquals(3, sentQueries.size());
+        assertTrue(sentQueries.get(0).startsWith("SELECT * FROM devices WHERE deviceId IN ['device0', 'device1', "));
+        assertTrue(sentQueries.get(2).endsWith("'device249']"));
+        new Verifications()
+        {
+            {
+                mockedConnectionString.getUrlTwinQuery();
+                times = 1;
+                mockedHttpRequest.send();
+                times = 0;
+            }
+        };
+    }
+
+    //Tests_SRS_DEVICETWIN_34_087: [ The method shall split the distinct device ids in queries of up to batchSize ids, `SELECT * FROM devices WHERE deviceId IN [...]`, with the ids quoted and escaped as string literals.]
+    @Test
+    public void getTwinsEscapesDeviceIds() throws IotHubException, IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+        final List<String> sentQueries = new ArrayList<>();
+        expectTwinQueries(sentQueries, new ArrayDeque<String>(), -1);
+
+        //act
+        testTwin.getTwins(Arrays.asList("it's", "back\\slash"));
+
+        //assert
+        assertEquals(Collections.singletonList("SELECT * FROM devices WHERE deviceId IN ['it\\'s', 'back\\\\slash']"), sentQueries);
+    }
+
+    //Tests_SRS_DEVICETWIN_34_090: [ If a query failed, the method shall stop sending queries and throw the exception of that query.]
+    @Test
+    public void getTwinsThrowsTheExceptionOfAFailedQuery() throws IOException
+    {
+        //arrange
+        DeviceTwin testTwin = DeviceTwin.createFromConnectionString("testString");
+        List<String> deviceIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            deviceIds.add("device" + i);
+        }
+
+        final List<String> sentQueries = new ArrayList<>();
+        expectTwinQueries(sentQueries, new ArrayDeque<String>(), 1);
+
+        //act
+        try
+        {
+            testTwin.getTwins(deviceIds, 1, 1);
+            fail("getTwins shall throw the exception of the failed query");
+        }
+        catch (IotHubException e)
+        {
+            //assert
+            assertEquals("query failed", e.getMessage());
+        }
+        assertEquals(2, sentQueries.size());
+    }
 }
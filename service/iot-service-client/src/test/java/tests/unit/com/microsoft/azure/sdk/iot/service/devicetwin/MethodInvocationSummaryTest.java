@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.devicetwin;
+
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodInvocationResult;
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodInvocationSummary;
+import com.microsoft.azure.sdk.iot.service.devicetwin.MethodResult;
+import mockit.Deencapsulation;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for MethodInvocationSummary
+ */
+public class MethodInvocationSummaryTest
+{
+    private static MethodInvocationResult createResult(String deviceId, Exception exception, long latencyMillis)
+    {
+        MethodResult methodResult = (exception == null) ? new MethodResult(200, null) : null;
+        return Deencapsulation.newInstance(MethodInvocationResult.class,
+                new Class[] {String.class, MethodResult.class, Exception.class, long.class},
+                deviceId, methodResult, exception, latencyMillis);
+    }
+
+    private static MethodInvocationSummary createSummary(List<MethodInvocationResult> results)
+    {
+        return Deencapsulation.newInstance(MethodInvocationSummary.class, new Class[] {List.class}, results);
+    }
+
+    /* Tests_SRS_METHODINVOCATIONRESULT_34_001: [The constructor shall save the device id, the method result, the exception and the latency.] */
+    /* Tests_SRS_METHODINVOCATIONSUMMARY_34_001: [The constructor shall save the results in their completion order and count the successful ones.] */
+    @Test
+    public void constructorCountsSuccessfulAndFailedResults()
+    {
+        //arrange
+        List<MethodInvocationResult> results = new ArrayList<>();
+        results.add(createResult("device1", null, 30));
+        results.add(createResult("device2", new IOException(), 10));
+        results.add(createResult("device3", null, 20));
+
+        //act
+        MethodInvocationSummary summary = createSummary(results);
+
+        //assert
+        assertEquals(results, summary.getResults());
+        assertEquals(2, summary.getSuccessfulCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals("device2", summary.getResults().get(1).getDeviceId());
+        assertEquals(10, summary.getResults().get(1).getLatencyMillis());
+    }
+
+    /* Tests_SRS_METHODINVOCATIONSUMMARY_34_002: [The function shall throw IllegalArgumentException if the percentile is not greater than 0 and at most 100.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void getLatencyPercentileMillisThrowsOnZeroPercentile()
+    {
+        createSummary(Collections.<MethodInvocationResult>emptyList()).getLatencyPercentileMillis(0);
+    }
+
+    /* Tests_SRS_METHODINVOCATIONSUMMARY_34_002: [The function shall throw IllegalArgumentException if the percentile is not greater than 0 and at most 100.] */
+    @Test (expected = IllegalArgumentException.class)
+    public void getLatencyPercentileMillisThrowsOnPercentileAbove100()
+    {
+        createSummary(Collections.<MethodInvocationResult>emptyList()).getLatencyPercentileMillis(100.5);
+    }
+
+    /* Tests_SRS_METHODINVOCATIONSUMMARY_34_003: [The function shall return the latency at the nearest rank of the percentile.] */
+    @Test
+    public void getLatencyPercentileMillisReturnsNearestRank()
+    {
+        //arrange
+        List<MethodInvocationResult> results = new ArrayList<>();
+        for (long latency = 100; latency >= 1; latency--)
+        {
+            results.add(createResult("device" + latency, (latency % 10 == 0) ? new IOException() : null, latency));
+        }
+        MethodInvocationSummary summary = createSummary(results);
+
+        //act & assert
+        assertEquals(1, summary.getLatencyPercentileMillis(0.5));
+        assertEquals(50, summary.getLatencyPercentileMillis(50));
+        assertEquals(95, summary.getLatencyPercentileMillis(95));
+        assertEquals(99, summary.getLatencyPercentileMillis(99));
+        assertEquals(100, summary.getLatencyPercentileMillis(100));
+    }
+
+    /* Tests_SRS_METHODINVOCATIONSUMMARY_34_003: [The function shall return the latency at the nearest rank of the percentile.] */
+    @Test
+    public void getLatencyPercentileMillisReturnsZeroWithoutResults()
+    {
+        assertEquals(0, createSummary(Collections.<MethodInvocationResult>emptyList()).getLatencyPercentileMillis(50));
+    }
+}
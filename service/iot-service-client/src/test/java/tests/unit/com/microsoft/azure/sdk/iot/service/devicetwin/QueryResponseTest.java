@@ -10,9 +10,11 @@ import com.microsoft.azure.sdk.iot.service.devicetwin.QueryResponse;
 import mockit.Deencapsulation;
 import mockit.Mocked;
 import mockit.NonStrictExpectations;
+import mockit.Verifications;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -193,4 +195,45 @@ public class QueryResponseTest
         assertFalse(testResponse.hasNext());
         assertNull(testResponse.next());
     }
+
+    //Tests_SRS_QUERY_RESPONSE_34_001: [If the body is null or empty, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnNullBody() throws IOException
+    {
+        //act
+        Deencapsulation.newInstance(QueryResponse.class, byte[].class);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_34_001: [If the body is null or empty, the constructor shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsOnEmptyBody() throws IOException
+    {
+        //act
+        Deencapsulation.newInstance(QueryResponse.class, new byte[0]);
+    }
+
+    //Tests_SRS_QUERY_RESPONSE_34_002: [The constructor shall set the iterator to a QueryResponseReader of the body, so each element is parsed when it is iterated.]
+    @Test
+    public void constructorWithBodyParsesElementsWhenIterated() throws IOException
+    {
+        //arrange
+        final byte[] body = "[{\"deviceId\":\"devA\"},{\"deviceId\":\"devB\"}]".getBytes(StandardCharsets.UTF_8);
+
+        //act
+        QueryResponse testResponse = Deencapsulation.newInstance(QueryResponse.class, body);
+
+        //assert
+        assertTrue(testResponse.hasNext());
+        assertEquals("{\"deviceId\":\"devA\"}", testResponse.next());
+        assertTrue(testResponse.hasNext());
+        assertEquals("{\"deviceId\":\"devB\"}", testResponse.next());
+        assertFalse(testResponse.hasNext());
+        new Verifications()
+        {
+            {
+                new QueryResponseParser(anyString);
+                times = 0;
+            }
+        };
+    }
 }
@@ -18,11 +18,16 @@ import mockit.*;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -502,7 +507,7 @@ public class QueryTest
             {
                 mockHttpResponse.getHeaderFields();
                 result = testHeaderResponseMap;
-                Deencapsulation.newInstance(QueryResponse.class, anyString);
+                Deencapsulation.newInstance(QueryResponse.class, new Class[] {byte[].class}, (byte[]) any);
                 result = new IOException("test");
             }
         };
@@ -897,6 +902,82 @@ public class QueryTest
         assertEquals(mockObject, next);
     }
 
+    //Tests_SRS_QUERY_34_010: [If the query response is malformed, the hasNext and next methods shall throw an IOException caused by the parsing error.]
+    @Test
+    public void hasNextThrowsIOExceptionIfResponseIsMalformed() throws IotHubException, IOException
+    {
+        //arrange
+        final IllegalArgumentException parsingError = new IllegalArgumentException("Malformed json");
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+
+        testHeaderResponseMap.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = parsingError;
+            }
+        };
+
+        Deencapsulation.invoke(testQuery, "sendQueryRequest", mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        try
+        {
+            testQuery.hasNext();
+            fail("hasNext shall throw for a malformed response");
+        }
+        catch (IOException e)
+        {
+            //assert
+            assertEquals(parsingError, e.getCause());
+        }
+    }
+
+    //Tests_SRS_QUERY_34_010: [If the query response is malformed, the hasNext and next methods shall throw an IOException caused by the parsing error.]
+    @Test
+    public void nextThrowsIOExceptionIfElementIsMalformed() throws IotHubException, IOException
+    {
+        //arrange
+        final IllegalArgumentException parsingError = new IllegalArgumentException("Malformed json");
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+
+        testHeaderResponseMap.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = true;
+                mockedQueryResponse.next();
+                result = parsingError;
+            }
+        };
+
+        Deencapsulation.invoke(testQuery, "sendQueryRequest", mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        try
+        {
+            testQuery.next();
+            fail("next shall throw for a malformed element");
+        }
+        catch (IOException e)
+        {
+            //assert
+            assertEquals(parsingError, e.getCause());
+        }
+    }
+
     //Tests_SRS_QUERY_25_022: [The method shall check if any further elements are available by calling hasNext and if none is available then it shall throw NoSuchElementException.]
     @Test (expected = NoSuchElementException.class)
     public void nextThrowsIfNextDoesNotExists() throws IotHubException, IOException
@@ -924,4 +1005,202 @@ public class QueryTest
         //act
         Object next = Deencapsulation.invoke(testQuery, "next");
     }
+
+    //Tests_SRS_QUERY_34_002: [This method shall throw IllegalArgumentException if the prefetch depth is negative.]
+    @Test (expected = IllegalArgumentException.class)
+    public void setPrefetchDepthThrowsOnNegativeDepth()
+    {
+        //arrange
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        //act
+        testQuery.setPrefetchDepth(-1);
+    }
+
+    //Tests_SRS_QUERY_34_001: [This method shall discard the pages prefetched before, and prefetch the next pages after receiving the response.]
+    //Tests_SRS_QUERY_34_003: [This method shall save the prefetch depth, drop the prefetched pages beyond it, and prefetch up to that many pages if a request was already sent.]
+    //Tests_SRS_QUERY_34_004: [The query shall keep up to prefetch depth page requests ahead of the current page, each one sent with the continuation token of the previous page.]
+    //Tests_SRS_QUERY_34_005: [If the next page was prefetched, the query shall wait for it instead of sending a new request, and throw the exception of its request if it failed.]
+    @Test
+    public void hasNextUsesPrefetchedPage() throws IotHubException, IOException
+    {
+        //arrange
+        final String testToken = UUID.randomUUID().toString();
+        final Map<String, String> firstPageHeaders = new HashMap<>();
+        firstPageHeaders.put("x-ms-continuation", testToken);
+        firstPageHeaders.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+        final Map<String, String> lastPageHeaders = new HashMap<>();
+        lastPageHeaders.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+        testQuery.setPrefetchDepth(1);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
+                mockHttpResponse.getHeaderFields();
+                returns(firstPageHeaders, lastPageHeaders);
+                mockedQueryResponse.hasNext();
+                returns(false, true);
+            }
+        };
+
+        //act
+        testQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+        boolean hasNext = testQuery.hasNext();
+
+        //assert
+        assertTrue(hasNext);
+        assertEquals(1, testQuery.getPrefetchDepth());
+        assertNull(Deencapsulation.getField(testQuery, "responseContinuationToken"));
+        new Verifications()
+        {
+            {
+                mockHttpRequest.send();
+                times = 1;
+                mockHttpRequest.sendAsync();
+                times = 1;
+                mockHttpRequest.setHeaderField("x-ms-continuation", testToken);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_QUERY_34_005: [If the next page was prefetched, the query shall wait for it instead of sending a new request, and throw the exception of its request if it failed.]
+    @Test (expected = IOException.class)
+    public void hasNextThrowsIfPrefetchedPageFailed() throws IotHubException, IOException
+    {
+        //arrange
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+        testHeaderResponseMap.put("x-ms-continuation", UUID.randomUUID().toString());
+        testHeaderResponseMap.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+        final CompletableFuture<HttpResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(new IOException("connection reset"));
+
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpRequest.sendAsync();
+                result = failedResponse;
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                result = false;
+            }
+        };
+        testQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+        testQuery.setPrefetchDepth(2);
+
+        //act
+        testQuery.hasNext();
+    }
+
+    //Tests_SRS_QUERY_34_006: [The stream shall return the remaining elements of the query in order, by calling hasNext and next.]
+    @Test
+    public void streamReturnsRemainingElements() throws IotHubException, IOException
+    {
+        //arrange
+        final Map<String, String> testHeaderResponseMap = new HashMap<>();
+        testHeaderResponseMap.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpResponse.getHeaderFields();
+                result = testHeaderResponseMap;
+                mockedQueryResponse.hasNext();
+                returns(true, true, true, true, false);
+                mockedQueryResponse.next();
+                returns("first", "second");
+            }
+        };
+        testQuery.sendQueryRequest(mockIotHubConnectionString, mockUrl, mockHttpMethod, (long) 0);
+
+        //act
+        List<Object> elements = testQuery.stream().collect(Collectors.toList());
+
+        //assert
+        assertEquals(Arrays.asList("first", "second"), elements);
+    }
+
+    //Tests_SRS_QUERY_34_007: [The stream shall rethrow the IOException and IotHubException of the query in an UncheckedIOException.]
+    @Test
+    public void streamRethrowsIotHubExceptionAsUncheckedIOException() throws IotHubException, IOException
+    {
+        //arrange
+        final IotHubException testException = new IotHubException("throttled");
+        Query testQuery = Deencapsulation.newInstance(Query.class, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE);
+        new Expectations(testQuery)
+        {
+            {
+                testQuery.hasNext();
+                result = testException;
+            }
+        };
+
+        //act
+        try
+        {
+            testQuery.stream().count();
+            fail("The stream shall throw UncheckedIOException");
+        }
+        catch (UncheckedIOException e)
+        {
+            //assert
+            assertSame(testException, e.getCause().getCause());
+        }
+    }
+
+    //Tests_SRS_QUERY_34_008: [The method shall send the serialized sql query as HTTP method POST, and request the next page with the continuation token of the previous one until a page has no continuation token.]
+    //Tests_SRS_QUERY_34_009: [The method shall complete the future with the elements of all the pages, in order.]
+    @Test
+    public void requestAllPagesAsyncFollowsContinuationTokens() throws IotHubException, IOException
+    {
+        //arrange
+        final String testToken = UUID.randomUUID().toString();
+        final Map<String, String> firstPageHeaders = new HashMap<>();
+        firstPageHeaders.put("x-ms-continuation", testToken);
+        firstPageHeaders.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+        final Map<String, String> lastPageHeaders = new HashMap<>();
+        lastPageHeaders.put("x-ms-item-type", DEFAULT_QUERY_TYPE.getValue());
+
+        new NonStrictExpectations()
+        {
+            {
+                mockHttpRequest.sendAsync();
+                result = CompletableFuture.completedFuture(mockHttpResponse);
+                mockHttpResponse.getHeaderFields();
+                returns(firstPageHeaders, lastPageHeaders);
+                mockedQueryResponse.hasNext();
+                returns(true, false, true, true, false);
+                mockedQueryResponse.next();
+                returns("first", "second", "third");
+            }
+        };
+
+        //act
+        CompletableFuture<List<Object>> elements = Deencapsulation.invoke(Query.class, "requestAllPagesAsync",
+                new Class[] {IotHubConnectionString.class, URL.class, String.class, int.class, QueryType.class, long.class},
+                mockIotHubConnectionString, mockUrl, DEFAULT_QUERY, DEFAULT_PAGE_SIZE, DEFAULT_QUERY_TYPE, 0L);
+
+        //assert
+        assertEquals(Arrays.asList("first", "second", "third"), elements.join());
+        new Verifications()
+        {
+            {
+                new HttpRequest(mockUrl, HttpMethod.POST, (byte[]) any);
+                times = 2;
+                mockHttpRequest.setHeaderField("x-ms-continuation", testToken);
+                times = 1;
+                mockHttpRequest.send();
+                times = 0;
+            }
+        };
+    }
 }
@@ -28,8 +28,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -2187,4 +2190,89 @@ public class JobClientTest
         //act
         testJobClient.getNextJob(testQuery);
     }
+
+    //Tests_SRS_JOBCLIENT_34_002: [The queryDeviceJob shall set the prefetch depth of the query object before sending its first request.]
+    @Test
+    public void queryDeviceJobWithPrefetchDepthSetsItBeforeSending(@Mocked Query mockedQuery) throws IotHubException, IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        JobClient testJobClient = JobClient.createFromConnectionString(connectionString);
+
+        new Expectations()
+        {
+            {
+                Deencapsulation.newInstance(Query.class, new Class[] {String.class, Integer.class, QueryType.class}, anyString, anyInt, QueryType.DEVICE_JOB);
+                result = mockedQuery;
+            }
+        };
+
+        //act
+        testJobClient.queryDeviceJob(VALID_SQL_QUERY, 100, 2);
+
+        //assert
+        new VerificationsInOrder()
+        {
+            {
+                mockedQuery.setPrefetchDepth(2);
+                times = 1;
+                Deencapsulation.invoke(mockedQuery, "sendQueryRequest", new Class[] {IotHubConnectionString.class, URL.class, HttpMethod.class, Long.class}, any, any, HttpMethod.POST, any);
+                times = 1;
+            }
+        };
+    }
+
+    //Tests_SRS_JOBCLIENT_34_001: [If the prefetchDepth is negative, the queryDeviceJob shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void queryDeviceJobThrowsOnNegativePrefetchDepth() throws IotHubException, IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        JobClient testJobClient = JobClient.createFromConnectionString(connectionString);
+
+        //act
+        testJobClient.queryDeviceJob(VALID_SQL_QUERY, 100, -1);
+    }
+
+    //Tests_SRS_JOBCLIENT_34_003: [If the input query is null, the streamJobs shall throw IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void streamJobsThrowsOnNullQuery() throws IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        JobClient testJobClient = JobClient.createFromConnectionString(connectionString);
+
+        //act
+        testJobClient.streamJobs(null);
+    }
+
+    //Tests_SRS_JOBCLIENT_34_004: [streamJobs shall parse each element of the query stream as a JobResult, the same way as getNextJob.]
+    @Test
+    public void streamJobsParsesEachElement(@Mocked Query mockedQuery, @Mocked JobResult mockedJobResult) throws IOException
+    {
+        //arrange
+        final String connectionString = "testString";
+        JobClient testJobClient = JobClient.createFromConnectionString(connectionString);
+
+        new NonStrictExpectations()
+        {
+            {
+                mockedQuery.stream();
+                result = Stream.of("{\"jobId\":\"1\"}", "{\"jobId\":\"2\"}");
+            }
+        };
+
+        //act
+        List<JobResult> jobResults = testJobClient.streamJobs(mockedQuery).collect(Collectors.toList());
+
+        //assert
+        assertEquals(2, jobResults.size());
+        new Verifications()
+        {
+            {
+                Deencapsulation.newInstance(JobResult.class, new Class[] {byte[].class}, (byte[])any);
+                times = 2;
+            }
+        };
+    }
 }
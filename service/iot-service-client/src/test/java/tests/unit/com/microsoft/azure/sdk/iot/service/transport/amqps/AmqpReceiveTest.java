@@ -5,13 +5,17 @@
 
 package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
 
+import com.microsoft.azure.sdk.iot.service.FeedbackBatch;
 import com.microsoft.azure.sdk.iot.service.FeedbackBatchMessage;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedEvent;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedHandler;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpReceive;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpStreamingReceive;
 import mockit.Deencapsulation;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.Connection;
@@ -22,6 +26,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
@@ -184,4 +190,56 @@ public class AmqpReceiveTest
         // Act
         amqpReceive.onFeedbackReceived(jsonData);
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_002: [The function shall throw IOException if the receive handler object is not initialized]
+    @Test (expected = IOException.class)
+    public void startReceiving_throws_if_not_opened() throws Exception
+    {
+        // Arrange
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        // Act
+        amqpReceive.startReceiving(feedbackBatch -> { }, 10, 5);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_004: [The function shall open a streaming receiver on the feedback endpoint that parses every message into a FeedbackBatch for the consumer]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPRECEIVE_34_005: [The function shall close the streaming receiver if there is one]
+    @Test
+    public void startReceiving_opens_streaming_receiver_with_parsing_callback(@Mocked AmqpStreamingReceive mockStreamingReceive, @Mocked FeedbackBatchMessage mockFeedbackBatchMessage, @Mocked FeedbackBatch mockFeedbackBatch) throws Exception
+    {
+        // Arrange
+        AmqpReceive amqpReceive = new AmqpReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpReceive.open();
+        final List<FeedbackBatch> received = new ArrayList<>();
+        final List<AmqpFeedbackReceivedEvent> callbacks = new ArrayList<>();
+        new Expectations()
+        {
+            {
+                FeedbackBatchMessage.parse("[]");
+                result = mockFeedbackBatch;
+            }
+        };
+        // Act
+        amqpReceive.startReceiving(received::add, 10, 5);
+        new Verifications()
+        {
+            {
+                new AmqpStreamingReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS,
+                        AmqpFeedbackReceivedHandler.RECEIVE_TAG, AmqpFeedbackReceivedHandler.ENDPOINT, 10, 5, withCapture(callbacks));
+                mockStreamingReceive.open();
+                times = 1;
+            }
+        };
+        callbacks.get(0).onFeedbackReceived("[]");
+        amqpReceive.close();
+        // Assert
+        assertEquals(1, received.size());
+        assertEquals(mockFeedbackBatch, received.get(0));
+        new Verifications()
+        {
+            {
+                mockStreamingReceive.close();
+                times = 1;
+            }
+        };
+    }
 }
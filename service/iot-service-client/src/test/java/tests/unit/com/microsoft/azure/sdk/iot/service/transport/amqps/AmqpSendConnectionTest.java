@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
+import com.microsoft.azure.sdk.iot.service.Message;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSendConnection;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.apache.qpid.proton.amqp.Symbol;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.transport.ErrorCondition;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Sender;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.Task;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for AmqpSendConnection */
+@RunWith(JMockit.class)
+public class AmqpSendConnectionTest
+{
+    private static final String DEVICE_PATH = "/devices/deviceId/messages/devicebound";
+
+    @Mocked Event mockEvent;
+    @Mocked Sender mockSender;
+    @Mocked Delivery mockDelivery;
+    @Mocked Reactor mockReactor;
+    @Mocked Connection mockConnection;
+    @Mocked Task mockTask;
+
+    private static AmqpSendConnection createOpenConnection(int maxInFlightCount)
+    {
+        AmqpSendConnection connection = new AmqpSendConnection("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, maxInFlightCount);
+        // the reactor thread is not started, the tests raise its events themselves
+        Deencapsulation.setField(connection, "isOpen", true);
+        return connection;
+    }
+
+    private static Throwable causeOf(CompletableFuture<Void> future) throws InterruptedException
+    {
+        try
+        {
+            future.get();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            return e.getCause();
+        }
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_001: [The constructor shall throw IllegalArgumentException if any of the input parameter is null or empty, or if the max in flight count is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroMaxInFlightCount()
+    {
+        new AmqpSendConnection("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS, 0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_004: [If the target path is null or empty, or the message is null, this function shall throw an IllegalArgumentException.]
+    @Test (expected = IllegalArgumentException.class)
+    public void sendThrowsForNullMessage()
+    {
+        createOpenConnection(1).send(DEVICE_PATH, null);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_005: [If the connection is not open, this function shall return a future completed with an IOException.]
+    @Test
+    public void sendBeforeOpenFailsFuture() throws Exception
+    {
+        AmqpSendConnection connection = new AmqpSendConnection("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+
+        CompletableFuture<Void> future = connection.send(DEVICE_PATH, new Message("hello"));
+
+        assertTrue(causeOf(future) instanceof IOException);
+        assertEquals(0, connection.getPendingCount());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_006: [This function shall encode the message on the calling thread, queue it, and wake the reactor up to send it.]
+    @Test
+    public void sendQueuesMessageAndWakesReactorUp() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(1);
+        Deencapsulation.setField(connection, "reactor", mockReactor);
+
+        // act
+        connection.send(DEVICE_PATH, new Message("1"));
+
+        // assert
+        assertEquals(1, connection.getPendingCount());
+        new Verifications()
+        {
+            {
+                mockReactor.wakeup();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_010: [The event handler shall send the queued messages.]
+    @Test
+    public void onReactorQuiescedSendsQueuedMessages() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(10);
+        Deencapsulation.setField(connection, "connection", mockConnection);
+        Deencapsulation.setField(connection, "sender", mockSender);
+        new Expectations()
+        {
+            {
+                mockSender.getCredit();
+                result = 10;
+            }
+        };
+        connection.send(DEVICE_PATH, new Message("1"));
+        connection.send(DEVICE_PATH, new Message("2"));
+
+        // act
+        connection.onReactorQuiesced(mockEvent);
+
+        // assert
+        assertEquals(2, connection.getInFlightCount());
+        assertEquals(0, connection.getPendingCount());
+        new Verifications()
+        {
+            {
+                mockSender.advance();
+                times = 2;
+                mockReactor.schedule(anyInt, connection);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_009: [If a close was requested and nothing is queued or in flight, or the close timeout elapsed, the event handler shall close the Sender, Session and Connection.]
+    @Test
+    public void onReactorQuiescedClosesConnectionOnceNothingIsQueued() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(1);
+        Deencapsulation.setField(connection, "connection", mockConnection);
+        Deencapsulation.setField(connection, "sender", mockSender);
+        Deencapsulation.setField(connection, "closeRequested", true);
+        Deencapsulation.setField(connection, "closeDeadline", System.currentTimeMillis() + 10000);
+
+        // act
+        connection.onReactorQuiesced(mockEvent);
+
+        // assert
+        assertFalse(connection.isOpen());
+        new Verifications()
+        {
+            {
+                mockSender.close();
+                times = 1;
+                mockConnection.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_009: [If a close was requested and nothing is queued or in flight, or the close timeout elapsed, the event handler shall close the Sender, Session and Connection.]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_015: [If a close was requested while messages are queued or in flight, the event handler shall schedule a timer that wakes the reactor up when the close timeout elapses.]
+    @Test
+    public void onReactorQuiescedSchedulesCloseTimeoutOnceWhileMessagesAreInFlight() throws Exception
+    {
+        // arrange
+        final AmqpSendConnection connection = createOpenConnection(1);
+        Deencapsulation.setField(connection, "connection", mockConnection);
+        Deencapsulation.setField(connection, "sender", mockSender);
+        new Expectations()
+        {
+            {
+                mockEvent.getReactor();
+                result = mockReactor;
+                mockReactor.schedule(anyInt, connection);
+                result = mockTask;
+                times = 1;
+                mockSender.getCredit();
+                result = 10;
+            }
+        };
+        CompletableFuture<Void> inFlight = connection.send(DEVICE_PATH, new Message("1"));
+        Deencapsulation.setField(connection, "closeRequested", true);
+        Deencapsulation.setField(connection, "closeDeadline", System.currentTimeMillis() + 10000);
+
+        // act
+        connection.onReactorQuiesced(mockEvent);
+        connection.onReactorQuiesced(mockEvent);
+
+        // assert
+        assertFalse(inFlight.isDone());
+        new Verifications()
+        {
+            {
+                mockConnection.close();
+                times = 0;
+            }
+        };
+
+        // act
+        Deencapsulation.setField(connection, "closeDeadline", System.currentTimeMillis() - 1);
+        connection.onReactorQuiesced(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockTask.cancel();
+                times = 1;
+                mockConnection.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_014: [This function shall wake the reactor up to handle the close request, and wait for the reactor thread to stop without holding the lock of this connection.]
+    @Test
+    public void closeWakesReactorUpAndWaitsWithoutHoldingTheLock() throws Exception
+    {
+        // arrange
+        final AmqpSendConnection connection = createOpenConnection(1);
+        final CountDownLatch reactorStopped = new CountDownLatch(1);
+        ExecutorService reactorExecutor = Executors.newSingleThreadExecutor();
+        reactorExecutor.submit(() -> reactorStopped.await(10, TimeUnit.SECONDS));
+        Deencapsulation.setField(connection, "reactor", mockReactor);
+        Deencapsulation.setField(connection, "reactorExecutor", reactorExecutor);
+        Thread closingThread = new Thread(connection::close);
+
+        // act
+        closingThread.start();
+        while (connection.isOpen())
+        {
+            Thread.sleep(1);
+        }
+
+        // assert
+        // open is synchronized, it would wait for the close if the close held the lock
+        CompletableFuture<Void> opened = CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                connection.open();
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+        opened.get(5, TimeUnit.SECONDS);
+        assertTrue(closingThread.isAlive());
+        reactorStopped.countDown();
+        closingThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(closingThread.isAlive());
+        new Verifications()
+        {
+            {
+                mockReactor.wakeup();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_011: [The event handler shall send queued messages while the link has credit and fewer than the max in flight count are unsettled.]
+    @Test
+    public void onLinkFlowSendsUpToMaxInFlightCount() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(2);
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+                mockSender.getCredit();
+                result = 10;
+            }
+        };
+        connection.send(DEVICE_PATH, new Message("1"));
+        connection.send(DEVICE_PATH, new Message("2"));
+        connection.send(DEVICE_PATH, new Message("3"));
+        assertEquals(3, connection.getPendingCount());
+
+        // act
+        connection.onLinkFlow(mockEvent);
+
+        // assert
+        assertEquals(2, connection.getInFlightCount());
+        assertEquals(1, connection.getPendingCount());
+        new Verifications()
+        {
+            {
+                mockSender.delivery((byte[]) any);
+                times = 2;
+                mockSender.send((byte[]) any, 0, anyInt);
+                times = 2;
+                mockSender.advance();
+                times = 2;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_011: [The event handler shall send queued messages while the link has credit and fewer than the max in flight count are unsettled.]
+    @Test
+    public void onLinkFlowDoesNotSendWithoutCredit() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(10);
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+                mockSender.getCredit();
+                result = 0;
+            }
+        };
+        connection.send(DEVICE_PATH, new Message("1"));
+
+        // act
+        connection.onLinkFlow(mockEvent);
+
+        // assert
+        assertEquals(0, connection.getInFlightCount());
+        assertEquals(1, connection.getPendingCount());
+        new Verifications()
+        {
+            {
+                mockSender.delivery((byte[]) any);
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_012: [The event handler shall settle the delivery and complete its future with the exception of the Amqp response, if any, without closing the link.]
+    @Test
+    public void onDeliveryCompletesFutureAndSendsNextMessage() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(1);
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+                mockSender.getCredit();
+                result = 10;
+                mockSender.delivery((byte[]) any);
+                result = mockDelivery;
+            }
+        };
+        CompletableFuture<Void> first = connection.send(DEVICE_PATH, new Message("1"));
+        CompletableFuture<Void> second = connection.send(DEVICE_PATH, new Message("2"));
+        connection.onLinkFlow(mockEvent);
+        final List<Object> contexts = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockDelivery.setContext(withCapture(contexts));
+            }
+        };
+        new Expectations()
+        {
+            {
+                mockEvent.getDelivery();
+                result = mockDelivery;
+                mockDelivery.getRemoteState();
+                result = Accepted.getInstance();
+                mockDelivery.getContext();
+                result = contexts.get(0);
+            }
+        };
+
+        // act
+        connection.onDelivery(mockEvent);
+
+        // assert
+        assertNull(causeOf(first));
+        assertFalse(second.isDone());
+        assertEquals(1, connection.getInFlightCount());
+        assertEquals(0, connection.getPendingCount());
+        new Verifications()
+        {
+            {
+                mockDelivery.settle();
+                times = 1;
+                mockSender.close();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_012: [The event handler shall settle the delivery and complete its future with the exception of the Amqp response, if any, without closing the link.]
+    @Test
+    public void onDeliveryFailsFutureOfRejectedMessage() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(1);
+        final Rejected rejected = new Rejected();
+        rejected.setError(new ErrorCondition(Symbol.getSymbol("amqp:not-found"), "device not found"));
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+                mockSender.getCredit();
+                result = 10;
+                mockSender.delivery((byte[]) any);
+                result = mockDelivery;
+            }
+        };
+        CompletableFuture<Void> future = connection.send(DEVICE_PATH, new Message("1"));
+        connection.onLinkFlow(mockEvent);
+        final List<Object> contexts = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockDelivery.setContext(withCapture(contexts));
+            }
+        };
+        new Expectations()
+        {
+            {
+                mockEvent.getDelivery();
+                result = mockDelivery;
+                mockDelivery.getRemoteState();
+                result = rejected;
+                mockDelivery.getContext();
+                result = contexts.get(0);
+            }
+        };
+
+        // act
+        connection.onDelivery(mockEvent);
+
+        // assert
+        assertTrue(causeOf(future) instanceof IotHubException);
+        assertEquals(0, connection.getInFlightCount());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSENDCONNECTION_34_013: [If the transport fails or IotHub closes the link or the connection, the event handler shall complete the queued and in flight futures with an IOException.]
+    @Test
+    public void onTransportErrorFailsQueuedAndInFlightFutures() throws Exception
+    {
+        // arrange
+        AmqpSendConnection connection = createOpenConnection(1);
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockSender;
+                mockSender.getCredit();
+                result = 10;
+            }
+        };
+        CompletableFuture<Void> inFlight = connection.send(DEVICE_PATH, new Message("1"));
+        CompletableFuture<Void> queued = connection.send(DEVICE_PATH, new Message("2"));
+        connection.onLinkFlow(mockEvent);
+
+        // act
+        connection.onTransportError(mockEvent);
+
+        // assert
+        assertTrue(causeOf(inFlight) instanceof IOException);
+        assertTrue(causeOf(queued) instanceof IOException);
+        assertFalse(connection.isOpen());
+        assertEquals(0, connection.getInFlightCount());
+        assertEquals(0, connection.getPendingCount());
+    }
+}
@@ -8,10 +8,13 @@ package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
 import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
 import com.microsoft.azure.sdk.iot.service.Message;
 import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSend;
-import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSendHandler;
+import com.microsoft.azure.sdk.iot.service.exceptions.IotHubException;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpSendConnection;
 import mockit.Deencapsulation;
+import mockit.Delegate;
 import mockit.Expectations;
 import mockit.Mocked;
+import mockit.Verifications;
 import mockit.integration.junit4.JMockit;
 import org.apache.qpid.proton.Proton;
 import org.apache.qpid.proton.engine.Connection;
@@ -22,9 +25,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.*;
 
 /** Unit tests for AmqpSend */
 @RunWith(JMockit.class)
@@ -223,88 +229,223 @@ public class AmqpSendTest
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_006: [The function shall create a binary message with the given content with deviceId only if moduleId is null]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_002: [The function shall send the message with sendAsync and wait for its future]
     @Test
-    public void send_creates_ProtonMessage(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    public void send_sendsOnConnectionToDevicePath(@Mocked AmqpSendConnection mockConnection) throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
         String deviceId = "deviceId";
-        String content = "abcdefghijklmnopqrst";
-        Message message = new Message(content);
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSend amqpSend = new AmqpSend(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        new Expectations()
+        {
+            {
+                mockConnection.send("/devices/deviceId/messages/devicebound", message);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+
+        // Act
+        amqpSend.send(deviceId, null, message);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The function shall create a binary message with the given content with moduleId]
+    @Test
+    public void sendToModule_sendsOnConnectionToModulePath(@Mocked AmqpSendConnection mockConnection) throws Exception
+    {
+        // Arrange
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
         amqpSend.open();
+        new Expectations()
+        {
+            {
+                mockConnection.send("/devices/deviceId/modules/moduleId/messages/devicebound", message);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+
+        // Act
+        CompletableFuture<Void> future = amqpSend.sendAsync("deviceId", "moduleId", message);
 
-        AmqpSendHandler handler = Deencapsulation.getField(amqpSend, "amqpSendHandler");
         // Assert
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_003: [The function shall open a new send connection if there is none or the previous one was lost, and reuse it otherwise]
+    @Test
+    public void sendReusesOpenConnection(@Mocked AmqpSendConnection mockConnection) throws Exception
+    {
+        // Arrange
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
         new Expectations()
         {
             {
-                Deencapsulation.invoke(handler, "createProtonMessage"
-                        , deviceId, message);
+                mockConnection.isOpen();
+                result = true;
+                mockConnection.send(anyString, message);
+                result = CompletableFuture.completedFuture(null);
+                times = 3;
             }
         };
+
         // Act
-        amqpSend.send(deviceId, null, message);
+        amqpSend.sendAsync("deviceId", null, message);
+        amqpSend.sendAsync("deviceId", null, message);
+        amqpSend.sendAsync("deviceId", null, message);
+
+        // Assert
+        new Verifications()
+        {
+            {
+                new AmqpSendConnection("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+                times = 1;
+                mockConnection.open();
+                times = 1;
+            }
+        };
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_001: [The event handler shall create a Proton message with the given content]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_003: [The function shall open a new send connection if there is none or the previous one was lost, and reuse it otherwise]
     @Test
-    public void sendToModule_creates_ProtonMessage(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    public void sendReplacesLostConnection(@Mocked AmqpSendConnection mockConnection) throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        String deviceId = "deviceId";
-        String moduleId = "moduleId";
-        String content = "abcdefghijklmnopqrst";
-        Message message = new Message(content);
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSend amqpSend = new AmqpSend(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
         amqpSend.open();
+        new Expectations()
+        {
+            {
+                mockConnection.isOpen();
+                result = false;
+                mockConnection.send(anyString, message);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+
+        // Act
+        amqpSend.sendAsync("deviceId", null, message);
+        amqpSend.sendAsync("deviceId", null, message);
 
-        AmqpSendHandler handler = Deencapsulation.getField(amqpSend, "amqpSendHandler");
         // Assert
+        new Verifications()
+        {
+            {
+                new AmqpSendConnection("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+                times = 2;
+                mockConnection.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_004: [The function shall throw the IotHubException or the IOException the future completed with]
+    @Test (expected = IotHubException.class)
+    public void sendThrowsIotHubExceptionOfRejectedMessage(@Mocked AmqpSendConnection mockConnection) throws Exception
+    {
+        // Arrange
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        CompletableFuture<Void> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new IotHubException("rejected"));
         new Expectations()
         {
             {
-                Deencapsulation.invoke(handler, "createProtonMessage"
-                        , deviceId, moduleId, message);
+                mockConnection.send(anyString, message);
+                result = rejected;
             }
         };
+
         // Act
-        amqpSend.send(deviceId, moduleId, message);
+        amqpSend.send("deviceId", null, message);
     }
 
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_002: [The event handler shall initialize the Proton reactor object]
-    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_003: [The event handler shall start the Proton reactor object]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_001: [The function shall close the send connection if there is one]
     @Test
-    public void sendToModule_initializes_Reactor(@Mocked AmqpSendHandler mockAmqpSendHandler) throws Exception
+    public void closeClosesConnection(@Mocked AmqpSendConnection mockConnection) throws Exception
     {
         // Arrange
-        String hostName = "aaa";
-        String userName = "bbb";
-        String sasToken = "ccc";
-        String deviceId = "deviceId";
-        String moduleId = "moduleId";
-        String content = "abcdefghijklmnopqrst";
-        Message message = new Message(content);
-        IotHubServiceClientProtocol iotHubServiceClientProtocol = IotHubServiceClientProtocol.AMQPS;
-        AmqpSend amqpSend = new AmqpSend(hostName, userName, sasToken, iotHubServiceClientProtocol);
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
         amqpSend.open();
+        new Expectations()
+        {
+            {
+                mockConnection.send(anyString, message);
+                result = CompletableFuture.completedFuture(null);
+            }
+        };
+        amqpSend.sendAsync("deviceId", null, message);
+
+        // Act
+        amqpSend.close();
+
         // Assert
+        new Verifications()
+        {
+            {
+                mockConnection.close();
+                times = 1;
+            }
+        };
+        assertNull(Deencapsulation.getField(amqpSend, "amqpSendConnection"));
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_34_005: [The function shall wait for the send connection to close without holding the lock of this object]
+    @Test
+    public void closeDoesNotBlockSendsWhileTheConnectionCloses(@Mocked AmqpSendConnection mockConnection) throws Exception
+    {
+        // Arrange
+        Message message = new Message("abcdefghijklmnopqrst");
+        AmqpSend amqpSend = new AmqpSend("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS);
+        amqpSend.open();
+        final CountDownLatch closeStarted = new CountDownLatch(1);
+        final CountDownLatch connectionClosed = new CountDownLatch(1);
         new Expectations()
         {
             {
-                reactor = proton.reactor(amqpSend);
-                reactor.run();
+                mockConnection.send(anyString, message);
+                result = CompletableFuture.completedFuture(null);
+                mockConnection.close();
+                result = new Delegate()
+                {
+                    @SuppressWarnings("unused")
+                    void close() throws InterruptedException
+                    {
+                        closeStarted.countDown();
+                        connectionClosed.await(10, TimeUnit.SECONDS);
+                    }
+                };
             }
         };
+        amqpSend.sendAsync("deviceId", null, message);
+        Thread closingThread = new Thread(amqpSend::close);
+
         // Act
-        amqpSend.send(deviceId, moduleId, message);
+        closingThread.start();
+        assertTrue(closeStarted.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> sendDuringClose = CompletableFuture.supplyAsync(() -> amqpSend.sendAsync("deviceId", null, message))
+                .thenCompose(future -> future);
+
+        // Assert
+        try
+        {
+            sendDuringClose.get(5, TimeUnit.SECONDS);
+            fail("the send after close shall fail");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(closingThread.isAlive());
+        connectionClosed.countDown();
+        closingThread.join(TimeUnit.SECONDS.toMillis(10));
     }
 
     // Tests_SRS_SERVICE_SDK_JAVA_AMQPSEND_28_005: [The event handler shall throw IOException if the send handler object is not initialized]
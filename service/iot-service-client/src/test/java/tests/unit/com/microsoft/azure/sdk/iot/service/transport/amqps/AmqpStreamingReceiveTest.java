@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.transport.amqps;
+
+import com.microsoft.azure.sdk.iot.service.IotHubServiceClientProtocol;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpFeedbackReceivedEvent;
+import com.microsoft.azure.sdk.iot.service.transport.amqps.AmqpStreamingReceive;
+import mockit.Deencapsulation;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.apache.qpid.proton.Proton;
+import org.apache.qpid.proton.amqp.Binary;
+import org.apache.qpid.proton.amqp.messaging.Accepted;
+import org.apache.qpid.proton.amqp.messaging.Data;
+import org.apache.qpid.proton.amqp.messaging.Rejected;
+import org.apache.qpid.proton.amqp.messaging.Released;
+import org.apache.qpid.proton.codec.DecodeException;
+import org.apache.qpid.proton.engine.BaseHandler;
+import org.apache.qpid.proton.engine.Connection;
+import org.apache.qpid.proton.engine.Delivery;
+import org.apache.qpid.proton.engine.Event;
+import org.apache.qpid.proton.engine.Handler;
+import org.apache.qpid.proton.engine.Receiver;
+import org.apache.qpid.proton.message.Message;
+import org.apache.qpid.proton.reactor.Reactor;
+import org.apache.qpid.proton.reactor.Task;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Unit tests for AmqpStreamingReceive */
+@RunWith(JMockit.class)
+public class AmqpStreamingReceiveTest
+{
+    @Mocked Proton mockProton;
+    @Mocked Message mockMessage;
+    @Mocked Event mockEvent;
+    @Mocked Receiver mockReceiver;
+    @Mocked Delivery mockDelivery;
+    @Mocked Reactor mockReactor;
+    @Mocked Connection mockConnection;
+    @Mocked Task mockTask;
+
+    private final List<String> receivedBodies = new ArrayList<>();
+
+    private AmqpStreamingReceive createReceiver(int settlementBatchSize, AmqpFeedbackReceivedEvent event)
+    {
+        return new AmqpStreamingReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS,
+                "receiver", "/messages/servicebound/feedback", 10, settlementBatchSize, event);
+    }
+
+    private void expectReadableDelivery()
+    {
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockReceiver;
+                mockReceiver.current();
+                result = mockDelivery;
+                mockDelivery.isReadable();
+                result = true;
+                mockDelivery.isPartial();
+                result = false;
+                mockMessage.getBody();
+                result = new Data(new Binary("[]".getBytes()));
+            }
+        };
+    }
+
+    private void expectReactorOfEvent()
+    {
+        new Expectations()
+        {
+            {
+                mockEvent.getReactor();
+                result = mockReactor;
+                mockMessage.getHeader();
+                result = null;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_001: [The constructor shall throw IllegalArgumentException if any of the input parameters is null or empty, or if the prefetch count or settlement batch size is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroPrefetchCount()
+    {
+        new AmqpStreamingReceive("aaa", "bbb", "ccc", IotHubServiceClientProtocol.AMQPS,
+                "receiver", "/messages/servicebound/feedback", 0, 1, receivedBodies::add);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_001: [The constructor shall throw IllegalArgumentException if any of the input parameters is null or empty, or if the prefetch count or settlement batch size is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForNullCallback()
+    {
+        createReceiver(1, null);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_003: [If this receiver was closed, this function shall throw an IllegalStateException.]
+    @Test (expected = IllegalStateException.class)
+    public void openThrowsAfterClose()
+    {
+        AmqpStreamingReceive streamingReceive = createReceiver(1, receivedBodies::add);
+        streamingReceive.close();
+
+        streamingReceive.open();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_009: [The event handler shall read and decode the delivery and call the callback with the message body.]
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_011: [The event handler shall settle the accepted deliveries once the settlement batch size is reached.]
+    @Test
+    public void onDeliveryCallsCallbackAndSettlesInBatches()
+    {
+        // arrange
+        AmqpStreamingReceive streamingReceive = createReceiver(3, receivedBodies::add);
+        expectReadableDelivery();
+
+        // act
+        streamingReceive.onDelivery(mockEvent);
+        streamingReceive.onDelivery(mockEvent);
+
+        // assert
+        assertEquals(2, receivedBodies.size());
+        assertEquals("[]", receivedBodies.get(0));
+        assertEquals(0, streamingReceive.getSettledCount());
+        new Verifications()
+        {
+            {
+                mockDelivery.settle();
+                times = 0;
+            }
+        };
+
+        // act
+        streamingReceive.onDelivery(mockEvent);
+
+        // assert
+        assertEquals(3, streamingReceive.getReceivedCount());
+        assertEquals(3, streamingReceive.getSettledCount());
+        new Verifications()
+        {
+            {
+                mockDelivery.disposition(Accepted.getInstance());
+                times = 3;
+                mockDelivery.settle();
+                times = 3;
+                mockReceiver.close();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_010: [If the callback throws, the event handler shall settle the delivery with the Released outcome after a delay that starts at 100 milliseconds and doubles with every callback failure in a row, up to 30 seconds.]
+    @Test
+    public void onDeliveryReleasesDeliveryAfterADelayIfCallbackThrows()
+    {
+        // arrange
+        AmqpStreamingReceive streamingReceive = createReceiver(3, body ->
+        {
+            throw new IllegalStateException("consumer failed");
+        });
+        expectReadableDelivery();
+        expectReactorOfEvent();
+
+        // act
+        streamingReceive.onDelivery(mockEvent);
+
+        // assert
+        assertEquals(0, streamingReceive.getSettledCount());
+        final List<Handler> releaseHandlers = new ArrayList<>();
+        new Verifications()
+        {
+            {
+                mockReactor.schedule(100, withCapture(releaseHandlers));
+                times = 1;
+                mockDelivery.settle();
+                times = 0;
+            }
+        };
+
+        // act
+        ((BaseHandler) releaseHandlers.get(0)).onTimerTask(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockDelivery.disposition(Released.getInstance());
+                times = 1;
+                mockDelivery.settle();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_010: [If the callback throws, the event handler shall settle the delivery with the Released outcome after a delay that starts at 100 milliseconds and doubles with every callback failure in a row, up to 30 seconds.]
+    @Test
+    public void onDeliveryDoublesReleaseDelayWhileCallbackKeepsFailing()
+    {
+        // arrange
+        final boolean[] fail = { true };
+        AmqpStreamingReceive streamingReceive = createReceiver(10, body ->
+        {
+            if (fail[0])
+            {
+                throw new IllegalStateException("consumer failed");
+            }
+        });
+        expectReadableDelivery();
+        expectReactorOfEvent();
+
+        // act
+        streamingReceive.onDelivery(mockEvent);
+        streamingReceive.onDelivery(mockEvent);
+        streamingReceive.onDelivery(mockEvent);
+        fail[0] = false;
+        streamingReceive.onDelivery(mockEvent);
+        fail[0] = true;
+        streamingReceive.onDelivery(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockReactor.schedule(100, (Handler) any);
+                times = 2;
+                mockReactor.schedule(200, (Handler) any);
+                times = 1;
+                mockReactor.schedule(400, (Handler) any);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_017: [If the callback failed on the same message 10 times, the event handler shall settle the delivery with the Rejected outcome instead of releasing it.]
+    @Test
+    public void onDeliveryRejectsMessageTheCallbackFailedOnTenTimes()
+    {
+        // arrange
+        AmqpStreamingReceive streamingReceive = createReceiver(3, body ->
+        {
+            throw new IllegalStateException("consumer failed");
+        });
+        expectReadableDelivery();
+        expectReactorOfEvent();
+        new Expectations()
+        {
+            {
+                mockMessage.getMessageId();
+                result = "message1";
+            }
+        };
+
+        // act
+        for (int i = 0; i < 10; i++)
+        {
+            streamingReceive.onDelivery(mockEvent);
+        }
+
+        // assert
+        assertEquals(1, streamingReceive.getRejectedCount());
+        new Verifications()
+        {
+            {
+                mockReactor.schedule(anyInt, (Handler) any);
+                times = 9;
+                mockDelivery.disposition((Rejected) any);
+                times = 1;
+                mockDelivery.settle();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_016: [If the delivery cannot be decoded, the event handler shall settle it with the Rejected outcome and go on with the next delivery.]
+    @Test
+    public void onDeliveryRejectsDeliveryThatCannotBeDecoded()
+    {
+        // arrange
+        AmqpStreamingReceive streamingReceive = createReceiver(3, receivedBodies::add);
+        new Expectations()
+        {
+            {
+                mockEvent.getLink();
+                result = mockReceiver;
+                mockReceiver.current();
+                result = mockDelivery;
+                mockDelivery.isReadable();
+                result = true;
+                mockDelivery.isPartial();
+                result = false;
+                mockMessage.decode((byte[]) any, anyInt, anyInt);
+                result = new DecodeException("malformed");
+            }
+        };
+
+        // act
+        streamingReceive.onDelivery(mockEvent);
+
+        // assert
+        assertTrue(receivedBodies.isEmpty());
+        assertEquals(1, streamingReceive.getReceivedCount());
+        assertEquals(1, streamingReceive.getRejectedCount());
+        new Verifications()
+        {
+            {
+                mockReceiver.advance();
+                times = 1;
+                mockDelivery.disposition((Rejected) any);
+                times = 1;
+                mockDelivery.settle();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_018: [If a close was requested, the event handler shall release the deliveries waiting for their delayed release right away.]
+    @Test
+    public void onTimerTaskReleasesDelayedDeliveriesWhenCloseRequested()
+    {
+        // arrange
+        final AmqpStreamingReceive streamingReceive = createReceiver(10, body ->
+        {
+            throw new IllegalStateException("consumer failed");
+        });
+        expectReadableDelivery();
+        expectReactorOfEvent();
+        new Expectations()
+        {
+            {
+                mockReactor.connection(streamingReceive);
+                result = mockConnection;
+                mockReactor.schedule(anyInt, (Handler) any);
+                result = mockTask;
+            }
+        };
+        streamingReceive.onReactorInit(mockEvent);
+        streamingReceive.onDelivery(mockEvent);
+        Deencapsulation.setField(streamingReceive, "closeRequested", true);
+
+        // act
+        streamingReceive.onTimerTask(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockDelivery.disposition(Released.getInstance());
+                times = 1;
+                mockDelivery.settle();
+                times = 1;
+                mockTask.cancel();
+                times = 1;
+                mockConnection.close();
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_007: [The event handler shall settle the accepted deliveries and reschedule itself while the connection is open and no close was requested.]
+    @Test
+    public void onTimerTaskSettlesPartialBatchAndReschedules()
+    {
+        // arrange
+        final AmqpStreamingReceive streamingReceive = createReceiver(10, receivedBodies::add);
+        expectReadableDelivery();
+        streamingReceive.onDelivery(mockEvent);
+        new Expectations()
+        {
+            {
+                mockEvent.getReactor();
+                result = mockReactor;
+            }
+        };
+
+        // act
+        streamingReceive.onTimerTask(mockEvent);
+
+        // assert
+        assertEquals(1, streamingReceive.getSettledCount());
+        new Verifications()
+        {
+            {
+                mockReactor.schedule(anyInt, streamingReceive);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_008: [If a close was requested, the event handler shall close the Receiver, Session and Connection.]
+    @Test
+    public void onTimerTaskClosesConnectionWhenCloseRequested()
+    {
+        // arrange
+        final AmqpStreamingReceive streamingReceive = createReceiver(10, receivedBodies::add);
+        new Expectations()
+        {
+            {
+                mockEvent.getReactor();
+                result = mockReactor;
+                mockReactor.connection(streamingReceive);
+                result = mockConnection;
+            }
+        };
+        streamingReceive.onReactorInit(mockEvent);
+        Deencapsulation.setField(streamingReceive, "closeRequested", true);
+
+        // act
+        streamingReceive.onTimerTask(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockConnection.close();
+                times = 1;
+                mockReactor.schedule(anyInt, streamingReceive);
+                times = 1;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_AMQPSTREAMINGRECEIVE_34_015: [If IotHub closes the link or the connection, or the transport fails, the event handler shall mark the connection as lost and close it.]
+    @Test
+    public void onTimerTaskStopsAfterTransportError()
+    {
+        // arrange
+        final AmqpStreamingReceive streamingReceive = createReceiver(10, receivedBodies::add);
+        streamingReceive.onTransportError(mockEvent);
+
+        // act
+        streamingReceive.onTimerTask(mockEvent);
+
+        // assert
+        new Verifications()
+        {
+            {
+                mockReactor.schedule(anyInt, streamingReceive);
+                times = 0;
+            }
+        };
+    }
+}
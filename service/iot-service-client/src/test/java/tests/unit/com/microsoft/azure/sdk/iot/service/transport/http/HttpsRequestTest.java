@@ -7,9 +7,11 @@ package tests.unit.com.microsoft.azure.sdk.iot.service.transport.http;
 
 import com.microsoft.azure.sdk.iot.service.transport.TransportUtils;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpConnection;
+import com.microsoft.azure.sdk.iot.service.transport.http.HttpEngine;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpMethod;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpRequest;
 import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
+import com.microsoft.azure.sdk.iot.service.transport.http.PooledHttpEngine;
 import mockit.*;
 import mockit.integration.junit4.JMockit;
 import org.junit.Test;
@@ -21,9 +23,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 /** Unit tests for HttpRequest. */
 @RunWith(JMockit.class)
@@ -614,4 +619,53 @@ public class HttpsRequestTest
             }
         };
     }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_011: [The function shall send the request through the http engine and return its future response.]
+    // Tests_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_012: [The function shall save the engine used by sendAsync.]
+    @Test
+    public void sendAsyncSendsThroughHttpEngine(@Mocked final HttpConnection mockConn, final @Mocked URL mockUrl,
+                                                @Mocked final HttpEngine mockEngine, @Mocked final HttpResponse mockResponse) throws Exception
+    {
+        // Arrange
+        final HttpRequest request = new HttpRequest(mockUrl, HttpMethod.GET, new byte[0]);
+        new NonStrictExpectations()
+        {
+            {
+                mockEngine.sendAsync(request);
+                result = CompletableFuture.completedFuture(mockResponse);
+            }
+        };
+        HttpRequest.setHttpEngine(mockEngine);
+        try
+        {
+            // Act
+            CompletableFuture<HttpResponse> response = request.sendAsync();
+
+            // Assert
+            assertThat(response.get(), is(mockResponse));
+            new Verifications()
+            {
+                {
+                    mockConn.connect();
+                    times = 0;
+                }
+            };
+        }
+        finally
+        {
+            HttpRequest.setHttpEngine(null);
+        }
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_HTTPREQUEST_34_013: [If no engine was set, the function shall return the shared PooledHttpEngine.]
+    @Test
+    public void getHttpEngineReturnsSharedPooledEngineByDefault()
+    {
+        // Act
+        HttpEngine engine = HttpRequest.getHttpEngine();
+
+        // Assert
+        assertTrue(engine instanceof PooledHttpEngine);
+        assertSame(engine, HttpRequest.getHttpEngine());
+    }
 }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved.
+ * Licensed under the MIT license. See LICENSE file in the project root for full license information.
+ */
+
+package tests.unit.com.microsoft.azure.sdk.iot.service.transport.http;
+
+import com.microsoft.azure.sdk.iot.service.transport.http.HttpRequest;
+import com.microsoft.azure.sdk.iot.service.transport.http.HttpResponse;
+import com.microsoft.azure.sdk.iot.service.transport.http.PooledHttpEngine;
+import mockit.Deencapsulation;
+import mockit.Delegate;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import mockit.integration.junit4.JMockit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/** Unit tests for PooledHttpEngine */
+@RunWith(JMockit.class)
+public class PooledHttpEngineTest
+{
+    @Mocked HttpRequest mockRequest;
+    @Mocked HttpResponse mockResponse;
+
+    private static Throwable causeOf(CompletableFuture<HttpResponse> future) throws InterruptedException
+    {
+        try
+        {
+            future.get();
+            return null;
+        }
+        catch (ExecutionException e)
+        {
+            return e.getCause();
+        }
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_001: [The constructor shall throw IllegalArgumentException if the max concurrent requests is less than 1.]
+    @Test (expected = IllegalArgumentException.class)
+    public void constructorThrowsForZeroMaxConcurrentRequests()
+    {
+        new PooledHttpEngine(0);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_003: [The function shall throw IllegalArgumentException if the request is null.]
+    @Test (expected = IllegalArgumentException.class)
+    public void sendAsyncThrowsForNullRequest()
+    {
+        new PooledHttpEngine(1).sendAsync(null);
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_002: [The constructor shall create a pool of up to max concurrent requests daemon threads, which stop after being idle for a minute.]
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_004: [The function shall send the request from the thread pool and complete the future with its response or its exception.]
+    @Test
+    public void sendAsyncCompletesFutureWithResponse() throws Exception
+    {
+        // arrange
+        final Thread callingThread = Thread.currentThread();
+        final Thread[] sendingThread = new Thread[1];
+        new Expectations()
+        {
+            {
+                mockRequest.send();
+                result = new Delegate<HttpResponse>()
+                {
+                    @SuppressWarnings("unused")
+                    HttpResponse send()
+                    {
+                        sendingThread[0] = Thread.currentThread();
+                        return mockResponse;
+                    }
+                };
+            }
+        };
+        PooledHttpEngine engine = new PooledHttpEngine(2);
+
+        // act
+        HttpResponse response = engine.sendAsync(mockRequest).get();
+        engine.close();
+
+        // assert
+        assertSame(mockResponse, response);
+        assertNotSame(callingThread, sendingThread[0]);
+        assertTrue(sendingThread[0].isDaemon());
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_004: [The function shall send the request from the thread pool and complete the future with its response or its exception.]
+    @Test
+    public void sendAsyncCompletesFutureWithSendException() throws Exception
+    {
+        // arrange
+        final IOException sendException = new IOException("connection refused");
+        new Expectations()
+        {
+            {
+                mockRequest.send();
+                result = sendException;
+            }
+        };
+        PooledHttpEngine engine = new PooledHttpEngine(1);
+
+        // act
+        CompletableFuture<HttpResponse> future = engine.sendAsync(mockRequest);
+
+        // assert
+        assertSame(sendException, causeOf(future));
+        engine.close();
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_005: [If this engine was closed, the function shall return a future completed with an IOException.]
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_006: [The function shall shut the thread pool down after the accepted requests were sent.]
+    @Test
+    public void sendAsyncAfterCloseFailsFuture() throws Exception
+    {
+        // arrange
+        PooledHttpEngine engine = new PooledHttpEngine(1);
+        engine.close();
+
+        // act
+        CompletableFuture<HttpResponse> future = engine.sendAsync(mockRequest);
+
+        // assert
+        assertTrue(causeOf(future) instanceof IOException);
+        assertEquals(0, engine.getQueuedRequestCount());
+        new Verifications()
+        {
+            {
+                mockRequest.send();
+                times = 0;
+            }
+        };
+    }
+
+    // Tests_SRS_SERVICE_SDK_JAVA_POOLEDHTTPENGINE_34_007: [If this engine is the shared default one, the function shall do nothing.]
+    @Test
+    public void closeOfSharedEngineHasNoEffect() throws Exception
+    {
+        // arrange
+        new Expectations()
+        {
+            {
+                mockRequest.send();
+                result = mockResponse;
+            }
+        };
+        PooledHttpEngine sharedEngine = Deencapsulation.invoke(PooledHttpEngine.class, "getDefault");
+
+        // act
+        sharedEngine.close();
+
+        // assert
+        assertSame(mockResponse, sharedEngine.sendAsync(mockRequest).get());
+    }
+}